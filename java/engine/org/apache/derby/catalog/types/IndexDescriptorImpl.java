@@ -110,10 +110,10 @@ public class IndexDescriptorImpl implements IndexDescriptor, Formatable
      * 								column position in the base table.
      * @param isAscending	An array of booleans telling asc/desc on each
      * 						column.
-     * @param numberOfOrderedColumns	In the future, it will be possible
-     * 									to store non-ordered columns in an
-     * 									index.  These will be useful for
-     * 									covered queries.
+     * @param numberOfOrderedColumns	The number of leading columns which
+     * 									are ordered.  The columns after them
+     * 									are INCLUDE columns, which are only
+     * 									stored in the index for covered queries.
      */
 	public IndexDescriptorImpl(String indexType,
 								boolean isUnique,
@@ -277,7 +277,9 @@ public class IndexDescriptorImpl implements IndexDescriptor, Formatable
 
 		for (int i = 0; i < baseColumnPositions.length; i++)
 		{
-			if (i > 0)
+			if (i > 0 && i == numberOfOrderedColumns)
+				sb.append(") INCLUDE (");
+			else if (i > 0)
 				sb.append(", ");
 			sb.append(baseColumnPositions[i]);
 			if (! isAscending[i])
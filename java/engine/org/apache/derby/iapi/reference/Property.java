@@ -340,6 +340,35 @@ public interface Property {
 	 */
 	int MIN_LOCKS_ESCALATION_THRESHOLD = 100;
 
+	/**
+		derby.locks.adaptiveEscalation
+		<BR>
+		If true, the number of row locks on a table after which we
+		escalate to table locking adapts to the number of locks in the
+		lock table, to the number of transactions waiting for locks on
+		the table and to the rate at which the transaction gets its
+		locks. derby.locks.escalationThreshold is the starting point.
+		<BR>
+		Default false. Read when the database is booted.
+	 */
+	String LOCKS_ADAPTIVE_ESCALATION = "derby.locks.adaptiveEscalation";
+
+	/**
+		derby.locks.escalationLockTableSize
+		<BR>
+		With adaptive lock escalation, the number of locked objects in
+		the lock table above which lock escalation is made more
+		aggressive, in proportion to the excess, to bound the memory used
+		by the lock table.
+	 */
+	String LOCKS_ESCALATION_LOCK_TABLE_SIZE =
+		"derby.locks.escalationLockTableSize";
+
+	/**
+		The default value for LOCKS_ESCALATION_LOCK_TABLE_SIZE
+	 */
+	int DEFAULT_LOCKS_ESCALATION_LOCK_TABLE_SIZE = 50000;
+
 	/**
 		Configuration parameter for deadlock timeouts, set in seconds.
 	*/
@@ -383,6 +412,19 @@ public interface Property {
 	*/
 	public static final String LOCKWAIT_TIMEOUT = "derby.locks.waitTimeout";
 
+	/**
+		Interval in milliseconds at which a background thread looks for
+		deadlocks among the waiting lock requests. When it is set, waiters
+		do not run the deadlock detection themselves when the deadlock
+		timeout expires, and a deadlock is broken within about one interval
+		of it forming. Default value is 0, which disables the background
+		detection.
+		<BR>
+		This property takes effect dynamically.
+	 */
+	public static final String DEADLOCK_DETECTION_INTERVAL =
+		"derby.locks.deadlockDetectionInterval";
+
 	/*
 	** db2j.database.*
 	*/
@@ -758,6 +800,30 @@ public interface Property {
 	String STATEMENT_CACHE_SIZE = "derby.language.statementCacheSize";
 	int STATEMENT_CACHE_SIZE_DEFAULT = 100;
 
+	/**
+	 * The number of threads which sort the rows of a new index, for
+	 * indexes big enough to need an external sort. The rows are still read
+	 * from the table by one thread. Database. Static.
+	 * <p>
+	 * Default value is 1, maximum is 64.
+	 * <p>
+	 * Undocumented.
+	 */
+	String INDEX_BUILD_THREADS = "derby.language.indexBuildThreads";
+
+	/**
+	 * The number of threads which scan a table to compute the scalar
+	 * aggregates of a query, when the rows of the table need no
+	 * restriction beyond the qualifiers of the scan. Can be overridden for
+	 * a table of a query with the parallelScanThreads optimizer override.
+	 * Database. Static.
+	 * <p>
+	 * Default value is 1, maximum is 64.
+	 * <p>
+	 * Undocumented.
+	 */
+	String PARALLEL_SCAN_THREADS = "derby.language.parallelScanThreads";
+
     /**
      * Tells if automatic index statistics update is enabled (default is true).
      */
@@ -1048,8 +1114,280 @@ public interface Property {
         Undocumented.
 	 */
 	public static final String LOG_BUFFER_SIZE = "derby.storage.logBufferSize";
-	
-	
+
+	/**
+		Property name for specifying the number of log buffers. More
+		buffers let writers keep appending log records while earlier
+		buffers are being written to the log file.
+		<P>
+		Default value is 3.
+
+        Undocumented.
+	 */
+	public static final String LOG_BUFFER_COUNT = "derby.storage.logBufferCount";
+
+	/**
+		Property name for enabling concurrent copying of log records into
+		the log buffers. If true, a writer holds the log factory's monitor
+		only while it reserves space for its log record, and copies the
+		record into the log buffer after releasing the monitor.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String LOG_CONCURRENT_APPEND =
+        "derby.storage.logConcurrentAppend";
+
+	/**
+		Property name for writing the transaction log through memory
+		mapping. If true, log files are preallocated to the log switch
+		interval, obsolete log files are recycled as future log files
+		instead of being deleted, and log records are written to the log
+		file through a mapped byte buffer.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String LOG_MAPPED = "derby.storage.logMapped";
+
+	/**
+		Property name for the maximum number of obsolete log files that are
+		kept for reuse when {@link #LOG_MAPPED} is true.
+		<P>
+		Default value is 4.
+
+        Undocumented.
+	 */
+	public static final String LOG_MAX_RECYCLED_FILES =
+        "derby.storage.logMaxRecycledFiles";
+
+	/**
+		Property name for the number of threads that redo page operations
+		during crash recovery. Operations on the same page are always redone
+		by the same thread, in log order. A value of 1 redoes the log
+		serially in the booting thread.
+		<P>
+		Default value is 1.
+
+        Undocumented.
+	 */
+	public static final String RECOVERY_REDO_THREADS =
+        "derby.storage.recoveryRedoThreads";
+
+	/**
+		Property name for making the checkpoints that are taken when
+		derby.storage.checkpointInterval bytes of log have been written
+		incremental. An incremental checkpoint does not write the whole page
+		cache, pages are written in the background instead and the checkpoint
+		records where redo has to start for the pages that are still dirty.
+		Checkpoints taken by backup, compress, shutdown and
+		SYSCS_UTIL.SYSCS_CHECKPOINT_DATABASE always write the whole cache.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String CHECKPOINT_INCREMENTAL =
+        "derby.storage.checkpointIncremental";
+
+	/**
+		Property name for the max number of pages per second that are
+		written in the background between incremental checkpoints. Only used
+		if derby.storage.checkpointIncremental is true.
+		<P>
+		Default value is 500.
+
+        Undocumented.
+	 */
+	public static final String CHECKPOINT_WRITE_RATE =
+        "derby.storage.checkpointWriteRate";
+
+	/**
+		Property name for the number of I/O threads that write batches of
+		dirty pages when the page cache is cleaned by a checkpoint or by its
+		background cleaner. The pages of a batch are sorted, and adjacent
+		pages are written together. If 0, every page is written by its own
+		write, as it is cleaned.
+		<P>
+		Default value is 0.
+
+        Undocumented.
+	 */
+	public static final String PAGE_WRITE_THREADS =
+        "derby.storage.pageWriteThreads";
+
+	/**
+		Property name for the max number of pages that are read into the
+		page cache ahead of a scan that reads the pages of a container in
+		order. The number of pages read ahead starts small and grows up to
+		this value as the scan goes on. If 0, pages are not read ahead.
+		<P>
+		Default value is 0.
+
+        Undocumented.
+	 */
+	public static final String READ_AHEAD_PAGES =
+        "derby.storage.readAheadPages";
+
+	/**
+		Property name for the number of megabytes of direct memory, outside
+		of the Java heap, that keep the images of clean pages evicted from
+		the page cache. A page read again while its image is there is copied
+		back instead of being read from disk, so a small page cache with a
+		large off-heap page cache caches as many pages with less garbage
+		collection work. The JVM must allow this much direct memory, see
+		-XX:MaxDirectMemorySize. If 0, there is no off-heap page cache.
+		<P>
+		Default value is 0.
+
+        Undocumented.
+	 */
+	public static final String OFF_HEAP_PAGE_CACHE_SIZE =
+        "derby.storage.offHeapPageCacheSize";
+
+	/**
+		Property name for the replacement policy of the caches, "clock" or
+		"2q". The policy of a single cache, for instance the page cache, is
+		set by appending a dot and the name of the cache, as in
+		derby.cache.replacementPolicy.PageCache, which overrides the policy
+		set for all caches. With "2q", objects referenced only once are kept
+		apart from frequently used ones and are evicted first, so that a
+		large scan does not evict the working set of the cache.
+		<P>
+		Default value is clock.
+
+        Undocumented.
+	 */
+	public static final String CACHE_REPLACEMENT_POLICY =
+        "derby.cache.replacementPolicy";
+
+	/**
+		Property name for the number of segments of the clock replacement
+		policy. Each segment has its own clock hand and holds the objects
+		whose keys hash to it, so that threads inserting objects into
+		different segments do not wait for each other. The number of
+		segments of a single cache is set by appending a dot and the name
+		of the cache, as in derby.cache.segments.PageCache. If 0, the number
+		is chosen from the size of the cache and the number of processors.
+		<P>
+		Default value is 0.
+
+        Undocumented.
+	 */
+	public static final String CACHE_SEGMENTS =
+        "derby.cache.segments";
+
+	/**
+		Property name for enabling group commit of the transaction log.
+		If true, a dedicated log flusher thread writes and syncs the log
+		on behalf of all threads that need the log flushed, so that
+		concurrent commits share a single sync.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String LOG_GROUP_COMMIT = "derby.storage.logGroupCommit";
+
+	/**
+		Property name for the longest time, in microseconds, the log
+		flusher waits for more flush requests to join a batch before it
+		syncs the log. Only used if derby.storage.logGroupCommit is true.
+		<P>
+		Default value is 0, which means that a batch is made up of the
+		requests that arrived while the previous sync was in progress.
+
+        Undocumented.
+	 */
+	public static final String LOG_GROUP_COMMIT_MAX_WAIT =
+        "derby.storage.logGroupCommitMaxWait";
+
+	/**
+		Property name for the number of waiting flush requests that ends
+		the derby.storage.logGroupCommitMaxWait window early. Once this
+		many requests are waiting the log flusher syncs the log right
+		away. Only used if derby.storage.logGroupCommit is true.
+		<P>
+		Default value is 64.
+
+        Undocumented.
+	 */
+	public static final String LOG_GROUP_COMMIT_MAX_BATCH =
+        "derby.storage.logGroupCommitMaxBatch";
+
+	/**
+		Property name for enabling snapshot reads. If true, the queries of
+		a read only connection read the rows as they were committed when
+		the transaction first read a table, without taking row locks, and
+		the transactions that change rows keep the older versions of the
+		rows for as long as a snapshot needs them.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String SNAPSHOT_READS = "derby.storage.snapshotReads";
+
+	/**
+		Property name for enabling optimistic index searches. If true, a
+		search of a B-tree index from the root uses copies of the branch
+		pages, validated by a structure version of the tree, and latches
+		only the page where the copies end, normally the leaf. A search
+		that sees a split or a merge of the tree in progress starts over,
+		and latches every page on the way down as before.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String OPTIMISTIC_INDEX_SEARCH =
+        "derby.storage.optimisticIndexSearch";
+
+	/**
+		Property name for enabling suffix truncation of the keys in the
+		branch pages of B-tree indexes. If true, when a leaf page is split
+		the branch row which separates the two pages only keeps as much of
+		the first character column that tells the two rows apart as needed
+		to separate them, and null in the key columns that follow. More
+		branch rows then fit on a page. The indexes are readable either way.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String INDEX_SUFFIX_TRUNCATION =
+        "derby.storage.indexSuffixTruncation";
+
+	/**
+		Property name for building the B-tree indexes created from sorted
+		rows, as by CREATE INDEX and bulk import, bottom up. If true, the
+		leaf pages are filled left to right and the branch pages are built
+		as each leaf is finished, instead of splitting the tree top down
+		every time the rightmost leaf fills up.
+		<P>
+		Default value is false.
+
+        Undocumented.
+	 */
+	public static final String BULK_INDEX_LOAD =
+        "derby.storage.bulkIndexLoad";
+
+	/**
+		Property name for the percentage of each page filled by a bottom up
+		load of a B-tree index, see derby.storage.bulkIndexLoad. Leaving
+		free space on the pages delays the splits of a tree which is
+		inserted into at random after it is built.
+		<P>
+		Default value is 100, minimum is 10.
+
+        Undocumented.
+	 */
+	public static final String INDEX_LOAD_FILL_FACTOR =
+        "derby.storage.indexLoadFillFactor";
+
+
 	/*
 	** Replication
 	*/
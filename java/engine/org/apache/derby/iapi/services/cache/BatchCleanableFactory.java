@@ -0,0 +1,53 @@
+/*
+
+   Derby - Class org.apache.derby.iapi.services.cache.BatchCleanableFactory
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.iapi.services.cache;
+
+import org.apache.derby.iapi.error.StandardException;
+
+/**
+ * A CacheableFactory whose objects can be cleaned several at a time. When
+ * a cache manager has several dirty objects to clean, for example during a
+ * checkpoint or in its background cleaner, it hands them to the factory in
+ * one call instead of calling {@link Cacheable#clean} on each of them, so
+ * that the factory can order and combine the writes.
+ *
+ * @see CacheableFactory
+ * @see Cacheable#clean
+ */
+public interface BatchCleanableFactory extends CacheableFactory
+{
+    /**
+     * Clean a set of objects, as if {@link Cacheable#clean} had been called
+     * with <code>remove == false</code> on each of them. The objects are kept
+     * by the cache manager for the duration of the call. If cleaning one of
+     * them fails, the others are still cleaned, and the first error is
+     * thrown.
+     *
+     * @param cm the cache manager the objects belong to
+     * @param objects the objects to clean
+     * @param count the number of objects in the array to clean
+     *
+     * @exception StandardException Standard Derby error policy
+     */
+    public void cleanBatch(CacheManager cm, Cacheable[] objects, int count)
+        throws StandardException;
+}
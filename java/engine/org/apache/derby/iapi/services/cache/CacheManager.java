@@ -270,6 +270,32 @@ public interface CacheManager {
 	 */
 	public Collection values();
 
+	/**
+	 * Count an object that has been read into the cache ahead of its use,
+	 * because it is expected to be needed soon. Only counted if the cache
+	 * collects access counts.
+	 */
+	public void countPrefetch();
+
+	/**
+	 * Count an access to an object that was requested to be read into the
+	 * cache ahead of its use. Only counted if the cache collects access
+	 * counts.
+	 *
+	 * @param hit true if the object had been read ahead when it was
+	 *            accessed, false if it had not been read yet
+	 */
+	public void countPrefetchAccess(boolean hit);
+
+	/**
+	 * Count a write of a run of cached objects, which are adjacent in the
+	 * storage of the objects, by a single operation when the cache is
+	 * cleaned in batches. Only counted if the cache collects access counts.
+	 *
+	 * @param objects the number of objects written
+	 */
+	public void countBatchWrite(int objects);
+
     /**
      * <p>
      * Register an MBean that allows user to monitor this cache instance.
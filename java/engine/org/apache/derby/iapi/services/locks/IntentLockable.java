@@ -0,0 +1,44 @@
+/*
+
+   Derby - Class org.apache.derby.iapi.services.locks.IntentLockable
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.iapi.services.locks;
+
+/**
+	A Lockable that is locked with intent qualifiers by most requests, such as
+	a container that is locked in intent mode before each row lock.
+	<P>
+	Intent qualifiers must be compatible with each other, in any compatibility
+	space. The lock manager may then grant locks with intent qualifiers without
+	single threading them through the lock table entry of the Lockable, as long
+	as no lock with another qualifier is granted or waiting on the Lockable.
+	<P>
+	Because of this, lockEvent() and unlockEvent() may be called concurrently
+	for locks with intent qualifiers, and the implementation of these methods
+	must be thread safe for them.
+*/
+public interface IntentLockable extends Lockable {
+
+	/**
+		Return true if the qualifier is an intent qualifier, which is compatible
+		with all other intent qualifiers of this Lockable.
+	*/
+	public boolean isIntentQualifier(Object qualifier);
+}
@@ -128,6 +128,24 @@ public interface LockFactory extends PropertySetCallback {
 	*/
 	public boolean anyoneBlocked();
 
+	/**
+		Count the lock requests of other compatibility spaces that are
+		waiting for a lock on an object that matches a key. The count is
+		an estimate if others lock or unlock objects at the same time.
+
+		@param compatibilitySpace the compatibility space whose own
+		requests are not counted
+		@param key the key that the waited for objects must match
+	*/
+	public int countWaiters(CompatibilitySpace compatibilitySpace,
+							Matchable key);
+
+	/**
+		Return the number of objects locked in the lock table. The number
+		is an estimate if others lock or unlock objects at the same time.
+	*/
+	public int getLockTableSize();
+
 	/**
 		Return true if locks are held in this compatibility space and
 		 this group.
@@ -408,6 +408,27 @@ public interface Activation extends Dependent
 	public void informOfRowCount(NoPutResultSet resultSet, long rowCount)
 					throws StandardException;
 
+	/**
+	 * Reserve memory for an operator of this statement which keeps rows in
+	 * memory and writes them to disk when it runs out of it.  The
+	 * operators of a statement share the memory given by the
+	 * derby.language.maxMemoryPerQuery property, so less than was asked
+	 * for, or nothing, may be granted.  The memory must be given back with
+	 * releaseMemory() when the operator is closed.
+	 *
+	 * @param bytes	The number of bytes wanted
+	 *
+	 * @return	The number of bytes granted
+	 */
+	public int reserveMemory(int bytes);
+
+	/**
+	 * Give back memory granted by reserveMemory().
+	 *
+	 * @param bytes	The number of bytes granted
+	 */
+	public void releaseMemory(int bytes);
+
 	/**
 	 * Get the ConglomerateController, if any, that has already
 	 * been opened for the heap when scaning for an update or delete.
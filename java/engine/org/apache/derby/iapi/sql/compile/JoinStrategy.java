@@ -306,4 +306,26 @@ public interface JoinStrategy {
 	 * @return Whether or not materialization is built in to the join strategy
 	 */
 	public boolean doesMaterialization();
+
+	/**
+	 * Does the join set aside outer rows and join them later?  A join
+	 * strategy which partitions its inputs to disk when the inner table
+	 * does not fit in memory joins some of the outer rows after all the
+	 * others, so the joined rows don't come out in the order of the outer
+	 * rows.
+	 *
+	 * @return Whether or not the join returns its rows out of the order
+	 * of the outer rows
+	 */
+	public boolean spillsOuterRows();
+
+	/**
+	 * Does the join need the outer rows in the order of the join column?
+	 * A join strategy which reads the inner table only once, moving
+	 * forward as the join column of the outer rows grows, can only be
+	 * used when that order is guaranteed.
+	 *
+	 * @return Whether or not the join needs ordered outer rows
+	 */
+	public boolean needsOrderedOuterRows();
 }
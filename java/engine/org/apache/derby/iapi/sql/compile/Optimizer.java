@@ -70,6 +70,15 @@ public interface Optimizer
 	 */
 	String MAX_MEMORY_PER_TABLE = "derby.language.maxMemoryPerTable";
 
+	/**
+		Property name for controlling the maximum size of memory (in KB)
+		that the operators of a statement which partition their rows to
+		disk when they run out of memory, like hybrid hash joins, can use
+		together.  Each of them uses at most maxMemoryPerTable.
+		Default is four times maxMemoryPerTable.
+	 */
+	String MAX_MEMORY_PER_QUERY = "derby.language.maxMemoryPerQuery";
+
 	/**
 		Maximum size of dynamically created materialized rows. Caching large results
 		use lot of memory and can cause stack overflow. See DERBY-634
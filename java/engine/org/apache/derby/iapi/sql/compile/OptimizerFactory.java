@@ -89,6 +89,14 @@ public interface OptimizerFactory {
 	 */
 	public int getMaxMemoryPerTable();
 
+	/**
+	 * Return the maxMemoryPerQuery setting, the memory that the operators
+	 * of a statement which spill to disk can use together at run time.
+	 *
+	 * @return	maxMemoryPerQuery value
+	 */
+	public int getMaxMemoryPerQuery();
+
     /**
      * Tell whether to do join order optimization.
      *
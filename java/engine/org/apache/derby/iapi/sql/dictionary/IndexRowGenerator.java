@@ -35,6 +35,7 @@ import org.apache.derby.iapi.services.context.ContextService;
 import org.apache.derby.iapi.services.io.Formatable;
 import org.apache.derby.iapi.services.io.FormatableBitSet;
 import org.apache.derby.iapi.services.io.StoredFormatIds;
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
 import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.sql.execute.ExecIndexRow;
 import org.apache.derby.iapi.sql.execute.ExecRow;
@@ -75,10 +76,10 @@ public class IndexRowGenerator implements IndexDescriptor, Formatable
      * 								column position in the base table.
      * @param isAscending	An array of booleans telling asc/desc on each
      * 						column.
-     * @param numberOfOrderedColumns	In the future, it will be possible
-     * 									to store non-ordered columns in an
-     * 									index.  These will be useful for
-     * 									covered queries.
+     * @param numberOfOrderedColumns	The number of leading columns which
+     * 									are ordered.  The columns after them
+     * 									are INCLUDE columns, which are only
+     * 									stored in the index for covered queries.
      */
 	public IndexRowGenerator(String indexType,
 								boolean isUnique,
@@ -328,6 +329,16 @@ public class IndexRowGenerator implements IndexDescriptor, Formatable
 		return id.indexType();
 	}
 
+	/**
+	 * Is this a hash index?  A hash index can only be used to look up the
+	 * rows with a value of all the index columns, and does not return the
+	 * rows in key order.
+	 */
+	public boolean isHash()
+	{
+		return AccessFactoryGlobals.HASH.equals(id.indexType());
+	}
+
 	public String toString()
 	{
 		return id.toString();
@@ -104,6 +104,25 @@ public interface NoPutResultSet extends ResultSet, RowLocationRetRowSource
 	 */
 	public ExecRow	getNextRowCore() throws StandardException;
 
+	/**
+	 * Return the next rows of the result, several at a time, as
+	 * getNextRowCore() would have returned them one after the other.
+	 * <p>
+	 * The rows are different objects, and they stay valid until the next
+	 * call to this method or to getNextRowCore(). When this method returns,
+	 * the current row of the result set is the last row of the batch.
+	 * Result sets which don't produce rows in batches return one row at
+	 * a time.
+	 *
+	 * @param batch	the array to put the rows in, of at least one row
+	 *
+	 * @return the number of rows put in the array, 0 when there are no
+	 *		more rows
+	 *
+	 * @exception StandardException thrown on failure.
+	 */
+	public int getNextRowBatch(ExecRow[] batch) throws StandardException;
+
 	/**
 	 * Return the point of attachment for this subquery.
 	 * (Only meaningful for Any and Once ResultSets, which can and will only
@@ -463,6 +463,44 @@ public interface ResultSetFactory {
 		double optimizerEstimatedCost) 
 			throws StandardException;
 
+	/**
+		A ParallelScalarAggregateResultSet computes non-distinct scalar
+		aggregates like a ScalarAggregateResultSet, but may divide the scan
+		of the base table under it between several threads.
+		It will compute the aggregates when open.
+
+		@param source the result set from which to take rows to be 
+			filtered by this operation.
+		@param isInSortedOrder	true if the source result set is in sorted order
+		@param aggregateItem entry in preparedStatement's savedObjects for aggregates
+		@param orderingItem		Ignored to allow same signature as getDistinctScalarAggregateResultSet
+		@param rowAllocator     a reference to a saved object
+			that generates rows of the right size and shape for the source
+		@param rowSize			Ignored to allow same signature as getDistinctScalarAggregateResultSet
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param singleInputRow	Whether we know we have a single input row or not
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@param parallelScanThreads	The number of threads the base table
+			may be scanned by
+		@return the scalar aggregation operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+	NoPutResultSet getParallelScalarAggregateResultSet(NoPutResultSet source,
+		boolean isInSortedOrder,
+		int aggregateItem,
+		int orderingItem,
+		int rowAllocator,
+		int rowSize,
+		int resultSetNumber, 
+		boolean singleInputRow,
+		double optimizerEstimatedRowCount,
+		double optimizerEstimatedCost,
+		int parallelScanThreads) 
+			throws StandardException;
+
 	/**
 		A DistinctScalarAggregateResultSet computes scalar aggregates when 
 		at least one of them is a distinct aggregate.
@@ -532,6 +570,43 @@ public interface ResultSetFactory {
 		boolean isRollup) 
 			throws StandardException;
 
+	/**
+		A HashGroupedAggregateResultSet computes non-distinct grouped
+		aggregates with a hash table instead of a sort, spilling the
+		groups which do not fit in memory to disk. The groups are
+		returned in no particular order.
+		It will compute the aggregates when open.
+
+		@param source the result set from which to take rows to be 
+			filtered by this operation.
+		@param isInSortedOrder	Ignored to allow same signature as getGroupedAggregateResultSet
+		@param aggregateItem entry in preparedStatement's savedObjects for aggregates
+		@param orderingItem entry in preparedStatement's savedObjects for
+			the ordering of the grouping columns
+		@param rowAllocator     a reference to a saved object
+			that generates rows of the right size and shape for the source
+		@param rowSize			Ignored to allow same signature as getGroupedAggregateResultSet
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@param isRollup Ignored to allow same signature as getGroupedAggregateResultSet
+		@return the grouped aggregation operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+	NoPutResultSet getHashGroupedAggregateResultSet(NoPutResultSet source,
+		boolean isInSortedOrder,
+		int aggregateItem,
+		int orderingItem,
+		int rowAllocator,
+		int rowSize,
+		int resultSetNumber, 
+		double optimizerEstimatedRowCount,
+		double optimizerEstimatedCost,
+		boolean isRollup) 
+			throws StandardException;
+
 	/**
 		A DistinctGroupedAggregateResultSet computes scalar aggregates when 
 		at least one of them is a distinct aggregate.
@@ -793,6 +868,134 @@ public interface ResultSetFactory {
 								double optimizerEstimatedCost)
 			throws StandardException;
 
+	/**
+		A hybrid hash scan result set is the inner side of a hybrid hash
+		join.  It builds a hash table on a scan of a table like a hash scan
+		result set, but the hash table is divided into partitions, and the
+		partitions which don't fit in memory are written to disk and
+		joined later.  The arguments are the same as for
+		getHashScanResultSet().
+		<p>
+
+		@see #getHashScanResultSet
+		@return the hybrid hash scan operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+	NoPutResultSet getHybridHashScanResultSet(
+			                    Activation activation,
+								long conglomId,
+								int scociItem,						
+								int resultRowTemplate,
+								int resultSetNumber,
+								GeneratedMethod startKeyGetter,
+								int startSearchOperator,
+								GeneratedMethod stopKeyGetter,
+								int stopSearchOperator,
+								boolean sameStartStopPosition,
+								Qualifier[][] scanQualifiers,
+								Qualifier[][] nextQualifiers,
+								int initialCapacity,
+								float loadFactor,
+								int maxCapacity,
+								int hashKeyColumn,
+								String tableName,
+								String userSuppliedOptimizerOverrides,
+								String indexName,
+								boolean isConstraint,
+								boolean forUpdate,
+								int colRefItem,
+								int indexColItem,
+								int lockMode,
+								boolean tableLocked,
+								int isolationLevel,
+								double optimizerEstimatedRowCount,
+								double optimizerEstimatedCost)
+			throws StandardException;
+
+	/**
+		A merge scan result set is the inner side of a merge join.  It
+		scans an index once, and each time it is reopened it moves
+		forward to the rows whose first key column matches the outer row.
+		<p>
+
+		@param activation the activation for this result set,
+			which provides the context for the row allocation operation.
+		@param conglomId the conglomerate of the index to be scanned.
+		@param scociItem The saved item for the static conglomerate info.
+        @param resultRowTemplate The saved item for result row template.
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param startKeyGetter a reference to a method in the activation
+			that gets the start key indexable row for the scan.  Null
+			means there is no start key.
+			<verbatim>
+				ExecIndexRow startKeyGetter() throws StandardException;
+			</verbatim>
+		@param startSearchOperator The start search operator for opening
+			the scan
+		@param stopKeyGetter	a reference to a method in the activation
+			that gets the stop key indexable row for the scan.  Null means
+			there is no stop key.
+			<verbatim>
+				ExecIndexRow stopKeyGetter() throws StandardException;
+			</verbatim>
+		@param stopSearchOperator	The stop search operator for opening
+			the scan
+		@param sameStartStopPosition	Re-use the startKeyGetter for the stopKeyGetter
+										(Exact match search.)
+		@param scanQualifiers the array of Qualifiers for the scan.
+			Null or an array length of zero means there are no qualifiers.
+		@param nextQualifiers the array of Qualifiers for each outer row.
+			The first one is the equijoin on the first key column.
+		@param tableName		The full name of the table 
+		@param userSuppliedOptimizerOverrides		Overrides specified by the user on the sql
+		@param indexName		The name of the index used to access the table.
+		@param isConstraint		If the index is a backing index for a constraint.
+		@param forUpdate		True means open for update
+		@param colRefItem		An saved item for a bitSet of columns that
+								are referenced in the underlying table.  -1 if
+								no item.
+		@param indexColItem		An saved item for a bitSet of columns that
+								are referenced in the index.  -1 if no item.
+		@param lockMode			The lock granularity to use (see
+								TransactionController in access)
+		@param tableLocked		Whether or not the table is marked as using table locking
+								(in sys.systables)
+		@param isolationLevel	Isolation level (specified or not) to use on scans
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@return the merge scan operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+	NoPutResultSet getMergeScanResultSet(
+			                    Activation activation,
+								long conglomId,
+								int scociItem,						
+								int resultRowTemplate,
+								int resultSetNumber,
+								GeneratedMethod startKeyGetter,
+								int startSearchOperator,
+								GeneratedMethod stopKeyGetter,
+								int stopSearchOperator,
+								boolean sameStartStopPosition,
+								Qualifier[][] scanQualifiers,
+								Qualifier[][] nextQualifiers,
+								String tableName,
+								String userSuppliedOptimizerOverrides,
+								String indexName,
+								boolean isConstraint,
+								boolean forUpdate,
+								int colRefItem,
+								int indexColItem,
+								int lockMode,
+								boolean tableLocked,
+								int isolationLevel,
+								double optimizerEstimatedRowCount,
+								double optimizerEstimatedCost)
+			throws StandardException;
+
 	/**
 		A distinct scan result set pushes duplicate elimination into
 		the scan.
@@ -1269,6 +1472,95 @@ public interface ResultSetFactory {
 								   String userSuppliedOptimizerOverrides)
 			throws StandardException;
 
+	/**
+		A merge join result set forms a result set on top of an
+		ordered outer result set and a merge scan of an index.
+
+		@param leftResultSet	Outer ResultSet for join.
+		@param leftNumCols		Number of columns in the leftResultSet
+		@param rightResultSet	Inner ResultSet for join.
+		@param rightNumCols		Number of columns in the rightResultSet
+		@param joinClause a reference to a method in the activation
+			that is applied to the activation's "current row" field
+			to determine whether the joinClause is satisfied or not.
+			The signature of this method is
+			<verbatim>
+				Boolean joinClause() throws StandardException;
+			</verbatim>
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param oneRowRightSide	boolean, whether or not the right side returns
+								a single row.  (No need to do 2nd next() if it does.)
+		@param notExistsRightSide	boolean, whether or not the right side resides a
+									NOT EXISTS base table
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@param userSuppliedOptimizerOverrides		Overrides specified by the user on the sql
+		@return the merge join operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+    public NoPutResultSet getMergeJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides)
+			throws StandardException;
+
+
+	/**
+		A hybrid hash join result set forms a result set on top of an
+		outer result set and a hybrid hash scan of a table.  The outer
+		rows whose partition of the hash table was written to disk are
+		set aside, and joined after all the other outer rows.
+
+		@param leftResultSet	Outer ResultSet for join.
+		@param leftNumCols		Number of columns in the leftResultSet
+		@param rightResultSet	Inner ResultSet for join.
+		@param rightNumCols		Number of columns in the rightResultSet
+		@param joinClause a reference to a method in the activation
+			that is applied to the activation's "current row" field
+			to determine whether the joinClause is satisfied or not.
+			The signature of this method is
+			<verbatim>
+				Boolean joinClause() throws StandardException;
+			</verbatim>
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param oneRowRightSide	boolean, whether or not the right side returns
+								a single row.  (No need to do 2nd next() if it does.)
+		@param notExistsRightSide	boolean, whether or not the right side resides a
+									NOT EXISTS base table
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@param userSuppliedOptimizerOverrides		Overrides specified by the user on the sql
+		@param leftResultSetsItem	The saved item for the result set
+									numbers of the result sets on the left
+									side, whose current rows are saved with
+									the outer rows which are set aside
+		@return the hybrid hash join operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+    public NoPutResultSet getHybridHashJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides,
+								   int leftResultSetsItem)
+			throws StandardException;
 
 	/**
 		A nested loop join result set forms a result set on top of
@@ -1367,6 +1659,101 @@ public interface ResultSetFactory {
 								   String userSuppliedOptimizerOverrides)
 			throws StandardException;
 
+	/**
+		A left outer join using a merge join.
+
+		@param leftResultSet	Outer ResultSet for join.
+		@param leftNumCols		Number of columns in the leftResultSet
+		@param rightResultSet	Inner ResultSet for join.
+		@param rightNumCols		Number of columns in the rightResultSet
+		@param joinClause a reference to a method in the activation
+			that is applied to the activation's "current row" field
+			to determine whether the joinClause is satisfied or not.
+			The signature of this method is
+			<verbatim>
+				Boolean joinClause() throws StandardException;
+			</verbatim>
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param emptyRowFun a reference to a method in the activation
+							that is called if the right child returns no rows
+		@param wasRightOuterJoin	Whether or not this was originally a right outer join
+		@param oneRowRightSide	boolean, whether or not the right side returns
+								a single row.  (No need to do 2nd next() if it does.)
+		@param notExistsRightSide	boolean, whether or not the right side resides a
+									NOT EXISTS base table
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@param userSuppliedOptimizerOverrides		Overrides specified by the user on the sql
+		@return the merge left outer join operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+    public NoPutResultSet getMergeLeftOuterJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   GeneratedMethod emptyRowFun,
+								   boolean wasRightOuterJoin,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides)
+			throws StandardException;
+
+	/**
+		A left outer join using a hybrid hash join.
+
+		@param leftResultSet	Outer ResultSet for join.
+		@param leftNumCols		Number of columns in the leftResultSet
+		@param rightResultSet	Inner ResultSet for join.
+		@param rightNumCols		Number of columns in the rightResultSet
+		@param joinClause a reference to a method in the activation
+			that is applied to the activation's "current row" field
+			to determine whether the joinClause is satisfied or not.
+			The signature of this method is
+			<verbatim>
+				Boolean joinClause() throws StandardException;
+			</verbatim>
+		@param resultSetNumber	The resultSetNumber for the ResultSet
+		@param emptyRowFun a reference to a method in the activation
+							that is called if the right child returns no rows
+		@param wasRightOuterJoin	Whether or not this was originally a right outer join
+		@param oneRowRightSide	boolean, whether or not the right side returns
+								a single row.  (No need to do 2nd next() if it does.)
+		@param notExistsRightSide	boolean, whether or not the right side resides a
+									NOT EXISTS base table
+		@param optimizerEstimatedRowCount	Estimated total # of rows by
+											optimizer
+		@param optimizerEstimatedCost		Estimated total cost by optimizer
+		@param userSuppliedOptimizerOverrides		Overrides specified by the user on the sql
+		@param leftResultSetsItem	The saved item for the result set
+									numbers of the result sets on the left
+									side, whose current rows are saved with
+									the outer rows which are set aside
+		@return the hybrid hash left outer join operation as a result set.
+		@exception StandardException thrown when unable to create the
+			result set
+	 */
+    public NoPutResultSet getHybridHashLeftOuterJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   GeneratedMethod emptyRowFun,
+								   boolean wasRightOuterJoin,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides,
+								   int leftResultSetsItem)
+			throws StandardException;
+
 	/**
 		A ResultSet which materializes the underlying ResultSet tree into a 
 		temp table on the 1st open.  All subsequent "scans" of this ResultSet
@@ -55,12 +55,19 @@ public interface AccessFactoryGlobals
 	 */
 	public static final int BTREE_OVERFLOW_THRESHOLD = 50;
 	public static final int HEAP_OVERFLOW_THRESHOLD  = 100;
+	public static final int HASH_OVERFLOW_THRESHOLD  = 50;
 	public static final int SORT_OVERFLOW_THRESHOLD  = 100;
 
     public static final String CFG_CONGLOMDIR_CACHE = "ConglomerateDirectoryCache";
 
     public static final String HEAP = "heap";
 
+    /**
+     * The implementation type of hash indexes, which is also the index type
+     * given by CREATE INDEX ... USING HASH.
+     */
+    public static final String HASH = "HASH";
+
 	public static final String DEFAULT_PROPERTY_NAME = "derby.defaultPropertyName";
 
 	public static final String PAGE_RESERVED_SPACE_PROP = "0";
@@ -74,6 +81,12 @@ public interface AccessFactoryGlobals
     public static final String SORT_UNIQUEWITHDUPLICATENULLS_EXTERNAL 
                                     = "sort almost unique external";
 
+    /**
+     * Sort property with the number of worker threads to sort the rows
+     * with, see ExternalSortFactory.createSort().
+     */
+    public static final String SORT_THREADS = "sortThreads";
+
 	public static final String NESTED_READONLY_USER_TRANS = "nestedReadOnlyUserTransaction";
 	public static final String NESTED_UPDATE_USER_TRANS = "nestedUpdateUserTransaction";
 
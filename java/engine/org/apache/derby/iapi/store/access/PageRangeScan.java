@@ -0,0 +1,79 @@
+/*
+
+   Derby - Class org.apache.derby.iapi.store.access.PageRangeScan
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.iapi.store.access;
+
+import org.apache.derby.iapi.error.StandardException;
+
+/**
+ * Allows a scan of a heap to be limited to a range of its pages, so that
+ * several scans, each with a range of its own, can read the heap together.
+ * <p>
+ * The pages of a heap are numbered from FIRST_PAGE upwards, in the order a
+ * full scan reads them.  The page numbers are not dense, some numbers are
+ * used by the store for pages which hold no rows, and pages freed by deletes
+ * keep their numbers.  A set of ranges which follow each other, the first
+ * one starting at FIRST_PAGE and the last one without an end, reads every
+ * row of the heap exactly once, however the ranges are chosen.
+ * <p>
+ * Scans of heaps opened through the TransactionController implement this
+ * interface.
+ *
+ * @see ScanController
+ */
+public interface PageRangeScan
+{
+    /**
+     * The number of the first page of a heap.
+     */
+    public static final long FIRST_PAGE = 1;
+
+    /**
+     * Get the estimated number of pages in the heap of the scan.
+     * <p>
+     * Like the estimated row count, the number is not exact.  It may be
+     * used to choose the page ranges of a set of scans.
+     *
+     * @return The estimated number of pages in the heap.
+     *
+     * @throws  StandardException  Standard exception policy.
+     */
+    public long getEstimatedPageCount()
+        throws StandardException;
+
+    /**
+     * Limit the scan to the pages whose number is at least firstPage and
+     * less than stopPage.
+     * <p>
+     * Must be called before the first row is fetched, after the scan has
+     * been opened or reopened.  The range stays in effect when the scan is
+     * reopened.
+     *
+     * @param firstPage the number of the first page to read, at least
+     *                  FIRST_PAGE
+     * @param stopPage  the number of the first page not to read, or -1 to
+     *                  read up to the last page of the heap
+     *
+     * @throws  StandardException  Standard exception policy.
+     */
+    public void setPageRange(long firstPage, long stopPage)
+        throws StandardException;
+}
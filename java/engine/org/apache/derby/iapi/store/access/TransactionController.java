@@ -1542,6 +1542,18 @@ public interface TransactionController
      */
     public void setNoLockWait(boolean noWait);
 
+    /**
+     * Tell this transaction whether the conglomerates that query execution
+     * opens for read should read a snapshot, if the database has
+     * derby.storage.snapshotReads set. A snapshot read takes no row locks
+     * and sees the rows as they were committed when the transaction first
+     * read a conglomerate. Only safe for transactions that don't change
+     * any rows, such as those of a read only connection.
+     *
+     * @param snapshotReads if {@code true} read snapshots
+     */
+    public void setSnapshotReads(boolean snapshotReads);
+
     /**
      * Return static information about the conglomerate to be included in a
      * a compiled plan.
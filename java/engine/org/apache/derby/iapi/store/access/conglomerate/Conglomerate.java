@@ -137,6 +137,9 @@ public interface Conglomerate extends Storable, DataValueDescriptor
      *                        parameters work together to describe a "row".
      *
      * @param fetchRow        The row to retrieve the maximum value into.
+     *
+     * @param snapshot        The snapshot to read, or null to read the
+     *                        current rows, locking them.
      *
 	 * @return boolean indicating if a row was found and retrieved or not.
      *
@@ -152,7 +155,8 @@ public interface Conglomerate extends Storable, DataValueDescriptor
     LockingPolicy           locking_policy,
     int                     isolation_level,
     FormatableBitSet                 scanColumnList,
-    DataValueDescriptor[]   fetchRow)
+    DataValueDescriptor[]   fetchRow,
+    VersionStore.Snapshot   snapshot)
         throws StandardException;
 
 
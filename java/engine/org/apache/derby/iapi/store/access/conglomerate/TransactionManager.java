@@ -171,6 +171,54 @@ public interface TransactionManager extends TransactionController
     public Transaction getRawStoreXact()
         throws StandardException;
 
+    /**
+     * Get the store of older versions of rows.
+     *
+	 * @return The version store, or null if snapshot reads are not enabled.
+     **/
+    public VersionStore getVersionStore();
+
+    /**
+     * Get the writer which saves the older versions of the rows that this
+     * transaction changes.
+     * <p>
+     * Only called if getVersionStore() is not null.  The writer is created
+     * when the transaction first changes a row, and lasts until the
+     * transaction commits or aborts.
+     *
+	 * @return The writer of this transaction.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public VersionStore.Writer getVersionWriter()
+        throws StandardException;
+
+    /**
+     * Do searches of B-trees use copies of the branch pages instead of
+     * latching them on the way down?
+     *
+	 * @return true if derby.storage.optimisticIndexSearch is set.
+     **/
+    public boolean getOptimisticIndexSearch();
+
+    /**
+     * Do leaf splits of B-trees suffix truncate the key of the branch row
+     * they add?
+     *
+	 * @return true if derby.storage.indexSuffixTruncation is set.
+     **/
+    public boolean getIndexSuffixTruncation();
+
+    /**
+     * Are B-trees loaded from sorted rows built bottom up, and how full
+     * are their pages made?
+     *
+	 * @return the percentage of each page to fill, as set by
+     *         derby.storage.indexLoadFillFactor, or 0 if
+     *         derby.storage.bulkIndexLoad is not set.
+     **/
+    public int getBulkIndexLoadFillFactor();
+
     /**
      * Return existing Conglomerate after doing lookup by ContainerKey
      * <p>
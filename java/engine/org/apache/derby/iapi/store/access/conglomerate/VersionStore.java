@@ -0,0 +1,726 @@
+/*
+
+   Derby - Class org.apache.derby.iapi.store.access.conglomerate.VersionStore
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.iapi.store.access.conglomerate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.daemon.Serviceable;
+import org.apache.derby.iapi.store.raw.ContainerKey;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+import org.apache.derby.iapi.store.raw.xact.RawTransaction;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.RowLocation;
+
+/**
+
+The older versions of rows that snapshot reads need.
+<p>
+While derby.storage.snapshotReads is set, every transaction that changes a
+row of a heap or a btree first saves the state of the row before the change
+here, in a chain of versions of the row, newest first.  A snapshot is taken
+when a read only transaction first reads a conglomerate, and it sees the
+changes of the transactions that committed before it was taken.  A scan that
+reads a snapshot takes no row locks.  When it finds a row that has a chain,
+it walks the chain past the changes it does not see, and returns the row as
+it was before the oldest of them, if the row existed then.
+<p>
+Each change is tagged with its writer, the transaction that made it.  A
+writer gets a commit number when it commits, and a snapshot sees the writers
+whose commit number is not greater than the last commit number when the
+snapshot was taken.  The commit number is assigned when the raw store
+transaction notifies its observers of the commit, before it releases its
+locks, so that no other writer can change a row after it without a commit
+number.  A writer that aborts is never seen by any snapshot, and its changes
+are dropped from the chains once they have been undone.  The changes of a
+committed writer are dropped, together with the older changes of the same
+rows, once every open snapshot sees the writer.
+<p>
+The heap uses the RecordHandle of a row as the key of its chain.  The rows of
+a btree don't have a stable record handle, as they move between pages when
+the tree splits, so a btree uses the contents of the row as its key, which
+include the RowLocation of the base row.  A row with a chain is not purged,
+as a snapshot might still see it.
+<p>
+MT - all methods are MT safe.  The chains are kept in a concurrent map and
+are never changed in place; a writer links a new version in front of a chain
+with a compare and set.  The rest of the state is synchronized on this
+object.
+
+**/
+
+public final class VersionStore
+{
+    /**
+     * Commit number of a writer that has not committed yet.
+     **/
+    private static final long ACTIVE = 0L;
+
+    /**
+     * Commit number of a writer that has aborted, which no snapshot sees.
+     **/
+    private static final long ABORTED = Long.MAX_VALUE;
+
+    /**
+     * The chains of versions, keyed by RecordHandle for heap rows and by
+     * IndexKey for btree rows.
+     **/
+    private final ConcurrentHashMap<Object, Version> chains =
+        new ConcurrentHashMap<Object, Version>();
+
+    /**
+     * The number of chains of each container, so that scans of containers
+     * without chains don't have to look up every row.
+     **/
+    private final ConcurrentHashMap<ContainerKey, AtomicInteger> containers =
+        new ConcurrentHashMap<ContainerKey, AtomicInteger>();
+
+    /**
+     * The last commit number given to a writer.
+     **/
+    private long lastCommitNumber;
+
+    /**
+     * The open snapshots, as the number of snapshots taken at each commit
+     * number.
+     **/
+    private final TreeMap<Long, Integer> snapshots =
+        new TreeMap<Long, Integer>();
+
+    /**
+     * The committed writers whose changes some open snapshot does not see,
+     * in commit order.
+     **/
+    private final ArrayDeque<Writer> committed = new ArrayDeque<Writer>();
+
+    /**************************************************************************
+     * Public Methods of This class:
+     **************************************************************************
+     */
+
+    /**
+     * Take a snapshot of the committed state of the database.
+     * <p>
+     * The snapshot holds one reference, which the caller must release.
+     *
+	 * @return The new snapshot.
+     **/
+    public synchronized Snapshot takeSnapshot()
+    {
+        Long commit_number = new Long(lastCommitNumber);
+        Integer count = snapshots.get(commit_number);
+
+        snapshots.put(
+            commit_number,
+            new Integer(count == null ? 1 : count.intValue() + 1));
+
+        return(new Snapshot(this, lastCommitNumber));
+    }
+
+    /**
+     * Create the writer of the changes of a transaction.
+     * <p>
+     * The writer is registered as an observer of the raw store transaction,
+     * so that it learns when the transaction ends.  A new writer is needed
+     * for each transaction.
+     *
+	 * @return The new writer.
+     *
+     * @param rawtran   The raw store transaction that makes the changes.
+     **/
+    public Writer newWriter(Transaction rawtran)
+    {
+        Writer writer = new Writer(this);
+        rawtran.addObserver(writer);
+        return(writer);
+    }
+
+    /**
+     * Does the container have any chains of versions?
+     *
+     * @param container The container of the rows.
+     **/
+    public boolean hasVersions(ContainerKey container)
+    {
+        AtomicInteger count = containers.get(container);
+        return(count != null && count.get() > 0);
+    }
+
+    /**
+     * Does the row have a chain of versions?
+     * <p>
+     * A row that was deleted must not be purged while it has a chain, as a
+     * snapshot might still see it.
+     *
+     * @param container The container of the row.
+     * @param key       The key of the row, see VersionStore.
+     **/
+    public boolean hasVersions(ContainerKey container, Object key)
+    {
+        return(hasVersions(container) && chains.get(key) != null);
+    }
+
+    /**************************************************************************
+     * Private/Protected methods of This class:
+     **************************************************************************
+     */
+
+    private synchronized void retain(Snapshot snapshot)
+    {
+        snapshot.references++;
+    }
+
+    private synchronized void release(Snapshot snapshot)
+    {
+        if (--snapshot.references > 0)
+            return;
+
+        Long commit_number = new Long(snapshot.commitNumber);
+        int count = snapshots.get(commit_number).intValue();
+
+        if (count == 1)
+            snapshots.remove(commit_number);
+        else
+            snapshots.put(commit_number, new Integer(count - 1));
+
+        // drop the changes that all the remaining snapshots see.
+        long oldest =
+            snapshots.isEmpty() ? ABORTED : snapshots.firstKey().longValue();
+
+        while (!committed.isEmpty() &&
+               committed.peekFirst().commitNumber <= oldest)
+        {
+            dropVersions(committed.removeFirst());
+        }
+    }
+
+    private synchronized void commit(Writer writer)
+    {
+        writer.commitNumber = ++lastCommitNumber;
+
+        if (snapshots.isEmpty())
+            dropVersions(writer);
+        else
+            committed.addLast(writer);
+    }
+
+    /**
+     * Add a version in front of the chain of a row.
+     **/
+    private void addVersion(
+    Writer                  writer,
+    ContainerKey            container,
+    Object                  key,
+    boolean                 existed,
+    DataValueDescriptor[]   row,
+    Object                  old_key)
+    {
+        while (true)
+        {
+            Version head = chains.get(key);
+
+            if (head != null && head.writer == writer)
+            {
+                // the writer has already saved an older state of the row.
+                return;
+            }
+
+            Version next = (old_key == null ? head : chains.get(old_key));
+            Version version =
+                new Version(writer, existed, row, old_key != null, next);
+
+            if (head == null)
+            {
+                AtomicInteger count = containers.get(container);
+                if (count == null)
+                {
+                    AtomicInteger new_count = new AtomicInteger();
+                    count = containers.putIfAbsent(container, new_count);
+                    if (count == null)
+                        count = new_count;
+                }
+
+                // count the chain before it is visible, so that a scan
+                // which finds the changed row also finds the chain.
+                count.incrementAndGet();
+
+                if (chains.putIfAbsent(key, version) == null)
+                    break;
+
+                count.decrementAndGet();
+            }
+            else if (chains.replace(key, head, version))
+            {
+                break;
+            }
+        }
+
+        writer.containers.add(container);
+        writer.keys.add(key);
+    }
+
+    /**
+     * Drop the changes of a writer from the chains.
+     * <p>
+     * If the writer committed, every open snapshot sees it, so the older
+     * versions of the rows are dropped as well.  If it aborted, only its own
+     * changes are dropped, unless a change moved the chain of another row,
+     * which undo has moved back.
+     **/
+    private void dropVersions(Writer writer)
+    {
+        boolean aborted = (writer.commitNumber == ABORTED);
+
+        for (int i = 0; i < writer.keys.size(); i++)
+        {
+            Object key = writer.keys.get(i);
+
+            while (true)
+            {
+                Version head = chains.get(key);
+                if (head == null)
+                    break;
+
+                Version chain = drop(head, writer, aborted);
+                if (chain == head)
+                    break;
+
+                if (chain == null)
+                {
+                    if (chains.remove(key, head))
+                    {
+                        containers.get(
+                            writer.containers.get(i)).decrementAndGet();
+                        break;
+                    }
+                }
+                else if (chains.replace(key, head, chain))
+                {
+                    break;
+                }
+            }
+        }
+
+        writer.keys.clear();
+        writer.containers.clear();
+    }
+
+    /**
+     * Return a copy of a chain without the changes of a writer.
+     **/
+    private static Version drop(Version head, Writer writer, boolean aborted)
+    {
+        ArrayList<Version> kept = new ArrayList<Version>();
+        Version tail = null;
+        boolean found = false;
+
+        for (Version v = head; v != null; v = v.next)
+        {
+            if (v.writer == writer)
+            {
+                found = true;
+                if (!aborted || v.moved)
+                    break;
+            }
+            else
+            {
+                kept.add(v);
+            }
+        }
+
+        if (!found)
+            return(head);
+
+        for (int i = kept.size() - 1; i >= 0; i--)
+        {
+            Version v = kept.get(i);
+            tail = new Version(v.writer, v.existed, v.row, v.moved, tail);
+        }
+
+        return(tail);
+    }
+
+    /**************************************************************************
+     * Nested classes of This class:
+     **************************************************************************
+     */
+
+    /**
+     * A controller which can read a snapshot instead of the current state
+     * of the rows.
+     **/
+    public interface Reader
+    {
+        /**
+         * Read the given snapshot from now on.  The controller must not
+         * lock the rows it reads.
+         *
+         * @param snapshot  The snapshot to read.
+         **/
+        public void setSnapshot(Snapshot snapshot);
+    }
+
+    /**
+     * The state of a row before a change.
+     **/
+    public static final class Version
+    {
+        private final Writer                  writer;
+        private final boolean                 existed;
+        private final DataValueDescriptor[]   row;
+        private final boolean                 moved;
+        private final Version                 next;
+
+        Version(
+        Writer                  writer,
+        boolean                 existed,
+        DataValueDescriptor[]   row,
+        boolean                 moved,
+        Version                 next)
+        {
+            this.writer     = writer;
+            this.existed    = existed;
+            this.row        = row;
+            this.moved      = moved;
+            this.next       = next;
+        }
+
+        /**
+         * Did the row exist before the change?  False if the change
+         * inserted the row, or if the row was deleted.
+         **/
+        public boolean existed()
+        {
+            return(existed);
+        }
+
+        /**
+         * The row before the change, all columns, or null if it was the
+         * same as after the change.  Must not be changed by the caller.
+         **/
+        public DataValueDescriptor[] getRow()
+        {
+            return(row);
+        }
+    }
+
+    /**
+     * A consistent view of the committed state of the database.
+     **/
+    public static final class Snapshot
+    {
+        private final VersionStore  store;
+        private final long          commitNumber;
+
+        /**
+         * The references to the snapshot, guarded by the store.
+         **/
+        private int                 references = 1;
+
+        Snapshot(VersionStore store, long commitNumber)
+        {
+            this.store          = store;
+            this.commitNumber   = commitNumber;
+        }
+
+        /**
+         * Add a reference to the snapshot.
+         **/
+        public void retain()
+        {
+            store.retain(this);
+        }
+
+        /**
+         * Release a reference to the snapshot.  Once all the references
+         * are released, the versions that only this snapshot needed are
+         * dropped.
+         **/
+        public void release()
+        {
+            store.release(this);
+        }
+
+        /**
+         * Does the container have any chains of versions?
+         **/
+        public boolean hasVersions(ContainerKey container)
+        {
+            return(store.hasVersions(container));
+        }
+
+        /**
+         * Find the state of a row that this snapshot sees.
+         *
+         * @return null if the snapshot sees the row as it is in the
+         *         conglomerate, else the state of the row before the
+         *         oldest change that the snapshot does not see.
+         *
+         * @param key   The key of the row, see VersionStore.
+         **/
+        public Version findVersion(Object key)
+        {
+            Version                 found   = null;
+            DataValueDescriptor[]   row     = null;
+
+            for (Version v = store.chains.get(key);
+                 v != null && !sees(v.writer);
+                 v = v.next)
+            {
+                found = v;
+                if (v.row != null)
+                    row = v.row;
+            }
+
+            if (found != null && found.row == null && row != null)
+            {
+                // an older change moved the row from another key, the row
+                // before the change is the row before the move.
+                found =
+                    new Version(found.writer, found.existed, row, false, null);
+            }
+
+            return(found);
+        }
+
+        private boolean sees(Writer writer)
+        {
+            long commit_number = writer.commitNumber;
+            return(commit_number != ACTIVE && commit_number <= commitNumber);
+        }
+    }
+
+    /**
+     * The changes of one transaction.
+     * <p>
+     * Observes the raw store transaction to learn whether it commits or
+     * aborts.  After an abort, it is queued as post abort work, which drops
+     * its changes once they have been undone.
+     **/
+    public static final class Writer implements Observer, Serviceable
+    {
+        private final VersionStore  store;
+        private volatile long       commitNumber = ACTIVE;
+
+        /**
+         * The keys of the changed rows, and the container of each.
+         **/
+        private final ArrayList<Object> keys = new ArrayList<Object>();
+        private final ArrayList<ContainerKey> containers =
+            new ArrayList<ContainerKey>();
+
+        Writer(VersionStore store)
+        {
+            this.store = store;
+        }
+
+        /**
+         * Has the transaction of this writer ended?
+         **/
+        public boolean isComplete()
+        {
+            return(commitNumber != ACTIVE);
+        }
+
+        /**
+         * Has this writer already saved the state of a row?
+         * <p>
+         * A writer only needs the state of a row before its first change of
+         * the row.
+         **/
+        public boolean hasSaved(Object key)
+        {
+            Version head = store.chains.get(key);
+            return(head != null && head.writer == this);
+        }
+
+        /**
+         * Save the state of a heap row before this writer changes it.
+         * <p>
+         * Must be called while the page of the row is latched, before the
+         * change, or for an insert after it but before the latch is
+         * released, so that no scan sees the change without the version.
+         *
+         * @param rh    The record handle of the row.
+         * @param row   The row before the change, all columns, materialized,
+         *              or null if the change inserts the row.
+         **/
+        public void saveVersion(RecordHandle rh, DataValueDescriptor[] row)
+        {
+            store.addVersion(
+                this, rh.getContainerId(), rh, row != null, row, null);
+        }
+
+        /**
+         * Save the state of a btree row before this writer changes it.
+         * <p>
+         * Must be called while the page of the row is latched, before the
+         * change.
+         *
+         * @param key       The row after the change.
+         * @param existed   Did the row exist before the change?
+         * @param old_key   The row before the change if its contents differ
+         *                  from the row after the change, else null.
+         **/
+        public void saveVersion(
+        IndexKey    key,
+        boolean     existed,
+        IndexKey    old_key)
+        {
+            store.addVersion(
+                this, key.container, key, existed,
+                (old_key == null ? null : old_key.row), old_key);
+        }
+
+        /**
+         * Called by the raw store transaction just before it commits or
+         * aborts.
+         **/
+        public void update(Observable obj, Object arg)
+        {
+            if (RawTransaction.COMMIT.equals(arg))
+            {
+                obj.deleteObserver(this);
+                store.commit(this);
+            }
+            else if (RawTransaction.ABORT.equals(arg))
+            {
+                obj.deleteObserver(this);
+                commitNumber = ABORTED;
+                ((Transaction) obj).addPostAbortWork(this);
+            }
+        }
+
+        /**
+         * Drop the changes of an aborted writer.
+         **/
+        public int performWork(ContextManager context)
+            throws StandardException
+        {
+            synchronized (store)
+            {
+                store.dropVersions(this);
+            }
+            return(Serviceable.DONE);
+        }
+
+        public boolean serviceASAP()
+        {
+            return(true);
+        }
+
+        public boolean serviceImmediately()
+        {
+            return(true);
+        }
+    }
+
+    /**
+     * The key of the chain of a btree row: the container and the contents
+     * of the row.
+     **/
+    public static final class IndexKey
+    {
+        private final ContainerKey              container;
+        private final DataValueDescriptor[]     row;
+        private final int                       hash;
+
+        /**
+         * @param container The container of the btree.
+         * @param row       The row, all columns, with the RowLocation of
+         *                  the base row last.  Not copied, so the caller
+         *                  must not change it while the key is in use.
+         **/
+        public IndexKey(ContainerKey container, DataValueDescriptor[] row)
+        {
+            this.container  = container;
+            this.row        = row;
+            this.hash       =
+                container.hashCode() ^ row[row.length - 1].hashCode();
+        }
+
+        /**
+         * Return a key with a copy of the row, to keep in the store.
+         *
+         * @exception  StandardException  Standard exception policy.
+         **/
+        public IndexKey copy()
+            throws StandardException
+        {
+            DataValueDescriptor[] copy = new DataValueDescriptor[row.length];
+            for (int i = 0; i < row.length; i++)
+                copy[i] = row[i].cloneValue(true);
+
+            return(new IndexKey(container, copy));
+        }
+
+        public int hashCode()
+        {
+            return(hash);
+        }
+
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof IndexKey))
+                return(false);
+
+            IndexKey key = (IndexKey) other;
+
+            if (key.hash != hash ||
+                key.row.length != row.length ||
+                !key.container.equals(container))
+            {
+                return(false);
+            }
+
+            try
+            {
+                for (int i = 0; i < row.length; i++)
+                {
+                    if (row[i] instanceof RowLocation)
+                    {
+                        if (!row[i].equals(key.row[i]))
+                            return(false);
+                    }
+                    else if (row[i].compare(key.row[i]) != 0)
+                    {
+                        return(false);
+                    }
+                }
+            }
+            catch (StandardException se)
+            {
+                return(false);
+            }
+
+            return(true);
+        }
+    }
+}
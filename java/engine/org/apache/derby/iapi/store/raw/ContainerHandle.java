@@ -562,6 +562,35 @@ public interface ContainerHandle
 	*/
 	public void setLockingPolicy(LockingPolicy newLockingPolicy);
 
+	/**
+		Return the aux object of the container, or null if there isn't one.
+		<BR>
+		The container cache manages a client object along with the container
+		as long as it remains in cache, shared by all the open handles of the
+		container. Unlike the aux object of a page, it may be used without
+		holding any latch, so it must be thread safe itself.
+
+		<BR> MT - thread safe
+
+		@see AuxObject
+	*/
+	public AuxObject getAuxObject();
+
+	/**
+		Set the aux object of the container, unless one is already set.
+		The aux object is cleared, and auxObjectInvalidated() is called on it,
+		when the container is evicted from the container cache.
+
+		<BR> MT - thread safe
+
+		@param aux the aux object to set if there is none
+		@return the aux object of the container, either aux or the one that
+		was already set by another handle.
+
+		@see AuxObject
+	*/
+	public AuxObject setAuxObject(AuxObject aux);
+
 	/**
 		Return a record handle that is initialized to the given segment id,
         container id, page number and record id.
@@ -29,7 +29,7 @@ import java.io.ObjectInput;
 import java.io.IOException;
 
 import org.apache.derby.shared.common.sanity.SanityManager;
-import org.apache.derby.iapi.services.locks.Lockable;
+import org.apache.derby.iapi.services.locks.IntentLockable;
 import org.apache.derby.iapi.services.locks.Latch;
 import org.apache.derby.iapi.services.locks.VirtualLockTable;
 
@@ -39,7 +39,7 @@ import java.util.Hashtable;
 	A key that identifies a Container within the RawStore.
 	<BR> MT - Immutable
 */
-public final class ContainerKey implements Matchable, Lockable
+public final class ContainerKey implements Matchable, IntentLockable
 {
 	private final long	segmentId;		// segment identifier
 	private final long	containerId;	// container identifier
@@ -162,6 +162,19 @@ public final class ContainerKey implements Matchable, Lockable
 	public void unlockEvent(Latch lockInfo) {
 	}
 
+	/*
+	** Methods of IntentLockable
+	*/
+
+	/**
+		The intent shared and intent exclusive locks are the intent
+		qualifiers of a container.
+	*/
+	public boolean isIntentQualifier(Object qualifier) {
+		return (qualifier == ContainerLock.CIS) ||
+			(qualifier == ContainerLock.CIX);
+	}
+
 	/**
 		This lockable wants to participate in the Virtual Lock table.
 	 */
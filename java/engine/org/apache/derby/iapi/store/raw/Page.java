@@ -206,6 +206,20 @@ public interface Page
 	boolean recordExists(RecordHandle handle, boolean ignoreDelete) 
 		 throws StandardException;
 
+    /**
+     * How full is this page?
+     * <p>
+     * Return the percentage of the space for records on the page which is
+     * in use, including the slot table.  Used by a bulk load of a b-tree to
+     * leave free space on the pages it fills.
+     *
+     * <BR>
+     * MT - latched
+     *
+	 * @return the percentage of the page in use, from 0 to 100.
+     **/
+	int getPercentFilled();
+
     /**
      * Is it likely that an insert will fit on this page?
      * <p>
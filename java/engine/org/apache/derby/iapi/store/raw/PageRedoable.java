@@ -0,0 +1,41 @@
+/*
+
+   Derby - Class org.apache.derby.iapi.store.raw.PageRedoable
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.iapi.store.raw;
+
+/**
+	A PageRedoable is a log operation whose redo reads and changes a single
+	page and nothing else, and does not depend on the state of the
+	transaction it belongs to.
+	<P>
+	Recovery may redo such log operations in parallel with other log
+	operations, as long as all the log operations on the same page are
+	redone in log order.
+
+	@see Loggable#needsRedo
+*/
+public interface PageRedoable extends Loggable {
+
+	/**
+	  Return the page that the redo of this operation changes.
+	*/
+	public PageKey getRedoPageKey();
+}
@@ -31,6 +31,7 @@ import org.apache.derby.iapi.store.access.TransactionController;
 import org.apache.derby.iapi.services.context.ContextManager;
 import org.apache.derby.iapi.types.DataValueFactory;
 
+import java.util.Observer;
 import java.util.Properties;
 
 import org.apache.derby.iapi.services.property.PersistentSet;
@@ -499,6 +500,15 @@ public interface Transaction {
 	*/
 	public void addPostAbortWork(Serviceable work);
 
+	/**
+		Add an observer that is notified just before this transaction
+		commits or aborts, with RawTransaction.COMMIT or RawTransaction.ABORT
+		as the argument. The observer must remove itself when notified.
+
+		@param observer the observer that is added
+	*/
+	public void addObserver(Observer observer);
+
 	/**
 		Add to the list of post termination work that may be processed after this
 		transaction commits or aborts.
@@ -187,6 +187,30 @@ public interface DataFactory extends Corruptable {
 
 	public void checkpoint() throws StandardException;
 
+	/**
+		Take an incremental checkpoint of the data.
+		<P>
+		Only the dirty pages that were first changed before writeBefore, or
+		that cannot be redone from the log, are written. The other dirty
+		pages are left in the cache to be written in the background, and redo
+		recovery has to start at the returned instant to recover them. All
+		the pages that have been written are synced.
+
+		@param writeBefore write the pages first changed before this instant,
+		                   may be null
+		@param nextTarget  the pages first changed before this instant should
+		                   be written in the background before the next
+		                   checkpoint
+
+		@return the instant of the first log record that changed the oldest
+		        page still dirty, or null if there is none
+
+		@exception StandardException Standard Derby Error policy
+	*/
+	public LogInstant checkpointIncremental(
+		LogInstant writeBefore, LogInstant nextTarget)
+		throws StandardException;
+
 	public void idle() throws StandardException;
 
 	/**
@@ -21,8 +21,10 @@
 
 package org.apache.derby.impl.services.cache;
 
+import java.util.Arrays;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.services.context.ContextManager;
 import org.apache.derby.iapi.services.daemon.DaemonService;
@@ -57,10 +59,17 @@ final class BackgroundCleaner implements Serviceable {
     private final ArrayBlockingQueue<CacheEntry> queue;
 
     /**
-     * Flag which tells whether the cleaner should try to shrink the cache
-     * the next time it wakes up.
+     * The entries taken from the queue to be cleaned together. Only used by
+     * the service thread.
      */
-    private volatile boolean shrink;
+    private final CacheEntry[] batch;
+
+    /**
+     * Bit mask which tells which segments of the replacement policy the
+     * cleaner should try to shrink the next time it wakes up. Bit
+     * <i>n</i> is set if segment <i>n</i> should be shrunk.
+     */
+    private final AtomicLong shrink = new AtomicLong();
 
     /** The cache manager owning this cleaner. */
     private final ConcurrentCache cacheManager;
@@ -77,6 +86,7 @@ final class BackgroundCleaner implements Serviceable {
     BackgroundCleaner(
             ConcurrentCache cache, DaemonService daemon, int queueSize) {
         queue = new ArrayBlockingQueue<CacheEntry>(queueSize);
+        batch = new CacheEntry[queueSize];
         daemonService = daemon;
         cacheManager = cache;
         // subscribe with the onDemandOnly flag
@@ -100,11 +110,21 @@ final class BackgroundCleaner implements Serviceable {
     }
 
     /**
-     * Request that the cleaner tries to shrink the cache the next time it
-     * wakes up.
+     * Request that the cleaner tries to shrink a segment of the cache the
+     * next time it wakes up.
+     *
+     * @param segment the index of the segment to shrink (less than 64)
      */
-    void scheduleShrink() {
-        shrink = true;
+    void scheduleShrink(int segment) {
+        final long bit = 1L << segment;
+        long pending;
+        do {
+            pending = shrink.get();
+            if ((pending & bit) != 0) {
+                // already scheduled
+                return;
+            }
+        } while (!shrink.compareAndSet(pending, pending | bit));
         requestService();
     }
 
@@ -132,7 +152,7 @@ final class BackgroundCleaner implements Serviceable {
     }
 
     /**
-     * Clean the first entry in the queue. If there is more work, re-request
+     * Clean the entries in the queue. If there is more work, re-request
      * service from the daemon service.
      *
      * @param context ignored
@@ -144,19 +164,32 @@ final class BackgroundCleaner implements Serviceable {
         // allow others to schedule more work
         scheduled.set(false);
 
-        // First, try to shrink the cache if requested.
-        if (shrink) {
-            shrink = false;
-            cacheManager.getReplacementPolicy().doShrink();
+        // First, try to shrink the segments of the cache that have asked
+        // for it.
+        long pending = shrink.getAndSet(0L);
+        if (pending != 0L) {
+            ReplacementPolicy policy = cacheManager.getReplacementPolicy();
+            while (pending != 0L) {
+                int segment = Long.numberOfTrailingZeros(pending);
+                pending &= pending - 1;
+                policy.doShrink(segment);
+            }
         }
 
-        // See if there are objects waiting to be cleaned.
-        CacheEntry e = queue.poll();
-        if (e != null) {
+        // See if there are objects waiting to be cleaned. Take all of them,
+        // so that a cache that can clean several objects at a time gets to
+        // combine their writes.
+        int count = 0;
+        CacheEntry e;
+        while (count < batch.length && (e = queue.poll()) != null) {
+            batch[count++] = e;
+        }
+        if (count > 0) {
             try {
-                cacheManager.cleanEntry(e);
+                cacheManager.cleanEntries(batch, count);
             } finally {
-                if (!queue.isEmpty() || shrink) {
+                Arrays.fill(batch, 0, count, null);
+                if (!queue.isEmpty() || shrink.get() != 0L) {
                     // We have more work in the queue. Request service again.
                     requestService();
                 }
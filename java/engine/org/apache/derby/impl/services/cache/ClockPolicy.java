@@ -42,6 +42,15 @@ import org.apache.derby.shared.common.sanity.SanityManager;
  *
  * <p>
  *
+ * To let threads that miss in a large cache insert entries in parallel, the
+ * clock may be split into a number of independent segments, each of which
+ * has its own circular buffer, clock hand, maximum size and count of free
+ * entries. An entry is placed in the segment given by the hash code of its
+ * key, and the clock hand of that segment is the only one that is moved to
+ * make room for it.
+ *
+ * <p>
+ *
  * To allow concurrent access from multiple threads, the methods in this class
  * need to synchronize on a number of different objects:
  *
@@ -50,9 +59,9 @@ import org.apache.derby.shared.common.sanity.SanityManager;
  * <li><code>CacheEntry</code> objects must be locked before they can be
  * used</li>
  *
- * <li>accesses to the clock structure (circular buffer + clock hand) should be
- * synchronized on the <code>ArrayList</code> representing the circular
- * buffer</li>
+ * <li>accesses to the clock structure of a segment (circular buffer + clock
+ * hand) should be synchronized on the <code>ArrayList</code> representing
+ * the circular buffer</li>
  *
  * <li>accesses to individual <code>Holder</code> objects in the clock
  * structure should be protected by synchronizing on the holder</li>
@@ -88,592 +97,729 @@ final class ClockPolicy implements ReplacementPolicy {
      */
     private static final float PART_OF_CLOCK_FOR_SHRINK = 0.1f;
 
+    /**
+     * The smallest number of entries per segment when the number of segments
+     * is chosen automatically.
+     */
+    private static final int MIN_SEGMENT_SIZE = 256;
+
+    /** The maximum number of segments. */
+    static final int MAX_SEGMENTS = 64;
+
     /** The cache manager for which this replacement policy is used. */
     private final ConcurrentCache cacheManager;
 
-    /**
-     * The maximum size of the cache. When this size is exceeded, entries must
-     * be evicted before new ones are inserted.
-     */
-    private final int maxSize;
+    /** The segments of the clock. */
+    private final Segment[] segments;
 
     /**
-     * The circular clock buffer which holds all the entries in the
-     * cache. Accesses to <code>clock</code> and <code>hand</code> must be
-     * synchronized on <code>clock</code>.
+     * Create a new <code>ClockPolicy</code> instance.
+     *
+     * @param cacheManager the cache manager that requests this policy
+     * @param initialSize the initial capacity of the cache
+     * @param maxSize the maximum size of the cache
+     * @param segmentCount the number of segments, or 0 to choose the number
+     * from the size of the cache and the number of processors
      */
-    private final ArrayList<Holder> clock;
+    ClockPolicy(ConcurrentCache cacheManager, int initialSize, int maxSize,
+                int segmentCount) {
+        this.cacheManager = cacheManager;
 
-    /** The current position of the clock hand. */
-    private int hand;
+        int n = segmentCount;
+        if (n <= 0) {
+            n = Math.min(2 * Runtime.getRuntime().availableProcessors(),
+                         maxSize / MIN_SEGMENT_SIZE);
+        }
+        n = Math.max(1, Math.min(n, Math.min(MAX_SEGMENTS, maxSize)));
+
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment(
+                    i, share(initialSize, i, n), share(maxSize, i, n));
+        }
+    }
 
     /**
-     * The number of free entries. This is the number of objects that have been
-     * removed from the cache and whose entries are free to be reused without
-     * eviction.
+     * Get the share of a size that belongs to a segment.
+     *
+     * @param total the size to split between the segments
+     * @param i the index of the segment
+     * @param n the number of segments
+     * @return the share of segment {@code i}
      */
-    private final AtomicInteger freeEntries = new AtomicInteger();
+    private static int share(int total, int i, int n) {
+        return total / n + (i < total % n ? 1 : 0);
+    }
 
     /**
-     * Tells whether there currently is a thread in the {@code doShrink()}
-     * method. If this variable is {@code true} a call to {@code doShrink()}
-     * will be a no-op.
+     * Get the number of segments.
+     *
+     * @return the number of segments
      */
-    private final AtomicBoolean isShrinking = new AtomicBoolean();
+    int getSegmentCount() {
+        return segments.length;
+    }
 
     /**
-     * Create a new <code>ClockPolicy</code> instance.
+     * Find the segment that holds the entry for a key.
      *
-     * @param cacheManager the cache manager that requests this policy
-     * @param initialSize the initial capacity of the cache
-     * @param maxSize the maximum size of the cache
+     * @param key the identity of a cached object
+     * @return the segment of the key
      */
-    ClockPolicy(ConcurrentCache cacheManager, int initialSize, int maxSize) {
-        this.cacheManager = cacheManager;
-        this.maxSize = maxSize;
-        clock = new ArrayList<Holder>(initialSize);
+    private Segment segmentFor(Object key) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
     }
 
     @Override
     public int size() {
-        synchronized (clock) {
-            return clock.size();
+        int size = 0;
+        for (int i = 0; i < segments.length; i++) {
+            size += segments[i].size();
         }
+        return size;
     }
 
     /**
-     * Insert an entry into the cache. If the maximum size is exceeded, evict a
-     * <em>not recently used</em> object from the cache. If there are no
-     * entries available for reuse, increase the size of the cache.
+     * Insert an entry into the segment of its key. If the maximum size of
+     * the segment is exceeded, evict a <em>not recently used</em> object
+     * from the segment. If there are no entries available for reuse,
+     * increase the size of the segment.
      *
+     * @param key the identity of the object being inserted
      * @param entry the entry to insert (must be locked)
      * @exception StandardException if an error occurs when inserting the entry
      */
-    public void insertEntry(CacheEntry entry) throws StandardException {
-
-        final int size;
-        synchronized (clock) {
-            size = clock.size();
-            if (size < maxSize) {
-                if (freeEntries.get() == 0) {
-                    // We have not reached the maximum size yet, and there's no
-                    // free entry to reuse. Make room by growing.
-                    clock.add(new Holder(entry));
-                    return;
-                }
-            }
-        }
-
-        if (size > maxSize) {
-            // Maximum size is exceeded. Shrink the clock in the background
-            // cleaner, if we have one; otherwise, shrink it in the current
-            // thread.
-            BackgroundCleaner cleaner = cacheManager.getBackgroundCleaner();
-            if (cleaner != null) {
-                cleaner.scheduleShrink();
-            } else {
-                doShrink();
-            }
-        }
-
-        // Rotate the clock hand (look at up to 20% of the cache) and try to
-        // find free space for the entry. Only allow evictions if the cache
-        // has reached its maximum size. Otherwise, we only look for invalid
-        // entries and rather grow the cache than evict valid entries.
-        Holder h = rotateClock(entry, size >= maxSize);
+    public void insertEntry(Object key, CacheEntry entry)
+            throws StandardException {
+        segmentFor(key).insertEntry(entry);
+    }
 
-        if (h == null) {
-            // didn't find a victim, so we need to grow
-            synchronized (clock) {
-                clock.add(new Holder(entry));
-            }
-        }
+    /**
+     * Try to shrink a segment of the clock if it's larger than its maximum
+     * size.
+     *
+     * @param segment the index of the segment
+     */
+    public void doShrink(int segment) {
+        segments[segment].doShrink();
     }
 
     /**
-     * Holder class which represents an entry in the cache. It maintains a
-     * <code>recentlyUsed</code> required by the clock algorithm. The class
-     * also implements the <code>Callback</code> interface, so that
-     * <code>ConcurrentCache</code> can notify the clock policy about events
-     * relevant to the clock algorithm.
+     * One segment of the clock, with its own circular buffer and clock
+     * hand. The cache entries in a segment are only evicted to make room for
+     * entries whose keys belong to the same segment.
      */
-    private class Holder implements Callback {
-        /**
-         * Flag indicating whether or not this entry has been accessed
-         * recently. Should only be accessed/modified when the current thread
-         * has locked the <code>CacheEntry</code> object stored in the
-         * <code>entry</code> field.
-         */
-        boolean recentlyUsed;
+    private final class Segment {
 
-        /**
-         * Reference to the <code>CacheEntry</code> object held by this
-         * object. The reference should only be accessed when the thread owns
-         * the monitor on this holder. A thread is only allowed to change the
-         * reference if it also has locked the entry that the reference points
-         * to (if the reference is non-null). This ensures that no other thread
-         * can disassociate a holder from its entry while the entry is locked,
-         * even though the monitor on the holder has been released.
-         */
-        private CacheEntry entry;
+        /** The index of this segment. */
+        private final int segmentIndex;
 
         /**
-         * Cacheable object from a removed object. If this object is non-null,
-         * <code>entry</code> must be <code>null</code> (which means that the
-         * holder is not associated with any object in the cache).
+         * The maximum size of this segment. When this size is exceeded, entries
+         * must be evicted before new ones are inserted.
          */
-        private Cacheable freedCacheable;
+        private final int maxSize;
 
         /**
-         * Flag which tells whether this holder has been evicted from the
-         * clock. If it has been evicted, it can't be reused when a new entry
-         * is inserted. Only the owner of this holder's monitor is allowed to
-         * access this variable.
+         * The circular clock buffer which holds all the entries in the
+         * segment. Accesses to <code>clock</code> and <code>hand</code> must be
+         * synchronized on <code>clock</code>.
          */
-        private boolean evicted;
+        private final ArrayList<Holder> clock;
 
-        Holder(CacheEntry e) {
-            entry = e;
-            e.setCallback(this);
-        }
+        /** The current position of the clock hand. */
+        private int hand;
 
         /**
-         * Mark this entry as recently used. Caller must have locked
-         * <code>entry</code>.
+         * The number of free entries. This is the number of objects that have
+         * been removed from the cache and whose entries are free to be reused
+         * without eviction.
          */
-        public void access() {
-            recentlyUsed = true;
-        }
+        private final AtomicInteger freeEntries = new AtomicInteger();
 
         /**
-         * Mark this object as free and reusable. Caller must have locked
-         * <code>entry</code>.
+         * Tells whether there currently is a thread in the {@code doShrink()}
+         * method. If this variable is {@code true} a call to {@code doShrink()}
+         * will be a no-op.
          */
-        public synchronized void free() {
-            freedCacheable = entry.getCacheable();
-            entry = null;
-            recentlyUsed = false;
-            // let others know that a free entry is available
-            int free = freeEntries.incrementAndGet();
-            if (SanityManager.DEBUG) {
-                SanityManager.ASSERT(
-                    free > 0,
-                    "freeEntries should be greater than 0, but is " + free);
-            }
-        }
+        private final AtomicBoolean isShrinking = new AtomicBoolean();
 
         /**
-         * Associate this holder with the specified entry if the holder is free
-         * (that is, not associated with any other entry).
+         * Create a new segment.
          *
-         * @param e the entry to associate the holder with (it must be locked
-         * by the current thread)
-         * @return <code>true</code> if the holder has been associated with the
-         * specified entry, <code>false</code> if someone else has taken it or
-         * the holder has been evicted from the clock
+         * @param index the index of the segment
+         * @param initialSize the initial capacity of the segment
+         * @param maxSize the maximum size of the segment
          */
-        synchronized boolean takeIfFree(CacheEntry e) {
-            if (entry == null && !evicted) {
-                // the holder is free - take it!
-                int free = freeEntries.decrementAndGet();
-                if (SanityManager.DEBUG) {
-                    SanityManager.ASSERT(
-                        free >= 0, "freeEntries is negative: " + free);
-                }
-                e.setCacheable(freedCacheable);
-                e.setCallback(this);
-                entry = e;
-                freedCacheable = null;
-                return true;
-            }
-            // someone else has taken it
-            return false;
+        Segment(int index, int initialSize, int maxSize) {
+            segmentIndex = index;
+            this.maxSize = maxSize;
+            clock = new ArrayList<Holder>(initialSize);
         }
 
         /**
-         * Returns the entry that is currently associated with this holder.
+         * Get the number of entries allocated in the segment.
          *
-         * @return the associated entry
+         * @return the size of the segment
          */
-        synchronized CacheEntry getEntry() {
-            return entry;
+        int size() {
+            synchronized (clock) {
+                return clock.size();
+            }
         }
 
         /**
-         * Switch which entry the holder is associated with. Will be called
-         * when we evict an entry to make room for a new one. When this method
-         * is called, the current thread must have locked both the entry that
-         * is evicted and the entry that is inserted.
+         * Insert an entry into the segment. If the maximum size is exceeded,
+         * evict a <em>not recently used</em> object from the segment. If there
+         * are no entries available for reuse, increase the size of the segment.
          *
-         * @param e the entry to associate this holder with
+         * @param entry the entry to insert (must be locked)
+         * @exception StandardException if an error occurs when inserting the
+         * entry
          */
-        synchronized void switchEntry(CacheEntry e) {
-            e.setCallback(this);
-            e.setCacheable(entry.getCacheable());
-            entry = e;
-        }
+        void insertEntry(CacheEntry entry) throws StandardException {
 
-        /**
-         * Evict this holder from the clock if it is not associated with an
-         * entry.
-         *
-         * @return <code>true</code> if the holder was successfully evicted,
-         * <code>false</code> otherwise
-         */
-        synchronized boolean evictIfFree() {
-            if (entry == null && !evicted) {
-                int free = freeEntries.decrementAndGet();
-                if (SanityManager.DEBUG) {
-                    SanityManager.ASSERT(
-                        free >= 0, "freeEntries is negative: " + free);
+            final int size;
+            synchronized (clock) {
+                size = clock.size();
+                if (size < maxSize) {
+                    if (freeEntries.get() == 0) {
+                        // We have not reached the maximum size yet, and there's
+                        // no free entry to reuse. Make room by growing.
+                        clock.add(new Holder(entry));
+                        return;
+                    }
                 }
-                evicted = true;
-                return true;
             }
-            return false;
-        }
 
-        /**
-         * Mark this holder as evicted from the clock, effectively preventing
-         * reuse of the holder. Calling thread must have locked the holder's
-         * entry.
-         */
-        synchronized void setEvicted() {
-            if (SanityManager.DEBUG) {
-                SanityManager.ASSERT(!evicted, "Already evicted");
+            if (size > maxSize) {
+                // Maximum size is exceeded. Shrink the segment in the
+                // background cleaner, if we have one; otherwise, shrink it in
+                // the current thread.
+                BackgroundCleaner cleaner = cacheManager.getBackgroundCleaner();
+                if (cleaner != null) {
+                    cleaner.scheduleShrink(segmentIndex);
+                } else {
+                    doShrink();
+                }
+            }
+
+            // Rotate the clock hand (look at up to 20% of the cache) and try to
+            // find free space for the entry. Only allow evictions if the cache
+            // has reached its maximum size. Otherwise, we only look for invalid
+            // entries and rather grow the cache than evict valid entries.
+            Holder h = rotateClock(entry, size >= maxSize);
+
+            if (h == null) {
+                // didn't find a victim, so we need to grow
+                synchronized (clock) {
+                    clock.add(new Holder(entry));
+                }
             }
-            evicted = true;
-            entry = null;
         }
 
         /**
-         * Check whether this holder has been evicted from the clock.
-         *
-         * @return <code>true</code> if it has been evicted, <code>false</code>
-         * otherwise
+         * Holder class which represents an entry in the cache. It maintains a
+         * <code>recentlyUsed</code> required by the clock algorithm. The class
+         * also implements the <code>Callback</code> interface, so that
+         * <code>ConcurrentCache</code> can notify the clock policy about events
+         * relevant to the clock algorithm.
          */
-        synchronized boolean isEvicted() {
-            return evicted;
-        }
-    }
+        private class Holder implements Callback {
+            /**
+             * Flag indicating whether or not this entry has been accessed
+             * recently. Should only be accessed/modified when the current
+             * thread has locked the <code>CacheEntry</code> object stored in
+             * the <code>entry</code> field.
+             */
+            boolean recentlyUsed;
+
+            /**
+             * Reference to the <code>CacheEntry</code> object held by this
+             * object. The reference should only be accessed when the thread
+             * owns the monitor on this holder. A thread is only allowed to
+             * change the reference if it also has locked the entry that the
+             * reference points to (if the reference is non-null). This ensures
+             * that no other thread can disassociate a holder from its entry
+             * while the entry is locked, even though the monitor on the holder
+             * has been released.
+             */
+            private CacheEntry entry;
+
+            /**
+             * Cacheable object from a removed object. If this object is
+             * non-null, <code>entry</code> must be <code>null</code> (which
+             * means that the holder is not associated with any object in the
+             * cache).
+             */
+            private Cacheable freedCacheable;
+
+            /**
+             * Flag which tells whether this holder has been evicted from the
+             * clock. If it has been evicted, it can't be reused when a new
+             * entry is inserted. Only the owner of this holder's monitor is
+             * allowed to access this variable.
+             */
+            private boolean evicted;
+
+            Holder(CacheEntry e) {
+                entry = e;
+                e.setCallback(this);
+            }
 
-    /**
-     * Get the holder under the clock hand, and move the hand to the next
-     * holder.
-     *
-     * @return the holder under the clock hand, or {@code null} if the clock is
-     * empty
-     */
-    private Holder moveHand() {
-        synchronized (clock) {
-            if (clock.isEmpty()) {
-                return null;
+            /**
+             * Mark this entry as recently used. Caller must have locked
+             * <code>entry</code>.
+             */
+            public void access() {
+                recentlyUsed = true;
             }
-            if (hand >= clock.size()) {
-                hand = 0;
+
+            /**
+             * Mark this object as free and reusable. Caller must have locked
+             * <code>entry</code>.
+             */
+            public synchronized void free() {
+                freedCacheable = entry.getCacheable();
+                entry = null;
+                recentlyUsed = false;
+                // let others know that a free entry is available
+                int free = freeEntries.incrementAndGet();
+                if (SanityManager.DEBUG) {
+                    SanityManager.ASSERT(
+                        free > 0,
+                        "freeEntries should be greater than 0, but is " + free);
+                }
             }
-            return clock.get(hand++);
-        }
-    }
 
-    /**
-     * Rotate the clock in order to find a free space for a new entry. If
-     * <code>allowEvictions</code> is <code>true</code>, an not recently used
-     * object might be evicted to make room for the new entry. Otherwise, only
-     * unused entries are searched for. When evictions are allowed, entries are
-     * marked as not recently used when the clock hand sweeps over them. The
-     * search stops when a reusable entry is found, or when more than a certain
-     * percentage of the entries have been visited. If there are
-     * free (unused) entries, the search will continue until a reusable entry
-     * is found, regardless of how many entries that need to be checked.
-     *
-     * @param entry the entry to insert
-     * @param allowEvictions tells whether evictions are allowed (normally
-     * <code>true</code> if the cache is full and <code>false</code> otherwise)
-     * @return a holder that we can reuse, or <code>null</code> if we didn't
-     * find one
-     */
-    private Holder rotateClock(CacheEntry entry, boolean allowEvictions)
-            throws StandardException {
+            /**
+             * Associate this holder with the specified entry if the holder is
+             * free (that is, not associated with any other entry).
+             *
+             * @param e the entry to associate the holder with (it must be
+             * locked by the current thread)
+             * @return <code>true</code> if the holder has been associated with
+             * the specified entry, <code>false</code> if someone else has taken
+             * it or the holder has been evicted from the clock
+             */
+            synchronized boolean takeIfFree(CacheEntry e) {
+                if (entry == null && !evicted) {
+                    // the holder is free - take it!
+                    int free = freeEntries.decrementAndGet();
+                    if (SanityManager.DEBUG) {
+                        SanityManager.ASSERT(
+                            free >= 0, "freeEntries is negative: " + free);
+                    }
+                    e.setCacheable(freedCacheable);
+                    e.setCallback(this);
+                    entry = e;
+                    freedCacheable = null;
+                    return true;
+                }
+                // someone else has taken it
+                return false;
+            }
 
-        // Calculate how many items we need to check before we give up
-        // finding an evictable one. If we don't allow evictions, none should
-        // be checked (however, we may search for unused entries in the loop
-        // below).
-        int itemsToCheck = 0;
-        if (allowEvictions) {
-            synchronized (clock) {
-                itemsToCheck = Math.max(MIN_ITEMS_TO_CHECK,
-                                        (int) (clock.size() * MAX_ROTATION));
+            /**
+             * Returns the entry that is currently associated with this holder.
+             *
+             * @return the associated entry
+             */
+            synchronized CacheEntry getEntry() {
+                return entry;
             }
-        }
 
-        // Check up to itemsToCheck entries before giving up, but don't give up
-        // if we know there are unused entries.
-        while (itemsToCheck-- > 0 || freeEntries.get() > 0) {
+            /**
+             * Switch which entry the holder is associated with. Will be called
+             * when we evict an entry to make room for a new one. When this
+             * method is called, the current thread must have locked both the
+             * entry that is evicted and the entry that is inserted.
+             *
+             * @param e the entry to associate this holder with
+             */
+            synchronized void switchEntry(CacheEntry e) {
+                e.setCallback(this);
+                e.setCacheable(entry.getCacheable());
+                entry = e;
+            }
 
-            final Holder h = moveHand();
+            /**
+             * Evict this holder from the clock if it is not associated with an
+             * entry.
+             *
+             * @return <code>true</code> if the holder was successfully evicted,
+             * <code>false</code> otherwise
+             */
+            synchronized boolean evictIfFree() {
+                if (entry == null && !evicted) {
+                    int free = freeEntries.decrementAndGet();
+                    if (SanityManager.DEBUG) {
+                        SanityManager.ASSERT(
+                            free >= 0, "freeEntries is negative: " + free);
+                    }
+                    evicted = true;
+                    return true;
+                }
+                return false;
+            }
 
-            if (h == null) {
-                // There are no elements in the clock, hence there is no
-                // reusable entry.
-                return null;
+            /**
+             * Mark this holder as evicted from the clock, effectively
+             * preventing reuse of the holder. Calling thread must have locked
+             * the holder's entry.
+             */
+            synchronized void setEvicted() {
+                if (SanityManager.DEBUG) {
+                    SanityManager.ASSERT(!evicted, "Already evicted");
+                }
+                evicted = true;
+                entry = null;
             }
 
-            final CacheEntry e = h.getEntry();
+            /**
+             * Check whether this holder has been evicted from the clock.
+             *
+             * @return <code>true</code> if it has been evicted,
+             * <code>false</code> otherwise
+             */
+            synchronized boolean isEvicted() {
+                return evicted;
+            }
+        }
 
-            if (e == null) {
-                if (h.takeIfFree(entry)) {
-                    return h;
+        /**
+         * Get the holder under the clock hand, and move the hand to the next
+         * holder.
+         *
+         * @return the holder under the clock hand, or {@code null} if the clock
+         * is empty
+         */
+        private Holder moveHand() {
+            synchronized (clock) {
+                if (clock.isEmpty()) {
+                    return null;
+                }
+                if (hand >= clock.size()) {
+                    hand = 0;
                 }
-                // Someone else grabbed this entry between the calls to
-                // getEntry() and takeIfFree(). Just move on to the next entry.
-                continue;
+                return clock.get(hand++);
             }
+        }
 
-            if (!allowEvictions) {
-                // Evictions are not allowed, so we can't reuse this entry.
-                continue;
+        /**
+         * Rotate the clock in order to find a free space for a new entry. If
+         * <code>allowEvictions</code> is <code>true</code>, an not recently
+         * used object might be evicted to make room for the new entry.
+         * Otherwise, only unused entries are searched for. When evictions are
+         * allowed, entries are marked as not recently used when the clock hand
+         * sweeps over them. The search stops when a reusable entry is found, or
+         * when more than a certain percentage of the entries have been visited.
+         * If there are free (unused) entries, the search will continue until a
+         * reusable entry is found, regardless of how many entries that need to
+         * be checked.
+         *
+         * @param entry the entry to insert
+         * @param allowEvictions tells whether evictions are allowed (normally
+         * <code>true</code> if the cache is full and <code>false</code>
+         * otherwise)
+         * @return a holder that we can reuse, or <code>null</code> if we didn't
+         * find one
+         */
+        private Holder rotateClock(CacheEntry entry, boolean allowEvictions)
+                throws StandardException {
+
+            // Calculate how many items we need to check before we give up
+            // finding an evictable one. If we don't allow evictions, none
+            // should be checked (however, we may search for unused entries in
+            // the loop below).
+            int itemsToCheck = 0;
+            if (allowEvictions) {
+                synchronized (clock) {
+                    itemsToCheck = Math.max(
+                            MIN_ITEMS_TO_CHECK,
+                            (int) (clock.size() * MAX_ROTATION));
+                }
             }
 
-            // This variable will hold a dirty cacheable that should be cleaned
-            // after the try/finally block.
-            final Cacheable dirty;
+            // Check up to itemsToCheck entries before giving up, but don't give
+            // up if we know there are unused entries.
+            while (itemsToCheck-- > 0 || freeEntries.get() > 0) {
 
-            e.lock();
-            try {
-                if (!isEvictable(e, h, true)) {
-                    continue;
+                final Holder h = moveHand();
+
+                if (h == null) {
+                    // There are no elements in the clock, hence there is no
+                    // reusable entry.
+                    return null;
                 }
 
-                // The entry is not in use, and has not been used for at least
-                // one round on the clock. See if it needs to be cleaned.
-                Cacheable c = e.getCacheable();
-                if (!c.isDirty()) {
-                    // Not in use and not dirty. Take over the holder.
-                    h.switchEntry(entry);
-                    cacheManager.evictEntry(c.getIdentity());
-                    return h;
+                final CacheEntry e = h.getEntry();
+
+                if (e == null) {
+                    if (h.takeIfFree(entry)) {
+                        return h;
+                    }
+                    // Someone else grabbed this entry between the calls to
+                    // getEntry() and takeIfFree(). Just move on to the next
+                    // entry.
+                    continue;
                 }
 
-                // Ask the background cleaner to clean the entry.
-                BackgroundCleaner cleaner = cacheManager.getBackgroundCleaner();
-                if (cleaner != null && cleaner.scheduleClean(e)) {
-                    // Successfully scheduled the clean operation. We can't
-                    // evict it until the clean operation has finished. Since
-                    // we'd like to be as responsive as possible, move on to
-                    // the next entry instead of waiting for the clean
-                    // operation to finish.
+                if (!allowEvictions) {
+                    // Evictions are not allowed, so we can't reuse this entry.
                     continue;
                 }
 
-                // There is no background cleaner, or the background cleaner
-                // has no free capacity. Let's clean the object ourselves.
-                // First, mark the entry as kept to prevent eviction until
-                // we have cleaned it, but don't mark it as accessed (recently
-                // used).
-                e.keep(false);
-                dirty = c;
+                // This variable will hold a dirty cacheable that should be
+                // cleaned after the try/finally block.
+                final Cacheable dirty;
+
+                e.lock();
+                try {
+                    if (!isEvictable(e, h, true)) {
+                        continue;
+                    }
+
+                    // The entry is not in use, and has not been used for at
+                    // least one round on the clock. See if it needs to be
+                    // cleaned.
+                    Cacheable c = e.getCacheable();
+                    if (!c.isDirty()) {
+                        // Not in use and not dirty. Take over the holder.
+                        h.switchEntry(entry);
+                        cacheManager.evictEntry(c.getIdentity());
+                        return h;
+                    }
+
+                    // Ask the background cleaner to clean the entry.
+                    BackgroundCleaner cleaner =
+                            cacheManager.getBackgroundCleaner();
+                    if (cleaner != null && cleaner.scheduleClean(e)) {
+                        // Successfully scheduled the clean operation. We can't
+                        // evict it until the clean operation has finished.
+                        // Since we'd like to be as responsive as possible, move
+                        // on to the next entry instead of waiting for the clean
+                        // operation to finish.
+                        continue;
+                    }
+
+                    // There is no background cleaner, or the background cleaner
+                    // has no free capacity. Let's clean the object ourselves.
+                    // First, mark the entry as kept to prevent eviction until
+                    // we have cleaned it, but don't mark it as accessed
+                    // (recently used).
+                    e.keep(false);
+                    dirty = c;
+
+                } finally {
+                    e.unlock();
+                }
 
-            } finally {
-                e.unlock();
+                // Clean the entry and unkeep it.
+                cacheManager.cleanAndUnkeepEntry(e, dirty);
+
+                // If no one has touched the entry while we were cleaning it, we
+                // could reuse it at this point. The old buffer manager (Clock)
+                // would however under high load normally move on to the next
+                // entry in the clock instead of reusing the one it recently
+                // cleaned. Some of the performance tests performed as part of
+                // DERBY-2911 indicated that not reusing the entry that was just
+                // cleaned made the replacement algorithm more efficient. For
+                // now we try to stay as close to the old buffer manager as
+                // possible and don't reuse the entry immediately.
             }
 
-            // Clean the entry and unkeep it.
-            cacheManager.cleanAndUnkeepEntry(e, dirty);
-
-            // If no one has touched the entry while we were cleaning it, we
-            // could reuse it at this point. The old buffer manager (Clock)
-            // would however under high load normally move on to the next
-            // entry in the clock instead of reusing the one it recently
-            // cleaned. Some of the performance tests performed as part of
-            // DERBY-2911 indicated that not reusing the entry that was just
-            // cleaned made the replacement algorithm more efficient. For now
-            // we try to stay as close to the old buffer manager as possible
-            // and don't reuse the entry immediately.
+            return null;
         }
 
-        return null;
-    }
+        /**
+         * Check if an entry can be evicted. Only entries that still are present
+         * in the cache, are not kept and not recently used, can be evicted.
+         * This method does not check whether the {@code Cacheable} contained in
+         * the entry is dirty, so it may be necessary to clean it before an
+         * eviction can take place even if the method returns {@code true}. The
+         * caller must hold the lock on the entry before calling this method.
+         *
+         * @param e the entry to check
+         * @param h the holder which holds the entry
+         * @param clearRecentlyUsedFlag tells whether or not the recently used
+         * flag should be cleared on the entry ({@code true} only when called as
+         * part of a normal clock rotation)
+         * @return whether or not this entry can be evicted (provided that its
+         * {@code Cacheable} is cleaned first)
+         */
+        private boolean isEvictable(CacheEntry e, Holder h,
+                                    boolean clearRecentlyUsedFlag) {
 
-    /**
-     * Check if an entry can be evicted. Only entries that still are present in
-     * the cache, are not kept and not recently used, can be evicted. This
-     * method does not check whether the {@code Cacheable} contained in the
-     * entry is dirty, so it may be necessary to clean it before an eviction
-     * can take place even if the method returns {@code true}. The caller must
-     * hold the lock on the entry before calling this method.
-     *
-     * @param e the entry to check
-     * @param h the holder which holds the entry
-     * @param clearRecentlyUsedFlag tells whether or not the recently used flag
-     * should be cleared on the entry ({@code true} only when called as part of
-     * a normal clock rotation)
-     * @return whether or not this entry can be evicted (provided that its
-     * {@code Cacheable} is cleaned first)
-     */
-    private boolean isEvictable(CacheEntry e, Holder h,
-                                boolean clearRecentlyUsedFlag) {
+            if (h.getEntry() != e) {
+                // Someone else evicted this entry before we obtained the
+                // lock, so we can't evict it.
+                return false;
+            }
 
-        if (h.getEntry() != e) {
-            // Someone else evicted this entry before we obtained the
-            // lock, so we can't evict it.
-            return false;
-        }
+            if (e.isKept()) {
+                // The entry is in use and cannot be evicted.
+                return false;
+            }
+
+            if (SanityManager.DEBUG) {
+                // At this point the entry must be valid. If it's not, it's
+                // either removed (in which case getEntry() != e and we
+                // shouldn't get here), or it is setting its identity (in which
+                // case it is kept and we shouldn't get here).
+                SanityManager.ASSERT(e.isValid(),
+                                     "Holder contains invalid entry");
+                SanityManager.ASSERT(!h.isEvicted(), "Holder is evicted");
+            }
+
+            if (h.recentlyUsed) {
+                // The object has been used recently, so it cannot be evicted.
+                if (clearRecentlyUsedFlag) {
+                    h.recentlyUsed = false;
+                }
+                return false;
+            }
 
-        if (e.isKept()) {
-            // The entry is in use and cannot be evicted.
-            return false;
+            return true;
         }
 
-        if (SanityManager.DEBUG) {
-            // At this point the entry must be valid. If it's not, it's either
-            // removed (in which case getEntry() != e and we shouldn't get
-            // here), or it is setting its identity (in which case it is kept
-            // and we shouldn't get here).
-            SanityManager.ASSERT(e.isValid(), "Holder contains invalid entry");
-            SanityManager.ASSERT(!h.isEvicted(), "Holder is evicted");
+        /**
+         * Remove the holder at the given clock position.
+         *
+         * @param pos position of the holder
+         * @param h the holder to remove
+         */
+        private void removeHolder(int pos, Holder h) {
+            synchronized (clock) {
+                Holder removed = clock.remove(pos);
+                if (SanityManager.DEBUG) {
+                    SanityManager.ASSERT(removed == h, "Wrong Holder removed");
+                }
+            }
         }
 
-        if (h.recentlyUsed) {
-            // The object has been used recently, so it cannot be evicted.
-            if (clearRecentlyUsedFlag) {
-                h.recentlyUsed = false;
+        /**
+         * Try to shrink the segment if it's larger than its maximum size.
+         */
+        void doShrink() {
+            // If we're already performing a shrink, ignore this request. We'll
+            // get a new call later by someone else if the current shrink
+            // operation is not enough. If we manage to change isShrinking
+            // atomically from false to true, no one else is currently inside
+            // shrinkMe(), and others will be blocked from entering it until we
+            // reset isShrinking to false.
+            if (isShrinking.compareAndSet(false, true)) {
+                try {
+                    shrinkMe();
+                } finally {
+                    // allow others to call shrinkMe()
+                    isShrinking.set(false);
+                }
             }
-            return false;
         }
 
-        return true;
-    }
+        /**
+         * Perform the shrinking of the segment. This method should only be
+         * called by a single thread at a time.
+         */
+        private void shrinkMe() {
 
-    /**
-     * Remove the holder at the given clock position.
-     *
-     * @param pos position of the holder
-     * @param h the holder to remove
-     */
-    private void removeHolder(int pos, Holder h) {
-        synchronized (clock) {
-            Holder removed = clock.remove(pos);
             if (SanityManager.DEBUG) {
-                SanityManager.ASSERT(removed == h, "Wrong Holder removed");
+                SanityManager.ASSERT(isShrinking.get(),
+                        "Called shrinkMe() without ensuring exclusive access");
             }
-        }
-    }
 
-    /**
-     * Try to shrink the clock if it's larger than its maximum size.
-     */
-    public void doShrink() {
-        // If we're already performing a shrink, ignore this request. We'll get
-        // a new call later by someone else if the current shrink operation is
-        // not enough. If we manage to change isShrinking atomically from false
-        // to true, no one else is currently inside shrinkMe(), and others will
-        // be blocked from entering it until we reset isShrinking to false.
-        if (isShrinking.compareAndSet(false, true)) {
-            try {
-                shrinkMe();
-            } finally {
-                // allow others to call shrinkMe()
-                isShrinking.set(false);
+            // Max number of candidates to look at (always at least 1).
+            int maxLooks =
+                    Math.max(1, (int) (maxSize * PART_OF_CLOCK_FOR_SHRINK));
+
+            // Since we don't scan the entire cache, start at the clock hand so
+            // that we don't always scan the first 10% of the cache.
+            int pos;
+            synchronized (clock) {
+                pos = hand;
             }
-        }
-    }
 
-    /**
-     * Perform the shrinking of the clock. This method should only be called
-     * by a single thread at a time.
-     */
-    private void shrinkMe() {
+            while (maxLooks-- > 0) {
 
-        if (SanityManager.DEBUG) {
-            SanityManager.ASSERT(isShrinking.get(),
-                    "Called shrinkMe() without ensuring exclusive access");
-        }
+                final Holder h;
+                final int size;
 
-        // Max number of candidates to look at (always at least 1).
-        int maxLooks = Math.max(1, (int) (maxSize * PART_OF_CLOCK_FOR_SHRINK));
+                // Fetch the next holder from the clock.
+                synchronized (clock) {
+                    size = clock.size();
+                    if (pos >= size) {
+                        pos = 0;
+                    }
+                    h = clock.get(pos);
+                }
 
-        // Since we don't scan the entire cache, start at the clock hand so
-        // that we don't always scan the first 10% of the cache.
-        int pos;
-        synchronized (clock) {
-            pos = hand;
-        }
+                // The index of the holder we're looking at. Since no one else
+                // than us can remove elements from the clock while we're in
+                // this method, and new elements will be added at the end of the
+                // list, the index for a holder does not change until we remove
+                // it.
+                final int index = pos;
 
-        while (maxLooks-- > 0) {
+                // Let pos point at the index of the holder we'll look at in the
+                // next iteration.
+                pos++;
 
-            final Holder h;
-            final int size;
+                // No need to shrink if the size isn't greater than maxSize.
+                if (size <= maxSize) {
+                    break;
+                }
 
-            // Fetch the next holder from the clock.
-            synchronized (clock) {
-                size = clock.size();
-                if (pos >= size) {
-                    pos = 0;
+                final CacheEntry e = h.getEntry();
+
+                if (e == null) {
+                    // The holder does not hold an entry. Try to remove it.
+                    if (h.evictIfFree()) {
+                        removeHolder(index, h);
+                        // move position back because of the removal so that we
+                        // don't skip one clock element
+                        pos = index;
+                    }
+                    // Either the holder was evicted, or someone else took it
+                    // before we could evict it. In either case, we should move
+                    // on to the next holder.
+                    continue;
                 }
-                h = clock.get(pos);
-            }
 
-            // The index of the holder we're looking at. Since no one else than
-            // us can remove elements from the clock while we're in this
-            // method, and new elements will be added at the end of the list,
-            // the index for a holder does not change until we remove it.
-            final int index = pos;
+                e.lock();
+                try {
+                    if (!isEvictable(e, h, false)) {
+                        continue;
+                    }
 
-            // Let pos point at the index of the holder we'll look at in the
-            // next iteration.
-            pos++;
+                    final Cacheable c = e.getCacheable();
+                    if (c.isDirty()) {
+                        // Don't evict dirty entries.
+                        continue;
+                    }
 
-            // No need to shrink if the size isn't greater than maxSize.
-            if (size <= maxSize) {
-                break;
-            }
+                    // mark as evicted to prevent reuse
+                    h.setEvicted();
 
-            final CacheEntry e = h.getEntry();
+                    // remove from cache manager
+                    cacheManager.evictEntry(c.getIdentity());
 
-            if (e == null) {
-                // The holder does not hold an entry. Try to remove it.
-                if (h.evictIfFree()) {
+                    // remove from clock
                     removeHolder(index, h);
+
                     // move position back because of the removal so that we
                     // don't skip one clock element
                     pos = index;
-                }
-                // Either the holder was evicted, or someone else took it
-                // before we could evict it. In either case, we should move on
-                // to the next holder.
-                continue;
-            }
-
-            e.lock();
-            try {
-                if (!isEvictable(e, h, false)) {
-                    continue;
-                }
 
-                final Cacheable c = e.getCacheable();
-                if (c.isDirty()) {
-                    // Don't evict dirty entries.
-                    continue;
+                } finally {
+                    e.unlock();
                 }
-
-                // mark as evicted to prevent reuse
-                h.setEvicted();
-
-                // remove from cache manager
-                cacheManager.evictEntry(c.getIdentity());
-
-                // remove from clock
-                removeHolder(index, h);
-
-                // move position back because of the removal so that we don't
-                // skip one clock element
-                pos = index;
-
-            } finally {
-                e.unlock();
             }
         }
-    }
+}
 }
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.reference.Module;
 import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.cache.BatchCleanableFactory;
 import org.apache.derby.iapi.services.cache.CacheManager;
 import org.apache.derby.iapi.services.cache.Cacheable;
 import org.apache.derby.iapi.services.cache.CacheableFactory;
@@ -58,6 +59,12 @@ import org.apache.derby.mbeans.CacheManagerMBean;
  */
 final class ConcurrentCache implements CacheManager {
 
+    /**
+     * The max number of dirty objects that are kept and handed to a
+     * {@code BatchCleanableFactory} in one call when the cache is cleaned.
+     */
+    private static final int CLEAN_BATCH_SIZE = 128;
+
     /** Map with all the cached objects. */
     private final ConcurrentHashMap<Object, CacheEntry> cache;
     /** Factory which creates <code>Cacheable</code>s. */
@@ -81,6 +88,16 @@ final class ConcurrentCache implements CacheManager {
     private final AtomicLong misses = new AtomicLong();
     /** The number of evictions from the cache. */
     private final AtomicLong evictions = new AtomicLong();
+    /** The number of objects read into the cache ahead of their use. */
+    private final AtomicLong prefetches = new AtomicLong();
+    /** The number of accesses to objects that had been read ahead. */
+    private final AtomicLong prefetchHits = new AtomicLong();
+    /** The number of accesses to objects not yet read ahead. */
+    private final AtomicLong prefetchMisses = new AtomicLong();
+    /** The number of writes of runs of adjacent objects. */
+    private final AtomicLong batchWrites = new AtomicLong();
+    /** The number of objects written by those writes. */
+    private final AtomicLong batchWrittenObjects = new AtomicLong();
 
     /**
      * Flag that indicates whether this cache instance has been shut down. When
@@ -104,11 +121,21 @@ final class ConcurrentCache implements CacheManager {
      * @param name the name of the cache
      * @param initialSize the initial capacity of the cache
      * @param maxSize maximum number of elements in the cache
+     * @param scanResistant if {@code true}, use the scan-resistant
+     * {@code TwoQueuePolicy} instead of {@code ClockPolicy}
+     * @param segments the number of segments of the {@code ClockPolicy}, or
+     * 0 to let the policy choose
      */
     ConcurrentCache(CacheableFactory holderFactory, String name,
-                    int initialSize, int maxSize) {
+                    int initialSize, int maxSize, boolean scanResistant,
+                    int segments) {
         cache = new ConcurrentHashMap<Object, CacheEntry>(initialSize);
-        replacementPolicy = new ClockPolicy(this, initialSize, maxSize);
+        if (scanResistant) {
+            replacementPolicy = new TwoQueuePolicy(this, maxSize);
+        } else {
+            replacementPolicy = new ClockPolicy(
+                    this, initialSize, maxSize, segments);
+        }
         this.holderFactory = holderFactory;
         this.name = name;
         this.maxSize = maxSize;
@@ -226,7 +253,7 @@ final class ConcurrentCache implements CacheManager {
             throws StandardException {
 
         try {
-            replacementPolicy.insertEntry(entry);
+            replacementPolicy.insertEntry(key, entry);
         } catch (StandardException se) {
             // Failed to insert the entry into the replacement policy. Make
             // sure that it's also removed from the hash table.
@@ -505,36 +532,156 @@ final class ConcurrentCache implements CacheManager {
      * <code>null</code> to match all keys
      */
     private void cleanCache(Matchable partialKey) throws StandardException {
-        for (CacheEntry entry : cache.values()) {
-            final Cacheable dirtyObject;
-            entry.lock();
-            try {
-                if (!entry.isValid()) {
-                    // no need to clean an invalid entry
-                    continue;
+        // If the factory can clean several objects at a time, keep the dirty
+        // objects and clean them in batches.
+        final boolean batch = holderFactory instanceof BatchCleanableFactory;
+        final CacheEntry[] entries = batch ? new CacheEntry[CLEAN_BATCH_SIZE] : null;
+        final Cacheable[] objects = batch ? new Cacheable[CLEAN_BATCH_SIZE] : null;
+        int count = 0;
+
+        try {
+            for (CacheEntry entry : cache.values()) {
+                final Cacheable dirtyObject;
+                entry.lock();
+                try {
+                    if (!entry.isValid()) {
+                        // no need to clean an invalid entry
+                        continue;
+                    }
+                    Cacheable c = entry.getCacheable();
+                    if (partialKey != null &&
+                            !partialKey.match(c.getIdentity())) {
+                        // don't clean objects that don't match the partial key
+                        continue;
+                    }
+                    if (!c.isDirty()) {
+                        // already clean
+                        continue;
+                    }
+
+                    // Increment the keep count for this entry to prevent
+                    // others from removing it. Then release the lock on the
+                    // entry to avoid blocking others when the object is
+                    // cleaned.
+                    entry.keep(false);
+                    dirtyObject = c;
+
+                } finally {
+                    entry.unlock();
                 }
-                Cacheable c = entry.getCacheable();
-                if (partialKey != null && !partialKey.match(c.getIdentity())) {
-                    // don't clean objects that don't match the partial key
+
+                if (!batch) {
+                    // Clean the object and decrement the keep count.
+                    cleanAndUnkeepEntry(entry, dirtyObject);
                     continue;
                 }
-                if (!c.isDirty()) {
-                    // already clean
-                    continue;
+
+                entries[count] = entry;
+                objects[count] = dirtyObject;
+                count++;
+
+                if (count == CLEAN_BATCH_SIZE) {
+                    // Clear the count first, the entries are unkept even if
+                    // cleaning fails.
+                    count = 0;
+                    cleanAndUnkeepEntries(entries, objects, CLEAN_BATCH_SIZE);
                 }
+            }
+        } finally {
+            if (count > 0) {
+                cleanAndUnkeepEntries(entries, objects, count);
+            }
+        }
+    }
 
-                // Increment the keep count for this entry to prevent others
-                // from removing it. Then release the lock on the entry to
-                // avoid blocking others when the object is cleaned.
-                entry.keep(false);
-                dirtyObject = c;
+    /**
+     * Clean a set of entries in the cache. Entries that are no longer valid
+     * when they are locked are skipped.
+     *
+     * @param toClean the entries to clean
+     * @param count the number of entries in the array to clean
+     * @exception StandardException if an error occurs while cleaning
+     */
+    void cleanEntries(CacheEntry[] toClean, int count)
+            throws StandardException {
+        if (!(holderFactory instanceof BatchCleanableFactory)) {
+            StandardException error = null;
+            for (int i = 0; i < count; i++) {
+                try {
+                    cleanEntry(toClean[i]);
+                } catch (StandardException se) {
+                    if (error == null) {
+                        error = se;
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return;
+        }
 
+        CacheEntry[] entries = new CacheEntry[count];
+        Cacheable[] objects = new Cacheable[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            CacheEntry entry = toClean[i];
+            entry.lock();
+            try {
+                Cacheable item = entry.getCacheable();
+                if (item == null) {
+                    // nothing to do
+                    continue;
+                }
+                entry.keep(false);
+                entries[kept] = entry;
+                objects[kept] = item;
+                kept++;
             } finally {
                 entry.unlock();
             }
+        }
+
+        if (kept > 0) {
+            cleanAndUnkeepEntries(entries, objects, kept);
+        }
+    }
 
-            // Clean the object and decrement the keep count.
-            cleanAndUnkeepEntry(entry, dirtyObject);
+    /**
+     * Clean a set of entries with {@code BatchCleanableFactory.cleanBatch()}
+     * and decrement their keep counts. The entries must be kept before this
+     * method is called, and they must contain the specified
+     * <code>Cacheable</code>s.
+     *
+     * @param entries the entries to clean
+     * @param items the cached objects contained in the entries
+     * @param count the number of entries to clean
+     * @exception StandardException if an error occurs while cleaning
+     */
+    private void cleanAndUnkeepEntries(
+            CacheEntry[] entries, Cacheable[] items, int count)
+            throws StandardException {
+        try {
+            ((BatchCleanableFactory) holderFactory).cleanBatch(
+                    this, items, count);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                CacheEntry entry = entries[i];
+                entry.lock();
+                try {
+                    if (SanityManager.DEBUG) {
+                        // Since the entry is kept, the Cacheable shouldn't
+                        // have changed.
+                        SanityManager.ASSERT(entry.getCacheable() == items[i],
+                            "CacheEntry didn't contain the expected Cacheable");
+                    }
+                    entry.unkeep();
+                } finally {
+                    entry.unlock();
+                }
+                entries[i] = null;
+                items[i] = null;
+            }
         }
     }
 
@@ -762,6 +909,32 @@ final class ConcurrentCache implements CacheManager {
         }
     }
 
+    /** Count an object read into the cache ahead of its use. */
+    public void countPrefetch() {
+        if (collectAccessCounts) {
+            prefetches.getAndIncrement();
+        }
+    }
+
+    /** Count an access to an object that was requested to be read ahead. */
+    public void countPrefetchAccess(boolean hit) {
+        if (collectAccessCounts) {
+            if (hit) {
+                prefetchHits.getAndIncrement();
+            } else {
+                prefetchMisses.getAndIncrement();
+            }
+        }
+    }
+
+    /** Count a write of a run of adjacent objects. */
+    public void countBatchWrite(int objects) {
+        if (collectAccessCounts) {
+            batchWrites.getAndIncrement();
+            batchWrittenObjects.getAndAdd(objects);
+        }
+    }
+
     /** Enable or disable collection of hit/miss/eviction counts. */
     void setCollectAccessCounts(boolean collect) {
         collectAccessCounts = collect;
@@ -787,6 +960,31 @@ final class ConcurrentCache implements CacheManager {
         return evictions.get();
     }
 
+    /** Get the number of objects read into the cache ahead of their use. */
+    long getPrefetchCount() {
+        return prefetches.get();
+    }
+
+    /** Get the number of accesses to objects that had been read ahead. */
+    long getPrefetchHitCount() {
+        return prefetchHits.get();
+    }
+
+    /** Get the number of accesses to objects not yet read ahead. */
+    long getPrefetchMissCount() {
+        return prefetchMisses.get();
+    }
+
+    /** Get the number of writes of runs of adjacent objects. */
+    long getBatchWriteCount() {
+        return batchWrites.get();
+    }
+
+    /** Get the number of objects written by those writes. */
+    long getBatchWrittenCount() {
+        return batchWrittenObjects.get();
+    }
+
     /** Get the maximum number of entries in the cache. */
     long getMaxEntries() {
         return maxSize;
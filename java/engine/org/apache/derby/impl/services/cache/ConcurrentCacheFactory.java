@@ -21,15 +21,24 @@
 
 package org.apache.derby.impl.services.cache;
 
+import org.apache.derby.iapi.reference.Property;
 import org.apache.derby.iapi.services.cache.CacheFactory;
 import org.apache.derby.iapi.services.cache.CacheManager;
 import org.apache.derby.iapi.services.cache.CacheableFactory;
+import org.apache.derby.iapi.services.property.PropertyUtil;
 
 /**
  * Factory class which creates cache manager instances based on the
  * <code>ConcurrentCache</code> implementation.
  */
 public class ConcurrentCacheFactory implements CacheFactory {
+    /**
+     * The value of {@code derby.cache.replacementPolicy} that selects the
+     * scan-resistant {@code TwoQueuePolicy}. Any other value selects the
+     * default {@code ClockPolicy}.
+     */
+    private static final String TWO_QUEUE_POLICY = "2q";
+
     /**
      * Create a new <code>ConcurrentCache</code> instance.
      *
@@ -42,7 +51,19 @@ public class ConcurrentCacheFactory implements CacheFactory {
     public CacheManager newCacheManager(CacheableFactory holderFactory,
                                         String name,
                                         int initialSize, int maximumSize) {
+        // The policy of a named cache overrides the policy of all caches.
+        String policy = PropertyUtil.getSystemProperty(
+                Property.CACHE_REPLACEMENT_POLICY + "." + name,
+                PropertyUtil.getSystemProperty(
+                        Property.CACHE_REPLACEMENT_POLICY));
+
+        int segments = PropertyUtil.getSystemInt(
+                Property.CACHE_SEGMENTS + "." + name,
+                PropertyUtil.getSystemInt(Property.CACHE_SEGMENTS, 0));
+
         return new ConcurrentCache(holderFactory, name,
-                                   initialSize, maximumSize);
+                                   initialSize, maximumSize,
+                                   TWO_QUEUE_POLICY.equalsIgnoreCase(policy),
+                                   segments);
     }
 }
@@ -68,6 +68,36 @@ final class ConcurrentCacheMBeanImpl implements CacheManagerMBean {
         return cache.getEvictionCount();
     }
 
+    @Override
+    public long getPrefetchCount() {
+        checkPermission();
+        return cache.getPrefetchCount();
+    }
+
+    @Override
+    public long getPrefetchHitCount() {
+        checkPermission();
+        return cache.getPrefetchHitCount();
+    }
+
+    @Override
+    public long getPrefetchMissCount() {
+        checkPermission();
+        return cache.getPrefetchMissCount();
+    }
+
+    @Override
+    public long getBatchWriteCount() {
+        checkPermission();
+        return cache.getBatchWriteCount();
+    }
+
+    @Override
+    public long getBatchWrittenCount() {
+        checkPermission();
+        return cache.getBatchWrittenCount();
+    }
+
     @Override
     public long getMaxEntries() {
         checkPermission();
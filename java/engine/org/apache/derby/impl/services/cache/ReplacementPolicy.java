@@ -41,19 +41,23 @@ interface ReplacementPolicy {
      * use to communicate back to the replacement policy events (for instance,
      * that it has been accessed or become invalid).
      *
+     * @param key the identity of the object being inserted
      * @param entry the entry to insert
      * @exception StandardException if an error occurs while inserting the
      * entry
      *
      * @see CacheEntry#setCallback(ReplacementPolicy.Callback)
      */
-    void insertEntry(CacheEntry entry) throws StandardException;
+    void insertEntry(Object key, CacheEntry entry) throws StandardException;
 
     /**
-     * Try to shrink the cache if it has exceeded its maximum size. It is not
-     * guaranteed that the cache will actually shrink.
+     * Try to shrink a segment of the cache if it has exceeded its maximum
+     * size. It is not guaranteed that the cache will actually shrink.
+     *
+     * @param segment the index of the segment to shrink (0 for a policy
+     * that isn't split into segments)
      */
-    void doShrink();
+    void doShrink(int segment);
 
     /**
      * Get the number of entries allocated in the data structure that holds
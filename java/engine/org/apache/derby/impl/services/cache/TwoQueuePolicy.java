@@ -0,0 +1,684 @@
+/*
+
+   Derby - Class org.apache.derby.impl.services.cache.TwoQueuePolicy
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.services.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.cache.Cacheable;
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+/**
+ * Implementation of a scan-resistant replacement policy based on the 2Q
+ * algorithm (Johnson and Shasha, "2Q: A Low Overhead High Performance Buffer
+ * Management Replacement Algorithm", VLDB 1994).
+ *
+ * <p>
+ *
+ * The entries in the cache are kept in two lists. A new entry is put at the
+ * end of the <em>probation</em> list, which is a FIFO queue. Accesses to an
+ * entry soon after it was inserted are not counted, so that the many
+ * accesses a scan makes to the same object in a short time don't make the
+ * object look frequently used. An entry on probation that is accessed again
+ * after a number of other entries have been inserted is moved to the
+ * <em>frequent</em> list when it reaches the head of the probation list.
+ * Other entries are evicted from the head of the probation list, and their
+ * keys are remembered in a list of <em>ghosts</em>. If an object is
+ * requested again while its key is a ghost, it has been used more than once
+ * within a short time, and the new entry is put in the frequent list
+ * directly. The frequent list is a clock, where an entry that has been
+ * accessed since the clock hand last passed it gets a second chance.
+ *
+ * <p>
+ *
+ * Entries are evicted from the probation list as long as it holds more than
+ * a quarter of the cache, and from the frequent list otherwise. Hence, a scan
+ * of more objects than the cache can hold only replaces the entries on
+ * probation, and leaves the frequently used entries in the cache.
+ *
+ * <p>
+ *
+ * Entries whose objects have been removed from the cache are kept in a
+ * separate list of free entries, and are reused before anything is evicted.
+ *
+ * <p>
+ *
+ * The lists, the ghosts and the fields of a <code>Holder</code> other than
+ * its access history are protected by synchronization on this object.
+ * As in <code>ClockPolicy</code>, a thread may synchronize on this object
+ * while it has locked one or more <code>CacheEntry</code> objects, but it
+ * must not lock a <code>CacheEntry</code> while it is synchronized on this
+ * object.
+ */
+final class TwoQueuePolicy implements ReplacementPolicy {
+
+    /** How large part of the cache the probation list may hold. */
+    private static final float PROBATION_PART = 0.25f;
+
+    /**
+     * The number of ghosts to remember, relative to the maximum size of the
+     * cache.
+     */
+    private static final float GHOST_PART = 0.5f;
+
+    /**
+     * The number of entries that must be inserted after an entry before an
+     * access to it is no longer correlated with its first access, relative
+     * to the maximum size of the cache.
+     */
+    private static final float CORRELATION_PART = 0.05f;
+
+    /**
+     * The minimum number of entries to check before we decide to give up
+     * looking for evictable entries.
+     */
+    private static final int MIN_ITEMS_TO_CHECK = 20;
+
+    /**
+     * How large part of the cache to look at before giving up in
+     * {@code evict()}.
+     */
+    private static final float MAX_ROTATION = 0.2f;
+
+    /**
+     * How large part of the cache to look at before giving up finding an
+     * evictable entry in {@code shrinkMe()}.
+     */
+    private static final float PART_OF_CACHE_FOR_SHRINK = 0.1f;
+
+    /** The cache manager for which this replacement policy is used. */
+    private final ConcurrentCache cacheManager;
+
+    /**
+     * The maximum size of the cache. When this size is exceeded, entries must
+     * be evicted before new ones are inserted.
+     */
+    private final int maxSize;
+
+    /**
+     * The size of the probation list above which entries are evicted from
+     * the probation list rather than from the frequent list.
+     */
+    private final int maxProbationSize;
+
+    /** The maximum number of ghosts. */
+    private final int maxGhosts;
+
+    /**
+     * The number of insertions after an entry within which accesses to the
+     * entry are correlated.
+     */
+    private final int correlatedInsertions;
+
+    /**
+     * The number of entries inserted so far. Only updated when synchronized
+     * on the policy, but read without synchronization by {@code access()}.
+     */
+    private volatile long insertions;
+
+    /** Entries whose objects have been requested once. */
+    private final HolderList probation = new HolderList();
+
+    /** Entries whose objects have been requested more than once. */
+    private final HolderList frequent = new HolderList();
+
+    /** Entries whose objects have been removed from the cache. */
+    private final HolderList free = new HolderList();
+
+    /**
+     * The keys of the objects most recently evicted from the probation list,
+     * in the order they were evicted.
+     */
+    private final LinkedHashSet<Object> ghosts = new LinkedHashSet<Object>();
+
+    /**
+     * Tells whether there currently is a thread in the {@code doShrink()}
+     * method. If this variable is {@code true} a call to {@code doShrink()}
+     * will be a no-op.
+     */
+    private final AtomicBoolean isShrinking = new AtomicBoolean();
+
+    /**
+     * Create a new <code>TwoQueuePolicy</code> instance.
+     *
+     * @param cacheManager the cache manager that requests this policy
+     * @param maxSize the maximum size of the cache
+     */
+    TwoQueuePolicy(ConcurrentCache cacheManager, int maxSize) {
+        this.cacheManager = cacheManager;
+        this.maxSize = maxSize;
+        maxProbationSize = Math.max(1, (int) (maxSize * PROBATION_PART));
+        maxGhosts = Math.max(1, (int) (maxSize * GHOST_PART));
+        correlatedInsertions =
+            Math.max(1, (int) (maxSize * CORRELATION_PART));
+    }
+
+    @Override
+    public synchronized int size() {
+        return probation.size + frequent.size + free.size;
+    }
+
+    /**
+     * Insert an entry into the cache. Reuse a free entry if there is one.
+     * Otherwise, if the maximum size is reached, evict an entry from the
+     * probation list or a not recently used entry from the frequent list.
+     * If no entry can be reused, increase the size of the cache.
+     *
+     * @param key the identity of the object being inserted
+     * @param entry the entry to insert (must be locked)
+     * @exception StandardException if an error occurs when inserting the entry
+     */
+    public void insertEntry(Object key, CacheEntry entry)
+            throws StandardException {
+
+        final int size;
+        final HolderList target;
+        synchronized (this) {
+            // An object that was evicted from the probation list not long
+            // ago goes straight to the frequent list.
+            target = ghosts.remove(key) ? frequent : probation;
+            insertions++;
+
+            if (free.head != null) {
+                takeFree(free.head, entry, target);
+                return;
+            }
+
+            size = size();
+            if (size < maxSize) {
+                // We have not reached the maximum size yet, and there's no
+                // free entry to reuse. Make room by growing.
+                new Holder(entry, target);
+                return;
+            }
+        }
+
+        if (size > maxSize) {
+            // Maximum size is exceeded. Shrink the cache in the background
+            // cleaner, if we have one; otherwise, shrink it in the current
+            // thread.
+            BackgroundCleaner cleaner = cacheManager.getBackgroundCleaner();
+            if (cleaner != null) {
+                cleaner.scheduleShrink(0);
+            } else {
+                doShrink(0);
+            }
+        }
+
+        Holder h = evict(entry, target);
+
+        if (h == null) {
+            // didn't find a victim, so we need to grow
+            synchronized (this) {
+                new Holder(entry, target);
+            }
+        }
+    }
+
+    /**
+     * Holder class which represents an entry in the cache, and its place in
+     * one of the lists. The class also implements the <code>Callback</code>
+     * interface, so that <code>ConcurrentCache</code> can notify the
+     * replacement policy about events relevant to the algorithm.
+     */
+    private final class Holder implements Callback {
+        /**
+         * Flag indicating whether or not this entry has been accessed
+         * recently. Should only be accessed/modified when the current thread
+         * has locked the <code>CacheEntry</code> object stored in the
+         * <code>entry</code> field.
+         */
+        boolean recentlyUsed;
+
+        /**
+         * Flag indicating whether the entry has been accessed after more than
+         * {@code correlatedInsertions} other entries were inserted after it.
+         * Protected like {@code recentlyUsed}.
+         */
+        boolean reused;
+
+        /**
+         * The value of {@code insertions} when the entry was inserted.
+         * Protected like {@code recentlyUsed}.
+         */
+        long insertedAt;
+
+        /**
+         * Reference to the <code>CacheEntry</code> object held by this
+         * object, or <code>null</code> if the holder is in the free list or
+         * has been evicted. A thread is only allowed to change the reference
+         * if it also has locked the entry that the reference points to (if
+         * the reference is non-null).
+         */
+        CacheEntry entry;
+
+        /**
+         * Cacheable object from a removed object. If this object is non-null,
+         * the holder is in the free list.
+         */
+        Cacheable freedCacheable;
+
+        /**
+         * The list this holder is in, or <code>null</code> if it has been
+         * evicted.
+         */
+        HolderList list;
+
+        /** The previous and the next holder in the list. */
+        Holder prev;
+        Holder next;
+
+        /**
+         * Create a holder for an entry and add it to the end of a list.
+         * Caller must be synchronized on the policy.
+         */
+        Holder(CacheEntry e, HolderList l) {
+            entry = e;
+            e.setCallback(this);
+            inserted();
+            l.add(this);
+        }
+
+        /**
+         * Reset the access history when the holder is associated with a
+         * newly inserted entry. Caller must be synchronized on the policy,
+         * and have locked the new entry.
+         */
+        void inserted() {
+            recentlyUsed = false;
+            reused = false;
+            insertedAt = insertions;
+        }
+
+        /**
+         * Mark this entry as recently used, and as reused if it was inserted
+         * long enough ago. Caller must have locked <code>entry</code>.
+         */
+        public void access() {
+            recentlyUsed = true;
+            if (!reused && insertions - insertedAt > correlatedInsertions) {
+                reused = true;
+            }
+        }
+
+        /**
+         * Mark this object as free and reusable, and move it to the list of
+         * free entries. Caller must have locked <code>entry</code>.
+         */
+        public void free() {
+            synchronized (TwoQueuePolicy.this) {
+                freedCacheable = entry.getCacheable();
+                entry = null;
+                list.remove(this);
+                free.add(this);
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of holders.
+     */
+    private static final class HolderList {
+        /** The first and the last holder in the list. */
+        Holder head;
+        Holder tail;
+
+        /** The number of holders in the list. */
+        int size;
+
+        /** Add a holder to the end of the list. */
+        void add(Holder h) {
+            h.list = this;
+            h.prev = tail;
+            h.next = null;
+            if (tail == null) {
+                head = h;
+            } else {
+                tail.next = h;
+            }
+            tail = h;
+            size++;
+        }
+
+        /** Remove a holder from the list. */
+        void remove(Holder h) {
+            if (SanityManager.DEBUG) {
+                SanityManager.ASSERT(h.list == this, "Holder not in list");
+            }
+            if (h.prev == null) {
+                head = h.next;
+            } else {
+                h.prev.next = h.next;
+            }
+            if (h.next == null) {
+                tail = h.prev;
+            } else {
+                h.next.prev = h.prev;
+            }
+            h.prev = null;
+            h.next = null;
+            h.list = null;
+            size--;
+        }
+    }
+
+    /**
+     * Associate a free holder with an entry and move it to the specified
+     * list. Caller must be synchronized on the policy, and have locked the
+     * entry.
+     *
+     * @param h the free holder
+     * @param e the entry to associate the holder with
+     * @param target the list to move the holder to
+     */
+    private void takeFree(Holder h, CacheEntry e, HolderList target) {
+        free.remove(h);
+        e.setCacheable(h.freedCacheable);
+        e.setCallback(h);
+        h.entry = e;
+        h.freedCacheable = null;
+        h.inserted();
+        target.add(h);
+    }
+
+    /**
+     * Remember the key of an object evicted from the probation list,
+     * forgetting the oldest ghost if there are too many. Caller must be
+     * synchronized on the policy.
+     *
+     * @param key the key of the evicted object
+     */
+    private void addGhost(Object key) {
+        if (ghosts.add(key) && ghosts.size() > maxGhosts) {
+            Iterator<Object> it = ghosts.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the next candidate for eviction: the first holder in the probation
+     * list if that list is too large, or else the first holder in the
+     * frequent list. The holder is moved to the end of its list, so that the
+     * next call looks at the next holder. Caller must be synchronized on the
+     * policy.
+     *
+     * @return the candidate, or {@code null} if the lists are empty
+     */
+    private Holder nextCandidate() {
+        HolderList victims =
+            (probation.size > maxProbationSize || frequent.size == 0) ?
+            probation : frequent;
+
+        Holder h = victims.head;
+        if (h != null) {
+            victims.remove(h);
+            victims.add(h);
+        }
+        return h;
+    }
+
+    /**
+     * Find an entry to evict in order to make room for a new entry. Dirty
+     * entries are cleaned, by the background cleaner if possible, and
+     * skipped. The search stops when an entry has been evicted, or when more
+     * than a certain percentage of the entries have been visited.
+     *
+     * @param entry the entry to insert
+     * @param target the list to put the entry in
+     * @return the holder of the evicted entry, now associated with
+     * <code>entry</code>, or <code>null</code> if we didn't find one
+     */
+    private Holder evict(CacheEntry entry, HolderList target)
+            throws StandardException {
+
+        int itemsToCheck;
+        synchronized (this) {
+            itemsToCheck = Math.max(MIN_ITEMS_TO_CHECK,
+                                    (int) (size() * MAX_ROTATION));
+        }
+
+        while (itemsToCheck-- > 0) {
+
+            final Holder h;
+            final CacheEntry e;
+            synchronized (this) {
+                if (free.head != null) {
+                    // An object was removed while we were searching.
+                    h = free.head;
+                    takeFree(h, entry, target);
+                    return h;
+                }
+
+                h = nextCandidate();
+                if (h == null) {
+                    return null;
+                }
+                e = h.entry;
+            }
+
+            // This variable will hold a dirty cacheable that should be cleaned
+            // after the try/finally block.
+            final Cacheable dirty;
+
+            e.lock();
+            try {
+                if (!isEvictable(e, h, true)) {
+                    continue;
+                }
+
+                Cacheable c = e.getCacheable();
+                if (!c.isDirty()) {
+                    // Not in use and not dirty. Take over the holder.
+                    Object key = c.getIdentity();
+                    synchronized (this) {
+                        if (h.list == probation) {
+                            addGhost(key);
+                        }
+                        h.list.remove(h);
+                        h.entry = entry;
+                        h.inserted();
+                        target.add(h);
+                    }
+                    entry.setCallback(h);
+                    entry.setCacheable(c);
+                    cacheManager.evictEntry(key);
+                    return h;
+                }
+
+                // Ask the background cleaner to clean the entry.
+                BackgroundCleaner cleaner = cacheManager.getBackgroundCleaner();
+                if (cleaner != null && cleaner.scheduleClean(e)) {
+                    // Move on to the next entry instead of waiting for the
+                    // clean operation to finish.
+                    continue;
+                }
+
+                // There is no background cleaner, or the background cleaner
+                // has no free capacity. Let's clean the object ourselves,
+                // keeping it so that it is not evicted until it is clean.
+                e.keep(false);
+                dirty = c;
+
+            } finally {
+                e.unlock();
+            }
+
+            // Clean the entry and unkeep it.
+            cacheManager.cleanAndUnkeepEntry(e, dirty);
+        }
+
+        return null;
+    }
+
+    /**
+     * Check if an entry can be evicted. Only entries that still are present in
+     * the cache and are not kept can be evicted. Entries on probation must
+     * not have been reused, and entries in the frequent list must not have
+     * been used recently. This method does not check whether the
+     * {@code Cacheable} contained in the entry is dirty. The caller must hold
+     * the lock on the entry before calling this method.
+     *
+     * @param e the entry to check
+     * @param h the holder which holds the entry
+     * @param clearRecentlyUsedFlag tells whether or not a reused entry on
+     * probation should be moved to the frequent list, and the recently used
+     * flag be cleared on an entry in the frequent list ({@code true} when
+     * looking for an entry to replace)
+     * @return whether or not this entry can be evicted (provided that its
+     * {@code Cacheable} is cleaned first)
+     */
+    private boolean isEvictable(CacheEntry e, Holder h,
+                                boolean clearRecentlyUsedFlag) {
+        final boolean onProbation;
+        synchronized (this) {
+            if (h.entry != e) {
+                // Someone else removed or evicted this entry before we
+                // obtained the lock, so we can't evict it.
+                return false;
+            }
+            onProbation = (h.list == probation);
+        }
+
+        if (e.isKept()) {
+            // The entry is in use and cannot be evicted.
+            return false;
+        }
+
+        if (SanityManager.DEBUG) {
+            SanityManager.ASSERT(e.isValid(), "Holder contains invalid entry");
+        }
+
+        if (onProbation && h.reused) {
+            // The object has been used again some time after it was first
+            // used, and not only by a single scan.
+            if (clearRecentlyUsedFlag) {
+                synchronized (this) {
+                    probation.remove(h);
+                    frequent.add(h);
+                }
+            }
+            return false;
+        }
+
+        if (!onProbation && h.recentlyUsed) {
+            // Give the frequently used object a second chance.
+            if (clearRecentlyUsedFlag) {
+                h.recentlyUsed = false;
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Try to shrink the cache if it's larger than its maximum size. The
+     * policy is not split into segments, so the segment index is ignored.
+     *
+     * @param segment the index of the segment (always 0)
+     */
+    public void doShrink(int segment) {
+        // If we're already performing a shrink, ignore this request. We'll get
+        // a new call later by someone else if the current shrink operation is
+        // not enough.
+        if (isShrinking.compareAndSet(false, true)) {
+            try {
+                shrinkMe();
+            } finally {
+                // allow others to call shrinkMe()
+                isShrinking.set(false);
+            }
+        }
+    }
+
+    /**
+     * Perform the shrinking of the cache. Free entries are dropped first,
+     * then clean entries that are not in use, taken from the probation list
+     * before the frequent list. This method should only be called by a single
+     * thread at a time.
+     */
+    private void shrinkMe() {
+
+        if (SanityManager.DEBUG) {
+            SanityManager.ASSERT(isShrinking.get(),
+                    "Called shrinkMe() without ensuring exclusive access");
+        }
+
+        // Max number of candidates to look at (always at least 1).
+        int maxLooks =
+            Math.max(1, (int) (maxSize * PART_OF_CACHE_FOR_SHRINK));
+
+        while (maxLooks-- > 0) {
+
+            final Holder h;
+            final CacheEntry e;
+            synchronized (this) {
+                if (size() <= maxSize) {
+                    break;
+                }
+
+                if (free.head != null) {
+                    // Drop a free entry, and its Cacheable.
+                    h = free.head;
+                    free.remove(h);
+                    h.freedCacheable = null;
+                    continue;
+                }
+
+                h = nextCandidate();
+                if (h == null) {
+                    break;
+                }
+                e = h.entry;
+            }
+
+            e.lock();
+            try {
+                if (!isEvictable(e, h, false)) {
+                    continue;
+                }
+
+                final Cacheable c = e.getCacheable();
+                if (c.isDirty()) {
+                    // Don't evict dirty entries.
+                    continue;
+                }
+
+                Object key = c.getIdentity();
+                synchronized (this) {
+                    if (h.list == probation) {
+                        addGhost(key);
+                    }
+                    h.list.remove(h);
+                    h.entry = null;
+                }
+
+                cacheManager.evictEntry(key);
+
+            } finally {
+                e.unlock();
+            }
+        }
+    }
+}
@@ -461,6 +461,16 @@ public class IndexStatisticsDaemonImpl
 
                 IndexRowGenerator irg = cds[i].getIndexDescriptor();
 
+                // Skip hash indexes, the cardinality of the key prefixes is
+                // counted in key order, and a hash index has no order.  Keep
+                // the statistics CREATE INDEX and compress computed from the
+                // sorted rows.
+                if (irg.isHash()) {
+                    conglomerateNumber[i]        = -1;
+                    non_disposable_objectUUID[i] = cds[i].getUUID();
+                    continue;
+                }
+
                 // Skip single-column unique indexes unless we're told not to,
                 // or we are running in soft-upgrade-mode on a pre 10.9 db.
                 if (skipDisposableStats) {
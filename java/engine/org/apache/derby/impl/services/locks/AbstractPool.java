@@ -31,6 +31,7 @@ import org.apache.derby.iapi.error.StandardException;
 
 import org.apache.derby.iapi.services.property.PropertyUtil;
 import org.apache.derby.iapi.services.daemon.Serviceable;
+import org.apache.derby.iapi.services.monitor.ModuleControl;
 
 import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.util.Matchable;
@@ -39,6 +40,7 @@ import org.apache.derby.iapi.reference.Property;
 import java.io.Serializable;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.Properties;
 import org.apache.derby.iapi.reference.SQLState;
 import org.apache.derby.iapi.services.locks.LockOwner;
 
@@ -51,7 +53,7 @@ import org.apache.derby.iapi.services.locks.LockOwner;
  *
  * <BR> MT - Mutable - Container Object : Thread Aware
  */
-abstract class AbstractPool implements LockFactory
+abstract class AbstractPool implements LockFactory, ModuleControl
 {
 	/**
 		The complete set of locks in the system
@@ -78,6 +80,20 @@ abstract class AbstractPool implements LockFactory
 	 */
 	protected abstract LockTable createLockTable();
 
+	/*
+	** Methods of ModuleControl
+	*/
+
+	public void boot(boolean create, Properties properties) {
+	}
+
+	/**
+		Stop the background deadlock detection, if it is running.
+	*/
+	public void stop() {
+		lockTable.setDeadlockDetectionInterval(0);
+	}
+
 	/*
 	** Methods of LockFactory
 	*/
@@ -263,6 +279,15 @@ abstract class AbstractPool implements LockFactory
 		return lockTable.anyoneBlocked();
 	}
 
+	public int countWaiters(CompatibilitySpace compatibilitySpace,
+							Matchable key) {
+		return lockTable.countWaiters(compatibilitySpace, key);
+	}
+
+	public int getLockTableSize() {
+		return lockTable.getLockTableSize();
+	}
+
 	/**
 		Return true if locks are held in this group and this space.
 
@@ -387,6 +412,7 @@ abstract class AbstractPool implements LockFactory
 		getAndApply(dbOnly, p, Property.DEADLOCK_TIMEOUT);
 		getAndApply(dbOnly, p, Property.LOCKWAIT_TIMEOUT);
 		getAndApply(dbOnly, p, Property.DEADLOCK_MONITOR);
+		getAndApply(dbOnly, p, Property.DEADLOCK_DETECTION_INTERVAL);
 //EXCLUDE-START-lockdiag- 
         getAndApply(dbOnly, p, Property.DEADLOCK_TRACE);
 //EXCLUDE-END-lockdiag- 
@@ -421,6 +447,8 @@ abstract class AbstractPool implements LockFactory
 				getWaitValue((String) value,  Property.WAIT_TIMEOUT_DEFAULT);
 			else if (key.equals(Property.DEADLOCK_MONITOR))
 				PropertyUtil.booleanProperty(Property.DEADLOCK_MONITOR, value, false);
+			else if (key.equals(Property.DEADLOCK_DETECTION_INTERVAL))
+				getIntervalValue((String) value);
             else if (key.equals(Property.DEADLOCK_TRACE))
                 PropertyUtil.booleanProperty(Property.DEADLOCK_TRACE, value, false);
 		}
@@ -448,6 +476,8 @@ abstract class AbstractPool implements LockFactory
 			deadlockMonitor = PropertyUtil.booleanProperty(Property.DEADLOCK_MONITOR, svalue, false) ?
 				StandardException.REPORT_ALWAYS : StandardException.REPORT_DEFAULT;
 		}
+		else if (key.equals(Property.DEADLOCK_DETECTION_INTERVAL))
+			lockTable.setDeadlockDetectionInterval(getIntervalValue(svalue));
 //EXCLUDE-START-lockdiag- 
         else if (key.equals(Property.DEADLOCK_TRACE))
             lockTable.setDeadlockTrace(PropertyUtil.booleanProperty(Property.DEADLOCK_TRACE, svalue, false));
@@ -477,4 +507,10 @@ abstract class AbstractPool implements LockFactory
 
 		return wait;
 	}
+
+	private static int getIntervalValue(String value) {
+
+		// the interval is defined in milliseconds, 0 disables the detector
+		return PropertyUtil.handleInt(value, 0, Integer.MAX_VALUE, 0);
+	}
 }
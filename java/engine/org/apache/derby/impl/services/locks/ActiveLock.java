@@ -57,6 +57,15 @@ public final class ActiveLock extends Lock {
 	*/
 	protected boolean canSkip;
 
+	/**
+		Information about the deadlock this lock request was picked to
+		break by the background deadlock detection, in the form returned
+		by <code>Deadlock.look()</code>. Null if it has not been picked.
+
+		MT - mutable - java synchronized(this)
+	*/
+	private Object[] deadlockData;
+
 	/**
 		Initialize the lock, should be seen as part of the constructor. A future
 		version of this class may become mutable - mutable identity.
@@ -140,5 +149,32 @@ public final class ActiveLock extends Lock {
 			wakeUpNow = why;
 		notify();
 	}
-}
 
+	/**
+		Wake up the thread waiting on this lock because it has been picked
+		as the victim of a deadlock by the background deadlock detection.
+
+		MT - Thread Safe
+
+		@param data information about the deadlock, as returned by
+		<code>Deadlock.look()</code>
+	*/
+	protected synchronized void wakeUpDeadlockVictim(Object[] data) {
+		deadlockData = data;
+		wakeUpNow = Constants.WAITING_LOCK_DEADLOCK;
+		notify();
+	}
+
+	/**
+		Get the information about the deadlock this lock request was picked
+		to break by the background deadlock detection.
+
+		MT - Thread Safe
+
+		@return the deadlock information, or null if this lock request has
+		not been picked as a victim
+	*/
+	protected synchronized Object[] getDeadlockData() {
+		return deadlockData;
+	}
+}
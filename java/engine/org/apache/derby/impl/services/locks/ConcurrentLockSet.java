@@ -22,9 +22,11 @@
 package org.apache.derby.impl.services.locks;
 
 import org.apache.derby.iapi.services.locks.CompatibilitySpace;
+import org.apache.derby.iapi.services.locks.IntentLockable;
 import org.apache.derby.iapi.services.locks.Latch;
 import org.apache.derby.iapi.services.locks.Lockable;
 import org.apache.derby.iapi.services.locks.C_LockFactory;
+import org.apache.derby.iapi.util.Matchable;
 
 import org.apache.derby.iapi.error.StandardException;
 
@@ -35,12 +37,14 @@ import org.apache.derby.iapi.reference.Property;
 import org.apache.derby.iapi.reference.SQLState;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 
 
@@ -59,6 +63,10 @@ import java.util.Map;
 
 	<BR>
 	The class creates ActiveLock and LockControl objects.
+
+	Intent locks on an <code>IntentLockable</code> are granted without
+	locking its entry in the lock table, as long as only intent locks are
+	granted on it. See <code>IntentEntry</code>.
 	
 	LockControl objects are never passed out of this class, All the methods of 
     LockControl are called while holding a ReentrantLock associated with the
@@ -82,6 +90,20 @@ final class ConcurrentLockSet implements LockTable {
      * <code>Lock</code>s. */
     private final ConcurrentHashMap<Lockable, Entry> locks;
 
+    /** Hash table which maps <code>IntentLockable</code> objects to the
+     * intent locks granted on them through the fast path. */
+    private final ConcurrentHashMap<Lockable, IntentEntry> intents;
+
+    /** Lowest value of <code>intentSweepLimit</code>. */
+    private static final int MIN_INTENT_SWEEP_LIMIT = 1024;
+
+    /**
+     * Number of entries in <code>intents</code> above which the next lock
+     * request that misses the fast path removes the entries that have no
+     * locks granted.
+     */
+    private volatile int intentSweepLimit = MIN_INTENT_SWEEP_LIMIT;
+
     /**
      * List containing all entries seen by the last call to
      * <code>addWaiters()</code>. Makes it possible for the deadlock detection
@@ -111,6 +133,21 @@ final class ConcurrentLockSet implements LockTable {
 	// The number of waiters for locks
 	private final AtomicInteger blockCount;
 
+    /**
+     * The background deadlock detection, or <code>null</code> if it is not
+     * running. Only changed while synchronized on this object.
+     */
+    private volatile DeadlockDetector detector;
+
+    /**
+     * The waiting lock requests, keyed by compatibility space. Requests are
+     * only added while the background deadlock detection is running, so
+     * that it does not have to visit every entry of the lock table to find
+     * the waiters.
+     */
+    private final ConcurrentHashMap<CompatibilitySpace, ActiveLock>
+        waitingLocks;
+
 	/*
 	** Constructor
 	*/
@@ -119,6 +156,8 @@ final class ConcurrentLockSet implements LockTable {
 		this.factory = factory;
         blockCount = new AtomicInteger();
 		locks = new ConcurrentHashMap<Lockable, Entry>();
+        intents = new ConcurrentHashMap<Lockable, IntentEntry>();
+        waitingLocks = new ConcurrentHashMap<CompatibilitySpace, ActiveLock>();
 	}
 
     /**
@@ -215,6 +254,124 @@ final class ConcurrentLockSet implements LockTable {
         }
     }
 
+    /**
+     * Class representing the intent locks on an <code>IntentLockable</code>
+     * that have been granted without locking its entry in the lock table.
+     * <p>
+     * The fast path of the Lockable is open while only intent locks are
+     * granted on it and no one waits for it. Any other request closes the
+     * fast path while it holds the entry of the Lockable, and moves the
+     * intent locks into the <code>Control</code> of the entry, where they
+     * take part in the compatibility checks, the deadlock detection and
+     * the lock table views like any other lock. The fast path is opened
+     * again when the entry only holds intent locks. While the fast path is
+     * open, the Lockable has no <code>Control</code> in the lock table.
+     * <p>
+     * Requests on the fast path are counted in striped counters, each in
+     * its own cache line, so that transactions in different compatibility
+     * spaces do not write to the same memory. The sign bit of all the
+     * counters is set while the fast path is closed.
+     */
+    private static final class IntentEntry {
+        /** Number of counters, must be a power of two. */
+        private static final int STRIPES = 8;
+        /** Distance between two counters in the array. */
+        private static final int PADDING = 16;
+        /** Bit set in a counter while the fast path is closed. */
+        private static final int CLOSED = Integer.MIN_VALUE;
+
+        /** The counters of requests on the fast path. */
+        private final AtomicIntegerArray stripes =
+            new AtomicIntegerArray(STRIPES * PADDING);
+
+        /**
+         * The locks granted through the fast path. The count of a lock is
+         * only changed by the transaction that owns its compatibility space,
+         * or by a thread that has closed the fast path.
+         */
+        final ConcurrentHashMap<Lock, Lock> granted =
+            new ConcurrentHashMap<Lock, Lock>();
+
+        /**
+         * Create an entry with a closed fast path.
+         */
+        IntentEntry() {
+            for (int i = 0; i < STRIPES * PADDING; i += PADDING) {
+                stripes.set(i, CLOSED);
+            }
+        }
+
+        /**
+         * Enter the fast path, unless it is closed.
+         *
+         * @param space the compatibility space of the request
+         * @return the counter to pass to <code>exit()</code>, or -1 if the
+         * fast path is closed
+         */
+        int enter(CompatibilitySpace space) {
+            int h = space.hashCode();
+            int index = ((h ^ (h >>> 16)) & (STRIPES - 1)) * PADDING;
+            for (;;) {
+                int count = stripes.get(index);
+                if (count < 0) {
+                    return -1;
+                }
+                if (stripes.compareAndSet(index, count, count + 1)) {
+                    return index;
+                }
+            }
+        }
+
+        /**
+         * Leave the fast path.
+         *
+         * @param index the counter returned by <code>enter()</code>
+         */
+        void exit(int index) {
+            stripes.decrementAndGet(index);
+        }
+
+        /**
+         * Check whether the fast path is open. The first counter is closed
+         * first and opened last, so the fast path is not reported open
+         * while it is being closed.
+         */
+        boolean isOpen() {
+            return stripes.get(0) >= 0;
+        }
+
+        /**
+         * Close the fast path, and wait for the requests on it to leave.
+         * Must only be called by a thread that has locked the entry of the
+         * Lockable in the lock table.
+         */
+        void close() {
+            for (int i = 0; i < STRIPES * PADDING; i += PADDING) {
+                for (;;) {
+                    int count = stripes.get(i);
+                    if (stripes.compareAndSet(i, count, count | CLOSED)) {
+                        break;
+                    }
+                }
+            }
+            for (int i = 0; i < STRIPES * PADDING; i += PADDING) {
+                while (stripes.get(i) != CLOSED) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Open the fast path. Must only be called by a thread that has
+         * locked the entry of the Lockable in the lock table.
+         */
+        void open() {
+            for (int i = (STRIPES - 1) * PADDING; i >= 0; i -= PADDING) {
+                stripes.set(i, 0);
+            }
+        }
+    }
+
     /**
      * Get an entry from the lock table. If no entry exists for the
      * <code>Lockable</code>, insert an entry. The returned entry will be
@@ -285,6 +442,202 @@ final class ConcurrentLockSet implements LockTable {
         }
     }
 
+    /**
+     * Grant an intent lock through the fast path of its Lockable.
+     *
+     * @param space the compatibility space of the request
+     * @param ref the Lockable to lock
+     * @param qualifier an intent qualifier of the Lockable
+     * @return the granted lock, or <code>null</code> if the fast path is
+     * closed
+     */
+    private Lock lockIntent(CompatibilitySpace space, Lockable ref,
+                            Object qualifier) {
+        IntentEntry ie = intents.get(ref);
+        if (ie == null) {
+            return null;
+        }
+
+        int stripe = ie.enter(space);
+        if (stripe < 0) {
+            return null;
+        }
+        try {
+            Lock lockItem = new Lock(space, ref, qualifier);
+            Lock held = ie.granted.putIfAbsent(lockItem, lockItem);
+            if (held != null) {
+                // we already held a lock of this type, bump the lock count
+                lockItem = held;
+            }
+            lockItem.grant();
+            return lockItem;
+        } finally {
+            ie.exit(stripe);
+        }
+    }
+
+    /**
+     * Release a lock granted through the fast path.
+     *
+     * @param ie the fast path entry of the Lockable
+     * @param item the lock to release
+     * @param unlockCount the number of times to unlock the item (if zero,
+     * take the unlock count from item)
+     * @return <code>true</code> if the lock was released, <code>false</code>
+     * if the fast path is closed, and the lock must be released through the
+     * entry in the lock table
+     */
+    private boolean unlockIntent(IntentEntry ie, Latch item, int unlockCount) {
+        int stripe = ie.enter(item.getCompatabilitySpace());
+        if (stripe < 0) {
+            return false;
+        }
+        try {
+            Lock lockInSet = ie.granted.get(item);
+
+            if (SanityManager.DEBUG) {
+                SanityManager.ASSERT(lockInSet != null,
+                    "lock not found in fast path: " + item);
+            }
+
+            if (unlockCount == 0) {
+                unlockCount = item.getCount();
+            }
+            lockInSet.unlock(unlockCount);
+            if (lockInSet.getCount() == 0) {
+                ie.granted.remove(lockInSet);
+            }
+            return true;
+        } finally {
+            ie.exit(stripe);
+        }
+    }
+
+    /**
+     * Close the fast path of an <code>IntentLockable</code>, and move the
+     * intent locks granted through it into the entry of the Lockable, so
+     * that a request made through the entry sees them.
+     *
+     * @param entry the entry of the Lockable, locked by the current thread
+     * @param ref the Lockable
+     */
+    private void closeIntents(Entry entry, Lockable ref) {
+        IntentEntry ie = intents.get(ref);
+        if ((ie == null) || !ie.isOpen()) {
+            return;
+        }
+
+        if (SanityManager.DEBUG) {
+            SanityManager.ASSERT(entry.control == null,
+                "lock control exists while the fast path is open");
+        }
+
+        ie.close();
+        for (Lock lock : ie.granted.values()) {
+            if (entry.control == null) {
+                entry.control = lock;
+            } else {
+                LockControl control = entry.control.getLockControl();
+                entry.control = control;
+                control.addGranted(lock);
+            }
+        }
+        ie.granted.clear();
+    }
+
+    /**
+     * Open the fast path of an <code>IntentLockable</code> if no one waits
+     * for it and only intent locks are granted on it, and move those locks
+     * from its entry into the fast path.
+     *
+     * @param entry the entry of the Lockable, locked by the current thread
+     * @param ref the Lockable
+     */
+    private void openIntents(Entry entry, IntentLockable ref) {
+        Control control = entry.control;
+        Lock first = null;
+        List granted = null;
+
+        if (control != null) {
+            if (control.firstWaiter() != null) {
+                return;
+            }
+            first = control.getFirstGrant();
+            if ((first != null) &&
+                    !ref.isIntentQualifier(first.getQualifier())) {
+                return;
+            }
+            granted = control.getGranted();
+            if (granted != null) {
+                for (Object lock : granted) {
+                    if (!ref.isIntentQualifier(((Lock) lock).getQualifier())) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        IntentEntry ie = intents.get(ref);
+        if (ie == null) {
+            ie = new IntentEntry();
+            intents.put(ref, ie);
+        } else if (ie.isOpen()) {
+            return;
+        }
+
+        if (first != null) {
+            ie.granted.put(first, first);
+        }
+        if (granted != null) {
+            for (Object lock : granted) {
+                ie.granted.put((Lock) lock, (Lock) lock);
+            }
+        }
+        if (control != null) {
+            locks.remove(ref);
+            entry.control = null;
+        }
+        ie.open();
+    }
+
+    /**
+     * Remove the fast path entries which have no locks granted, so that
+     * <code>intents</code> does not keep an entry for every Lockable that
+     * has ever been locked. Must not be called while holding the mutex of
+     * an entry.
+     */
+    private void sweepIntents() {
+        for (Lockable ref : intents.keySet()) {
+            IntentEntry ie = intents.get(ref);
+            if ((ie == null) || !ie.granted.isEmpty()) {
+                continue;
+            }
+
+            Entry entry = getEntry(ref);
+            try {
+                ie = intents.get(ref);
+                if ((ie != null) && (entry.control == null)) {
+                    boolean open = ie.isOpen();
+                    if (open) {
+                        ie.close();
+                    }
+                    if (ie.granted.isEmpty()) {
+                        intents.remove(ref);
+                    } else if (open) {
+                        ie.open();
+                    }
+                }
+                if (entry.control == null) {
+                    // the entry was created by getEntry(), remove it again
+                    locks.remove(ref);
+                }
+            } finally {
+                entry.unlock();
+            }
+        }
+        intentSweepLimit = Math.max(MIN_INTENT_SWEEP_LIMIT, 2 * intents.size());
+    }
+
 	/*
 	** Public Methods
 	*/
@@ -316,6 +669,20 @@ final class ConcurrentLockSet implements LockTable {
 			}
 		}
 
+        IntentLockable intentRef = null;
+        if (ref instanceof IntentLockable) {
+            intentRef = (IntentLockable) ref;
+            if (intentRef.isIntentQualifier(qualifier)) {
+                Lock gl = lockIntent(compatibilitySpace, ref, qualifier);
+                if (gl != null) {
+                    return gl;
+                }
+            }
+            if (intents.size() > intentSweepLimit) {
+                sweepIntents();
+            }
+        }
+
 		LockControl control;
 		Lock lockItem;
         String  lockDebug = null;
@@ -324,6 +691,10 @@ final class ConcurrentLockSet implements LockTable {
         Entry entry = getEntry(ref);
         try {
 
+            if (intentRef != null) {
+                closeIntents(entry, ref);
+            }
+
             Control gc = entry.control;
 
 			if (gc == null) {
@@ -335,6 +706,10 @@ final class ConcurrentLockSet implements LockTable {
 
 				entry.control = gl;
 
+                if (intentRef != null) {
+                    openIntents(entry, intentRef);
+                }
+
 				return gl;
 			}
 
@@ -353,6 +728,9 @@ final class ConcurrentLockSet implements LockTable {
 			lockItem = control.addLock(this, compatibilitySpace, qualifier);
 
 			if (lockItem.getCount() != 0) {
+                if (intentRef != null) {
+                    openIntents(entry, intentRef);
+                }
 				return lockItem;
 			}
 
@@ -372,6 +750,10 @@ final class ConcurrentLockSet implements LockTable {
     			// remove all trace of lock
     			control.giveUpWait(lockItem, this);
 
+                if (intentRef != null) {
+                    openIntents(entry, intentRef);
+                }
+
                if (SanityManager.DEBUG) 
                 {
                     if (SanityManager.DEBUG_ON("DeadlockTrace"))
@@ -513,6 +895,11 @@ forever:	for (;;) {
                             nextWaitingLock = 
                                 control.getNextWaiter(waitingLock, true, this);
 
+                            if ((intentRef != null) &&
+                                    (nextWaitingLock == null)) {
+                                openIntents(entry, intentRef);
+                            }
+
                             return waitingLock;
                         }
 
@@ -527,11 +914,27 @@ forever:	for (;;) {
                             (wakeupReason == Constants.WAITING_LOCK_DEADLOCK))
                         {
 
-                            // check for a deadlock, even if we were woken up 
-                            // because we were selected as a victim we still 
-                            // check because the situation may have changed.
-                            deadlockData = 
-                                checkDeadlock(entry, waitingLock, wakeupReason);
+                            deadlockData = waitingLock.getDeadlockData();
+
+                            if (deadlockData != null) {
+                                // picked as a victim by the background
+                                // deadlock detection, which has already
+                                // checked that the deadlock is still there
+                            } else if ((wakeupReason ==
+                                    Constants.WAITING_LOCK_IN_WAIT) &&
+                                (detector != null) && isWaiting(waitingLock)) {
+                                // leave the search for deadlocks to the
+                                // background deadlock detection, which
+                                // knows about this waiter, and go on waiting
+                                // for the rest of the timeout
+                            } else {
+                                // check for a deadlock, even if we were woken
+                                // up because we were selected as a victim we
+                                // still check because the situation may have
+                                // changed.
+                                deadlockData = checkDeadlock(
+                                    entry, waitingLock, wakeupReason);
+                            }
 
                             if (deadlockData == null) {
                                 // we don't have a deadlock
@@ -688,8 +1091,14 @@ forever:	for (;;) {
 
 	*/
 	public void unlock(Latch item, int unlockCount) {
+        Lockable ref = item.getLockable();
+        if (ref instanceof IntentLockable) {
+            unlockIntentLockable(item, unlockCount);
+            return;
+        }
+
         // assume LockEntry is there
-        Entry entry = locks.get(item.getLockable());
+        Entry entry = locks.get(ref);
         entry.lock();
         try {
             unlock(entry, item, unlockCount);
@@ -698,6 +1107,35 @@ forever:	for (;;) {
         }
     }
 
+    /**
+     * Unlock an <code>IntentLockable</code>, previously locked by
+     * lockObject(). The lock is either in the fast path of the Lockable or
+     * in its entry, and may be moved between them while we look for it.
+     */
+    private void unlockIntentLockable(Latch item, int unlockCount) {
+        Lockable ref = item.getLockable();
+        for (;;) {
+            IntentEntry ie = intents.get(ref);
+            if ((ie != null) && unlockIntent(ie, item, unlockCount)) {
+                return;
+            }
+
+            Entry entry = locks.get(ref);
+            if (entry != null) {
+                entry.lock();
+                try {
+                    // while the entry is in use, the fast path is closed
+                    if (entry.control != null) {
+                        unlock(entry, item, unlockCount);
+                        return;
+                    }
+                } finally {
+                    entry.unlock();
+                }
+            }
+        }
+    }
+
     /**
      * Unlock an object, previously locked by lockObject().
      *
@@ -769,11 +1207,15 @@ forever:	for (;;) {
 			}
 
 			if (mayBeEmpty) {
+                Lockable ref = control.getLockable();
 				if (control.isEmpty()) {
 					// no-one granted, no-one waiting, remove lock control
-					locks.remove(control.getLockable());
+					locks.remove(ref);
                     entry.control = null;
 				}
+                if (ref instanceof IntentLockable) {
+                    openIntents(entry, (IntentLockable) ref);
+                }
 				return;
 			}
 
@@ -796,6 +1238,10 @@ forever:	for (;;) {
     public Lock unlockReference(CompatibilitySpace space, Lockable ref,
                                 Object qualifier, Map group) {
 
+        if (ref instanceof IntentLockable) {
+            return unlockIntentReference(space, ref, qualifier, group);
+        }
+
         Entry entry = locks.get(ref);
         if (entry == null) {
             return null;
@@ -825,6 +1271,76 @@ forever:	for (;;) {
         }
     }
 
+    /**
+     * Unlock an <code>IntentLockable</code> once if it is present in the
+     * specified group, looking for the lock both in the fast path and in
+     * the entry of the Lockable.
+     *
+     * @see #unlockReference
+     */
+    private Lock unlockIntentReference(CompatibilitySpace space, Lockable ref,
+                                       Object qualifier, Map group) {
+        for (;;) {
+            IntentEntry ie = intents.get(ref);
+            if (ie != null) {
+                int stripe = ie.enter(space);
+                if (stripe >= 0) {
+                    try {
+                        Lock setLock =
+                            ie.granted.get(new Lock(space, ref, qualifier));
+                        if (setLock == null) {
+                            return null;
+                        }
+
+                        Lock lockInGroup = (Lock) group.remove(setLock);
+                        if (lockInGroup != null) {
+                            setLock.unlock(1);
+                            if (setLock.getCount() == 0) {
+                                ie.granted.remove(setLock);
+                            }
+                        }
+
+                        return lockInGroup;
+                    } finally {
+                        ie.exit(stripe);
+                    }
+                }
+            }
+
+            Entry entry = locks.get(ref);
+            if (entry == null) {
+                if (ie == null) {
+                    return null;
+                }
+                continue;
+            }
+
+            entry.lock();
+            try {
+                Control control = entry.control;
+                if (control == null) {
+                    // the locks may have moved back to the fast path
+                    continue;
+                }
+
+                Lock setLock = control.getLock(space, qualifier);
+                if (setLock == null) {
+                    return null;
+                }
+
+                Lock lockInGroup = (Lock) group.remove(setLock);
+                if (lockInGroup != null) {
+                    unlock(entry, lockInGroup, 1);
+                }
+
+                return lockInGroup;
+
+            } finally {
+                entry.unlock();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -849,6 +1365,24 @@ forever:	for (;;) {
             }
         }
 
+        if (ref instanceof IntentLockable) {
+            // An intent lock is compatible with the locks in an open fast
+            // path. Otherwise, the fast path may hide granted locks from the
+            // checks below, so take the lock and release it again.
+            IntentEntry ie = intents.get(ref);
+            if ((ie != null) && ie.isOpen() &&
+                    ((IntentLockable) ref).isIntentQualifier(qualifier)) {
+                return true;
+            }
+
+            Lock lock = lockObject(space, ref, qualifier, timeout);
+            if (lock == null) {
+                return false;
+            }
+            unlock(lock, 1);
+            return true;
+        }
+
         // Very fast zeroDurationLockObject() for unlocked objects.
         // If no entry exists in the lock manager for this reference
         // then it must be unlocked.
@@ -924,6 +1458,80 @@ forever:	for (;;) {
      * Get the wait timeout in milliseconds.
      */
     public int getWaitTimeout() { return waitTimeout; }
+
+    /**
+     * Start, stop or change the interval of the background deadlock
+     * detection.
+     *
+     * @param interval interval in milliseconds, or 0 to stop the background
+     * deadlock detection
+     */
+    public synchronized void setDeadlockDetectionInterval(int interval) {
+        if (interval == 0) {
+            if (detector != null) {
+                detector.stop();
+                detector = null;
+            }
+        } else if (detector == null) {
+            detector = new DeadlockDetector(this, interval);
+            detector.start();
+        } else {
+            detector.setInterval(interval);
+        }
+    }
+
+    /**
+     * Get the lock requests that are waiting while the background deadlock
+     * detection is running. Called by the background deadlock detection.
+     */
+    Iterable<ActiveLock> getWaitingLocks() {
+        return waitingLocks.values();
+    }
+
+    /**
+     * Check whether a lock request is still waiting. Called by the
+     * background deadlock detection.
+     *
+     * @param waitingLock a lock request returned by
+     * <code>getWaitingLocks()</code>
+     * @return <code>true</code> if the request has been waiting ever since
+     * it was returned by <code>getWaitingLocks()</code>
+     */
+    boolean isWaiting(ActiveLock waitingLock) {
+        return waitingLocks.get(waitingLock.getCompatabilitySpace()) ==
+            waitingLock;
+    }
+
+    /**
+     * Get the locks that block a waiting lock request. Called by the
+     * background deadlock detection, which must not hold the mutex of any
+     * entry, since this method locks the entry of the request.
+     *
+     * @param waitingLock the waiting lock request
+     * @param grants list to add the blocking granted locks to
+     * @param waiters list to add the blocking waiting requests to
+     * @return <code>false</code> if the request is not waiting or may be
+     * granted
+     * @see LockControl#getBlockers
+     */
+    boolean getBlockers(ActiveLock waitingLock, List<Lock> grants,
+                        List<Lock> waiters) {
+        Entry entry = locks.get(waitingLock.getLockable());
+        if (entry == null) {
+            return false;
+        }
+        entry.lock();
+        try {
+            Control control = entry.control;
+            if (!(control instanceof LockControl)) {
+                return false;
+            }
+            return ((LockControl) control).getBlockers(
+                waitingLock, grants, waiters);
+        } finally {
+            entry.unlock();
+        }
+    }
     
 	/*
 	** Non public methods
@@ -1001,22 +1609,47 @@ forever:	for (;;) {
             }
 		}
 
+        // add the locks granted through the fast path
+        for (IntentEntry ie : intents.values()) {
+            Control control = null;
+            for (Lock lock : ie.granted.values()) {
+                if (control == null) {
+                    control = lock;
+                } else {
+                    LockControl lc = control.getLockControl();
+                    lc.addGranted(lock);
+                    control = lc;
+                }
+            }
+            if ((control != null) &&
+                    !clone.containsKey(control.getLockable())) {
+                clone.put(control.getLockable(), control);
+            }
+        }
+
 		return clone;
 	}
 //EXCLUDE-END-lockdiag- 
 
 	/**
-	 * Increase blockCount by one.
+	 * Increase blockCount by one, and register the waiter with the background
+	 * deadlock detection if it is running.
 	 */
-	public void oneMoreWaiter() {
+	public void oneMoreWaiter(ActiveLock waitingLock) {
         blockCount.incrementAndGet();
+        if (detector != null) {
+            waitingLocks.put(waitingLock.getCompatabilitySpace(), waitingLock);
+        }
 	}
 
 	/**
 	 * Decrease blockCount by one.
 	 */
-	public void oneLessWaiter() {
+	public void oneLessWaiter(ActiveLock waitingLock) {
 		blockCount.decrementAndGet();
+        // always remove the waiter, the background deadlock detection may
+        // have been stopped since it was added
+        waitingLocks.remove(waitingLock.getCompatabilitySpace(), waitingLock);
 	}
 
     /**
@@ -1024,6 +1657,56 @@ forever:	for (;;) {
      * @return <code>true</code> if someone is blocked, <code>false</code>
      * otherwise
      */
+    /**
+     * Count the lock requests of other compatibility spaces that are
+     * waiting for a lock on an object that matches a key. Only one entry
+     * of the lock table is locked at a time, so the count is not a
+     * consistent snapshot.
+     *
+     * @param space the compatibility space whose requests are not counted
+     * @param key the key that the waited for objects must match
+     * @return the number of waiting lock requests
+     */
+    public int countWaiters(CompatibilitySpace space, Matchable key) {
+        // Nobody waits in a fast path, so there is nothing to count if
+        // no one is blocked.
+        if (!anyoneBlocked()) {
+            return 0;
+        }
+
+        int count = 0;
+        for (Entry entry : locks.values()) {
+            entry.lock();
+            try {
+                Control control = entry.control;
+                if (control == null || !key.match(control.getLockable())) {
+                    continue;
+                }
+                List waiting = control.getWaiting();
+                if (waiting == null) {
+                    continue;
+                }
+                for (Object w : waiting) {
+                    if (((Lock) w).getCompatabilitySpace() != space) {
+                        count++;
+                    }
+                }
+            } finally {
+                entry.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of objects that are locked in the lock table.
+     *
+     * @return the number of entries in the lock table
+     */
+    public int getLockTableSize() {
+        return locks.size();
+    }
+
 	public boolean anyoneBlocked() {
         int blocked = blockCount.get();
 		if (SanityManager.DEBUG) {
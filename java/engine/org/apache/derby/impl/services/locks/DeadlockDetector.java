@@ -0,0 +1,355 @@
+/*
+
+   Derby - Class org.apache.derby.impl.services.locks.DeadlockDetector
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.services.locks;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Stack;
+
+import org.apache.derby.iapi.services.locks.CompatibilitySpace;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.util.InterruptStatus;
+
+/**
+ * A background thread that looks for deadlocks in a
+ * {@link ConcurrentLockSet}, enabled by the
+ * <code>derby.locks.deadlockDetectionInterval</code> property.
+ * <p>
+ * The lock table keeps a map of the waiting lock requests while the
+ * detector runs. At every interval in which someone is blocked, the
+ * detector asks the lock table for the locks that block each waiter,
+ * locking one entry of the lock table at a time, and searches the
+ * resulting wait-for graph for a cycle. Since the graph is not a
+ * consistent snapshot of the lock table, a cycle is checked again before
+ * it is reported: every edge must still be there, and every waiter must
+ * have been waiting ever since the graph was built. A transaction that
+ * waits cannot release its locks, so the cycle cannot have been broken in
+ * between, and it is a true deadlock.
+ * <p>
+ * The victim is chosen the same way as by {@link Deadlock}, and it is
+ * woken up with the description of the deadlock, so that it does not
+ * have to search the lock table itself.
+ * <p>
+ * MT - the interval and the stopped flag are protected by synchronization
+ * on this object. The graph is only used by the detector thread.
+ */
+final class DeadlockDetector implements Runnable {
+
+    /** A waiting lock request and the locks that block it. */
+    private static final class Waiter {
+        /** The waiting lock request. */
+        final ActiveLock lock;
+        /**
+         * The granted locks that block it, followed by the waiting
+         * requests ahead of it. The granted locks come first, so that the
+         * search finds a cycle through the holders of the locks before a
+         * cycle through a waiter that is merely queued behind them.
+         */
+        final List<Lock> blockers;
+        /** Index of the next blocker to visit in the search. */
+        int next;
+        /** The state of the node in the search. */
+        int state;
+
+        Waiter(ActiveLock lock, List<Lock> blockers) {
+            this.lock = lock;
+            this.blockers = blockers;
+        }
+    }
+
+    /** States of the nodes in the search. */
+    private static final int NOT_VISITED = 0;
+    private static final int ON_PATH = 1;
+    private static final int VISITED = 2;
+
+    /** The lock table to search. */
+    private final ConcurrentLockSet lockTable;
+
+    /** Time in milliseconds between two searches. */
+    private int interval;
+
+    /** True when the detector has been asked to stop. */
+    private boolean stopped;
+
+    /** The detector thread, null if it has not been started. */
+    private Thread detectorThread;
+
+    DeadlockDetector(ConcurrentLockSet lockTable, int interval) {
+        this.lockTable = lockTable;
+        this.interval = interval;
+    }
+
+    /**
+     * Start the detector thread.
+     */
+    synchronized void start() {
+        detectorThread = getMonitor().getDaemonThread(
+                this, "deadlockDetector", false);
+        detectorThread.start();
+    }
+
+    /**
+     * Change the time between two searches.
+     *
+     * @param interval the new interval in milliseconds
+     */
+    synchronized void setInterval(int interval) {
+        this.interval = interval;
+        notifyAll();
+    }
+
+    /**
+     * Stop the detector thread, and wait for it to finish its current
+     * search.
+     */
+    void stop() {
+        Thread t;
+
+        synchronized (this) {
+            stopped = true;
+            t = detectorThread;
+            notifyAll();
+        }
+
+        if (t != null && t != Thread.currentThread()) {
+            for (;;) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException ie) {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * The body of the detector thread. Search for deadlocks at every
+     * interval, as long as someone is blocked, until asked to stop.
+     */
+    public void run() {
+        for (;;) {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                try {
+                    wait(interval);
+                } catch (InterruptedException ie) {
+                    InterruptStatus.setInterrupted();
+                }
+                if (stopped) {
+                    return;
+                }
+            }
+
+            if (lockTable.anyoneBlocked()) {
+                search();
+            }
+        }
+    }
+
+    /**
+     * Build the wait-for graph of the waiting lock requests, and break
+     * every cycle found in it.
+     */
+    private void search() {
+        HashMap<CompatibilitySpace, Waiter> graph =
+            new HashMap<CompatibilitySpace, Waiter>();
+
+        for (ActiveLock waitingLock : lockTable.getWaitingLocks()) {
+            List<Lock> blockers = new ArrayList<Lock>();
+            List<Lock> waiters = new ArrayList<Lock>();
+            if (lockTable.getBlockers(waitingLock, blockers, waiters)) {
+                blockers.addAll(waiters);
+                if (!blockers.isEmpty()) {
+                    graph.put(waitingLock.getCompatabilitySpace(),
+                              new Waiter(waitingLock, blockers));
+                }
+            }
+        }
+
+        // Depth first search, with an explicit stack of the waiters on
+        // the current path. A blocker whose space is on the path closes
+        // a cycle.
+        ArrayList<Waiter> path = new ArrayList<Waiter>();
+        for (Waiter start : graph.values()) {
+            if (start.state != NOT_VISITED) {
+                continue;
+            }
+            start.state = ON_PATH;
+            path.add(start);
+
+            while (!path.isEmpty()) {
+                Waiter waiter = path.get(path.size() - 1);
+                if (waiter.next == waiter.blockers.size()) {
+                    waiter.state = VISITED;
+                    path.remove(path.size() - 1);
+                    continue;
+                }
+
+                Lock blocker = waiter.blockers.get(waiter.next++);
+                Waiter target = graph.get(blocker.getCompatabilitySpace());
+                if (target == null || target.state == VISITED) {
+                    continue;
+                }
+                if (target.state == NOT_VISITED) {
+                    target.state = ON_PATH;
+                    path.add(target);
+                    continue;
+                }
+
+                breakCycle(new ArrayList<Waiter>(
+                        path.subList(path.indexOf(target), path.size())));
+
+                // The waiters on the path are either part of the cycle, or
+                // wait for it. Leave them alone until the next search.
+                for (Waiter w : path) {
+                    w.state = VISITED;
+                }
+                path.clear();
+            }
+        }
+    }
+
+    /**
+     * Check that a cycle in the wait-for graph is a deadlock, and if so,
+     * wake up a victim to break it.
+     *
+     * @param cycle the waiters in the cycle, each one blocked by the next
+     * one, and the last one blocked by the first one
+     */
+    private void breakCycle(List<Waiter> cycle) {
+        int size = cycle.size();
+
+        // Check the edges again, and keep the granted locks of each edge
+        // to describe the deadlock. The list is empty for an edge to a
+        // waiter ahead in the queue.
+        ArrayList<List<Lock>> edges = new ArrayList<List<Lock>>(size);
+        for (int i = 0; i < size; i++) {
+            ActiveLock waitingLock = cycle.get(i).lock;
+            Object next = cycle.get((i + 1) % size).lock.getCompatabilitySpace();
+
+            List<Lock> grants = new ArrayList<Lock>();
+            List<Lock> waiters = new ArrayList<Lock>();
+            if (!lockTable.getBlockers(waitingLock, grants, waiters)) {
+                return;
+            }
+            List<Lock> edge = new ArrayList<Lock>();
+            for (Lock grant : grants) {
+                if (grant.getCompatabilitySpace() == next) {
+                    edge.add(grant);
+                }
+            }
+            if (edge.isEmpty() && !hasRequestOf(waiters, next)) {
+                return;
+            }
+            edges.add(edge);
+        }
+
+        // The waiters must not have stopped waiting in between, and must
+        // not be the victims of another deadlock.
+        for (Waiter waiter : cycle) {
+            if (!lockTable.isWaiting(waiter.lock) ||
+                    waiter.lock.getDeadlockData() != null) {
+                return;
+            }
+        }
+
+        // Pick the transaction with the fewest locks as the victim, among
+        // those that hold a lock the previous waiter needs. Aborting a
+        // waiter that is only queued ahead of another one does not release
+        // any lock, and would leave the rest of the deadlock in place.
+        // There is always such a transaction, as a waiter waits in one
+        // queue only, so a cycle cannot be made of queued waiters alone.
+        int victim = 0;
+        int minLockCount = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (edges.get((i + size - 1) % size).isEmpty()) {
+                continue;
+            }
+            LockSpace space =
+                (LockSpace) cycle.get(i).lock.getCompatabilitySpace();
+            int spaceCount = space.deadlockCount(minLockCount);
+            if (spaceCount <= minLockCount) {
+                victim = i;
+                minLockCount = spaceCount;
+            }
+        }
+
+        // Describe the deadlock the way Deadlock.look() does, starting
+        // with the victim.
+        Stack<Object> chain = new Stack<Object>();
+        Hashtable<Object, Object> waiters = new Hashtable<Object, Object>();
+        for (int j = 0; j < size; j++) {
+            int i = (victim + j) % size;
+            ActiveLock waitingLock = cycle.get(i).lock;
+            chain.push(waitingLock.getCompatabilitySpace());
+            chain.push(edges.get(i));
+            waiters.put(waitingLock.getCompatabilitySpace(), waitingLock);
+        }
+
+        // Only one deadlock is broken at a time, by this thread or by a
+        // waiter that runs the deadlock detection of Deadlock.look(), so
+        // a waiter picked by Deadlock.look() is not in the cycle anymore.
+        synchronized (Deadlock.class) {
+            for (Waiter waiter : cycle) {
+                if (!lockTable.isWaiting(waiter.lock)) {
+                    return;
+                }
+            }
+            cycle.get(victim).lock.wakeUpDeadlockVictim(
+                    new Object[] { chain, waiters });
+        }
+    }
+
+    /**
+     * Check whether a list of waiting lock requests contains a request of
+     * a compatibility space.
+     */
+    private static boolean hasRequestOf(List<Lock> waiters, Object space) {
+        for (Lock waiter : waiters) {
+            if (waiter.getCompatabilitySpace() == space) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor() {
+        return AccessController.doPrivileged(
+            new PrivilegedAction<ModuleFactory>() {
+                public ModuleFactory run() {
+                    return Monitor.getMonitor();
+                }
+            });
+    }
+}
@@ -109,6 +109,16 @@ final class LockControl implements Control {
 
 		lockItem.grant();
 
+		addGranted(lockItem);
+	}
+
+	/**
+		Add a lock that has already been granted, for instance by the
+		intent lock fast path of the lock table, to the granted locks
+		of this control.
+	*/
+	void addGranted(Lock lockItem) {
+
 		List<Lock> lgranted = granted;
 		
 		if (lgranted == null) {
@@ -501,6 +511,55 @@ final class LockControl implements Control {
 		return waiting;
 	}
 
+	/**
+		Get the locks that a waiting lock request is blocked by. These are
+		the granted locks of other compatibility spaces that the request is
+		not compatible with, and unless the request can skip the queue,
+		all the requests of other compatibility spaces that wait ahead of
+		it, since it cannot be granted before them.
+
+		@param waitingLock the waiting lock request
+		@param grants list to add the blocking granted locks to
+		@param waiters list to add the blocking waiting requests to
+		@return false if the request is not waiting in this control or may
+		be granted already
+	*/
+	boolean getBlockers(ActiveLock waitingLock, List<Lock> grants,
+						List<Lock> waiters) {
+
+		if ((waiting == null) || waitingLock.potentiallyGranted ||
+				isUnlocked())
+			return false;
+
+		CompatibilitySpace space = waitingLock.getCompatabilitySpace();
+		Object qualifier = waitingLock.getQualifier();
+
+		boolean found = false;
+		for (Lock wl : waiting) {
+			if (wl == waitingLock) {
+				found = true;
+				break;
+			}
+			if (!waitingLock.canSkip && (wl.getCompatabilitySpace() != space))
+				waiters.add(wl);
+		}
+		if (!found)
+			return false;
+
+		int endIndex = firstGrant == null ? granted.size() : 0;
+		int index = 0;
+		do {
+			Lock gl = firstGrant == null ? granted.get(index) : firstGrant;
+
+			if ((gl.getCompatabilitySpace() != space) &&
+					!ref.requestCompatible(qualifier, gl.getQualifier())) {
+				grants.add(gl);
+			}
+		} while (++index < endIndex);
+
+		return true;
+	}
+
 	/**
 		Give up waiting up on a lock
 	*/
@@ -659,7 +718,7 @@ final class LockControl implements Control {
 		waiting.add(lockItem);
 
 		// Maintain count of waiters
-		ls.oneMoreWaiter();
+		ls.oneMoreWaiter((ActiveLock) lockItem);
 	}
 
 	/**
@@ -684,11 +743,13 @@ final class LockControl implements Control {
 	 * @return	The removed lock request
 	 */
 	private Object removeWaiter(int index, LockTable ls) {
+		// Remove and return the first lock request
+		ActiveLock item = (ActiveLock) waiting.remove(index);
+
 		// Maintain count of waiters
-		ls.oneLessWaiter();
+		ls.oneLessWaiter(item);
 
-		// Remove and return the first lock request
-		return waiting.remove(index);
+		return item;
 	}
 
 	/**
@@ -701,7 +762,7 @@ final class LockControl implements Control {
 	 */
 	private int removeWaiter(Object item, LockTable ls) {
 		// Maintain count of waiters
-		ls.oneLessWaiter();
+		ls.oneLessWaiter((ActiveLock) item);
 
 		// Remove item and return number of items removed
 		return waiting.remove(item) ? 1 : 0;
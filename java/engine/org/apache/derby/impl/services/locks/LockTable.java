@@ -26,6 +26,7 @@ import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.services.locks.CompatibilitySpace;
 import org.apache.derby.iapi.services.locks.Latch;
 import org.apache.derby.iapi.services.locks.Lockable;
+import org.apache.derby.iapi.util.Matchable;
 
 /**
  * Interface which must be implemented by lock table classes.
@@ -74,14 +75,18 @@ interface LockTable {
 
     /**
      * Notify the lock table that it has one more waiter.
+     *
+     * @param waitingLock the lock request that has been added to a wait queue
      */
-    void oneMoreWaiter();
+    void oneMoreWaiter(ActiveLock waitingLock);
 
     /**
      * Notify the lock table that it has one less waiter.
      *
+     * @param waitingLock the lock request that has been removed from a wait
+     * queue
      */
-    void oneLessWaiter();
+    void oneLessWaiter(ActiveLock waitingLock);
 
     /**
      * Check whether there are anyone blocked in the lock table.
@@ -91,6 +96,23 @@ interface LockTable {
      */
     boolean anyoneBlocked();
 
+    /**
+     * Count the lock requests of other compatibility spaces that are
+     * waiting for a lock on an object that matches a key.
+     *
+     * @param space the compatibility space whose requests are not counted
+     * @param key the key that the waited for objects must match
+     * @return the number of waiting lock requests
+     */
+    int countWaiters(CompatibilitySpace space, Matchable key);
+
+    /**
+     * Get the number of objects that are locked in the lock table.
+     *
+     * @return the number of entries in the lock table
+     */
+    int getLockTableSize();
+
     /**
      * Lock an object and release the lock immediately. Equivalent to
      * <pre>
@@ -140,6 +162,14 @@ interface LockTable {
      */
     int getWaitTimeout();
 
+    /**
+     * Set the interval of the background deadlock detection.
+     *
+     * @param interval interval in milliseconds, or 0 to stop the background
+     * deadlock detection
+     */
+    void setDeadlockDetectionInterval(int interval);
+
     /**
      * Enable or disable tracing of deadlocks.
      *
@@ -765,6 +765,22 @@ final public class GenericActivationHolder implements Activation
 		ac.informOfRowCount(resultSet, rowCount);
 	}
 
+	/**
+	 * @see Activation#reserveMemory
+	 */
+	public int reserveMemory(int bytes)
+	{
+		return ac.reserveMemory(bytes);
+	}
+
+	/**
+	 * @see Activation#releaseMemory
+	 */
+	public void releaseMemory(int bytes)
+	{
+		ac.releaseMemory(bytes);
+	}
+
 	/**
 	 * @see Activation#isCursorActivation
 	 */
@@ -195,6 +195,22 @@ abstract class BaseJoinStrategy implements JoinStrategy {
 		return false;
 	}
 
+	/**
+	 * @see JoinStrategy#spillsOuterRows
+	 */
+	public boolean spillsOuterRows()
+	{
+		return false;
+	}
+
+	/**
+	 * @see JoinStrategy#needsOrderedOuterRows
+	 */
+	public boolean needsOrderedOuterRows()
+	{
+		return false;
+	}
+
 	/**
 	 * Can this join strategy be used on the
 	 * outermost table of a join.
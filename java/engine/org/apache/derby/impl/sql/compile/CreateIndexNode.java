@@ -52,6 +52,7 @@ class CreateIndexNode extends DDLStatementNode
     private TableName           indexName;
     private TableName           tableName;
     private List<String>        columnNameList;
+    private List<String>        includeColumnNameList;
     private String[]            columnNames;
     private boolean[]           isAscending;
     private int[]               boundColumnIDs;
@@ -66,6 +67,9 @@ class CreateIndexNode extends DDLStatementNode
 	 * @param tableName	The name of the table the index will be on
 	 * @param columnNameList	A list of column names, in the order they
 	 *							appear in the index.
+	 * @param includeColumnNameList	A list of the names of the columns which
+	 *							are stored in the index but are not part of
+	 *							the key, or null if there are none.
 	 * @param properties	The optional properties list associated with the index.
      * @param cm Context manager
 	 *
@@ -76,6 +80,7 @@ class CreateIndexNode extends DDLStatementNode
                     TableName indexName,
                     TableName tableName,
                     List<String> columnNameList,
+                    List<String> includeColumnNameList,
                     Properties properties,
                     ContextManager cm) throws StandardException
 	{
@@ -85,6 +90,7 @@ class CreateIndexNode extends DDLStatementNode
         this.indexName = indexName;
         this.tableName = tableName;
         this.columnNameList = columnNameList;
+        this.includeColumnNameList = includeColumnNameList;
         this.properties = properties;
 	}
 
@@ -104,6 +110,7 @@ class CreateIndexNode extends DDLStatementNode
 				"indexType: " + indexType + "\n" +
 				"indexName: " + indexName + "\n" +
 				"tableName: " + tableName + "\n" +
+				"includeColumnNameList: " + includeColumnNameList + "\n" +
 				"properties: " + properties + "\n";
 		}
 		else
@@ -180,7 +187,9 @@ class CreateIndexNode extends DDLStatementNode
 			}
 		}
 
-		/* Check for number of key columns to be less than 16 to match DB2 */
+		/* Check for number of key columns to be less than 16 to match DB2.
+		 * The INCLUDE columns count towards the limit.
+		 */
 		if (columnCount > 16)
 			throw StandardException.newException(SQLState.LANG_TOO_MANY_INDEX_KEY_COLS);
 
@@ -283,6 +292,7 @@ class CreateIndexNode extends DDLStatementNode
                     td.getUUID(),
                     columnNames,
                     isAscending,
+                    columnNameList.size(),
                     false,
                     null,
                     properties);
@@ -297,7 +307,9 @@ class CreateIndexNode extends DDLStatementNode
 	private void verifyAndGetUniqueNames()
 				throws StandardException
 	{
-		int size = columnNameList.size();
+		int keySize = columnNameList.size();
+		int size = keySize +
+			(includeColumnNameList == null ? 0 : includeColumnNameList.size());
         HashSet<String> seenNames = new HashSet<String>(size + 2, 0.999f);
 		columnNames = new String[size];
 		isAscending = new boolean[size];
@@ -306,9 +318,13 @@ class CreateIndexNode extends DDLStatementNode
 		{
 			/* Verify that this column's name is unique within the list
 			 * Having a space at the end meaning descending on the column
+			 * The INCLUDE columns follow the key columns, and are always
+			 * ascending.
 			 */
-            columnNames[index] = columnNameList.get(index);
-			if (columnNames[index].endsWith(" "))
+			columnNames[index] = (index < keySize) ?
+				columnNameList.get(index) :
+				includeColumnNameList.get(index - keySize);
+			if (index < keySize && columnNames[index].endsWith(" "))
 			{
 				columnNames[index] = columnNames[index].substring(0, columnNames[index].length() - 1);
 				isAscending[index] = false;
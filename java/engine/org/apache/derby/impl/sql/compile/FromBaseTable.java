@@ -30,6 +30,7 @@ import java.util.Set;
 import org.apache.derby.catalog.IndexDescriptor;
 import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.reference.ClassName;
+import org.apache.derby.iapi.reference.Property;
 import org.apache.derby.iapi.reference.SQLState;
 import org.apache.derby.iapi.services.classfile.VMOpcode;
 import org.apache.derby.iapi.services.compiler.MethodBuilder;
@@ -133,6 +134,14 @@ class FromBaseTable extends FromTable
 	*/
 	int 			bulkFetch = UNSET;
 
+	/*
+	** The number of threads the table may be scanned by to compute
+	** the scalar aggregates of the query, if the user uses the
+	** parallelScanThreads table property.  Otherwise it is
+	** taken from the database property.
+	*/
+	private int		parallelScanThreads = UNSET;
+
     /*
     ** Used to validate deferred check constraints.
     ** It is the uuid of the target table inserted into or updated
@@ -446,72 +455,94 @@ class FromBaseTable extends FromTable
 		*/
 		if (currentConglomerateDescriptor != null)
 		{
-			if ( ! currentConglomerateDescriptor.isIndex())
+			addConglomerateOrdering(currentConglomerateDescriptor,
+									predList,
+									rowOrdering);
+		}
+
+		ap.setConglomerateDescriptor(currentConglomerateDescriptor);
+
+		return currentConglomerateDescriptor != null;
+	}
+
+	/**
+	 * Tell the rowOrdering what the ordering of the rows is when this
+	 * table is read through the given conglomerate.
+	 *
+	 * @param cd			The conglomerate used to read the table
+	 * @param predList		The predicates on this table, used to tell
+	 *						whether a heap scan returns a single row.
+	 *						May be null.
+	 * @param rowOrdering	The row ordering to add to
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	void addConglomerateOrdering(ConglomerateDescriptor cd,
+								 OptimizablePredicateList predList,
+								 RowOrdering rowOrdering)
+			throws StandardException
+	{
+		if ( ! cd.isIndex() || cd.getIndexDescriptor().isHash())
+		{
+			/* If we are scanning the heap (or a hash index, which
+			 * returns its rows in no order), but there
+			 * is a full match on a unique key, then
+			 * we can say that the table IS NOT unordered.
+			 * (We can't currently say what the ordering is
+			 * though.)
+			 */
+			if (! isOneRowResultSet(predList))
 			{
-				/* If we are scanning the heap, but there
-				 * is a full match on a unique key, then
-				 * we can say that the table IS NOT unordered.
-				 * (We can't currently say what the ordering is
-				 * though.)
-				 */
-				if (! isOneRowResultSet(predList))
-				{
                     if ( optimizerTracingIsOn() )
                     { getOptimizerTracer().traceAddingUnorderedOptimizable( ((predList == null) ? 0 : predList.size()) ); }
 
-					rowOrdering.addUnorderedOptimizable(this);
-				}
-				else
-				{
-                    if ( optimizerTracingIsOn() ) { getOptimizerTracer().traceScanningHeapWithUniqueKey(); }
-				}
+				rowOrdering.addUnorderedOptimizable(this);
 			}
 			else
 			{
-				IndexRowGenerator irg =
-							currentConglomerateDescriptor.getIndexDescriptor();
+                    if ( optimizerTracingIsOn() ) { getOptimizerTracer().traceScanningHeapWithUniqueKey(); }
+			}
+		}
+		else
+		{
+			IndexRowGenerator irg = cd.getIndexDescriptor();
 
-				int[] baseColumnPositions = irg.baseColumnPositions();
-				boolean[] isAscending = irg.isAscending();
+			int[] baseColumnPositions = irg.baseColumnPositions();
+			boolean[] isAscending = irg.isAscending();
 
-				for (int i = 0; i < baseColumnPositions.length; i++)
+			for (int i = 0; i < irg.numberOfOrderedColumns(); i++)
+			{
+				/*
+				** Don't add the column to the ordering if it's already
+				** an ordered column.  This can happen in the following
+				** case:
+				**
+				**		create index ti on t(x, y);
+				**		select * from t where x = 1 order by y;
+				**
+				** Column x is always ordered, so we want to avoid the
+				** sort when using index ti.  This is accomplished by
+				** making column y appear as the first ordered column
+				** in the list.
+				*/
+				if ( ! rowOrdering.orderedOnColumn(isAscending[i] ?
+												RowOrdering.ASCENDING :
+												RowOrdering.DESCENDING,
+												getTableNumber(),
+												baseColumnPositions[i]))
 				{
-					/*
-					** Don't add the column to the ordering if it's already
-					** an ordered column.  This can happen in the following
-					** case:
-					**
-					**		create index ti on t(x, y);
-					**		select * from t where x = 1 order by y;
-					**
-					** Column x is always ordered, so we want to avoid the
-					** sort when using index ti.  This is accomplished by
-					** making column y appear as the first ordered column
-					** in the list.
-					*/
-					if ( ! rowOrdering.orderedOnColumn(isAscending[i] ?
-													RowOrdering.ASCENDING :
-													RowOrdering.DESCENDING,
-													getTableNumber(),
-													baseColumnPositions[i]))
-					{
-						rowOrdering.nextOrderPosition(isAscending[i] ?
-													RowOrdering.ASCENDING :
-													RowOrdering.DESCENDING);
-
-						rowOrdering.addOrderedColumn(isAscending[i] ?
-													RowOrdering.ASCENDING :
-													RowOrdering.DESCENDING,
-													getTableNumber(),
-													baseColumnPositions[i]);
-					}
+					rowOrdering.nextOrderPosition(isAscending[i] ?
+												RowOrdering.ASCENDING :
+												RowOrdering.DESCENDING);
+
+					rowOrdering.addOrderedColumn(isAscending[i] ?
+												RowOrdering.ASCENDING :
+												RowOrdering.DESCENDING,
+												getTableNumber(),
+												baseColumnPositions[i]);
 				}
-			}	
+			}
 		}
-
-		ap.setConglomerateDescriptor(currentConglomerateDescriptor);
-
-		return currentConglomerateDescriptor != null;
 	}
 
 	/** Tell super-class that this Optimizable can be ordered */
@@ -832,6 +863,17 @@ class FromBaseTable extends FromTable
 					throw StandardException.newException(SQLState.LANG_INVALID_BULK_FETCH_UPDATEABLE);
 				}
 			}
+			else if (key.equals("parallelScanThreads"))
+			{
+				parallelScanThreads = getIntProperty(value, key);
+
+				// verify that the specified value is valid
+				if (parallelScanThreads < 1 || parallelScanThreads > 64)
+				{
+					throw StandardException.newException(SQLState.LANG_INVALID_PARALLEL_SCAN_THREADS, 
+							String.valueOf(parallelScanThreads));
+				}
+			}
             else if (key.equals("validateCheckConstraint")) {
                 // the property "validateCheckConstraint" is read earlier
                 // cf. isValidatingCheckConstraint
@@ -1843,6 +1885,21 @@ class FromBaseTable extends FromTable
 
             singleScanRowCount = costEst.singleScanRowCount();
 
+			/*
+			** A join strategy which scans the inner table only once may
+			** have costs that depend on the number of rows it keeps, like
+			** the cost of spilling them to disk. Let it add them to the
+			** cost of the single scan. (For the other join strategies,
+			** estimateCost() works on the cost of all the scans, which is
+			** figured out by this method.)
+			*/
+			if (! currentJoinStrategy.multiplyBaseCostByOuterRows())
+			{
+				currentJoinStrategy.estimateCost(this, predList, cd,
+												 outerCost, optimizer,
+												 costEst);
+			}
+
 			/*
 			** Let the join strategy decide whether the cost of the base
 			** scan is a single scan, or a scan per outer row.
@@ -4250,9 +4307,10 @@ class FromBaseTable extends FromTable
 			}
 
 			int[] keyColumns = id.baseColumnPositions();
+			int numKeyColumns = id.numberOfOrderedColumns();
 
 			int inner = 0;
-			for ( ; inner < keyColumns.length; inner++)
+			for ( ; inner < numKeyColumns; inner++)
 			{
 				if (! eqCols[keyColumns[inner]])
 				{
@@ -4261,7 +4319,7 @@ class FromBaseTable extends FromTable
 			}
 
 			/* Did we get a full match? */
-			if (inner == keyColumns.length)
+			if (inner == numKeyColumns)
 			{
 				return true;
 			}
@@ -4304,12 +4362,13 @@ class FromBaseTable extends FromTable
 			}
 
 			int[] keyColumns = id.baseColumnPositions();
+			int numKeyColumns = id.numberOfOrderedColumns();
 			int numBits = tableColMap[0].size();
 			JBitSet keyMap = new JBitSet(numBits);
 			JBitSet resMap = new JBitSet(numBits);
 
 			int inner = 0;
-			for ( ; inner < keyColumns.length; inner++)
+			for ( ; inner < numKeyColumns; inner++)
 			{
 				keyMap.set(keyColumns[inner]);
 			}
@@ -4441,6 +4500,12 @@ class FromBaseTable extends FromTable
 			return false;
 		}
 
+		// A hash index is not ordered on any column
+		if (cd.getIndexDescriptor().isHash())
+		{
+			return false;
+		}
+
 		// Now consider whether or not the CRs can be permuted
 		boolean isOrdered;
 		if (permuteOrdering)
@@ -4583,9 +4648,10 @@ class FromBaseTable extends FromTable
 
 		int nextKeyColumn = 0;
 		int[] keyColumns = cd.getIndexDescriptor().baseColumnPositions();
+		int numKeyColumns = cd.getIndexDescriptor().numberOfOrderedColumns();
 
 		// Walk through the key columns
-		for ( ; nextKeyColumn < keyColumns.length; nextKeyColumn++)
+		for ( ; nextKeyColumn < numKeyColumns; nextKeyColumn++)
 		{
 			boolean currMatch = false;
 			// See if the key column is in crs
@@ -4631,7 +4697,7 @@ class FromBaseTable extends FromTable
 		 * we matched all of the key columns then
 		 * we need to check if the index is unique.
 		 */
-		if (nextKeyColumn == keyColumns.length)
+		if (nextKeyColumn == numKeyColumns)
 		{
 			if (cd.getIndexDescriptor().isUnique())
 			{
@@ -4673,6 +4739,7 @@ class FromBaseTable extends FromTable
 		int nextCR = 0;
 		int nextKeyColumn = 0;
 		int[] keyColumns = cd.getIndexDescriptor().baseColumnPositions();
+		int numKeyColumns = cd.getIndexDescriptor().numberOfOrderedColumns();
 
 		// Walk through the CRs
 		for ( ; nextCR < crs.length; nextCR++)
@@ -4681,7 +4748,7 @@ class FromBaseTable extends FromTable
 			 * we need to check if the index is unique.
 			 * Beetle 4402
 			 */
-			if (nextKeyColumn == keyColumns.length)
+			if (nextKeyColumn == numKeyColumns)
 			{
 				if (cd.getIndexDescriptor().isUnique())
 				{
@@ -4713,7 +4780,7 @@ class FromBaseTable extends FromTable
 					/* If we've walked through all of the key columns then
 					 * we need to check if the index is unique.
 					 */
-					if (nextKeyColumn == keyColumns.length)
+					if (nextKeyColumn == numKeyColumns)
 					{
 						if (cd.getIndexDescriptor().isUnique())
 						{
@@ -4772,7 +4839,7 @@ class FromBaseTable extends FromTable
 		int[] baseColumnPositions = irg.baseColumnPositions();
 
 		// Do we have an exact match on the full key
-		for (int index = 0; index < baseColumnPositions.length; index++)
+		for (int index = 0; index < irg.numberOfOrderedColumns(); index++)
 		{
 			// get the column number at this position
 			int curCol = baseColumnPositions[index];
@@ -4819,6 +4886,42 @@ class FromBaseTable extends FromTable
 			UNSET : valInt;
 	}
 
+	/**
+	 * Get the number of threads the table may be scanned by, to compute
+	 * the scalar aggregates of the query. Only a scan of the heap can be
+	 * divided between threads, each reading a range of its pages. At
+	 * execution time the scan is only divided if the rows need no
+	 * restriction beyond the qualifiers of the scan.
+	 *
+	 * @return the number of threads, 1 if the table is scanned by one
+	 *		thread
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	int getParallelScanThreads()
+		throws StandardException
+	{
+		AccessPath ap = getTrulyTheBestAccessPath();
+
+		if (tableDescriptor.getTableType() !=
+				TableDescriptor.BASE_TABLE_TYPE ||
+			ap.getConglomerateDescriptor().isIndex() ||
+			! ap.getJoinStrategy().bulkFetchOK() ||
+			forUpdate() || multiProbing || distinctScan || existsBaseTable)
+		{
+			return 1;
+		}
+
+		if (parallelScanThreads != UNSET)
+		{
+			return parallelScanThreads;
+		}
+
+		return PropertyUtil.getServiceInt(
+				getLanguageConnectionContext().getTransactionCompile(),
+				Property.PARALLEL_SCAN_THREADS, 1, 64, 1);
+	}
+
 	private String getUserSpecifiedIndexName()
 	{
 		String retval = null;
@@ -1688,7 +1688,8 @@ class FromList extends    QueryTreeNodeVector<ResultSetNode>
 	}
 
 	/**
-	 * Return whether or not the user specified a hash join for any of the 
+	 * Return whether or not the user specified a hash join (or a merge
+	 * join, which needs an equijoin predicate the same way) for any of the
 	 * tables in this list.
 	 *
 	 * @return	Whether or not the user specified a hash join for any of the 
@@ -1702,9 +1703,15 @@ class FromList extends    QueryTreeNodeVector<ResultSetNode>
 			FromTable ft = (FromTable) elementAt(index);
 			String joinStrategy = ft.getUserSpecifiedJoinStrategy();
 
-			if (joinStrategy != null && StringUtil.SQLToUpperCase(joinStrategy).equals("HASH"))
+			if (joinStrategy != null)
 			{
-				return true;
+				joinStrategy = StringUtil.SQLToUpperCase(joinStrategy);
+				if (joinStrategy.equals("HASH") ||
+					joinStrategy.equals("MERGE") ||
+					joinStrategy.equals("HYBRID"))
+				{
+					return true;
+				}
 			}
 		}
 
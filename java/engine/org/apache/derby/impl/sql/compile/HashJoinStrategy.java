@@ -251,13 +251,18 @@ class HashJoinStrategy extends BaseJoinStrategy {
 		}
 	}
 
-	/** @see JoinStrategy#estimateCost */
+	/**
+	 * @see JoinStrategy#estimateCost
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
 	public void estimateCost(Optimizable innerTable,
 							 OptimizablePredicateList predList,
 							 ConglomerateDescriptor cd,
 							 CostEstimate outerCost,
 							 Optimizer optimizer,
-							 CostEstimate costEstimate) {
+							 CostEstimate costEstimate)
+						throws StandardException {
 		/*
 		** The cost of a hash join is the cost of building the hash table.
 		** There is no extra cost per outer row, so don't do anything here.
@@ -0,0 +1,184 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.compile.HybridHashJoinStrategy
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.compile;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.sql.compile.CostEstimate;
+import org.apache.derby.iapi.sql.compile.JoinStrategy;
+import org.apache.derby.iapi.sql.compile.Optimizable;
+import org.apache.derby.iapi.sql.compile.OptimizablePredicateList;
+import org.apache.derby.iapi.sql.compile.Optimizer;
+import org.apache.derby.iapi.sql.dictionary.ConglomerateDescriptor;
+
+/**
+ * Hybrid hash join of an outer result set with an inner base table.
+ * <p>
+ * The inner table is read into a hash table, as for a hash join, but the
+ * hash table is divided into partitions on the hash of the join columns.
+ * When the rows don't fit in the memory the join gets, whole partitions
+ * are written to disk, and the outer rows which hash to those partitions
+ * are written to disk as well instead of being joined.  Once the outer
+ * rows are exhausted, each partition of the inner table is read back into
+ * memory in turn and joined with the outer rows that were set aside for
+ * it.  So every row is written and read at most once more, instead of
+ * each outer row probing a hash table on disk.
+ * <p>
+ * The outer rows of the partitions on disk are joined last, so the rows
+ * of this join are not in the order of the outer rows.
+ */
+class HybridHashJoinStrategy extends HashJoinStrategy {
+
+	/**
+	 * Estimated extra cost of writing a row of a partition which
+	 * doesn't fit in memory to disk, and reading it back.
+	 */
+	private static final double HYBRID_HASH_JOIN_SPILL_COST = 1.0;
+
+	/** Used to figure out how many inner rows fit in memory */
+	private static final JoinStrategy IN_MEMORY_HASH_JOIN =
+		new HashJoinStrategy();
+
+    HybridHashJoinStrategy() {
+	}
+
+	/**
+	 * A hybrid hash join is feasible when a hash join would be, the inner
+	 * table is a base table, and there are outer rows to set aside.
+	 *
+	 * @see JoinStrategy#feasible
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+    @Override
+	public boolean feasible(Optimizable innerTable,
+							OptimizablePredicateList predList,
+							Optimizer optimizer
+							)
+					throws StandardException
+	{
+		/* The rows of the inner table are returned more than once, which
+		 * can't be done for an updatable cursor.
+		 */
+		if (! innerTable.isBaseTable() || innerTable.forUpdate())
+		{
+			return false;
+		}
+
+		/* The outer rows are set aside by the join result set above the
+		 * inner table, so there has to be one.
+		 */
+		if (! (optimizer instanceof OptimizerImpl) ||
+			! ((OptimizerImpl) optimizer).hasOuterTables())
+		{
+			return false;
+		}
+
+		return super.feasible(innerTable, predList, optimizer);
+	}
+
+	/**
+	 * Add the cost of writing the rows of the partitions which don't fit
+	 * in memory to disk and reading them back, for both the inner and the
+	 * outer rows.
+	 *
+	 * @see JoinStrategy#estimateCost
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+    @Override
+	public void estimateCost(Optimizable innerTable,
+							 OptimizablePredicateList predList,
+							 ConglomerateDescriptor cd,
+							 CostEstimate outerCost,
+							 Optimizer optimizer,
+							 CostEstimate costEstimate)
+					throws StandardException
+	{
+		double innerRows = costEstimate.singleScanRowCount();
+		double inMemoryRows = innerTable.maxCapacity(
+							IN_MEMORY_HASH_JOIN,
+							optimizer.getMaxMemoryPerTable());
+
+		if (innerRows > inMemoryRows)
+		{
+			double spilledFraction = 1 - inMemoryRows / innerRows;
+			double spilledRows =
+				spilledFraction * (innerRows + outerCost.rowCount());
+
+			costEstimate.setCost(
+				costEstimate.getEstimatedCost() +
+					HYBRID_HASH_JOIN_SPILL_COST * spilledRows,
+				costEstimate.rowCount(),
+				costEstimate.singleScanRowCount());
+		}
+	}
+
+	/**
+	 * The partitions which don't fit in memory are written to disk, so
+	 * the size of the inner table is not limited.
+	 *
+	 * @see JoinStrategy#maxCapacity
+	 */
+    @Override
+	public int maxCapacity( int userSpecifiedCapacity,
+                            int maxMemoryPerTable,
+                            double perRowUsage) {
+		return Integer.MAX_VALUE;
+	}
+
+	/** @see JoinStrategy#spillsOuterRows */
+    @Override
+	public boolean spillsOuterRows() {
+		return true;
+	}
+
+	/** @see JoinStrategy#getName */
+    @Override
+	public String getName() {
+		return "HYBRID";
+	}
+
+	/** @see JoinStrategy#getOperatorSymbol */
+    @Override
+    public  String  getOperatorSymbol() { return "%"; }
+
+	/** @see JoinStrategy#resultSetMethodName */
+    @Override
+    public String resultSetMethodName(
+            boolean bulkFetch,
+            boolean multiprobe,
+            boolean validatingCheckConstraint) {
+		return "getHybridHashScanResultSet";
+	}
+
+	/** @see JoinStrategy#joinResultSetMethodName */
+    @Override
+	public String joinResultSetMethodName() {
+		return "getHybridHashJoinResultSet";
+	}
+
+	/** @see JoinStrategy#halfOuterJoinResultSetMethodName */
+    @Override
+	public String halfOuterJoinResultSetMethodName() {
+		return "getHybridHashLeftOuterJoinResultSet";
+	}
+}
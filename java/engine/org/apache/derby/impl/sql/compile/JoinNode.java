@@ -30,7 +30,10 @@ import org.apache.derby.iapi.reference.SQLState;
 import org.apache.derby.iapi.services.classfile.VMOpcode;
 import org.apache.derby.iapi.services.compiler.MethodBuilder;
 import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.io.FormatableArrayHolder;
+import org.apache.derby.iapi.services.io.FormatableIntHolder;
 import org.apache.derby.shared.common.sanity.SanityManager;
+import org.apache.derby.iapi.sql.compile.AccessPath;
 import org.apache.derby.iapi.sql.compile.CompilerContext;
 import org.apache.derby.iapi.sql.compile.CostEstimate;
 import org.apache.derby.iapi.sql.compile.Optimizable;
@@ -226,6 +229,20 @@ class JoinNode extends TableOperatorNode
 
 		setCostEstimate( getCostEstimate(optimizer) );
 
+		/*
+		** If no plan was found for one of the sides, this join has no plan
+		** for these outer rows either.  Don't let the optimizer consider
+		** it, or it would take the unset cost for a plan and never finish.
+		*/
+		if (! foundSourcePlan(leftOptimizer) ||
+			! foundSourcePlan(rightOptimizer))
+		{
+			getCostEstimate().setCost(Double.MAX_VALUE,
+									  Double.MAX_VALUE,
+									  Double.MAX_VALUE);
+			return getCostEstimate();
+		}
+
 		/*
 		** We add the costs for the inner and outer table, but the number
 		** of rows is that for the inner table only.
@@ -276,6 +293,19 @@ class JoinNode extends TableOperatorNode
 		return getCostEstimate();
 	}
 
+	/**
+	 * Tell whether the optimizer of one of the sides of this join found a
+	 * plan for it.
+	 *
+	 * @param sourceOptimizer	The optimizer of the side, null if the side
+	 *							was not optimized as a list of optimizables
+	 */
+	private static boolean foundSourcePlan(Optimizer sourceOptimizer)
+	{
+		return ! (sourceOptimizer instanceof OptimizerImpl) ||
+			((OptimizerImpl) sourceOptimizer).foundABestPlan();
+	}
+
 	/**
 	 * @see Optimizable#pushOptPredicate
 	 *
@@ -1622,9 +1652,70 @@ class JoinNode extends TableOperatorNode
 
 		acb.pushGetResultSetFactoryExpression(mb);
 		int nargs = getJoinArguments(acb, mb, joinClause);
+
+		/* A join which sets aside outer rows to join them later has to
+		 * save and restore the current rows of the whole left side, since
+		 * the join predicates and the expressions above the join may refer
+		 * to any of them.
+		 */
+		if (rightResultSpillsOuterRows())
+		{
+			mb.push(acb.addItem(getLeftResultSetNumbers()));
+			nargs++;
+		}
+
 		mb.callMethod(VMOpcode.INVOKEINTERFACE, (String) null, joinResultSetString, ClassName.NoPutResultSet, nargs);
 	}
 
+	/**
+	 * Tell whether the join strategy chosen for the right side of this
+	 * join returns the rows out of the order of the left side.
+	 */
+	private boolean rightResultSpillsOuterRows()
+	{
+		if (! (rightResultSet instanceof Optimizable))
+		{
+			return false;
+		}
+
+		AccessPath ap =
+			((Optimizable) rightResultSet).getTrulyTheBestAccessPath();
+		return ap != null && ap.getJoinStrategy() != null &&
+			ap.getJoinStrategy().spillsOuterRows();
+	}
+
+	/**
+	 * Get the result set numbers of the result sets generated for the left
+	 * side of this join, not counting those of subqueries.  Must be called
+	 * after the left side has been generated.
+	 *
+	 * @return	an array of FormatableIntHolders with the result set numbers
+	 */
+	private FormatableArrayHolder getLeftResultSetNumbers()
+		throws StandardException
+	{
+		CollectNodesVisitor<ResultSetNode> cnv =
+			new CollectNodesVisitor<ResultSetNode>(
+				ResultSetNode.class, SubqueryNode.class);
+		leftResultSet.accept(cnv);
+
+		/* The result sets of the left side are numbered after this one,
+		 * so nodes with a lower number weren't generated.
+		 */
+		ArrayList<FormatableIntHolder> numbers =
+			new ArrayList<FormatableIntHolder>();
+		for (ResultSetNode rsn : cnv.getList())
+		{
+			if (rsn.getResultSetNumber() > getResultSetNumber())
+			{
+				numbers.add(new FormatableIntHolder(rsn.getResultSetNumber()));
+			}
+		}
+
+		return new FormatableArrayHolder(
+			numbers.toArray(new FormatableIntHolder[numbers.size()]));
+	}
+
 	/**
 	 * Get the arguments to the join result set.
 	 *
@@ -1902,6 +1993,14 @@ class JoinNode extends TableOperatorNode
     boolean isOrderedOn(ColumnReference[] crs, boolean permuteOrdering, List<FromBaseTable> fbtHolder)
 				throws StandardException
 	{
+		/* The rows don't come out in the order of the left side if some
+		 * of them are set aside and joined later.
+		 */
+		if (rightResultSpillsOuterRows())
+		{
+			return false;
+		}
+
 		/* RESOLVE - easiest thing for now is to only consider the leftmost child */
         return leftResultSet.isOrderedOn(crs, permuteOrdering, fbtHolder);
 	}
@@ -0,0 +1,313 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.compile.MergeJoinStrategy
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.compile;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.compiler.MethodBuilder;
+import org.apache.derby.shared.common.sanity.SanityManager;
+import org.apache.derby.iapi.sql.compile.ExpressionClassBuilderInterface;
+import org.apache.derby.iapi.sql.compile.JoinStrategy;
+import org.apache.derby.iapi.sql.compile.Optimizable;
+import org.apache.derby.iapi.sql.compile.OptimizablePredicateList;
+import org.apache.derby.iapi.sql.compile.Optimizer;
+import org.apache.derby.iapi.sql.compile.RowOrdering;
+import org.apache.derby.iapi.sql.dictionary.ConglomerateDescriptor;
+import org.apache.derby.iapi.sql.dictionary.IndexRowGenerator;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.types.DataTypeDescriptor;
+
+/**
+ * Merge join of an outer result set which is ordered on the join column
+ * with an inner base table read through an index on the same column.
+ * <p>
+ * The inner table is scanned once, in index order, and the scan moves
+ * forward as the join column of the outer rows grows, so unlike a hash
+ * join nothing but the inner rows that match the current outer row has
+ * to be kept in memory.  This makes it a good choice when both inputs
+ * are already sorted and the inner table is too big for a hash table.
+ * <p>
+ * Everything but the way the inner rows are found for an outer row is
+ * the same as for a hash join: the join predicates are evaluated when
+ * the inner rows for an outer row are looked up, with the equality on
+ * the first index column first, so this strategy shares the predicate
+ * handling of HashJoinStrategy.
+ */
+class MergeJoinStrategy extends HashJoinStrategy {
+    MergeJoinStrategy() {
+	}
+
+	/**
+	 * A merge join is feasible when a hash join would be, and in addition
+	 * the inner table is read through an ascending index whose first column
+	 * is joined by an equality to a column which the outer rows are
+	 * ordered on.
+	 *
+	 * @see JoinStrategy#feasible
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+    @Override
+	public boolean feasible(Optimizable innerTable,
+							OptimizablePredicateList predList,
+							Optimizer optimizer
+							)
+					throws StandardException
+	{
+		/* The rows of the inner table are returned in the order of the
+		 * index, and they can't be returned more than once for an
+		 * updatable cursor.
+		 */
+		if (! innerTable.isBaseTable() || innerTable.forUpdate())
+		{
+			return false;
+		}
+
+		ConglomerateDescriptor cd =
+			innerTable.getCurrentAccessPath().getConglomerateDescriptor();
+		if (cd == null || ! cd.isIndex() || cd.getIndexDescriptor().isHash())
+		{
+			return false;
+		}
+
+		IndexRowGenerator irg = cd.getIndexDescriptor();
+		if (! irg.isAscending()[0])
+		{
+			return false;
+		}
+
+		if (! super.feasible(innerTable, predList, optimizer))
+		{
+			return false;
+		}
+
+		ColumnReference outerColumn = findOuterJoinColumn(
+						innerTable, predList, irg.baseColumnPositions()[0]);
+		if (outerColumn == null || ! (optimizer instanceof OptimizerImpl))
+		{
+			return false;
+		}
+
+		/* The outer rows must be ordered on the join column first */
+		RowOrdering outerOrdering =
+			((OptimizerImpl) optimizer).getOuterRowOrdering();
+
+		return outerOrdering.orderedOnColumn(
+								RowOrdering.ASCENDING,
+								0,
+								outerColumn.getTableNumber(),
+								outerColumn.getSource().getColumnPosition());
+	}
+
+	/**
+	 * The inner table is read only once, so the outer rows must come in
+	 * the order of the join column.
+	 *
+	 * @see JoinStrategy#needsOrderedOuterRows
+	 */
+    @Override
+	public boolean needsOrderedOuterRows() {
+		return true;
+	}
+
+	/**
+	 * Only the inner rows with the same key are kept in memory, so the
+	 * size of the inner table is not limited.
+	 *
+	 * @see JoinStrategy#maxCapacity
+	 */
+    @Override
+	public int maxCapacity( int userSpecifiedCapacity,
+                            int maxMemoryPerTable,
+                            double perRowUsage) {
+		return Integer.MAX_VALUE;
+	}
+
+	/** @see JoinStrategy#getName */
+    @Override
+	public String getName() {
+		return "MERGE";
+	}
+
+	/** @see JoinStrategy#getOperatorSymbol */
+    @Override
+    public  String  getOperatorSymbol() { return "&"; }
+
+	/** @see JoinStrategy#resultSetMethodName */
+    @Override
+    public String resultSetMethodName(
+            boolean bulkFetch,
+            boolean multiprobe,
+            boolean validatingCheckConstraint) {
+		return "getMergeScanResultSet";
+	}
+
+	/** @see JoinStrategy#joinResultSetMethodName */
+    @Override
+	public String joinResultSetMethodName() {
+		return "getMergeJoinResultSet";
+	}
+
+	/** @see JoinStrategy#halfOuterJoinResultSetMethodName */
+    @Override
+	public String halfOuterJoinResultSetMethodName() {
+		return "getMergeLeftOuterJoinResultSet";
+	}
+
+	/**
+	 * @see JoinStrategy#getScanArgs
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+    @Override
+	public int getScanArgs(
+							TransactionController tc,
+							MethodBuilder mb,
+							Optimizable innerTable,
+							OptimizablePredicateList storeRestrictionList,
+							OptimizablePredicateList nonStoreRestrictionList,
+							ExpressionClassBuilderInterface acbi,
+							int bulkFetch,
+							int resultRowTemplate,
+							int colRefItem,
+							int indexColItem,
+							int lockMode,
+							boolean tableLocked,
+							int isolationLevel,
+							int maxMemoryPerTable,
+							boolean genInListVals
+							)
+						throws StandardException
+	{
+		/* The scan merges on the first predicate of the merge list, which
+		 * divideUpPredicateLists() put there, so it has to be the
+		 * equality on the first index column.
+		 */
+		if (SanityManager.DEBUG)
+		{
+			int[] keyColumns = innerTable.hashKeyColumns();
+			if (keyColumns == null || keyColumns[0] != 0)
+			{
+				SanityManager.THROWASSERT(
+					"Merge join without an equijoin on the first " +
+					"index column of " + innerTable.getBaseTableName());
+			}
+		}
+
+		ExpressionClassBuilder acb = (ExpressionClassBuilder) acbi;
+
+		fillInScanArgs1(tc,
+						mb,
+						innerTable,
+						storeRestrictionList,
+						acb,
+						resultRowTemplate);
+
+		nonStoreRestrictionList.generateQualifiers(acb,	mb, innerTable, true);
+
+		fillInScanArgs2(mb,
+						innerTable,
+						bulkFetch,
+						colRefItem,
+						indexColItem,
+						lockMode,
+						tableLocked,
+						isolationLevel);
+
+		return 24;
+	}
+
+	/**
+	 * Find the column of an outer table that the given column of the
+	 * inner table is joined to by an equality predicate.  Only columns
+	 * of the same type are considered, so that the outer and the inner
+	 * rows are ordered the same way.
+	 *
+	 * @param innerTable	The inner table of the join
+	 * @param predList		The predicate list to look for the equijoin in
+	 * @param columnNumber	The column of the inner table
+	 *
+	 * @return	the outer column, or null if there is no such equijoin
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	private ColumnReference findOuterJoinColumn(
+									Optimizable innerTable,
+									OptimizablePredicateList predList,
+									int columnNumber)
+				throws StandardException
+	{
+		if (predList == null)
+		{
+			return null;
+		}
+
+		for (int i = 0; i < predList.size(); i++)
+		{
+			Predicate pred = (Predicate) predList.getOptPredicate(i);
+
+			/* Skip scoped predicates and non-join predicates, as
+			 * PredicateList.hasOptimizableEquijoin() does.
+			 */
+			if (pred.isScopedForPush() ||
+				pred.getReferencedMap().hasSingleBitSet())
+			{
+				continue;
+			}
+
+			ValueNode opNode = pred.getAndNode().getLeftOperand();
+			if (! opNode.optimizableEqualityNode(innerTable,
+												 columnNumber,
+												 false) ||
+				! ((RelationalOperator) opNode).isQualifier(innerTable, false))
+			{
+				continue;
+			}
+
+			BinaryRelationalOperatorNode equals =
+				(BinaryRelationalOperatorNode) opNode;
+			ColumnReference innerColumn =
+				equals.getColumnOperand(innerTable, columnNumber);
+			ValueNode other = (equals.getLeftOperand() == innerColumn) ?
+				equals.getRightOperand() : equals.getLeftOperand();
+
+			if (other instanceof ColumnReference &&
+				sameOrdering(innerColumn.getTypeServices(),
+							 other.getTypeServices()))
+			{
+				return (ColumnReference) other;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Tell whether values of the two types sort the same way.
+	 */
+	private static boolean sameOrdering(DataTypeDescriptor left,
+										DataTypeDescriptor right)
+	{
+		return left != null && right != null &&
+			left.getTypeId().equals(right.getTypeId()) &&
+			left.getCollationType() == right.getCollationType();
+	}
+}
@@ -48,6 +48,7 @@ public class OptimizerFactoryImpl
 	protected boolean noTimeout = false;
 	protected boolean useStatistics = true;
 	protected int maxMemoryPerTable = 1048576;
+	protected int maxMemoryPerQuery = 4 * 1048576;
 
 	/*
 	** The fact that we have one set of join strategies for use by all
@@ -114,6 +115,22 @@ public class OptimizerFactoryImpl
 				maxMemoryPerTable = intValue * 1024;
 		}
 
+		/*
+		** This property determines the maximum size of memory (in KB)
+		** the operators of a statement which partition their rows to disk
+		** can use together.  Default is four times maxMemoryPerTable.
+		*/
+		maxMemoryPerQuery =
+			(int) Math.min(4L * maxMemoryPerTable, Integer.MAX_VALUE);
+		String maxQueryMemValue =
+			PropertyUtil.getSystemProperty(Optimizer.MAX_MEMORY_PER_QUERY);
+		if (maxQueryMemValue != null)
+		{
+			int intValue = Integer.parseInt(maxQueryMemValue);
+			if (intValue >= 0)
+				maxMemoryPerQuery = intValue * 1024;
+		}
+
 		String us =	PropertyUtil.getSystemProperty(Optimizer.USE_STATISTICS); 
 		if (us != null)
 			useStatistics = (Boolean.valueOf(us)).booleanValue();
@@ -157,9 +174,11 @@ public class OptimizerFactoryImpl
 		 */
 		if (joinStrategySet == null)
 		{
-			JoinStrategy[] jss = new JoinStrategy[2];
+			JoinStrategy[] jss = new JoinStrategy[4];
 			jss[0] = new NestedLoopJoinStrategy();
 			jss[1] = new HashJoinStrategy();
+			jss[2] = new MergeJoinStrategy();
+			jss[3] = new HybridHashJoinStrategy();
 			joinStrategySet = jss;
 		}
 
@@ -228,6 +247,14 @@ public class OptimizerFactoryImpl
 		return maxMemoryPerTable;
 	}
 
+	/**
+	 * @see OptimizerFactory#getMaxMemoryPerQuery
+	 */
+	public int getMaxMemoryPerQuery()
+	{
+		return maxMemoryPerQuery;
+	}
+
     @Override
     public boolean doJoinOrderOptimization()
     {
@@ -126,6 +126,9 @@ class OptimizerImpl implements Optimizer
 	private RowOrdering currentRowOrdering = new RowOrderingImpl();
 	private RowOrdering bestRowOrdering = new RowOrderingImpl();
 
+	// the left side of the join whose right side this optimizer is for
+	private Optimizable outerSource;
+
 	// max memory use per table
 	private int maxMemoryPerTable;
 
@@ -2325,12 +2328,21 @@ class OptimizerImpl implements Optimizer
 		{
 			/*
 			** The current optimizable can avoid a sort only if the
-			** outer one does, also (if there is an outer one).
+			** outer one does, also (if there is an outer one), and if
+			** its join strategy returns the rows in the order of the
+			** outer rows.  A join strategy which needs ordered outer rows
+			** was found feasible for the best access paths of the outer
+			** tables, not for their sort avoidance paths, so it can't be
+			** part of a sort avoidance plan.
 			*/
-			if (joinPosition == 0 ||
-				optimizableList.getOptimizable(
+			if ((joinPosition == 0 ||
+				 optimizableList.getOptimizable(
 										proposedJoinOrder[joinPosition - 1]).
-												considerSortAvoidancePath())
+												considerSortAvoidancePath()) &&
+				! optimizable.getCurrentAccessPath().getJoinStrategy().
+												spillsOuterRows() &&
+				! optimizable.getCurrentAccessPath().getJoinStrategy().
+												needsOrderedOuterRows())
 			{
 				/*
 				** There is a required row ordering - does the proposed access
@@ -2455,12 +2467,16 @@ class OptimizerImpl implements Optimizer
 		{
 			/*
 			** The current optimizable can avoid a sort only if the
-			** outer one does, also (if there is an outer one).
+			** outer one does, also (if there is an outer one), and if
+			** its join strategy returns the rows in the order of the
+			** outer rows.
 			*/
-			if (joinPosition == 0 ||
-				optimizableList.getOptimizable(
+			if ((joinPosition == 0 ||
+				 optimizableList.getOptimizable(
 										proposedJoinOrder[joinPosition - 1]).
-												considerSortAvoidancePath())
+												considerSortAvoidancePath()) &&
+				! optimizable.getCurrentAccessPath().getJoinStrategy().
+												spillsOuterRows())
 			{
 				/*
 				** There is a required row ordering - does the proposed access
@@ -2645,6 +2661,116 @@ class OptimizerImpl implements Optimizer
 		return retval;
 	}
 
+	/**
+	 * Tell whether this optimizer has found a join order for which every
+	 * optimizable has a feasible access path.  It has not if, for example,
+	 * the user asked for a join strategy which can't be used.
+	 */
+	boolean foundABestPlan()
+	{
+		return foundABestPlan;
+	}
+
+	/**
+	 * Tell this optimizer that it optimizes the right side of a join,
+	 * whose rows are joined with the rows of the given left side.  The
+	 * ordering of the left side is then taken into account by
+	 * getOuterRowOrdering().
+	 *
+	 * @param outerSource	The left side of the join, already optimized
+	 */
+	void setOuterSource(Optimizable outerSource)
+	{
+		this.outerSource = outerSource;
+	}
+
+	/**
+	 * Tell whether the optimizable at the current join position is the
+	 * inner table of a join, that is, whether there are outer tables in
+	 * this join order or a left side of the join this optimizer works on.
+	 */
+	boolean hasOuterTables()
+	{
+		return joinPosition > 0 || outerSource != null;
+	}
+
+	/**
+	 * Get the ordering of the rows coming from the outer tables at the
+	 * current join position, when each of them is read with its best
+	 * access path. Unlike currentRowOrdering, which only remembers the
+	 * ordering of sort avoidance paths, this tells a join strategy
+	 * whether its outer rows arrive in order.  Only base tables read
+	 * through an index are taken to be ordered.
+	 *
+	 * @return	The ordering of the outer rows
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	RowOrdering getOuterRowOrdering() throws StandardException
+	{
+		RowOrdering outerOrdering = new RowOrderingImpl();
+
+		/* The left side of a join comes before all of our tables */
+		if (outerSource != null)
+		{
+			addOuterOrdering(outerSource,
+							 outerSource.getTrulyTheBestAccessPath(),
+							 outerOrdering);
+		}
+
+		for (int i = 0; i < joinPosition; i++)
+		{
+			Optimizable outer =
+				optimizableList.getOptimizable(proposedJoinOrder[i]);
+			AccessPath accessPath = outer.getBestAccessPath();
+
+			/* A join which sets aside outer rows loses their order */
+			if (accessPath.getJoinStrategy() != null &&
+				accessPath.getJoinStrategy().spillsOuterRows())
+			{
+				return new RowOrderingImpl();
+			}
+
+			addOuterOrdering(outer, accessPath, outerOrdering);
+		}
+
+		return outerOrdering;
+	}
+
+	/**
+	 * Add the ordering of the rows of an outer optimizable, read with the
+	 * given access path, to a row ordering.
+	 */
+	private void addOuterOrdering(Optimizable outer,
+								  AccessPath accessPath,
+								  RowOrdering outerOrdering)
+		throws StandardException
+	{
+		ConglomerateDescriptor cd = accessPath.getConglomerateDescriptor();
+
+		/* A base table is usually wrapped in a ProjectRestrictNode */
+		if (outer instanceof ProjectRestrictNode)
+		{
+			ResultSetNode child =
+				((ProjectRestrictNode) outer).getChildResult();
+
+			if (child instanceof FromBaseTable)
+			{
+				outer = (Optimizable) child;
+			}
+		}
+
+		if ((outer instanceof FromBaseTable) && (cd != null))
+		{
+			((FromBaseTable) outer).addConglomerateOrdering(
+									cd, null, outerOrdering);
+		}
+		else
+		{
+			outerOrdering.addUnorderedOptimizable(outer);
+		}
+	}
+
 	/**
 		@see Optimizer#uniqueJoinWithOuterTable
 
@@ -592,6 +592,12 @@ class PredicateList extends QueryTreeNodeVector<Predicate>
 		baseColumnPositions = cd.getIndexDescriptor().baseColumnPositions();
 		isAscending = cd.getIndexDescriptor().isAscending();
 
+		/* The columns after the ordered columns are INCLUDE columns, which
+		 * can only be qualifiers.
+		 */
+		int numberOfOrderedColumns =
+			cd.getIndexDescriptor().numberOfOrderedColumns();
+
 		/* If we have a "useful" IN list probe predicate we will generate a
 		 * start/stop key for optTable of the form "col = <val>", where <val>
 		 * is the first value in the IN-list.  Then during normal index multi-
@@ -675,6 +681,13 @@ class PredicateList extends QueryTreeNodeVector<Predicate>
 								(indexCol.getColumnNumber() != baseColumnPositions[indexPosition]) ||
 								inNode.selfReference(indexCol))
 							indexCol = null;
+						else if (indexPosition >= numberOfOrderedColumns)
+						{
+							/* Store can't use an IN-list on an INCLUDE
+							 * column, it is left as a restriction.
+							 */
+							indexCol = null;
+						}
 						else if (pred.isInListProbePredicate()
 								&& (indexPosition > 0))
 						{
@@ -747,6 +760,14 @@ class PredicateList extends QueryTreeNodeVector<Predicate>
 		/* Sort the array of useful predicates in index position order */
 		java.util.Arrays.sort(usefulPredicates);
 
+		/* A hash index can only look up a value of all its columns */
+		if (cd.getIndexDescriptor().isHash())
+		{
+			orderHashIndexPredicates(optTable, usefulPredicates,
+									 baseColumnPositions.length, pushPreds);
+			return;
+		}
+
 		/* Push the sorted predicates down to the Optimizable table */
 		int		currentStartPosition = -1;
 		boolean	gapInStartPositions = false;
@@ -789,7 +810,8 @@ class PredicateList extends QueryTreeNodeVector<Predicate>
 				** We're working on a new index column for the start position.
 				** Is it just one more than the previous position?
 				*/
-				if ((thisIndexPosition - currentStartPosition) > 1)
+				if ((thisIndexPosition - currentStartPosition) > 1 ||
+					thisIndexPosition >= numberOfOrderedColumns)
 				{
 					/*
 					** There's a gap in the start positions.  Don't mark any
@@ -836,7 +858,8 @@ class PredicateList extends QueryTreeNodeVector<Predicate>
 			/* Same as above, except for stop keys */
 			if (currentStopPosition != thisIndexPosition)
 			{
-				if ((thisIndexPosition - currentStopPosition) > 1)
+				if ((thisIndexPosition - currentStopPosition) > 1 ||
+					thisIndexPosition >= numberOfOrderedColumns)
 				{
 					gapInStopPositions = true;
 				}
@@ -974,6 +997,107 @@ class PredicateList extends QueryTreeNodeVector<Predicate>
 		}
 	}
 
+	/**
+	 * Mark and push the useful predicates for a scan of a hash index.
+	 * <p>
+	 * A hash index only has start and stop keys if there is an "=" or IS NULL
+	 * predicate on every column of the index, then the scan is a lookup of
+	 * the rows with that key.  An IN-list probe predicate is a key too if the
+	 * index has only one column, the probes are each a lookup.  All the other
+	 * useful predicates become qualifiers, applied by a scan of the whole
+	 * index when there are no keys.
+	 *
+	 * @param optTable			The table of the index
+	 * @param usefulPredicates	The useful predicates, in index position order
+	 * @param numKeyColumns		The number of columns of the index
+	 * @param pushPreds			Whether to push the predicates down
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	private void orderHashIndexPredicates(Optimizable optTable,
+										  Predicate[] usefulPredicates,
+										  int numKeyColumns,
+										  boolean pushPreds)
+		throws StandardException
+	{
+		Predicate[]	keyPredicates = new Predicate[numKeyColumns];
+		int			numKeys = 0;
+
+		/* The sort has put the "=" and IS NULL predicates first within the
+		 * predicates on a column, so take the first one on each column.
+		 */
+		for (Predicate pred : usefulPredicates)
+		{
+			int					position = pred.getIndexPosition();
+			RelationalOperator	relop = pred.getRelop();
+			boolean				isKey;
+
+			if (keyPredicates[position] != null)
+				continue;
+
+			if (pred.getSourceInList() != null)
+			{
+				isKey = pred.isInListProbePredicate() && numKeyColumns == 1;
+			}
+			else
+			{
+				isKey =
+					relop.getOperator() == RelationalOperator.EQUALS_RELOP ||
+					relop.getOperator() == RelationalOperator.IS_NULL_RELOP;
+			}
+
+			if (isKey)
+			{
+				keyPredicates[position] = pred;
+				numKeys++;
+			}
+		}
+
+		boolean useKeys = (numKeys == numKeyColumns);
+
+		for (int i = 0; i < usefulPredicates.length; i++)
+		{
+			Predicate	thisPred = usefulPredicates[i];
+			boolean		isIn = (thisPred.getSourceInList() != null);
+
+			if (useKeys && keyPredicates[thisPred.getIndexPosition()] == thisPred)
+			{
+				thisPred.markStartKey();
+				thisPred.markStopKey();
+			}
+			else if (isIn)
+			{
+				/* store can never treat "in" as qualifier, so it stays a
+				 * restriction, see orderUsefulPredicates().
+				 */
+				if (pushPreds)
+					continue;
+			}
+			else
+			{
+				thisPred.markQualifier();
+			}
+
+			if (pushPreds)
+			{
+				if (optTable.pushOptPredicate(thisPred))
+				{
+					removeOptPredicate(thisPred);
+				}
+				else if (SanityManager.DEBUG)
+				{
+					SanityManager.ASSERT(false,
+						"pushOptPredicate expected to be true");
+				}
+			}
+			else
+			{
+				removeOptPredicate(thisPred);
+				addOptPredicate(thisPred, i);
+			}
+		}
+	}
+
 	/**
 	 * Add a Predicate to the list.
 	 *
@@ -1269,6 +1269,7 @@ class TableElementList extends QueryTreeNodeVector<TableElementNode>
                     ((td != null) ? td.getUUID() : (UUID) null),
                     columnNames,
                     isAscending,
+                    columnNames.length,
                     isConstraint,
                     cdn.getBackingIndexUUID(),
                     checkIndexPageSizeProperty(cdn));
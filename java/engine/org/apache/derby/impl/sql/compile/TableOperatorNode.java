@@ -859,6 +859,18 @@ abstract class TableOperatorNode extends FromTable
 													  lcc);
 			optimizer.prepForNextRound();
 
+			/* The right side of a join may make use of the order in
+			 * which the rows of the left side come.
+			 */
+			if ((this instanceof JoinNode) &&
+				(sourceResultSet == rightResultSet) &&
+				(leftResultSet instanceof Optimizable) &&
+				(optimizer instanceof OptimizerImpl))
+			{
+				((OptimizerImpl) optimizer).setOuterSource(
+											(Optimizable) leftResultSet);
+			}
+
 			if (sourceResultSet == leftResultSet)
 			{
 				leftOptimizer = optimizer;
@@ -386,6 +386,9 @@ public class GenericLanguageConnectionContext
         //Creating the authorizer authorizes the connection.
         authorizer = new GenericAuthorizer(this);
 
+        // the queries of a read only connection may read snapshots.
+        tran.setSnapshotReads(authorizer.isReadOnlyConnection());
+
         /*
         ** Set the authorization id.  User shouldn't
         ** be null or else we are going to blow up trying
@@ -3290,6 +3293,7 @@ public class GenericLanguageConnectionContext
         if (!tran.isPristine())
             throw StandardException.newException(SQLState.AUTH_SET_CONNECTION_READ_ONLY_IN_ACTIVE_XACT);
         authorizer.setReadOnlyConnection(on,true);
+        tran.setSnapshotReads(authorizer.isReadOnlyConnection());
     }
 
     /**
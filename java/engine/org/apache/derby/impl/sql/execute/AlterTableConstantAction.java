@@ -2717,8 +2717,10 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 		properties.put("baseConglomerateId", Long.toString(newHeapConglom));
 		if (cd.getIndexDescriptor().isUnique())
 		{
+			// the INCLUDE columns are not part of the unique key
 			properties.put(
-                "nUniqueColumns", Integer.toString(indexRowLength - 1));
+                "nUniqueColumns",
+                Integer.toString(compressIRGs[index].numberOfOrderedColumns()));
 		}
 		else
 		{
@@ -2767,7 +2769,7 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 
             newIndexCongloms[index] = 
                 tc.createAndLoadConglomerate(
-                    "BTREE",
+                    cd.getIndexDescriptor().indexType(),
                     indexRows[index].getRowArray(),
                     ordering[index],
                     collation[index],
@@ -2816,7 +2818,7 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 		{
             newIndexCongloms[index] = 
                 tc.createConglomerate(
-                    "BTREE",
+                    cd.getIndexDescriptor().indexType(),
                     indexRows[index].getRowArray(),
                     ordering[index],
                     collation[index],
@@ -2877,9 +2879,17 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 					if (baseColumnPositions[j] == droppedColumnPosition) break;
 				if (j == baseColumnPositions.length)	// not related
 					continue;
+
+				// the column is a key column of the index, rather than
+				// one of its INCLUDE columns
+				int numberOfOrderedColumns =
+					compressIRGs[i].numberOfOrderedColumns();
+				boolean keyColumn = (j < numberOfOrderedColumns);
 					
 				if (baseColumnPositions.length == 1 || 
-					(behavior == StatementType.DROP_CASCADE && compressIRGs[i].isUnique()))
+					(keyColumn && numberOfOrderedColumns == 1) ||
+					(keyColumn && behavior == StatementType.DROP_CASCADE &&
+					 compressIRGs[i].isUnique()))
 				{
 					numIndexes--;
 					/* get first conglomerate with this conglom number each time
@@ -2897,7 +2907,7 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 				// give an error for unique index on multiple columns including
 				// the column we are to drop (restrict), such index is not for
 				// a constraint, because constraints have already been handled
-				if (compressIRGs[i].isUnique())
+				if (keyColumn && compressIRGs[i].isUnique())
 				{
 					ConglomerateDescriptor cd = td.getConglomerateDescriptor
 												(indexConglomerateNumbers[i]);
@@ -2934,6 +2944,7 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 
 				boolean[] isAscending = compressIRGs[j].isAscending();
 				boolean reMakeArrays = false;
+				boolean droppedKeyColumn = false;
 				boolean rewriteBaseColumnPositions = false;
 				int size = baseColumnPositions.length;
 				for (int k = 0; k < size; k++)
@@ -2947,6 +2958,8 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 					{
 						baseColumnPositions[k] = 0;		// mark it
 						reMakeArrays = true;
+						droppedKeyColumn =
+							(k < compressIRGs[j].numberOfOrderedColumns());
 					}
 				}
 
@@ -2970,7 +2983,11 @@ class AlterTableConstantAction extends DDLSingleTableConstantAction
 					IndexDescriptor id = compressIRGs[j].getIndexDescriptor();
 					id.setBaseColumnPositions(newBCP);
 					id.setIsAscending(newIsAscending);
-					id.setNumberOfOrderedColumns(id.numberOfOrderedColumns() - 1);
+					if (droppedKeyColumn)
+					{
+						id.setNumberOfOrderedColumns(
+							id.numberOfOrderedColumns() - 1);
+					}
 				}
 			}
 			compressIRGs = newIRGs;
@@ -117,6 +117,11 @@ public abstract class BaseActivation implements CursorActivation, GeneratedByteC
 	private boolean checkRowCounts;
 	private HashSet<Integer> rowCountsCheckedThisExecution = new HashSet<Integer>(4, 0.9f);
 
+	/** Memory reserved by the operators of this statement, see
+	 * reserveMemory()
+	 */
+	private int reservedMemory;
+
 	private static final long MAX_SQRT = (long) Math.sqrt(Long.MAX_VALUE);
 
 	// When the row count exceeds this number, we should recompile if
@@ -947,6 +952,26 @@ public abstract class BaseActivation implements CursorActivation, GeneratedByteC
 		}
 	}
 
+	/**
+		@see Activation#reserveMemory
+	 */
+	public int reserveMemory(int bytes)
+	{
+		int budget = getLanguageConnectionContext().getOptimizerFactory().
+			getMaxMemoryPerQuery();
+		int granted = Math.max(0, Math.min(bytes, budget - reservedMemory));
+		reservedMemory += granted;
+		return granted;
+	}
+
+	/**
+		@see Activation#releaseMemory
+	 */
+	public void releaseMemory(int bytes)
+	{
+		reservedMemory = Math.max(0, reservedMemory - bytes);
+	}
+
 	/**
 		@see Activation#informOfRowCount
 		@exception StandardException	Thrown on error
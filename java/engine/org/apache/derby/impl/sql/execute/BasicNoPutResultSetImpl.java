@@ -178,6 +178,24 @@ implements NoPutResultSet
 	 */
 	public abstract ExecRow	getNextRowCore() throws StandardException;
 
+	/**
+	 * Return the rows one at a time. Result sets which can produce
+	 * several rows at a time override this.
+	 *
+	 * @see NoPutResultSet#getNextRowBatch
+	 * @exception StandardException thrown on failure.
+	 */
+	public int getNextRowBatch(ExecRow[] batch) throws StandardException
+	{
+		ExecRow row = getNextRowCore();
+		if (row == null)
+		{
+			return 0;
+		}
+		batch[0] = row;
+		return 1;
+	}
+
 	/**
 	 * @see NoPutResultSet#getPointOfAttachment
 	 */
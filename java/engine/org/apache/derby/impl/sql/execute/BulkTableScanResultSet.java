@@ -73,6 +73,8 @@ class BulkTableScanResultSet extends TableScanResultSet
     private RowLocation[]   rowLocations;
 	private int curRowPosition;
 	private int numRowsInArray;
+	// the rows returned by getNextRowBatch(), one per row of rowArray
+	private ExecRow[] batchRows;
     private int         baseColumnCount;
     private int         resultColumnCount;
 
@@ -413,6 +415,91 @@ outer:		for (;;)
 	    return result;
 	}
 
+	/**
+	 * Return the rows left in the row array, after reading the next
+	 * group of rows from the store if there are none left. Each row of
+	 * the batch is a compact row of its own over a row of the row array.
+	 *
+	 * @see NoPutResultSet#getNextRowBatch
+	 *
+	 * @exception StandardException thrown on failure
+	 */
+	public int getNextRowBatch(ExecRow[] batch) throws StandardException
+	{
+		// the row locations are added to a new row for each row anyway
+		if (fetchRowLocations)
+		{
+			return super.getNextRowBatch(batch);
+		}
+
+		if( isXplainOnlyMode() )
+			return 0;
+
+		int numRows = 0;
+
+        checkCancellationFlag();
+
+		beginTime = getCurrentTimeMillis();
+		if (isOpen && scanControllerOpened)
+		{
+			if (currentRow == null)
+			{
+				currentRow =
+					getCompactRow(candidate,
+									accessedCols,
+									isKeyed);
+			}
+			if (batchRows == null)
+			{
+				batchRows = new ExecRow[rowArray.length];
+			}
+
+			while (numRows == 0)
+			{
+				if (curRowPosition >= numRowsInArray - 1)
+				{
+					if (reloadArray() == OUT_OF_ROWS)
+					{
+						clearCurrentRow();
+						setRowCountIfPossible(rowsThisScan);
+						break;
+					}
+				}
+
+				while (numRows < batch.length &&
+					   curRowPosition < numRowsInArray - 1)
+				{
+					curRowPosition++;
+					candidate.setRowArray(rowArray[curRowPosition]);
+					rowsSeen++;
+					rowsThisScan++;
+
+					// see getNextRowCore()
+					if (skipRow(candidate))
+					{
+						rowsFiltered++;
+						continue;
+					}
+
+					ExecRow row = batchRows[curRowPosition];
+					if (row == null)
+					{
+						row = currentRow.getNewNullRow();
+						batchRows[curRowPosition] = row;
+					}
+					batch[numRows++] = setCompactRow(candidate, row);
+				}
+			}
+		}
+
+		if (numRows > 0)
+		{
+			setCurrentRow(batch[numRows - 1]);
+		}
+		nextTime += getElapsedMillis(beginTime);
+		return numRows;
+	}
+
 	/*
 	** Load up rowArray with a batch of
 	** rows.
@@ -446,6 +533,7 @@ outer:		for (;;)
 		curRowPosition = -1;
 		rowArray = null;
         rowLocations = null;
+		batchRows = null;
 	}
 
 	/**
@@ -25,9 +25,11 @@ import java.util.Properties;
 import org.apache.derby.catalog.UUID;
 import org.apache.derby.catalog.types.StatisticsImpl;
 import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.Property;
 import org.apache.derby.iapi.reference.SQLState;
 import org.apache.derby.iapi.services.io.FormatableBitSet;
 import org.apache.derby.iapi.services.loader.ClassFactory;
+import org.apache.derby.iapi.services.property.PropertyUtil;
 import org.apache.derby.iapi.sql.Activation;
 import org.apache.derby.iapi.sql.conn.LanguageConnectionContext;
 import org.apache.derby.iapi.sql.depend.DependencyManager;
@@ -110,6 +112,7 @@ class CreateIndexConstantAction extends IndexConstantAction
 	private String			indexType;
 	private String[]		columnNames;
 	private boolean[]		isAscending;
+	private int				numberOfOrderedColumns;
 	private boolean			isConstraint;
 	private UUID			conglomerateUUID;
 	private Properties		properties;
@@ -166,6 +169,12 @@ class CreateIndexConstantAction extends IndexConstantAction
      *                                      in order
      * @param isAscending	                Array of booleans telling asc/desc 
      *                                      on each column
+     * @param numberOfOrderedColumns        The number of leading columns
+     *                                      which form the key of the index.
+     *                                      The columns after them are
+     *                                      INCLUDE columns, which are stored
+     *                                      in the index but are not part of
+     *                                      its ordering.
      * @param isConstraint	                TRUE if index is backing up a 
      *                                      constraint, else FALSE
      * @param conglomerateUUID	            ID of conglomerate
@@ -186,6 +195,7 @@ class CreateIndexConstantAction extends IndexConstantAction
             UUID			tableId,
             String[]		columnNames,
             boolean[]		isAscending,
+            int				numberOfOrderedColumns,
             boolean			isConstraint,
             UUID			conglomerateUUID,
             Properties		properties)
@@ -202,6 +212,7 @@ class CreateIndexConstantAction extends IndexConstantAction
 		this.indexType                  = indexType;
 		this.columnNames                = columnNames;
 		this.isAscending                = isAscending;
+		this.numberOfOrderedColumns     = numberOfOrderedColumns;
 		this.isConstraint               = isConstraint;
 		this.conglomerateUUID           = conglomerateUUID;
 		this.properties                 = properties;
@@ -256,6 +267,7 @@ class CreateIndexConstantAction extends IndexConstantAction
 		this.indexType = irg.indexType();
 		this.columnNames = srcCD.getColumnNames();
 		this.isAscending = irg.isAscending();
+		this.numberOfOrderedColumns = irg.numberOfOrderedColumns();
 		this.isConstraint = srcCD.isConstraint();
 		this.conglomerateUUID = srcCD.getUUID();
 		this.properties = properties;
@@ -508,6 +520,7 @@ class CreateIndexConstantAction extends IndexConstantAction
             boolean possibleShare =
                     (irg.isUnique() || !unique) &&
                     (bcps.length == baseColumnPositions.length) &&
+                    (irg.numberOfOrderedColumns() == numberOfOrderedColumns) &&
                     !hasDeferrableChecking;
 
 			//check if existing index is non unique and uniqueWithDuplicateNulls
@@ -575,7 +588,7 @@ class CreateIndexConstantAction extends IndexConstantAction
                         false, // deferrable indexes are not shared
 						baseColumnPositions,
 						isAscending,
-						baseColumnPositions.length);
+						numberOfOrderedColumns);
 
 				//DERBY-655 and DERBY-1343  
 				// Sharing indexes will have unique logical conglomerate UUIDs.
@@ -653,9 +666,10 @@ class CreateIndexConstantAction extends IndexConstantAction
 
 		// All indexes are unique because they contain the RowLocation.
 		// The number of uniqueness columns must include the RowLocation
-		// if the user did not specify a unique index.
+		// if the user did not specify a unique index.  The INCLUDE columns
+		// of a unique index are not part of its uniqueness.
 		indexProperties.put("nUniqueColumns",
-					Integer.toString(unique ? baseColumnPositions.length :
+					Integer.toString(unique ? numberOfOrderedColumns :
 												baseColumnPositions.length + 1)
 							);
 		// By convention, the row location column is the last column
@@ -666,7 +680,8 @@ class CreateIndexConstantAction extends IndexConstantAction
 		indexProperties.put("nKeyFields",
 							Integer.toString(baseColumnPositions.length + 1));
 
-		// For now, assume that all index columns are ordered columns
+		// Only the leading numberOfOrderedColumns columns are ordered, the
+		// rest are INCLUDE columns.
 		if (! shareExisting)
 		{
             if (dd.checkVersion(DataDictionary.DD_VERSION_DERBY_10_4, null))
@@ -680,7 +695,7 @@ class CreateIndexConstantAction extends IndexConstantAction
                          constraintType != DataDictionary.FOREIGNKEY_CONSTRAINT),
                         baseColumnPositions,
                         isAscending,
-                        baseColumnPositions.length);
+                        numberOfOrderedColumns);
 			}
 			else 
             {
@@ -692,7 +707,7 @@ class CreateIndexConstantAction extends IndexConstantAction
                                             false,
                                             baseColumnPositions,
                                             isAscending,
-                                            baseColumnPositions.length);
+                                            numberOfOrderedColumns);
 			}
 		}
 
@@ -805,7 +820,7 @@ class CreateIndexConstantAction extends IndexConstantAction
 				return;
 
 			/* For non-unique indexes, we order by all columns + the RID.
-			 * For unique indexes, we just order by the columns.
+			 * For unique indexes, we just order by the key columns.
 			 * We create a unique index observer for unique indexes
 			 * so that we can catch duplicate key.
 			 * We create a basic sort observer for non-unique indexes
@@ -835,7 +850,7 @@ class CreateIndexConstantAction extends IndexConstantAction
 
                 if (unique || uniqueDeferrable)
 				{
-                    numColumnOrderings = unique ? baseColumnPositions.length :
+                    numColumnOrderings = unique ? numberOfOrderedColumns :
                             baseColumnPositions.length + 1;
 
                     sortObserver = new UniqueIndexSortObserver(
@@ -884,6 +899,18 @@ class CreateIndexConstantAction extends IndexConstantAction
 													 true);
 			}
 
+			// Let the rows of a big index be sorted by several threads.
+			int sortThreads = PropertyUtil.getServiceInt(
+				tc, Property.INDEX_BUILD_THREADS, 1, 64, 1);
+			if (sortThreads > 1)
+			{
+				if (sortProperties == null)
+					sortProperties = new Properties();
+				sortProperties.put(
+					AccessFactoryGlobals.SORT_THREADS,
+					String.valueOf(sortThreads));
+			}
+
 			ColumnOrdering[]	order = new ColumnOrdering[numColumnOrderings];
 			for (int i=0; i < numColumnOrderings; i++) 
 			{
@@ -315,6 +315,7 @@ abstract class DDLSingleTableConstantAction extends DDLConstantAction
                         td.getSchemaName(), 
                         cd.getConglomerateName(), td.getName(), td.getUUID(),
                         cols, cd.getIndexDescriptor().isAscending(),
+                        cd.getIndexDescriptor().numberOfOrderedColumns(),
                         true, cd.getUUID(), prop);
 
         //create index
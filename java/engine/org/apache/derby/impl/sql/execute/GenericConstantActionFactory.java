@@ -241,6 +241,9 @@ public class GenericConstantActionFactory
      * @param tableId		UUID of table.
      * @param columnNames	Names of the columns in the index, in order
      * @param isAscending	Array of booleans telling asc/desc on each column
+     * @param numberOfOrderedColumns	The number of leading columns which
+     *                  form the key of the index, the rest are INCLUDE
+     *                  columns
      * @param isConstraint	TRUE if index is backing up a constraint, else FALSE
      * @param conglomerateUUID	ID of conglomerate
      * @param properties	The optional properties list associated with the index.
@@ -260,6 +263,7 @@ public class GenericConstantActionFactory
 		UUID			tableId,
 		String[]		columnNames,
 		boolean[]		isAscending,
+		int				numberOfOrderedColumns,
 		boolean			isConstraint,
 		UUID			conglomerateUUID,
 		Properties		properties
@@ -279,6 +283,7 @@ public class GenericConstantActionFactory
             tableId,
             columnNames,
             isAscending,
+            numberOfOrderedColumns,
             isConstraint,
             conglomerateUUID,
             properties);
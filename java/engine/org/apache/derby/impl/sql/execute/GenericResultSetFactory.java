@@ -346,6 +346,31 @@ public class GenericResultSetFactory implements ResultSetFactory
 						optimizerEstimatedCost);
 	}
 
+	/**
+		@see ResultSetFactory#getParallelScalarAggregateResultSet
+		@exception StandardException thrown on error
+	 */
+	public NoPutResultSet getParallelScalarAggregateResultSet(NoPutResultSet source,
+		boolean isInSortedOrder,
+		int aggregateItem,
+		int orderItem,
+		int rowAllocator,
+		int maxRowSize,
+		int resultSetNumber, 
+		boolean singleInputRow,
+		double optimizerEstimatedRowCount,
+		double optimizerEstimatedCost,
+		int parallelScanThreads) 
+			throws StandardException
+	{
+		return new ParallelScalarAggregateResultSet(
+						source, isInSortedOrder, aggregateItem, source.getActivation(),
+						rowAllocator, resultSetNumber, singleInputRow,
+						optimizerEstimatedRowCount,
+						optimizerEstimatedCost,
+						parallelScanThreads);
+	}
+
 	/**
 		@see ResultSetFactory#getDistinctScalarAggregateResultSet
 		@exception StandardException thrown on error
@@ -391,6 +416,28 @@ public class GenericResultSetFactory implements ResultSetFactory
 						optimizerEstimatedCost, isRollup);
 	}
 
+	/**
+		@see ResultSetFactory#getHashGroupedAggregateResultSet
+		@exception StandardException thrown on error
+	 */
+	public NoPutResultSet getHashGroupedAggregateResultSet(NoPutResultSet source,
+		boolean isInSortedOrder,
+		int aggregateItem,
+		int orderItem,
+		int rowAllocator,
+		int maxRowSize,
+		int resultSetNumber, 
+		double optimizerEstimatedRowCount,
+		double optimizerEstimatedCost,
+		boolean isRollup) 
+			throws StandardException
+	{
+		return new HashGroupedAggregateResultSet(
+						source, aggregateItem, orderItem, source.getActivation(),
+						rowAllocator, resultSetNumber, optimizerEstimatedRowCount,
+						optimizerEstimatedCost);
+	}
+
 	/**
 		@see ResultSetFactory#getDistinctGroupedAggregateResultSet
 		@exception StandardException thrown on error
@@ -582,6 +629,136 @@ public class GenericResultSetFactory implements ResultSetFactory
 								optimizerEstimatedCost);
 	}
 
+	/**
+		@see ResultSetFactory#getHybridHashScanResultSet
+		@exception StandardException thrown on error
+	 */
+	public NoPutResultSet getHybridHashScanResultSet(
+                        			Activation activation,
+									long conglomId,
+									int scociItem,
+									int resultRowTemplate,
+									int resultSetNumber,
+									GeneratedMethod startKeyGetter,
+									int startSearchOperator,
+									GeneratedMethod stopKeyGetter,
+									int stopSearchOperator,
+									boolean sameStartStopPosition,
+									Qualifier[][] scanQualifiers,
+									Qualifier[][] nextQualifiers,
+									int initialCapacity,
+									float loadFactor,
+									int maxCapacity,
+									int hashKeyColumn,
+									String tableName,
+									String userSuppliedOptimizerOverrides,
+									String indexName,
+									boolean isConstraint,
+									boolean forUpdate,
+									int colRefItem,
+									int indexColItem,
+									int lockMode,
+									boolean tableLocked,
+									int isolationLevel,
+									double optimizerEstimatedRowCount,
+									double optimizerEstimatedCost)
+			throws StandardException
+	{
+        StaticCompiledOpenConglomInfo scoci = (StaticCompiledOpenConglomInfo)(activation.getPreparedStatement().
+						getSavedObject(scociItem));
+
+		return new HybridHashScanResultSet(
+								conglomId,
+								scoci,
+								activation,
+								resultRowTemplate,
+								resultSetNumber,
+								startKeyGetter,
+								startSearchOperator,
+								stopKeyGetter,
+								stopSearchOperator,
+								sameStartStopPosition,
+								scanQualifiers,
+								nextQualifiers,
+								initialCapacity,
+								loadFactor,
+								maxCapacity,
+								hashKeyColumn,
+								tableName,
+								userSuppliedOptimizerOverrides,
+								indexName,
+								isConstraint,
+								forUpdate,
+								colRefItem,
+								lockMode,
+								tableLocked,
+								isolationLevel,
+								true,		// Skip rows with 1 or more null key columns
+								optimizerEstimatedRowCount,
+								optimizerEstimatedCost);
+	}
+
+	/**
+		@see ResultSetFactory#getMergeScanResultSet
+		@exception StandardException thrown on error
+	 */
+	public NoPutResultSet getMergeScanResultSet(
+                        			Activation activation,
+									long conglomId,
+									int scociItem,
+									int resultRowTemplate,
+									int resultSetNumber,
+									GeneratedMethod startKeyGetter,
+									int startSearchOperator,
+									GeneratedMethod stopKeyGetter,
+									int stopSearchOperator,
+									boolean sameStartStopPosition,
+									Qualifier[][] scanQualifiers,
+									Qualifier[][] nextQualifiers,
+									String tableName,
+									String userSuppliedOptimizerOverrides,
+									String indexName,
+									boolean isConstraint,
+									boolean forUpdate,
+									int colRefItem,
+									int indexColItem,
+									int lockMode,
+									boolean tableLocked,
+									int isolationLevel,
+									double optimizerEstimatedRowCount,
+									double optimizerEstimatedCost)
+			throws StandardException
+	{
+        StaticCompiledOpenConglomInfo scoci = (StaticCompiledOpenConglomInfo)(activation.getPreparedStatement().
+						getSavedObject(scociItem));
+
+		return new MergeScanResultSet(
+								conglomId,
+								scoci,
+								activation,
+								resultRowTemplate,
+								resultSetNumber,
+								startKeyGetter,
+								startSearchOperator,
+								stopKeyGetter,
+								stopSearchOperator,
+								sameStartStopPosition,
+								scanQualifiers,
+								nextQualifiers,
+								tableName,
+								userSuppliedOptimizerOverrides,
+								indexName,
+								isConstraint,
+								forUpdate,
+								colRefItem,
+								indexColItem,
+								lockMode,
+								tableLocked,
+								isolationLevel,
+								optimizerEstimatedRowCount,
+								optimizerEstimatedCost);
+	}
+
 	/**
     	a distinct scan generator, for ease of use at present.
 		@see ResultSetFactory#getHashScanResultSet
@@ -1018,6 +1195,66 @@ public class GenericResultSetFactory implements ResultSetFactory
 										   userSuppliedOptimizerOverrides);
 	}
 
+	/**
+		@see ResultSetFactory#getMergeJoinResultSet
+		@exception StandardException thrown on error
+	 */
+
+    public NoPutResultSet getMergeJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides)
+			throws StandardException
+	{
+		return new MergeJoinResultSet(leftResultSet, leftNumCols,
+										   rightResultSet, rightNumCols,
+										   leftResultSet.getActivation(), joinClause,
+										   resultSetNumber, 
+										   oneRowRightSide, 
+										   notExistsRightSide, 
+										   optimizerEstimatedRowCount,
+										   optimizerEstimatedCost,
+										   userSuppliedOptimizerOverrides);
+	}
+
+	/**
+		@see ResultSetFactory#getHybridHashJoinResultSet
+		@exception StandardException thrown on error
+	 */
+
+    public NoPutResultSet getHybridHashJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides,
+								   int leftResultSetsItem)
+			throws StandardException
+	{
+		return new HybridHashJoinResultSet(leftResultSet, leftNumCols,
+										   rightResultSet, rightNumCols,
+										   leftResultSet.getActivation(), joinClause,
+										   resultSetNumber, 
+										   oneRowRightSide, 
+										   notExistsRightSide, 
+										   optimizerEstimatedRowCount,
+										   optimizerEstimatedCost,
+										   userSuppliedOptimizerOverrides,
+										   leftResultSetsItem);
+	}
+
 	/**
 		@see ResultSetFactory#getNestedLoopLeftOuterJoinResultSet
 		@exception StandardException thrown on error
@@ -1084,6 +1321,74 @@ public class GenericResultSetFactory implements ResultSetFactory
 										   userSuppliedOptimizerOverrides);
 	}
 
+	/**
+		@see ResultSetFactory#getMergeLeftOuterJoinResultSet
+		@exception StandardException thrown on error
+	 */
+
+    public NoPutResultSet getMergeLeftOuterJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   GeneratedMethod emptyRowFun,
+								   boolean wasRightOuterJoin,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides)
+			throws StandardException
+	{
+		return new MergeLeftOuterJoinResultSet(leftResultSet, leftNumCols,
+										   rightResultSet, rightNumCols,
+										   leftResultSet.getActivation(), joinClause,
+										   resultSetNumber, 
+										   emptyRowFun, 
+										   wasRightOuterJoin,
+										   oneRowRightSide,
+										   notExistsRightSide,
+										   optimizerEstimatedRowCount,
+										   optimizerEstimatedCost,
+										   userSuppliedOptimizerOverrides);
+	}
+
+	/**
+		@see ResultSetFactory#getHybridHashLeftOuterJoinResultSet
+		@exception StandardException thrown on error
+	 */
+
+    public NoPutResultSet getHybridHashLeftOuterJoinResultSet(NoPutResultSet leftResultSet,
+								   int leftNumCols,
+								   NoPutResultSet rightResultSet,
+								   int rightNumCols,
+								   GeneratedMethod joinClause,
+								   int resultSetNumber,
+								   GeneratedMethod emptyRowFun,
+								   boolean wasRightOuterJoin,
+								   boolean oneRowRightSide,
+								   boolean notExistsRightSide,
+								   double optimizerEstimatedRowCount,
+								   double optimizerEstimatedCost,
+								   String userSuppliedOptimizerOverrides,
+								   int leftResultSetsItem)
+			throws StandardException
+	{
+		return new HybridHashLeftOuterJoinResultSet(leftResultSet, leftNumCols,
+										   rightResultSet, rightNumCols,
+										   leftResultSet.getActivation(), joinClause,
+										   resultSetNumber, 
+										   emptyRowFun, 
+										   wasRightOuterJoin,
+										   oneRowRightSide,
+										   notExistsRightSide,
+										   optimizerEstimatedRowCount,
+										   optimizerEstimatedCost,
+										   userSuppliedOptimizerOverrides,
+										   leftResultSetsItem);
+	}
+
 	/**
 		@see ResultSetFactory#getSetTransactionResultSet
 		@exception StandardException thrown when unable to create the
@@ -65,6 +65,10 @@ import org.apache.derby.iapi.types.RowLocation;
  *   the aggregations inside the sort, and the results are read back directly
  *   from the sorter.
  *
+ * In the last case the optimizer may instead choose
+ * HashGroupedAggregateResultSet, which groups the rows in a hash table
+ * and does not sort them.
+ *
  * Note that, as of the introduction of the ROLLUP support, we no longer
  * ALWAYS compute the aggregates using a SortObserver, which is an
  * arrangement by which the sorter calls back into the aggregates during
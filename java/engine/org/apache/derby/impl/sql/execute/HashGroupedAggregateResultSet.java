@@ -0,0 +1,655 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.HashGroupedAggregateResultSet
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.cache.ClassSize;
+import org.apache.derby.iapi.services.i18n.MessageService;
+import org.apache.derby.iapi.services.io.FormatableArrayHolder;
+import org.apache.derby.shared.common.sanity.SanityManager;
+import org.apache.derby.iapi.sql.Activation;
+import org.apache.derby.iapi.sql.execute.CursorResultSet;
+import org.apache.derby.iapi.sql.execute.ExecIndexRow;
+import org.apache.derby.iapi.sql.execute.ExecRow;
+import org.apache.derby.iapi.sql.execute.NoPutResultSet;
+import org.apache.derby.iapi.store.access.ColumnOrdering;
+import org.apache.derby.iapi.store.access.ConglomerateController;
+import org.apache.derby.iapi.store.access.KeyHasher;
+import org.apache.derby.iapi.store.access.ScanController;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.RowLocation;
+
+/**
+ * This ResultSet evaluates grouped, non distinct aggregates without
+ * sorting its input. It is used instead of GroupedAggregateResultSet
+ * when the optimizer expects a hash table to be cheaper than a sort,
+ * and the statement has no ROLLUP and no DISTINCT aggregate.
+ * <p>
+ * During the first call to next() the source is drained into a hash
+ * table which maps the values of the grouping columns to the row that
+ * accumulates the aggregates of that group. Once the estimated size of
+ * the table reaches derby.language.maxMemoryPerTable, no new groups are
+ * added to it. The rows of groups which are not in the table are instead
+ * written to one of a few temporary conglomerates (partitions), chosen by
+ * the hash of the grouping columns, so that all the rows of a group end
+ * up in the same partition. When the groups in memory have been
+ * returned, each partition is read back and aggregated the same way,
+ * using other bits of the hash to split it again if it still does not
+ * fit in memory.
+ * <p>
+ * The groups are returned in no particular order.
+ */
+class HashGroupedAggregateResultSet extends GenericAggregateResultSet
+	implements CursorResultSet {
+
+	/** Number of partitions the rows are spilled to, a power of 2. */
+	private static final int NUM_PARTITIONS = 8;
+	/** Number of bits of the hash which choose a partition. */
+	private static final int PARTITION_BITS = 3;
+	/**
+	 * Number of times a partition may be split again. Past this level
+	 * (a single huge group, or a very poor hash) the memory limit is
+	 * ignored.
+	 */
+	private static final int MAX_LEVEL = 8;
+
+	/* Run time statistics variables */
+	public int rowsInput;
+	public int rowsReturned;
+	public int partitionsSpilled;
+
+	// set in constructor and not altered during
+	// life of object.
+	private final int[] keyColumns;
+
+	// set in open and not modified thereafter
+	private TransactionController tc;
+	private long maxMemory;
+
+	// Cache ExecIndexRow
+	private ExecIndexRow sourceExecIndexRow;
+
+	// - groups: the groups being aggregated or returned, keyed on the
+	//   values of their grouping columns.
+	// - spilled: the partitions written while loading the groups, or
+	//   null entries for the partitions which got no rows.
+	// - pendingPartitions: partitions which are complete on disk and
+	//   still have to be aggregated.
+	// - partitionScan: the scan of the partition being aggregated.
+	private HashMap<Object, ExecIndexRow> groups;
+	private Iterator<ExecIndexRow> groupIterator;
+	private long memoryUsed;
+	private boolean tableFull;
+	private Partition[] spilled;
+	private List<Partition> pendingPartitions;
+	private Partition currentPartition;
+	private ScanController partitionScan;
+	private ExecIndexRow partitionRow;
+
+	// RTS
+	public Properties sortProperties = new Properties();
+
+	/**
+	 * A temporary conglomerate holding the input rows of some groups.
+	 */
+	private static final class Partition
+	{
+		final long conglomId;
+		final int level;
+		ConglomerateController cc;
+
+		Partition(long conglomId, int level)
+		{
+			this.conglomId = conglomId;
+			this.level = level;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param	s			input result set
+	 * @param	aggregateItem	indicates the number of the
+	 *		SavedObject off of the PreparedStatement that holds the
+	 *		AggregatorInfoList used by this routine.
+	 * @param	orderingItem	indicates the number of the
+	 *		SavedObject off of the PreparedStatement that holds the
+	 *		ColumOrdering array of the grouping columns
+	 * @param	a				activation
+	 * @param	ra				saved object that builds an empty output row
+	 * @param	resultSetNumber	The resultSetNumber for this result set
+	 *
+	 * @exception StandardException Thrown on error
+	 */
+	HashGroupedAggregateResultSet(NoPutResultSet s,
+					int	aggregateItem,
+					int	orderingItem,
+					Activation a,
+					int ra,
+					int resultSetNumber,
+					double optimizerEstimatedRowCount,
+					double optimizerEstimatedCost) throws StandardException
+	{
+		super(s, aggregateItem, a, ra, resultSetNumber, optimizerEstimatedRowCount, optimizerEstimatedCost);
+
+		if (SanityManager.DEBUG)
+		{
+			SanityManager.ASSERT(!aggInfoList.hasDistinct(),
+				"distinct aggregates are not supported by hash aggregation");
+		}
+
+		ColumnOrdering[] order = ((FormatableArrayHolder)
+					(a.getPreparedStatement().getSavedObject(orderingItem)))
+						.getArray(ColumnOrdering[].class);
+		keyColumns = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			keyColumns[i] = order[i].getColumnId();
+		}
+
+		recordConstructorTime();
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// ResultSet interface (leftover from NoPutResultSet)
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Open the scan.  Aggregate the source rows into the hash table,
+	 * spilling the groups which do not fit to disk.
+	 *
+	 * @exception StandardException thrown if cursor finished.
+	 */
+	public void	openCore() throws StandardException
+	{
+		beginTime = getCurrentTimeMillis();
+		if (SanityManager.DEBUG)
+			SanityManager.ASSERT( ! isOpen, "HashGroupedAggregateResultSet already open");
+
+		tc = getTransactionController();
+		maxMemory = activation.getLanguageConnectionContext().
+			getOptimizerFactory().getMaxMemoryPerTable();
+		sourceExecIndexRow = (ExecIndexRow) getRowTemplate().getClone();
+		partitionRow = (ExecIndexRow) getRowTemplate().getClone();
+		pendingPartitions = new ArrayList<Partition>();
+		partitionsSpilled = 0;
+
+		source.openCore();
+
+		try {
+			loadGroups(0);
+			source.close();
+		} catch (StandardException e) {
+			// DERBY-4330 Result set tree must be atomically open or
+			// closed for reuse to work (after DERBY-827).
+
+			isOpen = true; // to make close do its thing:
+			try { close(); } catch (StandardException ee) {}
+			throw e;
+		}
+
+		isOpen = true;
+		numOpens++;
+
+		openTime += getElapsedMillis(beginTime);
+	}
+
+	/**
+	 * Return the next row.
+	 *
+	 * @exception StandardException thrown on failure.
+	 * @exception StandardException ResultSetNotOpen thrown if not yet open.
+	 *
+	 * @return the next row in the result
+	 */
+	public ExecRow	getNextRowCore() throws StandardException
+	{
+		if( isXplainOnlyMode() )
+			return null;
+
+		if (!isOpen)
+		{
+			return null;
+		}
+
+		beginTime = getCurrentTimeMillis();
+
+		ExecRow result = null;
+		while (result == null)
+		{
+			if (groupIterator.hasNext())
+			{
+				ExecIndexRow group = groupIterator.next();
+				groupIterator.remove();
+				rowsReturned++;
+				result = finishAggregation(group);
+			}
+			else if (!pendingPartitions.isEmpty())
+			{
+				loadPartition(
+					pendingPartitions.remove(pendingPartitions.size() - 1));
+			}
+			else
+			{
+				clearCurrentRow();
+				break;
+			}
+		}
+
+		nextTime += getElapsedMillis(beginTime);
+		return result;
+	}
+
+	/**
+	 * If the result set has been opened,
+	 * close the open scan and drop the partitions.
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	@Override
+	public void	close() throws StandardException
+	{
+		beginTime = getCurrentTimeMillis();
+		if ( isOpen )
+		{
+			// we don't want to keep around a pointer to the
+			// row ... so it can be thrown away.
+			clearCurrentRow();
+
+			sourceExecIndexRow = null;
+			partitionRow = null;
+			groups = null;
+			groupIterator = null;
+			source.close();
+
+			if (partitionScan != null)
+			{
+				partitionScan.close();
+				partitionScan = null;
+			}
+			if (currentPartition != null)
+			{
+				tc.dropConglomerate(currentPartition.conglomId);
+				currentPartition = null;
+			}
+			if (spilled != null)
+			{
+				dropPartitions(spilled);
+				spilled = null;
+			}
+			dropPartitions(pendingPartitions.toArray(
+				new Partition[pendingPartitions.size()]));
+			pendingPartitions.clear();
+
+			sortProperties = getHashInfo(sortProperties);
+			super.close();
+		}
+		else
+			if (SanityManager.DEBUG)
+				SanityManager.DEBUG("CloseRepeatInfo","Close of HashGroupedAggregateResultSet repeated");
+
+		closeTime += getElapsedMillis(beginTime);
+
+		isOpen = false;
+	}
+
+	/**
+	 * Return the total amount of time spent in this ResultSet
+	 *
+	 * @param type	CURRENT_RESULTSET_ONLY - time spent only in this ResultSet
+	 *				ENTIRE_RESULTSET_TREE  - time spent in this ResultSet and below.
+	 *
+	 * @return long		The total amount of time spent (in milliseconds).
+	 */
+	public long getTimeSpent(int type)
+	{
+		long totTime = constructorTime + openTime + nextTime +
+						closeTime;
+
+		if (type == NoPutResultSet.CURRENT_RESULTSET_ONLY)
+		{
+			return	totTime - originalSource.getTimeSpent(ENTIRE_RESULTSET_TREE);
+		}
+		else
+		{
+			return totTime;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// CursorResultSet interface
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * A grouped row has no row location.
+	 *
+	 * @see CursorResultSet
+	 *
+	 * @return null
+	 */
+	public RowLocation getRowLocation() throws StandardException
+	{
+		return null;
+	}
+
+	/**
+	 * This result set has its row from the last fetch done.
+	 * If the cursor is closed, a null is returned.
+	 *
+	 * @see CursorResultSet
+	 *
+	 * @return the last row returned;
+	 * @exception StandardException thrown on failure.
+	 */
+	public ExecRow getCurrentRow() throws StandardException
+	{
+		if (SanityManager.DEBUG)
+			SanityManager.ASSERT(isOpen, "HashGroupedAggregateResultSet expected to be open");
+
+		return currentRow;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// HASH TABLE AND PARTITION UTILITIES
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Aggregate the rows of a partition written by an earlier load.
+	 * The partition is dropped once it has been read.
+	 */
+	private void loadPartition(Partition p)
+		throws StandardException
+	{
+		currentPartition = p;
+		partitionScan = tc.openScan(p.conglomId,
+			false,	// hold
+			0,		// for read
+			TransactionController.MODE_TABLE,
+			TransactionController.ISOLATION_SERIALIZABLE,
+			null,	// all columns
+			null,	// start key
+			0,		// start operator
+			null,	// qualifier
+			null,	// stop key
+			0);		// stop operator
+
+		loadGroups(p.level + 1);
+
+		partitionScan.close();
+		partitionScan = null;
+		tc.dropConglomerate(p.conglomId);
+		currentPartition = null;
+	}
+
+	/**
+	 * Drain the input, which is the partition scan if one is open and the
+	 * source otherwise, into a new hash table of groups.
+	 *
+	 * @param level	how many times the input rows have been spilled
+	 */
+	private void loadGroups(int level)
+		throws StandardException
+	{
+		groups = new HashMap<Object, ExecIndexRow>();
+		memoryUsed = 0;
+		tableFull = false;
+		spilled = new Partition[NUM_PARTITIONS];
+
+		ExecIndexRow inputRow;
+		while ((inputRow = getNextInputRow()) != null)
+		{
+			Object key = KeyHasher.buildHashKey(
+				inputRow.getRowArray(), keyColumns);
+			ExecIndexRow group = groups.get(key);
+			if (group != null)
+			{
+				accumulateVectorAggregation(inputRow, group);
+			}
+			else if (!tableFull || level >= MAX_LEVEL)
+			{
+				addGroup(inputRow);
+			}
+			else
+			{
+				spillRow(inputRow, key.hashCode(), level);
+			}
+		}
+
+		for (int i = 0; i < spilled.length; i++)
+		{
+			if (spilled[i] != null)
+			{
+				spilled[i].cc.close();
+				spilled[i].cc = null;
+				pendingPartitions.add(spilled[i]);
+			}
+		}
+		spilled = null;
+
+		groupIterator = groups.values().iterator();
+	}
+
+	/**
+	 * Get the next row to aggregate, from the partition being read or
+	 * from the source.
+	 */
+	private ExecIndexRow getNextInputRow()
+		throws StandardException
+	{
+		if (partitionScan != null)
+		{
+			return partitionScan.fetchNext(partitionRow.getRowArray()) ?
+				partitionRow : null;
+		}
+
+		ExecRow sourceRow = source.getNextRowCore();
+		if (sourceRow == null)
+		{
+			return null;
+		}
+		rowsInput++;
+		sourceExecIndexRow.execRowToExecIndexRow(sourceRow);
+		return sourceExecIndexRow;
+	}
+
+	/**
+	 * Start a new group with a copy of the input row, and account for
+	 * the memory it uses.
+	 */
+	private void addGroup(ExecIndexRow inputRow)
+		throws StandardException
+	{
+		ExecIndexRow group = (ExecIndexRow) inputRow.getClone();
+		initializeVectorAggregation(group);
+		groups.put(KeyHasher.buildHashKey(group.getRowArray(), keyColumns),
+			group);
+
+		DataValueDescriptor[] columns = group.getRowArray();
+		memoryUsed += ClassSize.estimateHashEntrySize();
+		for (int i = 0; i < columns.length; i++)
+		{
+			memoryUsed += columns[i].estimateMemoryUsage() + ClassSize.refSize;
+		}
+		if (memoryUsed >= maxMemory)
+		{
+			tableFull = true;
+		}
+	}
+
+	/**
+	 * Write an input row to the partition its hash code selects at this
+	 * level, creating the partition if needed.
+	 */
+	private void spillRow(ExecIndexRow inputRow, int hashCode, int level)
+		throws StandardException
+	{
+		int p = (mixHash(hashCode) >>> (level * PARTITION_BITS)) &
+			(NUM_PARTITIONS - 1);
+
+		if (spilled[p] == null)
+		{
+			long conglomId = tc.createConglomerate(
+				"heap",
+				getRowTemplate().getRowArray(),
+				null,	// column sort order - not required for heap
+				(int[]) null, // default collation
+				null,	// properties
+				(TransactionController.IS_TEMPORARY |
+				 TransactionController.IS_KEPT));
+			spilled[p] = new Partition(conglomId, level);
+			spilled[p].cc = tc.openConglomerate(
+				conglomId,
+				false,
+				TransactionController.OPENMODE_FORUPDATE,
+				TransactionController.MODE_TABLE,
+				TransactionController.ISOLATION_SERIALIZABLE);
+			partitionsSpilled++;
+		}
+
+		spilled[p].cc.insert(inputRow.getRowArray());
+	}
+
+	/**
+	 * Spread the bits of a hash code, so that every group of
+	 * PARTITION_BITS bits is usable to choose a partition even for
+	 * hash codes like those of small integers.
+	 */
+	private static int mixHash(int h)
+	{
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Close and drop the given partitions, ignoring null entries.
+	 */
+	private void dropPartitions(Partition[] partitions)
+		throws StandardException
+	{
+		for (int i = 0; i < partitions.length; i++)
+		{
+			Partition p = partitions[i];
+			if (p != null)
+			{
+				if (p.cc != null)
+				{
+					p.cc.close();
+					p.cc = null;
+				}
+				tc.dropConglomerate(p.conglomId);
+			}
+		}
+	}
+
+	/**
+	 * Get the run time statistics of the hash table.
+	 */
+	private Properties getHashInfo(Properties prop)
+	{
+		prop.put(
+			MessageService.getTextMessage(SQLState.STORE_RTS_SORT_TYPE),
+			MessageService.getTextMessage(SQLState.STORE_RTS_HASH));
+		prop.put(
+			MessageService.getTextMessage(SQLState.STORE_RTS_NUM_ROWS_INPUT),
+			Integer.toString(rowsInput));
+		prop.put(
+			MessageService.getTextMessage(SQLState.STORE_RTS_NUM_ROWS_OUTPUT),
+			Integer.toString(rowsReturned));
+		if (partitionsSpilled > 0)
+		{
+			prop.put(
+				MessageService.getTextMessage(
+					SQLState.STORE_RTS_NUM_SPILLED_PARTITIONS),
+				Integer.toString(partitionsSpilled));
+		}
+		return prop;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// AGGREGATION UTILITIES
+	//
+	///////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Run the aggregator initialization method for
+	 * each aggregator in the row.  Accumulate the
+	 * input column.  WARNING: initializiation performs
+	 * accumulation -- no need to accumulate a row
+	 * that has been passed to initialization.
+	 *
+	 * @param	row	the row to initialize
+	 *
+	 * @exception	standard Derby exception
+	 */
+	private void initializeVectorAggregation(ExecRow row)
+		throws StandardException
+	{
+		for (int i = 0; i < aggregates.length; i++)
+		{
+			GenericAggregator currAggregate = aggregates[i];
+
+			// initialize the aggregator
+			currAggregate.initialize(row);
+
+			// get the first value, accumulate it into itself
+			currAggregate.accumulate(row, row);
+		}
+	}
+
+	/**
+	 * Accumulate the input columns of a row into the aggregators
+	 * of its group.
+	 *
+	 * @param	inputRow	the row to accumulate
+	 * @param	groupRow	the row with the aggregators of the group
+	 *
+	 * @exception	standard Derby exception
+	 */
+	private void accumulateVectorAggregation(ExecRow inputRow,
+		ExecRow groupRow)
+		throws StandardException
+	{
+		for (int i = 0; i < aggregates.length; i++)
+		{
+			aggregates[i].accumulate(inputRow, groupRow);
+		}
+	}
+}
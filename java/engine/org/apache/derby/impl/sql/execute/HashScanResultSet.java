@@ -71,12 +71,12 @@ public class HashScanResultSet extends ScanResultSet
 
     // set in constructor and not altered during
     // life of object.
-    private long conglomId;
+    protected long conglomId;
     protected StaticCompiledOpenConglomInfo scoci;
 	private GeneratedMethod startKeyGetter;
-	private int startSearchOperator;
+	protected int startSearchOperator;
 	private GeneratedMethod stopKeyGetter;
-	private int stopSearchOperator;
+	protected int stopSearchOperator;
 	public Qualifier[][] scanQualifiers;
 	public Qualifier[][] nextQualifiers;
 	private int initialCapacity;
@@ -84,10 +84,10 @@ public class HashScanResultSet extends ScanResultSet
 	private int maxCapacity;
 	public String userSuppliedOptimizerOverrides;
 	public boolean forUpdate;
-	private boolean runTimeStatisticsOn;
+	protected boolean runTimeStatisticsOn;
 	public int[] keyColumns;
 	private boolean sameStartStopPosition;
-	private boolean skipNullKeyColumns;
+	protected boolean skipNullKeyColumns;
 	private boolean keepAfterCommit;
 
 	protected BackingStoreHashtable hashtable;
@@ -255,52 +255,7 @@ public class HashScanResultSet extends ScanResultSet
 			DataValueDescriptor[] stopPositionRow = 
                 stopPosition == null ? null : stopPosition.getRowArray();
 
-            hashtable = 
-                tc.createBackingStoreHashtableFromScan(
-                    conglomId,          // conglomerate to open
-                    (forUpdate ? TransactionController.OPENMODE_FORUPDATE : 0),
-                    lockMode,
-                    isolationLevel,
-                    accessedCols, 
-                    startPositionRow,   
-                    startSearchOperator,
-                    scanQualifiers,
-                    stopPositionRow,   
-                    stopSearchOperator,
-                    -1,                 // no limit on total rows.
-                    keyColumns,      
-                    eliminateDuplicates,// remove duplicates?
-                    -1,                 // RESOLVE - is there a row estimate?
-                    maxCapacity,
-                    initialCapacity,    // in memory Hashtable initial capacity
-                    loadFactor,         // in memory Hashtable load factor
-                    runTimeStatisticsOn,
-					skipNullKeyColumns,
-					keepAfterCommit,
-					fetchRowLocations);
-
-			if (runTimeStatisticsOn)
-			{
-				hashtableSize = hashtable.size();
-
-				if (scanProperties == null)
-				{
-					scanProperties = new Properties();
-				}
-
-				try
-				{
-					if (hashtable != null)
-					{
-                        hashtable.getAllRuntimeStats(scanProperties);
-					}
-				}
-				catch(StandardException se)
-				{
-					// ignore
-				}
-			}
-
+			loadHashtable(tc, startPositionRow, stopPositionRow);
 
 			/* Remember that we created the hash table */
 			hashtableBuilt = true;
@@ -321,6 +276,138 @@ public class HashScanResultSet extends ScanResultSet
 		openTime += getElapsedMillis(beginTime);
 	}
 
+	/**
+	 * Build the hash table on a scan of the conglomerate, and get its run
+	 * time statistics.
+	 *
+	 * @param tc				the transaction controller to use
+	 * @param startPositionRow	the start position of the scan, or null
+	 * @param stopPositionRow	the stop position of the scan, or null
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	protected void loadHashtable(TransactionController tc,
+								 DataValueDescriptor[] startPositionRow,
+								 DataValueDescriptor[] stopPositionRow)
+		throws StandardException
+	{
+        hashtable = 
+            tc.createBackingStoreHashtableFromScan(
+                conglomId,          // conglomerate to open
+                (forUpdate ? TransactionController.OPENMODE_FORUPDATE : 0),
+                lockMode,
+                isolationLevel,
+                accessedCols, 
+                startPositionRow,   
+                startSearchOperator,
+                scanQualifiers,
+                stopPositionRow,   
+                stopSearchOperator,
+                -1,                 // no limit on total rows.
+                keyColumns,      
+                eliminateDuplicates,// remove duplicates?
+                -1,                 // RESOLVE - is there a row estimate?
+                maxCapacity,
+                initialCapacity,    // in memory Hashtable initial capacity
+                loadFactor,         // in memory Hashtable load factor
+                runTimeStatisticsOn,
+				skipNullKeyColumns,
+				keepAfterCommit,
+				fetchRowLocations);
+
+		if (runTimeStatisticsOn)
+		{
+			hashtableSize = hashtable.size();
+
+			if (scanProperties == null)
+			{
+				scanProperties = new Properties();
+			}
+
+			try
+			{
+				if (hashtable != null)
+				{
+                    hashtable.getAllRuntimeStats(scanProperties);
+				}
+			}
+			catch(StandardException se)
+			{
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Look up a key in the hash table.
+	 *
+	 * @param key	a DataValueDescriptor or, for more than one key column,
+	 *				a KeyHasher
+	 *
+	 * @return	the row or the List of rows with the key, or null if there
+	 *			is none
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	protected Object getHashEntry(Object key) throws StandardException
+	{
+		return hashtable.get(key);
+	}
+
+	/**
+	 * Get the key to look up in the hash table for the current probe.
+	 * The hash key could be either a single column or multiple columns.
+	 * If a single column, then it is the datavalue wrapper, otherwise
+	 * it is a KeyHasher.
+	 *
+	 * @return	the key, or null if no row can match it
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	protected Object getProbeKey() throws StandardException
+	{
+		if (keyColumns.length == 1)
+		{
+			return nextQualifiers[0][0].getOrderable();
+		}
+
+		KeyHasher mh = new KeyHasher(keyColumns.length);
+
+		if (SanityManager.DEBUG)
+		{
+			SanityManager.ASSERT(nextQualifiers.length == 1);
+		}
+
+		for (int index = 0; index < keyColumns.length; index++)
+		{
+			// For hashing only use the AND qualifiers 
+			// located in nextQualifiers[0][0...N], OR 
+			// qualifiers are checked down a bit by calling
+			// qualifyRow on rows returned from hash.
+
+			DataValueDescriptor dvd = 
+				nextQualifiers[0][index].getOrderable();
+
+			if (dvd == null)
+			{
+				return null;
+			}
+			mh.setObject(index, dvd);
+		}
+		return mh;
+	}
+
+	/**
+	 * Close the hash table, eating any exception.
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	protected void closeHashtable() throws StandardException
+	{
+		hashtable.close();
+		hashtable = null;
+	}
+
 	/**
 	 * reopen this ResultSet.
 	 *
@@ -384,44 +471,9 @@ public class HashScanResultSet extends ScanResultSet
 				{			  
 					firstNext = false;
 
-					/* Hash key could be either a single column or multiple columns.
-					 * If a single column, then it is the datavalue wrapper, otherwise
-					 * it is a KeyHasher.
-					 */
-					Object hashEntry;
-					if (keyColumns.length == 1)
-					{
-						hashEntry = hashtable.get(nextQualifiers[0][0].getOrderable());
-					}
-					else
-					{
-						KeyHasher mh = new KeyHasher(keyColumns.length);
-
-                        if (SanityManager.DEBUG)
-                        {
-                            SanityManager.ASSERT(nextQualifiers.length == 1);
-                        }
-
-						for (int index = 0; index < keyColumns.length; index++)
-						{
-                            // For hashing only use the AND qualifiers 
-                            // located in nextQualifiers[0][0...N], OR 
-                            // qualifiers are checked down a bit by calling
-                            // qualifyRow on rows returned from hash.
-
-                            DataValueDescriptor dvd = 
-                                nextQualifiers[0][index].getOrderable();
-
-                            if (dvd == null)
-                            {
-                                mh = null;
-                                break;
-                            }
-							mh.setObject(
-                                index, nextQualifiers[0][index].getOrderable());
-						}
-						hashEntry = (mh == null) ? null : hashtable.get(mh);
-					}
+					Object hashKey = getProbeKey();
+					Object hashEntry =
+						(hashKey == null) ? null : getHashEntry(hashKey);
 
 					if (hashEntry instanceof List)
 					{
@@ -519,8 +571,7 @@ public class HashScanResultSet extends ScanResultSet
 				}
 
 				// close the hash table, eating any exception
-				hashtable.close();
-				hashtable = null;
+				closeHashtable();
 				hashtableBuilt = false;
 			}
 			startPosition = null;
@@ -0,0 +1,314 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.HybridHashJoinSpill
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.io.FormatableArrayHolder;
+import org.apache.derby.iapi.services.io.FormatableIntHolder;
+import org.apache.derby.iapi.sql.Activation;
+import org.apache.derby.iapi.sql.Row;
+import org.apache.derby.iapi.sql.execute.ExecRow;
+import org.apache.derby.iapi.sql.execute.NoPutResultSet;
+import org.apache.derby.iapi.store.access.ScanController;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+/**
+ * The outer side of a hybrid hash join, shared by the inner and left
+ * outer join result sets.
+ * <p>
+ * The left rows whose partition of the hash table on the right is on
+ * disk are written to that partition instead of being returned. Since
+ * the join predicates and the expressions above the join may refer to
+ * the current row of any result set on the left, the current rows of
+ * all of them are written along with the left row, and put back in the
+ * activation when the row is read back. Once the left side is
+ * exhausted, the partitions on disk are loaded one after the other, and
+ * the left rows set aside for each are returned.
+ */
+final class HybridHashJoinSpill
+{
+	private final JoinResultSet join;
+	private final Activation activation;
+
+	/** The inner side of the join, or null if it couldn't be found */
+	private final HybridHashScanResultSet scan;
+
+	/** Result set numbers of the result sets on the left side */
+	private final int[] leftResultSetNumbers;
+
+	/*
+	 * The layout of the rows written to disk, set when the first row is
+	 * written. Segment 0 is the left row and segment i is the current row
+	 * of result set leftResultSetNumbers[i - 1]. The columns which are
+	 * null the first time are not written, and neither are the rows of
+	 * the result sets which have no current row then.
+	 */
+	private int[] segmentSizes;
+	private boolean[][] writtenColumns;
+	private DataValueDescriptor[] nullColumns;
+	private DataValueDescriptor[] spillRow;
+
+	// the left rows of the partition being joined
+	private ScanController leftRows;
+	private DataValueDescriptor[] fetchedRow;
+	private ExecRow[] restoredRows;
+
+	HybridHashJoinSpill(JoinResultSet join, int leftResultSetsItem)
+	{
+		this.join = join;
+		this.activation = join.getActivation();
+
+		scan = findScan(join.rightResultSet);
+		if (scan != null)
+		{
+			scan.setSpillable();
+		}
+
+		FormatableArrayHolder fah = (FormatableArrayHolder)
+			activation.getPreparedStatement().
+				getSavedObject(leftResultSetsItem);
+		FormatableIntHolder[] fihArray =
+			fah.getArray(FormatableIntHolder[].class);
+		leftResultSetNumbers = new int[fihArray.length];
+		for (int i = 0; i < fihArray.length; i++)
+		{
+			leftResultSetNumbers[i] = fihArray[i].getInt();
+		}
+	}
+
+	/**
+	 * Find the hash scan under the result sets which the right side
+	 * of the join may put on top of it.
+	 */
+	private static HybridHashScanResultSet findScan(NoPutResultSet rs)
+	{
+		while (true)
+		{
+			if (rs instanceof HybridHashScanResultSet)
+			{
+				return (HybridHashScanResultSet) rs;
+			}
+			else if (rs instanceof ProjectRestrictResultSet)
+			{
+				rs = ((ProjectRestrictResultSet) rs).source;
+			}
+			else if (rs instanceof IndexRowToBaseRowResultSet)
+			{
+				rs = ((IndexRowToBaseRowResultSet) rs).source;
+			}
+			else
+			{
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Get the next left row which can be joined with the hash table in
+	 * memory, setting aside the rows of the partitions on disk. Once the
+	 * left side is exhausted, return the rows that were set aside.
+	 *
+	 * @return the next left row, or null if there are no more
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	ExecRow getNextLeftRow() throws StandardException
+	{
+		if (scan == null)
+		{
+			return join.leftResultSet.getNextRowCore();
+		}
+
+		while (true)
+		{
+			ExecRow row;
+			if (leftRows == null)
+			{
+				row = join.leftResultSet.getNextRowCore();
+				if (row == null)
+				{
+					if (! join.isRightOpen || ! scan.isSpilled())
+					{
+						return null;
+					}
+					leftRows = scan.nextPartition();
+					if (leftRows == null)
+					{
+						return null;
+					}
+					continue;
+				}
+			}
+			else
+			{
+				if (! leftRows.fetchNext(fetchedRow))
+				{
+					leftRows = scan.nextPartition();
+					if (leftRows == null)
+					{
+						return null;
+					}
+					continue;
+				}
+				row = restoreRows();
+			}
+
+			// the hash table is loaded when the right side is opened
+			if (! join.isRightOpen)
+			{
+				join.openRight();
+			}
+
+			int p = scan.getProbePartition();
+			if (p < 0)
+			{
+				return row;
+			}
+			scan.spillProbeRow(p, saveRows(row));
+		}
+	}
+
+	/**
+	 * Forget about the left rows being read back. Called when the join is
+	 * opened again. If the hash table on the right no longer holds all
+	 * its rows, the right side is closed so that it is loaded again.
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	void reset() throws StandardException
+	{
+		leftRows = null;
+		if (scan != null && join.isRightOpen && scan.isSpilled())
+		{
+			join.closeRight();
+		}
+	}
+
+	/**
+	 * Get the columns to write to disk for a left row.
+	 */
+	private DataValueDescriptor[] saveRows(ExecRow leftRow)
+		throws StandardException
+	{
+		if (segmentSizes == null)
+		{
+			initLayout(leftRow);
+		}
+
+		for (int s = 0, c = 0; s < segmentSizes.length; s++)
+		{
+			Row row = getSegmentRow(s, leftRow);
+			for (int i = 0; i < segmentSizes[s]; i++)
+			{
+				if (writtenColumns[s][i])
+				{
+					DataValueDescriptor value =
+						(row == null || i >= row.nColumns()) ?
+							null : row.getColumn(i + 1);
+					spillRow[c] = (value == null) ? nullColumns[c] : value;
+					c++;
+				}
+			}
+		}
+		return spillRow;
+	}
+
+	/**
+	 * Put the columns of a left row read back from disk into the left
+	 * row and the current rows of the result sets on the left.
+	 *
+	 * @return the left row
+	 */
+	private ExecRow restoreRows()
+	{
+		for (int s = 0, c = 0; s < segmentSizes.length; s++)
+		{
+			for (int i = 0; i < segmentSizes[s]; i++)
+			{
+				if (writtenColumns[s][i])
+				{
+					restoredRows[s].setColumn(i + 1, fetchedRow[c++]);
+				}
+			}
+			if (s > 0 && segmentSizes[s] > 0)
+			{
+				activation.setCurrentRow(restoredRows[s],
+										 leftResultSetNumbers[s - 1]);
+			}
+		}
+		return restoredRows[0];
+	}
+
+	private Row getSegmentRow(int s, ExecRow leftRow)
+	{
+		return (s == 0) ?
+			leftRow : activation.getCurrentRow(leftResultSetNumbers[s - 1]);
+	}
+
+	/**
+	 * Decide which columns are written to disk from the first left row
+	 * written, and make the rows that they are read back into.
+	 */
+	private void initLayout(ExecRow leftRow)
+		throws StandardException
+	{
+		int numSegments = leftResultSetNumbers.length + 1;
+		segmentSizes = new int[numSegments];
+		writtenColumns = new boolean[numSegments][];
+		restoredRows = new ExecRow[numSegments];
+
+		int numColumns = 0;
+		for (int s = 0; s < numSegments; s++)
+		{
+			Row row = getSegmentRow(s, leftRow);
+			segmentSizes[s] = (row == null) ? 0 : row.nColumns();
+			writtenColumns[s] = new boolean[segmentSizes[s]];
+			for (int i = 0; i < segmentSizes[s]; i++)
+			{
+				if (row.getColumn(i + 1) != null)
+				{
+					writtenColumns[s][i] = true;
+					numColumns++;
+				}
+			}
+			restoredRows[s] = activation.getExecutionFactory().
+				getValueRow(segmentSizes[s]);
+		}
+
+		nullColumns = new DataValueDescriptor[numColumns];
+		fetchedRow = new DataValueDescriptor[numColumns];
+		spillRow = new DataValueDescriptor[numColumns];
+		for (int s = 0, c = 0; s < numSegments; s++)
+		{
+			Row row = getSegmentRow(s, leftRow);
+			for (int i = 0; i < segmentSizes[s]; i++)
+			{
+				if (writtenColumns[s][i])
+				{
+					nullColumns[c] = row.getColumn(i + 1).getNewNull();
+					fetchedRow[c] = nullColumns[c].getNewNull();
+					c++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.HybridHashLeftOuterJoinResultSet
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.loader.GeneratedMethod;
+import org.apache.derby.iapi.sql.Activation;
+import org.apache.derby.iapi.sql.execute.ExecRow;
+import org.apache.derby.iapi.sql.execute.NoPutResultSet;
+
+
+/**
+ * Left outer join using hybrid hash join of an arbitrary result set with
+ * a hash scan. The left rows whose partition of the hash table is on
+ * disk are set aside and joined once the left side is exhausted, see
+ * {@link HybridHashJoinSpill}.
+ */
+class HybridHashLeftOuterJoinResultSet extends HashLeftOuterJoinResultSet
+{
+	private final HybridHashJoinSpill spill;
+
+    HybridHashLeftOuterJoinResultSet(
+						NoPutResultSet leftResultSet,
+						int leftNumCols,
+						NoPutResultSet rightResultSet,
+						int rightNumCols,
+						Activation activation,
+						GeneratedMethod restriction,
+						int resultSetNumber,
+						GeneratedMethod emptyRowFun,
+						boolean wasRightOuterJoin,
+					    boolean oneRowRightSide,
+					    boolean notExistsRightSide,
+ 					    double optimizerEstimatedRowCount,
+						double optimizerEstimatedCost,
+						String userSuppliedOptimizerOverrides,
+						int leftResultSetsItem)
+    {
+		super(leftResultSet, leftNumCols, rightResultSet, rightNumCols,
+			  activation, restriction, resultSetNumber, 
+			  emptyRowFun, wasRightOuterJoin,
+			  oneRowRightSide, notExistsRightSide,
+			  optimizerEstimatedRowCount, optimizerEstimatedCost, 
+			  userSuppliedOptimizerOverrides);
+		spill = new HybridHashJoinSpill(this, leftResultSetsItem);
+    }
+
+    @Override
+	public void	openCore() throws StandardException
+	{
+		spill.reset();
+		super.openCore();
+	}
+
+    @Override
+	public void	reopenCore() throws StandardException
+	{
+		spill.reset();
+		super.reopenCore();
+	}
+
+    @Override
+	protected ExecRow getNextLeftRow() throws StandardException
+	{
+		return spill.getNextLeftRow();
+	}
+}
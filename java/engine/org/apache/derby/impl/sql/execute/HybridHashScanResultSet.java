@@ -0,0 +1,800 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.HybridHashScanResultSet
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.cache.ClassSize;
+import org.apache.derby.iapi.services.i18n.MessageService;
+import org.apache.derby.iapi.services.loader.GeneratedMethod;
+import org.apache.derby.iapi.sql.Activation;
+import org.apache.derby.iapi.store.access.ConglomerateController;
+import org.apache.derby.iapi.store.access.KeyHasher;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.ScanController;
+import org.apache.derby.iapi.store.access.StaticCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+/**
+ * The inner side of a hybrid hash join.
+ * <p>
+ * The rows of the conglomerate are loaded into a hash table which is
+ * divided into partitions on the hash of the key columns. When the table
+ * uses more memory than the query lets it have, the largest partition is
+ * written to a temporary conglomerate, and the rows which belong to it
+ * from then on go straight to disk. The join above this result set asks
+ * for the partition of each outer row with {@link #getProbePartition},
+ * and writes the outer rows whose partition is on disk to it with
+ * {@link #spillProbeRow} instead of probing.
+ * <p>
+ * Once the outer rows are exhausted, {@link #nextPartition} reads the
+ * inner rows of a partition on disk back into the hash table, using other
+ * bits of the hash to split it again if it still does not fit, and
+ * returns a scan of the outer rows that were set aside for it.
+ * <p>
+ * Spilling is only done when the join has turned it on with
+ * {@link #setSpillable}. Otherwise this result set is just a hash scan.
+ */
+class HybridHashScanResultSet extends HashScanResultSet
+{
+	/** Number of partitions of the hash table, a power of 2. */
+	private static final int NUM_PARTITIONS = 8;
+	/** Number of bits of the hash which choose a partition. */
+	private static final int PARTITION_BITS = 3;
+	/**
+	 * Number of times a partition may be split again. Past this level
+	 * (a single huge key, or a very poor hash) the memory limit is
+	 * ignored.
+	 */
+	private static final int MAX_LEVEL = 8;
+
+	/* Run time statistics variables */
+	public int partitionsSpilled;
+
+	private boolean spillable;
+
+	// set when the hash table is loaded
+	private TransactionController tc;
+	private int memoryGranted;
+	private long maxMemory;
+	private int[] spillColumns;
+	private DataValueDescriptor[] spillTemplate;
+
+	// - partitions: the partitions of the hash table being probed, which
+	//   splits the rows of the conglomerate or of a partition loaded from
+	//   disk on the hash bits of level.
+	// - pendingPartitions: partitions on disk which still have to be
+	//   joined.
+	// - currentPartition: the partition whose outer rows are being read
+	//   by outerScan.
+	private Partition[] partitions;
+	private int level;
+	private long memoryUsed;
+	private boolean spilled;
+	private boolean tableQueued;
+	private List<Partition> pendingPartitions;
+	private Partition currentPartition;
+	private ScanController outerScan;
+
+	/**
+	 * A partition of the hash table. Its rows are either in memory, or in
+	 * a temporary conglomerate together with the outer rows that hash to
+	 * it.
+	 */
+	private static final class Partition
+	{
+		final int level;
+		/** Maps a key to its row, or to a RowList if it has several */
+		HashMap<Object, Object> rows = new HashMap<Object, Object>();
+		long memoryUsed;
+		long innerConglomId;
+		ConglomerateController innerCC;
+		long outerConglomId;
+		ConglomerateController outerCC;
+
+		Partition(int level)
+		{
+			this.level = level;
+		}
+	}
+
+	/**
+	 * The rows of a partition in memory with the same key. Like in
+	 * BackingStoreHashtable, a key maps to either a
+	 * {@code DataValueDescriptor[]} or a RowList, and the class only
+	 * exists so that an entry can be cast to it without an unchecked
+	 * conversion.
+	 */
+	private static final class RowList extends ArrayList<DataValueDescriptor[]>
+	{
+		RowList()
+		{
+			super(2);
+		}
+	}
+
+    //
+    // class interface
+    //
+    HybridHashScanResultSet(long conglomId,
+		StaticCompiledOpenConglomInfo scoci, Activation activation,
+		int resultRowTemplate,
+		int resultSetNumber,
+		GeneratedMethod startKeyGetter, int startSearchOperator,
+		GeneratedMethod stopKeyGetter, int stopSearchOperator,
+		boolean sameStartStopPosition,
+		Qualifier[][] scanQualifiers,
+		Qualifier[][] nextQualifiers,
+		int initialCapacity,
+		float loadFactor,
+		int maxCapacity,
+		int hashKeyItem,
+		String tableName,
+		String userSuppliedOptimizerOverrides,
+		String indexName,
+		boolean isConstraint,
+		boolean forUpdate,
+		int colRefItem,
+		int lockMode,
+		boolean tableLocked,
+		int isolationLevel,
+		boolean skipNullKeyColumns,
+		double optimizerEstimatedRowCount,
+		double optimizerEstimatedCost)
+			throws StandardException
+    {
+		super(conglomId, scoci, activation, resultRowTemplate,
+			  resultSetNumber,
+			  startKeyGetter, startSearchOperator,
+			  stopKeyGetter, stopSearchOperator,
+			  sameStartStopPosition,
+			  scanQualifiers,
+			  nextQualifiers,
+			  initialCapacity,
+			  loadFactor,
+			  maxCapacity,
+			  hashKeyItem,
+			  tableName,
+			  userSuppliedOptimizerOverrides,
+			  indexName,
+			  isConstraint,
+			  forUpdate,
+			  colRefItem,
+			  lockMode,
+			  tableLocked,
+			  isolationLevel,
+			  skipNullKeyColumns,
+			  optimizerEstimatedRowCount,
+			  optimizerEstimatedCost);
+    }
+
+	/**
+	 * Let the hash table be partitioned to disk. Called by the join which
+	 * sets aside the outer rows of the partitions on disk.
+	 */
+	void setSpillable()
+	{
+		spillable = true;
+	}
+
+	/**
+	 * Tell whether the hash table no longer holds all the rows of the
+	 * conglomerate, because some of its partitions went to disk.
+	 */
+	boolean isSpilled()
+	{
+		return spilled;
+	}
+
+	/**
+	 * Load the rows of the conglomerate into a partitioned hash table,
+	 * writing partitions to disk when it doesn't fit in memory.
+	 *
+	 * @exception StandardException thrown on error
+	 */
+    @Override
+	protected void loadHashtable(TransactionController tc,
+								 DataValueDescriptor[] startPositionRow,
+								 DataValueDescriptor[] stopPositionRow)
+		throws StandardException
+	{
+		if (! spillable || eliminateDuplicates || fetchRowLocations)
+		{
+			super.loadHashtable(tc, startPositionRow, stopPositionRow);
+			return;
+		}
+
+		this.tc = tc;
+
+		/* Get the memory for the hash table from the budget of the query,
+		 * but keep enough of it to hold a partition.
+		 */
+		int maxMemoryPerTable = getLanguageConnectionContext().
+			getOptimizerFactory().getMaxMemoryPerTable();
+		memoryGranted = activation.reserveMemory(maxMemoryPerTable);
+		maxMemory = Math.max(memoryGranted,
+							 maxMemoryPerTable / NUM_PARTITIONS);
+
+		DataValueDescriptor[] row = candidate.getRowArray();
+		int numColumns = 0;
+		for (int i = 0; i < row.length; i++)
+		{
+			if (accessedCols == null || accessedCols.get(i))
+			{
+				numColumns++;
+			}
+		}
+		spillColumns = new int[numColumns];
+		spillTemplate = new DataValueDescriptor[numColumns];
+		for (int i = 0, c = 0; i < row.length; i++)
+		{
+			if (accessedCols == null || accessedCols.get(i))
+			{
+				spillColumns[c] = i;
+				spillTemplate[c] = row[i].getNewNull();
+				c++;
+			}
+		}
+
+		pendingPartitions = new ArrayList<Partition>();
+		spilled = false;
+		newTable(0);
+
+		ScanController scan = tc.openScan(conglomId,
+			false,	// hold
+			(forUpdate ? TransactionController.OPENMODE_FORUPDATE : 0),
+			lockMode,
+			isolationLevel,
+			accessedCols,
+			startPositionRow,
+			startSearchOperator,
+			scanQualifiers,
+			stopPositionRow,
+			stopSearchOperator);
+
+		int numRows = 0;
+		while (scan.fetchNext(row))
+		{
+			if (skipNullKeyColumns && hasNullKey(row))
+			{
+				continue;
+			}
+			addRow(cloneRow(row));
+			numRows++;
+		}
+
+		hashtableSize = numRows;
+		if (runTimeStatisticsOn)
+		{
+			if (scanProperties == null)
+			{
+				scanProperties = new Properties();
+			}
+			scan.getScanInfo().getAllScanInfo(scanProperties);
+		}
+		scan.close();
+	}
+
+	/**
+	 * Look up a key in the partition it hashes to, if that partition is
+	 * in memory.
+	 *
+	 * @exception StandardException thrown on error
+	 */
+    @Override
+	protected Object getHashEntry(Object key) throws StandardException
+	{
+		if (partitions == null)
+		{
+			return super.getHashEntry(key);
+		}
+
+		HashMap<Object, Object> rows = partitions[partitionOf(key)].rows;
+		return (rows == null) ? null : rows.get(key);
+	}
+
+	/**
+	 * Find out whether the row which is about to probe the hash table
+	 * belongs to a partition on disk. The key is taken from the probe
+	 * qualifiers, so the outer row must be current in the activation.
+	 *
+	 * @return	the number of the partition on disk, or -1 if the hash
+	 *			table can be probed for the row
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	int getProbePartition() throws StandardException
+	{
+		if (partitions == null)
+		{
+			return -1;
+		}
+
+		clearOrderableCache(nextQualifiers);
+		Object key = getProbeKey();
+
+		// a NULL key matches no row, wherever it hashes to
+		if (key == null || hasNullKey(key))
+		{
+			return -1;
+		}
+
+		int p = partitionOf(key);
+		return (partitions[p].rows == null) ? p : -1;
+	}
+
+	/**
+	 * Set aside an outer row of a partition on disk, to be joined when
+	 * the partition is loaded again.
+	 *
+	 * @param p		the partition, as returned by getProbePartition
+	 * @param row	the columns of the outer row. They must not be null,
+	 *				and have the same types for all the rows.
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	void spillProbeRow(int p, DataValueDescriptor[] row)
+		throws StandardException
+	{
+		Partition partition = partitions[p];
+		if (partition.outerCC == null)
+		{
+			partition.outerConglomId = createHeap(row);
+			partition.outerCC = openHeap(partition.outerConglomId);
+		}
+		partition.outerCC.insert(row);
+	}
+
+	/**
+	 * Load the next partition on disk which has outer rows into the hash
+	 * table, and return a scan of those outer rows. The partitions of the
+	 * hash table probed until now which are on disk are done before the
+	 * ones that were already waiting, so that only one level of outer
+	 * rows is read back at a time.
+	 *
+	 * @return	a scan of the outer rows of the loaded partition, or null
+	 *			if all the partitions have been joined
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	ScanController nextPartition() throws StandardException
+	{
+		finishPartition();
+
+		if (partitions == null)
+		{
+			return null;
+		}
+
+		if (! tableQueued)
+		{
+			for (int i = 0; i < partitions.length; i++)
+			{
+				if (partitions[i].rows == null)
+				{
+					pendingPartitions.add(partitions[i]);
+				}
+			}
+			tableQueued = true;
+		}
+
+		while (! pendingPartitions.isEmpty())
+		{
+			Partition p =
+				pendingPartitions.remove(pendingPartitions.size() - 1);
+
+			// the inner rows of a partition without outer rows join nothing
+			if (p.outerCC == null)
+			{
+				dropPartition(p);
+				continue;
+			}
+
+			p.innerCC.close();
+			p.innerCC = null;
+			p.outerCC.close();
+			p.outerCC = null;
+
+			newTable(p.level + 1);
+			ScanController scan = openHeapScan(p.innerConglomId);
+			DataValueDescriptor[] fetched = newSpillRow();
+			while (scan.fetchNext(fetched))
+			{
+				addRow(expandRow(fetched));
+				fetched = newSpillRow();
+			}
+			scan.close();
+			tc.dropConglomerate(p.innerConglomId);
+			p.innerConglomId = 0;
+
+			currentPartition = p;
+			outerScan = openHeapScan(p.outerConglomId);
+			return outerScan;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Drop the hash table and all the partitions on disk, and give back
+	 * the memory of the hash table.
+	 *
+	 * @exception StandardException thrown on error
+	 */
+    @Override
+	protected void closeHashtable() throws StandardException
+	{
+		if (partitions == null)
+		{
+			super.closeHashtable();
+			return;
+		}
+
+		finishPartition();
+		for (int i = 0; i < partitions.length; i++)
+		{
+			dropPartition(partitions[i]);
+		}
+		for (int i = 0; i < pendingPartitions.size(); i++)
+		{
+			dropPartition(pendingPartitions.get(i));
+		}
+		partitions = null;
+		pendingPartitions = null;
+		spilled = false;
+
+		activation.releaseMemory(memoryGranted);
+		memoryGranted = 0;
+	}
+
+    @Override
+	public Properties getScanProperties()
+	{
+		Properties props = super.getScanProperties();
+		if (partitionsSpilled > 0)
+		{
+			if (props == null)
+			{
+				props = new Properties();
+			}
+			props.put(
+				MessageService.getTextMessage(
+					SQLState.STORE_RTS_NUM_SPILLED_PARTITIONS),
+				Integer.toString(partitionsSpilled));
+		}
+		return props;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// HASH TABLE AND PARTITION UTILITIES
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Start an empty hash table for the given level of the hash.
+	 */
+	private void newTable(int level)
+	{
+		this.level = level;
+		partitions = new Partition[NUM_PARTITIONS];
+		for (int i = 0; i < NUM_PARTITIONS; i++)
+		{
+			partitions[i] = new Partition(level);
+		}
+		memoryUsed = 0;
+		tableQueued = false;
+	}
+
+	/**
+	 * Add a row to the partition its key hashes to, and write partitions
+	 * to disk until the hash table fits in memory again.
+	 */
+	private void addRow(DataValueDescriptor[] row)
+		throws StandardException
+	{
+		Object key = KeyHasher.buildHashKey(row, keyColumns);
+		Partition p = partitions[partitionOf(key)];
+
+		if (p.rows == null)
+		{
+			p.innerCC.insert(compactRow(row));
+			return;
+		}
+
+		Object entry = p.rows.get(key);
+		if (entry == null)
+		{
+			p.rows.put(key, row);
+		}
+		else if (entry instanceof RowList)
+		{
+			((RowList) entry).add(row);
+		}
+		else
+		{
+			RowList duplicates = new RowList();
+			duplicates.add((DataValueDescriptor[]) entry);
+			duplicates.add(row);
+			p.rows.put(key, duplicates);
+		}
+
+		long size = ClassSize.estimateHashEntrySize();
+		for (int i = 0; i < row.length; i++)
+		{
+			if (row[i] != null)
+			{
+				size += row[i].estimateMemoryUsage() + ClassSize.refSize;
+			}
+		}
+		p.memoryUsed += size;
+		memoryUsed += size;
+
+		while (memoryUsed > maxMemory && level < MAX_LEVEL)
+		{
+			spillLargestPartition();
+		}
+	}
+
+	/**
+	 * Write the rows of the largest partition in memory to disk.
+	 */
+	private void spillLargestPartition()
+		throws StandardException
+	{
+		Partition largest = null;
+		for (int i = 0; i < partitions.length; i++)
+		{
+			Partition p = partitions[i];
+			if (p.rows != null &&
+				(largest == null || p.memoryUsed > largest.memoryUsed))
+			{
+				largest = p;
+			}
+		}
+
+		largest.innerConglomId = createHeap(spillTemplate);
+		largest.innerCC = openHeap(largest.innerConglomId);
+		for (Object entry : largest.rows.values())
+		{
+			if (entry instanceof RowList)
+			{
+				for (DataValueDescriptor[] row : (RowList) entry)
+				{
+					largest.innerCC.insert(compactRow(row));
+				}
+			}
+			else
+			{
+				largest.innerCC.insert(
+					compactRow((DataValueDescriptor[]) entry));
+			}
+		}
+
+		memoryUsed -= largest.memoryUsed;
+		largest.memoryUsed = 0;
+		largest.rows = null;
+		spilled = true;
+		partitionsSpilled++;
+	}
+
+	/**
+	 * Close the scan of the outer rows of the partition being joined, and
+	 * drop them.
+	 */
+	private void finishPartition()
+		throws StandardException
+	{
+		if (outerScan != null)
+		{
+			outerScan.close();
+			outerScan = null;
+		}
+		if (currentPartition != null)
+		{
+			dropPartition(currentPartition);
+			currentPartition = null;
+		}
+	}
+
+	/**
+	 * Close and drop the conglomerates of a partition.
+	 */
+	private void dropPartition(Partition p)
+		throws StandardException
+	{
+		if (p.innerCC != null)
+		{
+			p.innerCC.close();
+			p.innerCC = null;
+		}
+		if (p.innerConglomId != 0)
+		{
+			tc.dropConglomerate(p.innerConglomId);
+			p.innerConglomId = 0;
+		}
+		if (p.outerCC != null)
+		{
+			p.outerCC.close();
+			p.outerCC = null;
+		}
+		if (p.outerConglomId != 0)
+		{
+			tc.dropConglomerate(p.outerConglomId);
+			p.outerConglomId = 0;
+		}
+	}
+
+	private long createHeap(DataValueDescriptor[] template)
+		throws StandardException
+	{
+		return tc.createConglomerate(
+			"heap",
+			template,
+			null,	// column sort order - not required for heap
+			(int[]) null, // default collation
+			null,	// properties
+			(TransactionController.IS_TEMPORARY |
+			 TransactionController.IS_KEPT));
+	}
+
+	private ConglomerateController openHeap(long conglomId)
+		throws StandardException
+	{
+		return tc.openConglomerate(
+			conglomId,
+			false,
+			TransactionController.OPENMODE_FORUPDATE,
+			TransactionController.MODE_TABLE,
+			TransactionController.ISOLATION_SERIALIZABLE);
+	}
+
+	private ScanController openHeapScan(long conglomId)
+		throws StandardException
+	{
+		return tc.openScan(conglomId,
+			false,	// hold
+			0,		// for read
+			TransactionController.MODE_TABLE,
+			TransactionController.ISOLATION_SERIALIZABLE,
+			null,	// all columns
+			null,	// start key
+			0,		// start operator
+			null,	// qualifier
+			null,	// stop key
+			0);		// stop operator
+	}
+
+	/**
+	 * Choose the partition of a key at the current level of the hash.
+	 */
+	private int partitionOf(Object key)
+	{
+		return (mixHash(key.hashCode()) >>> (level * PARTITION_BITS)) &
+			(NUM_PARTITIONS - 1);
+	}
+
+	/**
+	 * Spread the bits of a hash code, so that every group of
+	 * PARTITION_BITS bits is usable to choose a partition even for
+	 * hash codes like those of small integers.
+	 */
+	private static int mixHash(int h)
+	{
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private boolean hasNullKey(DataValueDescriptor[] row)
+	{
+		for (int i = 0; i < keyColumns.length; i++)
+		{
+			if (row[keyColumns[i]].isNull())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasNullKey(Object key)
+	{
+		if (key instanceof KeyHasher)
+		{
+			for (int i = 0; i < keyColumns.length; i++)
+			{
+				if (((DataValueDescriptor)
+						((KeyHasher) key).getObject(i)).isNull())
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		return ((DataValueDescriptor) key).isNull();
+	}
+
+	/**
+	 * Copy the columns of a fetched row which are read by the scan,
+	 * since the scan reuses the candidate row.
+	 */
+	private DataValueDescriptor[] cloneRow(DataValueDescriptor[] row)
+	{
+		DataValueDescriptor[] clone = new DataValueDescriptor[row.length];
+		for (int i = 0; i < spillColumns.length; i++)
+		{
+			int c = spillColumns[i];
+			clone[c] = row[c].cloneValue(false);
+		}
+		return clone;
+	}
+
+	/**
+	 * Get the columns of a row which are stored in a partition on disk.
+	 */
+	private DataValueDescriptor[] compactRow(DataValueDescriptor[] row)
+	{
+		DataValueDescriptor[] compact =
+			new DataValueDescriptor[spillColumns.length];
+		for (int i = 0; i < spillColumns.length; i++)
+		{
+			compact[i] = row[spillColumns[i]];
+		}
+		return compact;
+	}
+
+	/**
+	 * Put the columns of a row read back from disk where they are in the
+	 * rows of the scan.
+	 */
+	private DataValueDescriptor[] expandRow(DataValueDescriptor[] compact)
+	{
+		DataValueDescriptor[] row =
+			new DataValueDescriptor[candidate.nColumns()];
+		for (int i = 0; i < spillColumns.length; i++)
+		{
+			row[spillColumns[i]] = compact[i];
+		}
+		return row;
+	}
+
+	private DataValueDescriptor[] newSpillRow()
+	{
+		DataValueDescriptor[] row =
+			new DataValueDescriptor[spillTemplate.length];
+		for (int i = 0; i < row.length; i++)
+		{
+			row[i] = spillTemplate[i].getNewNull();
+		}
+		return row;
+	}
+}
@@ -1680,7 +1680,7 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
             if (indDes.isUnique() || indDes.isUniqueDeferrable())
             {
                 numColumnOrderings =
-                        indDes.isUnique() ? baseColumnPositions.length :
+                        indDes.isUnique() ? indDes.numberOfOrderedColumns() :
                         baseColumnPositions.length + 1;
 
 				sortObserver = 
@@ -1726,7 +1726,7 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 													 reuseWrappers);
 			}
 			ordering[index] = new ColumnOrdering[numColumnOrderings];
-			for (int ii =0; ii < isAscending.length; ii++) 
+			for (int ii =0; ii < numColumnOrderings && ii < isAscending.length; ii++) 
 			{
 				ordering[index][ii] = new IndexColumnOrder(ii, isAscending[ii]);
 			}
@@ -1829,8 +1829,10 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 			properties.put("baseConglomerateId", Long.toString(newHeapConglom));
 			if (cd.getIndexDescriptor().isUnique())
 			{
+				// the INCLUDE columns are not part of the unique key
 				properties.put("nUniqueColumns", 
-							   Integer.toString(indexRowLength - 1));
+							   Integer.toString(
+								cd.getIndexDescriptor().numberOfOrderedColumns()));
 			}
 			else
 			{
@@ -1852,7 +1854,6 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 			indexCC.close();
 
 			// We can finally drain the sorter and rebuild the index
-			// RESOLVE - all indexes are btrees right now
 			// Populate the index.
 			sorters[index].completedInserts();
 			sorters[index] = null;
@@ -1861,7 +1862,7 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 
 			newIndexCongloms[index] = 
                 tc.createAndLoadConglomerate(
-                    "BTREE",
+                    cd.getIndexDescriptor().indexType(),
                     indexRows[index].getRowArray(),
                     ordering[index],
                     collation[index],
@@ -2216,7 +2217,7 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
             if (indDes.isUnique() || indDes.isUniqueDeferrable())
 			{
                 numColumnOrderings =
-                        indDes.isUnique() ? baseColumnPositions.length :
+                        indDes.isUnique() ? indDes.numberOfOrderedColumns() :
                         baseColumnPositions.length + 1;
 
 				String indexOrConstraintName = cd.getConglomerateName();
@@ -2256,7 +2257,7 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 													 true);
 			}
             order[index] = new ColumnOrdering[numColumnOrderings];
-			for (int ii =0; ii < isAscending.length; ii++) 
+			for (int ii =0; ii < numColumnOrderings && ii < isAscending.length; ii++) 
 			{
                 order[index][ii] = new IndexColumnOrder(ii, isAscending[ii]);
 			}
@@ -2325,8 +2326,10 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 			properties.put("baseConglomerateId", Long.toString(newHeapConglom));
 			if (cd.getIndexDescriptor().isUnique())
 			{
+				// the INCLUDE columns are not part of the unique key
 				properties.put("nUniqueColumns", 
-							   Integer.toString(indexRowLength - 1));
+							   Integer.toString(
+								cd.getIndexDescriptor().numberOfOrderedColumns()));
 			}
 			else
 			{
@@ -2354,7 +2357,7 @@ class InsertResultSet extends DMLWriteGeneratedColumnsResultSet implements Targe
 			// Populate the index.
 			newIndexCongloms[index] = 
                 tc.createAndLoadConglomerate(
-                    "BTREE",
+                    cd.getIndexDescriptor().indexType(),
                     idxRows[index].getRowArray(),
                     null, //default column sort order 
                     collation[index],
@@ -146,7 +146,7 @@ abstract class JoinResultSet extends NoPutResultSetImpl
 		leftResultSet.openCore();
 
 		try {
-			leftRow = leftResultSet.getNextRowCore();
+			leftRow = getNextLeftRow();
 			if (leftRow != null)
 			{
 				openRight();
@@ -178,7 +178,7 @@ abstract class JoinResultSet extends NoPutResultSetImpl
 
 		// Reopen the left and get the next row
 		leftResultSet.reopenCore();
-		leftRow = leftResultSet.getNextRowCore();
+		leftRow = getNextLeftRow();
 		if (leftRow != null)
 		{
 			// Open the right
@@ -266,6 +266,19 @@ abstract class JoinResultSet extends NoPutResultSetImpl
 
 	/* Class implementation */
 
+	/**
+	 * Get the next row from the leftResultSet. Subclasses which set
+	 * aside some of the left rows and join them later override this.
+	 *
+	 * @return the next left row, or null if there are no more
+	 *
+	 * @exception StandardException		Thrown on error
+	 */
+	protected ExecRow getNextLeftRow() throws StandardException
+	{
+		return leftResultSet.getNextRowCore();
+	}
+
 	/**
 	 * open the rightResultSet.  If already open,
 	 * just reopen.
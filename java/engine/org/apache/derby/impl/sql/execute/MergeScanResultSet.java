@@ -0,0 +1,354 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.MergeScanResultSet
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import java.util.ArrayList;
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.loader.GeneratedMethod;
+import org.apache.derby.shared.common.sanity.SanityManager;
+import org.apache.derby.iapi.sql.Activation;
+import org.apache.derby.iapi.sql.execute.ExecRow;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.StaticCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.RowUtil;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+/**
+ * The inner side of a merge join.  The index is scanned once, from the
+ * start to the stop position, and each time the scan is reopened for a
+ * new outer row it moves forward to the rows whose first key column
+ * equals the join column of the outer row.  Those rows are kept until
+ * an outer row with a different value comes along, so outer rows with
+ * duplicate values get the same inner rows.
+ * <p>
+ * The optimizer only picks a merge join when the outer rows are
+ * guaranteed to come in ascending order of the join column, and the
+ * join is closed and opened again when its outer rows start over, so
+ * an outer row with a smaller value than the last one is an internal
+ * error.
+ */
+class MergeScanResultSet extends TableScanResultSet
+{
+	/** Qualifiers evaluated for each outer row.  The first one is the
+	 * equijoin on the first key column, which the scan is merged on.
+	 */
+	public Qualifier[][] nextQualifiers;
+
+	/** Position of the merge column in the rows fetched from the scan */
+	private final int mergeColumn;
+
+	private ExecRow compactRow;
+
+	/** The scanned rows whose merge column equals lastKey */
+	private final ArrayList<DataValueDescriptor[]> matchingRows =
+		new ArrayList<DataValueDescriptor[]>();
+
+	/** The next row from the scan, read past the last matching row */
+	private DataValueDescriptor[] pendingRow;
+
+	/** The outer value the matching rows were found for */
+	private DataValueDescriptor lastKey;
+
+	private boolean scanExhausted;
+	private boolean firstNext;
+	private int nextMatch;
+
+    //
+    // class interface
+    //
+    MergeScanResultSet(long conglomId,
+		StaticCompiledOpenConglomInfo scoci,
+		Activation activation,
+		int resultRowTemplate,
+		int resultSetNumber,
+		GeneratedMethod startKeyGetter, int startSearchOperator,
+		GeneratedMethod stopKeyGetter, int stopSearchOperator,
+		boolean sameStartStopPosition,
+		Qualifier[][] scanQualifiers,
+		Qualifier[][] nextQualifiers,
+		String tableName,
+		String userSuppliedOptimizerOverrides,
+		String indexName,
+		boolean isConstraint,
+		boolean forUpdate,
+		int colRefItem,
+		int indexColItem,
+		int lockMode,
+		boolean tableLocked,
+		int isolationLevel,
+		double optimizerEstimatedRowCount,
+		double optimizerEstimatedCost)
+			throws StandardException
+    {
+		super(conglomId,
+			  scoci,
+			  activation,
+			  resultRowTemplate,
+			  resultSetNumber,
+			  startKeyGetter,
+			  startSearchOperator,
+			  stopKeyGetter,
+			  stopSearchOperator,
+			  sameStartStopPosition,
+			  scanQualifiers,
+			  tableName,
+			  userSuppliedOptimizerOverrides,
+			  indexName,
+			  isConstraint,
+			  forUpdate,
+			  colRefItem,
+			  indexColItem,
+			  lockMode,
+			  tableLocked,
+			  isolationLevel,
+			  1,		// rowsPerRead
+			  false,	// oneRowScan
+			  optimizerEstimatedRowCount,
+			  optimizerEstimatedCost);
+
+		if (SanityManager.DEBUG)
+		{
+			SanityManager.ASSERT(nextQualifiers != null &&
+								 nextQualifiers[0].length > 0,
+				"merge scan needs a qualifier on the merge column");
+		}
+
+		this.nextQualifiers = nextQualifiers;
+		mergeColumn = nextQualifiers[0][0].getColumnId();
+		compactRow = getCompactRow(candidate, accessedCols, false);
+	}
+
+	/**
+     * Open the scan, positioned before the first row.
+	 *
+	 * @exception StandardException thrown on failure to open
+     */
+    @Override
+	public void	openCore() throws StandardException
+	{
+		super.openCore();
+
+		matchingRows.clear();
+		pendingRow = null;
+		lastKey = null;
+		scanExhausted = false;
+		startProbe();
+	}
+
+	/**
+     * Start looking for the rows of the next outer row.  The scan is
+	 * not repositioned, since the start and stop positions don't depend
+	 * on the outer row.
+	 *
+	 * @exception StandardException thrown on failure to open
+     */
+    @Override
+	public void	reopenCore() throws StandardException
+	{
+		beginTime = getCurrentTimeMillis();
+		if (SanityManager.DEBUG)
+		    SanityManager.ASSERT(isOpen, "MergeScanResultSet not open, cannot reopen");
+
+		startProbe();
+
+		numOpens++;
+		openTime += getElapsedMillis(beginTime);
+	}
+
+	private void startProbe() throws StandardException
+	{
+		firstNext = true;
+		nextMatch = 0;
+		clearOrderableCache(nextQualifiers);
+	}
+
+	/**
+     * Return the next row (if any) that matches the current outer row.
+	 *
+	 * @exception StandardException thrown on failure to get next row
+	 */
+    @Override
+	public ExecRow getNextRowCore() throws StandardException
+	{
+		if( isXplainOnlyMode() )
+			return null;
+
+        checkCancellationFlag();
+
+		beginTime = getCurrentTimeMillis();
+
+		ExecRow result = null;
+
+	    if ( isOpen && scanControllerOpened )
+	    {
+			if (firstNext)
+			{
+				firstNext = false;
+				findMatchingRows(nextQualifiers[0][0].getOrderable());
+			}
+
+			/* The scan only compared the merge column, so evaluate all
+			 * of the join qualifiers here, which also takes care of
+			 * NULLs never being equal.
+			 */
+			while (nextMatch < matchingRows.size())
+			{
+				DataValueDescriptor[] row = matchingRows.get(nextMatch++);
+				if (RowUtil.qualifyRow(row, nextQualifiers))
+				{
+					setCompatRow(compactRow, row);
+					result = compactRow;
+					break;
+				}
+				rowsFiltered++;
+			}
+	    }
+
+		setCurrentRow(result);
+		currentRowIsValid = true;
+
+		nextTime += getElapsedMillis(beginTime);
+	    return result;
+	}
+
+	/**
+	 * Collect the rows of the scan whose merge column equals the given
+	 * value, reading forward from where the last call stopped.
+	 *
+	 * @param key	the join column of the outer row
+	 *
+	 * @exception StandardException thrown on error
+	 */
+	private void findMatchingRows(DataValueDescriptor key)
+		throws StandardException
+	{
+		if (lastKey != null)
+		{
+			int order = key.compare(lastKey);
+			if (order == 0)
+			{
+				// same outer value as the last time, same rows
+				return;
+			}
+
+			if (order < 0)
+			{
+				// the scan has already gone past the rows for this value
+				throw StandardException.newException(
+					SQLState.LANG_MERGE_JOIN_OUTER_NOT_ORDERED, tableName);
+			}
+		}
+
+		matchingRows.clear();
+		lastKey = key.cloneValue(false);
+
+		if (pendingRow != null)
+		{
+			int order = pendingRow[mergeColumn].compare(key);
+			if (order > 0)
+			{
+				return;
+			}
+			if (order == 0)
+			{
+				matchingRows.add(pendingRow);
+			}
+			pendingRow = null;
+		}
+
+		DataValueDescriptor[] row = candidate.getRowArray();
+		while (! scanExhausted)
+		{
+			if (! scanController.fetchNext(row))
+			{
+				scanExhausted = true;
+				setRowCountIfPossible(rowsThisScan);
+				break;
+			}
+			rowsSeen++;
+			rowsThisScan++;
+
+			/*
+			** Skip rows where there are start or stop positioners
+			** that do not implement ordered null semantics and
+			** there are columns in those positions that contain
+			** null.
+			*/
+			if ((! sameStartStopPosition) && skipRow(candidate))
+			{
+				rowsFiltered++;
+				continue;
+			}
+
+			int order = row[mergeColumn].compare(key);
+			if (order < 0)
+			{
+				continue;
+			}
+
+			if (order == 0)
+			{
+				matchingRows.add(cloneRow(row));
+			}
+			else
+			{
+				pendingRow = cloneRow(row);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Copy the columns of a fetched row which are read by the scan,
+	 * since the scan reuses the candidate row.
+	 */
+	private DataValueDescriptor[] cloneRow(DataValueDescriptor[] row)
+	{
+		DataValueDescriptor[] clone = new DataValueDescriptor[row.length];
+		for (int i = 0; i < row.length; i++)
+		{
+			if (row[i] != null &&
+				(accessedCols == null || accessedCols.get(i)))
+			{
+				clone[i] = row[i].cloneValue(false);
+			}
+		}
+		return clone;
+	}
+
+	/**
+	 * If the result set has been opened,
+	 * close the open scan.
+	 *
+	 * @exception StandardException on error
+	 */
+    @Override
+	public void	close() throws StandardException
+	{
+		super.close();
+
+		matchingRows.clear();
+		pendingRow = null;
+		lastKey = null;
+	}
+}
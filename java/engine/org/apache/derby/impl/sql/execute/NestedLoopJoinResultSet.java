@@ -95,7 +95,7 @@ class NestedLoopJoinResultSet extends JoinResultSet
 		 */
 		if (! isRightOpen && leftRow != null)
 		{		 
-			leftRow = leftResultSet.getNextRowCore();
+			leftRow = getNextLeftRow();
 			if (leftRow == null)
 			{
 				closeRight();
@@ -139,7 +139,7 @@ class NestedLoopJoinResultSet extends JoinResultSet
 				 * and open new scan with new "parameters".  openRight()	
 				 * will reopen if already open.
 				 */
-				leftRow = leftResultSet.getNextRowCore();
+				leftRow = getNextLeftRow();
 				if (leftRow == null)
 				{
 					closeRight();
@@ -0,0 +1,338 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.ParallelScalarAggregateResultSet
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import org.apache.derby.iapi.error.SQLWarningFactory;
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.ClassName;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+import org.apache.derby.iapi.sql.Activation;
+import org.apache.derby.iapi.sql.execute.ExecAggregator;
+import org.apache.derby.iapi.sql.execute.ExecIndexRow;
+import org.apache.derby.iapi.sql.execute.ExecRow;
+import org.apache.derby.iapi.sql.execute.NoPutResultSet;
+import org.apache.derby.iapi.store.access.PageRangeScan;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.UserDataValue;
+
+/**
+ * This ResultSet evaluates scalar, non distinct aggregates over the rows
+ * of a heap scan, dividing the scan between several threads.
+ * <p>
+ * Each thread reads ranges of the pages of the heap and computes partial
+ * aggregates over the rows qualified by the qualifiers of the scan, which
+ * are then merged into the result.  This is only done for SUM, COUNT,
+ * MIN, MAX and AVG of columns of the heap, when the rows need no
+ * restriction other than the qualifiers, and the transaction has not
+ * changed any data.  Otherwise, or if the threads can't get their locks
+ * without waiting, the rows are read by the scan under this result set
+ * like for a ScalarAggregateResultSet.
+ */
+class ParallelScalarAggregateResultSet extends ScalarAggregateResultSet
+{
+	/* The largest number of threads to scan the heap with */
+	private final int parallelScanThreads;
+
+    /**
+	 * Constructor
+	 *
+	 * @param	s			input result set
+	 * @param	isInSortedOrder	true if the source results are in sorted order
+	 * @param	aggregateItem	indicates the number of the
+	 *		SavedObject off of the PreparedStatement that holds the
+	 *		AggregatorInfoList used by this routine.
+	 * @param	a				activation
+	 * @param	ra				saved object that builds an empty output row
+	 * @param	resultSetNumber	The resultSetNumber for this result set
+	 * @param	parallelScanThreads	the largest number of threads to scan
+	 *		the heap with
+	 *
+	 * @exception StandardException Thrown on error
+	 */
+    ParallelScalarAggregateResultSet(NoPutResultSet s,
+					boolean isInSortedOrder,
+					int	aggregateItem,
+					Activation a,
+					int ra,
+					int resultSetNumber,
+					boolean singleInputRow,
+				    double optimizerEstimatedRowCount,
+				    double optimizerEstimatedCost,
+					int parallelScanThreads) throws StandardException
+	{
+		super(s, isInSortedOrder, aggregateItem, a, ra, resultSetNumber,
+			singleInputRow, optimizerEstimatedRowCount, optimizerEstimatedCost);
+		this.parallelScanThreads = parallelScanThreads;
+    }
+
+	/**
+	 * Return the next row.  The aggregates are computed by several
+	 * threads if possible, otherwise like for a ScalarAggregateResultSet.
+	 *
+	 * @exception StandardException thrown on failure.
+	 *
+	 * @return the next row in the result
+	 */
+	public ExecRow	getNextRowCore() throws StandardException
+	{
+		if (isXplainOnlyMode() || nextSatisfied || !isOpen)
+			return super.getNextRowCore();
+
+		beginTime = getCurrentTimeMillis();
+		ExecIndexRow aggResult = aggregateInParallel();
+		nextTime += getElapsedMillis(beginTime);
+
+		if (aggResult == null)
+			return super.getNextRowCore();
+
+		countOfRows++;
+		nextSatisfied = true;
+		return aggResult;
+	}
+
+	/**
+	 * Compute the aggregates by scanning the heap under this result set
+	 * with several threads.
+	 *
+	 * @return the result row, or null if the aggregates must be computed
+	 *		from the rows of the source instead
+	 *
+	 * @exception StandardException thrown on failure.
+	 */
+	private ExecIndexRow aggregateInParallel() throws StandardException
+	{
+		TransactionController tc = activation.getTransactionController();
+
+		// The other transactions would not see the changes of this one.
+		if (!tc.isPristine())
+			return null;
+
+		/*
+		** Find the column each aggregate accumulates, through the
+		** projections down to the scan.  The columns are numbered from 1,
+		** 0 stands for the missing input of COUNT(*).
+		*/
+		int[] columns = new int[aggregates.length];
+		for (int i = 0; i < aggregates.length; i++)
+		{
+			AggregatorInfo aggInfo = aggregates[i].getAggregatorInfo();
+			String className = aggInfo.getAggregatorClassName();
+
+			if (!(className.equals(ClassName.SumAggregator) ||
+				  className.equals(ClassName.CountAggregator) ||
+				  className.equals(ClassName.MaxMinAggregator) ||
+				  className.equals(ClassName.AvgAggregator)))
+			{
+				return null;
+			}
+
+			columns[i] = aggInfo.getAggregateName().equals("COUNT(*)") ?
+				0 : aggInfo.getInputColNum() + 1;
+		}
+
+		NoPutResultSet rs = source;
+		while (rs instanceof ProjectRestrictResultSet)
+		{
+			ProjectRestrictResultSet prs = (ProjectRestrictResultSet) rs;
+
+			if (!prs.returnsAllSourceRows())
+				return null;
+
+			for (int i = 0; i < columns.length; i++)
+			{
+				if (columns[i] != 0)
+				{
+					columns[i] = prs.getSourceColumn(columns[i]);
+					if (columns[i] == -1)
+						return null;
+				}
+			}
+
+			rs = prs.source;
+		}
+
+		if (rs.getClass() != TableScanResultSet.class &&
+			rs.getClass() != BulkTableScanResultSet.class)
+		{
+			return null;
+		}
+
+		TableScanResultSet scan = (TableScanResultSet) rs;
+		PageRangeScan heapScan = scan.getPageRangeScan();
+		if (heapScan == null)
+			return null;
+
+		int threads = (int) Math.min(
+			parallelScanThreads, heapScan.getEstimatedPageCount());
+		if (threads < 2)
+			return null;
+
+		// The scan reads the compact rows, the workers the heap rows.
+		int[] inputColumns = new int[columns.length];
+		for (int i = 0; i < columns.length; i++)
+		{
+			inputColumns[i] = (columns[i] == 0) ?
+				-1 : getHeapColumn(scan.accessedCols, columns[i]);
+		}
+
+		Qualifier[][][] qualifiers = new Qualifier[threads][][];
+		DataValueDescriptor[][] templateRows =
+			new DataValueDescriptor[threads][];
+		ExecAggregator[][] partials = new ExecAggregator[threads][];
+		for (int w = 0; w < threads; w++)
+		{
+			if (scan.qualifiers != null)
+			{
+				qualifiers[w] = copyQualifiers(scan.qualifiers);
+				if (qualifiers[w] == null)
+					return null;
+			}
+
+			templateRows[w] = scan.candidate.getRowArrayClone();
+
+			partials[w] = new ExecAggregator[aggregates.length];
+			for (int i = 0; i < aggregates.length; i++)
+				partials[w][i] = aggregates[i].getAggregatorInstance();
+		}
+
+		ParallelScanWorkers workers = new ParallelScanWorkers(
+			tc.getAccessManager(),
+			scan.conglomId,
+			scan.lockMode,
+			scan.isolationLevel,
+			scan.accessedCols,
+			qualifiers,
+			templateRows,
+			partials,
+			aggregates,
+			inputColumns,
+			heapScan.getEstimatedPageCount());
+
+		workers.start();
+		if (!workers.finish(this))
+			return null;
+
+		/*
+		** Merge the partial aggregates into the aggregators of a new
+		** row.  A merge doesn't carry over whether nulls were eliminated,
+		** so warn about them here.
+		*/
+		ExecIndexRow aggResult = (ExecIndexRow) getRowTemplate().getClone();
+		boolean eliminatedNulls = false;
+
+		for (int i = 0; i < aggregates.length; i++)
+		{
+			ExecAggregator merged = aggregates[i].getAggregatorInstance();
+
+			for (int w = 0; w < threads; w++)
+			{
+				ExecAggregator partial = workers.getPartials(w)[i];
+
+				merged.merge(partial);
+				if (partial.didEliminateNulls())
+					eliminatedNulls = true;
+			}
+
+			((UserDataValue) aggResult.getColumn(
+				aggregates[i].getColumnId() + 1)).setValue(merged);
+		}
+
+		rowsInput += workers.getRowCount();
+
+		aggResult = finishAggregation(aggResult);
+
+		if (eliminatedNulls)
+			addWarning(SQLWarningFactory.newSQLWarning(SQLState.LANG_NULL_ELIMINATED_IN_SET_FUNCTION));
+
+		return aggResult;
+	}
+
+	/**
+	 * Get the position in the heap rows of a column of the compact rows of
+	 * a scan.
+	 *
+	 * @param accessedCols	the columns read by the scan, null for all
+	 * @param column		the 1-based column of the compact row
+	 *
+	 * @return the 0-based column of the heap row
+	 */
+	private static int getHeapColumn(FormatableBitSet accessedCols, int column)
+	{
+		if (accessedCols == null)
+			return column - 1;
+
+		int heapColumn = accessedCols.anySetBit();
+		for (int i = 1; i < column; i++)
+			heapColumn = accessedCols.anySetBit(heapColumn);
+
+		return heapColumn;
+	}
+
+	/**
+	 * Copy the qualifiers of a scan, with the values they compare with,
+	 * for the scan of a worker.
+	 *
+	 * @param qualifiers	the qualifiers of the scan
+	 *
+	 * @return the copy, or null if a qualifier compares with a value which
+	 *		may change during the scan
+	 *
+	 * @exception StandardException thrown on failure.
+	 */
+	private static Qualifier[][] copyQualifiers(Qualifier[][] qualifiers)
+		throws StandardException
+	{
+		Qualifier[][] copy = new Qualifier[qualifiers.length][];
+
+		for (int i = 0; i < qualifiers.length; i++)
+		{
+			copy[i] = new Qualifier[qualifiers[i].length];
+
+			for (int j = 0; j < qualifiers[i].length; j++)
+			{
+				Qualifier q = qualifiers[i][j];
+
+				if (!(q instanceof GenericQualifier) ||
+					((GenericQualifier) q).variantType == Qualifier.VARIANT)
+				{
+					return null;
+				}
+
+				DataValueDescriptor orderable = q.getOrderable();
+				GenericScanQualifier sq = new GenericScanQualifier();
+				sq.setQualifier(
+					q.getColumnId(),
+					orderable == null ? null : orderable.cloneValue(false),
+					q.getOperator(),
+					q.negateCompareResult(),
+					q.getOrderedNulls(),
+					q.getUnknownRV());
+				copy[i][j] = sq;
+			}
+		}
+
+		return copy;
+	}
+}
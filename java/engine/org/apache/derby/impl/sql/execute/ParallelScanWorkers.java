@@ -0,0 +1,525 @@
+/*
+
+   Derby - Class org.apache.derby.impl.sql.execute.ParallelScanWorkers
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.sql.execute;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.context.ContextService;
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.sql.execute.ExecAggregator;
+import org.apache.derby.iapi.store.access.AccessFactory;
+import org.apache.derby.iapi.store.access.GroupFetchScanController;
+import org.apache.derby.iapi.store.access.PageRangeScan;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.ScanController;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.util.InterruptStatus;
+
+/**
+ * The worker threads of a parallel scan of a heap, which compute partial
+ * aggregates over the rows they read.
+ * <p>
+ * The pages of the heap are divided into ranges, more ranges than there are
+ * workers so that a worker which gets a range with few qualifying rows
+ * takes another one.  Each worker opens a scan of the heap in a transaction
+ * of its own, reads the rows of the ranges it takes, qualified by the
+ * qualifiers of the scan, and accumulates the aggregated columns into
+ * aggregators of its own.  The thread which started the workers merges
+ * the partial aggregates once they are all done.
+ * <p>
+ * The transactions of the workers don't wait for locks.  If a worker
+ * can't get a lock at once, for instance because the rows are being
+ * changed by another transaction, the workers give up and the rows should
+ * be read by a single scan instead.
+ * <p>
+ * MT - the ranges, the count of running workers and the first error are
+ * protected by the monitor of this object.  The aggregators of a worker are
+ * only used by its thread until it is done.
+ */
+final class ParallelScanWorkers
+{
+    /** The number of page ranges per worker. */
+    private static final int RANGES_PER_WORKER = 4;
+
+    /** The number of rows fetched from a scan at once. */
+    private static final int FETCH_SIZE = 64;
+
+    /** How often, in milliseconds, the waiting thread checks for cancel. */
+    private static final long CHECK_INTERVAL = 100L;
+
+    /**
+     * A worker thread and its partial aggregates.
+     */
+    private final class Worker implements Runnable
+    {
+        /** The qualifiers of the scan of the worker. */
+        private final Qualifier[][] qualifiers;
+
+        /** The row to fetch the rows of the heap into. */
+        private final DataValueDescriptor[] templateRow;
+
+        /** The partial aggregates, one for each aggregate. */
+        final ExecAggregator[] partials;
+
+        /** The number of rows accumulated. */
+        long rows;
+
+        Thread thread;
+
+        Worker(Qualifier[][] qualifiers, DataValueDescriptor[] templateRow,
+               ExecAggregator[] partials)
+        {
+            this.qualifiers = qualifiers;
+            this.templateRow = templateRow;
+            this.partials = partials;
+        }
+
+        public void run()
+        {
+            ContextService contextService = getContextService();
+            ContextManager cm = contextService.newContextManager();
+            contextService.setCurrentContextManager(cm);
+
+            TransactionController tc = null;
+            boolean done = false;
+
+            try
+            {
+                tc = accessFactory.getTransaction(cm);
+                tc.setNoLockWait(true);
+
+                scanRanges(tc);
+
+                tc.commit();
+                done = true;
+            }
+            catch (Throwable t)
+            {
+                setError(t);
+            }
+            finally
+            {
+                try
+                {
+                    if (tc != null)
+                    {
+                        if (!done)
+                            tc.abort();
+                        tc.destroy();
+                    }
+                }
+                catch (Throwable t)
+                {
+                    setError(t);
+                }
+
+                cm.cleanupOnError(StandardException.normalClose(), false);
+                contextService.resetCurrentContextManager(cm);
+
+                workerDone();
+            }
+        }
+
+        /** Read the rows of the ranges taken by this worker. */
+        private void scanRanges(TransactionController tc)
+            throws StandardException
+        {
+            DataValueDescriptor[][] rowArray =
+                new DataValueDescriptor[FETCH_SIZE][];
+            rowArray[0] = templateRow;
+
+            GroupFetchScanController scan = null;
+            int range;
+
+            try
+            {
+                while ((range = nextRange()) != -1)
+                {
+                    if (scan == null)
+                    {
+                        scan = tc.openGroupFetchScan(
+                            conglomId,
+                            false,              // don't hold
+                            0,                  // read only
+                            lockMode,
+                            isolationLevel,
+                            accessedCols,
+                            (DataValueDescriptor[]) null,
+                            ScanController.NA,
+                            qualifiers,
+                            (DataValueDescriptor[]) null,
+                            ScanController.NA);
+                    }
+                    else
+                    {
+                        scan.reopenScan(
+                            (DataValueDescriptor[]) null,
+                            ScanController.NA,
+                            qualifiers,
+                            (DataValueDescriptor[]) null,
+                            ScanController.NA);
+                    }
+
+                    ((PageRangeScan) scan).setPageRange(
+                        rangeStarts[range],
+                        range + 1 < rangeStarts.length ?
+                            rangeStarts[range + 1] : -1);
+
+                    int fetched;
+                    while (!stopped &&
+                           (fetched = scan.fetchNextGroup(
+                                rowArray, null)) > 0)
+                    {
+                        accumulate(rowArray, fetched);
+                    }
+                }
+            }
+            finally
+            {
+                if (scan != null)
+                    scan.close();
+            }
+        }
+
+        /** Accumulate the aggregated columns of the fetched rows. */
+        private void accumulate(DataValueDescriptor[][] rowArray, int count)
+            throws StandardException
+        {
+            for (int r = 0; r < count; r++)
+            {
+                DataValueDescriptor[] row = rowArray[r];
+
+                for (int i = 0; i < partials.length; i++)
+                {
+                    partials[i].accumulate(
+                        inputColumns[i] == -1 ? null : row[inputColumns[i]],
+                        aggregators[i]);
+                }
+            }
+            rows += count;
+        }
+    }
+
+    private final AccessFactory accessFactory;
+    private final long conglomId;
+    private final int lockMode;
+    private final int isolationLevel;
+    private final FormatableBitSet accessedCols;
+
+    /**
+     * The column of the heap rows each aggregate accumulates, -1 for
+     * COUNT(*).
+     */
+    private final int[] inputColumns;
+
+    /** The aggregates computed. */
+    private final GenericAggregator[] aggregators;
+
+    /** The first page of each range, the last range has no end. */
+    private final long[] rangeStarts;
+
+    private final Worker[] workers;
+
+    /** The next range to be taken by a worker. */
+    private int nextRange;
+
+    /** The number of workers not done yet. */
+    private int running;
+
+    /** Set to make the workers stop before they are done. */
+    private volatile boolean stopped;
+
+    /** The first error raised by a worker, if any. */
+    private Throwable error;
+
+    /**
+     * Create the workers of a parallel scan.
+     *
+     * @param accessFactory the access factory to start the transactions of
+     *                      the workers with
+     * @param conglomId the conglomerate id of the heap
+     * @param lockMode the lock mode of the scans
+     * @param isolationLevel the isolation level of the scans
+     * @param accessedCols the columns to read, null for all of them
+     * @param qualifiers the qualifiers of the scan of each worker, which
+     *                   may not be shared between workers
+     * @param templateRows the row to fetch rows into, for each worker
+     * @param partials the aggregators to accumulate the rows into, for
+     *                 each worker
+     * @param aggregators the aggregates computed
+     * @param inputColumns the column of the heap rows each aggregate
+     *                     accumulates, -1 for COUNT(*)
+     * @param pageCount the estimated number of pages in the heap
+     */
+    ParallelScanWorkers(AccessFactory accessFactory,
+                        long conglomId,
+                        int lockMode,
+                        int isolationLevel,
+                        FormatableBitSet accessedCols,
+                        Qualifier[][][] qualifiers,
+                        DataValueDescriptor[][] templateRows,
+                        ExecAggregator[][] partials,
+                        GenericAggregator[] aggregators,
+                        int[] inputColumns,
+                        long pageCount)
+    {
+        this.accessFactory = accessFactory;
+        this.conglomId = conglomId;
+        this.lockMode = lockMode;
+        this.isolationLevel = isolationLevel;
+        this.accessedCols = accessedCols;
+        this.aggregators = aggregators;
+        this.inputColumns = inputColumns;
+
+        workers = new Worker[partials.length];
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i] =
+                new Worker(qualifiers[i], templateRows[i], partials[i]);
+        }
+
+        int ranges = (int) Math.min(
+            (long) workers.length * RANGES_PER_WORKER, pageCount);
+        long rangeSize = (pageCount + ranges - 1) / ranges;
+
+        rangeStarts = new long[ranges];
+        for (int i = 0; i < ranges; i++)
+            rangeStarts[i] = PageRangeScan.FIRST_PAGE + i * rangeSize;
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    void start()
+    {
+        ModuleFactory monitor = getMonitor();
+
+        synchronized (this)
+        {
+            running = workers.length;
+        }
+
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].thread = monitor.getDaemonThread(
+                    workers[i], "parallelScanWorker-" + i, false);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Wait for the workers to be done.  If the statement is cancelled, or
+     * the thread is interrupted, the workers are stopped.
+     *
+     * @param resultSet the result set the workers compute the aggregates
+     *                  of, which is checked for cancel
+     *
+     * @return true if the workers are done, false if a worker could not
+     *      get a lock without waiting, in which case the rows must be read
+     *      again by a single scan
+     *
+     * @exception StandardException if a worker failed, or the statement
+     *      was cancelled
+     */
+    boolean finish(BasicNoPutResultSetImpl resultSet)
+        throws StandardException
+    {
+        boolean done = false;
+
+        try
+        {
+            while (!waitForWorkers())
+                resultSet.checkCancellationFlag();
+            done = true;
+        }
+        finally
+        {
+            if (!done)
+                stopped = true;
+            join();
+        }
+
+        return checkError();
+    }
+
+    /**
+     * Get the partial aggregates of a worker.
+     */
+    ExecAggregator[] getPartials(int worker)
+    {
+        return workers[worker].partials;
+    }
+
+    /**
+     * Get the number of rows accumulated by the workers.
+     */
+    long getRowCount()
+    {
+        long rows = 0;
+        for (int i = 0; i < workers.length; i++)
+            rows += workers[i].rows;
+        return rows;
+    }
+
+    /**
+     * Take the next range of pages to read.
+     *
+     * @return the number of the range, -1 if there are no ranges left
+     */
+    private synchronized int nextRange()
+    {
+        if (stopped || nextRange == rangeStarts.length)
+            return -1;
+
+        return nextRange++;
+    }
+
+    private synchronized void workerDone()
+    {
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Wait for a while for the workers to be done.
+     *
+     * @return true if all the workers are done
+     */
+    private synchronized boolean waitForWorkers()
+    {
+        if (running > 0)
+        {
+            try
+            {
+                wait(CHECK_INTERVAL);
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+
+        return running == 0;
+    }
+
+    /** Wait for the worker threads to exit. */
+    private void join()
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            Thread t = workers[i].thread;
+
+            if (t == null)
+                continue;
+
+            while (true)
+            {
+                try
+                {
+                    t.join();
+                    break;
+                }
+                catch (InterruptedException ie)
+                {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+            workers[i].thread = null;
+        }
+    }
+
+    private synchronized void setError(Throwable t)
+    {
+        if (error == null)
+            error = t;
+        stopped = true;
+    }
+
+    /**
+     * Throw the error of the workers, if any, unless it is a lock which
+     * could not be granted at once.
+     *
+     * @return false if a worker could not get a lock
+     */
+    private synchronized boolean checkError() throws StandardException
+    {
+        Throwable t = error;
+
+        if (t == null)
+            return true;
+        if (t instanceof StandardException)
+        {
+            if (SQLState.LOCK_TIMEOUT.equals(
+                    ((StandardException) t).getMessageId()))
+                return false;
+            throw (StandardException) t;
+        }
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+
+        throw StandardException.plainWrapException(t);
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+
+    /**
+     * Privileged lookup of the ContextService. Must be private so that
+     * user code can't call this entry point.
+     */
+    private static ContextService getContextService()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ContextService>()
+             {
+                 public ContextService run()
+                 {
+                     return ContextService.getFactory();
+                 }
+             }
+             );
+    }
+}
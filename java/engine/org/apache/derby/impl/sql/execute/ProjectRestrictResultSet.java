@@ -72,6 +72,9 @@ class ProjectRestrictResultSet extends NoPutResultSetImpl
 	private boolean shortCircuitOpen;
 
 	private ExecRow projRow;
+	// the rows read from the source and returned by getNextRowBatch()
+	private ExecRow[] sourceBatch;
+	private ExecRow[] batchRows;
     private final boolean validatingCheckConstraint;
     private final UUID validatingBaseTableUUID;
     Enumeration<Object> rowLocations;
@@ -349,6 +352,110 @@ class ProjectRestrictResultSet extends NoPutResultSetImpl
     	return result;
 	}
 
+	/**
+	 * Return the rows of a batch of rows from the source for which the
+	 * restriction evaluates to true. The restriction and the projection
+	 * are evaluated for the whole batch in one loop.
+	 * <p>
+	 * Each row of the batch is projected into a row of its own. The
+	 * columns mapped from the source row are shared with it, as for a
+	 * single row. The row made by a generated projection, and the
+	 * values in it, may be reused from one row to the next, so the
+	 * generated columns are copied.
+	 *
+	 * @see NoPutResultSet#getNextRowBatch
+	 *
+	 * @exception StandardException thrown on failure.
+	 */
+	public int getNextRowBatch(ExecRow[] batch) throws StandardException
+	{
+		if (reuseResult || validatingCheckConstraint || shortCircuitOpen)
+		{
+			return super.getNextRowBatch(batch);
+		}
+
+		if( isXplainOnlyMode() )
+			return 0;
+
+		int numRows = 0;
+		long beginRT;
+
+		beginTime = getCurrentTimeMillis();
+		if (sourceBatch == null || sourceBatch.length != batch.length)
+		{
+			sourceBatch = new ExecRow[batch.length];
+			batchRows = new ExecRow[batch.length];
+		}
+
+		while (numRows == 0)
+		{
+			int numSourceRows = source.getNextRowBatch(sourceBatch);
+			if (numSourceRows == 0)
+			{
+				break;
+			}
+
+			beginRT = getCurrentTimeMillis();
+			for (int i = 0; i < numSourceRows; i++)
+			{
+				ExecRow candidateRow = sourceBatch[i];
+				rowsSeen++;
+
+				/* The restriction and the projection may refer to the
+				 * current row of the source, which the source left at
+				 * the last row of the batch.
+				 */
+				if (numSourceRows > 1)
+				{
+					activation.setCurrentRow(candidateRow,
+											 source.resultSetNumber());
+				}
+
+				if (restriction != null)
+				{
+					setCurrentRow(candidateRow);
+		            DataValueDescriptor restrictBoolean =
+						(DataValueDescriptor) restriction.invoke(activation);
+
+		            // if the result is null, we make it false --
+					// so the row won't be returned.
+					if (restrictBoolean.isNull() ||
+						! restrictBoolean.getBoolean())
+					{
+						rowsFiltered++;
+						continue;
+					}
+				}
+
+				batch[numRows] = doBatchProjection(candidateRow, numRows);
+				numRows++;
+			}
+			restrictionTime += getElapsedMillis(beginRT);
+		}
+
+		if (numRows > 0)
+		{
+			setCurrentRow(batch[numRows - 1]);
+		}
+		else
+		{
+			clearCurrentRow();
+		}
+
+		if (runTimeStatsOn)
+		{
+			if (! isTopResultSet)
+			{
+				/* This is simply for RunTimeStats */
+				/* We first need to get the subquery tracking array via the StatementContext */
+				StatementContext sc = activation.getLanguageConnectionContext().getStatementContext();
+				subqueryTrackingArray = sc.getSubqueryTrackingArray();
+			}
+			nextTime += getElapsedMillis(beginTime);
+		}
+		return numRows;
+	}
+
 	/**
 	 * Return the total amount of time spent in this ResultSet
 	 *
@@ -535,7 +642,114 @@ class ProjectRestrictResultSet extends NoPutResultSetImpl
 			result = mappedResultRow;
 		}
 
-		// Copy any mapped columns from the source
+		mapColumns(sourceRow, result);
+
+		/* We need to reSet the current row after doing the projection */
+		setCurrentRow(result);
+
+		/* Remember the result if reusing it */
+		if (reuseResult)
+		{
+			projRow = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Do the projection of a row of a batch into the row kept for its
+	 * position in the batch.
+	 *
+	 * @param sourceRow		The source row.
+	 * @param position		The position of the row in the batch.
+	 *
+	 * @return		The result of the projection
+	 *
+	 * @exception StandardException thrown on failure.
+	 */
+	private ExecRow doBatchProjection(ExecRow sourceRow, int position)
+		throws StandardException
+	{
+		ExecRow result = batchRows[position];
+		if (result == null)
+		{
+			result = activation.getExecutionFactory().
+				getValueRow(projectMapping.length);
+			batchRows[position] = result;
+		}
+
+		if (projection != null)
+		{
+			ExecRow projected = (ExecRow) projection.invoke(activation);
+			for (int index = 0; index < projectMapping.length; index++)
+			{
+				if (projectMapping[index] != -1)
+				{
+					continue;
+				}
+
+				DataValueDescriptor dvd = projected.getColumn(index + 1);
+				DataValueDescriptor copy = result.getColumn(index + 1);
+
+				// reuse the copy made for an earlier batch if possible
+				if (dvd == null)
+				{
+					copy = null;
+				}
+				else if (copy != null &&
+						 copy.getClass() == dvd.getClass() &&
+						 ! dvd.hasStream())
+				{
+					copy.setValue(dvd);
+				}
+				else
+				{
+					copy = dvd.cloneValue(false);
+				}
+				result.setColumn(index + 1, copy);
+			}
+		}
+
+		mapColumns(sourceRow, result);
+		return result;
+	}
+
+	/**
+	 * Tell whether every row of the source is also a row of this result
+	 * set, that is whether there is no restriction, or only a constant
+	 * restriction which holds.
+	 */
+	boolean returnsAllSourceRows()
+	{
+		return restriction == null && !shortCircuitOpen &&
+			!validatingCheckConstraint;
+	}
+
+	/**
+	 * Get the column of the source rows a column of the rows of this
+	 * result set is copied from.
+	 *
+	 * @param column	a 1-based column of the rows of this result set
+	 *
+	 * @return the 1-based column of the source rows, or -1 if the column
+	 *		is computed by the projection
+	 */
+	int getSourceColumn(int column)
+	{
+		return (column <= projectMapping.length) ?
+			projectMapping[column - 1] : -1;
+	}
+
+	/**
+	 * Copy the mapped columns of the source row to the result row.
+	 *
+	 * @param sourceRow		The source row.
+	 * @param result		The result row.
+	 *
+	 * @exception StandardException thrown on failure.
+	 */
+	private void mapColumns(ExecRow sourceRow, ExecRow result)
+		throws StandardException
+	{
 		for (int index = 0; index < projectMapping.length; index++)
 		{
 			if (projectMapping[index] != -1)
@@ -552,16 +766,6 @@ class ProjectRestrictResultSet extends NoPutResultSetImpl
                 result.setColumn(index + 1, dvd);
 			}
 		}
-
-		/* We need to reSet the current row after doing the projection */
-		setCurrentRow(result);
-
-		/* Remember the result if reusing it */
-		if (reuseResult)
-		{
-			projRow = result;
-		}
-		return result;
 	}
 
 	/**
@@ -48,6 +48,8 @@ import org.apache.derby.impl.sql.execute.DistinctScanResultSet;
 import org.apache.derby.impl.sql.execute.GroupedAggregateResultSet;
 import org.apache.derby.impl.sql.execute.HashJoinResultSet;
 import org.apache.derby.impl.sql.execute.HashLeftOuterJoinResultSet;
+import org.apache.derby.impl.sql.execute.HybridHashJoinResultSet;
+import org.apache.derby.impl.sql.execute.HybridHashLeftOuterJoinResultSet;
 import org.apache.derby.impl.sql.execute.HashScanResultSet;
 import org.apache.derby.impl.sql.execute.HashTableResultSet;
 import org.apache.derby.impl.sql.execute.IndexRowToBaseRowResultSet;
@@ -55,6 +57,8 @@ import org.apache.derby.impl.sql.execute.InsertResultSet;
 import org.apache.derby.impl.sql.execute.InsertVTIResultSet;
 import org.apache.derby.impl.sql.execute.LastIndexKeyResultSet;
 import org.apache.derby.impl.sql.execute.MaterializedResultSet;
+import org.apache.derby.impl.sql.execute.MergeJoinResultSet;
+import org.apache.derby.impl.sql.execute.MergeLeftOuterJoinResultSet;
 import org.apache.derby.impl.sql.execute.NestedLoopJoinResultSet;
 import org.apache.derby.impl.sql.execute.NestedLoopLeftOuterJoinResultSet;
 import org.apache.derby.impl.sql.execute.NormalizeResultSet;
@@ -83,6 +87,10 @@ import org.apache.derby.impl.sql.execute.rts.RealDistinctScanStatistics;
 import org.apache.derby.impl.sql.execute.rts.RealGroupedAggregateStatistics;
 import org.apache.derby.impl.sql.execute.rts.RealHashJoinStatistics;
 import org.apache.derby.impl.sql.execute.rts.RealHashLeftOuterJoinStatistics;
+import org.apache.derby.impl.sql.execute.rts.RealHybridHashJoinStatistics;
+import org.apache.derby.impl.sql.execute.rts.RealHybridHashLeftOuterJoinStatistics;
+import org.apache.derby.impl.sql.execute.rts.RealMergeJoinStatistics;
+import org.apache.derby.impl.sql.execute.rts.RealMergeLeftOuterJoinStatistics;
 import org.apache.derby.impl.sql.execute.rts.RealHashScanStatistics;
 import org.apache.derby.impl.sql.execute.rts.RealHashTableStatistics;
 import org.apache.derby.impl.sql.execute.rts.RealIndexRowToBaseRowStatistics;
@@ -487,6 +495,29 @@ public class RealResultSetStatisticsFactory
 											getResultSetStatistics(sars.source)
 										);
 		}
+		else if (rs instanceof HashGroupedAggregateResultSet)
+		{
+			HashGroupedAggregateResultSet hgars =
+				(HashGroupedAggregateResultSet) rs;
+
+			return new RealGroupedAggregateStatistics(
+											hgars.numOpens,
+											hgars.rowsSeen,
+											hgars.rowsFiltered,
+											hgars.constructorTime,
+											hgars.openTime,
+											hgars.nextTime,
+											hgars.closeTime,
+											hgars.resultSetNumber,
+											hgars.rowsInput,
+											false,
+											false,
+											hgars.sortProperties,
+											hgars.optimizerEstimatedRowCount,
+											hgars.optimizerEstimatedCost,
+											getResultSetStatistics(hgars.source)
+										);
+		}
 		else if (rs instanceof GroupedAggregateResultSet)
 		{
 			GroupedAggregateResultSet gars = (GroupedAggregateResultSet) rs;
@@ -691,6 +722,33 @@ public class RealResultSetStatisticsFactory
 											lrs.optimizerEstimatedRowCount,
 											lrs.optimizerEstimatedCost);
 		}
+		else if (rs instanceof HybridHashLeftOuterJoinResultSet)
+		{
+			HybridHashLeftOuterJoinResultSet hhlojrs =
+				(HybridHashLeftOuterJoinResultSet) rs;
+
+			return new RealHybridHashLeftOuterJoinStatistics(
+											hhlojrs.numOpens,
+											hhlojrs.rowsSeen,
+											hhlojrs.rowsFiltered,
+											hhlojrs.constructorTime,
+											hhlojrs.openTime,
+											hhlojrs.nextTime,
+											hhlojrs.closeTime,
+											hhlojrs.resultSetNumber,
+											hhlojrs.rowsSeenLeft,
+											hhlojrs.rowsSeenRight,
+											hhlojrs.rowsReturned,
+											hhlojrs.restrictionTime,
+											hhlojrs.optimizerEstimatedRowCount,
+											hhlojrs.optimizerEstimatedCost,
+											hhlojrs.userSuppliedOptimizerOverrides,
+											getResultSetStatistics(
+												hhlojrs.leftResultSet),
+											getResultSetStatistics(
+												hhlojrs.rightResultSet),
+											hhlojrs.emptyRightRowsReturned);
+		}
 		else if (rs instanceof HashLeftOuterJoinResultSet)
 		{
 			HashLeftOuterJoinResultSet hlojrs =
@@ -718,6 +776,33 @@ public class RealResultSetStatisticsFactory
 												hlojrs.rightResultSet),
 											hlojrs.emptyRightRowsReturned);
 		}
+		else if (rs instanceof MergeLeftOuterJoinResultSet)
+		{
+			MergeLeftOuterJoinResultSet mlojrs =
+				(MergeLeftOuterJoinResultSet) rs;
+
+			return new RealMergeLeftOuterJoinStatistics(
+											mlojrs.numOpens,
+											mlojrs.rowsSeen,
+											mlojrs.rowsFiltered,
+											mlojrs.constructorTime,
+											mlojrs.openTime,
+											mlojrs.nextTime,
+											mlojrs.closeTime,
+											mlojrs.resultSetNumber,
+											mlojrs.rowsSeenLeft,
+											mlojrs.rowsSeenRight,
+											mlojrs.rowsReturned,
+											mlojrs.restrictionTime,
+											mlojrs.optimizerEstimatedRowCount,
+											mlojrs.optimizerEstimatedCost,
+											mlojrs.userSuppliedOptimizerOverrides,
+											getResultSetStatistics(
+												mlojrs.leftResultSet),
+											getResultSetStatistics(
+												mlojrs.rightResultSet),
+											mlojrs.emptyRightRowsReturned);
+		}
 		else if (rs instanceof NestedLoopLeftOuterJoinResultSet)
 		{
 			NestedLoopLeftOuterJoinResultSet nllojrs =
@@ -745,6 +830,33 @@ public class RealResultSetStatisticsFactory
 												nllojrs.rightResultSet),
 											nllojrs.emptyRightRowsReturned);
 		}
+		else if (rs instanceof HybridHashJoinResultSet)
+		{
+			HybridHashJoinResultSet hhjrs = (HybridHashJoinResultSet) rs;
+
+			return new RealHybridHashJoinStatistics(
+											hhjrs.numOpens,
+											hhjrs.rowsSeen,
+											hhjrs.rowsFiltered,
+											hhjrs.constructorTime,
+											hhjrs.openTime,
+											hhjrs.nextTime,
+											hhjrs.closeTime,
+											hhjrs.resultSetNumber,
+											hhjrs.rowsSeenLeft,
+											hhjrs.rowsSeenRight,
+											hhjrs.rowsReturned,
+											hhjrs.restrictionTime,
+											hhjrs.oneRowRightSide,
+											hhjrs.optimizerEstimatedRowCount,
+											hhjrs.optimizerEstimatedCost,
+											hhjrs.userSuppliedOptimizerOverrides,
+											getResultSetStatistics(
+												hhjrs.leftResultSet),
+											getResultSetStatistics(
+												hhjrs.rightResultSet)
+											);
+		}
 		else if (rs instanceof HashJoinResultSet)
 		{
 			HashJoinResultSet hjrs = (HashJoinResultSet) rs;
@@ -772,6 +884,33 @@ public class RealResultSetStatisticsFactory
 												hjrs.rightResultSet)
 											);
 		}
+		else if (rs instanceof MergeJoinResultSet)
+		{
+			MergeJoinResultSet mjrs = (MergeJoinResultSet) rs;
+
+			return new RealMergeJoinStatistics(
+											mjrs.numOpens,
+											mjrs.rowsSeen,
+											mjrs.rowsFiltered,
+											mjrs.constructorTime,
+											mjrs.openTime,
+											mjrs.nextTime,
+											mjrs.closeTime,
+											mjrs.resultSetNumber,
+											mjrs.rowsSeenLeft,
+											mjrs.rowsSeenRight,
+											mjrs.rowsReturned,
+											mjrs.restrictionTime,
+											mjrs.oneRowRightSide,
+											mjrs.optimizerEstimatedRowCount,
+											mjrs.optimizerEstimatedCost,
+											mjrs.userSuppliedOptimizerOverrides,
+											getResultSetStatistics(
+												mjrs.leftResultSet),
+											getResultSetStatistics(
+												mjrs.rightResultSet)
+											);
+		}
 		else if (rs instanceof NestedLoopJoinResultSet)
 		{
 			NestedLoopJoinResultSet nljrs = (NestedLoopJoinResultSet) rs;
@@ -53,7 +53,15 @@ class ScalarAggregateResultSet extends GenericAggregateResultSet
 	protected ExecIndexRow sourceExecIndexRow;
 
 	// Remember whether or not a next() has been satisfied
-	private boolean nextSatisfied;
+	protected boolean nextSatisfied;
+
+	/** Number of rows read from the source at a time */
+	private static final int SOURCE_BATCH_SIZE = 64;
+
+	// the rows read from the source and not accumulated yet
+	private ExecRow[] sourceBatch;
+	private int sourceBatchSize;
+	private int sourceBatchPosition;
 
     /**
 	 * Constructor
@@ -126,6 +134,13 @@ class ScalarAggregateResultSet extends GenericAggregateResultSet
 
 		sourceExecIndexRow = (ExecIndexRow) getRowTemplate().getClone();
 
+		/* Only the first row is needed for the min/max optimization, so
+		 * don't read any further rows from the source then.
+		 */
+		sourceBatch = new ExecRow[singleInputRow ? 1 : SOURCE_BATCH_SIZE];
+		sourceBatchSize = 0;
+		sourceBatchPosition = 0;
+
         source.openCore();
 
 	    isOpen = true;
@@ -255,6 +270,7 @@ class ScalarAggregateResultSet extends GenericAggregateResultSet
 
 	        countOfRows = 0;
 			sourceExecIndexRow = null;
+			sourceBatch = null;
 			source.close();
 
 			super.close();
@@ -339,7 +355,8 @@ class ScalarAggregateResultSet extends GenericAggregateResultSet
 	///////////////////////////////////////////////////////////////////////////////
 
 	/**
-	 * Get a row from the input result set.  
+	 * Get a row from the input result set.  The rows are read from
+	 * the input result set in batches.
 	 *
 	 * @param doClone - true of the row should be cloned
 	 *
@@ -351,8 +368,15 @@ class ScalarAggregateResultSet extends GenericAggregateResultSet
 		ExecRow					sourceRow;
 		ExecIndexRow			inputRow = null;	
 
-		if ((sourceRow = source.getNextRowCore()) != null)
+		if (sourceBatchPosition == sourceBatchSize)
+		{
+			sourceBatchSize = source.getNextRowBatch(sourceBatch);
+			sourceBatchPosition = 0;
+		}
+
+		if (sourceBatchPosition < sourceBatchSize)
 		{
+			sourceRow = sourceBatch[sourceBatchPosition++];
 			rowsInput++;
 			sourceExecIndexRow.execRowToExecIndexRow(
 					doClone ? sourceRow.getClone() : sourceRow);
@@ -378,6 +402,8 @@ class ScalarAggregateResultSet extends GenericAggregateResultSet
 		source.reopenCore();
 		numOpens++;
         countOfRows = 0;
+		sourceBatchSize = 0;
+		sourceBatchPosition = 0;
 		nextSatisfied = false;
 
 		openTime += getElapsedMillis(beginTime);
@@ -36,6 +36,7 @@ import org.apache.derby.iapi.sql.execute.NoPutResultSet;
 import org.apache.derby.iapi.store.access.BackingStoreHashtable;
 import org.apache.derby.iapi.store.access.ConglomerateController;
 import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.PageRangeScan;
 import org.apache.derby.iapi.store.access.Qualifier;
 import org.apache.derby.iapi.store.access.ScanController;
 import org.apache.derby.iapi.store.access.StaticCompiledOpenConglomInfo;
@@ -1195,6 +1196,36 @@ class TableScanResultSet extends ScanResultSet
                 TransactionController.ISOLATION_READ_COMMITTED_NOHOLDLOCK);
 	}
 
+	/**
+	 * Get the open scan of this result set, if its rows may also be read
+	 * by several scans, each in a transaction of its own and limited to a
+	 * range of the pages of the heap. That is the case for a scan of all
+	 * the rows of a heap, other than a temporary one, at an isolation level
+	 * which doesn't keep the read locks.
+	 *
+	 * @return the scan, or null if the rows may not be read in ranges
+	 */
+	PageRangeScan getPageRangeScan()
+	{
+		if (!scanControllerOpened || isKeyed || forUpdate ||
+			conglomId < 0 ||
+			startPosition != null || stopPosition != null ||
+			!(scanController instanceof PageRangeScan))
+		{
+			return null;
+		}
+
+		switch (isolationLevel)
+		{
+			case TransactionController.ISOLATION_READ_UNCOMMITTED:
+			case TransactionController.ISOLATION_READ_COMMITTED:
+			case TransactionController.ISOLATION_READ_COMMITTED_NOHOLDLOCK:
+				return (PageRangeScan) scanController;
+			default:
+				return null;
+		}
+	}
+
 	/**
 	 * Update the number of rows in the scan controller.
 	 *
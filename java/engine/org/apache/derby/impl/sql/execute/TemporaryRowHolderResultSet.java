@@ -503,6 +503,25 @@ class TemporaryRowHolderResultSet implements CursorResultSet, NoPutResultSet, Cl
 		return (ExecRow)null;
 	}
 
+	/**
+	 * Get the next row. The rows are returned one at a time.
+	 *
+	 * @see NoPutResultSet#getNextRowBatch
+	 *
+	 * @exception StandardException on error
+	 */
+	public int getNextRowBatch(ExecRow[] batch)
+		throws StandardException
+	{
+		ExecRow row = getNextRowCore();
+		if (row == null)
+		{
+			return 0;
+		}
+		batch[0] = row;
+		return 1;
+	}
+
 	public void deleteCurrentRow()
 		throws StandardException
 	{
@@ -69,6 +69,10 @@ public class XPLAINUtil {
      public static final String OP_JOIN_HASH                  =   "HASHJOIN";
      public static final String OP_JOIN_NL_LO                 =   "LONLJOIN";
      public static final String OP_JOIN_HASH_LO               =   "LOHASHJOIN";
+     public static final String OP_JOIN_MERGE                 =   "MERGEJOIN";
+     public static final String OP_JOIN_MERGE_LO              =   "LOMERGEJOIN";
+     public static final String OP_JOIN_HYBRID_HASH           =   "HYBRIDHASHJOIN";
+     public static final String OP_JOIN_HYBRID_HASH_LO        =   "LOHYBRIDHASHJOIN";
      public static final String OP_UNION                      =   "UNION";
      public static final String OP_SET                        =   "SET";
      
@@ -114,6 +118,7 @@ public class XPLAINUtil {
      public static final String SCAN_HEAP                     =   "HEAP";
      public static final String SCAN_BTREE                    =   "BTREE";
      public static final String SCAN_SORT                     =   "SORT";
+     public static final String SCAN_HASH                     =   "HASH";
      public static final String SCAN_BITSET_ALL               =   "ALL";
      
      /** the different statement type constants */
@@ -292,6 +297,10 @@ public class XPLAINUtil {
              if(scan_type_property.equalsIgnoreCase(
                  MessageService.getTextMessage(SQLState.STORE_RTS_BTREE))){
                  scan_type = SCAN_BTREE;
+             } else 
+             if(scan_type_property.equalsIgnoreCase(
+                 MessageService.getTextMessage(SQLState.STORE_RTS_HASH))){
+                 scan_type = SCAN_HASH;
              }             
          } else {
              scan_type = null;
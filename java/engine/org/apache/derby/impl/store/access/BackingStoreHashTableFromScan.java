@@ -65,7 +65,7 @@ class BackingStoreHashTableFromScan extends BackingStoreHashtable
      **************************************************************************
      */
     public BackingStoreHashTableFromScan(
-        TransactionController   tc,
+        RAMTransaction          tc,
 		long                    conglomId,
 		int                     open_mode,
         int                     lock_level,
@@ -104,7 +104,7 @@ class BackingStoreHashTableFromScan extends BackingStoreHashtable
         this.includeRowLocations = includeRowLocations;
 
         open_scan =  (ScanManager)
-            tc.openScan(
+            tc.openQueryScan(
                 conglomId,
                 false,
                 open_mode,
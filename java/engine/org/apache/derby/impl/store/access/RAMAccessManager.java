@@ -48,6 +48,7 @@ import org.apache.derby.iapi.store.access.conglomerate.Conglomerate;
 import org.apache.derby.iapi.store.access.conglomerate.ConglomerateFactory;
 import org.apache.derby.iapi.store.access.conglomerate.MethodFactory;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 import org.apache.derby.iapi.services.property.PropertyUtil;
 import org.apache.derby.iapi.store.access.AccessFactory;
 import org.apache.derby.iapi.services.property.PropertyFactory;
@@ -65,6 +66,7 @@ import org.apache.derby.iapi.store.raw.data.DataFactory;
 
 import org.apache.derby.catalog.UUID;
 
+import org.apache.derby.iapi.reference.Property;
 import org.apache.derby.iapi.reference.SQLState;
 import org.apache.derby.iapi.reference.Attribute;
 
@@ -159,6 +161,31 @@ public abstract class RAMAccessManager
      **/
     private CacheManager    conglom_cache;
 
+    /**
+     * The older versions of rows that snapshot reads need, or null if
+     * derby.storage.snapshotReads is not set.
+     **/
+    private VersionStore    version_store;
+
+    /**
+     * Do searches of B-trees skip latching the branch pages, as set by
+     * derby.storage.optimisticIndexSearch?
+     **/
+    private boolean         optimistic_index_search;
+
+    /**
+     * Are the keys of the branch rows of B-trees suffix truncated, as set
+     * by derby.storage.indexSuffixTruncation?
+     **/
+    private boolean         index_suffix_truncation;
+
+    /**
+     * The fill factor of the pages of B-trees loaded bottom up, as set by
+     * derby.storage.indexLoadFillFactor, or 0 if derby.storage.bulkIndexLoad
+     * is not set.
+     **/
+    private int             bulk_index_load_fill_factor;
+
     /**************************************************************************
      * Constructors for This class:
      **************************************************************************
@@ -199,12 +226,55 @@ public abstract class RAMAccessManager
 		return xactProperties;
 	}
 
+    /**
+     * Return the store of older versions of rows.
+     *
+	 * @return The version store, or null if snapshot reads are not enabled.
+     **/
+    VersionStore getVersionStore()
+    {
+        return(version_store);
+    }
+
+    /**
+     * Do searches of B-trees use copies of the branch pages instead of
+     * latching them?
+     *
+	 * @return true if derby.storage.optimisticIndexSearch is set.
+     **/
+    boolean getOptimisticIndexSearch()
+    {
+        return(optimistic_index_search);
+    }
+
+    /**
+     * Do leaf splits of B-trees suffix truncate the key of the new branch
+     * row?
+     *
+	 * @return true if derby.storage.indexSuffixTruncation is set.
+     **/
+    boolean getIndexSuffixTruncation()
+    {
+        return(index_suffix_truncation);
+    }
+
+    /**
+     * Return the fill factor of the pages of B-trees loaded bottom up.
+     *
+	 * @return the percentage of each page to fill, or 0 if
+     *         derby.storage.bulkIndexLoad is not set.
+     **/
+    int getBulkIndexLoadFillFactor()
+    {
+        return(bulk_index_load_fill_factor);
+    }
+
     private void boot_load_conglom_map()
         throws StandardException
     {
         // System.out.println("before new code.");
 
-        conglom_map = new ConglomerateFactory[2];
+        conglom_map = new ConglomerateFactory[3];
 
 		// Find the appropriate factory for the desired implementation.
 		MethodFactory mfactory = findMethodFactoryByImpl("heap");
@@ -229,6 +299,18 @@ public abstract class RAMAccessManager
         conglom_map[ConglomerateFactory.BTREE_FACTORY_ID] = 
             (ConglomerateFactory) mfactory;
 
+		// Find the appropriate factory for the desired implementation.
+		mfactory = findMethodFactoryByImpl(AccessFactoryGlobals.HASH);
+
+		if (mfactory == null || !(mfactory instanceof ConglomerateFactory))
+        {
+			throw StandardException.newException(
+                    SQLState.AM_NO_SUCH_CONGLOMERATE_TYPE,
+                    AccessFactoryGlobals.HASH);
+        }
+        conglom_map[ConglomerateFactory.HASH_FACTORY_ID] = 
+            (ConglomerateFactory) mfactory;
+
         // System.out.println("conglom_map[0] = " + conglom_map[0]);
         // System.out.println("conglom_map[1] = " + conglom_map[1]);
     }
@@ -1058,6 +1140,20 @@ public abstract class RAMAccessManager
 
         conglomCacheInit();
 
+        if (PropertyUtil.getSystemBoolean(Property.SNAPSHOT_READS))
+            version_store = new VersionStore();
+
+        optimistic_index_search =
+            PropertyUtil.getSystemBoolean(Property.OPTIMISTIC_INDEX_SEARCH);
+        index_suffix_truncation =
+            PropertyUtil.getSystemBoolean(Property.INDEX_SUFFIX_TRUNCATION);
+        if (PropertyUtil.getSystemBoolean(Property.BULK_INDEX_LOAD))
+        {
+            bulk_index_load_fill_factor =
+                PropertyUtil.getSystemInt(
+                    Property.INDEX_LOAD_FILL_FACTOR, 10, 100, 100);
+        }
+
         // Read in the conglomerate directory from the conglom conglom
         // Create the conglom conglom from within a separate system xact
         RAMTransaction tc =
@@ -23,6 +23,7 @@ package org.apache.derby.impl.store.access;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Properties;
 
@@ -44,6 +45,7 @@ import org.apache.derby.iapi.store.access.conglomerate.ScanControllerRowSource;
 import org.apache.derby.iapi.store.access.conglomerate.Sort;
 import org.apache.derby.iapi.store.access.conglomerate.SortFactory;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 import org.apache.derby.iapi.store.access.AccessFactory;
 import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
 import org.apache.derby.iapi.store.access.ColumnOrdering;
@@ -144,6 +146,32 @@ public class RAMTransaction
      **/
     private int transaction_lock_level;
 
+    /**
+     * Whether query execution should read snapshots, see
+     * setSnapshotReads().
+     **/
+    private boolean snapshotReads;
+
+    /**
+     * The snapshot that this transaction reads, taken when the transaction
+     * first opens a conglomerate for a snapshot read, released at the end of
+     * the transaction.
+     **/
+    private VersionStore.Snapshot snapshot;
+
+    /**
+     * The controllers which read a snapshot, each holding a reference to
+     * its snapshot, which is released when the controller is closed.  A held
+     * cursor keeps reading its snapshot after the end of the transaction.
+     **/
+    private IdentityHashMap<Object,VersionStore.Snapshot> snapshotReaders;
+
+    /**
+     * The writer which saves the older versions of the rows this
+     * transaction changes, allocated on demand.
+     **/
+    private VersionStore.Writer version_writer;
+
     /**************************************************************************
      * Constructors for This class:
      **************************************************************************
@@ -202,6 +230,7 @@ public class RAMTransaction
             SanityManager.ASSERT(tc.getRawStoreXact().isIdle());
 
         this.context = tc.context;
+        this.snapshotReads = tc.snapshotReads;
 
         // switch the transaction pointer in the context to point to this xact
         this.context.setTransaction(this);
@@ -299,6 +328,15 @@ public class RAMTransaction
             }
         }
 
+        if (closeHeldControllers &&
+            (snapshotReaders != null) && !snapshotReaders.isEmpty())
+        {
+            // just to make sure all the snapshots have been released.
+            for (VersionStore.Snapshot s : snapshotReaders.values())
+                s.release();
+            snapshotReaders.clear();
+        }
+
 		if ((sorts != null) && (!sorts.isEmpty()))
 		{
             if (closeHeldControllers)
@@ -374,6 +412,82 @@ public class RAMTransaction
         return(ret_lock_level);
     }
 
+    /**
+     * Determine whether an open of a conglomerate by query execution should
+     * read a snapshot.
+     * <p>
+     * Only reads of permanent conglomerates by transactions which have
+     * asked for snapshot reads do, and only if the database has snapshot
+     * reads enabled.
+     **/
+    private boolean determine_snapshot_read(
+    Conglomerate    conglom,
+    int             open_mode)
+    {
+        return(
+            snapshotReads &&
+            (accessmanager.getVersionStore() != null) &&
+            ((open_mode & TransactionController.OPENMODE_FORUPDATE) == 0) &&
+            !conglom.isTemporary());
+    }
+
+    /**
+     * Get the snapshot of this transaction, taking it on the first call in
+     * the transaction.
+     **/
+    private VersionStore.Snapshot getSnapshot()
+    {
+        if (snapshot == null)
+            snapshot = accessmanager.getVersionStore().takeSnapshot();
+
+        return(snapshot);
+    }
+
+    /**
+     * Make a controller read the snapshot of this transaction.
+     * <p>
+     * The controller holds its own reference to the snapshot, which is
+     * released when the controller is closed.
+     **/
+    private void setSnapshot(VersionStore.Reader reader)
+    {
+        VersionStore.Snapshot snapshot = getSnapshot();
+
+        if (snapshotReaders == null)
+            snapshotReaders = 
+                new IdentityHashMap<Object,VersionStore.Snapshot>();
+
+        snapshot.retain();
+        snapshotReaders.put(reader, snapshot);
+        reader.setSnapshot(snapshot);
+    }
+
+    /**
+     * Release the reference of a closed controller to its snapshot.
+     **/
+    private void releaseSnapshot(Object reader)
+    {
+        if (snapshotReaders != null)
+        {
+            VersionStore.Snapshot s = snapshotReaders.remove(reader);
+            if (s != null)
+                s.release();
+        }
+    }
+
+    /**
+     * Release the reference of this transaction to its snapshot, at the end
+     * of the transaction, so that the next transaction takes a new one.
+     **/
+    private void endSnapshot()
+    {
+        if (snapshot != null)
+        {
+            snapshot.release();
+            snapshot = null;
+        }
+    }
+
 	private Conglomerate findExistingConglomerate(long conglomId)
 		throws StandardException
 	{
@@ -420,6 +534,7 @@ public class RAMTransaction
     int                             open_mode,
     int                             lock_level,
     int                             isolation_level,
+    boolean                         snapshot_read,
     StaticCompiledOpenConglomInfo   static_info,
     DynamicCompiledOpenConglomInfo  dynamic_info)
 		throws StandardException
@@ -458,6 +573,31 @@ public class RAMTransaction
             }
         }
 
+        if (snapshot_read && determine_snapshot_read(conglom, open_mode))
+        {
+            // a snapshot read takes no row locks, only the intent lock
+            // on the table.
+            ConglomerateController cc = 
+                conglom.open(
+                    this, rawtran, hold, open_mode, 
+                    TransactionController.MODE_RECORD,
+                    accessmanager.record_level_policy[
+                        TransactionController.ISOLATION_READ_UNCOMMITTED],
+                    static_info,
+                    dynamic_info);
+
+            if (cc instanceof VersionStore.Reader)
+            {
+                conglomerateControllers.add(cc);
+                setSnapshot((VersionStore.Reader) cc);
+                return cc;
+            }
+
+            // the conglomerate can't read snapshots, open it again for a
+            // locking read.
+            cc.close();
+        }
+
 		// Get a conglomerate controller.
 		ConglomerateController cc = 
             conglom.open(
@@ -479,6 +619,7 @@ public class RAMTransaction
     int                             open_mode,
     int                             lock_level,
     int                             isolation_level,
+    boolean                         snapshot_read,
     FormatableBitSet                         scanColumnList,
     DataValueDescriptor[]           startKeyValue,
     int                             startSearchOperator,
@@ -511,6 +652,36 @@ public class RAMTransaction
             }
         }
 
+        if (snapshot_read && determine_snapshot_read(conglom, open_mode))
+        {
+            // a snapshot read takes no row locks, only the intent lock
+            // on the table.
+            ScanManager sm =
+                conglom.openScan(
+                    this, rawtran, hold, open_mode,
+                    TransactionController.MODE_RECORD,
+                    accessmanager.record_level_policy[
+                        TransactionController.ISOLATION_READ_UNCOMMITTED],
+                    TransactionController.ISOLATION_READ_UNCOMMITTED,
+                    scanColumnList,
+                    startKeyValue, startSearchOperator,
+                    qualifier,
+                    stopKeyValue, stopSearchOperator,
+                    static_info,
+                    dynamic_info);
+
+            if (sm instanceof VersionStore.Reader)
+            {
+                scanControllers.add(sm);
+                setSnapshot((VersionStore.Reader) sm);
+                return(sm);
+            }
+
+            // the conglomerate can't read snapshots, open it again for a
+            // locking read.
+            sm.close();
+        }
+
 		// Get a scan controller.
 		ScanManager sm =
             conglom.openScan(
@@ -1052,6 +1223,27 @@ public class RAMTransaction
 		// Find the conglomerate.
 		Conglomerate conglom = findExistingConglomerate(conglomId);
 
+        if (determine_snapshot_read(conglom, open_mode))
+        {
+            // like a snapshot scan, the max scan takes no row locks and
+            // sees the rows as they were when the snapshot was taken.  The
+            // scan is closed before returning, so the reference of the
+            // transaction to the snapshot is enough.
+            return(
+                conglom.fetchMaxOnBTree(
+                    this, 
+                    rawtran,
+                    conglomId,
+                    open_mode,
+                    TransactionController.MODE_RECORD,
+                    accessmanager.record_level_policy[
+                        TransactionController.ISOLATION_READ_UNCOMMITTED],
+                    TransactionController.ISOLATION_READ_UNCOMMITTED,
+                    scanColumnList,
+                    fetchRow,
+                    getSnapshot()));
+        }
+
 		// Get a scan controller.
         return(
             conglom.fetchMaxOnBTree(
@@ -1063,7 +1255,8 @@ public class RAMTransaction
                 determine_locking_policy(lock_level, isolation_level),
                 isolation_level,
                 scanColumnList,
-                fetchRow));
+                fetchRow,
+                (VersionStore.Snapshot) null));
     }
 
 
@@ -1271,7 +1464,7 @@ public class RAMTransaction
         return(
             openConglomerate(
                 (Conglomerate) static_info.getConglom(),
-                hold, open_mode, lock_level, isolation_level, 
+                hold, open_mode, lock_level, isolation_level, true,
                 static_info, dynamic_info));
     }
 
@@ -1286,7 +1479,7 @@ public class RAMTransaction
         return(
             openConglomerate(
                 findExistingConglomerate(conglomId),
-                hold, open_mode, lock_level, isolation_level, 
+                hold, open_mode, lock_level, isolation_level, false,
                 (StaticCompiledOpenConglomInfo) null,
                 (DynamicCompiledOpenConglomInfo) null));
 	}
@@ -1560,6 +1753,48 @@ public class RAMTransaction
                 open_mode,
                 lock_level,
                 isolation_level,
+                false,
+                scanColumnList,
+                startKeyValue,
+                startSearchOperator,
+                qualifier,
+                stopKeyValue,
+                stopSearchOperator,
+                (StaticCompiledOpenConglomInfo) null,
+                (DynamicCompiledOpenConglomInfo) null));
+    }
+
+    /**
+     * Open a scan on behalf of query execution.
+     * <p>
+     * Same as openScan(), except that the scan reads a snapshot if the
+     * transaction has asked for snapshot reads.  Used by the hash tables
+     * which language builds from scans.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	ScanController openQueryScan(
+    long                            conglomId,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    int                             isolation_level,
+    FormatableBitSet                scanColumnList,
+    DataValueDescriptor[]           startKeyValue,
+    int                             startSearchOperator,
+    Qualifier                       qualifier[][],
+    DataValueDescriptor[]           stopKeyValue,
+    int                             stopSearchOperator)
+        throws StandardException
+	{
+        return(
+            openScan(
+                findExistingConglomerate(conglomId),
+                hold,
+                open_mode,
+                lock_level,
+                isolation_level,
+                true,
                 scanColumnList,
                 startKeyValue,
                 startSearchOperator,
@@ -1605,6 +1840,7 @@ public class RAMTransaction
                 open_mode,
                 lock_level,
                 isolation_level,
+                true,
                 scanColumnList,
                 startKeyValue,
                 startSearchOperator,
@@ -1935,6 +2171,7 @@ public class RAMTransaction
 		throws StandardException
 	{
 		this.closeControllers(false /* don't close held controllers */ );
+        endSnapshot();
 
         rawtran.commit();
 
@@ -1947,6 +2184,7 @@ public class RAMTransaction
 		throws StandardException
 	{
 		this.closeControllers(false /* don't close held controllers */ );
+        endSnapshot();
 		return rawtran.commitNoSync(commitflag);
 	}
 
@@ -1955,6 +2193,7 @@ public class RAMTransaction
 	{
         invalidateConglomerateCache();
 		this.closeControllers(true /* close all controllers */ );
+        endSnapshot();
 		rawtran.abort();
 
         if (parent_tran != null)
@@ -1997,6 +2236,7 @@ public class RAMTransaction
 		try
 		{
 			this.closeControllers(true /* close all controllers */);
+            endSnapshot();
 			
 			// If there's a transaction, abort it.
 			if (rawtran != null) {
@@ -2050,6 +2290,7 @@ public class RAMTransaction
     boolean onePhase)
 		throws StandardException
     {
+        endSnapshot();
         rawtran.xa_commit(onePhase);
     }
 
@@ -2085,6 +2326,7 @@ public class RAMTransaction
     public void xa_rollback()
         throws StandardException
     {
+        endSnapshot();
         rawtran.xa_rollback();
     }
 
@@ -2175,6 +2417,7 @@ public class RAMTransaction
     public void closeMe(ConglomerateController conglom_control)
     {
         conglomerateControllers.remove(conglom_control);
+        releaseSnapshot(conglom_control);
     }
 
     /**
@@ -2201,6 +2444,7 @@ public class RAMTransaction
     public void closeMe(ScanManager scan)
     {
         scanControllers.remove(scan);
+        releaseSnapshot(scan);
     }
 
     /**
@@ -2376,6 +2620,38 @@ public class RAMTransaction
         return(rawtran);
     }
 
+    public VersionStore getVersionStore()
+    {
+        return(accessmanager.getVersionStore());
+    }
+
+    public boolean getOptimisticIndexSearch()
+    {
+        return(accessmanager.getOptimisticIndexSearch());
+    }
+
+    public boolean getIndexSuffixTruncation()
+    {
+        return(accessmanager.getIndexSuffixTruncation());
+    }
+
+    public int getBulkIndexLoadFillFactor()
+    {
+        return(accessmanager.getBulkIndexLoadFillFactor());
+    }
+
+    public VersionStore.Writer getVersionWriter()
+        throws StandardException
+    {
+        if (version_writer == null || version_writer.isComplete())
+        {
+            version_writer = 
+                accessmanager.getVersionStore().newWriter(rawtran);
+        }
+
+        return(version_writer);
+    }
+
 	public FileResource getFileHandler() {
 		return rawtran.getFileHandler();
 	}
@@ -2405,6 +2681,11 @@ public class RAMTransaction
         rawtran.setNoLockWait(noWait);
     }
 
+    public void setSnapshotReads(boolean snapshotReads)
+    {
+        this.snapshotReads = snapshotReads;
+    }
+
     /**
      * Get string id of the transaction.
      * <p>
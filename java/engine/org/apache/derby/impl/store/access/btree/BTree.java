@@ -411,7 +411,10 @@ public abstract class BTree extends GenericConglomerate
     used to check for uniqueness.  So for a standard SQL non-unique index 
     implementation set "nUniqueColumns" to the same value as "nKeyFields"; and
     for a unique index set "nUniqueColumns" to "nKeyFields" - 1 (ie. don't 
-    include the rowLocationColumn in the uniqueness check).
+    include the rowLocationColumn in the uniqueness check).  A unique index
+    with INCLUDE columns sets "nUniqueColumns" to the number of its key
+    columns, so that neither the INCLUDE columns nor the rowLocationColumn
+    take part in the uniqueness check.
     This property is required.
     <LI>"maintainParentLinks" (boolean)
     Whether the b-tree pages maintain the page number of their parent.  Only
@@ -505,8 +508,10 @@ public abstract class BTree extends GenericConglomerate
 					") expected to equal nKeyFields (" + 
 					nKeyFields + ")");
 			}
-            SanityManager.ASSERT((nUniqueColumns == nKeyFields) || 
-                                 (nUniqueColumns == (nKeyFields - 1)));
+            // a unique index with INCLUDE columns has fewer unique
+            // columns than nKeyFields - 1.
+            SanityManager.ASSERT(
+                (nUniqueColumns > 0) && (nUniqueColumns <= nKeyFields));
         }
 
         // get format id's from each column in template and store it in the
@@ -162,7 +162,9 @@ public class BTreeController extends OpenBTree implements ConglomerateController
                      slot_no > 0; 
                      slot_no--) 
                 {
-                    if (page.isDeletedAtSlot(slot_no))
+                    // a row that a snapshot may still see is kept.
+                    if (page.isDeletedAtSlot(slot_no) &&
+                        !open_btree.isVersioned(page, slot_no))
                     {
                         // try to get an exclusive lock on the row, if we can 
                         // then the row is a committed deleted row and it is 
@@ -358,17 +360,40 @@ public class BTreeController extends OpenBTree implements ConglomerateController
                 (DynamicCompiledOpenConglomInfo) null);
 
 
-            // Get the root page back, and perform a split following the
-            // to-be-inserted key.  The split releases the root page latch.
-            root = ControlRow.get(split_open_btree, BTree.ROOTPAGEID);
+            // The searches which don't latch the branch pages must not
+            // use their copies while the split changes the tree.
+            BranchPageCache cache = getBranchPageCache();
+            boolean         split_done = false;
 
-            if (SanityManager.DEBUG)
-                SanityManager.ASSERT(root.page.isLatched());
+            if (cache != null)
+                cache.beginStructureChange();
+
+            try
+            {
+                // Get the root page back, and perform a split following the
+                // to-be-inserted key.  The split releases the root page latch.
+                root = ControlRow.get(split_open_btree, BTree.ROOTPAGEID);
+
+                if (SanityManager.DEBUG)
+                    SanityManager.ASSERT(root.page.isLatched());
+
+                new_leaf_pageno = 
+                    root.splitFor(
+                        split_open_btree, scratch_template, 
+                        null, rowToInsert, flag);
 
-            new_leaf_pageno = 
-                root.splitFor(
-                    split_open_btree, scratch_template, 
-                    null, rowToInsert, flag);
+                split_done = true;
+            }
+            finally
+            {
+                if (cache != null)
+                {
+                    if (split_done)
+                        cache.endStructureChange();
+                    else
+                        cache.abandonStructureChange();
+                }
+            }
 
             split_open_btree.close();
         }
@@ -718,8 +743,7 @@ public class BTreeController extends OpenBTree implements ConglomerateController
             if (SanityManager.DEBUG)
                 SanityManager.ASSERT(this.container != null);
 
-            targetleaf = (LeafControlRow)
-                ControlRow.get(this, BTree.ROOTPAGEID).search(sp);
+            targetleaf = (LeafControlRow) searchFromRoot(sp);
 
 
             // Row locking - first lock row previous to row being inserted:
@@ -819,19 +843,21 @@ public class BTreeController extends OpenBTree implements ConglomerateController
                         this.getConglomerate().nUniqueColumns)
                     {
                         // The row that we found deleted is exactly the new row.
+                        saveVersion(
+                            rowToInsert, false, (DataValueDescriptor[]) null);
                         targetleaf.page.deleteAtSlot(
                             insert_slot, false, this.btree_undo);
 
                         break;
                     }
-                    else if (this.getConglomerate().nUniqueColumns == 
-                             (this.getConglomerate().nKeyFields - 1))
+                    else if (this.getConglomerate().nUniqueColumns < 
+                             this.getConglomerate().nKeyFields)
                     {
                         // The row that we found deleted has matching keys
                         // which form the unique key fields,
-                        // but the nonkey fields may differ (for now the
-                        // heap rowlocation is the only nonkey field 
-                        // allowed).
+                        // but the nonkey fields may differ (the INCLUDE
+                        // columns of the index, if any, and the heap
+                        // rowlocation).
                         
                         // RESOLVE BT39 (mikem) - when/if heap row location
                         // is not fixed we must handle update failing for
@@ -839,6 +865,19 @@ public class BTreeController extends OpenBTree implements ConglomerateController
                         // if the update fails because of lack of space
                         // an exception is thrown and the statement is 
                         // backed out.  Should not happen very often.
+
+                        // Remember the deleted row, which the snapshots that
+                        // don't see this insert may still see in the slot.
+                        DataValueDescriptor[] old_row = null;
+                        if (getXactMgr().getVersionStore() != null)
+                        {
+                            old_row = 
+                                runtime_mem.get_row_for_export(getRawTran());
+                            targetleaf.page.fetchFromSlot(
+                                (RecordHandle) null, insert_slot, old_row, 
+                                (FetchDescriptor) null, true);
+                        }
+
                         targetleaf.page.deleteAtSlot(
                             insert_slot, false, this.btree_undo);
 
@@ -869,17 +908,24 @@ public class BTreeController extends OpenBTree implements ConglomerateController
                             {
                                 // There are no collated types in the BTree,
                                 // which means that the values currently
-                                // stored in the undeleted row are correct.
-                                // We simply update the row location to point
-                                // to the correct row in the heap.
-                                int rowloc_index =
-                                        this.getConglomerate().nKeyFields - 1;
+                                // stored in the unique fields of the
+                                // undeleted row are correct.  We simply
+                                // update the nonkey fields, ie. the INCLUDE
+                                // columns and the row location to point to
+                                // the correct row in the heap.
+                                int nKeyFields =
+                                        this.getConglomerate().nKeyFields;
+                                for (int i = 
+                                        this.getConglomerate().nUniqueColumns;
+                                     i < nKeyFields; i++)
+                                {
                                 targetleaf.page.updateFieldAtSlot(
-                                    insert_slot, rowloc_index, 
+                                    insert_slot, i, 
                                     (DataValueDescriptor) RowUtil.getColumn(
                                         rowToInsert, 
-                                        (FormatableBitSet) null, rowloc_index),
+                                        (FormatableBitSet) null, i),
                                     this.btree_undo);
+                                }
                             }
                         }
                         catch (StandardException se)
@@ -902,7 +948,11 @@ public class BTreeController extends OpenBTree implements ConglomerateController
                         }
 
                         if (update_succeeded)
+                        {
+                            if (old_row != null)
+                                saveVersion(rowToInsert, false, old_row);
                             break;
+                        }
                     }
                     else
                     {
@@ -943,6 +993,8 @@ public class BTreeController extends OpenBTree implements ConglomerateController
 						AccessFactoryGlobals.BTREE_OVERFLOW_THRESHOLD) != null)
                 {
                     // Insert succeeded, so we're done.
+                    saveVersion(
+                        rowToInsert, false, (DataValueDescriptor[]) null);
 
                     break;
                 }
@@ -1474,9 +1526,9 @@ public class BTreeController extends OpenBTree implements ConglomerateController
      * This routine does an almost bottom up build of a btree.  It assumes
      * all rows arrive in sorted order, and inserts them directly into the
      * next (to the right) spot in the current leaf until there is no space.
-     * Then it calls the generic split code to add the next leaf (RESOLVE - 
-     * in the future we could optimize this to split bottom up rather than
-     * top down for create index).
+     * Then it calls the generic split code to add the next leaf.  If
+     * derby.storage.bulkIndexLoad is set the tree is instead built bottom 
+     * up by BTreeLoader, without any splits.
      *
      * @exception StandardException Standard exception policy.  If conglomerate
 	 *                              supports uniqueness checks and has been 
@@ -1511,6 +1563,21 @@ public class BTreeController extends OpenBTree implements ConglomerateController
 
         try 
         {
+            int fill_factor = xact_manager.getBulkIndexLoadFillFactor();
+
+            if (fill_factor > 0)
+            {
+                num_rows_loaded = 
+                    new BTreeLoader(this, fill_factor).load(rowSource);
+
+                // Loading done, must flush all pages to disk since it is 
+                // unlogged.
+                if (!this.getConglomerate().isTemporary())
+                    container.flushContainer();
+
+                return(num_rows_loaded);
+            }
+
             // Btree must just have been created and empty, so there must
             // be one root leaf page which is empty except for the control row.
             current_leaf = 
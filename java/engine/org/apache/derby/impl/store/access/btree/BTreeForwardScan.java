@@ -407,7 +407,9 @@ public class BTreeForwardScan extends BTreeScan
                 }
 
 
-                if (pos.current_leaf.page.isDeletedAtSlot(pos.current_slot))
+                if (snapshot != null ? 
+                        !snapshotSees(pos, fetch_row) : 
+                        pos.current_leaf.page.isDeletedAtSlot(pos.current_slot))
                 {
                     this.stat_numdeleted_rows_visited++;
                     pos.current_rh_qualified = false;
@@ -0,0 +1,437 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.btree.BTreeLoader
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.btree;
+
+import org.apache.derby.iapi.reference.SQLState;
+
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.error.StandardException;
+
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
+import org.apache.derby.iapi.store.access.RowLocationRetRowSource;
+
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+
+/**
+
+  Bottom up build of a b-tree from sorted rows.
+  <p>
+  Used by BTreeController.load() if derby.storage.bulkIndexLoad is set.  The
+  leaf rows are appended to the rightmost leaf until it is full, then a new
+  leaf is started to its right, and a branch row for the new leaf is
+  appended to the rightmost page of the level above, which is started the
+  same way when it is full in turn.  So every page is filled once, from
+  left to right, and no split is ever done.
+  <p>
+  A page is full when the next row does not fit, or when the given
+  percentage of it is in use, so that later inserts into the tree do not
+  split every page they touch.
+  <p>
+  The root of a b-tree must stay on page BTree.ROOTPAGEID, but the level of
+  the root is only known once all the rows are loaded.  So the tree is
+  built on new pages, and at the end the single page of the top level is
+  moved to the root page, which is empty until then.
+  <p>
+  All the work is done in the transaction doing the load, through the
+  container opened by the load, which is not logged if the conglomerate was
+  created by the transaction.  There are no internal transactions as there
+  are for splits.
+  <p>
+  MT - single thread.  The conglomerate is new and table locked, so only
+  the rightmost page of each level is ever latched, the current leaf for the
+  whole time it is filled, and the others only while a row is added to them.
+
+**/
+
+final class BTreeLoader
+{
+    /** The open b-tree to load. */
+    private final OpenBTree             open_btree;
+
+    /** The percentage of each page to fill. */
+    private final int                   fill_factor;
+
+    /** Are the keys of the new branch rows suffix truncated? */
+    private final boolean               truncate;
+
+    /** The page number of the rightmost page of each level of the tree. */
+    private long[]                      rightmost = new long[8];
+
+    /** The level of the highest page, -1 until the first row is loaded. */
+    private int                         top = -1;
+
+    /** The rightmost leaf, latched while it is filled. */
+    private LeafControlRow              leaf;
+
+    /** Template to fetch the last row of a full leaf into. */
+    private DataValueDescriptor[]       last_leaf_row;
+
+    BTreeLoader(
+    OpenBTree   open_btree,
+    int         fill_factor)
+    {
+        this.open_btree  = open_btree;
+        this.fill_factor = fill_factor;
+        this.truncate    =
+            open_btree.getXactMgr().getIndexSuffixTruncation();
+    }
+
+    /**
+     * Load the rows from the row source.
+     * <p>
+     * The tree must just have been created, with an empty root leaf, and
+     * the rows must arrive in key order, without duplicates if the tree is
+     * unique.
+     *
+	 * @return The number of rows loaded.
+     *
+     * @param rowSource  The sorted rows to load.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    long load(RowLocationRetRowSource rowSource)
+        throws StandardException
+    {
+        long num_rows_loaded = 0;
+
+        try
+        {
+            if (SanityManager.DEBUG)
+            {
+                SanityManager.ASSERT(
+                    rowSource.getValidColumns() == null,
+                    "Does not support partial row");
+            }
+
+			DataValueDescriptor[] row;
+            while ((row = rowSource.getNextRowFromRowSource()) != null)
+            {
+                num_rows_loaded++;
+
+                addLeafRow(row);
+            }
+
+            if (leaf != null)
+            {
+                leaf.release();
+                leaf = null;
+
+                moveTopToRoot();
+            }
+        }
+        finally
+        {
+            if (leaf != null)
+                leaf.release();
+        }
+
+        return(num_rows_loaded);
+    }
+
+    /**
+     * Append a row to the rightmost page of a level, if there is room.
+     *
+	 * @return true if the row was appended, false if the page is full.
+     *
+     * @param control_row  The latched rightmost page.
+     * @param row          The leaf or branch row to append.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean append(
+    ControlRow              control_row,
+    DataValueDescriptor[]   row)
+        throws StandardException
+    {
+        Page page     = control_row.page;
+        int  num_rows = page.recordCount() - 1;
+
+        // Always put at least two rows on a page, as a split would.
+        if (num_rows >= 2 &&
+            (num_rows >= BTree.maxRowsPerPage ||
+             page.getPercentFilled() >= fill_factor))
+        {
+            return(false);
+        }
+
+        if (page.insertAtSlot(
+                num_rows + 1,
+                row,
+                (FormatableBitSet) null,
+                open_btree.btree_undo,
+                Page.INSERT_DEFAULT,
+                AccessFactoryGlobals.BTREE_OVERFLOW_THRESHOLD) != null)
+        {
+            return(true);
+        }
+
+        // Same check as BTreeController.do_load_insert(), a key that does
+        // not fit on a page with at most one other row can't be loaded.
+        if (num_rows <= 1)
+        {
+            throw StandardException.newException(
+                    SQLState.BTREE_NO_SPACE_FOR_KEY);
+        }
+
+        return(false);
+    }
+
+    /**
+     * Add the next leaf row to the tree.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void addLeafRow(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        if (leaf == null)
+        {
+            leaf = LeafControlRow.allocate(open_btree, (ControlRow) null);
+            rightmost[0] = leaf.page.getPageNumber();
+            top = 0;
+        }
+
+        if (append(leaf, row))
+            return;
+
+        // The leaf is full, start a new one to its right.
+        LeafControlRow newleaf =
+            LeafControlRow.allocate(open_btree, (ControlRow) null);
+
+        try
+        {
+            newleaf.linkRight(open_btree, leaf);
+
+            long newleaf_pageno = newleaf.page.getPageNumber();
+
+            BranchRow branchrow;
+            if (truncate)
+            {
+                // The branch row only has to separate the last row of the
+                // full leaf from the first row of the new one.
+                if (last_leaf_row == null)
+                {
+                    last_leaf_row =
+                        open_btree.getConglomerate().createTemplate(
+                            open_btree.getRawTran());
+                }
+
+                leaf.page.fetchFromSlot(
+                    (RecordHandle) null, leaf.page.recordCount() - 1,
+                    last_leaf_row, (FetchDescriptor) null, true);
+
+                branchrow = BranchRow.createTruncatedBranchRowFromOldLeafRows(
+                    last_leaf_row, row, newleaf_pageno,
+                    open_btree.getConglomerate());
+            }
+            else
+            {
+                branchrow =
+                    BranchRow.createBranchRowFromOldLeafRow(
+                        row, newleaf_pageno);
+            }
+
+            long full_leaf_pageno = leaf.page.getPageNumber();
+            leaf.release();
+            leaf = newleaf;
+            rightmost[0] = newleaf_pageno;
+
+            // The row goes on the new leaf before the branch row, which
+            // refers to its columns, is appended above.
+            append(newleaf, row);
+
+            newleaf.setParent(
+                addBranchRow(1, branchrow, newleaf, full_leaf_pageno));
+        }
+        finally
+        {
+            // On success newleaf is the current leaf, released by load().
+            if (leaf != newleaf)
+                newleaf.release();
+        }
+    }
+
+    /**
+     * Add the branch row for a new page to the level above it.
+     * <p>
+     * If the level does not exist yet, the tree grows a level, with the
+     * left sibling of the new page as the leftmost child.  If the rightmost
+     * page of the level is full, a new page is started to its right, with
+     * the new child as its left child, and the key of the branch row goes
+     * up to the next level instead.
+     *
+	 * @return The page number of the new parent of child.
+     *
+     * @param level          The level to add the branch row to.
+     * @param branchrow      The branch row pointing to child.
+     * @param child          The latched new page of level - 1.
+     * @param leftsib_pageno The left sibling of child, which is not latched.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private long addBranchRow(
+    int                 level,
+    BranchRow           branchrow,
+    ControlRow          child,
+    long                leftsib_pageno)
+        throws StandardException
+    {
+        ControlRow       branch    = null;
+        BranchControlRow newbranch = null;
+
+        try
+        {
+            if (level > top)
+            {
+                ControlRow leftchild =
+                    ControlRow.get(open_btree, leftsib_pageno);
+
+                try
+                {
+                    branch =
+                        BranchControlRow.allocate(
+                            open_btree, leftchild, level, (ControlRow) null);
+                    leftchild.setParent(branch.page.getPageNumber());
+                }
+                finally
+                {
+                    leftchild.release();
+                }
+
+                if (level == rightmost.length)
+                {
+                    long[] grown = new long[rightmost.length * 2];
+                    System.arraycopy(rightmost, 0, grown, 0, rightmost.length);
+                    rightmost = grown;
+                }
+                rightmost[level] = branch.page.getPageNumber();
+                top = level;
+            }
+            else
+            {
+                branch = ControlRow.get(open_btree, rightmost[level]);
+            }
+
+            if (append(branch, branchrow.getRow()))
+                return(branch.page.getPageNumber());
+
+            newbranch =
+                BranchControlRow.allocate(
+                    open_btree, child, level, (ControlRow) null);
+            newbranch.linkRight(open_btree, branch);
+
+            long full_branch_pageno = branch.page.getPageNumber();
+            long newbranch_pageno   = newbranch.page.getPageNumber();
+            branch.release();
+            branch = null;
+            rightmost[level] = newbranch_pageno;
+
+            newbranch.setParent(
+                addBranchRow(
+                    level + 1,
+                    branchrow.createBranchRowFromOldBranchRow(newbranch_pageno),
+                    newbranch, full_branch_pageno));
+
+            return(newbranch_pageno);
+        }
+        finally
+        {
+            if (branch != null)
+                branch.release();
+            if (newbranch != null)
+                newbranch.release();
+        }
+    }
+
+    /**
+     * Move the rows of the single page of the top level to the root page,
+     * and free the page.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void moveTopToRoot()
+        throws StandardException
+    {
+        ControlRow root     = ControlRow.get(open_btree, BTree.ROOTPAGEID);
+        ControlRow top_page = null;
+
+        try
+        {
+            top_page = ControlRow.get(open_btree, rightmost[top]);
+
+            if (SanityManager.DEBUG)
+            {
+                SanityManager.ASSERT(root.getIsRoot());
+                SanityManager.ASSERT(root.page.recordCount() == 1);
+                SanityManager.ASSERT(
+                    top_page.getrightSiblingPageNumber() ==
+                        top_page.getleftSiblingPageNumber());
+            }
+
+            if (top > 0)
+            {
+                // Same as growRoot(), construction of the BranchControlRow
+                // invalidates the old leaf control row of the root page.
+                BranchControlRow branchroot =
+                    new BranchControlRow(
+                        open_btree, root.page, top, (ControlRow) null, true,
+                        ((BranchControlRow) top_page).getLeftChildPageno());
+                root = branchroot;
+
+                root.page.updateAtSlot(
+                    0, root.getRow(), (FormatableBitSet) null);
+            }
+
+            top_page.page.copyAndPurge(
+                root.page, 1, top_page.page.recordCount() - 1, 1);
+
+            if (top > 0)
+                ((BranchControlRow) root).fixChildrensParents(open_btree, null);
+
+            // removePage() unlatches the page.
+            open_btree.container.removePage(top_page.page);
+            top_page = null;
+
+            if (SanityManager.DEBUG)
+            {
+                if (SanityManager.DEBUG_ON("enableBtreeConsistencyCheck"))
+                {
+                    root.checkConsistency(open_btree, null, true);
+                }
+            }
+        }
+        finally
+        {
+            root.release();
+            if (top_page != null)
+                top_page.release();
+        }
+    }
+}
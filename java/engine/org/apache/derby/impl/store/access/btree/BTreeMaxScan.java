@@ -68,6 +68,9 @@ To return the maximum row this implementation does the following:
    locked row.
 2) in fetchMax() it loops backward on the last leaf page, locking rows
    as it does so, until it finds the first non-deleted, non-NULL row.
+   A scan which reads a snapshot locks no rows, and instead of the first
+   non-deleted row looks for the first row which exists in the snapshot,
+   as it was in the snapshot.
 3) If it is not successful in this last page search it attempts to latch
    the left sibling page, without waiting to avoid deadlocks with forward
    scans, and continue the search on that page.
@@ -505,7 +508,9 @@ public class BTreeMaxScan extends BTreeScan
                     }
                 }
 
-                if (pos.current_leaf.page.isDeletedAtSlot(pos.current_slot))
+                if (snapshot != null ? 
+                        !snapshotSees(pos, fetch_row) : 
+                        pos.current_leaf.page.isDeletedAtSlot(pos.current_slot))
                 {
                     this.stat_numdeleted_rows_visited++;
                     pos.current_rh_qualified = false;
@@ -120,9 +120,24 @@ class BTreePostCommit implements Serviceable
 
         // Get the root page back, and perform a split following the
         // to-be-inserted key.  The split releases the root page latch.
-        root = ControlRow.get(open_btree, BTree.ROOTPAGEID);
+        BranchPageCache cache = open_btree.getBranchPageCache();
 
-        root.shrinkFor(open_btree, shrink_row);
+        if (cache != null)
+            cache.beginStructureChange();
+
+        try
+        {
+            root = ControlRow.get(open_btree, BTree.ROOTPAGEID);
+
+            root.shrinkFor(open_btree, shrink_row);
+        }
+        finally
+        {
+            // The changes made so far are committed even if the shrink
+            // fails, see performWork().
+            if (cache != null)
+                cache.endStructureChange();
+        }
 
         root = null;
 
@@ -374,7 +389,9 @@ class BTreePostCommit implements Serviceable
                          slot_no > 0; 
                          slot_no--) 
                     {
-                        if (page.isDeletedAtSlot(slot_no))
+                        // a row that a snapshot may still see is kept.
+                        if (page.isDeletedAtSlot(slot_no) &&
+                            !open_btree.isVersioned(page, slot_no))
                         {
 
                             if (page.recordCount() == 2)
@@ -506,7 +523,9 @@ class BTreePostCommit implements Serviceable
                  slot_no > 0; 
                  slot_no--) 
             {
-                if (page.isDeletedAtSlot(slot_no))
+                // a row that a snapshot may still see is kept.
+                if (page.isDeletedAtSlot(slot_no) &&
+                    !open_btree.isVersioned(page, slot_no))
                 {
                     // try to get an exclusive lock on the row, if we can 
                     // then the row is a committed deleted row and it is 
@@ -30,6 +30,7 @@ import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
 import org.apache.derby.iapi.store.access.conglomerate.ScanManager;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 
 import org.apache.derby.iapi.store.access.ConglomerateController;
 import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
@@ -67,7 +68,8 @@ import org.apache.derby.iapi.store.access.BackingStoreHashtable;
 
 **/
 
-public abstract class BTreeScan extends OpenBTree implements ScanManager
+public abstract class BTreeScan extends OpenBTree 
+    implements ScanManager, VersionStore.Reader
 {
 
     /*
@@ -116,6 +118,12 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
      **/
      protected boolean init_useUpdateLocks = false;
 
+    /**
+     * Scratch row used to look up the versions of the rows of the scan
+     * when it reads a snapshot, allocated on demand.
+     **/
+    private DataValueDescriptor[] snapshot_row;
+
     /*
      * There are 5 states a scan can be in.
      *     SCAN_INIT - A scan has started but no positioning has been done.
@@ -358,15 +366,15 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
         {
             // Find the starting page and row slot, must start at root and
             // search either for leftmost leaf, or search for specific key.
-            ControlRow root = ControlRow.get(this, BTree.ROOTPAGEID); 
-
-            // include search of tree in page visited stats.
-            stat_numpages_visited += root.getLevel() + 1;
-
             boolean need_previous_lock = true;
 
             if (init_startKeyValue == null)
             {
+                ControlRow root = ControlRow.get(this, BTree.ROOTPAGEID); 
+
+                // include search of tree in page visited stats.
+                stat_numpages_visited += root.getLevel() + 1;
+
                 // No start given, so position at 0 slot of leftmost leaf page
                 pos.current_leaf = (LeafControlRow) root.searchLeft(this);
 
@@ -389,7 +397,10 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
                         SearchParameters.POSITION_RIGHT_OF_PARTIAL_KEY_MATCH),
                     init_template, this, false);
 
-                pos.current_leaf = (LeafControlRow) root.search(sp);
+                pos.current_leaf = (LeafControlRow) searchFromRoot(sp);
+
+                // include search of tree in page visited stats.
+                stat_numpages_visited += sp.rootLevel + 1;
 
                 pos.current_slot = sp.resultSlot;
                 exact     = sp.resultExact;
@@ -681,6 +692,64 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
     }
 
 
+    /**
+     * Does the snapshot of the scan see the row at the current position?
+     * <p>
+     * Called instead of checking the deleted bit of the row when the scan
+     * reads a snapshot.  The leaf must be latched.  If a transaction that
+     * the snapshot does not see has changed the row, the row is treated as
+     * it was before that change, and fetch_row is set to the row as it was,
+     * if its contents were different.
+     *
+	 * @return true if the row exists in the snapshot.
+     *
+     * @param pos       The position of the row, leaf latched.
+     * @param fetch_row The row fetched from the position, with the columns 
+     *                  of the scan.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    protected boolean snapshotSees(
+    BTreeRowPosition        pos,
+    DataValueDescriptor[]   fetch_row)
+        throws StandardException
+    {
+        boolean deleted = pos.current_leaf.page.isDeletedAtSlot(pos.current_slot);
+
+        if (!snapshot.hasVersions(container.getId()))
+            return(!deleted);
+
+        if (snapshot_row == null)
+            snapshot_row = runtime_mem.get_row_for_export(getRawTran());
+
+        pos.current_leaf.page.fetchFromSlot(
+            (RecordHandle) null, pos.current_slot, snapshot_row, 
+            (FetchDescriptor) null, true);
+
+        VersionStore.Version version = 
+            snapshot.findVersion(
+                new VersionStore.IndexKey(container.getId(), snapshot_row));
+
+        if (version == null)
+            return(!deleted);
+
+        if (!version.existed())
+            return(false);
+
+        DataValueDescriptor[] old_row = version.getRow();
+
+        if (old_row != null)
+        {
+            for (int i = 0; i < fetch_row.length; i++)
+            {
+                if (fetch_row[i] != null)
+                    fetch_row[i].setValue(old_row[i]);
+            }
+        }
+
+        return(true);
+    }
+
     /**
      * process_qualifier - Determine if a row meets all qualifier conditions.
      * <p>
@@ -932,8 +1001,7 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
                     SearchParameters.POSITION_LEFT_OF_PARTIAL_KEY_MATCH,
                     init_template, this, false);
 
-        pos.current_leaf = (LeafControlRow)
-                    ControlRow.get(this, BTree.ROOTPAGEID).search(sp);
+        pos.current_leaf = (LeafControlRow) searchFromRoot(sp);
 
         if (!sp.resultExact && !missing_row_for_key_ok)
         {
@@ -1187,6 +1255,18 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
             } 
             else 
             {
+                if (getXactMgr().getVersionStore() != null)
+                {
+                    DataValueDescriptor[] row = 
+                        runtime_mem.get_row_for_export(getRawTran());
+
+                    scan_position.current_leaf.page.fetchFromSlot(
+                        (RecordHandle) null, scan_position.current_slot,
+                        row, (FetchDescriptor) null, true);
+
+                    saveVersion(row, true, (DataValueDescriptor[]) null);
+                }
+
                 scan_position.current_leaf.page.deleteAtSlot(
                     scan_position.current_slot, true, this.btree_undo);
                 ret_val = true;
@@ -2158,6 +2238,18 @@ public abstract class BTreeScan extends OpenBTree implements ScanManager
         return(scan_position.current_rh);
     }
 
+    /*
+    ** Methods of VersionStore.Reader
+    */
+
+    /**
+     * @see VersionStore.Reader#setSnapshot
+     **/
+    public void setSnapshot(VersionStore.Snapshot snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+
     /*
     ** Standard toString() method.  Prints out current position in scan.
     */
@@ -51,6 +51,9 @@ class BTreeScanInfo implements ScanInfo
     private int     stat_numdeleted_rows_visited    = 0;
     private int     stat_numColumnsFetched          = 0;
     private int     stat_treeHeight                 = 0;
+    private int     stat_numsearches_from_copies    = 0;
+    private int     stat_numsearches_latched        = 0;
+    private int     stat_numsearch_restarts         = 0;
     private FormatableBitSet  stat_validColumns               = null;
 
     /* Constructors for This class: */
@@ -61,6 +64,9 @@ class BTreeScanInfo implements ScanInfo
         stat_numrows_visited            = scan.stat_numrows_visited;
         stat_numrows_qualified          = scan.stat_numrows_qualified;
         stat_numdeleted_rows_visited    = scan.stat_numdeleted_rows_visited;
+        stat_numsearches_from_copies    = scan.stat_numsearches_from_copies;
+        stat_numsearches_latched        = scan.stat_numsearches_latched;
+        stat_numsearch_restarts         = scan.stat_numsearch_restarts;
 
         stat_validColumns = 
             (scan.init_scanColumnList == null ? 
@@ -121,6 +127,18 @@ class BTreeScanInfo implements ScanInfo
      *         - The FormatableBitSet.toString() method called on the validColumns arg.
      *           to the scan, unless validColumns was set to null, and in that
      *           case we will return "all".
+     *     numSearchesFromCopies (btree's only, if 
+     *     derby.storage.optimisticIndexSearch is set)
+     *         - the number of searches from the root which went down the
+     *           copies of the branch pages.
+     *     numSearchesLatched (btree's only, if 
+     *     derby.storage.optimisticIndexSearch is set)
+     *         - the number of searches from the root which latched the 
+     *           branch pages, as they had no valid copies.
+     *     numSearchRestarts (btree's only, if 
+     *     derby.storage.optimisticIndexSearch is set)
+     *         - the number of times a search which went down the copies of
+     *           the branch pages started over because the tree was split.
      *     NOTE - this list will be expanded as more information about the scan
      *            is gathered and returned.
      *
@@ -167,6 +185,24 @@ class BTreeScanInfo implements ScanInfo
 								SQLState.STORE_RTS_ALL) :
                 stat_validColumns.toString()));
 
+        // only scans which searched with the copies of the branch pages
+        // report how the searches went.
+        if (stat_numsearches_from_copies + stat_numsearches_latched > 0)
+        {
+            prop.put(
+                MessageService.getTextMessage(
+                                SQLState.STORE_RTS_NUM_SEARCHES_FROM_COPIES),
+                Integer.toString(stat_numsearches_from_copies));
+            prop.put(
+                MessageService.getTextMessage(
+                                SQLState.STORE_RTS_NUM_SEARCHES_LATCHED),
+                Integer.toString(stat_numsearches_latched));
+            prop.put(
+                MessageService.getTextMessage(
+                                SQLState.STORE_RTS_NUM_SEARCH_RESTARTS),
+                Integer.toString(stat_numsearch_restarts));
+        }
+
         return(prop);
     }
 }
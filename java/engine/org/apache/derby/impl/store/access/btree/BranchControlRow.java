@@ -281,6 +281,12 @@ public class BranchControlRow extends ControlRow
                     (sp.current_fraction) * (((float) 1) / row_count);
             }
 
+            // Keep a copy of the page for the searches which don't latch
+            // the branch pages.
+            BranchPageCache cache = sp.btree.getBranchPageCache();
+            if (cache != null)
+                cache.copy(sp.btree, this);
+
             childpage =
                 this.getChildPageAtSlot(sp.btree, sp.resultSlot);
 
@@ -1254,7 +1260,7 @@ public class BranchControlRow extends ControlRow
      *
      * @exception StandardException Standard exception policy.
      */
-    private static BranchControlRow allocate(
+    static BranchControlRow allocate(
     OpenBTree         open_btree,
     ControlRow        leftchild,
     int               level,
@@ -1319,7 +1325,7 @@ public class BranchControlRow extends ControlRow
      ** <P)
      ** This
 	 **/
-	private void fixChildrensParents(
+	void fixChildrensParents(
     OpenBTree       btree,
     ControlRow      leftchild)
         throws StandardException
@@ -0,0 +1,462 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.btree.BranchPageCache
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.btree;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.error.StandardException;
+
+import org.apache.derby.iapi.store.raw.AuxObject;
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.SQLLongint;
+
+
+/**
+
+  Copies of the branch pages of a b-tree, used to search the tree from the
+  root without latching the branch pages on the way down.
+  <p>
+  Used if derby.storage.optimisticIndexSearch is set.  The cache is the aux
+  object of the container of the tree, so it is shared by all the open
+  b-trees on it, and is thrown away with the container when the container
+  leaves the container cache.
+  <p>
+  The tree has a structure version, which is incremented both before and
+  after every split or shrink of the tree, and a count of the splits and
+  shrinks in progress.  A branch page is only ever changed by a split or a
+  shrink, so as long as the structure version stays the same, and no change
+  is in progress, the branch pages stay the same.  Each copy is tagged with
+  the structure version at the time it was made, and a search:
+  <ol>
+  <li> reads the structure version, and gives up if a change is in progress,
+  <li> follows the copies tagged with that version from the root, without
+  latching anything, until it gets to a page without such a copy, normally
+  the leaf,
+  <li> latches that page, and checks that the structure version has not
+  changed.  If it has, a split may have moved the key to another page, so
+  the search unlatches the page and starts over.
+  </ol>
+  Once the page is latched, the search goes on from there as usual.  A
+  search that gives up, or has to start over too often, latches every page
+  from the root, the way it would without the cache.
+  <p>
+  The copies are made by latched searches, while the branch page is
+  latched.  A copy also keeps the page version of the page it was made
+  from, so that after a split elsewhere in the tree the copy of a page that
+  did not change is tagged with the new structure version instead of being
+  made again.
+  <p>
+  MT - thread safe.  The copies are immutable once made.  The keys in a
+  copy are compared by several threads at the same time, which is safe as
+  the values read from a page are in their stored form, and comparing them
+  only caches derived state.
+
+**/
+
+final class BranchPageCache implements AuxObject
+{
+    /**
+     * The largest number of branch pages copied for one tree.  The upper
+     * levels of the tree are searched the most, and are copied first.
+     **/
+    private static final int MAX_PAGES = 64;
+
+    /**
+     * The number of times a search starts over because of a change of the
+     * structure of the tree, before it latches its way down from the root.
+     **/
+    private static final int MAX_RETRIES = 3;
+
+    /**
+     * A copy of a branch page.
+     **/
+    private static final class Branch
+    {
+        /** The structure version of the tree the copy is valid for. */
+        final long                      version;
+
+        /** The page version of the page the copy was made from. */
+        final long                      pageVersion;
+
+        /** The level of the page in the tree. */
+        final int                       level;
+
+        /** The leftmost child of the page. */
+        final long                      leftChild;
+
+        /** The key of each branch row, in slot order, starting at slot 1. */
+        final DataValueDescriptor[][]   keys;
+
+        /** The child of each branch row, in slot order. */
+        final long[]                    children;
+
+        Branch(
+        long                    version,
+        long                    pageVersion,
+        int                     level,
+        long                    leftChild,
+        DataValueDescriptor[][] keys,
+        long[]                  children)
+        {
+            this.version     = version;
+            this.pageVersion = pageVersion;
+            this.level       = level;
+            this.leftChild   = leftChild;
+            this.keys        = keys;
+            this.children    = children;
+        }
+
+        /**
+         * Find the child page to follow for a search.
+         * <p>
+         * Same binary search as ControlRow.searchForEntry(), over the
+         * copied keys instead of the rows of the page.
+         **/
+        long getChild(
+        SearchParameters    sp,
+        int                 nCompareCols,
+        boolean[]           ascDescInfo)
+            throws StandardException
+        {
+            // the key is right of the branch row at leftslot, and left of
+            // the branch row at rightslot.
+            int leftslot  = 0;
+            int rightslot = keys.length + 1;
+
+            while (leftslot != (rightslot - 1))
+            {
+                int midslot = (leftslot + rightslot) / 2;
+
+                int compare_ret =
+                    ControlRow.compareIndexRowToKey(
+                        keys[midslot - 1], sp.searchKey, nCompareCols,
+                        sp.partial_key_match_op, ascDescInfo);
+
+                if (compare_ret == 0)
+                {
+                    leftslot = midslot;
+                    break;
+                }
+                else if (compare_ret > 0)
+                {
+                    rightslot = midslot;
+                }
+                else
+                {
+                    leftslot  = midslot;
+                }
+            }
+
+            return(leftslot == 0 ? leftChild : children[leftslot - 1]);
+        }
+    }
+
+    /** The structure version of the tree. */
+    private final AtomicLong    version = new AtomicLong();
+
+    /** The number of splits and shrinks of the tree in progress. */
+    private final AtomicInteger changes = new AtomicInteger();
+
+    /** The copies of the branch pages, by page number. */
+    private final ConcurrentHashMap<Long,Branch> branches =
+        new ConcurrentHashMap<Long,Branch>();
+
+    BranchPageCache()
+    {
+    }
+
+    /**************************************************************************
+     * Methods used by the code which changes the structure of the tree:
+     **************************************************************************
+     */
+
+    /**
+     * A split or shrink of the tree is about to change the branch pages.
+     * <p>
+     * Must be followed by a call to endStructureChange() once the change is
+     * committed, or by abandonStructureChange() if it fails.
+     **/
+    void beginStructureChange()
+    {
+        changes.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /**
+     * A split or shrink of the tree is complete.
+     **/
+    void endStructureChange()
+    {
+        version.incrementAndGet();
+        changes.decrementAndGet();
+    }
+
+    /**
+     * A split or shrink of the tree failed.
+     * <p>
+     * Its changes are undone when its transaction is aborted, which happens
+     * later, while handling the error.  The change is left in progress, so
+     * the searches of the tree latch their way down from now on, until the
+     * container leaves the cache.
+     **/
+    void abandonStructureChange()
+    {
+        version.incrementAndGet();
+        branches.clear();
+    }
+
+    /**************************************************************************
+     * Methods used by searches of the tree:
+     **************************************************************************
+     */
+
+    /**
+     * Find the page where a search from the root goes on latched.
+     * <p>
+     * Follows the copies of the branch pages from the root, and returns the
+     * first page that has no valid copy, latched.  Sets sp.rootLevel.
+     *
+	 * @return The latched page to search next, or null if the search must
+     *         latch its way down from the root.
+     *
+     * @param open_btree  The open b-tree to search.
+     * @param sp          The parameters of the search.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    ControlRow descend(
+    OpenBTree           open_btree,
+    SearchParameters    sp)
+        throws StandardException
+    {
+        ContainerHandle container    = open_btree.container;
+        int             nCompareCols =
+            open_btree.getConglomerate().nUniqueColumns;
+        boolean[]       ascDescInfo  =
+            open_btree.getConglomerate().ascDescInfo;
+
+        for (int retry = 0; retry < MAX_RETRIES; retry++)
+        {
+            long v = version.get();
+            if (changes.get() != 0)
+                return(null);
+
+            Branch branch = branches.get(BTree.ROOTPAGEID);
+            if (branch == null || branch.version != v)
+                return(null);
+
+            int  root_level = branch.level;
+            long pageno;
+
+            do
+            {
+                pageno = branch.getChild(sp, nCompareCols, ascDescInfo);
+                branch = branches.get(pageno);
+            } while (branch != null && branch.version == v);
+
+            // Latch the page, then make sure that the tree has not changed
+            // since the search started, in which case the page is still
+            // the one to search.  The page may not even be part of the tree
+            // any more if it has.
+            Page page = container.getPage(pageno);
+
+            if (SanityManager.DEBUG)
+            {
+                // Simulate a split of the tree by another thread while the
+                // page was being latched.
+                if (SanityManager.DEBUG_ON("BranchPageCache.splitWhileLatching"))
+                {
+                    SanityManager.DEBUG_CLEAR(
+                        "BranchPageCache.splitWhileLatching");
+                    beginStructureChange();
+                    endStructureChange();
+                }
+            }
+
+            if (page != null)
+            {
+                if (version.get() == v)
+                {
+                    sp.rootLevel = root_level;
+
+                    return(ControlRow.getControlRowForPage(container, page));
+                }
+
+                page.unlatch();
+            }
+
+            open_btree.stat_numsearch_restarts++;
+        }
+
+        return(null);
+    }
+
+    /**
+     * Copy a branch page, if it has no valid copy yet.
+     * <p>
+     * Called by a search while the page is latched.
+     *
+     * @param open_btree  The open b-tree being searched.
+     * @param branch      The latched branch page.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    void copy(
+    OpenBTree           open_btree,
+    BranchControlRow    branch)
+        throws StandardException
+    {
+        long v = version.get();
+        if (changes.get() != 0)
+            return;
+
+        Page page        = branch.page;
+        Long pageno      = page.getPageNumber();
+        long pageVersion = page.getPageVersion();
+
+        Branch old = branches.get(pageno);
+        Branch copy;
+
+        if (old != null && old.pageVersion == pageVersion)
+        {
+            if (old.version == v)
+                return;
+
+            // The page has not changed, only the version of the tree.
+            copy =
+                new Branch(
+                    v, pageVersion, old.level, old.leftChild,
+                    old.keys, old.children);
+        }
+        else
+        {
+            if (old == null &&
+                branches.size() >= MAX_PAGES && !makeRoom(v, branch))
+            {
+                return;
+            }
+
+            copy = copyPage(open_btree, branch, v, pageVersion);
+        }
+
+        // A split which started since v was read has not changed the page,
+        // as the page is latched, but the copy would be tagged with an old
+        // version.  Don't bother keeping it.
+        if (version.get() == v)
+            branches.put(pageno, copy);
+    }
+
+    /**
+     * Make room for the copy of a branch page by dropping the copies that
+     * are not valid any more, or a copy of a lower page.
+     *
+	 * @return true if there is room for one more copy.
+     **/
+    private boolean makeRoom(
+    long                v,
+    BranchControlRow    branch)
+        throws StandardException
+    {
+        int level = branch.getLevel();
+
+        for (Iterator<Branch> it = branches.values().iterator();
+             it.hasNext();)
+        {
+            Branch b = it.next();
+            if (b.version != v || b.level < level)
+                it.remove();
+        }
+
+        return(branches.size() < MAX_PAGES);
+    }
+
+    private Branch copyPage(
+    OpenBTree           open_btree,
+    BranchControlRow    branch,
+    long                v,
+    long                pageVersion)
+        throws StandardException
+    {
+        Page                    page      = branch.page;
+        int                     nKeyFields =
+            open_btree.getConglomerate().nKeyFields;
+        DataValueDescriptor[]   template  =
+            open_btree.getRuntimeMem().get_template(
+                open_btree.getRawTran());
+
+        int                     num_rows  = page.recordCount() - 1;
+        DataValueDescriptor[][] keys      =
+            new DataValueDescriptor[num_rows][];
+        long[]                  children  = new long[num_rows];
+
+        for (int i = 0; i < num_rows; i++)
+        {
+            // A branch row is the key columns followed by the child page
+            // number.
+            DataValueDescriptor[] row =
+                new DataValueDescriptor[nKeyFields + 1];
+            for (int col = 0; col < nKeyFields; col++)
+                row[col] = template[col].getNewNull();
+            SQLLongint child = new SQLLongint();
+            row[nKeyFields] = child;
+
+            page.fetchFromSlot(
+                (RecordHandle) null, i + 1, row, (FetchDescriptor) null, true);
+
+            keys[i]     = row;
+            children[i] = child.getLong();
+        }
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(page.isLatched());
+        }
+
+        return(
+            new Branch(
+                v, pageVersion, branch.getLevel(),
+                branch.getLeftChildPageno(), keys, children));
+    }
+
+    /**************************************************************************
+     * Public Methods of AuxObject class:
+     **************************************************************************
+     */
+
+    /**
+     * The container is leaving the container cache, drop the copies.
+     **/
+    public void auxObjectInvalidated()
+    {
+        branches.clear();
+    }
+}
@@ -33,6 +33,7 @@ import org.apache.derby.iapi.store.raw.Transaction;
 import org.apache.derby.iapi.types.DataValueDescriptor;
 import org.apache.derby.iapi.types.DataValueFactory;
 import org.apache.derby.iapi.types.SQLLongint;
+import org.apache.derby.iapi.types.StringDataValue;
 
 /**
  * Implements row which is stored in the branch pages of a btree.  A non-suffix
@@ -215,6 +216,121 @@ public class BranchRow
         return(newbranch);
     }
 
+    /**
+     * Create a new branch row to separate two leaf rows, with its key suffix
+     * truncated.  Used by LeafControlRow to manufacture the branch row of a
+     * leaf split if derby.storage.indexSuffixTruncation is set.
+     * <p>
+     * A branch row only needs to be greater than the last row left of the
+     * split, and not greater than the first row right of the split.  If the
+     * first key column in which the two rows differ is an ascending
+     * character column, the new branch row has the shortest prefix of the
+     * value in the right row which is still greater than the value in the
+     * left row, and null in the key columns that follow, other than the
+     * row location.  Otherwise it is the same as
+     * createBranchRowFromOldLeafRow(leafrow, childpageno).
+     * <p>
+     * The same warning as for createBranchRowFromOldLeafRow() applies, the
+     * columns which are not truncated are references to the columns of
+     * leafrow.
+     *
+     * @param prevleafrow  The last leaf row left of the split.
+     * @param leafrow      The first leaf row right of the split.
+     * @param childpageno  The child page number of the new branch row.
+     * @param btree        The conglomerate of the tree.
+     *
+     * @exception StandardException Standard exception policy.
+     */
+    public static BranchRow createTruncatedBranchRowFromOldLeafRows(
+    DataValueDescriptor[]   prevleafrow, 
+    DataValueDescriptor[]   leafrow, 
+    long                    childpageno,
+    BTree                   btree)
+        throws StandardException
+    {
+        BranchRow newbranch = createBranchRowFromOldLeafRow(leafrow, childpageno);
+
+        // The row location is the last column of the key, and is never
+        // truncated.
+        int nKeyCols = Math.min(btree.nUniqueColumns, btree.nKeyFields - 1);
+
+        for (int i = 0; i < nKeyCols; i++)
+        {
+            if (prevleafrow[i].isNull() || leafrow[i].isNull())
+                break;
+
+            int compare_ret = leafrow[i].compare(prevleafrow[i]);
+
+            if (compare_ret == 0)
+                continue;
+
+            if (compare_ret > 0 && 
+                btree.ascDescInfo[i] && 
+                leafrow[i] instanceof StringDataValue)
+            {
+                DataValueDescriptor separator = 
+                    truncate(prevleafrow[i], leafrow[i]);
+
+                if (separator != null)
+                {
+                    newbranch.branchrow[i] = separator;
+
+                    for (int j = i + 1; j < btree.nKeyFields - 1; j++)
+                        newbranch.branchrow[j] = leafrow[j].getNewNull();
+                }
+            }
+
+            break;
+        }
+
+        return(newbranch);
+    }
+
+    /**
+     * Find the shortest prefix of a character value which is greater than
+     * another value.
+     * <p>
+     * The prefix is checked with the compare() of the column, so it is
+     * valid whatever the collation of the column is.
+     *
+	 * @return A new value greater than lesser and less than greater, or null
+     *         if no prefix of greater is.
+     *
+     * @param lesser   The value of the column in the row left of the split.
+     * @param greater  The value of the column in the row right of the split.
+     *
+     * @exception StandardException Standard exception policy.
+     **/
+    private static DataValueDescriptor truncate(
+    DataValueDescriptor lesser,
+    DataValueDescriptor greater)
+        throws StandardException
+    {
+        String lesser_str  = lesser.getString();
+        String greater_str = greater.getString();
+
+        // In the usual case the prefix one character longer than the common
+        // prefix of the two values is the one.
+        int common = 0;
+        while (common < lesser_str.length() && 
+               common < greater_str.length() &&
+               lesser_str.charAt(common) == greater_str.charAt(common))
+        {
+            common++;
+        }
+
+        for (int len = common + 1; len < greater_str.length(); len++)
+        {
+            DataValueDescriptor prefix = greater.getNewNull();
+            prefix.setValue(greater_str.substring(0, len));
+
+            if (prefix.compare(lesser) > 0 && prefix.compare(greater) < 0)
+                return(prefix);
+        }
+
+        return(null);
+    }
+
     /**
      * Return the branch row.
      * <p>
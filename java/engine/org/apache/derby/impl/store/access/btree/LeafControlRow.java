@@ -115,7 +115,7 @@ public class LeafControlRow extends ControlRow
      * 
      * @exception StandardException Standard exception policy.
      */
-    private static LeafControlRow allocate(
+    static LeafControlRow allocate(
     OpenBTree   btree, 
     ControlRow  parent)
         throws StandardException
@@ -606,8 +606,29 @@ public class LeafControlRow extends ControlRow
         // use a fake page number because we don't know the real page 
         // number until the allocate is done, but want to delay the 
         // allocate until we know the insert will succeed.
-        BranchRow branchrow = BranchRow.createBranchRowFromOldLeafRow(
-            split_leaf_row, BranchRow.DUMMY_PAGE_NUMBER);
+        BranchRow branchrow;
+
+        if (splitpoint > 1 && open_btree.getXactMgr().getIndexSuffixTruncation())
+        {
+            // The branch row only has to separate the row left of the split
+            // point from the split point row, so truncate its key.
+            DataValueDescriptor[] prev_leaf_row = 
+                open_btree.getConglomerate().createTemplate(
+                        open_btree.getRawTran());
+
+            this.page.fetchFromSlot(
+                (RecordHandle) null, splitpoint - 1, prev_leaf_row, 
+                (FetchDescriptor) null, true); 
+
+            branchrow = BranchRow.createTruncatedBranchRowFromOldLeafRows(
+                prev_leaf_row, split_leaf_row, BranchRow.DUMMY_PAGE_NUMBER,
+                open_btree.getConglomerate());
+        }
+        else
+        {
+            branchrow = BranchRow.createBranchRowFromOldLeafRow(
+                split_leaf_row, BranchRow.DUMMY_PAGE_NUMBER);
+        }
 
 
         // At this point we have guaranteed there is space in the parent
@@ -29,11 +29,16 @@ import org.apache.derby.iapi.reference.SQLState;
 
 import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
 import org.apache.derby.iapi.store.access.TransactionController;
 import org.apache.derby.iapi.store.access.SpaceInfo;
+import org.apache.derby.iapi.store.raw.AuxObject;
 import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
 import org.apache.derby.iapi.store.raw.LockingPolicy;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
 import org.apache.derby.iapi.store.raw.Transaction;
 
 import org.apache.derby.iapi.types.DataValueDescriptor;
@@ -119,6 +124,21 @@ public class OpenBTree
      **/
     protected OpenConglomerateScratchSpace  runtime_mem;
 
+    /**
+     * The snapshot to read, or null if the rows are read with locks.
+     **/
+    protected VersionStore.Snapshot snapshot;
+
+    /**
+     * Performance counters of the searches from the root which use the
+     * copies of the branch pages: the searches which went down the copies,
+     * the ones which fell back to latching the branch pages, and the number
+     * of times a search started over because the tree was split.
+     **/
+    protected int stat_numsearches_from_copies  = 0;
+    protected int stat_numsearches_latched      = 0;
+    protected int stat_numsearch_restarts       = 0;
+
     /**************************************************************************
      * Public Accessors of This class:
      **************************************************************************
@@ -176,6 +196,147 @@ public class OpenBTree
         return(runtime_mem);
     }
 
+    /**************************************************************************
+     * Methods used to keep the versions of rows that snapshots need:
+     **************************************************************************
+     */
+
+    /**
+     * Save the state of a row before it is changed.
+     * <p>
+     * Called while the leaf is latched, just before a row is inserted,
+     * deleted or made valid again, so that the snapshots which don't see
+     * the change still read the row as it was.  Does nothing unless the
+     * database has snapshot reads enabled.
+     *
+     * @param row       The row after the change, all columns.
+     * @param existed   Did the row exist before the change?
+     * @param old_row   The row before the change if it had other contents
+     *                  in the same slot, else null.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    protected final void saveVersion(
+    DataValueDescriptor[]   row,
+    boolean                 existed,
+    DataValueDescriptor[]   old_row)
+        throws StandardException
+    {
+        if (init_xact_manager.getVersionStore() == null ||
+            init_conglomerate.isTemporary())
+        {
+            return;
+        }
+
+        init_xact_manager.getVersionWriter().saveVersion(
+            new VersionStore.IndexKey(container.getId(), row).copy(),
+            existed,
+            (old_row == null ? 
+                null : 
+                new VersionStore.IndexKey(container.getId(), old_row).copy()));
+    }
+
+    /**
+     * Does a snapshot still need the deleted row at the slot?
+     * <p>
+     * A deleted row must not be purged while it has older versions, as a
+     * snapshot might still see it.
+     *
+     * @param page      The latched leaf page.
+     * @param slot_no   The slot of the row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    protected final boolean isVersioned(Page page, int slot_no)
+        throws StandardException
+    {
+        VersionStore store = init_xact_manager.getVersionStore();
+
+        if (store == null || !store.hasVersions(container.getId()))
+            return(false);
+
+        DataValueDescriptor[] row = runtime_mem.get_row_for_export(init_rawtran);
+
+        page.fetchFromSlot(
+            (RecordHandle) null, slot_no, row, (FetchDescriptor) null, true);
+
+        return(
+            store.hasVersions(
+                container.getId(), 
+                new VersionStore.IndexKey(container.getId(), row)));
+    }
+
+    /**************************************************************************
+     * Methods used to search the tree without latching the branch pages:
+     **************************************************************************
+     */
+
+    /**
+     * Search the tree from the root for the leaf page and slot of a key.
+     * <p>
+     * Same as ControlRow.get(this, BTree.ROOTPAGEID).search(sp), except
+     * that if derby.storage.optimisticIndexSearch is set, the search goes
+     * down the copies of the branch pages kept by the BranchPageCache of the
+     * tree, and latches the first page that has no valid copy, normally the
+     * leaf.  Also sets sp.rootLevel.
+     *
+	 * @return The latched leaf page, with the slot in sp.resultSlot.
+     *
+     * @param sp   The parameters of the search.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    protected final ControlRow searchFromRoot(SearchParameters sp)
+        throws StandardException
+    {
+        BranchPageCache cache = getBranchPageCache();
+
+        if (cache != null)
+        {
+            ControlRow start = cache.descend(this, sp);
+            if (start != null)
+            {
+                stat_numsearches_from_copies++;
+                return(start.search(sp));
+            }
+
+            stat_numsearches_latched++;
+        }
+
+        ControlRow root = ControlRow.get(this, BTree.ROOTPAGEID);
+
+        sp.rootLevel = root.getLevel();
+
+        return(root.search(sp));
+    }
+
+    /**
+     * Get the copies of the branch pages of the tree.
+     * <p>
+     * The cache is created by the first search of the tree once the
+     * container is in the container cache.
+     *
+	 * @return The cache, or null if derby.storage.optimisticIndexSearch is
+     *         not set, or the tree is not open.
+     **/
+    protected final BranchPageCache getBranchPageCache()
+    {
+        // logical undo opens the tree without a transaction manager
+        if (init_xact_manager == null || 
+            !init_xact_manager.getOptimisticIndexSearch() || 
+            container == null)
+        {
+            return(null);
+        }
+
+        AuxObject aux = container.getAuxObject();
+
+        if (aux == null)
+            aux = container.setAuxObject(new BranchPageCache());
+
+        return((aux instanceof BranchPageCache) ? (BranchPageCache) aux : null);
+    }
+
     /**************************************************************************
      * Public Methods of RowCountable class:
      **************************************************************************
@@ -145,6 +145,13 @@ public class SearchParameters
 	**/
 	public float current_fraction;
 
+	/**
+	The level of the root page of the tree, set by OpenBTree.searchFromRoot()
+    when the search starts.  The number of pages on the way down to the leaf
+    is one more.
+	**/
+	public int rootLevel;
+
 	/**
 	Construct search parameters.
 
@@ -35,6 +35,7 @@ import org.apache.derby.impl.store.access.conglomerate.ConglomerateUtil;
 import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
 import org.apache.derby.iapi.store.access.conglomerate.ScanManager;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 
 import org.apache.derby.iapi.store.access.ColumnOrdering;
 import org.apache.derby.iapi.store.access.ConglomerateController;
@@ -690,6 +691,9 @@ public class B2I extends BTree
      *                        parameters work together to describe a "row".
      *
      * @param fetchRow        The row to retrieve the maximum value into.
+     *
+     * @param snapshot        The snapshot to read, or null to read the
+     *                        current rows, locking them.
      *
 	 * @return boolean indicating if a row was found and retrieved or not.
      *
@@ -704,7 +708,8 @@ public class B2I extends BTree
     LockingPolicy           locking_policy,
     int                     isolation_level,
     FormatableBitSet                 scanColumnList,
-    DataValueDescriptor[]   fetchRow)
+    DataValueDescriptor[]   fetchRow,
+    VersionStore.Snapshot   snapshot)
         throws StandardException
     {
         boolean row_exists;
@@ -731,6 +736,9 @@ public class B2I extends BTree
             this, 
             new B2IUndo());
 
+        if (snapshot != null)
+            b2is.setSnapshot(snapshot);
+
         row_exists = b2is.fetchMax(fetchRow);
 
         b2is.close();
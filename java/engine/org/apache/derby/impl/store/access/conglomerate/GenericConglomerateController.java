@@ -28,6 +28,7 @@ import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.error.StandardException; 
 
 import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 
 import org.apache.derby.iapi.store.access.ConglomerateController;
 import org.apache.derby.iapi.store.access.Qualifier;
@@ -45,7 +46,8 @@ import org.apache.derby.iapi.services.io.FormatableBitSet;
 **/
 
 public abstract class GenericConglomerateController 
-    extends GenericController implements ConglomerateController
+    extends GenericController 
+    implements ConglomerateController, VersionStore.Reader
 {
 
     /**************************************************************************
@@ -75,6 +77,19 @@ public abstract class GenericConglomerateController
      **************************************************************************
      */
 
+    /**************************************************************************
+     * Public Methods implementing VersionStore.Reader:
+     **************************************************************************
+     */
+
+    /**
+     * @see VersionStore.Reader#setSnapshot
+     **/
+    public void setSnapshot(VersionStore.Snapshot snapshot)
+    {
+        open_conglom.setSnapshot(snapshot);
+    }
+
     /**************************************************************************
      * Public Methods implementing ConglomerateController:
      **************************************************************************
@@ -189,6 +204,8 @@ public abstract class GenericConglomerateController
         }
         else
         {
+            open_conglom.saveVersion(pos);
+
             // Delete the row 
             pos.current_page.deleteAtSlot(
                 pos.current_slot, true, (LogicalUndo) null);
@@ -295,13 +312,16 @@ public abstract class GenericConglomerateController
         // RESOLVE (STO061) - don't know whether the fetch is for update or not.
         //
         // RESOLVE (mikem) - get rid of new here.
+        FetchDescriptor fetch_desc = 
+            new FetchDescriptor(
+                row.length, validColumns, (Qualifier[][]) null);
+
         boolean ret_val = 
-            (pos.current_page.fetchFromSlot(
-                pos.current_rh, pos.current_slot, 
-                row, 
-                new FetchDescriptor(
-                    row.length, validColumns, (Qualifier[][]) null), 
-                false) != null);
+            (open_conglom.getSnapshot() != null ?
+                open_conglom.fetchVersion(pos, row, fetch_desc) :
+                (pos.current_page.fetchFromSlot(
+                    pos.current_rh, pos.current_slot, 
+                    row, fetch_desc, false) != null));
 
         // RESOLVE (mikem) - should be some way to hide this in the unlock call,
         // and just always make the unlock call.
@@ -400,13 +420,16 @@ public abstract class GenericConglomerateController
         //
         //
         // RESOLVE (mikem) - get rid of new here.
+        FetchDescriptor fetch_desc = 
+            new FetchDescriptor(
+                row.length, validColumns, (Qualifier[][]) null);
+
         boolean ret_val = 
-            (pos.current_page.fetchFromSlot(
-                pos.current_rh, pos.current_slot, 
-                row, 
-                new FetchDescriptor(
-                    row.length, validColumns, (Qualifier[][]) null), 
-                false) != null);
+            (open_conglom.getSnapshot() != null ?
+                open_conglom.fetchVersion(pos, row, fetch_desc) :
+                (pos.current_page.fetchFromSlot(
+                    pos.current_rh, pos.current_slot, 
+                    row, fetch_desc, false) != null));
 
         // RESOLVE (mikem) - should be some way to hide this in the unlock call,
         // and just always make the unlock call.
@@ -482,6 +505,8 @@ public abstract class GenericConglomerateController
         }
         else
         {
+            open_conglom.saveVersion(pos);
+
             // Update the record.  
             pos.current_page.updateAtSlot(pos.current_slot, row, validColumns);
         }
@@ -29,6 +29,7 @@ import org.apache.derby.iapi.error.StandardException;
 
 import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
 import org.apache.derby.iapi.store.access.conglomerate.ScanManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
 
 import org.apache.derby.iapi.store.access.Qualifier;
 import org.apache.derby.iapi.store.access.RowUtil;
@@ -99,7 +100,7 @@ positionAtDoneScan()
 **/
 
 public abstract class GenericScanController 
-    extends GenericController implements ScanManager
+    extends GenericController implements ScanManager, VersionStore.Reader
 {
 
     /**************************************************************************
@@ -756,13 +757,22 @@ public abstract class GenericScanController
 
                 // fetchFromSlot returns null if row does not qualify.
 
-                scan_position.current_rh_qualified =
-                    (scan_position.current_page.fetchFromSlot(
-                        scan_position.current_rh, 
-                        scan_position.current_slot, 
-                        fetch_row, 
-                        init_fetchDesc,
-                        false) != null);
+                if (open_conglom.getSnapshot() != null)
+                {
+                    scan_position.current_rh_qualified =
+                        open_conglom.fetchVersion(
+                            scan_position, fetch_row, init_fetchDesc);
+                }
+                else
+                {
+                    scan_position.current_rh_qualified =
+                        (scan_position.current_page.fetchFromSlot(
+                            scan_position.current_rh, 
+                            scan_position.current_slot, 
+                            fetch_row, 
+                            init_fetchDesc,
+                            false) != null);
+                }
 
                 if (scan_position.current_rh_qualified)
                 {
@@ -993,6 +1003,19 @@ public abstract class GenericScanController
         scan_position = pos;
     }
 
+    /**************************************************************************
+     * Public Methods implementing VersionStore.Reader:
+     **************************************************************************
+     */
+
+    /**
+     * @see VersionStore.Reader#setSnapshot
+     **/
+    public void setSnapshot(VersionStore.Snapshot snapshot)
+    {
+        open_conglom.setSnapshot(snapshot);
+    }
+
     /**************************************************************************
      * Public Methods implementing ScanController:
      **************************************************************************
@@ -1119,6 +1142,8 @@ public abstract class GenericScanController
         }
         else
         {
+            open_conglom.saveVersion(scan_position);
+
             // Delete the row 
             scan_position.current_page.deleteAtSlot(
                 scan_position.current_slot, true, (LogicalUndo) null);
@@ -1391,6 +1416,7 @@ public abstract class GenericScanController
         if (page.isDeletedAtSlot(slot)) {
             ret_val = false;
         } else {
+            open_conglom.saveVersion(scan_position);
             page.updateAtSlot(slot, row, validColumns);
             ret_val = true;
         }
@@ -1441,12 +1467,14 @@ public abstract class GenericScanController
         // or the qualifier evaluates to false.
         
         boolean ret_val = 
-            (scan_position.current_page.fetchFromSlot(
-                scan_position.current_rh, 
-                scan_position.current_slot, 
-                row,
-                init_fetchDesc,
-                false) != null);
+            (open_conglom.getSnapshot() != null ?
+                open_conglom.fetchVersion(scan_position, row, init_fetchDesc) :
+                (scan_position.current_page.fetchFromSlot(
+                    scan_position.current_rh, 
+                    scan_position.current_slot, 
+                    row,
+                    init_fetchDesc,
+                    false) != null));
 
         scan_position.unlatch();
 
@@ -1514,13 +1542,24 @@ public abstract class GenericScanController
         }
 
         // RESOLVE (mikem) - should this call apply the qualifiers again?
-        RecordHandle rh = 
-            scan_position.current_page.fetchFromSlot(
-                scan_position.current_rh, 
-                scan_position.current_slot, 
-                row, 
-                qualify ? init_fetchDesc : null, 
-                false);
+        RecordHandle rh;
+        if (open_conglom.getSnapshot() != null)
+        {
+            rh = 
+                open_conglom.fetchVersion(
+                    scan_position, row, qualify ? init_fetchDesc : null) ?
+                scan_position.current_rh : null;
+        }
+        else
+        {
+            rh = 
+                scan_position.current_page.fetchFromSlot(
+                    scan_position.current_rh, 
+                    scan_position.current_slot, 
+                    row, 
+                    qualify ? init_fetchDesc : null, 
+                    false);
+        }
 
         scan_position.unlatch();
 
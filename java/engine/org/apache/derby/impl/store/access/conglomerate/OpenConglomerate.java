@@ -29,15 +29,21 @@ import org.apache.derby.iapi.error.StandardException;
 
 import org.apache.derby.iapi.store.access.conglomerate.Conglomerate;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
+
+import org.apache.derby.iapi.services.io.FormatableBitSet;
 
 import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.Qualifier;
 import org.apache.derby.iapi.store.access.RowUtil;
 import org.apache.derby.iapi.store.access.SpaceInfo;
 import org.apache.derby.iapi.store.access.TransactionController;
 
 import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
 import org.apache.derby.iapi.store.raw.LockingPolicy;
 import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
 import org.apache.derby.iapi.store.raw.Transaction;
 
 import org.apache.derby.iapi.types.DataValueDescriptor;
@@ -99,6 +105,11 @@ public abstract class OpenConglomerate
      **/
     private ContainerHandle container;
 
+    /**
+     * The snapshot to read, or null if the rows are read with locks.
+     **/
+    private VersionStore.Snapshot snapshot;
+
     /**************************************************************************
      * Constructors for This class:
      **************************************************************************
@@ -620,6 +631,143 @@ public abstract class OpenConglomerate
                     pos.current_rh_qualified);
     }
 
+    /**
+     * Fetch the row at the position as the snapshot sees it.
+     * <p>
+     * Called instead of fetchFromSlot() when the conglomerate reads a
+     * snapshot.  The page must be latched.  If a transaction that the
+     * snapshot does not see has changed the row, the row is returned as it
+     * was before that change, with the qualifiers applied to it.
+     *
+	 * @return true if the row exists in the snapshot and qualifies.
+     *
+     * @param pos           The position of the row, page latched.
+     * @param row           The row to fetch the columns into.
+     * @param fetch_desc    The columns to fetch and the qualifiers to apply,
+     *                      or null to fetch all the columns.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public boolean fetchVersion(
+    RowPosition             pos,
+    DataValueDescriptor[]   row,
+    FetchDescriptor         fetch_desc)
+        throws StandardException
+    {
+        VersionStore.Version version = 
+            snapshot.hasVersions(container.getId()) ? 
+                snapshot.findVersion(pos.current_rh) : null;
+
+        if (version == null)
+        {
+            return(
+                pos.current_page.fetchFromSlot(
+                    pos.current_rh, pos.current_slot, row, fetch_desc, 
+                    false) != null);
+        }
+
+        if (!version.existed())
+            return(false);
+
+        DataValueDescriptor[] old_row      = version.getRow();
+        FormatableBitSet      validColumns = 
+            (fetch_desc == null ? null : fetch_desc.getValidColumns());
+
+        for (int i = 0; i < row.length && i < old_row.length; i++)
+        {
+            if (row[i] != null &&
+                (validColumns == null || 
+                 (i < validColumns.getLength() && validColumns.isSet(i))))
+            {
+                row[i].setValue(old_row[i]);
+            }
+        }
+
+        Qualifier[][] qual_list = 
+            (fetch_desc == null ? null : fetch_desc.getQualifierList());
+
+        return(qual_list == null || RowUtil.qualifyRow(row, qual_list));
+    }
+
+    /**
+     * Save the row at the position before it is changed.
+     * <p>
+     * Called while the page is latched and the row is locked for write,
+     * just before the row is updated or deleted, so that the snapshots
+     * which don't see the change can still read the row.  Does nothing
+     * unless the database has snapshot reads enabled.
+     *
+     * @param pos   The position of the row, page latched.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public void saveVersion(RowPosition pos)
+        throws StandardException
+    {
+        if (init_xact_manager.getVersionStore() == null ||
+            init_conglomerate.isTemporary())
+        {
+            return;
+        }
+
+        VersionStore.Writer writer = init_xact_manager.getVersionWriter();
+
+        if (writer.hasSaved(pos.current_rh))
+            return;
+
+        DataValueDescriptor[] row = runtime_mem.get_row_for_export(init_rawtran);
+
+        pos.current_page.fetchFromSlot(
+            pos.current_rh, pos.current_slot, row, (FetchDescriptor) null, 
+            true);
+
+        // the row is kept after the latch is released, so it must not
+        // refer to the page.
+        for (int i = 0; i < row.length; i++)
+            row[i] = row[i].cloneValue(true);
+
+        writer.saveVersion(pos.current_rh, row);
+    }
+
+    /**
+     * Record that a row has been inserted.
+     * <p>
+     * Called while the page is still latched after the insert, so that the
+     * snapshots which don't see the insert skip the row.  Does nothing
+     * unless the database has snapshot reads enabled.
+     *
+     * @param rh    The record handle of the new row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public void saveInsertVersion(RecordHandle rh)
+        throws StandardException
+    {
+        if (init_xact_manager.getVersionStore() == null ||
+            init_conglomerate.isTemporary())
+        {
+            return;
+        }
+
+        init_xact_manager.getVersionWriter().saveVersion(
+            rh, (DataValueDescriptor[]) null);
+    }
+
+    /**
+     * Does a snapshot still need the row?
+     * <p>
+     * A deleted row must not be purged while it has older versions, as a
+     * snapshot might still see it.
+     *
+     * @param rh    The record handle of the row.
+     **/
+    public boolean isVersioned(RecordHandle rh)
+    {
+        VersionStore store = init_xact_manager.getVersionStore();
+
+        return(store != null && store.hasVersions(rh.getContainerId(), rh));
+    }
+
 
     /**************************************************************************
      * Public Methods implementing ConglomPropertyQueryable Interface: 
@@ -754,6 +902,16 @@ public abstract class OpenConglomerate
         return(runtime_mem);
     }
 
+    public final VersionStore.Snapshot getSnapshot()
+    {
+        return(snapshot);
+    }
+
+    public final void setSnapshot(VersionStore.Snapshot snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+
     /**************************************************************************
      * Public Methods implementing some ConglomerateController Interfaces: 
      **************************************************************************
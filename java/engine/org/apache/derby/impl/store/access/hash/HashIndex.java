@@ -0,0 +1,1097 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.HashIndex
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Properties;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.cache.ClassSize;
+import org.apache.derby.iapi.services.io.FormatIdUtil;
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+import org.apache.derby.iapi.services.io.Storable;
+import org.apache.derby.iapi.services.io.StoredFormatIds;
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
+import org.apache.derby.iapi.store.access.ColumnOrdering;
+import org.apache.derby.iapi.store.access.ConglomerateController;
+import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.RowLocationRetRowSource;
+import org.apache.derby.iapi.store.access.StaticCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.StoreCostController;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.store.access.conglomerate.Conglomerate;
+import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
+import org.apache.derby.iapi.store.access.conglomerate.ScanManager;
+import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.conglomerate.VersionStore;
+
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.ContainerKey;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.LockingPolicy;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RawStoreFactory;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.SQLInteger;
+import org.apache.derby.iapi.types.SQLLongint;
+import org.apache.derby.iapi.types.StringDataValue;
+
+import org.apache.derby.impl.store.access.conglomerate.ConglomerateUtil;
+import org.apache.derby.impl.store.access.conglomerate.GenericConglomerate;
+import org.apache.derby.impl.store.access.conglomerate.OpenConglomerateScratchSpace;
+
+/**
+ * @derby.formatId ACCESS_HASH_V1_ID
+ *
+ * @derby.purpose   The tag that describes the on disk representation of the
+ *            hash index conglomerate object.  The object is stored in
+ *            slot 0 of the meta page of the container, and in the
+ *            conglomerate directory.
+ *
+ * @derby.upgrade   This is the current version, no upgrade necessary.
+ *
+ * @derby.diskLayout
+ *     format_of_this_conlgomerate(byte[])
+ *     segmentid(int)
+ *     containerid(long)
+ *     number_of_columns(int)
+ *     array_of_format_ids(byte[][])
+ *     collation_ids(compressed array of ints)
+ *     nKeyFields(int)
+ *     nUniqueColumns(int)
+ *     uniqueWithDuplicateNulls(boolean)
+ *     baseConglomerateId(long)
+ *     rowLocationColumn(int)
+ **/
+
+/**
+
+  A hash index is a secondary index on a base conglomerate which only
+  supports lookups of all its key columns by equality, stored as an
+  extendible hash table on the pages of one container.
+  <p>
+  The rows of the index look like the rows of a b-tree secondary index, the
+  key columns followed by the RowLocation of the base row.  The hash code of
+  a row is computed from its key columns, so all the rows with the same key
+  are in the same bucket.
+  <p>
+  <b>Layout</b>
+  <p>
+  The meta page, the first page of the container, holds this object in slot
+  0, the depth of the directory in slot 1, and from slot 2 on the page
+  numbers of the directory pages.  The directory is an array of 2^depth page
+  numbers, DIRECTORY_ENTRIES_PER_PAGE to a page, one row per entry, and a row
+  whose hash code has the low order bits i is in the bucket whose primary
+  page is in entry i.
+  <p>
+  Each bucket page has a control row in slot 0 followed by the index rows,
+  which are kept in the order of their hash codes so that a page can be
+  searched by binary search.  The control row of a primary page holds the
+  local depth d of the bucket, the low order d bits common to the hash codes
+  of all the rows in it, and the page number of the first overflow page of
+  the bucket.  The control row of an overflow page holds OVERFLOW_PAGE
+  instead of a depth, the page number of its primary page, and the page
+  number of the next overflow page.
+  <p>
+  <b>Structure changes</b>
+  <p>
+  When a row does not fit in its bucket, committed deleted rows are purged
+  from the bucket, or else the bucket is split in two on the next bit of the
+  hash codes, doubling the directory first if the bucket already uses all
+  its bits.  A bucket which holds the rows of a single hash code, or which
+  has reached MAX_DEPTH, gets an overflow page instead.  Like a b-tree split
+  all this is done in an internal transaction which is committed right away,
+  so rows of the user transaction may move to other pages, and undo of
+  inserts and deletes is logical (see HashIndexUndo).  Buckets are never
+  merged and pages are never freed, so a page that was the primary page of a
+  bucket always stays the primary page of the bucket holding some of the hash
+  codes it used to hold.
+  <p>
+  <b>Latching</b>
+  <p>
+  Latches are always requested in the order: meta page, directory pages,
+  primary page, overflow pages in the order of the chain.  The directory
+  pages are only read or written with the meta page latched, and a structure
+  change keeps the meta page latched until its internal transaction commits.
+  <p>
+  Lookups use a copy of the directory cached in this object.  As an entry of
+  any version of the directory points to a primary page which still holds
+  some of the hash codes of the entry, a lookup latches the page from the
+  cached directory and checks the bits in its control row, and only reads
+  the directory again if the page no longer holds the hash code.
+
+**/
+
+public class HashIndex
+    extends    GenericConglomerate
+    implements Conglomerate, StaticCompiledOpenConglomInfo
+{
+    /**************************************************************************
+     * Public Constants of HashIndex class:
+     **************************************************************************
+     */
+
+    public static final String PROPERTY_BASECONGLOMID = "baseConglomerateId";
+    public static final String PROPERTY_ROWLOCCOLUMN  = "rowLocationColumn";
+    public static final String PROPERTY_NKEYFIELDS    = "nKeyFields";
+    public static final String PROPERTY_NUNIQUECOLUMNS = "nUniqueColumns";
+    public static final String PROPERTY_UNIQUE_WITH_DUPLICATE_NULLS
+        = "uniqueWithDuplicateNulls";
+
+    /**************************************************************************
+     * Constants of the page layout:
+     **************************************************************************
+     */
+
+    /** The page holding the conglomerate and the directory page numbers. */
+    static final long META_PAGE = ContainerHandle.FIRST_PAGE_NUMBER;
+
+    /** Slot of the meta page holding this object. */
+    static final int CONGLOM_SLOT = 0;
+
+    /** Slot of the meta page holding the depth of the directory. */
+    static final int DEPTH_SLOT = 1;
+
+    /** Slot of the meta page holding the first directory page number. */
+    static final int FIRST_DIRECTORY_SLOT = 2;
+
+    /** The number of directory entries on a directory page. */
+    static final int DIRECTORY_ENTRIES_PER_PAGE = 128;
+
+    /**
+     * The maximum depth of the directory, buckets of this depth get overflow
+     * pages instead of being split.  2^13 entries use 64 directory pages.
+     */
+    static final int MAX_DEPTH = 13;
+
+    /** The columns of the control row of a bucket page. */
+    static final int CR_DEPTH = 0;
+    static final int CR_BITS  = 1;
+    static final int CR_NEXT  = 2;
+
+    /** The depth in the control row of an overflow page. */
+    static final int OVERFLOW_PAGE = -1;
+
+    /** The next page number of the last page of a bucket. */
+    static final long NO_PAGE = -1;
+
+    /**************************************************************************
+     * Fields of HashIndex class:
+     **************************************************************************
+     */
+
+    /**
+     * Format id of the conglomerate.
+     **/
+    private int conglom_format_id;
+
+    private ContainerKey id;
+
+    /**
+     * The format id's of each of the columns in the index.
+     **/
+    int[] format_ids;
+
+    /**
+     * The array of collation id's for each column in the template.
+     **/
+    int[] collation_ids;
+
+    /**
+     * Tells if there is at least one column in the conglomerate whose
+     * collation isn't StringDataValue.COLLATION_TYPE_UCS_BASIC.
+     */
+    private boolean hasCollatedTypes;
+
+    /**
+     * The number of columns in the index, including the RowLocation.
+     **/
+    int nKeyFields;
+
+    /**
+     * The number of leading columns compared for uniqueness, nKeyFields if
+     * the index is not unique.
+     **/
+    int nUniqueColumns;
+
+    /**
+     * Are rows with a null key column exempt from the uniqueness check?
+     **/
+    boolean uniqueWithDuplicateNulls;
+
+    /**
+     * The conglomerate id of the base table, used as the namespace of the
+     * row locks.
+     **/
+    long baseConglomerateId;
+
+    /**
+     * The column holding the RowLocation of the base row, the last one.
+     **/
+    int rowLocationColumn;
+
+    /**
+     * The cached copy of the directory, null if it must be read again.
+     **/
+    private volatile Directory directory;
+
+    private static final int BASE_MEMORY_USAGE =
+        ClassSize.estimateBaseFromCatalog(HashIndex.class);
+    private static final int CONTAINER_KEY_MEMORY_USAGE =
+        ClassSize.estimateBaseFromCatalog(ContainerKey.class);
+
+    public int estimateMemoryUsage()
+    {
+        int sz = BASE_MEMORY_USAGE;
+
+        if (null != id)
+            sz += CONTAINER_KEY_MEMORY_USAGE;
+        if (null != format_ids)
+            sz += 2 * format_ids.length * ClassSize.getIntSize();
+        return sz;
+    }
+
+    /**
+     * An immutable version of the directory.
+     **/
+    static final class Directory
+    {
+        final int       depth;
+        final long[]    pages;
+
+        Directory(int depth, long[] pages)
+        {
+            this.depth = depth;
+            this.pages = pages;
+        }
+    }
+
+    /**************************************************************************
+     * Constructors for This class:
+     **************************************************************************
+     */
+
+    /**
+     * Zero arg constructor for Monitor to create empty object.
+     **/
+    public HashIndex()
+    {
+    }
+
+    /**************************************************************************
+     * Private/Protected methods of This class:
+     **************************************************************************
+     */
+
+    private static String getRequiredProperty(
+    Properties  properties,
+    String      name)
+        throws StandardException
+    {
+        String value = (properties == null ? null : properties.getProperty(name));
+
+        if (value == null)
+        {
+            throw(StandardException.newException(
+                    SQLState.BTREE_PROPERTY_NOT_FOUND, name));
+        }
+
+        return(value);
+    }
+
+    /**
+     * Create an empty hash index.
+     * <p>
+     * The following properties are required, and are the same as for a
+     * b-tree secondary index (see B2I#create):
+     * <UL>
+     * <LI> "baseConglomerateId" (long).  The conglomerate id of the base
+     *      table, which is only used as a namespace for row locks.
+     * <LI> "rowLocationColumn" (integer).  The column holding the
+     *      RowLocation of the base row, which must be the last column.
+     * <LI> "nKeyFields" (integer).  The number of columns in the index.
+     * <LI> "nUniqueColumns" (integer).  The number of leading columns which
+     *      are compared for uniqueness, nKeyFields for a non unique index.
+     * </UL>
+     * "uniqueWithDuplicateNulls" is optional.
+     * <p>
+     * The container gets a meta page, a directory of depth 0 on one
+     * directory page, and one empty bucket.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	void create(
+    TransactionManager      xact_manager,
+    int                     segmentId,
+    long                    input_containerid,
+    DataValueDescriptor[]   template,
+	ColumnOrdering[]        columnOrder,
+    int[]                   collationIds,
+    Properties              properties,
+	int                     tmpFlag)
+		throws StandardException
+	{
+        Transaction rawtran = xact_manager.getRawStoreXact();
+
+        baseConglomerateId =
+            Long.parseLong(
+                getRequiredProperty(properties, PROPERTY_BASECONGLOMID));
+        rowLocationColumn =
+            Integer.parseInt(
+                getRequiredProperty(properties, PROPERTY_ROWLOCCOLUMN));
+        nKeyFields =
+            Integer.parseInt(
+                getRequiredProperty(properties, PROPERTY_NKEYFIELDS));
+        nUniqueColumns =
+            Integer.parseInt(
+                getRequiredProperty(properties, PROPERTY_NUNIQUECOLUMNS));
+        uniqueWithDuplicateNulls =
+            Boolean.valueOf(
+                properties.getProperty(
+                    PROPERTY_UNIQUE_WITH_DUPLICATE_NULLS,
+                    "false")).booleanValue();
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(template.length == nKeyFields,
+                "template.length (" + template.length +
+                ") expected to equal nKeyFields (" + nKeyFields + ")");
+            SanityManager.ASSERT(rowLocationColumn == template.length - 1,
+                "rowLocationColumn is not the last column in the index");
+            SanityManager.ASSERT((nUniqueColumns == nKeyFields) ||
+                                 (nUniqueColumns == (nKeyFields - 1)));
+        }
+
+        // get format id's from each column in template and store it in the
+        // conglomerate state.
+        format_ids = ConglomerateUtil.createFormatIds(template);
+        conglom_format_id = getTypeFormatId();
+
+        // get collation ids from input collation ids, store it in the
+        // conglom state.
+        collation_ids =
+            ConglomerateUtil.createCollationIds(template.length, collationIds);
+        hasCollatedTypes = hasCollatedColumns(collation_ids);
+
+		// Create a container with default page size and full pages, as
+        // for a b-tree.
+		properties.put(RawStoreFactory.PAGE_RESERVED_SPACE_PARAMETER, "0");
+		properties.put(RawStoreFactory.MINIMUM_RECORD_SIZE_PARAMETER, "1");
+		properties.put(RawStoreFactory.PAGE_REUSABLE_RECORD_ID, "true");
+
+		long containerid =
+            rawtran.addContainer(
+                segmentId, input_containerid,
+                ContainerHandle.MODE_DEFAULT, properties, tmpFlag);
+
+		// Make sure the container was actually created.
+		if (containerid <= 0)
+        {
+            throw(StandardException.newException(
+                    SQLState.BTREE_CANT_CREATE_CONTAINER));
+        }
+
+		id = new ContainerKey(segmentId, containerid);
+
+        // Nobody can get to the new container until its id is returned, so
+        // no locks are needed to set it up.
+        ContainerHandle container = null;
+        Page            meta_page = null;
+        Page            dir_page  = null;
+        Page            bucket    = null;
+
+        try
+        {
+            container =
+                rawtran.openContainer(
+                    id, (LockingPolicy) null,
+                    ContainerHandle.MODE_FORUPDATE |
+                        (isTemporary() ? ContainerHandle.MODE_TEMP_IS_KEPT : 0));
+
+            meta_page = container.getPage(META_PAGE);
+            dir_page  = container.addPage();
+            bucket    = container.addPage();
+
+            DataValueDescriptor[] control_row = new DataValueDescriptor[1];
+            control_row[0] = this;
+
+            meta_page.insertAtSlot(
+                CONGLOM_SLOT,
+                control_row,
+                (FormatableBitSet) null,
+                (LogicalUndo) null,
+                Page.INSERT_OVERFLOW,
+                AccessFactoryGlobals.HEAP_OVERFLOW_THRESHOLD);
+
+            insertControlRow(meta_page, DEPTH_SLOT, new SQLInteger(0));
+            insertControlRow(
+                meta_page, FIRST_DIRECTORY_SLOT,
+                new SQLLongint(dir_page.getPageNumber()));
+            insertControlRow(
+                dir_page, 0, new SQLLongint(bucket.getPageNumber()));
+
+            bucket.insertAtSlot(
+                Page.FIRST_SLOT_NUMBER,
+                newControlRow(0, 0, NO_PAGE),
+                (FormatableBitSet) null,
+                (LogicalUndo) null,
+                Page.INSERT_DEFAULT,
+                AccessFactoryGlobals.HASH_OVERFLOW_THRESHOLD);
+        }
+        finally
+        {
+            if (bucket != null)
+                bucket.unlatch();
+            if (dir_page != null)
+                dir_page.unlatch();
+            if (meta_page != null)
+                meta_page.unlatch();
+            if (container != null)
+                container.close();
+        }
+	}
+
+    /**
+     * Insert a single column row, of the meta page or a directory page.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    static void insertControlRow(
+    Page                page,
+    int                 slot,
+    DataValueDescriptor column)
+        throws StandardException
+    {
+        RecordHandle rh =
+            page.insertAtSlot(
+                slot,
+                new DataValueDescriptor[] {column},
+                (FormatableBitSet) null,
+                (LogicalUndo) null,
+                Page.INSERT_DEFAULT,
+                AccessFactoryGlobals.HASH_OVERFLOW_THRESHOLD);
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(rh != null,
+                "no room for control row on page " + page.getPageNumber());
+        }
+    }
+
+    /**
+     * Return a control row of a bucket page with the given values.
+     **/
+    static DataValueDescriptor[] newControlRow(
+    int     depth,
+    long    bits,
+    long    next)
+    {
+        return(new DataValueDescriptor[] {
+            new SQLInteger(depth), new SQLLongint(bits), new SQLLongint(next)});
+    }
+
+    /**
+     * Return a mask of the low order depth bits of a hash code.
+     **/
+    static int mask(int depth)
+    {
+        return((1 << depth) - 1);
+    }
+
+    /**
+     * Compute the hash code of the key columns of an index row.
+     * <p>
+     * The hash codes of the columns are consistent with their compare()
+     * methods, so rows which compare equal on all key columns get the same
+     * hash code.  The result is mixed so that its low order bits, which pick
+     * the bucket, depend on all the bits of the column hash codes.
+     *
+     * @param row   An index row, or a key with at least the key columns.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    int hash(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        int h = 0;
+
+        for (int i = 0; i < rowLocationColumn; i++)
+        {
+            h = 31 * h + (row[i].isNull() ? 0 : row[i].hashCode());
+        }
+
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return(h);
+    }
+
+    /**
+     * Return the directory, from the cache if it is there.
+     *
+     * @param container The open container of the index.
+     * @param reload    Read the directory from the container even if it is
+     *                  cached, because the cached copy sent a lookup to the
+     *                  wrong bucket.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    Directory getDirectory(
+    ContainerHandle container,
+    boolean         reload)
+        throws StandardException
+    {
+        Directory dir = directory;
+
+        if (dir == null || reload)
+        {
+            Page meta_page = container.getPage(META_PAGE);
+
+            try
+            {
+                dir = readDirectory(container, meta_page);
+            }
+            finally
+            {
+                meta_page.unlatch();
+            }
+
+            directory = dir;
+        }
+
+        return(dir);
+    }
+
+    /**
+     * Forget the cached directory, called after a structure change commits.
+     **/
+    void invalidateDirectory()
+    {
+        directory = null;
+    }
+
+    /**
+     * Read the directory from its pages.
+     * <p>
+     * The meta page must be latched, the directory pages are latched one at
+     * a time.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    static Directory readDirectory(
+    ContainerHandle container,
+    Page            meta_page)
+        throws StandardException
+    {
+        SQLInteger  depth_col = new SQLInteger();
+        SQLLongint  page_col  = new SQLLongint();
+        DataValueDescriptor[] depth_row = new DataValueDescriptor[] {depth_col};
+        DataValueDescriptor[] page_row  = new DataValueDescriptor[] {page_col};
+
+        meta_page.fetchFromSlot(
+            (RecordHandle) null, DEPTH_SLOT, depth_row,
+            (FetchDescriptor) null, true);
+
+        int     depth = depth_col.getInt();
+        long[]  pages = new long[1 << depth];
+        int     num_dir_pages =
+            (pages.length + DIRECTORY_ENTRIES_PER_PAGE - 1) /
+                DIRECTORY_ENTRIES_PER_PAGE;
+
+        for (int p = 0; p < num_dir_pages; p++)
+        {
+            meta_page.fetchFromSlot(
+                (RecordHandle) null, FIRST_DIRECTORY_SLOT + p, page_row,
+                (FetchDescriptor) null, true);
+
+            Page dir_page = container.getPage(page_col.getLong());
+
+            try
+            {
+                int first = p * DIRECTORY_ENTRIES_PER_PAGE;
+                int last  =
+                    Math.min(first + DIRECTORY_ENTRIES_PER_PAGE, pages.length);
+
+                for (int i = first; i < last; i++)
+                {
+                    dir_page.fetchFromSlot(
+                        (RecordHandle) null, i - first, page_row,
+                        (FetchDescriptor) null, true);
+                    pages[i] = page_col.getLong();
+                }
+            }
+            finally
+            {
+                dir_page.unlatch();
+            }
+        }
+
+        return(new Directory(depth, pages));
+    }
+
+    /**
+     * Lock the base table.
+     * <p>
+     * Same as B2I#lockTable().
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    ConglomerateController lockTable(
+    TransactionManager  xact_manager,
+    int                 open_mode,
+    int                 lock_level,
+    int                 isolation_level)
+		throws StandardException
+    {
+        open_mode |= TransactionController.OPENMODE_FOR_LOCK_ONLY;
+
+        // open the base conglomerate - just to get the table lock.
+        return(
+            xact_manager.openConglomerate(
+                baseConglomerateId, false, open_mode, lock_level,
+                isolation_level));
+    }
+
+	/*
+	** Methods of Conglomerate
+	*/
+
+    /**
+     * Add a column to the hash index.
+     * <p>
+     * Indexes do not support adding a column.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public void addColumn(
+	TransactionManager  xact_manager,
+    int                 column_id,
+    Storable            template_column,
+    int                 collation_id)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+	/**
+	Drop this hash index.
+	@see Conglomerate#drop
+
+	@exception StandardException Standard exception policy.
+	**/
+	public void drop(TransactionManager xact_manager)
+		throws StandardException
+	{
+        // Get X table lock to make sure no thread is accessing the index.
+        ConglomerateController base_cc =
+            lockTable(
+                xact_manager,
+                TransactionController.OPENMODE_FORUPDATE,
+                TransactionController.MODE_TABLE,
+                TransactionController.ISOLATION_REPEATABLE_READ);
+
+        xact_manager.getRawStoreXact().dropContainer(id);
+
+        if (base_cc != null)
+            base_cc.close();
+	}
+
+    /**
+     * Retrieve the maximum value row in an ordered conglomerate.
+     * <p>
+     * A hash index is not ordered.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public boolean fetchMaxOnBTree(
+	TransactionManager      xact_manager,
+    Transaction             rawtran,
+    long                    conglomId,
+    int                     open_mode,
+    int                     lock_level,
+    LockingPolicy           locking_policy,
+    int                     isolation_level,
+    FormatableBitSet        scanColumnList,
+    DataValueDescriptor[]   fetchRow,
+    VersionStore.Snapshot   snapshot)
+        throws StandardException
+    {
+        throw(StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE));
+    }
+
+    public final ContainerKey getId()
+    {
+        return(id);
+    }
+
+    public final long getContainerid()
+    {
+        return(id.getContainerId());
+    }
+
+    /**
+     * Return dynamic information about the conglomerate to be dynamically
+     * reused in repeated execution of a statement.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public DynamicCompiledOpenConglomInfo getDynamicCompiledConglomInfo()
+		throws StandardException
+    {
+        return(new OpenConglomerateScratchSpace(
+                format_ids, collation_ids, hasCollatedTypes));
+    }
+
+    /**
+     * Return static information about the conglomerate to be included in a
+     * a compiled plan.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public StaticCompiledOpenConglomInfo getStaticCompiledConglomInfo(
+    TransactionController   tc,
+    long                    conglomId)
+		throws StandardException
+    {
+        return(this);
+    }
+
+    /**
+     * Is this conglomerate temporary?
+     **/
+    public boolean isTemporary()
+    {
+        return(id.getSegmentId() == ContainerHandle.TEMPORARY_SEGMENT);
+    }
+
+    /**
+     * Load the rows of a new index.
+     * <p>
+     * The rows are inserted one at a time through a controller, logged, as
+     * the buckets may split while they are loaded.
+     *
+     * @see Conglomerate#load
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public long load(
+	TransactionManager      xact_manager,
+	boolean                 createConglom,
+	RowLocationRetRowSource rowSource)
+		 throws StandardException
+	{
+        HashIndexController controller = new HashIndexController();
+
+        try
+        {
+            controller.init(
+                this,
+                xact_manager,
+                xact_manager.getRawStoreXact(),
+                false,
+                ContainerHandle.MODE_FORUPDATE,
+                TransactionController.MODE_TABLE,
+                (DynamicCompiledOpenConglomInfo) null);
+
+            return(controller.load(rowSource));
+        }
+        finally
+        {
+            controller.close();
+        }
+	}
+
+    /**
+     * Open a hash index controller.
+     *
+	 * @see Conglomerate#open
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public ConglomerateController open(
+    TransactionManager              xact_manager,
+    Transaction                     rawtran,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    LockingPolicy                   locking_policy,
+    StaticCompiledOpenConglomInfo   static_info,
+    DynamicCompiledOpenConglomInfo  dynamic_info)
+		throws StandardException
+	{
+        HashIndexController controller = new HashIndexController();
+
+        controller.init(
+            this, xact_manager, rawtran, hold, open_mode, lock_level,
+            dynamic_info);
+
+        return(controller);
+	}
+
+    /**
+     * Open a hash index scan.
+     *
+     * @see Conglomerate#openScan
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public ScanManager openScan(
+    TransactionManager              xact_manager,
+    Transaction                     rawtran,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    LockingPolicy                   locking_policy,
+    int                             isolation_level,
+	FormatableBitSet				scanColumnList,
+    DataValueDescriptor[]	        startKeyValue,
+    int                             startSearchOperator,
+    Qualifier                       qualifier[][],
+    DataValueDescriptor[]	        stopKeyValue,
+    int                             stopSearchOperator,
+    StaticCompiledOpenConglomInfo   static_info,
+    DynamicCompiledOpenConglomInfo  dynamic_info)
+		throws StandardException
+	{
+        HashIndexScan scan = new HashIndexScan();
+
+        scan.init(
+            this, xact_manager, rawtran, hold, open_mode, lock_level,
+            isolation_level,
+            scanColumnList,
+            startKeyValue, startSearchOperator,
+            qualifier,
+            stopKeyValue, stopSearchOperator,
+            dynamic_info);
+
+        return(scan);
+	}
+
+    /**
+     * Open a compress scan.
+     * <p>
+     * A hash index does not support a compress scan.
+     *
+	 * @see Conglomerate#defragmentConglomerate
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public ScanManager defragmentConglomerate(
+    TransactionManager              xact_manager,
+    Transaction                     rawtran,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    LockingPolicy                   locking_policy,
+    int                             isolation_level)
+		throws StandardException
+	{
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+	}
+
+    /**
+     * Purge committed deleted rows.
+     * <p>
+     * Nothing to do, the committed deleted rows of a bucket are purged when
+     * the bucket is full.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public void purgeConglomerate(
+    TransactionManager              xact_manager,
+    Transaction                     rawtran)
+        throws StandardException
+    {
+    }
+
+    /**
+     * Return free space at the end of the container to the OS.
+     * <p>
+     * Pages of a hash index are never freed, so this only returns space
+     * which was never used.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public void compressConglomerate(
+    TransactionManager              xact_manager,
+    Transaction                     rawtran)
+        throws StandardException
+    {
+        // The controller gets a table lock on the base table.
+        HashIndexController controller = new HashIndexController();
+
+        try
+        {
+            controller.init(
+                this, xact_manager, xact_manager.getRawStoreXact(), false,
+                ContainerHandle.MODE_FORUPDATE,
+                TransactionController.MODE_TABLE,
+                (DynamicCompiledOpenConglomInfo) null);
+
+            controller.getContainer().compressContainer();
+        }
+        finally
+        {
+            controller.close();
+        }
+    }
+
+    /**
+     * Return an open StoreCostController for the conglomerate.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     *
+     * @see StoreCostController
+     **/
+    public StoreCostController openStoreCost(
+    TransactionManager  xact_manager,
+    Transaction         rawtran)
+		throws StandardException
+    {
+        OpenHashIndex open_index = new OpenHashIndex();
+
+        open_index.init(
+            this, xact_manager, rawtran, false,
+            ContainerHandle.MODE_READONLY,
+            TransactionController.MODE_TABLE,
+            (DynamicCompiledOpenConglomInfo) null);
+
+        HashIndexCostController cost = new HashIndexCostController();
+        cost.init(open_index);
+
+        return(cost);
+    }
+
+    /**
+     * Print this hash index.
+     **/
+    public String toString()
+    {
+        if (SanityManager.DEBUG)
+        {
+            return("HashIndex: " + id +
+                   " nKeyFields = " + nKeyFields +
+                   " nUniqueColumns = " + nUniqueColumns +
+                   " baseConglomerateId = " + baseConglomerateId);
+        }
+        else
+        {
+            return((id == null) ? "null" : id.toString());
+        }
+    }
+
+    /**************************************************************************
+     * Public Methods of StaticCompiledOpenConglomInfo Interface:
+     **************************************************************************
+     */
+
+    /**
+     * return the "Conglomerate".
+     * <p>
+     * Just return "this", which both implements Conglomerate and
+     * StaticCompiledOpenConglomInfo.
+     *
+	 * @return this
+     **/
+    public DataValueDescriptor getConglom()
+    {
+        return(this);
+    }
+
+    /**************************************************************************
+	 * Methods of Storable (via Conglomerate)
+     **************************************************************************
+     */
+
+	public int getTypeFormatId()
+    {
+		return StoredFormatIds.ACCESS_HASH_V1_ID;
+	}
+
+	public boolean isNull()
+	{
+		return id == null;
+	}
+
+	public void restoreToNull()
+	{
+		id = null;
+	}
+
+	public void writeExternal(ObjectOutput out) throws IOException
+    {
+        FormatIdUtil.writeFormatIdInteger(out, conglom_format_id);
+		out.writeInt((int) id.getSegmentId());
+        out.writeLong(id.getContainerId());
+
+        out.writeInt(format_ids.length);
+        ConglomerateUtil.writeFormatIdArray(format_ids, out);
+        ConglomerateUtil.writeCollationIdArray(collation_ids, out);
+
+        out.writeInt(nKeyFields);
+        out.writeInt(nUniqueColumns);
+        out.writeBoolean(uniqueWithDuplicateNulls);
+        out.writeLong(baseConglomerateId);
+        out.writeInt(rowLocationColumn);
+	}
+
+    public void readExternal(ObjectInput in)
+		throws IOException, ClassNotFoundException
+	{
+        conglom_format_id = FormatIdUtil.readFormatIdInteger(in);
+		int segmentid     = in.readInt();
+        long containerid  = in.readLong();
+		id = new ContainerKey(segmentid, containerid);
+
+        int num_columns = in.readInt();
+        format_ids = ConglomerateUtil.readFormatIdArray(num_columns, in);
+
+        // initialize all the entries to COLLATION_TYPE_UCS_BASIC, and then
+        // reset as necessary.
+        collation_ids = new int[format_ids.length];
+        for (int i = 0; i < format_ids.length; i++)
+            collation_ids[i] = StringDataValue.COLLATION_TYPE_UCS_BASIC;
+        hasCollatedTypes =
+            ConglomerateUtil.readCollationIdArray(collation_ids, in);
+
+        nKeyFields               = in.readInt();
+        nUniqueColumns           = in.readInt();
+        uniqueWithDuplicateNulls = in.readBoolean();
+        baseConglomerateId       = in.readLong();
+        rowLocationColumn        = in.readInt();
+    }
+}
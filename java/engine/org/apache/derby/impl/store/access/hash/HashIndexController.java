@@ -0,0 +1,652 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.HashIndexController
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
+import org.apache.derby.iapi.store.access.ConglomerateController;
+import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.RowLocationRetRowSource;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.RowLocation;
+
+/**
+
+  A hash index controller, which only supports inserting rows.  Rows are
+  deleted from an index through a scan, as for a b-tree.
+  <p>
+  The row being inserted is not locked, its base row is already locked by
+  the insert of the base row.  To check a unique index, the rows with the
+  same key are locked as a b-tree does, so that the check waits for the
+  transactions which inserted or deleted them to end.
+
+**/
+
+public class HashIndexController
+    extends OpenHashIndex implements ConglomerateController
+{
+    /**
+     * Open base table controller which is used for row locking.
+     **/
+    private ConglomerateController  base_cc_for_locking;
+
+    /**
+     * Logical undo for the inserts.
+     **/
+    private HashIndexUndo           undo;
+
+    /**
+     * Scratch row which the rows with the same hash code as the inserted
+     * row are fetched into.
+     **/
+    private DataValueDescriptor[]   scratch_row;
+
+    /**************************************************************************
+     * Constructors for This class:
+     **************************************************************************
+     */
+
+    public HashIndexController()
+    {
+    }
+
+    /**************************************************************************
+     * Private/Protected methods of This class:
+     **************************************************************************
+     */
+
+    /**
+     * The results of doIns(), other than ROWISDUPLICATE and 0.
+     **/
+    private static final int RETRY         = -1;
+    private static final int NO_SPACE      = -2;
+
+    /**
+     * Try to insert a row once.
+     * <p>
+     * Latches the primary page of the bucket for the whole search, so that
+     * two inserts of the same key can not miss each other, and walks the
+     * chain of the bucket.  The row goes to the first page with room for it.
+     *
+     * @return 0 if the row was inserted, ROWISDUPLICATE if it is a duplicate,
+     *         RETRY if the latches were released to wait for a lock, and
+     *         NO_SPACE if no page of the bucket has room for the row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private int doIns(
+    DataValueDescriptor[]   row,
+    int                     h,
+    boolean                 check_unique)
+        throws StandardException
+    {
+        HashIndex   hash       = getHashIndex();
+        int         loc_column = hash.rowLocationColumn;
+        Page        primary    = getBucket(h);
+        Page        page       = primary;
+        Page        target     = null;
+        RowLocation wait_for   = null;
+
+        try
+        {
+            while (page != null)
+            {
+                int count = page.recordCount();
+
+                for (int slot = findSlot(page, h); slot < count; slot++)
+                {
+                    if (hashAtSlot(page, slot) != h)
+                        break;
+
+                    if (!keyEquals(getKeyTemplate(), row, loc_column))
+                        continue;
+
+                    page.fetchFromSlot(
+                        (RecordHandle) null, slot, scratch_row,
+                        (FetchDescriptor) null, true);
+
+                    boolean deleted = page.isDeletedAtSlot(slot);
+
+                    if (scratch_row[loc_column].compare(row[loc_column]) == 0)
+                    {
+                        if (SanityManager.DEBUG)
+                        {
+                            SanityManager.ASSERT(deleted,
+                                "row is already in the hash index");
+                        }
+
+                        // The row was deleted by this transaction, which
+                        // has the base row locked, so it can come back.
+                        page.deleteAtSlot(slot, false, undo);
+                        return(0);
+                    }
+
+                    if (check_unique)
+                    {
+                        RowLocation loc =
+                            (RowLocation) scratch_row[loc_column];
+
+                        if (!base_cc_for_locking.lockRow(
+                                loc,
+                                ConglomerateController.LOCK_UPD,
+                                false /* NOWAIT */,
+                                TransactionManager.LOCK_COMMIT_DURATION))
+                        {
+                            // Wait for the lock without latches, and then
+                            // search again.
+                            wait_for = (RowLocation) loc.cloneValue(false);
+                            return(RETRY);
+                        }
+
+                        if (!deleted)
+                            return(ConglomerateController.ROWISDUPLICATE);
+                    }
+                }
+
+                if (target == null)
+                {
+                    if (page.spaceForInsert(
+                            row, (FormatableBitSet) null,
+                            AccessFactoryGlobals.HASH_OVERFLOW_THRESHOLD))
+                    {
+                        target = page;
+                    }
+                    else if (page.recordCount() == 1)
+                    {
+                        // The row does not fit on an empty page.
+                        throw StandardException.newException(
+                                SQLState.BTREE_NO_SPACE_FOR_KEY);
+                    }
+                }
+
+                Page next = getNextPage(page);
+
+                if (page != primary && page != target)
+                    page.unlatch();
+
+                page = next;
+            }
+
+            if (target == null)
+                return(NO_SPACE);
+
+            if (target.insertAtSlot(
+                    findSlot(target, h),
+                    row,
+                    (FormatableBitSet) null,
+                    undo,
+                    Page.INSERT_DEFAULT,
+                    AccessFactoryGlobals.HASH_OVERFLOW_THRESHOLD) == null)
+            {
+                return(NO_SPACE);
+            }
+
+            return(0);
+        }
+        finally
+        {
+            if (page != null && page != primary && page != target)
+                page.unlatch();
+            if (target != null && target != primary)
+                target.unlatch();
+            primary.unlatch();
+
+            if (wait_for != null)
+            {
+                base_cc_for_locking.lockRow(
+                    wait_for,
+                    ConglomerateController.LOCK_UPD,
+                    true /* WAIT */,
+                    TransactionManager.LOCK_COMMIT_DURATION);
+            }
+        }
+    }
+
+    /**
+     * Does the row have a null key column?
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean hasNullKey(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        for (int i = 0; i < getHashIndex().rowLocationColumn; i++)
+        {
+            if (row[i].isNull())
+                return(true);
+        }
+
+        return(false);
+    }
+
+    /**************************************************************************
+     * Public Methods of This class:
+     **************************************************************************
+     */
+
+	/**
+	Initialize the controller for use.
+    <p>
+    Opens the container of the index, and the base table to lock rows.
+
+    @exception StandardException Standard exception policy.
+	**/
+    void init(
+    HashIndex                       hash,
+    TransactionManager              xact_manager,
+    Transaction                     rawtran,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    DynamicCompiledOpenConglomInfo  dynamic_info)
+        throws StandardException
+    {
+        // open the base conglomerate - just to get the lock.  Since the
+        // controller only supports update operations we just hard code
+        // ISOLATION_REPEATABLE_READ, as B2IController does.
+        base_cc_for_locking =
+            hash.lockTable(
+                xact_manager, open_mode, lock_level,
+                TransactionController.ISOLATION_REPEATABLE_READ);
+
+        super.init(
+            hash, xact_manager, rawtran, hold, open_mode, lock_level,
+            dynamic_info);
+
+        undo = new HashIndexUndo();
+    }
+
+    /**
+     * Load rows from rowSource into a new hash index.
+     * <p>
+     * The rows are inserted one at a time.  The rows come from a sort which
+     * has already checked them for uniqueness.
+     *
+     * @return The number of rows loaded.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    long load(RowLocationRetRowSource rowSource)
+        throws StandardException
+    {
+        long num_rows_loaded = 0;
+
+        DataValueDescriptor[] row;
+        while ((row = rowSource.getNextRowFromRowSource()) != null)
+        {
+            int ret = insert(row);
+
+            if (SanityManager.DEBUG)
+            {
+                SanityManager.ASSERT(ret == 0,
+                    "duplicate row loaded into hash index");
+            }
+
+            num_rows_loaded++;
+        }
+
+        return(num_rows_loaded);
+    }
+
+	/*
+	** Methods of ConglomerateController
+	*/
+
+    /**
+    Close the conglomerate controller.
+
+	@see ConglomerateController#close
+    **/
+    public void close()
+        throws StandardException
+	{
+		super.close();
+
+        if (base_cc_for_locking != null)
+        {
+            base_cc_for_locking.close();
+            base_cc_for_locking = null;
+        }
+
+		// If we are closed due to catching an error in the middle of init,
+		// xact_manager may not be set yet.
+		if (getXactMgr() != null)
+			getXactMgr().closeMe(this);
+	}
+
+    /**
+     * Close conglomerate controller as part of terminating a transaction.
+     * <p>
+     * Same as BTreeController#closeForEndTransaction.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public boolean closeForEndTransaction(boolean closeHeldScan)
+		throws StandardException
+    {
+        super.close();
+
+        if ((!getHold()) || closeHeldScan)
+        {
+            // If we are closed due to catching an error in the middle of init,
+            // xact_manager may not be set yet.
+            if (getXactMgr() != null)
+                getXactMgr().closeMe(this);
+
+            return(true);
+        }
+        else
+        {
+            return(false);
+        }
+    }
+
+	/**
+    Insert a row into the conglomerate.
+	@see ConglomerateController#insert
+
+    @param row The row to insert into the conglomerate.  The stored
+	representations of the row's columns are copied into a new row
+	somewhere in the conglomerate.
+
+	@return Returns 0 if insert succeeded.  Returns
+    ConglomerateController.ROWISDUPLICATE if the index is unique, and the row
+    inserted had key columns which were duplicate of a row already in the
+    index.  Other insert failures will raise StandardException's.
+
+	@exception StandardException Standard exception policy.
+    **/
+	public int insert(DataValueDescriptor[] row)
+         throws StandardException
+    {
+		if (isClosed())
+        {
+            if (getHold())
+            {
+                reopen();
+            }
+            else
+            {
+                throw StandardException.newException(
+                            SQLState.BTREE_IS_CLOSED,
+                            new Long(getHashIndex().getContainerid()));
+            }
+        }
+
+        HashIndex hash = getHashIndex();
+
+        if (scratch_row == null)
+            scratch_row = getRuntimeMem().get_row_for_export(getRawTran());
+
+        int     h            = hash.hash(row);
+        boolean check_unique =
+            (hash.nUniqueColumns != hash.nKeyFields) &&
+            !(hash.uniqueWithDuplicateNulls && hasNullKey(row));
+
+        for (;;)
+        {
+            int ret = doIns(row, h, check_unique);
+
+            if (ret == NO_SPACE)
+                growBucket(h);
+            else if (ret != RETRY)
+                return(ret);
+        }
+	}
+
+    /**
+	Return whether this is a keyed conglomerate.
+	<p>
+	All hash indexes are keyed.
+	@see ConglomerateController#isKeyed
+	**/
+	public boolean isKeyed()
+	{
+		return(true);
+	}
+
+    /**
+     * Check consistency of the hash index.
+     * <p>
+     * Checks that every directory entry points to a bucket with the right
+     * bits, that every row is in the bucket of its hash code, and that the
+     * rows of each page are in hash code order.  The checks are only made
+     * in SANE servers, as for a b-tree.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public void checkConsistency()
+		throws StandardException
+    {
+        if (SanityManager.DEBUG)
+        {
+            HashIndex.Directory dir =
+                getHashIndex().getDirectory(getContainer(), true);
+
+            for (int i = 0; i < dir.pages.length; i++)
+            {
+                Page primary = getContainer().getPage(dir.pages[i]);
+
+                readControlRow(primary);
+
+                int depth = controlDepth();
+                int bits  = (int) controlBits();
+
+                if ((i & HashIndex.mask(depth)) != bits)
+                {
+                    SanityManager.THROWASSERT(
+                        "directory entry " + i + " points to bucket " + bits +
+                        " of depth " + depth);
+                }
+
+                // Check the rows of each bucket from its first entry.
+                Page page = (i == bits ? primary : null);
+
+                while (page != null)
+                {
+                    int previous = Integer.MIN_VALUE;
+
+                    for (int slot = 1; slot < page.recordCount(); slot++)
+                    {
+                        int h = hashAtSlot(page, slot);
+
+                        if ((h & HashIndex.mask(depth)) != bits)
+                        {
+                            SanityManager.THROWASSERT(
+                                "row with hash code " + h + " on page " +
+                                page.getPageNumber() + " of bucket " + bits);
+                        }
+
+                        if (h < previous)
+                        {
+                            SanityManager.THROWASSERT(
+                                "rows out of order at slot " + slot +
+                                " of page " + page.getPageNumber());
+                        }
+
+                        previous = h;
+                    }
+
+                    Page next = getNextPage(page);
+
+                    if (page != primary)
+                        page.unlatch();
+
+                    page = next;
+                }
+
+                primary.unlatch();
+            }
+        }
+    }
+
+	/*
+	** Methods of ConglomerateController which are not supported.
+	*/
+
+    /**
+    Delete a row from the conglomerate.
+	@see ConglomerateController#delete
+
+    @exception StandardException Standard exception policy.
+    **/
+    public boolean delete(RowLocation loc)
+		throws StandardException
+	{
+        throw(StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE));
+	}
+
+    /**
+    Fetch the row at the given location.
+	@see ConglomerateController#fetch
+
+    @exception StandardException Standard exception policy.
+    **/
+    public boolean fetch(
+    RowLocation loc,
+    DataValueDescriptor[]   row,
+    FormatableBitSet     validColumns)
+		throws StandardException
+	{
+        throw(StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE));
+	}
+
+    /**
+    Fetch the row at the given location.
+	@see ConglomerateController#fetch
+
+    @exception StandardException Standard exception policy.
+    **/
+    public boolean fetch(
+    RowLocation loc,
+    DataValueDescriptor[]   row,
+    FormatableBitSet     validColumns,
+    boolean     waitForLock)
+		throws StandardException
+	{
+        throw(StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE));
+	}
+
+	/**
+    Insert a row into the conglomerate, and store its location in the
+    provided template row location.
+
+    Not implemented for hash indexes.
+
+    @see ConglomerateController#insertAndFetchLocation
+
+    @exception StandardException Standard exception policy.
+	**/
+	public void insertAndFetchLocation(
+    DataValueDescriptor[]   row,
+    RowLocation             templateRowLocation)
+        throws StandardException
+	{
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+	}
+
+	/**
+	Return a row location object of the correct type to be
+	used in calls to insertAndFetchLocation.
+	@see ConglomerateController#newRowLocationTemplate
+
+    @exception StandardException Standard exception policy.
+	**/
+	public RowLocation newRowLocationTemplate()
+		throws StandardException
+	{
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+	}
+
+    /**
+     * Lock the given row location.
+     * <p>
+     * Not implemented for hash indexes.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public boolean lockRow(
+    RowLocation loc,
+    int         lock_operation,
+    boolean     wait,
+    int         lock_duration)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    public boolean lockRow(
+    long        page_num,
+    int         record_id,
+    int         lock_operation,
+    boolean     wait,
+    int         lock_duration)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    public void unlockRowAfterRead(
+    RowLocation     loc,
+    boolean         forUpdate,
+    boolean         row_qualifies)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+	/**
+    Replace the entire row at the given location.
+	@see ConglomerateController#replace
+
+    @exception StandardException Standard exception policy.
+    **/
+    public boolean replace(
+    RowLocation             loc,
+    DataValueDescriptor[]   row,
+    FormatableBitSet                 validColumns)
+		throws StandardException
+	{
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+	}
+}
@@ -0,0 +1,268 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.HashIndexCostController
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import org.apache.derby.iapi.reference.Property;
+import org.apache.derby.iapi.reference.SQLState;
+
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.error.StandardException;
+
+import org.apache.derby.iapi.store.access.StoreCostController;
+import org.apache.derby.iapi.store.access.StoreCostResult;
+
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.Page;
+
+import org.apache.derby.impl.store.access.conglomerate.GenericCostController;
+import org.apache.derby.impl.store.access.conglomerate.OpenConglomerate;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+import java.util.Properties;
+
+
+/**
+
+The StoreCostController for a hash index.
+<p>
+A scan whose start and stop keys are the same value for all the key columns
+reads one bucket, so its cost is found by counting the rows of that bucket
+which match the key.  Any other scan reads the whole index, and costs the
+same as a heap scan of the same size.
+
+**/
+
+public class HashIndexCostController
+    extends GenericCostController implements StoreCostController
+{
+    /**
+     * Only lookup these estimates from raw store once.
+     **/
+    long    num_pages;
+    long    num_rows;
+    long    page_size;
+    long    row_size;
+
+    /* Constructors for This class: */
+
+    /**
+     * Initialize the cost controller.
+     * <p>
+     * Save initialize parameters away, and open the underlying container.
+     * <p>
+     *
+     * @param open_conglom the open hash index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public void init(
+    OpenConglomerate    open_conglom)
+        throws StandardException
+    {
+        super.init(open_conglom);
+
+        ContainerHandle container = open_conglom.getContainer();
+
+        // look up costs from raw store.
+        num_rows  = container.getEstimatedRowCount(/*unused flag*/ 0);
+
+        // Don't use 0 rows (use 1 instead), see HeapCostController.
+        if (num_rows == 0)
+            num_rows = 1;
+
+        num_pages = container.getEstimatedPageCount(/* unused flag */ 0);
+
+        Properties prop = new Properties();
+        prop.put(Property.PAGE_SIZE_PARAMETER, "");
+        container.getContainerProperties(prop);
+        page_size =
+            Integer.parseInt(prop.getProperty(Property.PAGE_SIZE_PARAMETER));
+
+        row_size = (num_pages * page_size / num_rows);
+
+        return;
+    }
+
+    /* Public Methods of This class: */
+
+    /**
+     * Return the cost of calling ConglomerateController.fetch().
+     * <p>
+     * An index does not support fetch by RowLocation.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public double getFetchFromRowLocationCost(
+    FormatableBitSet      validColumns,
+    int         access_type)
+		throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    /**
+     * Return the cost of exact key lookup.
+     * <p>
+     * An exact key lookup reads the primary page of one bucket, the
+     * directory is cached.
+     *
+	 * @return The cost of the fetch.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public double getFetchFromFullKeyCost(
+    FormatableBitSet      validColumns,
+    int         access_type)
+		throws StandardException
+    {
+        if ((access_type & StoreCostController.STORECOST_CLUSTERED) == 0)
+            return(BASE_UNCACHED_ROW_FETCH_COST);
+        else
+            return(BASE_CACHED_ROW_FETCH_COST);
+    }
+
+    /**
+     * Calculate the cost of a scan.
+     * <p>
+     * If the start and stop keys are the same full key value, the scan is
+     * a lookup of one bucket, and the rows of the bucket which match the key
+     * are counted to get the cost and the row count.  Otherwise the scan
+     * reads every row of the index.
+     *
+     * @see StoreCostController#getScanCost
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public void getScanCost(
+    int                     scan_type,
+    long                    row_count,
+    int                     group_size,
+    boolean                 forUpdate,
+    FormatableBitSet        scanColumnList,
+    DataValueDescriptor[]   template,
+    DataValueDescriptor[]   startKeyValue,
+    int                     startSearchOperator,
+    DataValueDescriptor[]   stopKeyValue,
+    int                     stopSearchOperator,
+    boolean                 reopen_scan,
+    int                     access_type,
+    StoreCostResult         cost_result)
+        throws StandardException
+    {
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(
+                scan_type == StoreCostController.STORECOST_SCAN_NORMAL ||
+                scan_type == StoreCostController.STORECOST_SCAN_SET);
+        }
+
+        OpenHashIndex   open_index = (OpenHashIndex) open_conglom;
+        HashIndex       hash       = open_index.getHashIndex();
+
+        long   estimated_row_count;
+        long   pages_read;
+        double cost;
+
+        if (HashIndexScan.isKeyLookup(
+                hash, startKeyValue, startSearchOperator,
+                stopKeyValue, stopSearchOperator))
+        {
+            // count the rows of the bucket which match the key.
+            int  h       = hash.hash(startKeyValue);
+            Page page    = open_index.getBucket(h);
+            long matches = 0;
+
+            pages_read = 0;
+
+            while (page != null)
+            {
+                pages_read++;
+
+                int count = page.recordCount();
+
+                for (int slot = open_index.findSlot(page, h);
+                     slot < count;
+                     slot++)
+                {
+                    if (open_index.hashAtSlot(page, slot) != h)
+                        break;
+
+                    if (!page.isDeletedAtSlot(slot) &&
+                        OpenHashIndex.keyEquals(
+                            open_index.getKeyTemplate(), startKeyValue,
+                            hash.rowLocationColumn))
+                    {
+                        matches++;
+                    }
+                }
+
+                Page next = open_index.getNextPage(page);
+                page.unlatch();
+                page = next;
+            }
+
+            // As for a b-tree, estimate at least 1 row for an equality
+            // lookup, 0 rows leads to plans which don't use the index.
+            estimated_row_count = (matches < 1) ? 1 : matches;
+
+            cost = getFetchFromFullKeyCost(scanColumnList, access_type);
+            cost += (pages_read - 1) * BASE_UNCACHED_ROW_FETCH_COST;
+        }
+        else
+        {
+            estimated_row_count = ((row_count < 0) ?  num_rows : row_count);
+            pages_read          = num_pages;
+
+            // first the base cost of bringing each page in from cache:
+            cost = (num_pages * BASE_UNCACHED_ROW_FETCH_COST);
+        }
+
+        // the cost associated with the number of bytes in each row:
+        cost += (estimated_row_count * row_size) * BASE_ROW_PER_BYTECOST;
+
+        // the base cost of getting each of the rows from a page assumed
+        // to already be cached, as in HeapCostController.
+        long cached_row_count = estimated_row_count - pages_read;
+        if (cached_row_count < 0)
+            cached_row_count = 0;
+
+        if (scan_type == StoreCostController.STORECOST_SCAN_NORMAL)
+            cost += cached_row_count * BASE_GROUPSCAN_ROW_COST;
+        else
+            cost += cached_row_count * BASE_HASHSCAN_ROW_FETCH_COST;
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(cost >= 0);
+            SanityManager.ASSERT(estimated_row_count >= 0);
+        }
+
+        cost_result.setEstimatedCost(cost);
+        cost_result.setEstimatedRowCount(estimated_row_count);
+
+        return;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.HashIndexFactory
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Properties;
+
+import org.apache.derby.iapi.reference.SQLState;
+
+import org.apache.derby.iapi.services.monitor.ModuleControl;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.catalog.UUID;
+import org.apache.derby.iapi.services.uuid.UUIDFactory;
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.store.access.AccessFactory;
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
+import org.apache.derby.iapi.store.access.conglomerate.Conglomerate;
+import org.apache.derby.iapi.store.access.conglomerate.ConglomerateFactory;
+import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.store.access.ColumnOrdering;
+
+import org.apache.derby.iapi.store.raw.ContainerKey;
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.LockingPolicy;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.PageKey;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+/**
+
+  The hash index factory manages extendible hash conglomerates implemented
+  on the raw store, which are used as secondary indexes that only support
+  equality lookups.  See HashIndex for the layout of the conglomerate.
+
+**/
+
+public class HashIndexFactory implements ConglomerateFactory, ModuleControl
+{
+
+	private static final String IMPLEMENTATIONID = AccessFactoryGlobals.HASH;
+	private static final String FORMATUUIDSTRING = "A3C9B2D0-5E41-11e6-8B77-86F30CA893D3";
+	private UUID formatUUID;
+
+
+	/*
+	** Methods of MethodFactory (via ConglomerateFactory)
+	*/
+
+	/**
+	Return the default properties for this kind of conglomerate.
+	@see org.apache.derby.iapi.store.access.conglomerate.MethodFactory#defaultProperties
+	**/
+	public Properties defaultProperties()
+	{
+		return new Properties();
+	}
+
+	/**
+	Return whether this access method implements the implementation
+	type given in the argument string.
+	The hash index only has one implementation type, "HASH".
+
+	@see org.apache.derby.iapi.store.access.conglomerate.MethodFactory#supportsImplementation
+	**/
+	public boolean supportsImplementation(String implementationId)
+	{
+		return implementationId.equals(IMPLEMENTATIONID);
+	}
+
+	/**
+	Return the primary implementation type for this access method.
+	The hash index only has one implementation type, "HASH".
+
+	@see org.apache.derby.iapi.store.access.conglomerate.MethodFactory#primaryImplementationType
+	**/
+	public String primaryImplementationType()
+	{
+		return IMPLEMENTATIONID;
+	}
+
+	/**
+	Return whether this access method supports the format supplied in
+	the argument.
+	The hash index currently only supports one format.
+
+	@see org.apache.derby.iapi.store.access.conglomerate.MethodFactory#supportsFormat
+	**/
+	public boolean supportsFormat(UUID formatid)
+	{
+		return formatid.equals(formatUUID);
+	}
+
+	/**
+	Return the primary format that this access method supports.
+	The hash index currently only supports one format.
+
+	@see org.apache.derby.iapi.store.access.conglomerate.MethodFactory#primaryFormat
+	**/
+	public UUID primaryFormat()
+	{
+		return formatUUID;
+	}
+
+	/*
+	** Methods of ConglomerateFactory
+	*/
+
+    /**
+     * Return the conglomerate factory id.
+     * <p>
+	 * @see ConglomerateFactory#getConglomerateFactoryId
+     *
+	 * @return an unique identifier used to the factory into the conglomid.
+     **/
+    public int getConglomerateFactoryId()
+    {
+        return(ConglomerateFactory.HASH_FACTORY_ID);
+    }
+
+	/**
+	Create the conglomerate and return a conglomerate object for it.
+
+	@see ConglomerateFactory#createConglomerate
+
+    @exception StandardException Standard exception policy.
+	**/
+	public Conglomerate createConglomerate(
+    TransactionManager      xact_mgr,
+    int                     segment,
+    long                    input_containerid,
+    DataValueDescriptor[]   template,
+	ColumnOrdering[]        columnOrder,
+    int[]                   collationIds,
+    Properties              properties,
+	int                     temporaryFlag)
+            throws StandardException
+	{
+        HashIndex hash = new HashIndex();
+
+		hash.create(
+            xact_mgr, segment, input_containerid, template, columnOrder,
+            collationIds, properties, temporaryFlag);
+
+		return(hash);
+	}
+
+    /**
+     * Return Conglomerate object for conglomerate with conglomid.
+     * <p>
+     * The hash index is stored in slot 0 of the meta page of the container.
+     *
+	 * @return An instance of the conglomerate.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public Conglomerate readConglomerate(
+    TransactionManager  xact_manager,
+    ContainerKey        container_key)
+		throws StandardException
+    {
+        ContainerHandle container  = null;
+        Page            page       = null;
+        DataValueDescriptor[] control_row = new DataValueDescriptor[1];
+
+        try
+        {
+            // open readonly, with no locks.  Dirty read is ok as it is the
+            // responsibility of client code to make sure this data is not
+            // changing while being read.  The only changes that currently
+            // happen to this data is creation and deletion - no updates
+            // ever happen to hash conglomerates.
+            container =
+                (xact_manager.getRawStoreXact()).openContainer(
+                    container_key,
+                    (LockingPolicy) null,
+                    ContainerHandle.MODE_READONLY);
+
+            if (container == null)
+            {
+                // thrown a "known" error if the conglomerate does not exist
+                // which is checked for explicitly by callers of the store
+                // interface.
+
+                throw StandardException.newException(
+                    SQLState.STORE_CONGLOMERATE_DOES_NOT_EXIST,
+                    new Long(container_key.getContainerId()));
+            }
+
+            // row in slot 0 of the meta page which is just a single column
+            // with the hash index entry.
+            control_row[0] = new HashIndex();
+
+            page = container.getPage(HashIndex.META_PAGE);
+
+            RecordHandle rh =
+                page.fetchFromSlot(
+                   (RecordHandle) null,
+                   HashIndex.CONGLOM_SLOT,
+                   control_row,
+                   (FetchDescriptor) null,
+                   true);
+
+            if (SanityManager.DEBUG)
+            {
+                SanityManager.ASSERT(rh != null);
+            }
+        }
+        finally
+        {
+            if (page != null)
+                page.unlatch();
+
+            if (container != null)
+                container.close();
+        }
+
+        return((Conglomerate) control_row[0]);
+    }
+
+    /**
+     * Interface to be called when an undo of an insert is processed.
+     * <p>
+     * Currently a no-op, the deleted rows are purged when the bucket they
+     * are in is full.
+     *
+     * @param access_factory    current access_factory of the aborted insert.
+     * @param xact              transaction that is being backed out.
+     * @param page_key          page key of the aborted insert.
+     *
+     * @exception  StandardException  Standard exception policy.
+     **/
+    public void insertUndoNotify(
+    AccessFactory       access_factory,
+    Transaction         xact,
+    PageKey             page_key)
+        throws StandardException
+    {
+    }
+
+	/*
+	** Methods of ModuleControl.
+	*/
+
+	public boolean canSupport(Properties startParams) {
+
+		String impl = startParams.getProperty("derby.access.Conglomerate.type");
+		if (impl == null)
+			return false;
+
+		return supportsImplementation(impl);
+	}
+
+	public void	boot(boolean create, Properties startParams)
+		throws StandardException
+	{
+		// Find the UUID factory.
+		UUIDFactory uuidFactory =
+            getMonitor().getUUIDFactory();
+
+		// Make a UUID that identifies this conglomerate's format.
+		formatUUID = uuidFactory.recreateUUID(FORMATUUIDSTRING);
+	}
+
+	public void	stop()
+	{
+	}
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private  static  ModuleFactory  getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+
+}
@@ -0,0 +1,1166 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.HashIndexScan
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import org.apache.derby.iapi.reference.SQLState;
+
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.error.StandardException;
+
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+
+import org.apache.derby.iapi.store.access.conglomerate.ScanManager;
+import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+
+import org.apache.derby.iapi.store.access.BackingStoreHashtable;
+import org.apache.derby.iapi.store.access.ConglomerateController;
+import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.RowUtil;
+import org.apache.derby.iapi.store.access.ScanController;
+import org.apache.derby.iapi.store.access.ScanInfo;
+import org.apache.derby.iapi.store.access.TransactionController;
+
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.RowLocation;
+
+/**
+
+  A scan of a hash index.
+  <p>
+  If the start and stop keys are the same value for all the key columns, with
+  the GE and GT operators the language layer uses for an equality, the scan
+  only reads the bucket of that key.  Any other scan reads all the buckets,
+  and returns the rows which are between the start and stop keys in the
+  order of the key columns, so the result is correct for any keys but the
+  rows come back in no particular order.
+  <p>
+  The rows of a bucket are read into a buffer while the pages of the bucket
+  are latched, and then returned from the buffer.  Each row is locked with
+  NOWAIT while the latch is held; if the lock can't be granted the row is
+  marked unverified, and before it is returned the scan waits for the lock
+  without any latch and looks the row up again to see that it is still there.
+  <p>
+  A full scan visits the buckets in the order of the bit reversal of the
+  MAX_DEPTH low order bits of their hash codes.  In that order the hash codes
+  of a bucket are a range, and a split divides the range in two, so the scan
+  can remember where it is as the start of the next range, and neither skips
+  nor repeats a bucket if buckets are split while it is running.
+  <p>
+  Locking follows the b-tree scans, except that there is no previous key
+  locking: a serializable scan with row locking locks the whole base table
+  instead.
+
+**/
+
+public class HashIndexScan extends OpenHashIndex implements ScanManager
+{
+    /**************************************************************************
+     * Constants of the class
+     **************************************************************************
+     */
+
+    private static final int   SCAN_INIT             = 1;
+    private static final int   SCAN_INPROGRESS       = 2;
+    private static final int   SCAN_DONE             = 3;
+    private static final int   SCAN_HOLD_INIT        = 4;
+    private static final int   SCAN_HOLD_INPROGRESS  = 5;
+
+    /**
+     * The cursor of a full scan which is past the last bucket.
+     **/
+    private static final int   END_CURSOR            = 1 << HashIndex.MAX_DEPTH;
+
+    /**************************************************************************
+     * Fields of the class
+     **************************************************************************
+     */
+
+    /**
+     * The following group of fields are all basically input parameters to
+     * the scan.
+     **/
+    FormatableBitSet                init_scanColumnList;
+    private DataValueDescriptor[]   init_startKeyValue;
+    private int                     init_startSearchOperator;
+    private Qualifier[][]           init_qualifier;
+    private DataValueDescriptor[]   init_stopKeyValue;
+    private int                     init_stopSearchOperator;
+    private int                     init_isolation_level;
+    private int                     init_base_lock_level;
+    private boolean                 init_forUpdate;
+
+    /**
+     * The base table, opened to lock its rows.
+     **/
+    private ConglomerateController  base_cc_for_locking;
+
+    /**
+     * Lock the rows as they are read, false if the table is locked or the
+     * scan is read uncommitted.
+     **/
+    private boolean                 lock_rows;
+
+    /**
+     * The lock requested on each row, as in BTreeScan.
+     **/
+    private int                     lock_operation;
+
+    private HashIndexUndo           undo;
+
+    private int                     scan_state;
+
+    /**
+     * Only read the bucket of lookup_hash?
+     **/
+    private boolean                 key_lookup;
+    private int                     lookup_hash;
+
+    /**
+     * The cursor of the next bucket to read, in bit reversed hash code order.
+     **/
+    private int                     next_cursor;
+
+    /**
+     * The rows read from the last bucket, and whether each one has been
+     * verified to exist while locked.
+     **/
+    private DataValueDescriptor[][] buffer_rows     = new DataValueDescriptor[8][];
+    private boolean[]               buffer_verified = new boolean[8];
+    private int                     buffer_count;
+    private int                     buffer_pos;
+
+    /**
+     * The row the scan is positioned on, and whether the scan holds a lock
+     * on it that it must release when it moves off.
+     **/
+    private DataValueDescriptor[]   current_row;
+    private boolean                 current_locked;
+
+    /**
+     * Performance counters ...
+     */
+    int stat_numpages_visited         = 0;
+    int stat_numrows_visited          = 0;
+    int stat_numrows_qualified        = 0;
+    int stat_numdeleted_rows_visited  = 0;
+
+    /**************************************************************************
+     * Constructors for This class:
+     **************************************************************************
+     */
+
+    public HashIndexScan()
+    {
+    }
+
+    /**************************************************************************
+     * Private/Protected methods of This class:
+     **************************************************************************
+     */
+
+    /**
+     * Map a cursor to the hash code bits it stands for and back, by
+     * reversing the order of the MAX_DEPTH low order bits.
+     **/
+    private static int reverse(int bits)
+    {
+        return(Integer.reverse(bits) >>> (32 - HashIndex.MAX_DEPTH));
+    }
+
+    /**
+     * Compare the first key.length columns of row to key.
+     **/
+    private static int compareToKey(
+    DataValueDescriptor[]   row,
+    DataValueDescriptor[]   key)
+        throws StandardException
+    {
+        for (int i = 0; i < key.length; i++)
+        {
+            int r = row[i].compare(key[i]);
+
+            if (r != 0)
+                return(r);
+        }
+
+        return(0);
+    }
+
+    /**
+     * Is the row between the start and stop keys of the scan?
+     **/
+    private boolean inRange(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        if (init_startKeyValue != null)
+        {
+            int r = compareToKey(row, init_startKeyValue);
+
+            if (r < 0 || (r == 0 && init_startSearchOperator == ScanController.GT))
+                return(false);
+        }
+
+        if (init_stopKeyValue != null)
+        {
+            int r = compareToKey(row, init_stopKeyValue);
+
+            if (r > 0 || (r == 0 && init_stopSearchOperator == ScanController.GE))
+                return(false);
+        }
+
+        return(true);
+    }
+
+    /**
+     * Open the base table to lock it and its rows.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void openBaseForLocking()
+        throws StandardException
+    {
+        base_cc_for_locking =
+            getHashIndex().lockTable(
+                getXactMgr(), getOpenMode(), init_base_lock_level,
+                init_isolation_level);
+    }
+
+    /**
+     * Position the scan before its first row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void positionAtStart()
+        throws StandardException
+    {
+        key_lookup =
+            isKeyLookup(
+                getHashIndex(),
+                init_startKeyValue, init_startSearchOperator,
+                init_stopKeyValue, init_stopSearchOperator);
+
+        if (key_lookup)
+            lookup_hash = getHashIndex().hash(init_startKeyValue);
+
+        next_cursor     = 0;
+        buffer_count    = 0;
+        buffer_pos      = -1;
+        current_row     = null;
+        current_locked  = false;
+
+        scan_state      = SCAN_INPROGRESS;
+    }
+
+    /**
+     * Release the lock on the current row, if it is held only for reading.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void unlockCurrentRow()
+        throws StandardException
+    {
+        if (current_locked)
+        {
+            base_cc_for_locking.unlockRowAfterRead(
+                getRowLocation(current_row), init_forUpdate, true);
+        }
+
+        current_row    = null;
+        current_locked = false;
+    }
+
+    /**
+     * Release the locks on the rows of the buffer which have not been
+     * returned, and empty it.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void emptyBuffer()
+        throws StandardException
+    {
+        if (lock_rows && base_cc_for_locking != null)
+        {
+            for (int i = buffer_pos + 1; i < buffer_count; i++)
+            {
+                if (buffer_verified[i])
+                {
+                    base_cc_for_locking.unlockRowAfterRead(
+                        getRowLocation(buffer_rows[i]), init_forUpdate, false);
+                }
+            }
+        }
+
+        buffer_count = 0;
+        buffer_pos   = -1;
+    }
+
+    private RowLocation getRowLocation(DataValueDescriptor[] row)
+    {
+        return((RowLocation) row[getHashIndex().rowLocationColumn]);
+    }
+
+    /**
+     * Read the rows of the next bucket into the buffer.
+     *
+     * @return false if there are no more buckets.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean fillBuffer()
+        throws StandardException
+    {
+        buffer_count = 0;
+        buffer_pos   = -1;
+
+        if (next_cursor >= END_CURSOR)
+            return(false);
+
+        int h = key_lookup ? lookup_hash : reverse(next_cursor);
+
+        Page page = getBucket(h);
+
+        // the range of the bucket ends where the next one starts.
+        next_cursor =
+            key_lookup ?
+                END_CURSOR :
+                reverse((int) controlBits()) +
+                    (1 << (HashIndex.MAX_DEPTH - controlDepth()));
+
+        try
+        {
+            while (page != null)
+            {
+                stat_numpages_visited++;
+
+                int slot = key_lookup ? findSlot(page, h) : 1;
+
+                for (; slot < page.recordCount(); slot++)
+                {
+                    if (key_lookup && hashAtSlot(page, slot) != h)
+                        break;
+
+                    readRow(page, slot);
+                }
+
+                Page next = getNextPage(page);
+                page.unlatch();
+                page = next;
+            }
+        }
+        finally
+        {
+            if (page != null)
+                page.unlatch();
+        }
+
+        return(true);
+    }
+
+    /**
+     * Add the row at slot of the latched page to the buffer, if it is in
+     * range and qualifies.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void readRow(Page page, int slot)
+        throws StandardException
+    {
+        stat_numrows_visited++;
+
+        if (buffer_count == buffer_rows.length)
+        {
+            DataValueDescriptor[][] rows =
+                new DataValueDescriptor[2 * buffer_count][];
+            boolean[] verified = new boolean[2 * buffer_count];
+            System.arraycopy(buffer_rows, 0, rows, 0, buffer_count);
+            buffer_rows     = rows;
+            buffer_verified = verified;
+        }
+
+        DataValueDescriptor[] row = buffer_rows[buffer_count];
+        if (row == null)
+        {
+            row = getRuntimeMem().get_row_for_export(getRawTran());
+            buffer_rows[buffer_count] = row;
+        }
+
+        page.fetchFromSlot(
+            (RecordHandle) null, slot, row, (FetchDescriptor) null, true);
+
+        if (!inRange(row) ||
+            (init_qualifier != null && !RowUtil.qualifyRow(row, init_qualifier)))
+        {
+            return;
+        }
+
+        boolean deleted  = page.isDeletedAtSlot(slot);
+        boolean verified = true;
+
+        if (lock_rows)
+        {
+            // First try to get the lock NOWAIT, while latch is held.
+            if (base_cc_for_locking.lockRow(
+                    getRowLocation(row), lock_operation, false,
+                    TransactionManager.LOCK_COMMIT_DURATION))
+            {
+                if (deleted)
+                {
+                    base_cc_for_locking.unlockRowAfterRead(
+                        getRowLocation(row), init_forUpdate, false);
+                }
+            }
+            else
+            {
+                // wait for the lock before the row is returned, the deleter
+                // may yet roll back.
+                verified = false;
+                deleted  = false;
+            }
+        }
+
+        if (deleted)
+        {
+            stat_numdeleted_rows_visited++;
+            return;
+        }
+
+        buffer_verified[buffer_count] = verified;
+        buffer_count++;
+    }
+
+    /**
+     * Is the row in the index and not deleted?
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean rowExists(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        Page page = findRow(row, getHashIndex().hash(row));
+
+        if (page == null)
+            return(false);
+
+        try
+        {
+            return(!page.isDeletedAtSlot(getLastSlot()));
+        }
+        finally
+        {
+            page.unlatch();
+        }
+    }
+
+    /**
+     * Move the scan to the next row.
+     *
+     * @return false if there is no next row, the scan is done.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean positionAtNext()
+        throws StandardException
+    {
+        if (scan_state == SCAN_INIT)
+        {
+            positionAtStart();
+        }
+        else if (scan_state == SCAN_HOLD_INIT ||
+                 scan_state == SCAN_HOLD_INPROGRESS)
+        {
+            reopen();
+            openBaseForLocking();
+
+            if (scan_state == SCAN_HOLD_INIT)
+                positionAtStart();
+            else
+                scan_state = SCAN_INPROGRESS;
+        }
+        else if (scan_state == SCAN_DONE)
+        {
+            return(false);
+        }
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(getContainer() != null,
+                "HashIndexScan.next() called on a closed scan.");
+        }
+
+        unlockCurrentRow();
+
+        for (;;)
+        {
+            buffer_pos++;
+
+            if (buffer_pos >= buffer_count)
+            {
+                if (!fillBuffer())
+                {
+                    scan_state = SCAN_DONE;
+                    return(false);
+                }
+
+                continue;
+            }
+
+            DataValueDescriptor[] row = buffer_rows[buffer_pos];
+
+            if (!buffer_verified[buffer_pos])
+            {
+                if (lock_rows)
+                {
+                    if ((getOpenMode() &
+                            TransactionManager.OPENMODE_LOCK_ROW_NOWAIT) != 0)
+                    {
+                        throw StandardException.newException(
+                                SQLState.LOCK_TIMEOUT);
+                    }
+
+                    base_cc_for_locking.lockRow(
+                        getRowLocation(row), lock_operation, true,
+                        TransactionManager.LOCK_COMMIT_DURATION);
+                }
+
+                buffer_verified[buffer_pos] = true;
+
+                if (!rowExists(row))
+                {
+                    stat_numdeleted_rows_visited++;
+
+                    if (lock_rows)
+                    {
+                        base_cc_for_locking.unlockRowAfterRead(
+                            getRowLocation(row), init_forUpdate, false);
+                    }
+
+                    continue;
+                }
+            }
+
+            stat_numrows_qualified++;
+
+            current_row    = row;
+            current_locked = lock_rows;
+
+            return(true);
+        }
+    }
+
+    /**
+     * Copy the columns of the scan from the current row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void copyCurrentRow(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        for (int i = 0; i < row.length && i < current_row.length; i++)
+        {
+            if (row[i] != null &&
+                (init_scanColumnList == null ||
+                 (i < init_scanColumnList.getLength() &&
+                  init_scanColumnList.isSet(i))))
+            {
+                row[i].setValue(current_row[i]);
+            }
+        }
+    }
+
+    private void checkPositioned()
+        throws StandardException
+    {
+        if (scan_state != SCAN_INPROGRESS || current_row == null)
+            throw StandardException.newException(
+                SQLState.AM_SCAN_NOT_POSITIONED);
+    }
+
+    /**************************************************************************
+     * Public Methods of This class:
+     **************************************************************************
+     */
+
+    /**
+     * Is a scan with these keys a lookup of one bucket?  It is if the start
+     * and stop keys are the same value of (at least) all the key columns,
+     * with the operators of an equality.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    static boolean isKeyLookup(
+    HashIndex               hash,
+    DataValueDescriptor[]   startKeyValue,
+    int                     startSearchOperator,
+    DataValueDescriptor[]   stopKeyValue,
+    int                     stopSearchOperator)
+        throws StandardException
+    {
+        if (startKeyValue == null || stopKeyValue == null ||
+            startSearchOperator != ScanController.GE ||
+            stopSearchOperator != ScanController.GT ||
+            startKeyValue.length < hash.rowLocationColumn ||
+            startKeyValue.length != stopKeyValue.length)
+        {
+            return(false);
+        }
+
+        for (int i = 0; i < hash.rowLocationColumn; i++)
+        {
+            if (startKeyValue[i] != stopKeyValue[i] &&
+                startKeyValue[i].compare(stopKeyValue[i]) != 0)
+            {
+                return(false);
+            }
+        }
+
+        return(true);
+    }
+
+    /**
+     * Initialize the scan for use.
+     * <p>
+     * Open the base table to lock it, then the container of the index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    void init(
+    HashIndex                       hash,
+    TransactionManager              xact_manager,
+    Transaction                     rawtran,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    int                             isolation_level,
+	FormatableBitSet				scanColumnList,
+    DataValueDescriptor[]	        startKeyValue,
+    int                             startSearchOperator,
+    Qualifier                       qualifier[][],
+    DataValueDescriptor[]	        stopKeyValue,
+    int                             stopSearchOperator,
+    DynamicCompiledOpenConglomInfo  dynamic_info)
+        throws StandardException
+    {
+        init_scanColumnList      = scanColumnList;
+        init_startKeyValue       = startKeyValue;
+        init_startSearchOperator = startSearchOperator;
+        init_qualifier           = qualifier;
+        init_stopKeyValue        = stopKeyValue;
+        init_stopSearchOperator  = stopSearchOperator;
+        init_isolation_level     = isolation_level;
+        init_forUpdate           =
+            ((open_mode & ContainerHandle.MODE_FORUPDATE) != 0);
+
+        // Without previous key locking the only way to keep other
+        // transactions from inserting rows a serializable scan would see
+        // is to lock the table.
+        init_base_lock_level =
+            (isolation_level == TransactionController.ISOLATION_SERIALIZABLE ?
+                 TransactionController.MODE_TABLE : lock_level);
+
+        lock_rows =
+            (init_base_lock_level == TransactionController.MODE_RECORD &&
+             isolation_level !=
+                 TransactionController.ISOLATION_READ_UNCOMMITTED);
+
+        lock_operation =
+            (init_forUpdate ?
+                ConglomerateController.LOCK_UPD :
+                ConglomerateController.LOCK_READ);
+
+        if ((open_mode & ContainerHandle.MODE_USE_UPDATE_LOCKS) != 0)
+            lock_operation |= ConglomerateController.LOCK_UPDATE_LOCKS;
+
+        base_cc_for_locking =
+            hash.lockTable(
+                xact_manager, open_mode, init_base_lock_level,
+                isolation_level);
+
+        super.init(
+            hash, xact_manager, rawtran, hold, open_mode, lock_level,
+            dynamic_info);
+
+        undo       = new HashIndexUndo();
+        scan_state = SCAN_INIT;
+    }
+
+    /**************************************************************************
+     * Public Methods of ScanController interface:
+     **************************************************************************
+     */
+
+    /**
+    Delete the row at the current position of the scan.
+    @see ScanController#delete
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public boolean delete()
+        throws StandardException
+    {
+        checkPositioned();
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(init_forUpdate);
+        }
+
+        if (lock_rows && isUseUpdateLocks())
+        {
+            // the scan got an U lock on the row, upgrade it to X.
+            base_cc_for_locking.lockRow(
+                getRowLocation(current_row), ConglomerateController.LOCK_UPD,
+                true, TransactionManager.LOCK_COMMIT_DURATION);
+        }
+
+        Page page = findRow(current_row, getHashIndex().hash(current_row));
+
+        if (page == null)
+            return(false);
+
+        try
+        {
+            int slot = getLastSlot();
+
+            if (page.isDeletedAtSlot(slot))
+                return(false);
+
+            page.deleteAtSlot(slot, true, undo);
+
+            return(true);
+        }
+        finally
+        {
+            page.unlatch();
+        }
+    }
+
+    /**
+     * A call to allow client to indicate that current row does not qualify.
+     * <p>
+     * Like a b-tree scan, the lock is released, if it can be, when the scan
+     * moves to the next row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public void didNotQualify()
+        throws StandardException
+    {
+    }
+
+    /**
+     * Returns true if the current position of the scan still qualifies
+     * under the set of qualifiers passed to the openScan().
+     * <p>
+     * The key columns of an index row never change, so the row qualifies
+     * as long as it is still there.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public boolean doesCurrentPositionQualify()
+        throws StandardException
+    {
+        checkPositioned();
+
+        return(rowExists(current_row));
+    }
+
+    /**
+     * @see ScanController#isHeldAfterCommit
+     */
+    public boolean isHeldAfterCommit() throws StandardException
+    {
+        return (scan_state == SCAN_HOLD_INIT ||
+                scan_state == SCAN_HOLD_INPROGRESS);
+    }
+
+    /**
+    Fetch the row at the current position of the Scan.
+    @see ScanController#fetch
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public void fetch(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        checkPositioned();
+
+        copyCurrentRow(row);
+    }
+
+    /**
+    Fetch the row at the current position of the Scan, the qualifiers were
+    already applied when the scan positioned on it.
+    @see ScanController#fetchWithoutQualify
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public void fetchWithoutQualify(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        fetch(row);
+    }
+
+    /**
+    Fetch the row at the next position of the Scan.
+    @see ScanController#fetchNext
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public boolean fetchNext(DataValueDescriptor[] row)
+        throws StandardException
+    {
+        if (!positionAtNext())
+            return(false);
+
+        copyCurrentRow(row);
+
+        return(true);
+    }
+
+    /**
+    Fetch the location of the current position in the scan.
+    @see ScanController#fetchLocation
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public void fetchLocation(RowLocation templateLocation)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    /**
+     * Returns true if the current position of the scan is at a
+     * deleted row.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public boolean isCurrentPositionDeleted()
+        throws StandardException
+    {
+        checkPositioned();
+
+        return(!rowExists(current_row));
+    }
+
+    /**
+    Move to the next position in the scan.
+    @see ScanController#next
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public boolean next()
+        throws StandardException
+    {
+        return(positionAtNext());
+    }
+
+    /**
+    Positioning by RowLocation is not supported by an index.
+    @see ScanController#positionAtRowLocation
+
+    @exception  StandardException  Standard exception policy.
+    **/
+    public boolean positionAtRowLocation(RowLocation rl)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    /**
+    Replace the entire row at the current position of the scan.
+
+    Unimplemented interface by an index, will throw an exception.
+
+    @see ScanController#replace
+    @exception  StandardException  Standard exception policy.
+    **/
+    public boolean replace(DataValueDescriptor[] row, FormatableBitSet validColumns)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    /**************************************************************************
+     * Public Methods of GroupFetchScanController interface:
+     **************************************************************************
+     */
+
+    /**
+     * Fetch the next N rows from the table.
+     * <p>
+     * Like a b-tree scan, an index scan does not return RowLocations.
+     *
+     * @see org.apache.derby.iapi.store.access.GroupFetchScanController#fetchNextGroup
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public int fetchNextGroup(
+    DataValueDescriptor[][] row_array,
+    RowLocation[]           rowloc_array)
+        throws StandardException
+    {
+        if (rowloc_array != null)
+        {
+            throw StandardException.newException(
+                    SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+        }
+
+        int ret_row_count = 0;
+
+        while (ret_row_count < row_array.length && positionAtNext())
+        {
+            if (row_array[ret_row_count] == null)
+            {
+                row_array[ret_row_count] =
+                    getRuntimeMem().get_row_for_export(getRawTran());
+            }
+
+            copyCurrentRow(row_array[ret_row_count]);
+            ret_row_count++;
+        }
+
+        return(ret_row_count);
+    }
+
+    public int fetchNextGroup(
+    DataValueDescriptor[][] row_array,
+    RowLocation[]           oldrowloc_array,
+    RowLocation[]           newrowloc_array)
+        throws StandardException
+    {
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+    }
+
+    /**************************************************************************
+     * Public Methods of ScanManager interface:
+     **************************************************************************
+     */
+
+    /**
+     * Insert all rows that qualify for the current scan into the input
+     * Hash table.
+     *
+     * @see ScanManager#fetchSet
+     *
+     * @exception  StandardException  Standard exception policy.
+     **/
+    public void fetchSet(
+    long                    max_rowcnt,
+    int[]                   key_column_numbers,
+    BackingStoreHashtable   hash_table)
+        throws StandardException
+    {
+        long ret_row_count = 0;
+
+        while ((max_rowcnt < 0 || ret_row_count < max_rowcnt) &&
+               positionAtNext())
+        {
+            DataValueDescriptor[] row =
+                getRuntimeMem().get_row_for_export(getRawTran());
+
+            copyCurrentRow(row);
+            hash_table.putRow(false, row, null);
+            ret_row_count++;
+        }
+    }
+
+    /**
+    Close the scan, a commit or abort is about to happen.
+    **/
+    public boolean closeForEndTransaction(boolean closeHeldScan)
+        throws StandardException
+    {
+        if (!getHold() || closeHeldScan)
+        {
+            close();
+
+            return(true);
+        }
+
+        // When the transaction ends, all the locks of the scan are released,
+        // so the rows left in the buffer have to be looked up again.
+        for (int i = buffer_pos + 1; i < buffer_count; i++)
+            buffer_verified[i] = false;
+
+        current_locked = false;
+
+        if (scan_state == SCAN_INPROGRESS)
+            scan_state = SCAN_HOLD_INPROGRESS;
+        else if (scan_state == SCAN_INIT)
+            scan_state = SCAN_HOLD_INIT;
+
+        super.close();
+
+        if (base_cc_for_locking != null)
+        {
+            base_cc_for_locking.close();
+            base_cc_for_locking = null;
+        }
+
+        return(false);
+    }
+
+    /**************************************************************************
+     * Public Methods of GenericScanController interface:
+     **************************************************************************
+     */
+
+    /**
+    Close the scan.
+    **/
+    public void close()
+        throws StandardException
+    {
+        if (base_cc_for_locking != null)
+        {
+            if (scan_state == SCAN_INPROGRESS)
+            {
+                unlockCurrentRow();
+                emptyBuffer();
+            }
+
+            base_cc_for_locking.close();
+            base_cc_for_locking = null;
+        }
+
+        scan_state = SCAN_DONE;
+
+        super.close();
+
+        // null out so that these object's can get GC'd earlier.
+        init_startKeyValue = null;
+        init_qualifier     = null;
+        init_stopKeyValue  = null;
+        buffer_rows        = null;
+        current_row        = null;
+
+        getXactMgr().closeMe(this);
+    }
+
+    /**
+     * Return ScanInfo object which describes performance of scan.
+     *
+     * @see ScanController#getScanInfo
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public ScanInfo getScanInfo()
+		throws StandardException
+    {
+        return(new HashIndexScanInfo(this));
+    }
+
+	public boolean isTableLocked()
+	{
+		return(init_base_lock_level == TransactionController.MODE_TABLE);
+	}
+
+    /**
+    Reposition the current scan.  This call is semantically the same as if
+    the current scan had been closed and a openScan() had been called instead.
+    @see org.apache.derby.iapi.store.access.GenericScanController#reopenScan
+
+	@exception StandardException Standard exception policy.
+    **/
+	public void reopenScan(
+    DataValueDescriptor[]   startKeyValue,
+    int                     startSearchOperator,
+    Qualifier               qualifier[][],
+    DataValueDescriptor[]   stopKeyValue,
+    int                     stopSearchOperator)
+        throws StandardException
+	{
+        if (scan_state == SCAN_INPROGRESS)
+        {
+            unlockCurrentRow();
+            emptyBuffer();
+        }
+
+        init_startKeyValue       = startKeyValue;
+        init_startSearchOperator = startSearchOperator;
+        init_qualifier           = qualifier;
+        init_stopKeyValue        = stopKeyValue;
+        init_stopSearchOperator  = stopSearchOperator;
+
+        scan_state =
+            (getContainer() == null ? SCAN_HOLD_INIT : SCAN_INIT);
+	}
+
+    /**
+    Reposition by RowLocation is not supported by an index.
+    @see org.apache.derby.iapi.store.access.GenericScanController#reopenScanByRowLocation
+
+	@exception StandardException Standard exception policy.
+    **/
+	public void reopenScanByRowLocation(
+    RowLocation startRowLocation,
+    Qualifier   qualifier[][])
+        throws StandardException
+	{
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+	}
+
+    /**
+     * Return the total estimated number of rows in the index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public long getEstimatedRowCount()
+		throws StandardException
+    {
+        if (getContainer() == null)
+            reopen();
+
+        // Don't return 0 rows (return 1 instead), see OpenBTree.
+        long row_count = getContainer().getEstimatedRowCount(/* unused */ 0);
+
+        return(row_count == 0 ? 1 : row_count);
+    }
+
+    /**
+     * Set the total estimated number of rows in the index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    public void setEstimatedRowCount(long count)
+		throws StandardException
+    {
+        if (getContainer() == null)
+            reopen();
+
+        getContainer().setEstimatedRowCount(count, /* unused flag */ 0);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.HashIndexUndo
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import org.apache.derby.iapi.reference.SQLState;
+
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.services.io.Formatable;
+import org.apache.derby.iapi.services.io.StoredFormatIds;
+import org.apache.derby.iapi.error.StandardException;
+
+import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
+
+import org.apache.derby.iapi.store.access.RowUtil;
+
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.LogicalUndoable;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+
+import java.io.ObjectInput;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import org.apache.derby.iapi.services.io.LimitObjectInput;
+
+/**
+ * @derby.formatId ACCESS_HASHUNDO_V1_ID
+ *
+ * @derby.purpose   Implements the LogicalUndo and Formatable interfaces, basically
+ *            providing a way for raw store recovery to "call back" access code
+ *            to provide logical undo ability.
+ *
+ * @derby.upgrade   This is the current version, no upgrade necessary.
+ *
+ * @derby.diskLayout
+ *     No state associated with this format.
+ *
+ **/
+
+/**
+
+The HashIndexUndo interface packages up the routines which the rawstore needs
+to call to perform logical undo of a record in a hash index.  A split of a
+bucket moves rows to a new page, so if the record is no longer on the page
+it was logged on the row is looked up again by its hash code.
+<p>
+This class must not contain any persistent state, as this class is stored
+in the log record of the insert/delete.
+
+@see org.apache.derby.iapi.store.raw.LogicalUndoable
+@see org.apache.derby.iapi.store.raw.Undoable#generateUndo
+**/
+public class HashIndexUndo implements LogicalUndo, Formatable
+{
+	/**
+	 * Find the page and record to undo.  If no logical undo is necessary,
+	 * i.e., row has not moved, then just return the latched page where undo
+	 * should go.  If the record has moved, it has a new recordId on the new
+	 * page, this routine needs to call pageOp.resetRecord with the new
+	 * RecordHandle so that the logging system can update the compensation
+	 * Operation with the new location.
+     *
+	 * @param rawtran   the transaction doing the rollback
+	 * @param pageOp    the page operation that supports logical undo.  This
+	 * 		            LogicalUndo function pointer is a field of that
+     * 		            pageOperation
+	 * @param in        data stored in the log stream that contains the record
+     *                  data necessary to restore the row.
+     *
+     * @exception StandardException Standard Derby error policy
+	 * @exception IOException Method may read from InputStream
+     *
+	 */
+	public Page findUndo(
+    Transaction         rawtran,
+    LogicalUndoable     pageOp,
+    LimitObjectInput    in)
+        throws StandardException, IOException
+    {
+        ContainerHandle       container = pageOp.getContainer();
+        RecordHandle          rechandle = pageOp.getRecordHandle();
+        HashIndex             hash;
+        Page                  page      = null;
+        boolean               ok_exit   = false;
+
+        // Need Conglomerate to create templates - get from the meta page.
+        DataValueDescriptor[] conglom_row =
+            new DataValueDescriptor[] {new HashIndex()};
+
+        page = container.getPage(HashIndex.META_PAGE);
+
+        try
+        {
+            page.fetchFromSlot(
+                (RecordHandle) null, HashIndex.CONGLOM_SLOT, conglom_row,
+                (FetchDescriptor) null, true);
+        }
+        finally
+        {
+            page.unlatch();
+            page = null;
+        }
+
+        hash = (HashIndex) conglom_row[0];
+
+        // "open" the hash index, using recovery's already opened container
+        OpenHashIndex open_index = new OpenHashIndex();
+        open_index.init(hash, container, rawtran);
+
+        DataValueDescriptor[] logged_row =
+            open_index.getRuntimeMem().get_row_for_export(rawtran);
+        DataValueDescriptor[] template   =
+            open_index.getRuntimeMem().get_row_for_export(rawtran);
+
+        // Get logged row from record.
+        pageOp.restoreLoggedRow(logged_row, in);
+
+        try
+        {
+            // Get the page where the record was originally, before splits
+            // could have possibly moved it.
+            page = container.getPage(rechandle.getPageNumber());
+
+            boolean found = false;
+
+            if (page.recordExists(rechandle, true))
+            {
+                page.fetchFromSlot(
+                    (RecordHandle) null,
+                    page.getSlotNumber(rechandle),
+                    template,
+                    (FetchDescriptor) null,
+                    true);
+
+                // the usual case, the row has not moved.
+                found =
+                    OpenHashIndex.keyEquals(
+                        template, logged_row, logged_row.length);
+            }
+
+            if (!found)
+            {
+                page.unlatch();
+                page = open_index.findRow(logged_row, hash.hash(logged_row));
+
+                if (page == null)
+                {
+                    if (SanityManager.DEBUG)
+                    {
+                        SanityManager.THROWASSERT(
+                            "HashIndexUndo - could not find row:" +
+                            RowUtil.toString(logged_row));
+                    }
+
+                    throw StandardException.newException(
+                            SQLState.BTREE_ROW_NOT_FOUND_DURING_UNDO);
+                }
+
+                RecordHandle rh =
+                    page.fetchFromSlot(
+                        (RecordHandle) null,
+                        open_index.getLastSlot(),
+                        new DataValueDescriptor[0],
+                        (FetchDescriptor) null,
+                        true);
+
+                pageOp.resetRecordHandle(rh);
+            }
+
+            ok_exit = true;
+        }
+        finally
+        {
+            if (!ok_exit && page != null)
+                page.unlatch();
+        }
+
+        return(page);
+    }
+
+	/**
+		Return my format identifier.
+
+		@see org.apache.derby.iapi.services.io.TypedFormat#getTypeFormatId
+	*/
+	public int getTypeFormatId()
+    {
+		return StoredFormatIds.ACCESS_HASHUNDO_V1_ID;
+	}
+
+	/**
+    This object has no state, so nothing to write.*/
+
+	public void writeExternal(ObjectOutput out) throws IOException
+    {
+        return;
+	}
+
+	/**
+	Restore the in-memory representation from the stream.
+
+    This object has no state, so nothing to restore.
+	@exception ClassNotFoundException Thrown if the stored representation is
+	serialized and a class named in the stream could not be found.
+
+	@see java.io.Externalizable#readExternal
+	*/
+	public void readExternal(ObjectInput in)
+		throws IOException, ClassNotFoundException
+	{
+        return;
+	}
+}
@@ -0,0 +1,909 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.hash.OpenHashIndex
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.hash;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.io.FormatableBitSet;
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
+import org.apache.derby.iapi.store.access.ConglomerateController;
+import org.apache.derby.iapi.store.access.DynamicCompiledOpenConglomInfo;
+import org.apache.derby.iapi.store.access.Qualifier;
+import org.apache.derby.iapi.store.access.RowUtil;
+import org.apache.derby.iapi.store.access.TransactionController;
+import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
+import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.FetchDescriptor;
+import org.apache.derby.iapi.store.raw.LockingPolicy;
+import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.RecordHandle;
+import org.apache.derby.iapi.store.raw.Transaction;
+
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.types.RowLocation;
+import org.apache.derby.iapi.types.SQLInteger;
+import org.apache.derby.iapi.types.SQLLongint;
+
+import org.apache.derby.impl.store.access.conglomerate.OpenConglomerate;
+
+/**
+
+  An open hash index, with the routines shared by the controller, the scan
+  and the logical undo to find rows in the buckets, and to change the
+  structure of the index when a bucket is full.
+  <p>
+  See HashIndex for the layout of the container and the latching rules.
+
+**/
+
+class OpenHashIndex extends OpenConglomerate
+{
+    /**************************************************************************
+     * Fields of the class
+     **************************************************************************
+     */
+
+    /**
+     * Scratch row which the key columns of a row are fetched into to hash
+     * and compare them.
+     **/
+    private DataValueDescriptor[]   key_template;
+
+    /**
+     * Scratch row which whole rows are fetched into to compare them.
+     **/
+    private DataValueDescriptor[]   row_template;
+
+    /**
+     * Fetches the key columns of a row, without the RowLocation.
+     **/
+    private FetchDescriptor         key_fetch_desc;
+
+    /**
+     * The columns of the last control row read by readControlRow().
+     **/
+    private final SQLInteger        cr_depth = new SQLInteger();
+    private final SQLLongint        cr_bits  = new SQLLongint();
+    private final SQLLongint        cr_next  = new SQLLongint();
+    private final DataValueDescriptor[] control_row =
+        new DataValueDescriptor[] {cr_depth, cr_bits, cr_next};
+
+    /**
+     * The slot of the row found by the last findRow().
+     **/
+    private int                     last_slot;
+
+    /**************************************************************************
+     * Private/Protected methods of This class:
+     **************************************************************************
+     */
+
+    /**
+     * Allocate the scratch rows on first use.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void initTemplates()
+        throws StandardException
+    {
+        if (key_template == null)
+        {
+            HashIndex hash = getHashIndex();
+
+            key_template = getRuntimeMem().get_row_for_export(getRawTran());
+            row_template = getRuntimeMem().get_row_for_export(getRawTran());
+
+            FormatableBitSet key_cols = new FormatableBitSet(hash.nKeyFields);
+            for (int i = 0; i < hash.rowLocationColumn; i++)
+                key_cols.set(i);
+
+            key_fetch_desc =
+                new FetchDescriptor(
+                    hash.nKeyFields, key_cols, (Qualifier[][]) null);
+        }
+    }
+
+    /**************************************************************************
+     * Public Methods of This class:
+     **************************************************************************
+     */
+
+    /**
+     * Open the container of a hash index.
+     * <p>
+     * The container is opened without a locking policy, all the locking is
+     * done on the rows and the container of the base table, as for a
+     * b-tree secondary index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    void init(
+    HashIndex                       hash,
+    TransactionManager              xact_manager,
+    Transaction                     rawtran,
+    boolean                         hold,
+    int                             open_mode,
+    int                             lock_level,
+    DynamicCompiledOpenConglomInfo  dynamic_info)
+        throws StandardException
+    {
+        if (init(
+                (ContainerHandle) null,
+                hash,
+                hash.format_ids,
+                hash.collation_ids,
+                xact_manager,
+                rawtran,
+                hold,
+                open_mode,
+                lock_level,
+                (LockingPolicy) null,
+                dynamic_info) == null)
+        {
+            throw StandardException.newException(
+                    SQLState.STORE_CONGLOMERATE_DOES_NOT_EXIST,
+                    new Long(hash.getContainerid()));
+        }
+    }
+
+    /**
+     * Use a container which is already open, as logical undo does.  No
+     * locks are requested and the index is not changed through this object.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    void init(
+    HashIndex                       hash,
+    ContainerHandle                 open_container,
+    Transaction                     rawtran)
+        throws StandardException
+    {
+        init(
+            open_container,
+            hash,
+            hash.format_ids,
+            hash.collation_ids,
+            (TransactionManager) null,
+            rawtran,
+            false,
+            ContainerHandle.MODE_FORUPDATE,
+            TransactionManager.MODE_NONE,
+            (LockingPolicy) null,
+            (DynamicCompiledOpenConglomInfo) null);
+    }
+
+    public int[] getFormatIds()
+    {
+        return(getHashIndex().format_ids);
+    }
+
+    /**
+     * Return an "empty" row location object of the correct type.
+     * <p>
+     * Not supported by an index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	public RowLocation newRowLocationTemplate()
+		throws StandardException
+	{
+        throw StandardException.newException(
+                SQLState.BTREE_UNIMPLEMENTED_FEATURE);
+	}
+
+	public boolean isKeyed()
+	{
+		return true;
+	}
+
+    HashIndex getHashIndex()
+    {
+        return((HashIndex) getConglomerate());
+    }
+
+    /**************************************************************************
+     * Methods to read the pages of a bucket:
+     **************************************************************************
+     */
+
+    /**
+     * Read the control row of a bucket page into cr_depth, cr_bits and
+     * cr_next.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    void readControlRow(Page page)
+        throws StandardException
+    {
+        page.fetchFromSlot(
+            (RecordHandle) null, Page.FIRST_SLOT_NUMBER, control_row,
+            (FetchDescriptor) null, true);
+    }
+
+    /**
+     * The local depth of the bucket page whose control row was read last,
+     * HashIndex.OVERFLOW_PAGE for an overflow page.
+     **/
+    int controlDepth()
+    {
+        return(cr_depth.getInt());
+    }
+
+    /**
+     * The hash code bits of the primary page whose control row was read
+     * last, or the primary page number of an overflow page.
+     **/
+    long controlBits()
+    {
+        return(cr_bits.getLong());
+    }
+
+    /**
+     * The next page of the bucket page whose control row was read last.
+     **/
+    long controlNext()
+    {
+        return(cr_next.getLong());
+    }
+
+    /**
+     * Return the latched primary page of the bucket holding hash code h.
+     * <p>
+     * The caller must not hold any latch of the index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    Page getBucket(int h)
+        throws StandardException
+    {
+        ContainerHandle container = getContainer();
+        HashIndex       hash      = getHashIndex();
+        boolean         reload    = false;
+
+        for (;;)
+        {
+            HashIndex.Directory dir = hash.getDirectory(container, reload);
+
+            Page page =
+                container.getPage(dir.pages[h & HashIndex.mask(dir.depth)]);
+
+            if (page != null)
+            {
+                readControlRow(page);
+
+                int depth = controlDepth();
+
+                if (depth != HashIndex.OVERFLOW_PAGE &&
+                    (h & HashIndex.mask(depth)) == (int) controlBits())
+                {
+                    return(page);
+                }
+
+                page.unlatch();
+            }
+
+            if (SanityManager.DEBUG)
+            {
+                SanityManager.ASSERT(!reload || page == null,
+                    "fresh directory entry points to the wrong bucket");
+            }
+
+            // The bucket was split since the cached directory was read.
+            reload = true;
+        }
+    }
+
+    /**
+     * Return the next page of a bucket latched, or null if page is the last
+     * one.  The latch on page is kept.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    Page getNextPage(Page page)
+        throws StandardException
+    {
+        readControlRow(page);
+
+        long next = controlNext();
+
+        return(next == HashIndex.NO_PAGE ? null : getContainer().getPage(next));
+    }
+
+    /**
+     * Return the hash code of the row at a slot of a bucket page.  The key
+     * columns of the row are left in getKeyTemplate().
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    int hashAtSlot(Page page, int slot)
+        throws StandardException
+    {
+        initTemplates();
+
+        page.fetchFromSlot(
+            (RecordHandle) null, slot, key_template, key_fetch_desc, true);
+
+        return(getHashIndex().hash(key_template));
+    }
+
+    /**
+     * The row which hashAtSlot() fetched the key columns into.
+     **/
+    DataValueDescriptor[] getKeyTemplate()
+    {
+        return(key_template);
+    }
+
+    /**
+     * Return the first slot of a bucket page whose row has a hash code
+     * greater than or equal to h, or recordCount() if there is none.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    int findSlot(Page page, int h)
+        throws StandardException
+    {
+        int low  = Page.FIRST_SLOT_NUMBER + 1;
+        int high = page.recordCount();
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (hashAtSlot(page, mid) < h)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return(low);
+    }
+
+    /**
+     * Do the first ncols columns of two rows compare equal?
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    static boolean keyEquals(
+    DataValueDescriptor[]   row1,
+    DataValueDescriptor[]   row2,
+    int                     ncols)
+        throws StandardException
+    {
+        for (int i = 0; i < ncols; i++)
+        {
+            if (row1[i].compare(row2[i]) != 0)
+                return(false);
+        }
+
+        return(true);
+    }
+
+    /**
+     * Return the slot of a row on a bucket page which is equal to row in all
+     * its columns, including the RowLocation, deleted or not.
+     *
+     * @return the slot, or -1 if the row is not on the page.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    int findRowOnPage(Page page, DataValueDescriptor[] row, int h)
+        throws StandardException
+    {
+        int nKeyFields = getHashIndex().nKeyFields;
+        int count      = page.recordCount();
+
+        for (int slot = findSlot(page, h); slot < count; slot++)
+        {
+            if (hashAtSlot(page, slot) != h)
+                break;
+
+            page.fetchFromSlot(
+                (RecordHandle) null, slot, row_template,
+                (FetchDescriptor) null, true);
+
+            if (keyEquals(row_template, row, nKeyFields))
+                return(slot);
+        }
+
+        return(-1);
+    }
+
+    /**
+     * Return the latched page of the bucket holding a row which is equal to
+     * row in all its columns, with getLastSlot() set to its slot, or null if
+     * there is no such row.
+     * <p>
+     * The caller must not hold any latch of the index.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    Page findRow(DataValueDescriptor[] row, int h)
+        throws StandardException
+    {
+        Page page = getBucket(h);
+
+        while (page != null)
+        {
+            last_slot = findRowOnPage(page, row, h);
+
+            if (last_slot >= 0)
+                return(page);
+
+            Page next = getNextPage(page);
+            page.unlatch();
+            page = next;
+        }
+
+        return(null);
+    }
+
+    /**
+     * The slot of the row found by the last findRow().
+     **/
+    int getLastSlot()
+    {
+        return(last_slot);
+    }
+
+    /**************************************************************************
+     * Structure changes:
+     **************************************************************************
+     */
+
+    /**
+     * Make room in the bucket which holds hash code h.
+     * <p>
+     * The change is done in an internal transaction which is committed
+     * before returning, as a b-tree split is.  First the committed deleted
+     * rows of the bucket are purged.  If there are none, the bucket is split,
+     * or else an overflow page is added to it.  The caller must not hold any
+     * latch of the index, and must search the bucket again as the rows may
+     * have moved.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    void growBucket(int h)
+        throws StandardException
+    {
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(isForUpdate(),
+                "Container not opened with update should not cause split");
+        }
+
+        HashIndex           hash       = getHashIndex();
+        TransactionManager  split_xact = getXactMgr().getInternalTransaction();
+        OpenHashIndex       split_open = new OpenHashIndex();
+        boolean             committed  = false;
+
+        try
+        {
+            // Open the index again so that the changes take place in the
+            // internal transaction, which gets no locks on the index.
+            split_open.init(
+                hash,
+                split_xact,
+                split_xact.getRawStoreXact(),
+                false,
+                ContainerHandle.MODE_FORUPDATE,
+                TransactionController.MODE_RECORD,
+                (DynamicCompiledOpenConglomInfo) null);
+
+            split_open.changeStructure(h);
+
+            // The commit closes the container, which releases the latches
+            // the change kept, after the commit log record is written.
+            split_xact.commit();
+            committed = true;
+        }
+        finally
+        {
+            if (!committed)
+            {
+                // Release the latches before the undo needs them.
+                split_open.close();
+                split_xact.abort();
+            }
+
+            split_xact.destroy();
+
+            hash.invalidateDirectory();
+        }
+    }
+
+    /**
+     * Purge, split or add an overflow page to the bucket holding h.
+     * <p>
+     * All the pages that are changed are left latched, until the internal
+     * transaction commits.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void changeStructure(int h)
+        throws StandardException
+    {
+        ContainerHandle container = getContainer();
+        HashIndex       hash      = getHashIndex();
+
+        Page meta_page = container.getPage(HashIndex.META_PAGE);
+
+        HashIndex.Directory dir = HashIndex.readDirectory(container, meta_page);
+
+        Page primary =
+            container.getPage(dir.pages[h & HashIndex.mask(dir.depth)]);
+
+        readControlRow(primary);
+
+        int     depth = controlDepth();
+        long    bits  = controlBits();
+        long    next  = controlNext();
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT((h & HashIndex.mask(depth)) == (int) bits,
+                "directory entry points to the wrong bucket");
+        }
+
+        if (purgeCommittedDeletes(primary))
+            return;
+
+        if (next == HashIndex.NO_PAGE &&
+            depth < HashIndex.MAX_DEPTH &&
+            canSplit(primary, h))
+        {
+            if (depth == dir.depth)
+                dir = doubleDirectory(meta_page, dir);
+
+            splitBucket(meta_page, dir, primary, depth, (int) bits);
+        }
+        else
+        {
+            addOverflowPage(primary);
+        }
+    }
+
+    /**
+     * Purge the committed deleted rows of a bucket.
+     * <p>
+     * A deleted row is known to be committed if the internal transaction
+     * can get an update lock on it, as in BTreeController, so this only
+     * works with row locking.  The pages which rows were purged from are
+     * left latched.
+     *
+     * @return true if at least one row was purged.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean purgeCommittedDeletes(Page primary)
+        throws StandardException
+    {
+        ConglomerateController base_cc = null;
+
+        try
+        {
+            base_cc =
+                getHashIndex().lockTable(
+                    getXactMgr(),
+                    (ContainerHandle.MODE_FORUPDATE |
+                     ContainerHandle.MODE_LOCK_NOWAIT),
+                    TransactionController.MODE_RECORD,
+                    TransactionController.ISOLATION_REPEATABLE_READ);
+        }
+        catch (StandardException se)
+        {
+            // any error just don't try to reclaim deleted rows.  The
+            // expected error is that we can't get the lock.
+        }
+
+        if (base_cc == null)
+            return(false);
+
+        initTemplates();
+
+        int         loc_column      = getHashIndex().rowLocationColumn;
+        RowLocation row_loc         = (RowLocation) row_template[loc_column];
+        FetchDescriptor lock_fetch_desc =
+            RowUtil.getFetchDescriptorConstant(loc_column);
+
+        boolean purged = false;
+        Page    page   = primary;
+
+        while (page != null)
+        {
+            boolean purged_on_page = false;
+
+            if (page.recordCount() - 1 > page.nonDeletedRecordCount())
+            {
+                // loop backward so that purges don't move the rows which
+                // are still to be looked at.
+                for (int slot = page.recordCount() - 1; slot > 0; slot--)
+                {
+                    if (page.isDeletedAtSlot(slot))
+                    {
+                        page.fetchFromSlot(
+                            (RecordHandle) null, slot, row_template,
+                            lock_fetch_desc, true);
+
+                        if (base_cc.lockRow(
+                                row_loc,
+                                ConglomerateController.LOCK_UPD,
+                                false /* NOWAIT */,
+                                TransactionManager.LOCK_COMMIT_DURATION))
+                        {
+                            page.purgeAtSlot(slot, 1, true);
+                            purged_on_page = true;
+                        }
+                    }
+                }
+            }
+
+            Page next = getNextPage(page);
+
+            if (purged_on_page)
+            {
+                // Keep the latch until the purge commits, and tell scans
+                // positioned on the page that rows have gone.
+                page.setRepositionNeeded();
+                purged = true;
+            }
+            else if (page != primary)
+            {
+                page.unlatch();
+            }
+
+            page = next;
+        }
+
+        return(purged);
+    }
+
+    /**
+     * Would splitting the bucket separate the rows, and the row to insert
+     * whose hash code is h?  Not if they all agree on the bits a bucket can
+     * be split on.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private boolean canSplit(Page primary, int h)
+        throws StandardException
+    {
+        int max_mask = HashIndex.mask(HashIndex.MAX_DEPTH);
+
+        for (int slot = primary.recordCount() - 1; slot > 0; slot--)
+        {
+            if ((hashAtSlot(primary, slot) & max_mask) != (h & max_mask))
+                return(true);
+        }
+
+        return(false);
+    }
+
+    /**
+     * Double the directory, the new half is a copy of the old half.
+     * <p>
+     * The meta page is latched, the directory pages are latched one at a
+     * time.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private HashIndex.Directory doubleDirectory(
+    Page                meta_page,
+    HashIndex.Directory dir)
+        throws StandardException
+    {
+        ContainerHandle container = getContainer();
+        int             size      = dir.pages.length;
+        long[]          pages     = new long[2 * size];
+        SQLLongint      page_col  = new SQLLongint();
+        DataValueDescriptor[] page_row = new DataValueDescriptor[] {page_col};
+
+        System.arraycopy(dir.pages, 0, pages, 0, size);
+        System.arraycopy(dir.pages, 0, pages, size, size);
+
+        Page dir_page = null;
+
+        try
+        {
+            for (int i = size; i < pages.length; i++)
+            {
+                int dir_slot = i % HashIndex.DIRECTORY_ENTRIES_PER_PAGE;
+                int meta_slot =
+                    HashIndex.FIRST_DIRECTORY_SLOT +
+                        i / HashIndex.DIRECTORY_ENTRIES_PER_PAGE;
+
+                if (dir_page == null)
+                {
+                    if (dir_slot == 0)
+                    {
+                        dir_page = container.addPage();
+                        HashIndex.insertControlRow(
+                            meta_page, meta_slot,
+                            new SQLLongint(dir_page.getPageNumber()));
+                    }
+                    else
+                    {
+                        meta_page.fetchFromSlot(
+                            (RecordHandle) null, meta_slot, page_row,
+                            (FetchDescriptor) null, true);
+                        dir_page = container.getPage(page_col.getLong());
+                    }
+                }
+
+                HashIndex.insertControlRow(
+                    dir_page, dir_slot, new SQLLongint(pages[i]));
+
+                if (dir_slot == HashIndex.DIRECTORY_ENTRIES_PER_PAGE - 1)
+                {
+                    dir_page.unlatch();
+                    dir_page = null;
+                }
+            }
+        }
+        finally
+        {
+            if (dir_page != null)
+                dir_page.unlatch();
+        }
+
+        meta_page.updateAtSlot(
+            HashIndex.DEPTH_SLOT,
+            new DataValueDescriptor[] {new SQLInteger(dir.depth + 1)},
+            (FormatableBitSet) null);
+
+        return(new HashIndex.Directory(dir.depth + 1, pages));
+    }
+
+    /**
+     * Split a bucket with no overflow pages on bit depth of the hash codes.
+     * <p>
+     * The rows with the bit set move to a new page, in the same order, and
+     * the directory entries whose depth + 1 low order bits are the bits of
+     * the new bucket are pointed at it.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void splitBucket(
+    Page                meta_page,
+    HashIndex.Directory dir,
+    Page                primary,
+    int                 depth,
+    int                 bits)
+        throws StandardException
+    {
+        ContainerHandle container = getContainer();
+        int             new_bits  = bits | (1 << depth);
+
+        Page new_page = container.addPage();
+
+        new_page.insertAtSlot(
+            Page.FIRST_SLOT_NUMBER,
+            HashIndex.newControlRow(depth + 1, new_bits, HashIndex.NO_PAGE),
+            (FormatableBitSet) null,
+            (LogicalUndo) null,
+            Page.INSERT_DEFAULT,
+            AccessFactoryGlobals.HASH_OVERFLOW_THRESHOLD);
+
+        primary.updateAtSlot(
+            Page.FIRST_SLOT_NUMBER,
+            HashIndex.newControlRow(depth + 1, bits, HashIndex.NO_PAGE),
+            (FormatableBitSet) null);
+
+        // Move the rows from the last one back, each one in front of the
+        // ones moved before it, so they stay in order.
+        for (int slot = primary.recordCount() - 1; slot > 0; slot--)
+        {
+            if ((hashAtSlot(primary, slot) & (1 << depth)) != 0)
+            {
+                primary.copyAndPurge(
+                    new_page, slot, 1, Page.FIRST_SLOT_NUMBER + 1);
+            }
+        }
+
+        primary.setRepositionNeeded();
+
+        // Point the directory entries of the new bucket at the new page.
+        long                    new_pageno = new_page.getPageNumber();
+        DataValueDescriptor[]   new_entry  =
+            new DataValueDescriptor[] {new SQLLongint(new_pageno)};
+        SQLLongint              page_col   = new SQLLongint();
+        DataValueDescriptor[]   page_row   =
+            new DataValueDescriptor[] {page_col};
+        Page                    dir_page   = null;
+        int                     dir_page_index = -1;
+
+        try
+        {
+            for (int i = new_bits; i < dir.pages.length; i += 2 << depth)
+            {
+                int p = i / HashIndex.DIRECTORY_ENTRIES_PER_PAGE;
+
+                if (p != dir_page_index)
+                {
+                    if (dir_page != null)
+                        dir_page.unlatch();
+
+                    meta_page.fetchFromSlot(
+                        (RecordHandle) null,
+                        HashIndex.FIRST_DIRECTORY_SLOT + p, page_row,
+                        (FetchDescriptor) null, true);
+                    dir_page       = container.getPage(page_col.getLong());
+                    dir_page_index = p;
+                }
+
+                dir_page.updateAtSlot(
+                    i % HashIndex.DIRECTORY_ENTRIES_PER_PAGE,
+                    new_entry,
+                    (FormatableBitSet) null);
+            }
+        }
+        finally
+        {
+            if (dir_page != null)
+                dir_page.unlatch();
+        }
+    }
+
+    /**
+     * Add an overflow page at the end of the chain of a bucket.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    private void addOverflowPage(Page primary)
+        throws StandardException
+    {
+        Page last = primary;
+        Page next;
+
+        while ((next = getNextPage(last)) != null)
+        {
+            if (last != primary)
+                last.unlatch();
+            last = next;
+        }
+
+        readControlRow(last);
+
+        Page new_page = getContainer().addPage();
+
+        new_page.insertAtSlot(
+            Page.FIRST_SLOT_NUMBER,
+            HashIndex.newControlRow(
+                HashIndex.OVERFLOW_PAGE,
+                primary.getPageNumber(),
+                HashIndex.NO_PAGE),
+            (FormatableBitSet) null,
+            (LogicalUndo) null,
+            Page.INSERT_DEFAULT,
+            AccessFactoryGlobals.HASH_OVERFLOW_THRESHOLD);
+
+        last.updateAtSlot(
+            Page.FIRST_SLOT_NUMBER,
+            HashIndex.newControlRow(
+                controlDepth(), controlBits(), new_page.getPageNumber()),
+            (FormatableBitSet) null);
+    }
+}
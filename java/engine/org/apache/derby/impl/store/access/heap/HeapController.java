@@ -165,7 +165,9 @@ public class HeapController
                             RowUtil.EMPTY_ROW_FETCH_DESCRIPTOR,
                             true);
 
+                    // a row that a snapshot may still see is kept.
                     row_is_committed_delete =
+                        !open_conglom.isVersioned(rh) &&
                         this.lockRowAtSlotNoWaitExclusive(rh);
 
                     if (row_is_committed_delete)
@@ -256,6 +258,8 @@ public class HeapController
             // for the row.
             rh = page.insert(row, null, insert_mode,
 				AccessFactoryGlobals.HEAP_OVERFLOW_THRESHOLD);
+            if (rh != null)
+                open_conglom.saveInsertVersion(rh);
             page.unlatch();
             page = null;
 
@@ -289,6 +293,8 @@ public class HeapController
             
             rh = page.insert(row, null, insert_mode,
 				AccessFactoryGlobals.HEAP_OVERFLOW_THRESHOLD);
+            if (rh != null)
+                open_conglom.saveInsertVersion(rh);
 
             page.unlatch();
             page = null;
@@ -308,6 +314,8 @@ public class HeapController
 
         rh = page.insert(row, null, Page.INSERT_OVERFLOW,
 			AccessFactoryGlobals.HEAP_OVERFLOW_THRESHOLD);
+        if (rh != null)
+            open_conglom.saveInsertVersion(rh);
         page.unlatch();
         page = null;
 
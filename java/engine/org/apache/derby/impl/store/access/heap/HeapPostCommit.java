@@ -169,7 +169,10 @@ class HeapPostCommit implements Serviceable
                                     RowUtil.EMPTY_ROW_FETCH_DESCRIPTOR,
                                     true);
 
+                            // a row that a snapshot may still see is kept.
                             row_is_committed_delete =
+                                !heap_control.getOpenConglom().isVersioned(
+                                    rh) &&
                                 heap_control.lockRowAtSlotNoWaitExclusive(rh);
 
                             if (row_is_committed_delete)
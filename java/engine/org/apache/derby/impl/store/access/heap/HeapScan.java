@@ -38,10 +38,13 @@ import org.apache.derby.iapi.store.access.conglomerate.ScanManager;
 import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
 
 import org.apache.derby.iapi.store.access.BackingStoreHashtable;
+import org.apache.derby.iapi.store.access.PageRangeScan;
 import org.apache.derby.iapi.store.access.Qualifier;
 import org.apache.derby.iapi.store.access.RowUtil;
 import org.apache.derby.iapi.store.access.ScanInfo;
 
+import org.apache.derby.iapi.store.raw.ContainerHandle;
+import org.apache.derby.iapi.store.raw.Page;
 import org.apache.derby.iapi.store.raw.RecordHandle;
 
 import org.apache.derby.iapi.types.DataValueDescriptor;
@@ -51,7 +54,7 @@ import org.apache.derby.impl.store.access.conglomerate.GenericScanController;
 import org.apache.derby.impl.store.access.conglomerate.RowPosition;
 
 class HeapScan 
-    extends GenericScanController implements ScanManager
+    extends GenericScanController implements ScanManager, PageRangeScan
 {
 
     /**************************************************************************
@@ -71,6 +74,12 @@ class HeapScan
     private DataValueDescriptor[][] fetchNext_one_slot_array = 
         new DataValueDescriptor[1][];
 
+    /**
+     * The range of pages read by the scan, see setPageRange().
+     **/
+    private long range_first_page = ContainerHandle.FIRST_PAGE_NUMBER;
+    private long range_stop_page  = -1;
+
 
     /**************************************************************************
      * Constructors for This class:
@@ -103,6 +112,75 @@ class HeapScan
                 pos.current_page.getPageKey()));
     }
 
+    /**************************************************************************
+     * Protected methods of GenericScanController class:
+     **************************************************************************
+     */
+
+    /**
+     * Position scan at "start" of the page range of the scan.
+     * <p>
+     * The scan starts on the first page of the container as usual, unless
+     * it is limited to a range of pages which starts further on.  All the
+     * rows on the first page of such a range are user rows, the heap control
+     * row is only on the first page of the container.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    protected void positionAtStartForForwardScan(
+    RowPosition pos)
+        throws StandardException
+    {
+        if (pos.current_rh == null && 
+            range_first_page > ContainerHandle.FIRST_PAGE_NUMBER)
+        {
+            pos.current_page = 
+                open_conglom.getContainer().getNextPage(range_first_page - 1);
+
+            // set up for scan to continue at beginning of this page.
+            pos.current_slot            = Page.FIRST_SLOT_NUMBER - 1;
+            pos.current_rh              = null;
+            this.stat_numpages_visited  = 1;
+            this.setScanState(SCAN_INPROGRESS);
+        }
+        else
+        {
+            super.positionAtStartForForwardScan(pos);
+        }
+
+        positionAtEndOfRange(pos);
+    }
+
+    /**
+     * Position scan to slot before first slot on next page, or at the end
+     * of the scan if the next page is not in the page range of the scan.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+    protected void positionAtNextPage(
+    RowPosition pos)
+        throws StandardException
+    {
+        super.positionAtNextPage(pos);
+
+        positionAtEndOfRange(pos);
+    }
+
+    /**
+     * Release the page the scan is positioned on if it is beyond the page
+     * range of the scan, which ends the scan loop of fetchRows().
+     **/
+    private void positionAtEndOfRange(
+    RowPosition pos)
+    {
+        if (range_stop_page != -1         &&
+            pos.current_page != null      &&
+            pos.current_page.getPageNumber() >= range_stop_page)
+        {
+            pos.unlatch();
+        }
+    }
+
     /**************************************************************************
      * Private/Protected methods of This class:
      **************************************************************************
@@ -298,6 +376,47 @@ class HeapScan
         }
     }
 
+    /**************************************************************************
+     * Public Methods of PageRangeScan interface:
+     **************************************************************************
+     */
+
+    /**
+	@see PageRangeScan#getEstimatedPageCount
+	**/
+    public long getEstimatedPageCount()
+        throws StandardException
+    {
+        if (open_conglom.isClosed())
+            open_conglom.reopen();
+
+        return(open_conglom.getContainer().getEstimatedPageCount(0));
+    }
+
+    /**
+	@see PageRangeScan#setPageRange
+	**/
+    public void setPageRange(long firstPage, long stopPage)
+        throws StandardException
+    {
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(
+                getScanState() == SCAN_INIT || 
+                getScanState() == SCAN_HOLD_INIT,
+                "setPageRange() called on a positioned scan.");
+            SanityManager.ASSERT(
+                firstPage >= ContainerHandle.FIRST_PAGE_NUMBER,
+                "bad first page " + firstPage);
+            SanityManager.ASSERT(
+                stopPage == -1 || stopPage > firstPage,
+                "bad stop page " + stopPage);
+        }
+
+        range_first_page = firstPage;
+        range_stop_page  = stopPage;
+    }
+
     /**************************************************************************
      * Public Methods of ScanController interface:
      **************************************************************************
@@ -37,6 +37,7 @@ import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.store.access.conglomerate.Sort;
 import org.apache.derby.iapi.store.access.conglomerate.SortFactory;
 
+import org.apache.derby.iapi.store.access.AccessFactoryGlobals;
 import org.apache.derby.iapi.store.access.SortObserver;
 import org.apache.derby.iapi.store.access.SortCostController;
 import org.apache.derby.iapi.store.access.ColumnOrdering;
@@ -230,6 +231,22 @@ public class ExternalSortFactory implements
 		sort.initialize(
             template, columnOrdering, sortObserver, 
             alreadyInOrder, estimatedRows, sortBufferMax);
+
+		// Sort with worker threads if the caller asks for it, and if the
+		// sort is expected to need merge runs anyway.  The workers only
+		// merge the runs they write at the end, so the rows of a sort which
+		// would fit in one sort buffer are sorted faster by one thread.
+		// Deferrable sorts remember their duplicates as they are compared,
+		// which is not done by the workers.
+		String threads = (implParameters == null) ? null :
+			implParameters.getProperty(AccessFactoryGlobals.SORT_THREADS);
+		if (threads != null &&
+			estimatedRows > sortBufferMax &&
+			!(sortObserver != null && sortObserver.deferrable()))
+		{
+			sort.sortThreads = Integer.parseInt(threads);
+		}
+
 		return sort;
 	}
 
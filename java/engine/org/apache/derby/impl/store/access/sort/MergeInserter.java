@@ -58,6 +58,12 @@ final class MergeInserter implements SortController
 	**/
 	private SortBuffer sortBuffer;
 
+	/**
+	The worker threads which sort the rows, if the sort is parallel.
+	The inserter then has no sort buffer of its own.
+	**/
+	private SortWorkers workers;
+
 	/**
 	Information about memory usage to dynamically tune the
 	in-memory sort buffer size.
@@ -95,6 +101,17 @@ final class MergeInserter implements SortController
 		// Check that the inserted row is of the correct type
 		sort.checkColumnTypes(row);
 
+		if (workers != null)
+		{
+			// The workers drop duplicates and empty their buffers into
+			// merge runs, which this inserter does not see, so the rows
+			// are only counted as they come in.
+			workers.insert(tran, row);
+			stat_numRowsInput++;
+			stat_numRowsOutput++;
+			return;
+		}
+
 		// Insert the row into the sort buffer, which will
 		// sort it into the right order with the rest of the
 		// rows and remove any duplicates.
@@ -217,7 +234,12 @@ final class MergeInserter implements SortController
 		// Tell the sort that we're closed, and hand off
 		// the sort buffer and the vector of merge runs.
 		if (sort != null)
-			sort.doneInserting(this, sortBuffer, mergeRuns);
+		{
+			if (workers != null)
+				sort.doneInserting(this, workers);
+			else
+				sort.doneInserting(this, sortBuffer, mergeRuns);
+		}
 
         // if this is an external sort, there will actually
         // be one last merge run with the contents of the
@@ -237,6 +259,7 @@ final class MergeInserter implements SortController
 		tran = null;
 		mergeRuns = null;
 		sortBuffer = null;
+		workers = null;
 	}
 
 	/*
@@ -299,6 +322,17 @@ final class MergeInserter implements SortController
 
 		this.sort = sort;
 		this.tran = tran;
+
+		if (sort.sortThreads > 1)
+		{
+			// The sort is expected to be external anyway, see
+			// ExternalSortFactory.createSort().
+			avoidMergeRun = false;
+			stat_sortType = "external";
+			workers = new SortWorkers(sort, sort.sortThreads);
+			return workers.start();
+		}
+
 		sortBuffer = new SortBuffer(sort);
 		if (sortBuffer.init() == false)
 			return false;
@@ -155,11 +155,24 @@ class MergeSort implements Sort
 	**/
 	private SortBuffer sortBuffer = null;
 
+	/**
+	The worker threads which sorted the rows, if the sort is parallel,
+	until their sort buffers are handed over on the first scan.
+	**/
+	private SortWorkers workers = null;
+
 	/**
 	The maximum number of entries a sort buffer can hold.
 	**/
 	int sortBufferMax;
 
+	/**
+	The number of worker threads to sort the rows with, set by the factory
+	when the sort is parallel.  0 or 1 if the rows are sorted by the
+	inserting thread.
+	**/
+	int sortThreads;
+
 	/**
 	The minimum number of entries a sort buffer can hold.
 	**/
@@ -224,6 +237,9 @@ class MergeSort implements Sort
 		if (SanityManager.DEBUG)
 			SanityManager.ASSERT(state == STATE_DONE_INSERTING);
 
+		if (workers != null)
+			finishWorkers(tran);
+
 		if (mergeRuns == null || mergeRuns.size() == 0)
 		{
 			// There were no merge runs so we can just return
@@ -280,6 +296,9 @@ class MergeSort implements Sort
 		if (SanityManager.DEBUG)
 			SanityManager.ASSERT(state == STATE_DONE_INSERTING);
 
+		if (workers != null)
+			finishWorkers(tran);
+
 		ScanControllerRowSource rowSource = null;
 
 		if (mergeRuns == null || mergeRuns.size() == 0)
@@ -345,6 +364,16 @@ class MergeSort implements Sort
 			inserter.completedInserts();
 		inserter = null;
 
+		// Stop the workers of a parallel sort, and take over the merge
+		// runs they wrote.
+		if (workers != null)
+		{
+			workers.stop();
+			if (mergeRuns == null)
+				mergeRuns = workers.takeMergeRuns();
+			workers = null;
+		}
+
 		// Make sure the scan is closed, if there is one.
 		// This will cause the callback to doneScanning().
 		if (scan != null)
@@ -591,6 +620,35 @@ class MergeSort implements Sort
 		this.state = STATE_DONE_INSERTING;
 	}
 
+	/**
+	The inserter of a parallel sort is closing.  The rows may still be
+	being sorted by the workers.
+	**/
+	void doneInserting(MergeInserter inserter, SortWorkers workers)
+	{
+        if (SanityManager.DEBUG)
+        {
+    		SanityManager.ASSERT(state == STATE_INSERTING);
+    	}
+
+		this.workers = workers;
+		this.inserter = null;
+
+		this.state = STATE_DONE_INSERTING;
+	}
+
+	/**
+	Wait for the workers of a parallel sort to sort all the rows, and take
+	over the merge runs and the sort buffer they leave.
+	**/
+	private void finishWorkers(TransactionManager tran)
+		throws StandardException
+	{
+		sortBuffer = workers.finish(tran);
+		mergeRuns = workers.takeMergeRuns();
+		workers = null;
+	}
+
 	void doneScanning(Scan scan, SortBuffer sortBuffer)
 	{
 		if (SanityManager.DEBUG)
@@ -23,6 +23,7 @@ package org.apache.derby.impl.store.access.sort;
 
 import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.store.access.SortObserver;
 
 import org.apache.derby.iapi.types.DataValueDescriptor;
 
@@ -65,6 +66,12 @@ class SortBuffer
 	**/
 	private MergeSort sort;
 
+	/**
+	The sort observer called for the inserted keys.  Normally the
+	observer of the sort.
+	**/
+	private SortObserver sortObserver;
+
 	/**
 	Where to allocate nodes from.
 	**/
@@ -133,6 +140,16 @@ class SortBuffer
 	SortBuffer(MergeSort sort)
 	{
 		this.sort = sort;
+		this.sortObserver = sort.sortObserver;
+	}
+
+	/**
+	Call the given observer for the keys inserted from now on,
+	instead of the observer of the sort.
+	**/
+	void setSortObserver(SortObserver sortObserver)
+	{
+		this.sortObserver = sortObserver;
 	}
 
 	/**
@@ -212,8 +229,8 @@ class SortBuffer
 
 		if (head.rightLink == null)
 		{
-			if ((sort.sortObserver != null) && 
-				((k = sort.sortObserver.insertNonDuplicateKey(k)) == null))
+			if ((sortObserver != null) && 
+				((k = sortObserver.insertNonDuplicateKey(k)) == null))
 			{
 				return INSERT_DUPLICATE;
 			}
@@ -242,8 +259,8 @@ class SortBuffer
 
 				// See if we can use the aggregators
 				// to get rid of the new key.
-				if ((sort.sortObserver != null) &&
-					((k = sort.sortObserver.insertDuplicateKey(k, p.key)) == null))
+				if ((sortObserver != null) &&
+					((k = sortObserver.insertDuplicateKey(k, p.key)) == null))
 				{
 					return INSERT_DUPLICATE;
 				}
@@ -311,8 +328,8 @@ class SortBuffer
 		 * Initialize it.
 		 */
 
-		if ((sort.sortObserver != null) && 
-			((k = sort.sortObserver.insertNonDuplicateKey(k)) == null))
+		if ((sortObserver != null) && 
+			((k = sortObserver.insertNonDuplicateKey(k)) == null))
 		{
 			return INSERT_DUPLICATE;
 		}
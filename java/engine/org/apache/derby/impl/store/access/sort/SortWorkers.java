@@ -0,0 +1,602 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.access.sort.SortWorkers
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.access.sort;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Vector;
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.store.access.SortObserver;
+import org.apache.derby.iapi.store.access.conglomerate.TransactionManager;
+import org.apache.derby.iapi.types.DataValueDescriptor;
+import org.apache.derby.iapi.util.InterruptStatus;
+
+/**
+
+  The worker threads of a parallel sort.
+  <p>
+  The inserting thread copies the rows into batches, and hands the batches
+  to the workers in turn.  Each worker sorts the rows it is given into a
+  sort buffer of its own.  When the buffer of a worker is full, the worker
+  waits until the inserting thread has emptied the buffer into a merge run,
+  so that all the merge runs are written in the transaction of the sort, by
+  the thread which owns it.  Once all the rows are inserted, the buffers of
+  the workers are emptied into merge runs as well, except one which is
+  handed back to the sort, and the runs are merged as for any external
+  sort.  Duplicates in the rows given to one worker are seen by its sort
+  buffer, duplicates across workers are seen by the merge.
+  <p>
+  The sort observer of the sort is called by the workers for the
+  duplicates only, the rows are already copied by the inserting thread.
+  This suits the observers used to build indexes, which keep no state for
+  the rows they are given.
+  <p>
+  MT - all the state shared with the workers is protected by the monitor of
+  this object.  A sort buffer is only used by its worker, or by the
+  inserting thread while the worker waits for it to be emptied.
+
+**/
+
+final class SortWorkers
+{
+	/**
+	The number of rows handed to a worker at once.
+	**/
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	The number of batches which may wait for a worker.
+	**/
+	private static final int MAX_QUEUED_BATCHES = 4;
+
+	/**
+	The sort observer used by the sort buffers of the workers.
+	**/
+	private final class WorkerSortObserver implements SortObserver
+	{
+		public DataValueDescriptor[] insertNonDuplicateKey(
+		DataValueDescriptor[] insertRow)
+		{
+			return insertRow;
+		}
+
+		public DataValueDescriptor[] insertDuplicateKey(
+		DataValueDescriptor[] insertRow,
+		DataValueDescriptor[] existingRow)
+			throws StandardException
+		{
+			if (sort.sortObserver.insertDuplicateKey(
+					insertRow, existingRow) == null)
+				return null;
+			return insertRow;
+		}
+
+		public void addToFreeList(
+		DataValueDescriptor[] objectArray, int maxFreeListSize)
+		{
+		}
+
+		public DataValueDescriptor[] getArrayClone()
+			throws StandardException
+		{
+			return sort.sortObserver.getArrayClone();
+		}
+
+		public boolean deferred()
+		{
+			return false;
+		}
+
+		public boolean deferrable()
+		{
+			return false;
+		}
+
+		public void rememberDuplicate(DataValueDescriptor[] row)
+		{
+		}
+	}
+
+	/**
+	A worker thread and its sort buffer.
+	**/
+	private final class Worker implements Runnable
+	{
+		/** The batches of rows to sort, the last one is null. */
+		private final ArrayList<DataValueDescriptor[][]> queue =
+			new ArrayList<DataValueDescriptor[][]>();
+
+		/** The sort buffer the rows are sorted into. */
+		SortBuffer buffer;
+
+		/** The number of rows inserted since the buffer was emptied. */
+		int rows;
+
+		/** Is the buffer full, and waiting to be emptied? */
+		boolean full;
+
+		/** Has the worker finished? */
+		boolean done;
+
+		Thread thread;
+
+		public void run()
+		{
+			try
+			{
+				DataValueDescriptor[][] batch;
+				while ((batch = take()) != null)
+				{
+					for (int i = 0; i < batch.length; i++)
+					{
+						if (batch[i] == null)
+							break;
+
+						while (buffer.insert(batch[i]) ==
+								   SortBuffer.INSERT_FULL)
+						{
+							waitForRoom();
+						}
+						rows++;
+					}
+				}
+			}
+			catch (Throwable t)
+			{
+				setError(t);
+			}
+			finally
+			{
+				synchronized (SortWorkers.this)
+				{
+					done = true;
+					SortWorkers.this.notifyAll();
+				}
+			}
+		}
+
+		/** Take the next batch off the queue, wait for one if need be. */
+		private DataValueDescriptor[][] take() throws StandardException
+		{
+			synchronized (SortWorkers.this)
+			{
+				checkStopped();
+				while (queue.isEmpty())
+				{
+					waitOnMonitor();
+					checkStopped();
+				}
+
+				DataValueDescriptor[][] batch = queue.remove(0);
+				SortWorkers.this.notifyAll();
+				return batch;
+			}
+		}
+
+		/** Wait until the inserting thread has emptied the buffer. */
+		private void waitForRoom() throws StandardException
+		{
+			synchronized (SortWorkers.this)
+			{
+				full = true;
+				SortWorkers.this.notifyAll();
+
+				while (full)
+				{
+					checkStopped();
+					waitOnMonitor();
+				}
+			}
+		}
+	}
+
+	/**
+	The sort the workers are for.
+	**/
+	private final MergeSort sort;
+
+	private final Worker[] workers;
+
+	/**
+	The merge runs the buffers of the workers were emptied into.
+	**/
+	private Vector<Long> mergeRuns;
+
+	/**
+	The batch being filled by the inserting thread.
+	**/
+	private DataValueDescriptor[][] batch;
+
+	private int batchRows;
+
+	/**
+	The worker the next batch goes to.
+	**/
+	private int nextWorker;
+
+	/**
+	Set when the sort is dropped before the workers are finished.
+	**/
+	private boolean stopped;
+
+	/**
+	The first error raised by a worker, if any.
+	**/
+	private Throwable error;
+
+	/**
+	Create the workers for a sort.
+	@param sort the sort
+	@param threads the number of worker threads
+	**/
+	SortWorkers(MergeSort sort, int threads)
+	{
+		this.sort = sort;
+
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker();
+	}
+
+	/**
+	Create the sort buffers, and start the worker threads.
+	@return true if the sort buffers could be initialized
+	**/
+	boolean start()
+	{
+		WorkerSortObserver observer = new WorkerSortObserver();
+
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i].buffer = new SortBuffer(sort);
+			if (!workers[i].buffer.init())
+				return false;
+			workers[i].buffer.setSortObserver(observer);
+		}
+
+		ModuleFactory monitor = getMonitor();
+
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i].thread = monitor.getDaemonThread(
+					workers[i], "sortWorker-" + i, false);
+			workers[i].thread.start();
+		}
+		return true;
+	}
+
+	/**
+	Insert a row into the sort.  The row is copied, and may be reused by
+	the caller.
+	@param tran the transaction of the sort
+	@param row the row to insert
+	@exception StandardException if a worker has failed
+	**/
+	void insert(TransactionManager tran, DataValueDescriptor[] row)
+		throws StandardException
+	{
+		if (batch == null)
+			batch = new DataValueDescriptor[BATCH_SIZE][];
+
+		// Same copy as BasicSortObserver makes, with the streams
+		// materialized.
+		DataValueDescriptor[] copy = new DataValueDescriptor[row.length];
+		for (int i = 0; i < row.length; i++)
+			copy[i] = row[i].cloneValue(true);
+
+		batch[batchRows++] = copy;
+		if (batchRows == BATCH_SIZE)
+			dispatch(tran, batch);
+	}
+
+	/**
+	Wait until the workers have sorted all the rows, and empty all but
+	one of their sort buffers into merge runs.
+	@param tran the transaction of the sort
+	@return the sort buffer left, which may hold rows
+	@exception StandardException if a worker has failed
+	**/
+	SortBuffer finish(TransactionManager tran)
+		throws StandardException
+	{
+		if (batchRows > 0)
+			dispatch(tran, batch);
+
+		for (int i = 0; i < workers.length; i++)
+			queue(tran, workers[i], null);
+
+		for (int i = 0; i < workers.length; i++)
+		{
+			for (;;)
+			{
+				Worker w;
+				synchronized (this)
+				{
+					checkError();
+					if (workers[i].done)
+						break;
+
+					w = findFullWorker();
+					if (w == null)
+					{
+						waitOnMonitor();
+						continue;
+					}
+				}
+				spill(tran, w);
+			}
+		}
+		join();
+		checkError();
+
+		// Keep the buffer of the last worker with rows, so that the sort
+		// stays in memory if only one worker got any.
+		int keep = 0;
+		for (int i = 0; i < workers.length; i++)
+		{
+			if (workers[i].rows > 0)
+				keep = i;
+		}
+
+		SortBuffer kept = null;
+		for (int i = 0; i < workers.length; i++)
+		{
+			Worker w = workers[i];
+			if (i == keep)
+			{
+				kept = w.buffer;
+			}
+			else
+			{
+				if (w.rows > 0)
+					addMergeRun(sort.createMergeRun(tran, w.buffer));
+				w.buffer.close();
+			}
+			w.buffer = null;
+		}
+
+		kept.setSortObserver(sort.sortObserver);
+		return kept;
+	}
+
+	/**
+	Stop the workers without waiting for them to sort their rows, and
+	free their sort buffers.  Must not cause any errors, it is called when
+	the sort is dropped.
+	**/
+	void stop()
+	{
+		synchronized (this)
+		{
+			stopped = true;
+			notifyAll();
+		}
+
+		join();
+
+		for (int i = 0; i < workers.length; i++)
+		{
+			if (workers[i].buffer != null)
+			{
+				workers[i].buffer.close();
+				workers[i].buffer = null;
+			}
+		}
+	}
+
+	/**
+	Return the merge runs the sort buffers were emptied into, null if
+	there are none.  The caller becomes the owner of the runs.
+	**/
+	Vector<Long> takeMergeRuns()
+	{
+		Vector<Long> runs = mergeRuns;
+		mergeRuns = null;
+		return runs;
+	}
+
+	/**
+	Hand a batch to the next worker, and start a new batch.
+	**/
+	private void dispatch(
+	TransactionManager      tran,
+	DataValueDescriptor[][] rows)
+		throws StandardException
+	{
+		queue(tran, workers[nextWorker], rows);
+		nextWorker = (nextWorker + 1) % workers.length;
+
+		batch = null;
+		batchRows = 0;
+	}
+
+	/**
+	Add a batch to the queue of a worker, once there is room for it.
+	While the queue is full, empty the buffers of the workers which wait
+	for it, or the worker might never take from its queue again.
+	**/
+	private void queue(
+	TransactionManager      tran,
+	Worker                  worker,
+	DataValueDescriptor[][] rows)
+		throws StandardException
+	{
+		for (;;)
+		{
+			Worker w;
+			synchronized (this)
+			{
+				checkError();
+				if (worker.queue.size() < MAX_QUEUED_BATCHES)
+				{
+					worker.queue.add(rows);
+					notifyAll();
+					return;
+				}
+
+				w = findFullWorker();
+				if (w == null)
+				{
+					waitOnMonitor();
+					continue;
+				}
+			}
+			spill(tran, w);
+		}
+	}
+
+	/**
+	Return a worker which waits for its buffer to be emptied, if any.
+	**/
+	private Worker findFullWorker()
+	{
+		for (int i = 0; i < workers.length; i++)
+		{
+			if (workers[i].full)
+				return workers[i];
+		}
+		return null;
+	}
+
+	/**
+	Empty the full sort buffer of a worker into a merge run, and let the
+	worker go on.  The worker waits until then, so the monitor need not
+	be held while the run is written.
+	**/
+	private void spill(TransactionManager tran, Worker w)
+		throws StandardException
+	{
+		addMergeRun(sort.createMergeRun(tran, w.buffer));
+
+		synchronized (this)
+		{
+			w.rows = 0;
+			w.full = false;
+			notifyAll();
+		}
+	}
+
+	private void addMergeRun(long containerId)
+	{
+		if (mergeRuns == null)
+			mergeRuns = new Vector<Long>();
+		mergeRuns.addElement(new Long(containerId));
+	}
+
+	/** Wait for the worker threads to exit. */
+	private void join()
+	{
+		for (int i = 0; i < workers.length; i++)
+		{
+			Thread t = workers[i].thread;
+
+			if (t == null)
+				continue;
+
+			for (;;)
+			{
+				try
+				{
+					t.join();
+					break;
+				}
+				catch (InterruptedException ie)
+				{
+					InterruptStatus.setInterrupted();
+				}
+			}
+			workers[i].thread = null;
+		}
+	}
+
+	/**
+	Wait on the monitor of this object, which the caller must hold.
+	**/
+	private void waitOnMonitor()
+	{
+		try
+		{
+			wait();
+		}
+		catch (InterruptedException ie)
+		{
+			InterruptStatus.setInterrupted();
+		}
+	}
+
+	private synchronized void setError(Throwable t)
+	{
+		if (error == null)
+			error = t;
+		notifyAll();
+	}
+
+	/**
+	Make a worker give up when the sort is dropped.
+	**/
+	private void checkStopped() throws StandardException
+	{
+		if (stopped)
+		{
+			throw StandardException.newException(
+				SQLState.SORT_COULD_NOT_INIT);
+		}
+	}
+
+	private synchronized void checkError() throws StandardException
+	{
+		Throwable t = error;
+
+		if (t == null)
+			return;
+		if (t instanceof StandardException)
+			throw (StandardException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+
+		throw StandardException.plainWrapException(t);
+	}
+
+	/**
+	 * Privileged Monitor lookup. Must be private so that user code
+	 * can't call this entry point.
+	 */
+	private static ModuleFactory getMonitor()
+	{
+		return AccessController.doPrivileged
+			(
+			 new PrivilegedAction<ModuleFactory>()
+			 {
+				 public ModuleFactory run()
+				 {
+					 return Monitor.getMonitor();
+				 }
+			 }
+			 );
+	}
+}
@@ -187,6 +187,17 @@ public class AllocPage extends StoredPage
 		return StoredFormatIds.RAW_STORE_ALLOC_PAGE;
 	}
 
+	/**
+		The first alloc page holds the container header, which the container
+		writes to disk without going through the page cache, so the image of
+		an alloc page is never kept in the off-heap page cache.
+
+		@see CachedPage#canKeepImageOffHeap
+	*/
+	protected boolean canKeepImageOffHeap() {
+		return false;
+	}
+
 	/*****************************************************************
 	 * alloc page header
 	 *****************************************************************/
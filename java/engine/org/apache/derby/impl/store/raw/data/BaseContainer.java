@@ -33,6 +33,7 @@ import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.store.access.TransactionController;
 import org.apache.derby.iapi.store.access.SpaceInfo;
 
+import org.apache.derby.iapi.store.raw.AuxObject;
 import org.apache.derby.iapi.store.raw.ContainerHandle;
 import org.apache.derby.iapi.store.raw.LockingPolicy;
 import org.apache.derby.iapi.store.raw.Page;
@@ -102,6 +103,13 @@ abstract class BaseContainer implements Lockable {
 	*/
 	protected boolean isReusableRecordId = false;
 
+	/**
+		The aux object of the container, shared by all its open handles.
+
+		<BR> MT - Mutable : set and cleared while synchronized on this object.
+	*/
+	private volatile AuxObject auxObject;
+
 	BaseContainer() {
 	}
 
@@ -124,6 +132,14 @@ abstract class BaseContainer implements Lockable {
 			SanityManager.ASSERT(identity != null);
 		}
 
+		AuxObject aux;
+		synchronized (this) {
+			aux = auxObject;
+			auxObject = null;
+		}
+		if (aux != null)
+			aux.auxObjectInvalidated();
+
 		identity = null;
 	}
 
@@ -610,6 +626,22 @@ abstract class BaseContainer implements Lockable {
 		return RawContainerHandle.NORMAL;
 	}
 
+	/**
+		@see ContainerHandle#getAuxObject
+	*/
+	public AuxObject getAuxObject() {
+		return auxObject;
+	}
+
+	/**
+		@see ContainerHandle#setAuxObject
+	*/
+	public synchronized AuxObject setAuxObject(AuxObject aux) {
+		if (auxObject == null)
+			auxObject = aux;
+		return auxObject;
+	}
+
 	public long getContainerId() {
 		return identity.getContainerId();
 	}
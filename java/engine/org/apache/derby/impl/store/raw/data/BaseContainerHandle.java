@@ -28,6 +28,7 @@ import org.apache.derby.iapi.services.locks.VirtualLockTable;
 import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.error.StandardException;
 import org.apache.derby.iapi.store.access.SpaceInfo;
+import org.apache.derby.iapi.store.raw.AuxObject;
 import org.apache.derby.iapi.store.raw.ContainerHandle;
 import org.apache.derby.iapi.store.raw.ContainerLock;
 import org.apache.derby.iapi.store.raw.LockingPolicy;
@@ -123,6 +124,14 @@ public class BaseContainerHandle extends Observable
 	private PageActions		            actionsSet;
 	private AllocationActions           allocActionsSet;
 
+	/**
+		The state of the sequential read-ahead of this handle, null until
+		it first reads a page with read-ahead enabled.
+
+		<BR> MT - Mutable : scoped
+	*/
+	PageReadAhead.Stream                readAhead;
+
 
 	/*
 	** Constructor
@@ -919,6 +928,32 @@ public class BaseContainerHandle extends Observable
 		locking = newLockingPolicy;
 	}
 
+	/**
+		@see ContainerHandle#getAuxObject
+	*/
+	public AuxObject getAuxObject() 
+    {
+		if (SanityManager.DEBUG) 
+        {
+			SanityManager.ASSERT(container != null);
+		}
+
+		return container.getAuxObject();
+	}
+
+	/**
+		@see ContainerHandle#setAuxObject
+	*/
+	public AuxObject setAuxObject(AuxObject aux) 
+    {
+		if (SanityManager.DEBUG) 
+        {
+			SanityManager.ASSERT(container != null);
+		}
+
+		return container.setAuxObject(aux);
+	}
+
 	/**
 		Was I opened for updates?
         <p>
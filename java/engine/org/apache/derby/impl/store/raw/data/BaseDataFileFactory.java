@@ -27,10 +27,10 @@ import org.apache.derby.iapi.security.SecurityUtil;
 import org.apache.derby.iapi.services.info.ProductVersionHolder;
 
 import org.apache.derby.database.Database;
+import org.apache.derby.iapi.services.cache.BatchCleanableFactory;
 import org.apache.derby.iapi.services.cache.CacheFactory;
 import org.apache.derby.iapi.services.cache.CacheManager;
 import org.apache.derby.iapi.services.cache.Cacheable;
-import org.apache.derby.iapi.services.cache.CacheableFactory;
 import org.apache.derby.iapi.services.context.ContextManager;
 import org.apache.derby.iapi.services.daemon.DaemonService;
 import org.apache.derby.iapi.services.daemon.Serviceable;
@@ -116,7 +116,7 @@ that file was made to inherit from this one.
 **/
 
 public class BaseDataFileFactory
-    implements DataFactory, CacheableFactory, ModuleControl, ModuleSupportable, PrivilegedExceptionAction<Object>
+    implements DataFactory, BatchCleanableFactory, ModuleControl, ModuleSupportable, PrivilegedExceptionAction<Object>
 {
 
     StorageFactory storageFactory;
@@ -135,6 +135,39 @@ public class BaseDataFileFactory
 
 	private     LogFactory	    logFactory;
 
+	// derby.storage.checkpointWriteRate: the max number of pages per second
+	// the page writer writes between incremental checkpoints.
+	private static final int DEFAULT_CHECKPOINT_WRITE_RATE = 500;
+	private static final int CHECKPOINT_WRITE_RATE_MAX = 1000000;
+	private     int             checkpointWriteRate;
+
+	// writes out dirty pages in the background, started by the first
+	// incremental checkpoint. MT - protected by this.
+	private     PageWriter      pageWriter;
+
+	// derby.storage.pageWriteThreads: the number of threads that write
+	// batches of dirty pages, 0 to write the pages one at a time.
+	private static final int PAGE_WRITE_THREADS_MAX = 64;
+
+	// writes batches of dirty pages cleaned by the page cache, null if
+	// pages are written one at a time.
+	private     BatchPageWriter batchPageWriter;
+
+	// derby.storage.readAheadPages: the max number of pages read ahead of
+	// a sequential scan, 0 to not read ahead.
+	private static final int READ_AHEAD_PAGES_MAX = 1024;
+
+	// the max size of the off-heap page cache in megabytes
+	private static final int OFF_HEAP_PAGE_CACHE_SIZE_MAX = 1024 * 1024;
+
+	// reads pages ahead of sequential scans, null if pages are not read
+	// ahead.
+	private     PageReadAhead   pageReadAhead;
+
+	// keeps the images of clean pages evicted from the page cache in
+	// direct memory, null if there is no off-heap page cache
+	private     OffHeapPageCache offHeapPageCache;
+
 	private     ProductVersionHolder jbmsVersion;
 	
 	private     String          jvmVersion;
@@ -439,6 +472,38 @@ public class BaseDataFileFactory
             cf.newCacheManager(
                 this, "PageCache", pageCacheSize / 2, pageCacheSize);
 
+		int offHeapPageCacheSize =
+            PropertyUtil.getSystemInt(Property.OFF_HEAP_PAGE_CACHE_SIZE,
+                                      0,
+                                      OFF_HEAP_PAGE_CACHE_SIZE_MAX,
+                                      0);
+
+		if (offHeapPageCacheSize > 0)
+		{
+			offHeapPageCache =
+                new OffHeapPageCache(offHeapPageCacheSize * 1024L * 1024L);
+		}
+
+		checkpointWriteRate =
+            PropertyUtil.getSystemInt(Property.CHECKPOINT_WRITE_RATE,
+                                      1,
+                                      CHECKPOINT_WRITE_RATE_MAX,
+                                      DEFAULT_CHECKPOINT_WRITE_RATE);
+
+		int pageWriteThreads =
+            PropertyUtil.getSystemInt(Property.PAGE_WRITE_THREADS,
+                                      0,
+                                      PAGE_WRITE_THREADS_MAX,
+                                      0);
+
+		// read at most a quarter of the page cache ahead of a scan
+		int readAheadPages =
+            Math.min(PropertyUtil.getSystemInt(Property.READ_AHEAD_PAGES,
+                                               0,
+                                               READ_AHEAD_PAGES_MAX,
+                                               0),
+                     pageCacheSize / 4);
+
         // Initialize the container cache
 	    int fileCacheSize = getIntParameter(
                     RawStoreFactory.CONTAINER_CACHE_SIZE_PARAMETER,
@@ -451,6 +516,19 @@ public class BaseDataFileFactory
             cf.newCacheManager(
                 this, "ContainerCache", fileCacheSize / 2, fileCacheSize);
 
+		if (pageWriteThreads > 0)
+		{
+			batchPageWriter =
+                new BatchPageWriter(
+                    this, pageCache, containerCache, pageWriteThreads);
+		}
+
+		if (readAheadPages > 0)
+		{
+			pageReadAhead =
+                new PageReadAhead(pageCache, containerCache, readAheadPages);
+		}
+
         // Register MBeans that allow users to monitor the page cache
         // and the container cache.
         pageCache.registerMBean(dataDirectory);
@@ -518,6 +596,18 @@ public class BaseDataFileFactory
 				rawStoreDaemon.stop();
 		}
 
+		PageWriter writer;
+		synchronized (this)
+		{
+			writer = pageWriter;
+			pageWriter = null;
+		}
+		if (writer != null)
+			writer.stop();
+
+		if (pageReadAhead != null)
+			pageReadAhead.stop();
+
 		boolean logBootTrace = PropertyUtil.getSystemBoolean(Property.LOG_BOOT_TRACE);
 		logMsg(LINE);
 		logMsg(new Date() +
@@ -552,6 +642,13 @@ public class BaseDataFileFactory
 			}
 		}
 
+		// the page cache has been written by its shutdown
+		if (batchPageWriter != null)
+			batchPageWriter.stop();
+
+		// let the direct memory of the off-heap page cache be freed
+		offHeapPageCache = null;
+
 		removeTempDirectory();
 
 		if (isReadOnly())		// do enough to close all files, then return 
@@ -588,6 +685,48 @@ public class BaseDataFileFactory
 		return newContainerObject();
 	}
 
+	/*
+	** BatchCleanableFactory
+	*/
+
+    /**
+     * Clean a batch of objects of the page cache or of the container cache.
+     * <p>
+     * If derby.storage.pageWriteThreads is set, dirty pages are written by
+     * the BatchPageWriter, sorted and with adjacent pages written together.
+     * Otherwise the objects are cleaned one at a time.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     *
+     * @see BatchCleanableFactory#cleanBatch
+     **/
+	public void cleanBatch(CacheManager cm, Cacheable[] objects, int count)
+		throws StandardException
+	{
+		if (cm == pageCache && batchPageWriter != null)
+		{
+			batchPageWriter.cleanBatch(objects, count);
+			return;
+		}
+
+		StandardException error = null;
+		for (int i = 0; i < count; i++)
+		{
+			try
+			{
+				objects[i].clean(false);
+			}
+			catch (StandardException se)
+			{
+				if (error == null)
+					error = se;
+			}
+		}
+
+		if (error != null)
+			throw error;
+	}
+
 	/**
 		Database creation finished
 
@@ -1264,6 +1403,44 @@ public class BaseDataFileFactory
 		containerCache.cleanAll();
 	}
 
+    /**
+     * Implement incremental checkpoint operation.
+     * <p>
+     * Instead of writing every dirty page, the page writer writes only the
+     * pages that it has not written in the background in time, see
+     * PageWriter. The container cache is then cleaned as by checkpoint(),
+     * which syncs every page write done so far, including the ones done by
+     * the page writer and by the page cache cleaner.
+     *
+	 * @exception  StandardException  Standard exception policy.
+     *
+     * @see DataFactory#checkpointIncremental
+     **/
+	public LogInstant checkpointIncremental(
+    LogInstant  writeBefore, 
+    LogInstant  nextTarget)
+		 throws StandardException 
+    {
+		PageWriter writer;
+
+		synchronized (this)
+		{
+			if (pageWriter == null)
+			{
+				pageWriter = new PageWriter(pageCache, checkpointWriteRate);
+				pageWriter.start();
+			}
+
+			writer = pageWriter;
+		}
+
+		LogInstant oldest = writer.checkpoint(writeBefore, nextTarget);
+
+		containerCache.cleanAll();
+
+		return oldest;
+	}
+
 	public void idle() throws StandardException 
     {
 		pageCache.ageOut();
@@ -1470,6 +1647,24 @@ public class BaseDataFileFactory
 		return pageCache;
 	}
 
+    /**
+     * Return the cache of page images kept off the heap, or null if there
+     * is no off-heap page cache.
+     **/
+	OffHeapPageCache getOffHeapPageCache()
+    {
+		return offHeapPageCache;
+	}
+
+    /**
+     * Return the read-ahead of sequential scans, or null if pages are not
+     * read ahead.
+     **/
+	PageReadAhead getPageReadAhead()
+	{
+		return pageReadAhead;
+	}
+
 	/**
 		Ask the log factory to flush up to this log instant.
 
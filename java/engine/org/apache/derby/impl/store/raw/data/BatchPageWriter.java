@@ -0,0 +1,544 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.data.BatchPageWriter
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.data;
+
+import java.io.IOException;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.SQLState;
+import org.apache.derby.iapi.services.cache.CacheManager;
+import org.apache.derby.iapi.services.cache.Cacheable;
+import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.context.ContextService;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.store.raw.ContainerKey;
+import org.apache.derby.iapi.store.raw.PageKey;
+import org.apache.derby.iapi.store.raw.data.DataFactory;
+import org.apache.derby.iapi.util.InterruptStatus;
+
+/**
+ * Writes batches of dirty pages for the page cache, when it is cleaned by a
+ * checkpoint or by its background cleaner.
+ * <p>
+ * The pages of a batch are sorted by container and page number. Adjacent
+ * pages of a container are written with one call to
+ * {@link FileContainer#writeAdjacentPages}, which RAFContainer4 turns into a
+ * single gathering write. The pages of different containers are written at
+ * the same time by a small pool of I/O threads, while the pages of one
+ * container are always written by one thread. A batch with the pages of a
+ * single container is written by the calling thread, which may hold
+ * monitors of that container, e.g. when it is flushed by
+ * {@link RAFContainer#flushAll}.
+ * <p>
+ * A page that is latched, or being cleaned by another thread, when the
+ * batch starts is not waited for while the other pages of the batch are in
+ * the inClean state, since the latch holder may be waiting for one of them.
+ * Such pages are cleaned one at a time after the batch.
+ * <p>
+ * MT - the queue of the I/O threads is protected by synchronization on this
+ * object, the state of a batch by synchronization on the batch.
+ */
+final class BatchPageWriter implements Runnable
+{
+    /** The max number of pages written by one gathering write. */
+    private static final int MAX_RUN_PAGES = 64;
+
+    /** Orders pages by container and page number. */
+    private static final Comparator<CachedPage> PAGE_ORDER =
+        new Comparator<CachedPage>() {
+            public int compare(CachedPage p1, CachedPage p2)
+            {
+                PageKey k1 = p1.getPageId();
+                PageKey k2 = p2.getPageId();
+                ContainerKey c1 = k1.getContainerId();
+                ContainerKey c2 = k2.getContainerId();
+
+                int cmp = compareLongs(c1.getSegmentId(), c2.getSegmentId());
+                if (cmp == 0)
+                    cmp = compareLongs(
+                        c1.getContainerId(), c2.getContainerId());
+                if (cmp == 0)
+                    cmp = compareLongs(
+                        k1.getPageNumber(), k2.getPageNumber());
+                return cmp;
+            }
+        };
+
+    /** The pages of one container in a batch, in page number order. */
+    private final class ContainerWrite
+    {
+        final Batch batch;
+        final ContainerKey containerId;
+        final ArrayList<CachedPage> pages = new ArrayList<CachedPage>();
+
+        ContainerWrite(Batch batch, ContainerKey containerId)
+        {
+            this.batch = batch;
+            this.containerId = containerId;
+        }
+    }
+
+    /** The number of container writes of a batch left, and its first error. */
+    private static final class Batch
+    {
+        private int pending;
+        private StandardException error;
+
+        synchronized void add()
+        {
+            pending++;
+        }
+
+        synchronized void done(StandardException se)
+        {
+            if (se != null && error == null)
+                error = se;
+
+            pending--;
+            if (pending == 0)
+                notifyAll();
+        }
+
+        /** Wait for the container writes to finish, return the error. */
+        synchronized StandardException waitFor()
+        {
+            while (pending > 0)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+
+            return error;
+        }
+    }
+
+    private final DataFactory dataFactory;
+
+    private final CacheManager pageCache;
+
+    private final CacheManager containerCache;
+
+    private final int threadCount;
+
+    /** The container writes waiting for an I/O thread. */
+    private final LinkedList<ContainerWrite> queue =
+        new LinkedList<ContainerWrite>();
+
+    private Thread[] threads;
+
+    private boolean stopped;
+
+    /**
+     * Create a batch page writer. The I/O threads are started by the first
+     * batch that needs them.
+     *
+     * @param dataFactory the data factory, used to mark the database corrupt
+     *                    if a write fails
+     * @param pageCache the page cache, which counts the batched writes
+     * @param containerCache the cache of open containers
+     * @param threadCount the number of I/O threads
+     */
+    BatchPageWriter(DataFactory dataFactory, CacheManager pageCache,
+                    CacheManager containerCache, int threadCount)
+    {
+        this.dataFactory = dataFactory;
+        this.pageCache = pageCache;
+        this.containerCache = containerCache;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Clean a batch of pages, see
+     * {@link org.apache.derby.iapi.services.cache.BatchCleanableFactory}.
+     *
+     * @param objects the pages to clean, kept by the page cache
+     * @param count the number of pages in the array to clean
+     *
+     * @exception StandardException Standard Derby error policy
+     */
+    void cleanBatch(Cacheable[] objects, int count) throws StandardException
+    {
+        ArrayList<CachedPage> pages = new ArrayList<CachedPage>(count);
+        ArrayList<CachedPage> busy = null;
+
+        for (int i = 0; i < count; i++)
+        {
+            CachedPage page = (CachedPage) objects[i];
+
+            if (page.tryStartClean())
+            {
+                pages.add(page);
+            }
+            else if (page.isDirty())
+            {
+                if (busy == null)
+                    busy = new ArrayList<CachedPage>();
+                busy.add(page);
+            }
+        }
+
+        StandardException error = null;
+
+        if (!pages.isEmpty())
+            error = writePages(pages);
+
+        // the batch no longer holds any page in the inClean state, wait for
+        // the busy pages one at a time
+        if (busy != null)
+        {
+            for (int i = 0; i < busy.size(); i++)
+            {
+                try
+                {
+                    busy.get(i).clean(false);
+                }
+                catch (StandardException se)
+                {
+                    if (error == null)
+                        error = se;
+                }
+            }
+        }
+
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Write pages that are in the inClean state, and end their clean.
+     *
+     * @return the first error, or null if all the pages were written
+     */
+    private StandardException writePages(ArrayList<CachedPage> pages)
+    {
+        Collections.sort(pages, PAGE_ORDER);
+
+        Batch batch = new Batch();
+        ArrayList<ContainerWrite> writes = new ArrayList<ContainerWrite>();
+        ContainerWrite current = null;
+
+        for (int i = 0; i < pages.size(); i++)
+        {
+            CachedPage page = pages.get(i);
+            ContainerKey containerId = page.getPageId().getContainerId();
+
+            if (current == null || !current.containerId.equals(containerId))
+            {
+                current = new ContainerWrite(batch, containerId);
+                writes.add(current);
+            }
+            current.pages.add(page);
+        }
+
+        if (writes.size() == 1 || !startThreads())
+        {
+            // write in this thread
+            StandardException error = null;
+            for (int i = 0; i < writes.size(); i++)
+            {
+                StandardException se = writeContainer(writes.get(i));
+                if (error == null)
+                    error = se;
+            }
+            return error;
+        }
+
+        synchronized (this)
+        {
+            for (int i = 0; i < writes.size(); i++)
+            {
+                batch.add();
+                queue.addLast(writes.get(i));
+            }
+            notifyAll();
+        }
+
+        return batch.waitFor();
+    }
+
+    /**
+     * Write the pages of one container in runs of adjacent pages, and end
+     * their clean.
+     *
+     * @return the error if the pages could not be written, null otherwise
+     */
+    private StandardException writeContainer(ContainerWrite write)
+    {
+        ArrayList<CachedPage> pages = write.pages;
+        FileContainer myContainer = null;
+        int done = 0;
+
+        try
+        {
+            myContainer =
+                (FileContainer) containerCache.find(write.containerId);
+
+            if (myContainer == null)
+            {
+                StandardException nested =
+                    StandardException.newException(
+                        SQLState.DATA_CONTAINER_VANISHED,
+                        write.containerId);
+                throw StandardException.newException(
+                    SQLState.FILE_WRITE_PAGE_EXCEPTION, nested,
+                    pages.get(0).getPageId());
+            }
+
+            byte[][] run = new byte[MAX_RUN_PAGES][];
+
+            while (done < pages.size())
+            {
+                // collect a run of adjacent pages
+                long first = pages.get(done).getPageId().getPageNumber();
+                int n = 0;
+
+                while (done + n < pages.size() && n < MAX_RUN_PAGES)
+                {
+                    CachedPage page = pages.get(done + n);
+                    PageKey key = page.getPageId();
+
+                    if (key.getPageNumber() != first + n)
+                        break;
+
+                    page.prepareWrite(key);
+                    run[n++] = page.getPageData();
+                }
+
+                try
+                {
+                    myContainer.writeAdjacentPages(first, run, n);
+                    pageCache.countBatchWrite(n);
+                }
+                catch (IOException ioe)
+                {
+                    // pages cannot be written
+                    throw StandardException.newException(
+                        SQLState.FILE_WRITE_PAGE_EXCEPTION,
+                        ioe, pages.get(done).getPageId());
+                }
+
+                for (int i = 0; i < n; i++)
+                {
+                    CachedPage page = pages.get(done + i);
+                    page.pageWritten(myContainer);
+                    page.markClean();
+                    run[i] = null;
+                }
+
+                done += n;
+            }
+
+            return null;
+        }
+        catch (StandardException se)
+        {
+            // a failed page write requires recovery, see CachedPage.clean()
+            return dataFactory.markCorrupt(se);
+        }
+        catch (RuntimeException re)
+        {
+            return dataFactory.markCorrupt(
+                StandardException.plainWrapException(re));
+        }
+        finally
+        {
+            if (myContainer != null)
+                containerCache.release(myContainer);
+
+            // if a page could not be written, do not leave it inClean state
+            // or it will block the next cleaner forever
+            for (int i = 0; i < pages.size(); i++)
+                pages.get(i).endClean();
+        }
+    }
+
+    /**
+     * Start the I/O threads if they are not running.
+     *
+     * @return false if the writer has been stopped
+     */
+    private synchronized boolean startThreads()
+    {
+        if (stopped)
+            return false;
+
+        if (threads == null)
+        {
+            ModuleFactory monitor = getMonitor();
+
+            threads = new Thread[threadCount];
+            for (int i = 0; i < threadCount; i++)
+            {
+                threads[i] = monitor.getDaemonThread(
+                        this, "pageIO-" + i, false);
+                threads[i].start();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop the I/O threads after they have emptied the queue, and wait for
+     * them to exit.
+     */
+    void stop()
+    {
+        Thread[] toJoin;
+
+        synchronized (this)
+        {
+            stopped = true;
+            notifyAll();
+            toJoin = threads;
+        }
+
+        if (toJoin == null)
+            return;
+
+        for (int i = 0; i < toJoin.length; i++)
+        {
+            for (;;)
+            {
+                try
+                {
+                    toJoin[i].join();
+                    break;
+                }
+                catch (InterruptedException ie)
+                {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+        }
+    }
+
+    public void run()
+    {
+        ContextService contextService = getContextService();
+        ContextManager cm = contextService.newContextManager();
+        contextService.setCurrentContextManager(cm);
+
+        try
+        {
+            ContainerWrite write;
+            while ((write = take()) != null)
+            {
+                StandardException se = null;
+                try
+                {
+                    se = writeContainer(write);
+                }
+                finally
+                {
+                    write.batch.done(se);
+                }
+            }
+        }
+        finally
+        {
+            cm.cleanupOnError(StandardException.normalClose(), false);
+            contextService.resetCurrentContextManager(cm);
+        }
+    }
+
+    /**
+     * Take the next container write from the queue, waiting for one if the
+     * queue is empty.
+     *
+     * @return the next container write, or null if the writer is stopped and
+     *         the queue is empty
+     */
+    private synchronized ContainerWrite take()
+    {
+        while (queue.isEmpty())
+        {
+            if (stopped)
+                return null;
+
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+
+        return queue.removeFirst();
+    }
+
+    private static int compareLongs(long l1, long l2)
+    {
+        return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+    }
+
+    /**
+     * Privileged lookup of the ContextService. Must be private so that user
+     * code can't call this entry point.
+     */
+    private static ContextService getContextService()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ContextService>()
+             {
+                 public ContextService run()
+                 {
+                     return ContextService.getFactory();
+                 }
+             }
+             );
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+}
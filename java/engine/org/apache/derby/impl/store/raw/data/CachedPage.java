@@ -78,6 +78,16 @@ public abstract class CachedPage extends BasePage implements Cacheable
                                             // to be touched directly or 
                                             // indirectly.
 
+	// The instant of the first log record that changed the page since it
+	// was last written. An incremental checkpoint leaves the page dirty and
+	// starts redo at or before this instant. It is not set if the page was
+	// changed without a log record, see unloggedChange.
+	private LogInstant		firstLogInstant;
+
+	private boolean			unloggedChange;	// set to true if the page has
+											// been changed without a log
+											// record since it was written.
+
 
 	protected int		initialRowCount;    // keep a running count of rows for
 										    // estimated row count.
@@ -147,6 +157,8 @@ public abstract class CachedPage extends BasePage implements Cacheable
 		super.initialize();
 		isDirty             = false;
 		preDirty            = false;
+		firstLogInstant     = null;
+		unloggedChange      = false;
 		initialRowCount     = 0;
 		containerRowCount   = 0;
 	}
@@ -259,6 +271,12 @@ public abstract class CachedPage extends BasePage implements Cacheable
 
 		PageKey newIdentity = (PageKey) key;
 
+        // the page is created without being read, so any image of it that
+        // was kept off the heap is out of date
+        OffHeapPageCache offHeapCache = dataFactory.getOffHeapPageCache();
+        if (offHeapCache != null)
+            offHeapCache.remove(newIdentity);
+
 		PageCreationArgs createArgs = (PageCreationArgs) createParameter;
         int formatId = createArgs.formatId;
 
@@ -465,6 +483,52 @@ public abstract class CachedPage extends BasePage implements Cacheable
 		}
 	}
 
+    /**
+     * Set state to indicate the page has been modified by a log operation.
+     * <p>
+     * Also remember the instant of the first log record that modified the
+     * page since it was last written, see getFirstLogInstant().
+     *
+     * @param instant the instant of the log record, null if the
+     *                modification was not logged
+     **/
+	protected void setDirty(LogInstant instant) 
+    {
+		synchronized (this) 
+        {
+			isDirty  = true;
+			preDirty = false;
+
+			if (instant == null)
+				unloggedChange = true;
+			else if (firstLogInstant == null)
+				firstLogInstant = instant;
+		}
+	}
+
+    /**
+     * Get the instant that redo has to start at to recover the changes made
+     * to this page since it was last written.
+     * <p>
+     * See comment on class header on meaning of isDirty and preDirty bits.
+     * A pre-dirtied page may be changed by a log record that is already in
+     * the log, so its instant is not known yet.
+     *
+	 * @return the instant of the first log record that changed the page
+     *         since it was last written, or null if the page is clean, is
+     *         only pre-dirtied, or has been changed without a log record.
+     **/
+	public LogInstant getFirstLogInstant() 
+    {
+		synchronized (this) 
+        {
+			if (!isDirty || preDirty || unloggedChange)
+				return null;
+
+			return firstLogInstant;
+		}
+	}
+
     /**
      * exclusive latch on page is being released.
      * <p>
@@ -550,12 +614,63 @@ public abstract class CachedPage extends BasePage implements Cacheable
      **/
 	public void clean(boolean remove) throws StandardException 
     {
+		if (!startClean())
+			return;
 
+		try
+		{
+			writePage(getPageId(), false);
+		}
+		catch(StandardException se)
+		{
+            // If we get an error while trying to write a page, current
+            // recovery system requires that entire DB is shutdown.  Then
+            // when system is rebooted we will run redo recovery which 
+            // if it does not encounter disk errors will guarantee to recover
+            // to a transaction consistent state.  If this write is a 
+            // persistent device problem, redo recovery will likely fail
+            // attempting to the same I/O.  Mark corrupt will stop all further
+            // writes of data and log by the system.
+			throw dataFactory.markCorrupt(se);
+		}
+		finally
+		{
+			// if there is something wrong in writing out the page, 
+            // do not leave it inClean state or it will block the next cleaner 
+            // forever
+			endClean();
+		}
+	}
+
+    /**
+     * Start to clean the page.
+     * <p>
+     * Wait for any other cleaner of the page, and for the page to be
+     * unlatched, and put the page in the inClean state. The page is then
+     * effectively latched by the cleaner until endClean() is called.
+     * <p>
+     * Used by clean(), and by the batched page writes of
+     * {@link BatchPageWriter}.
+     *
+     * @return true if the page must be written, in which case the caller
+     *         must call endClean() when done, false if the page does not
+     *         need to be written
+     **/
+	boolean startClean()
+	{
+		return startClean(true);
+	}
+
+	private boolean startClean(boolean wait)
+	{
 		// must wait for the page to be unlatched
 		synchronized (this) 
         {
 			if (!isDirty())
-				return;
+				return false;
+
+			if (!wait && (inClean || ((owner != null) && !preLatch)))
+				return false;
 
 			// is someone else cleaning it
 			while (inClean) 
@@ -573,7 +688,7 @@ public abstract class CachedPage extends BasePage implements Cacheable
             // page is not "inClean" by other thread at this point.
 
 			if (!isDirty())
-				return;
+				return false;
 
 			inClean = true;
 
@@ -603,46 +718,68 @@ public abstract class CachedPage extends BasePage implements Cacheable
 				preDirty = false; 
 				inClean  = false;
 				notifyAll();
-				return;
+				return false;
 			}
 		}
 
-		try
-		{
-			writePage(getPageId(), false);
-		}
-		catch(StandardException se)
-		{
-            // If we get an error while trying to write a page, current
-            // recovery system requires that entire DB is shutdown.  Then
-            // when system is rebooted we will run redo recovery which 
-            // if it does not encounter disk errors will guarantee to recover
-            // to a transaction consistent state.  If this write is a 
-            // persistent device problem, redo recovery will likely fail
-            // attempting to the same I/O.  Mark corrupt will stop all further
-            // writes of data and log by the system.
-			throw dataFactory.markCorrupt(se);
-		}
-		finally
-		{
-			// if there is something wrong in writing out the page, 
-            // do not leave it inClean state or it will block the next cleaner 
-            // forever
+		return true;
+	}
 
-			synchronized (this) 
-            {
-				inClean = false;
-				notifyAll();
-			}
+    /**
+     * Start to clean the page if that can be done without waiting.
+     * <p>
+     * Like startClean(), but gives up instead of waiting if another thread
+     * is cleaning the page, or if the page is latched.
+     *
+     * @return true if the page must be written, in which case the caller
+     *         must call endClean() when done, false if the page does not
+     *         need to be written or if it is busy
+     **/
+	boolean tryStartClean()
+	{
+		return startClean(false);
+	}
+
+    /**
+     * End the cleaning of a page started by startClean(), whether the page
+     * was written or not.
+     **/
+	void endClean()
+	{
+		synchronized (this) 
+        {
+			inClean = false;
+			notifyAll();
 		}
 	}
 
 	public void clearIdentity() 
     {
+        // A clean page is the same as the page on disk, so its image can
+        // be kept off the heap and read back from there.
+        if (identity != null && !isDirty() && canKeepImageOffHeap())
+        {
+            OffHeapPageCache offHeapCache = dataFactory.getOffHeapPageCache();
+            if (offHeapCache != null)
+                offHeapCache.put(identity, pageData);
+        }
+
 		alreadyReadPage = false;
 		super.clearIdentity();
 	}
 
+    /**
+     * Tell whether the image of this page can be kept in the off-heap page
+     * cache once the page has left the page cache.
+     *
+     * @return true unless the page on disk may be written without going
+     *         through the page cache
+     **/
+    protected boolean canKeepImageOffHeap()
+    {
+        return true;
+    }
+
     /**
      * read the page from disk into this CachedPage object.
      * <p>
@@ -666,6 +803,15 @@ public abstract class CachedPage extends BasePage implements Cacheable
         // cache does support caching various sized pages.
 		setPageArray(pagesize);
 
+        // copy the page from the off-heap page cache instead of reading it,
+        // if the page has been there since it was evicted
+        OffHeapPageCache offHeapCache = dataFactory.getOffHeapPageCache();
+        if (offHeapCache != null &&
+            offHeapCache.take(newIdentity, pageData))
+        {
+            return;
+        }
+
 		for (int io_retry_count = 0;;)
         {
 			try 
@@ -747,26 +893,7 @@ public abstract class CachedPage extends BasePage implements Cacheable
     boolean syncMe) 
 		 throws StandardException 
 	{
-
-        // make subclass write the page format
-		writeFormatId(identity); 
-
-        // let subclass have a chance to write any cached data to page data 
-        // array
-		writePage(identity);	 
-
-		// force WAL - and check to see if database is corrupt or is frozen.
-		// last log Instant may be null if the page is being forced
-		// to disk on a createPage (which violates the WAL protocol actually).
-		// See FileContainer.newPage
-		LogInstant flushLogTo = getLastLogInstant();
-		dataFactory.flush(flushLogTo);
-
-		if (flushLogTo != null) 
-        {					
-			clearLastLogInstant();
-		}
-
+		prepareWrite(identity);
 
 		// find the container and file access object
 		FileContainer myContainer = 
@@ -789,41 +916,7 @@ public abstract class CachedPage extends BasePage implements Cacheable
 			myContainer.writePage(
 				identity.getPageNumber(), pageData, syncMe);
 
-			//
-			// Do some in memory unlogged bookkeeping tasks while we have
-			// the container.
-			//
-
-			if (!isOverflowPage() && isDirty())
-			{
-
-				// let the container knows whether this page is a not
-				// filled, non-overflow page
-				myContainer.trackUnfilledPage(
-					identity.getPageNumber(), unfilled());
-
-				// if this is not an overflow page, see if the page's row
-				// count has changed since it come into the cache.
-				//
-				// if the page is not invalid, row count is 0.	Otherwise,
-				// count non-deleted records on page.
-				//
-				// Cannot call nonDeletedRecordCount because the page is
-				// unlatched now even though nobody is changing it
-				int currentRowCount = internalNonDeletedRecordCount();
-
-				if (currentRowCount != initialRowCount)
-				{
-					myContainer.updateEstimatedRowCount(
-						currentRowCount - initialRowCount);
-
-					setContainerRowCount(
-						myContainer.getEstimatedRowCount(0));
-
-					initialRowCount = currentRowCount;
-				}
-			}
-
+			pageWritten(myContainer);
 		}
 		catch (IOException ioe)
 		{
@@ -838,11 +931,102 @@ public abstract class CachedPage extends BasePage implements Cacheable
 			myContainer = null;
 		}
 
+		markClean();
+	}
+
+    /**
+     * Get the page ready to be written to disk.
+     * <p>
+     * Write the page format and any cached data into the page data array,
+     * and force the log up to the last change of the page (WAL).
+     *
+     * @param identity indentity (ie. page number) of the page to write
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	void prepareWrite(PageKey identity) throws StandardException
+	{
+        // make subclass write the page format
+		writeFormatId(identity); 
+
+        // let subclass have a chance to write any cached data to page data 
+        // array
+		writePage(identity);	 
+
+		// force WAL - and check to see if database is corrupt or is frozen.
+		// last log Instant may be null if the page is being forced
+		// to disk on a createPage (which violates the WAL protocol actually).
+		// See FileContainer.newPage
+		LogInstant flushLogTo = getLastLogInstant();
+		dataFactory.flush(flushLogTo);
+
+		if (flushLogTo != null) 
+        {					
+			clearLastLogInstant();
+		}
+	}
+
+    /**
+     * Return the page data array, to be written after prepareWrite().
+     **/
+	byte[] getPageData()
+	{
+		return pageData;
+	}
+
+    /**
+     * Do some in memory unlogged bookkeeping tasks after the page has been
+     * written, while we have the container.
+     *
+     * @param myContainer the container the page was written to
+     *
+	 * @exception  StandardException  Standard exception policy.
+     **/
+	void pageWritten(FileContainer myContainer) throws StandardException
+	{
+		if (!isOverflowPage() && isDirty())
+		{
+
+			// let the container knows whether this page is a not
+			// filled, non-overflow page
+			myContainer.trackUnfilledPage(
+				getPageId().getPageNumber(), unfilled());
+
+			// if this is not an overflow page, see if the page's row
+			// count has changed since it come into the cache.
+			//
+			// if the page is not invalid, row count is 0.	Otherwise,
+			// count non-deleted records on page.
+			//
+			// Cannot call nonDeletedRecordCount because the page is
+			// unlatched now even though nobody is changing it
+			int currentRowCount = internalNonDeletedRecordCount();
+
+			if (currentRowCount != initialRowCount)
+			{
+				myContainer.updateEstimatedRowCount(
+					currentRowCount - initialRowCount);
+
+				setContainerRowCount(
+					myContainer.getEstimatedRowCount(0));
+
+				initialRowCount = currentRowCount;
+			}
+		}
+	}
+
+    /**
+     * Change the page state to not dirty after a successful write.
+     **/
+	void markClean()
+	{
 		synchronized (this) 
         {
             // change page state to not dirty after the successful write
-			isDirty     = false;
-			preDirty    = false;
+			isDirty         = false;
+			preDirty        = false;
+			firstLogInstant = null;
+			unloggedChange  = false;
 		}
 	}
 
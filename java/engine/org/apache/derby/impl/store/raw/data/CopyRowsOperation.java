@@ -26,6 +26,7 @@ import org.apache.derby.iapi.reference.SQLState;
 import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.services.io.StoredFormatIds;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.RecordHandle;
 import org.apache.derby.iapi.store.raw.Transaction;
 import org.apache.derby.iapi.store.raw.log.LogInstant;
@@ -63,7 +64,8 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 	@derby.endFormat
 	</PRE>
 */
-public class CopyRowsOperation extends PhysicalPageOperation {
+public class CopyRowsOperation extends PhysicalPageOperation
+        implements PageRedoable {
 
 	protected int	num_rows;
 	protected int	destSlot;		// copy into this page starting from destSlot
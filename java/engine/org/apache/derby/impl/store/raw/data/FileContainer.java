@@ -2066,7 +2066,7 @@ abstract class FileContainer
 		}
 	}
 
-	private boolean pageValid(BaseContainerHandle handle, long pagenum)
+	boolean pageValid(BaseContainerHandle handle, long pagenum)
 		 throws StandardException
 	{
 		boolean retval = false;
@@ -2537,6 +2537,10 @@ abstract class FileContainer
 			return null;
 		}
 
+		PageReadAhead readAhead = dataFactory.getPageReadAhead();
+		if (readAhead != null)
+			readAhead.pageAccessed(this, handle, pageNumber);
+
 		// RESOLVE: no translation!
 
 		PageKey pageSearch = new PageKey(identity, pageNumber);
@@ -2572,6 +2576,18 @@ abstract class FileContainer
 		return page;
 	}
 
+	/**
+		Check if a page has been written to the container file, and can
+		be read ahead without a handle. Subclasses that cannot tell return
+		false.
+
+		<BR> MT - thread safe
+	*/
+	boolean pageOnDisk(long pageNumber)
+	{
+		return false;
+	}
+
 	protected void trackUnfilledPage(long pagenumber, boolean unfilled)
 	{
 		if (!dataFactory.isReadOnly())
@@ -3248,9 +3264,27 @@ abstract class FileContainer
 		@exception IOException error writing page
 		@exception StandardException Standard Derby error policy
 	*/
-	protected abstract void writePage(long pageNumber, byte[] pageData, boolean syncPage) 
+	protected abstract void writePage(long pageNumber, byte[] pageData, boolean syncPage)
 		throws IOException, StandardException;
 
+	/**
+		Write a run of adjacent pages, without syncing them, from the
+		supplied arrays. Page firstPageNumber + i is written from
+		pageData[i]. This implementation writes the pages one at a time,
+		subclasses may combine them into fewer writes.
+
+		<BR> MT - thread safe
+		@exception IOException error writing a page
+		@exception StandardException Standard Derby error policy
+	*/
+	protected void writeAdjacentPages(long firstPageNumber, byte[][] pageData,
+									  int count)
+		throws IOException, StandardException
+	{
+		for (int i = 0; i < count; i++)
+			writePage(firstPageNumber + i, pageData[i], false);
+	}
+
 	/*
 	 * Encryption/decryption
 	 */
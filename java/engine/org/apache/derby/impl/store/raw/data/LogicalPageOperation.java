@@ -25,6 +25,7 @@ import org.apache.derby.shared.common.sanity.SanityManager;
 
 import org.apache.derby.iapi.store.access.conglomerate.LogicalUndo;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.ContainerHandle;
 import org.apache.derby.iapi.store.raw.Compensation;
 import org.apache.derby.iapi.store.raw.LogicalUndoable;
@@ -66,7 +67,7 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 
 */
 abstract class LogicalPageOperation
-    extends PageBasicOperation implements LogicalUndoable
+    extends PageBasicOperation implements LogicalUndoable, PageRedoable
 {
 
 	protected LogicalUndo undo; // Callback to access for logical undo.
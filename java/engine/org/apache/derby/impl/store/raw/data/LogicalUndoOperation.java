@@ -24,6 +24,7 @@ package org.apache.derby.impl.store.raw.data;
 import org.apache.derby.iapi.services.io.StoredFormatIds;
 import org.apache.derby.shared.common.sanity.SanityManager;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.Compensation;
 import org.apache.derby.iapi.store.raw.Loggable;
 import org.apache.derby.iapi.store.raw.Transaction;
@@ -64,7 +65,7 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 
 */
 public final class LogicalUndoOperation extends PageBasicOperation
-        implements Compensation {
+        implements Compensation, PageRedoable {
 
 	protected int recordId;				// the record id to call undoOp.undoMe with
 
@@ -0,0 +1,199 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.data.OffHeapPageCache
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import org.apache.derby.iapi.store.raw.PageKey;
+
+/**
+ * Keeps images of clean pages that have left the page cache in direct
+ * memory outside of the Java heap.
+ * <p>
+ * The page cache holds its pages in byte arrays on the heap, which makes a
+ * large page cache expensive for the garbage collector. With this cache
+ * below it, the page cache can stay small: when a clean page is evicted
+ * from the page cache, its image is copied into a frame of direct memory,
+ * and when the page is needed again, the image is copied back instead of
+ * being read from the container. A page is in at most one of the two
+ * caches, so that an image in this cache is always the same as the page on
+ * disk: an image is taken out when the page is read back into the page
+ * cache, and dropped when the page is created again.
+ * <p>
+ * The frames are laid out one after the other in a ring of direct buffers,
+ * which are allocated as the ring fills up. A new image overwrites the
+ * oldest images, so pages leave this cache in the order they came in.
+ * Pages of different sizes share the ring without fragmenting it.
+ * <p>
+ * MT - all methods are synchronized on this object. Copying a page image
+ * takes far less time than the I/O it saves.
+ */
+final class OffHeapPageCache
+{
+    /** The max size of a single direct buffer of the ring. */
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /** A page image in the ring. */
+    private static final class Frame
+    {
+        final PageKey key;
+
+        /**
+         * The position of the image in the ring. It counts all the bytes
+         * ever written to the ring, so it grows with every image.
+         */
+        final long position;
+
+        final int length;
+
+        Frame(PageKey key, long position, int length)
+        {
+            this.key = key;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /** The size of each direct buffer of the ring. */
+    private final int chunkSize;
+
+    /** The direct buffers of the ring, allocated when first written. */
+    private final ByteBuffer[] chunks;
+
+    /** The capacity of the ring in bytes. */
+    private final long capacity;
+
+    /** The images in the ring, by page. */
+    private final HashMap<PageKey, Frame> frames =
+        new HashMap<PageKey, Frame>();
+
+    /**
+     * All the frames written to the ring that have not been overwritten,
+     * oldest first. Some of them may have been taken out of the map.
+     */
+    private final ArrayDeque<Frame> ring = new ArrayDeque<Frame>();
+
+    /** The position in the ring where the next image is written. */
+    private long head;
+
+    /**
+     * Create a cache of page images.
+     *
+     * @param size the number of bytes of direct memory to use
+     */
+    OffHeapPageCache(long size)
+    {
+        chunkSize = (int) Math.min(size, MAX_CHUNK_SIZE);
+        chunks = new ByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+        capacity = (long) chunks.length * chunkSize;
+    }
+
+    /**
+     * Keep the image of a clean page which is leaving the page cache,
+     * replacing any older image of the page.
+     *
+     * @param key  the identity of the page
+     * @param page the image of the page, which must be the same as the
+     *             page on disk
+     */
+    synchronized void put(PageKey key, byte[] page)
+    {
+        int length = page.length;
+
+        frames.remove(key);
+
+        if (length > chunkSize)
+            return;
+
+        // an image never spans two buffers
+        int offset = (int) (head % chunkSize);
+        if (offset + length > chunkSize)
+        {
+            head += chunkSize - offset;
+            offset = 0;
+        }
+
+        // drop the images that the new image overwrites
+        long overwritten = head + length - capacity;
+        while (!ring.isEmpty() && ring.peekFirst().position < overwritten)
+        {
+            Frame f = ring.removeFirst();
+            if (frames.get(f.key) == f)
+                frames.remove(f.key);
+        }
+
+        int index = (int) ((head / chunkSize) % chunks.length);
+        ByteBuffer chunk = chunks[index];
+
+        if (chunk == null)
+        {
+            chunk = ByteBuffer.allocateDirect(chunkSize);
+            chunks[index] = chunk;
+        }
+
+        chunk.position(offset);
+        chunk.put(page, 0, length);
+
+        Frame f = new Frame(key, head, length);
+        frames.put(key, f);
+        ring.addLast(f);
+        head += length;
+    }
+
+    /**
+     * Take the image of a page out of the cache.
+     *
+     * @param key  the identity of the page
+     * @param page the array to copy the image into
+     *
+     * @return true if the image of the page has been copied into the
+     *         array, false if the cache does not have an image of the page
+     *         with the size of the array
+     */
+    synchronized boolean take(PageKey key, byte[] page)
+    {
+        Frame f = frames.remove(key);
+
+        if (f == null || f.length != page.length)
+            return false;
+
+        ByteBuffer chunk =
+            chunks[(int) ((f.position / chunkSize) % chunks.length)];
+        chunk.position((int) (f.position % chunkSize));
+        chunk.get(page, 0, f.length);
+
+        return true;
+    }
+
+    /**
+     * Drop the image of a page, if the cache has one. Called when a page is
+     * created in the page cache without being read from the container.
+     *
+     * @param key the identity of the page
+     */
+    synchronized void remove(PageKey key)
+    {
+        frames.remove(key);
+    }
+}
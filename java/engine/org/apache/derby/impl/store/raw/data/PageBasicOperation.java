@@ -256,6 +256,16 @@ abstract class PageBasicOperation implements Loggable, RePreparable
 		return pageId;
 	}
 
+	/**
+		Return the page this operation applies to. Subclasses whose redo
+		only changes this page implement PageRedoable with this method.
+
+		@see org.apache.derby.iapi.store.raw.PageRedoable#getRedoPageKey
+	*/
+	public final PageKey getRedoPageKey() {
+		return pageId;
+	}
+
 	/** Find the page the operation applies to and latch it, this only
 	    uses the segmentId, containerId, and pageId stored in this log
 		record to find the page.
@@ -0,0 +1,445 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.data.PageReadAhead
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.data;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.LinkedList;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.cache.CacheManager;
+import org.apache.derby.iapi.services.cache.Cacheable;
+import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.context.ContextService;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.store.raw.ContainerKey;
+import org.apache.derby.iapi.store.raw.PageKey;
+import org.apache.derby.iapi.util.InterruptStatus;
+
+/**
+ * Reads pages into the page cache ahead of sequential scans.
+ * <p>
+ * Every container handle that reads pages keeps a {@link Stream} with the
+ * state of its read-ahead. When a handle has read a few pages in page number
+ * order, the pages that follow are validated against the allocation cache
+ * and queued, and the read-ahead thread reads them into the page cache with
+ * CacheManager.find(), so that the scan finds them there instead of waiting
+ * for a synchronous read. The window of pages read ahead starts small and
+ * doubles every time the scan moves on into it, up to the configured
+ * maximum. A read of a page out of order resets it.
+ * <p>
+ * When the page cache collects access counts, an access to a page that was
+ * queued counts as a prefetch hit if the page had been read ahead, and as a
+ * prefetch miss if the read-ahead thread had not got to it yet.
+ * <p>
+ * Read-ahead is only advice: a request is dropped if the queue is full,
+ * and a page that can no longer be read is skipped.
+ * <p>
+ * MT - the queue is protected by synchronization on this object. A Stream
+ * is only used by the thread that uses its container handle, except for
+ * the progress of its requests, which is volatile.
+ */
+final class PageReadAhead implements Runnable
+{
+    /** The number of pages read ahead by the first request of a scan. */
+    private static final int MIN_WINDOW = 4;
+
+    /** The number of pages read in order before read-ahead starts. */
+    private static final int SEQUENTIAL_TRIGGER = 2;
+
+    /**
+     * The max gap between two page numbers read in a row for the reads to
+     * still be sequential, so that scans can skip free and overflow pages.
+     */
+    private static final int MAX_GAP = 4;
+
+    /** The max number of requests waiting for the read-ahead thread. */
+    private static final int MAX_QUEUE_SIZE = 64;
+
+    /** Pages queued to be read ahead. */
+    private static final class Request
+    {
+        final ContainerKey containerId;
+        final long[] pages;
+        final int count;
+
+        /** The number of pages handled so far by the read-ahead thread. */
+        volatile int done;
+
+        Request(ContainerKey containerId, long[] pages, int count)
+        {
+            this.containerId = containerId;
+            this.pages = pages;
+            this.count = count;
+        }
+
+        /** Return the index of a page in the request, or -1. */
+        int indexOf(long pageNumber)
+        {
+            if (count == 0 ||
+                pageNumber < pages[0] || pageNumber > pages[count - 1])
+            {
+                return -1;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                if (pages[i] == pageNumber)
+                    return i;
+            }
+            return -1;
+        }
+    }
+
+    /** The read-ahead state of a container handle. */
+    static final class Stream
+    {
+        /** The page number of the last page read. */
+        private long lastPage = -1;
+
+        /** The number of pages read in order. */
+        private int sequential;
+
+        /** The number of pages to read ahead by the next request. */
+        private int window = MIN_WINDOW;
+
+        /** The last page number queued to be read ahead. */
+        private long queuedUpTo = -1;
+
+        /** The current and the previous request. */
+        private Request current;
+        private Request previous;
+    }
+
+    private final CacheManager pageCache;
+
+    private final CacheManager containerCache;
+
+    /** The max number of pages to read ahead by one request. */
+    private final int maxWindow;
+
+    private final LinkedList<Request> queue = new LinkedList<Request>();
+
+    private boolean stopped;
+
+    private Thread thread;
+
+    /**
+     * Create a page read-ahead. The read-ahead thread is started by the
+     * first request.
+     *
+     * @param pageCache the page cache to read pages into
+     * @param containerCache the cache of open containers
+     * @param maxWindow the max number of pages to read ahead by one request
+     */
+    PageReadAhead(CacheManager pageCache, CacheManager containerCache,
+                  int maxWindow)
+    {
+        this.pageCache = pageCache;
+        this.containerCache = containerCache;
+        this.maxWindow = Math.max(maxWindow, MIN_WINDOW);
+    }
+
+    /**
+     * Note that a container handle is about to read a page, and queue the
+     * pages that follow it if the handle reads pages sequentially.
+     *
+     * @param container the container of the page
+     * @param handle the handle reading the page
+     * @param pageNumber the page number of the page
+     *
+     * @exception StandardException Standard Derby error policy
+     */
+    void pageAccessed(FileContainer container, BaseContainerHandle handle,
+                      long pageNumber)
+        throws StandardException
+    {
+        Stream s = handle.readAhead;
+        if (s == null)
+        {
+            s = new Stream();
+            handle.readAhead = s;
+        }
+
+        // a scan reads the same page again when it repositions
+        if (pageNumber == s.lastPage)
+            return;
+
+        countAccess(s, pageNumber);
+
+        if (pageNumber > s.lastPage && pageNumber - s.lastPage <= MAX_GAP)
+        {
+            s.sequential++;
+        }
+        else
+        {
+            // not a sequential read, start over
+            s.sequential = 0;
+            s.window = MIN_WINDOW;
+            s.queuedUpTo = -1;
+            s.current = null;
+            s.previous = null;
+        }
+        s.lastPage = pageNumber;
+
+        if (s.sequential < SEQUENTIAL_TRIGGER)
+            return;
+
+        // queue the next window once the scan has moved into the second
+        // half of the pages already queued
+        if (pageNumber + s.window / 2 < s.queuedUpTo)
+            return;
+
+        long first = Math.max(pageNumber, s.queuedUpTo) + 1;
+        long last = Math.min(first + s.window - 1,
+                             container.getLastPageNumber(handle));
+        long[] pages = new long[s.window];
+        int count = 0;
+
+        for (long p = first; p <= last; p++)
+        {
+            // only read pages that are allocated, and so have been written
+            // or are in the page cache
+            if (container.pageValid(handle, p))
+                pages[count++] = p;
+        }
+
+        s.queuedUpTo = Math.max(s.queuedUpTo, last);
+        s.window = Math.min(s.window * 2, maxWindow);
+
+        if (count == 0)
+            return;
+
+        Request r = new Request(
+            (ContainerKey) container.getIdentity(), pages, count);
+        if (queue(r))
+        {
+            s.previous = s.current;
+            s.current = r;
+        }
+    }
+
+    /**
+     * If a page accessed by a handle was queued to be read ahead, count a
+     * prefetch hit or miss.
+     */
+    private void countAccess(Stream s, long pageNumber)
+    {
+        Request r = s.current;
+        int i = (r == null) ? -1 : r.indexOf(pageNumber);
+
+        if (i < 0)
+        {
+            r = s.previous;
+            i = (r == null) ? -1 : r.indexOf(pageNumber);
+        }
+
+        if (i >= 0)
+            pageCache.countPrefetchAccess(i < r.done);
+    }
+
+    /**
+     * Add a request to the queue, and start the read-ahead thread if it is
+     * not running.
+     *
+     * @return false if the request was dropped
+     */
+    private synchronized boolean queue(Request r)
+    {
+        if (stopped || queue.size() >= MAX_QUEUE_SIZE)
+            return false;
+
+        if (thread == null)
+        {
+            thread = getMonitor().getDaemonThread(this, "readAhead", false);
+            thread.start();
+        }
+
+        queue.addLast(r);
+        if (queue.size() == 1)
+            notifyAll();
+
+        return true;
+    }
+
+    /**
+     * Stop the read-ahead thread, dropping the requests in the queue, and
+     * wait for it to exit.
+     */
+    void stop()
+    {
+        Thread t;
+
+        synchronized (this)
+        {
+            stopped = true;
+            queue.clear();
+            notifyAll();
+            t = thread;
+        }
+
+        if (t == null)
+            return;
+
+        for (;;)
+        {
+            try
+            {
+                t.join();
+                break;
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+    }
+
+    public void run()
+    {
+        ContextService contextService = getContextService();
+        ContextManager cm = contextService.newContextManager();
+        contextService.setCurrentContextManager(cm);
+
+        try
+        {
+            Request r;
+            while ((r = take()) != null)
+                read(r);
+        }
+        finally
+        {
+            cm.cleanupOnError(StandardException.normalClose(), false);
+            contextService.resetCurrentContextManager(cm);
+        }
+    }
+
+    /** Read the pages of a request into the page cache. */
+    private void read(Request r)
+    {
+        FileContainer myContainer = null;
+
+        try
+        {
+            myContainer = (FileContainer) containerCache.find(r.containerId);
+
+            for (int i = 0; i < r.count; i++)
+            {
+                synchronized (this)
+                {
+                    if (stopped)
+                        return;
+                }
+
+                // the container may have been dropped or truncated since
+                // the request was queued
+                if (myContainer == null ||
+                    !myContainer.pageOnDisk(r.pages[i]))
+                {
+                    return;
+                }
+
+                PageKey key = new PageKey(r.containerId, r.pages[i]);
+                Cacheable page = pageCache.find(key);
+                if (page != null)
+                {
+                    pageCache.release(page);
+                    pageCache.countPrefetch();
+                }
+
+                r.done = i + 1;
+            }
+        }
+        catch (StandardException se)
+        {
+            // the page will be read, or the error raised, by the scan
+        }
+        finally
+        {
+            if (myContainer != null)
+                containerCache.release(myContainer);
+        }
+    }
+
+    /**
+     * Take the next request from the queue, waiting for one if the queue is
+     * empty.
+     *
+     * @return the next request, or null if the read-ahead is stopped
+     */
+    private synchronized Request take()
+    {
+        while (queue.isEmpty())
+        {
+            if (stopped)
+                return null;
+
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+
+        return queue.removeFirst();
+    }
+
+    /**
+     * Privileged lookup of the ContextService. Must be private so that user
+     * code can't call this entry point.
+     */
+    private static ContextService getContextService()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ContextService>()
+             {
+                 public ContextService run()
+                 {
+                     return ContextService.getFactory();
+                 }
+             }
+             );
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+}
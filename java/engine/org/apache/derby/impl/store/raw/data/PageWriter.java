@@ -0,0 +1,397 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.data.PageWriter
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.data;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.cache.CacheManager;
+import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.context.ContextService;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.store.raw.PageKey;
+import org.apache.derby.iapi.store.raw.log.LogInstant;
+import org.apache.derby.iapi.util.InterruptStatus;
+import org.apache.derby.iapi.util.Matchable;
+
+/**
+ * Writes dirty pages out of the page cache in the background, for
+ * incremental checkpoints.
+ * <p>
+ * An incremental checkpoint does not write the whole page cache. It only
+ * writes the pages that the page writer has not written in time, and
+ * records in the checkpoint log record that redo has to start at the oldest
+ * log record that changed a page which is still dirty. Each incremental
+ * checkpoint then gives the page writer a new target: the pages changed by
+ * log records before the checkpoint. The page writer writes those pages,
+ * oldest change first, at no more than the configured number of pages per
+ * second, so that the next checkpoint finds few pages left to write and can
+ * move the redo low water mark forward.
+ * <p>
+ * The age of a dirty page is the instant of the first log record that
+ * changed it since it was last written, see
+ * {@link CachedPage#getFirstLogInstant}.
+ * <p>
+ * MT - the target and the stopped flag are protected by synchronization on
+ * this object. The pages are written through the page cache, which keeps
+ * them while they are written.
+ */
+final class PageWriter implements Runnable
+{
+    /** The time in milliseconds between two rounds of page writes. */
+    private static final long ROUND_TIME = 100;
+
+    /** Orders dirty pages by the instant of their first change. */
+    private static final Comparator<DirtyPage> OLDEST_FIRST =
+        new Comparator<DirtyPage>() {
+            public int compare(DirtyPage p1, DirtyPage p2)
+            {
+                if (p1.firstInstant.lessThan(p2.firstInstant))
+                    return -1;
+                if (p2.firstInstant.lessThan(p1.firstInstant))
+                    return 1;
+                return 0;
+            }
+        };
+
+    /** A dirty page and the instant of its first change. */
+    private static final class DirtyPage
+    {
+        final PageKey key;
+        final LogInstant firstInstant;
+
+        DirtyPage(PageKey key, LogInstant firstInstant)
+        {
+            this.key = key;
+            this.firstInstant = firstInstant;
+        }
+    }
+
+    /** Matches the identities of the pages in a set. */
+    private static final class PageSet implements Matchable
+    {
+        private final HashSet<PageKey> keys = new HashSet<PageKey>();
+
+        void add(PageKey key)
+        {
+            keys.add(key);
+        }
+
+        boolean isEmpty()
+        {
+            return keys.isEmpty();
+        }
+
+        public boolean match(Object key)
+        {
+            return keys.contains(key);
+        }
+    }
+
+    private final CacheManager pageCache;
+
+    /** The max number of pages written per second. */
+    private final int writeRate;
+
+    /**
+     * Write the pages first changed before this instant, null if there is
+     * nothing to write until the next checkpoint.
+     */
+    private LogInstant target;
+
+    private boolean stopped;
+
+    private Thread thread;
+
+    /**
+     * Create a page writer.
+     *
+     * @param pageCache the page cache to write the pages of
+     * @param writeRate the max number of pages to write per second
+     */
+    PageWriter(CacheManager pageCache, int writeRate)
+    {
+        this.pageCache = pageCache;
+        this.writeRate = writeRate;
+    }
+
+    /** Start the page writer thread. */
+    void start()
+    {
+        thread = getMonitor().getDaemonThread(this, "pageWriter", false);
+        thread.start();
+    }
+
+    /** Stop the page writer thread and wait for it to exit. */
+    void stop()
+    {
+        synchronized (this)
+        {
+            stopped = true;
+            notifyAll();
+        }
+
+        if (thread == null)
+            return;
+
+        for (;;)
+        {
+            try
+            {
+                thread.join();
+                break;
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+    }
+
+    /**
+     * Write the pages that must be written by an incremental checkpoint, and
+     * give the page writer its next target.
+     * <p>
+     * The pages that are written are the ones first changed before
+     * writeBefore, and the dirty pages for which redo cannot start at a log
+     * record: pages that have been changed without logging, and pages that
+     * are about to be changed by a log record that may already be in the
+     * log.
+     *
+     * @param writeBefore write the pages first changed before this instant,
+     *                    null to only write the pages that cannot be redone
+     * @param nextTarget  the pages the page writer should write before the
+     *                    next checkpoint are the ones first changed before
+     *                    this instant
+     *
+     * @return the instant of the oldest first change of a page that is still
+     *         dirty, or null if no page is dirty
+     *
+     * @exception StandardException Standard Derby error policy
+     */
+    LogInstant checkpoint(LogInstant writeBefore, LogInstant nextTarget)
+        throws StandardException
+    {
+        PageSet toWrite = new PageSet();
+        LogInstant oldest = null;
+
+        for (Iterator it = pageCache.values().iterator(); it.hasNext(); )
+        {
+            Object o = it.next();
+            if (!(o instanceof CachedPage))
+                continue;
+
+            CachedPage page = (CachedPage) o;
+            PageKey key = page.getPageId();
+
+            if (key == null || !page.isDirty())
+                continue;
+
+            LogInstant first = page.getFirstLogInstant();
+
+            if (first == null ||
+                (writeBefore != null && first.lessThan(writeBefore)))
+            {
+                toWrite.add(key);
+            }
+            else if (oldest == null || first.lessThan(oldest))
+            {
+                oldest = first;
+            }
+        }
+
+        if (!toWrite.isEmpty())
+            pageCache.clean(toWrite);
+
+        synchronized (this)
+        {
+            target = nextTarget;
+            notifyAll();
+        }
+
+        return oldest;
+    }
+
+    public void run()
+    {
+        ContextService contextService = getContextService();
+        ContextManager cm = contextService.newContextManager();
+        contextService.setCurrentContextManager(cm);
+
+        try
+        {
+            long budget = 0;
+            long last = System.currentTimeMillis();
+
+            for (;;)
+            {
+                LogInstant writeBefore;
+
+                synchronized (this)
+                {
+                    if (!stopped)
+                        waitOnWriter();
+
+                    if (stopped)
+                        break;
+
+                    writeBefore = target;
+                }
+
+                long now = System.currentTimeMillis();
+                budget = Math.min(
+                    budget + (now - last) * writeRate / 1000, writeRate);
+                last = now;
+
+                if (writeBefore == null || budget <= 0)
+                    continue;
+
+                int written = writePages(writeBefore, (int) budget);
+                budget -= written;
+
+                if (written == 0)
+                {
+                    // everything older than the target has been written
+                    synchronized (this)
+                    {
+                        if (target == writeBefore)
+                            target = null;
+                    }
+                }
+            }
+        }
+        catch (StandardException se)
+        {
+            // a failed write has marked the database corrupt, which the
+            // next checkpoint will report
+        }
+        finally
+        {
+            cm.cleanupOnError(StandardException.normalClose(), false);
+            contextService.resetCurrentContextManager(cm);
+        }
+    }
+
+    /**
+     * Write the dirty pages first changed before an instant, oldest first.
+     *
+     * @param writeBefore write the pages first changed before this instant
+     * @param max the max number of pages to write
+     *
+     * @return the number of pages written
+     *
+     * @exception StandardException Standard Derby error policy
+     */
+    private int writePages(LogInstant writeBefore, int max)
+        throws StandardException
+    {
+        ArrayList<DirtyPage> old = new ArrayList<DirtyPage>();
+
+        for (Iterator it = pageCache.values().iterator(); it.hasNext(); )
+        {
+            Object o = it.next();
+            if (!(o instanceof CachedPage))
+                continue;
+
+            CachedPage page = (CachedPage) o;
+            PageKey key = page.getPageId();
+
+            if (key == null || !page.isDirty())
+                continue;
+
+            // pages that cannot be redone are left to the checkpoint
+            LogInstant first = page.getFirstLogInstant();
+            if (first != null && first.lessThan(writeBefore))
+                old.add(new DirtyPage(key, first));
+        }
+
+        if (old.isEmpty())
+            return 0;
+
+        Collections.sort(old, OLDEST_FIRST);
+
+        PageSet toWrite = new PageSet();
+        int n = Math.min(max, old.size());
+        for (int i = 0; i < n; i++)
+            toWrite.add(old.get(i).key);
+
+        pageCache.clean(toWrite);
+
+        return n;
+    }
+
+    /** Wait for the next round, or until the writer is stopped. */
+    private void waitOnWriter()
+    {
+        try
+        {
+            wait(ROUND_TIME);
+        }
+        catch (InterruptedException ie)
+        {
+            InterruptStatus.setInterrupted();
+        }
+    }
+
+    /**
+     * Privileged lookup of the ContextService. Must be private so that user
+     * code can't call this entry point.
+     */
+    private static ContextService getContextService()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ContextService>()
+             {
+                 public ContextService run()
+                 {
+                     return ContextService.getFactory();
+                 }
+             }
+             );
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+}
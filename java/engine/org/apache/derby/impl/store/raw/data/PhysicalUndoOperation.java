@@ -24,6 +24,7 @@ package org.apache.derby.impl.store.raw.data;
 import org.apache.derby.iapi.services.io.StoredFormatIds;
 import org.apache.derby.shared.common.sanity.SanityManager;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.Compensation;
 import org.apache.derby.iapi.store.raw.Loggable;
 import org.apache.derby.iapi.store.raw.Transaction;
@@ -57,7 +58,7 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 
 */
 public final class PhysicalUndoOperation extends PageBasicOperation
-        implements Compensation {
+        implements Compensation, PageRedoable {
 
 	/** The operation to be rolled back */
 	transient private	PhysicalPageOperation undoOp; 
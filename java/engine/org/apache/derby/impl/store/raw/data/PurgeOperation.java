@@ -25,6 +25,7 @@ import org.apache.derby.iapi.reference.SQLState;
 
 import org.apache.derby.iapi.services.io.StoredFormatIds;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.Page;
 import org.apache.derby.iapi.store.raw.RecordHandle;
 import org.apache.derby.iapi.store.raw.Transaction;
@@ -68,7 +69,8 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 
    @see Page#purgeAtSlot
 */
-public final class PurgeOperation extends PhysicalPageOperation {
+public final class PurgeOperation extends PhysicalPageOperation
+        implements PageRedoable {
 
 	protected int	slot;	// purge num_rows records starting at this slot
 							// caller must guarentee that during undo of the
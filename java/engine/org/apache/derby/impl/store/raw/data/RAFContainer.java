@@ -726,6 +726,28 @@ class RAFContainer extends FileContainer implements PrivilegedExceptionAction<Ob
 		clean(false);
 	}
 
+	/**
+		Check if a page lies within the container file, see
+		FileContainer#pageOnDisk.
+
+		<BR> MT - thread safe
+	*/
+	synchronized boolean pageOnDisk(long pageNumber)
+	{
+		// committed and dropped, this file container may only be a stub
+		if (fileData == null || getCommittedDropState())
+			return false;
+
+		try
+		{
+			return (pageNumber + 1) * pageSize <= fileData.length();
+		}
+		catch (IOException ioe)
+		{
+			return false;
+		}
+	}
+
 
 	 synchronized StorageFile getFileName(ContainerKey identity, boolean stub,
 											 boolean errorOK, boolean tryAlternatePath)
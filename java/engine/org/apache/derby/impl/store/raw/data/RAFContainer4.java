@@ -1077,6 +1077,159 @@ class RAFContainer4 extends RAFContainer {
         }
     }
 
+    /**
+     * Write a run of adjacent pages with one gathering write.
+     * <p/>
+     * override of FileContainer#writeAdjacentPages
+     * <p/>
+     * FileChannel has no positional gathering write, so the pages are
+     * written at the current position of the channel, after setting it to
+     * the offset of the first page. Nothing else in this class uses the
+     * position of the channel, and the write is done while holding the
+     * monitor on this container, so concurrent gathering writes cannot move
+     * the position under each other. The first alloc page is written with
+     * writePage(), since it shares the borrowed space with the container
+     * information.
+     * <p/>
+     * <BR> MT - thread safe
+     *
+     * @exception StandardException Standard Derby error policy
+     * @exception IOException IO error accessing a page
+     */
+    protected void writeAdjacentPages(long firstPageNumber, byte[][] pageData,
+                                      int count)
+         throws IOException, StandardException
+    {
+        if (firstPageNumber == FIRST_ALLOC_PAGE_NUMBER && count > 0) {
+            writePage(firstPageNumber, pageData[0], false);
+
+            byte[][] rest = new byte[count - 1][];
+            System.arraycopy(pageData, 1, rest, 0, count - 1);
+            writeAdjacentPages(firstPageNumber + 1, rest, count - 1);
+            return;
+        }
+
+        if (count <= 1) {
+            super.writeAdjacentPages(firstPageNumber, pageData, count);
+            return;
+        }
+
+        // Interrupt recovery "stealthMode", see writePage.
+        boolean stealthMode = Thread.holdsLock(allocCache);
+
+        if (SanityManager.DEBUG) {
+            SanityManager.ASSERT(!Thread.holdsLock(this));
+        }
+
+        // Encrypt the pages, if needed, before taking the monitor on this.
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            byte[] encryptionBuf = null;
+            if (dataFactory.databaseEncrypted()) {
+                encryptionBuf = new byte[pageSize];
+            }
+
+            buffers[i] = ByteBuffer.wrap(
+                updatePageArray(firstPageNumber + i,
+                                pageData[i],
+                                encryptionBuf,
+                                false));
+        }
+
+        if (stealthMode) {
+            // don't increment threadsInPageIO, see writePage
+        } else {
+            synchronized (channelCleanupMonitor) {
+
+                // Gain entry
+                int retries = InterruptStatus.MAX_INTERRUPT_RETRIES;
+
+                while (restoreChannelInProgress) {
+                    if (retries-- == 0) {
+                        throw StandardException.newException(
+                            SQLState.FILE_IO_INTERRUPTED);
+                    }
+
+                    try {
+                        channelCleanupMonitor.wait(
+                            InterruptStatus.INTERRUPT_RETRY_SLEEP);
+                    } catch (InterruptedException e) {
+                        InterruptStatus.setInterrupted();
+                    }
+
+                }
+
+                threadsInPageIO++;
+            }
+        }
+
+        boolean success = false;
+        boolean noChannel = false;
+        int retries = InterruptStatus.MAX_INTERRUPT_RETRIES;
+
+      try {
+        while (!success) {
+            try {
+                synchronized (this) {
+                    // committed and dropped, do nothing.
+                    // This file container may only be a stub
+                    if (getCommittedDropState()) {
+                        return;
+                    }
+
+                    FileChannel ioChannel = getChannel();
+                    if (ioChannel == null) {
+                        noChannel = true;
+                        break;
+                    }
+
+                    for (int i = 0; i < count; i++) {
+                        buffers[i].rewind();
+                    }
+
+                    dataFactory.writeInProgress();
+                    try {
+                        ioChannel.position(firstPageNumber * pageSize);
+
+                        long remaining = (long) count * pageSize;
+                        while (remaining > 0) {
+                            remaining -= ioChannel.write(buffers);
+
+                            // See (**) in readFull.
+                            if (Thread.currentThread().isInterrupted() &&
+                                    !ioChannel.isOpen()) {
+                                throw new ClosedByInterruptException();
+                            }
+                        }
+                    } finally {
+                        dataFactory.writeFinished();
+                    }
+
+                    needsSync = true;
+                }
+
+                success = true;
+
+            } catch (ClosedChannelException e) {
+                handleClosedChannel(e, stealthMode, retries--);
+            }
+        }
+      } finally {
+        if (stealthMode) {
+            // don't touch threadsInPageIO
+        } else {
+            synchronized (channelCleanupMonitor) {
+                threadsInPageIO--;
+            }
+        }
+      }
+
+        if (noChannel) {
+            // iochannel was not initialized, fall back to original method.
+            super.writeAdjacentPages(firstPageNumber, pageData, count);
+        }
+    }
+
     /**
      * Write a sequence of bytes at the given offset in a file.  This method
      * operates in <em>stealth mode</em>, see doc for {@link
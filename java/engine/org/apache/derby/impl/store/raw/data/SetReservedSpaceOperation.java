@@ -23,6 +23,7 @@ package org.apache.derby.impl.store.raw.data;
 
 import org.apache.derby.iapi.services.io.StoredFormatIds;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.Page;
 import org.apache.derby.iapi.store.raw.Transaction;
 
@@ -41,7 +42,8 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 	Represents shrinking of the reserved space of a particular row on a page.
 	This operation is not undoable.
 */
-public final class SetReservedSpaceOperation extends PageBasicOperation {
+public final class SetReservedSpaceOperation extends PageBasicOperation
+        implements PageRedoable {
 
 	protected int	doMeSlot;	// slot where record is at
 	protected int	recordId;	// recordId
@@ -1299,6 +1299,18 @@ public class StoredPage extends CachedPage
         return (allowInsert() && (freeSpace > (getPageSize() / 2)));
     }
 
+    /**
+     * How full is this page?
+     *
+     * @return the percentage of the space for records in use.
+     *
+     * @see Page#getPercentFilled
+     **/
+    public int getPercentFilled()
+    {
+        return(((totalSpace - freeSpace) * 100) / totalSpace);
+    }
+
     /**
      * Is there enough space on the page to insert a minimum size row?
      * <p>
@@ -7100,7 +7112,7 @@ public class StoredPage extends CachedPage
                 initialRowCount = 0;
         }
 
-        setDirty();
+        setDirty(instant);
 
         bumpPageVersion();
         updateLastLogInstant(instant);
@@ -29,6 +29,7 @@ import org.apache.derby.iapi.services.io.StoredFormatIds;
 
 import org.apache.derby.iapi.error.StandardException;
 
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.ContainerHandle;
 import org.apache.derby.iapi.store.raw.LockingPolicy;
 import org.apache.derby.iapi.store.raw.Page;
@@ -69,7 +70,8 @@ import org.apache.derby.iapi.services.io.LimitObjectInput;
 	</PRE>
 */
 
-public final class UpdateOperation extends PhysicalPageOperation {
+public final class UpdateOperation extends PhysicalPageOperation
+        implements PageRedoable {
 
 	protected int			doMeSlot;	// record slot - only valid during a doMe() operation
 	protected int			recordId;	// record id
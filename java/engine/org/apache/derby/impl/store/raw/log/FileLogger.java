@@ -45,6 +45,7 @@ import org.apache.derby.iapi.store.raw.ContainerHandle;
 import org.apache.derby.iapi.store.raw.LockingPolicy;
 import org.apache.derby.iapi.store.raw.Loggable;
 import org.apache.derby.iapi.store.raw.Page;
+import org.apache.derby.iapi.store.raw.PageRedoable;
 import org.apache.derby.iapi.store.raw.RePreparable;
 import org.apache.derby.iapi.store.raw.Undoable;
 
@@ -125,6 +126,16 @@ public class FileLogger implements Logger {
 
 	private LogToFile logFactory;	// actually writes the log records.
 
+	// statistics of the last redo pass, for the recovery time breakdown
+	private long redoScanTime;		// nanoseconds spent reading the log
+	private int  redoScanCount;		// log records read
+	private long redoneCount;		// log records redone
+	private long parallelRedoneCount;	// of which by the parallel redo threads
+
+	// use this scan to reconstitute operation to be undone
+	// when we see a CLR in the redo scan
+	private StreamLogScan undoScan;
+
 	/**
 		Make a new Logger with its own log record buffers
 		MT - not needed for constructor
@@ -1107,6 +1118,10 @@ public class FileLogger implements Logger {
 		@param transFactory     - the transaction factory
 		@param redoLWM          - if checkpoint seen, starting from this point
                                   on, apply redo if necessary
+		@param parallelRedo     - if not null, page log operations are handed
+                                  to these worker threads to be redone, and
+                                  every other log operation that changes the
+                                  database waits for them to finish first
 
 		@return the log instant of the next log record (or the instant just
 		after the last log record).  This is used to determine where the log
@@ -1123,7 +1138,8 @@ public class FileLogger implements Logger {
     TransactionFactory  transFactory,
     StreamLogScan       redoScan,
     long                redoLWM,
-    long                ttabInstant)
+    long                ttabInstant,
+    ParallelRedo        parallelRedo)
 		 throws IOException, StandardException, ClassNotFoundException
 	{
 		// begin debug info
@@ -1160,21 +1176,30 @@ public class FileLogger implements Logger {
 		//////////////////////////////////////////////////////////////////////
 		logIn.setData(logOutputBuffer.getByteArray());
 
-		// use this scan to reconstitute operation to be undone
-		// when we see a CLR in the redo scan
-		StreamLogScan undoScan  = null;
 		Loggable      op        = null;
 		long          logEnd    = 0;  // we need to determine the log's true end
 
+		redoScanTime = 0;
+		redoScanCount = 0;
+		redoneCount = 0;
+		parallelRedoneCount = 0;
+
 		try 
         {
+			if (parallelRedo != null)
+				parallelRedo.start();
 
 			// scan the log forward in redo pass and go to the end
 			LogRecord record;
-			while((record = 
-                    redoScan.getNextRecord(logIn, null, 0)) 
-                        != null)
+			for (;;)
 			{
+				long scanStart = System.nanoTime();
+				record = redoScan.getNextRecord(logIn, null, 0);
+				redoScanTime += System.nanoTime() - scanStart;
+
+				if (record == null)
+					break;
+
 				scanCount++;
 				long undoInstant = 0;
 
@@ -1392,7 +1417,55 @@ public class FileLogger implements Logger {
 					 	"recovery transaction handles post termination work");
                 }
 
-				if (op.needsRedo(recoveryTransaction))
+				// true if the undo operation of a CLR has been set up
+				boolean undoOpSet = false;
+
+				if (parallelRedo != null)
+				{
+					boolean parallel = op instanceof PageRedoable;
+
+					// the worker does the needsRedo check, so the CLR has to
+					// be set up whether it needs redo or not. The CLR is only
+					// redone by a worker if the operation it compensates for
+					// also changes nothing but the page.
+					if (parallel && record.isCLR())
+					{
+						if (undoInstant == 0)
+							undoInstant = logIn.readLong();
+
+						Undoable undoOp =
+							readUndoOp(undoInstant, instant, tranId);
+						((Compensation) op).setUndoOp(undoOp);
+						undoOpSet = true;
+
+						parallel = undoOp instanceof PageRedoable;
+					}
+
+					if (parallel)
+					{
+						if (record.isCLR())
+							clrCount++;
+
+						int dataLength = logIn.readInt();
+						byte[] data = new byte[dataLength];
+						logIn.readFully(data);
+
+						parallelRedo.dispatch(
+							((PageRedoable) op).getRedoPageKey(), op,
+							new LogCounter(instant), data);
+
+						op = null;
+					}
+					else if (!(record.isFirst() || record.isComplete() ||
+							   record.isPrepare() || record.isChecksum()))
+					{
+						// this operation may depend on, or change, pages that
+						// the workers are redoing, wait for them
+						parallelRedo.drain();
+					}
+				}
+
+				if (op != null && op.needsRedo(recoveryTransaction))
 				{
 					redoCount++;
 
@@ -1408,50 +1481,15 @@ public class FileLogger implements Logger {
 							SanityManager.ASSERT(op instanceof Compensation);
 
 
-                        // this value may be set by sanity xxxx
-						if (undoInstant == 0) 
-							undoInstant = logIn.readLong();
-
-						if (undoScan == null)
-						{
-							undoScan = (StreamLogScan)
-								logFactory.openForwardsScan(
-                                    undoInstant,(LogInstant)null);
-						}
-						else
-						{
-							undoScan.resetPosition(new LogCounter(undoInstant));
-						}
-
-						// undoScan now positioned at the beginning of the log
-						// record was rolled back by this CLR.  
-						// The scan is a forward one so getNextRecord will get 
-                        // the log record that needs to be rolled back.
-
-						// reuse the buffer in logIn and logIn since CLR 
-                        // has no optional data and has no use for them anymore 
-						logIn.clearLimit();
-						LogRecord undoRecord =
-							undoScan.getNextRecord(logIn, null, 0);
-
-						Undoable undoOp = undoRecord.getUndoable();
-
-						if (SanityManager.DEBUG)
+						if (!undoOpSet)
 						{
-							SanityManager.DEBUG(
-                                LogToFile.DBG_FLAG, 
-                                "Redoing CLR: undoInstant = " + 
-                                    LogCounter.toDebugString(undoInstant) +
-                                " clrinstant = " + 
-                                    LogCounter.toDebugString(instant));
-
-							SanityManager.ASSERT(
-                                undoRecord.getTransactionId().equals(tranId));
+							// this value may be set by sanity xxxx
+							if (undoInstant == 0) 
+								undoInstant = logIn.readLong();
 
-							SanityManager.ASSERT(undoOp != null);
+							((Compensation) op).setUndoOp(
+								readUndoOp(undoInstant, instant, tranId));
 						}
-
-						((Compensation)op).setUndoOp(undoOp);
 					}
 
 					// at this point, logIn points to the optional
@@ -1511,6 +1549,9 @@ public class FileLogger implements Logger {
 				}
 			} // while redoScan.getNextRecord() != null
 
+			if (parallelRedo != null)
+				parallelRedo.drain();
+
             // If the scan ended in an empty file, update logEnd to reflect that
             // in order to avoid to continue logging to an older file
             long end = redoScan.getLogRecordEnd(); 
@@ -1527,6 +1568,16 @@ public class FileLogger implements Logger {
 		}
 		finally
 		{
+			redoScanCount = scanCount;
+			redoneCount = redoCount;
+
+			if (parallelRedo != null)
+			{
+				parallelRedo.stop();
+				parallelRedoneCount = parallelRedo.getRedoCount();
+				redoneCount += parallelRedoneCount;
+			}
+
 			// close all the io streams
 			redoScan.close();
 			redoScan = null;
@@ -1584,6 +1635,103 @@ public class FileLogger implements Logger {
 		return logEnd;			
 	}
 
+	/**
+		Read the log record that a CLR compensates for, and return its
+		undoable operation, which the CLR needs to be redone.
+
+		<P>logIn is reused to read the log record, and is left positioned at
+		the optional data of the undone log record.
+
+		@param undoInstant  the instant of the log record undone by the CLR
+		@param instant      the instant of the CLR
+		@param tranId       the transaction of the CLR
+
+		@exception StandardException Standard Derby error policy
+		@exception IOException error reading log file
+		@exception ClassNotFoundException log file corrupted
+	 */
+	private Undoable readUndoOp(
+    long            undoInstant,
+    long            instant,
+    TransactionId   tranId)
+		 throws IOException, StandardException, ClassNotFoundException
+	{
+		if (undoScan == null)
+		{
+			undoScan = (StreamLogScan)
+				logFactory.openForwardsScan(
+                    undoInstant,(LogInstant)null);
+		}
+		else
+		{
+			undoScan.resetPosition(new LogCounter(undoInstant));
+		}
+
+		// undoScan now positioned at the beginning of the log
+		// record was rolled back by this CLR.  
+		// The scan is a forward one so getNextRecord will get 
+        // the log record that needs to be rolled back.
+
+		// reuse the buffer in logIn and logIn since CLR 
+        // has no optional data and has no use for them anymore 
+		logIn.clearLimit();
+		LogRecord undoRecord =
+			undoScan.getNextRecord(logIn, null, 0);
+
+		Undoable undoOp = undoRecord.getUndoable();
+
+		if (SanityManager.DEBUG)
+		{
+			SanityManager.DEBUG(
+                LogToFile.DBG_FLAG, 
+                "Redoing CLR: undoInstant = " + 
+                    LogCounter.toDebugString(undoInstant) +
+                " clrinstant = " + 
+                    LogCounter.toDebugString(instant));
+
+			SanityManager.ASSERT(
+                undoRecord.getTransactionId().equals(tranId));
+
+			SanityManager.ASSERT(undoOp != null);
+		}
+
+		return undoOp;
+	}
+
+	/**
+		Return the time in milliseconds that the last redo pass spent
+		reading the log.
+	 */
+	long getRedoScanTime()
+	{
+		return redoScanTime / 1000000L;
+	}
+
+	/**
+		Return the number of log records read by the last redo pass.
+	 */
+	int getRedoScanCount()
+	{
+		return redoScanCount;
+	}
+
+	/**
+		Return the number of log operations redone by the last redo pass.
+	 */
+	long getRedoCount()
+	{
+		return redoneCount;
+	}
+
+	/**
+		Return the number of log operations redone by the parallel redo
+		threads in the last redo pass.
+	*/
+	long getParallelRedoCount()
+	{
+		return parallelRedoneCount;
+	}
+
 
 	/**
 		Read the next log record from the scan.
@@ -30,7 +30,9 @@ import org.apache.derby.io.StorageRandomAccessFile;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.SyncFailedException;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 
 import org.apache.derby.iapi.services.io.FormatIdOutputStream;
@@ -61,6 +63,15 @@ import org.apache.derby.iapi.util.InterruptStatus;
     Log Buffers are used in circular fashion, each buffer moves through following stages: 
 	freeBuffers --> dirtyBuffers --> freeBuffers. Movement of buffers from one
     stage to 	another stage is synchronized using	the object(this) of this class. 
+	The number of buffers is set by derby.storage.logBufferCount.
+
+	If derby.storage.logConcurrentAppend is set, a writer only reserves the
+	space for its log record in the current buffer while it holds the log
+	factory's monitor (see reserveLogRecord), and copies the record into
+	the reserved space after it has released the monitor (see
+	copyLogRecord). Each buffer counts the copies that are still in
+	progress, and a buffer is not checksummed or written to the log file
+	until all of them have completed.
 
 	A Checksum log record that has the checksum value for the data that is
     being written to the disk is generated and written 	before the actual data. 
@@ -91,16 +102,28 @@ public class LogAccessFile
     private static final int            LOG_RECORD_FIXED_OVERHEAD_SIZE = 16;
 	private static final int            LOG_RECORD_HEADER_SIZE = 12; //(length + instant)
 	private static final int            LOG_RECORD_TRAILER_SIZE = 4; //trailing length 
-    private static final int            LOG_NUMBER_LOG_BUFFERS = 3;
+
+    /** The default number of log buffers. */
+    static final int                    DEFAULT_LOG_NUMBER_LOG_BUFFERS = 3;
 
 
 	private LinkedList<LogAccessFileBuffer>    freeBuffers;  //list of free buffers
 	private LinkedList<LogAccessFileBuffer>    dirtyBuffers; //list of dirty buffers to flush
 	private  LogAccessFileBuffer currentBuffer; //current active buffer
 	private boolean flushInProgress = false;
+	private final int numberOfBuffers;
 	
 	private final StorageRandomAccessFile  log;
 
+	// if the log is written through memory mapping, the channel of the log
+	// file and the size of the mapped segments, else null and 0.
+	private final FileChannel           mapChannel;
+	private final int                   mapSegmentSize;
+
+	// the mapped view of the log file, created at the first write so that
+	// it starts at the position the log file has been positioned at.
+	private volatile MappedLogFile      mappedLog;
+
 	// log can be touched only inside synchronized block protected by
 	// logFileSemaphore.
 	private final Object            logFileSemaphore;
@@ -127,7 +150,8 @@ public class LogAccessFile
 		
 	public LogAccessFile(LogToFile logFactory,
 						 StorageRandomAccessFile    log, 
-						 int                 bufferSize) 
+						 int                 bufferSize,
+						 int                 bufferCount) 
     {
 		if (SanityManager.DEBUG)
 		{
@@ -143,8 +167,22 @@ public class LogAccessFile
 		logFileSemaphore    = log;
 		this.logFactory     = logFactory;
 
+		numberOfBuffers     = bufferCount;
+
+		int segmentSize = logFactory.getLogMapSegmentSize();
+		if (segmentSize > 0 && log instanceof RandomAccessFile)
+		{
+			mapChannel      = ((RandomAccessFile) log).getChannel();
+			mapSegmentSize  = segmentSize;
+		}
+		else
+		{
+			mapChannel      = null;
+			mapSegmentSize  = 0;
+		}
+
 		if (SanityManager.DEBUG)
-            SanityManager.ASSERT(LOG_NUMBER_LOG_BUFFERS >= 1);
+            SanityManager.ASSERT(numberOfBuffers >= 1);
 				
 		//initialize buffers lists
 		freeBuffers = new LinkedList<LogAccessFileBuffer>();
@@ -152,7 +190,7 @@ public class LogAccessFile
 
 
 		//add all buffers to free list
-        for (int i = 0; i < LOG_NUMBER_LOG_BUFFERS; i++)
+        for (int i = 0; i < numberOfBuffers; i++)
         {
             LogAccessFileBuffer b = new LogAccessFileBuffer(bufferSize);
             freeBuffers.addLast(b);
@@ -343,6 +381,90 @@ public class LogAccessFile
         }
     }
 
+    /**
+     * Reserve space for a log record in the current buffer, so that the
+     * record can be copied into the buffer by copyLogRecord() after the
+     * caller has released the log factory's monitor.
+     * <p>
+     * Like writeLogRecord(), this must be called after
+     * reserveSpaceForChecksum() and while holding the log factory's
+     * monitor, so that records are reserved in log instant order.
+     *
+     * @param length    (data + optional_data) length of the log record
+     * @param instant   the log address of this log record.
+     *
+     * @return the buffer the space was reserved in, or null if the log
+     *         record does not fit in a buffer and must be written with
+     *         writeLogRecord() instead.
+     **/
+    LogAccessFileBuffer reserveLogRecord(int length, long instant)
+    {
+        int total_log_record_length = length + LOG_RECORD_FIXED_OVERHEAD_SIZE;
+
+        if (total_log_record_length > currentBuffer.bytes_free)
+            return null;
+
+        LogAccessFileBuffer buf = currentBuffer;
+
+        // The buffer holds a contiguous range of the log file, so the
+        // position of a record in the buffer follows from its instant.
+        buf.log_position_base =
+            LogCounter.getLogFilePosition(instant) - buf.position;
+        buf.addPendingCopy();
+
+        buf.position += total_log_record_length;
+        buf.bytes_free -= total_log_record_length;
+        buf.greatest_instant = instant;
+
+        return buf;
+    }
+
+    /**
+     * Copy a log record into the space reserved for it by
+     * reserveLogRecord(). The caller need not hold any monitor, so
+     * several threads may copy their log records into the same buffer
+     * at the same time.
+     *
+     * @param buf                   the buffer returned by reserveLogRecord
+     * @param length                (data + optional_data) length bytes to write
+     * @param instant               the log address of this log record.
+     * @param data                  "from" array to copy "data" portion of rec
+     * @param data_offset           offset in "data" to start copying from.
+     * @param optional_data         "from" array to copy "optional data" from
+     * @param optional_data_offset  offset in "optional_data" to start copy from
+     * @param optional_data_length  length of optional data to copy.
+     **/
+    void copyLogRecord(
+    LogAccessFileBuffer buf,
+    int     length,
+    long    instant,
+    byte[]  data,
+    int     data_offset,
+    byte[]  optional_data,
+    int     optional_data_offset,
+    int     optional_data_length)
+    {
+        try
+        {
+            int pos = (int)
+                (LogCounter.getLogFilePosition(instant) - buf.log_position_base);
+
+            appendLogRecordToBuffer(buf.buffer, pos,
+                                    length,
+                                    instant,
+                                    data,
+                                    data_offset,
+                                    optional_data,
+                                    optional_data_offset,
+                                    optional_data_length);
+        }
+        finally
+        {
+            // the buffer may be written once this count drops to zero.
+            buf.copyDone();
+        }
+    }
+
     /**
      * Append a log record to a byte[]. Typically, the byte[] will be
      * currentBuffer, but if a log record that is too big to fit in a
@@ -543,7 +665,7 @@ public class LogAccessFile
 						//don't flush more than the total number of buffers,
 						//that might lead to starvation of the current thread.
 						int size = dirtyBuffers.size();
-						if(size > 0 && nFlushed <= LOG_NUMBER_LOG_BUFFERS)
+						if(size > 0 && nFlushed <= numberOfBuffers)
 						{
 							noOfBuffers += size;
 							buf = dirtyBuffers.removeFirst();
@@ -588,6 +710,12 @@ public class LogAccessFile
 			if(currentBuffer.position == checksumLogRecordSize)
 				return;
 
+			// log records reserved in the buffer must be in place before
+			// the buffer is checksummed and queued for writing. The
+			// copies don't need the monitor of this object, so they can
+			// complete while it is held here.
+			currentBuffer.waitForPendingCopies();
+
 			// calculate the checksum for the current log buffer 
 			// and write the record to the space reserverd in 
 			// the beginning of the buffer. 
@@ -656,7 +784,11 @@ public class LogAccessFile
             {
                 synchronized( this)
                 {
-                    log.sync();
+                    MappedLogFile mapped = mappedLog;
+                    if (mapped != null)
+                        mapped.sync();
+                    else
+                        log.sync();
                 }
 
                 // the sync succeed, so return
@@ -691,6 +823,7 @@ public class LogAccessFile
 	{
 		synchronized(logFileSemaphore)
 		{
+			mappedLog = null;
 			if (log != null)
 				log.close();
 		}
@@ -710,6 +843,7 @@ public class LogAccessFile
 
 		synchronized(logFileSemaphore)
 		{
+			mappedLog = null;
 			if (log != null)
 				log.close();
 		}
@@ -779,7 +913,18 @@ public class LogAccessFile
                 {
                     try 
                     {
-                        log.write(b, off, len);
+                        if (mapChannel != null && mappedLog == null)
+                        {
+                            mappedLog = new MappedLogFile(
+                                mapChannel, log.getFilePointer(),
+                                mapSegmentSize);
+                        }
+
+                        if (mappedLog != null)
+                            mappedLog.write(b, off, len);
+                        else
+                            log.write(b, off, len);
+
                         if (inReplicationMasterMode) {
                             masterFac.appendLog(highestInstant,
                                                 b, off, len);
@@ -21,6 +21,7 @@
 
 package org.apache.derby.impl.store.raw.log;
 
+import org.apache.derby.iapi.util.InterruptStatus;
 
 /**
 
@@ -42,6 +43,18 @@ final class LogAccessFileBuffer
 	protected int       length;
     protected long      greatest_instant;
 
+    /**
+     * Log file position that corresponds to the first byte of the buffer.
+     * Used to find where a reserved log record goes in the buffer.
+     */
+    long                log_position_base;
+
+    /**
+     * Number of log records reserved but not yet copied into the buffer.
+     * Guarded by the monitor of this buffer.
+     */
+    private int         pending_copies;
+
     LogAccessFileBuffer next;
     LogAccessFileBuffer prev;
 
@@ -76,6 +89,44 @@ final class LogAccessFileBuffer
      **************************************************************************
      */
 
+    /**
+     * Count a log record reserved in the buffer, which must be copied into
+     * it before the buffer is written.
+     */
+    synchronized void addPendingCopy()
+    {
+        pending_copies++;
+    }
+
+    /**
+     * Count a reserved log record as copied into the buffer, and wake up
+     * the thread waiting to write the buffer if it was the last one.
+     */
+    synchronized void copyDone()
+    {
+        if (--pending_copies == 0)
+            notifyAll();
+    }
+
+    /**
+     * Wait until all the log records reserved in the buffer have been
+     * copied into it.
+     */
+    synchronized void waitForPendingCopies()
+    {
+        while (pending_copies != 0)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+    }
+
     /**************************************************************************
      * Public Methods of XXXX class:
      **************************************************************************
@@ -0,0 +1,447 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.log.LogFlusher
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.log;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.Module;
+import org.apache.derby.iapi.services.jmx.ManagementService;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.util.InterruptStatus;
+import org.apache.derby.mbeans.LogFlusherMBean;
+import org.apache.derby.shared.common.sanity.SanityManager;
+
+/**
+ * A dedicated thread that implements group commit for {@link LogToFile}.
+ * <p>
+ * When group commit is enabled, a thread that needs the log flushed up to
+ * some instant does not write and sync the log itself. Instead it adds its
+ * instant to the currently open {@link Batch} and waits. The flusher thread
+ * closes the batch, flushes the log up to the highest instant in it with a
+ * single write and sync, and then wakes up every waiter of the batch at
+ * once. Requests that arrive while a batch is being flushed go into the
+ * next batch.
+ * <p>
+ * The flusher may wait up to <code>maxWait</code> microseconds for more
+ * requests to join a batch before it flushes, unless <code>maxBatch</code>
+ * requests are already waiting.
+ * <p>
+ * MT - all fields except the counters are protected by synchronization on
+ * this object. The counters are only updated by the flusher thread, and
+ * are read without synchronization for monitoring.
+ */
+final class LogFlusher implements Runnable
+{
+    /**
+     * A group of flush requests that is satisfied by one flush of the log.
+     * Waiters synchronize on the batch, and are notified when the flusher
+     * thread is done with it.
+     */
+    private static final class Batch
+    {
+        /** The highest log file number requested. */
+        long fileNumber;
+        /** The highest position in <code>fileNumber</code> requested. */
+        long position;
+        /** The number of requests in this batch. */
+        int size;
+        /** True once the flusher is done with this batch. */
+        boolean done;
+        /** The error raised by the flush, if any. */
+        Throwable error;
+
+        /** Add a request to flush up to the given instant. */
+        void add(long fileNumber, long position)
+        {
+            if (size == 0 ||
+                fileNumber > this.fileNumber ||
+                (fileNumber == this.fileNumber && position > this.position))
+            {
+                this.fileNumber = fileNumber;
+                this.position = position;
+            }
+            size++;
+        }
+    }
+
+    /** The log factory to flush. */
+    private final LogToFile logFactory;
+
+    /** Max time in microseconds to wait for a batch to fill up. */
+    private final long maxWait;
+
+    /** Number of waiting requests that ends the max wait window early. */
+    private final int maxBatch;
+
+    /** The batch new requests are added to. */
+    private Batch currentBatch = new Batch();
+
+    /** True when the flusher has been asked to stop. */
+    private boolean stopped;
+
+    /** The flusher thread, null if it has not been started. */
+    private Thread flusherThread;
+
+    /** The identifier of the MBean, or null if none is registered. */
+    private Object mbean;
+
+    /* Counters, only updated by the flusher thread. */
+    private volatile long flushCount;
+    private volatile long requestCount;
+    private volatile long maxBatchSize;
+    private volatile long totalFlushTime;
+    private volatile long maxFlushTime;
+
+    LogFlusher(LogToFile logFactory, long maxWait, int maxBatch)
+    {
+        this.logFactory = logFactory;
+        this.maxWait = maxWait;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Start the flusher thread and register the MBean for it.
+     *
+     * @param dbName the name of the database, used to name the MBean
+     */
+    void start(String dbName)
+    {
+        synchronized (this)
+        {
+            flusherThread = getMonitor().getDaemonThread(
+                    this, "logFlusher", false);
+            flusherThread.start();
+        }
+
+        ManagementService managementService =
+            (ManagementService) getSystemModule(Module.JMX);
+
+        if (managementService != null)
+        {
+            try
+            {
+                mbean = managementService.registerMBean(
+                        new LogFlusherMBeanImpl(this),
+                        LogFlusherMBean.class,
+                        "type=LogFlusher,db=" +
+                        managementService.quotePropertyValue(dbName));
+            }
+            catch (StandardException se)
+            {
+                // Monitoring is not essential, run without the MBean.
+                logFactory.logErrMsg(se);
+            }
+        }
+    }
+
+    /**
+     * Stop the flusher thread. Requests that are already queued are
+     * flushed before the thread exits. Later requests are not accepted,
+     * and the caller must flush the log itself.
+     */
+    void stop()
+    {
+        Thread t;
+
+        synchronized (this)
+        {
+            stopped = true;
+            t = flusherThread;
+            notifyAll();
+        }
+
+        if (t != null && t != Thread.currentThread())
+        {
+            for (;;)
+            {
+                try
+                {
+                    t.join();
+                    break;
+                }
+                catch (InterruptedException ie)
+                {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+        }
+
+        if (mbean != null)
+        {
+            ManagementService managementService =
+                (ManagementService) getSystemModule(Module.JMX);
+            if (managementService != null)
+                managementService.unregisterMBean(mbean);
+            mbean = null;
+        }
+    }
+
+    /**
+     * Have the flusher thread flush the log up to the given instant, and
+     * wait until it has done so.
+     *
+     * @param fileNumber the log file to flush
+     * @param wherePosition flush the log file up to this position
+     * @return true if the log has been flushed, false if the flusher has
+     *         been stopped and the caller must flush the log itself
+     *
+     * @exception StandardException if the flush failed
+     */
+    boolean flush(long fileNumber, long wherePosition)
+        throws StandardException
+    {
+        Batch batch;
+
+        synchronized (this)
+        {
+            if (stopped)
+                return false;
+
+            batch = currentBatch;
+            batch.add(fileNumber, wherePosition);
+
+            // Wake up the flusher if this is the first request of the
+            // batch, or if the batch is now big enough to flush right away.
+            if (batch.size == 1 || batch.size == maxBatch)
+                notifyAll();
+        }
+
+        synchronized (batch)
+        {
+            while (!batch.done)
+            {
+                try
+                {
+                    batch.wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+        }
+
+        Throwable t = batch.error;
+
+        if (t == null)
+            return true;
+        if (t instanceof StandardException)
+            throw (StandardException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+
+        throw StandardException.plainWrapException(t);
+    }
+
+    /**
+     * The body of the flusher thread. Take one batch at a time and flush
+     * it, until asked to stop.
+     */
+    public void run()
+    {
+        for (;;)
+        {
+            Batch batch = nextBatch();
+
+            if (batch == null)
+                return;
+
+            long start = System.nanoTime();
+            Throwable error = null;
+
+            try
+            {
+                logFactory.flushLogFile(batch.fileNumber, batch.position);
+            }
+            catch (Throwable t)
+            {
+                error = t;
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            flushCount++;
+            requestCount += batch.size;
+            totalFlushTime += elapsed;
+            if (batch.size > maxBatchSize)
+                maxBatchSize = batch.size;
+            if (elapsed > maxFlushTime)
+                maxFlushTime = elapsed;
+
+            synchronized (batch)
+            {
+                batch.error = error;
+                batch.done = true;
+                batch.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait for a batch that has requests in it and close it, so that new
+     * requests go into the next batch.
+     *
+     * @return the batch to flush, or null if the flusher has been stopped
+     *         and there is nothing more to flush
+     */
+    private synchronized Batch nextBatch()
+    {
+        while (currentBatch.size == 0)
+        {
+            if (stopped)
+                return null;
+
+            waitForRequests(0L);
+        }
+
+        if (maxWait > 0)
+        {
+            long deadline = System.nanoTime() + maxWait * 1000L;
+
+            while (!stopped && currentBatch.size < maxBatch)
+            {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0)
+                    break;
+
+                waitForRequests(remaining);
+            }
+        }
+
+        Batch batch = currentBatch;
+        currentBatch = new Batch();
+
+        if (SanityManager.DEBUG)
+        {
+            SanityManager.ASSERT(batch.size > 0, "flushing empty batch");
+        }
+
+        return batch;
+    }
+
+    /**
+     * Wait on this object for the given number of nanoseconds, or until
+     * notified if <code>nanos</code> is 0. Caller must hold the monitor.
+     */
+    private void waitForRequests(long nanos)
+    {
+        try
+        {
+            if (nanos == 0)
+                wait();
+            else
+                wait(nanos / 1000000L, (int) (nanos % 1000000L));
+        }
+        catch (InterruptedException ie)
+        {
+            InterruptStatus.setInterrupted();
+        }
+    }
+
+    /*
+    ** Methods used by the MBean
+    */
+
+    long getFlushCount()
+    {
+        return flushCount;
+    }
+
+    long getRequestCount()
+    {
+        return requestCount;
+    }
+
+    double getAverageBatchSize()
+    {
+        long flushes = flushCount;
+        return flushes == 0 ? 0.0 : ((double) requestCount) / flushes;
+    }
+
+    long getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    long getAverageFlushTime()
+    {
+        long flushes = flushCount;
+        return flushes == 0 ? 0L : (totalFlushTime / flushes) / 1000L;
+    }
+
+    long getMaxFlushTime()
+    {
+        return maxFlushTime / 1000L;
+    }
+
+    long getMaxWait()
+    {
+        return maxWait;
+    }
+
+    int getMaxBatch()
+    {
+        return maxBatch;
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+
+    /**
+     * Privileged module lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static Object getSystemModule(final String factoryInterface)
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<Object>()
+             {
+                 public Object run()
+                 {
+                     return Monitor.getSystemModule(factoryInterface);
+                 }
+             }
+             );
+    }
+}
@@ -93,6 +93,7 @@ import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
 
+import java.util.LinkedList;
 import java.util.Properties;
 import java.util.zip.CRC32;
 
@@ -250,6 +251,12 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 	// all existing database will have the number 9 in there.
 	private static final int OBSOLETE_LOG_VERSION_NUMBER = 9;
 
+	// Written in place of OBSOLETE_LOG_VERSION_NUMBER in the header of the
+	// log files written with derby.storage.logMapped, which nothing else
+	// reads. Such a file may be a recycled one, holding the log records of
+	// the log file it used to be after the end of the log.
+	private static final int MAPPED_LOG_VERSION_NUMBER = 10;
+
 	/* how big the log file should be before checkpoint or log switch is taken */
 	private static final int DEFAULT_LOG_SWITCH_INTERVAL = 1024*1024;		
 	private static final int LOG_SWITCH_INTERVAL_MIN     = 100000;
@@ -264,6 +271,47 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 	private static final int LOG_BUFFER_SIZE_MAX = LOG_SWITCH_INTERVAL_MAX;
 	private int logBufferSize = DEFAULT_LOG_BUFFER_SIZE;
 
+	private static final int LOG_BUFFER_COUNT_MIN = 2;
+	private static final int LOG_BUFFER_COUNT_MAX = 64;
+	private int logBufferCount = LogAccessFile.DEFAULT_LOG_NUMBER_LOG_BUFFERS;
+
+	// derby.storage.logConcurrentAppend: copy log records into the log
+	// buffers after releasing the monitor of this object.
+	private boolean concurrentAppend;
+
+	// derby.storage.logMapped: preallocate and recycle the log files, and
+	// write them through memory mapping.
+	private boolean logMapped;
+
+	// derby.storage.logMaxRecycledFiles: the number of obsolete log files
+	// that are kept around to be reused as new log files.
+	private static final int DEFAULT_MAX_RECYCLED_LOG_FILES = 4;
+	private static final int MAX_RECYCLED_LOG_FILES_MAX = 1000;
+	private int maxRecycledLogFiles = DEFAULT_MAX_RECYCLED_LOG_FILES;
+
+	// Obsolete log files waiting to be reused, named recycledN.dat where N
+	// is the number the file had as a log file. Null until the log
+	// directory has been searched for them. MT - protected by this.
+	private static final String RECYCLED_LOG_FILE_PREFIX = "recycled";
+	private LinkedList<StorageFile> recycledLogFiles;
+
+	// derby.storage.recoveryRedoThreads: the number of threads that redo
+	// page operations during recovery, 1 means serial redo.
+	private static final int RECOVERY_REDO_THREADS_MAX = 64;
+	private int recoveryRedoThreads = 1;
+
+	// derby.storage.checkpointIncremental: checkpoints triggered by the
+	// amount of log written only write the pages the page writer has not
+	// written in the background.
+	private boolean incrementalCheckpoint;
+
+	// The redo and undo LWM snapshot of the last checkpoint, before an
+	// incremental checkpoint moved them back. The next incremental
+	// checkpoint writes the pages still dirty from before this redo LWM, so
+	// it can always start redo here. MT - protected by inCheckpoint.
+	private LogCounter lastRedoLWM;
+	private long       lastUndoLWM;
+
 	/* Log Control file flags. */
 	private static final byte IS_BETA_FLAG = 0x1;
 	
@@ -399,6 +447,22 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 
 	private long logWrittenFromLastCheckPoint = 0;
 	                            // keeps track of the amout of log written between checkpoints
+
+	private static final int DEFAULT_GROUP_COMMIT_MAX_WAIT = 0;
+	private static final int GROUP_COMMIT_MAX_WAIT_MAX = 1000000; // 1 second
+	private static final int DEFAULT_GROUP_COMMIT_MAX_BATCH = 64;
+	private static final int GROUP_COMMIT_MAX_BATCH_MAX = 65536;
+
+	private boolean groupCommit;        // derby.storage.logGroupCommit
+	private int     groupCommitMaxWait  = DEFAULT_GROUP_COMMIT_MAX_WAIT;
+	private int     groupCommitMaxBatch = DEFAULT_GROUP_COMMIT_MAX_BATCH;
+
+	private volatile LogFlusher logFlusher;
+								// the thread which flushes the log on behalf
+								// of committing transactions when group
+								// commit is enabled, null otherwise.
+								// Started at the end of recovery.
+
 	private RawStoreFactory rawStoreFactory; 
 	// use this only when in slave mode or after recovery is finished
 
@@ -682,7 +746,7 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 		// log writer requires encryption block size info from rawstore factory 
 		// to encrypt checksum log records. 
 		if (firstLog != null) 
-			logOut = new LogAccessFile(this, firstLog, logBufferSize);
+			logOut = new LogAccessFile(this, firstLog, logBufferSize, logBufferCount);
 
         // If booted in slave mode, the recovery thread is not allowed
         // to do any recovery work until the SlaveFactory tells the
@@ -721,6 +785,8 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 
 		if (recoveryNeeded)
 		{
+			long recoveryStart = System.currentTimeMillis();
+
 			try
 			{
 				/////////////////////////////////////////////////////////////
@@ -913,10 +979,22 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 				//
 				inRedo = true;	
 
+				// page operations can be redone by several threads if asked
+				ParallelRedo parallelRedo = null;
+				if (recoveryRedoThreads > 1)
+				{
+					parallelRedo = new ParallelRedo(
+						tf, rawStoreFactory, recoveryRedoThreads);
+				}
+
+				long redoStart = System.currentTimeMillis();
+
 				long logEnd = 
                     logger.redo(
                         recoveryTransaction, tf, redoScan, redoLWM, 
-                        ttabInstant);
+                        ttabInstant, parallelRedo);
+
+				long redoTime = System.currentTimeMillis() - redoStart;
 
 				inRedo = false;
 				
@@ -1034,6 +1112,11 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 							//postion the log at the current end postion
 							theLog.seek(endPosition);
 						}
+						else if (logMapped)
+						{
+							preAllocateNewLogFile(theLog);
+							theLog.seek(endPosition);
+						}
 						
 						if (SanityManager.DEBUG)
 						{
@@ -1175,7 +1258,7 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
                         // one. DERBY-5937.
                         logOut.close();
                     }
-					logOut = new LogAccessFile(this, theLog, logBufferSize);
+					logOut = new LogAccessFile(this, theLog, logBufferSize, logBufferCount);
                 }
 				
 				if(logSwitchRequired)
@@ -1213,6 +1296,8 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
                             tf.getTransactionTable());
                 }
 
+				long undoTime = 0;
+
 				if (!noInFlightTransactions)
 				{
 					if (SanityManager.DEBUG)
@@ -1222,8 +1307,12 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
                                 "In recovery undo, rollback inflight transactions");
 					}
 
+					long undoStart = System.currentTimeMillis();
+
 					tf.rollbackAllTransactions(recoveryTransaction, rawStoreFactory);
 
+					undoTime = System.currentTimeMillis() - undoStart;
+
 					if (SanityManager.DEBUG)
 					{
 						if (SanityManager.DEBUG_ON(LogToFile.DBG_FLAG))
@@ -1320,6 +1409,21 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 				logger.close();
 
 				recoveryNeeded = false;
+
+				// the time spent reading the log is part of the redo pass
+				long scanTime = Math.min(logger.getRedoScanTime(), redoTime);
+
+				Monitor.logTextMessage(
+					MessageId.LOG_RECOVERY_TIMES,
+					Long.toString(System.currentTimeMillis() - recoveryStart),
+					Long.toString(scanTime),
+					Long.toString(redoTime - scanTime),
+					Long.toString(undoTime),
+					Integer.toString(logger.getRedoScanCount()),
+					Long.toString(logger.getRedoCount()),
+					Integer.toString(
+						recoveryRedoThreads > 1 ? recoveryRedoThreads : 0),
+					Long.toString(logger.getParallelRedoCount()));
 			}
 			catch (IOException ioe)
 			{
@@ -1375,6 +1479,17 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
             // use the same daemon for the cache cleaner
             dataFactory.setupCacheCleaner(checkpointDaemon);
         }
+
+		/////////////////////////////////////////////////////////////
+		// setup log flusher for group commit
+		/////////////////////////////////////////////////////////////
+		if (groupCommit && !ReadOnlyDB)
+		{
+			LogFlusher flusher = new LogFlusher(
+                this, groupCommitMaxWait, groupCommitMaxBatch);
+			flusher.start(dataDirectory);
+			logFlusher = flusher;
+		}
 	}
 
  
@@ -1504,7 +1619,7 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 		}
 
 		// call checkpoint with no pre-started transaction
-		boolean done = checkpointWithTran(null, rsf, df, tf, wait);
+		boolean done = checkpointWithTran(null, rsf, df, tf, wait, false);
 
 		return done;
 	}
@@ -1519,6 +1634,9 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
                             wait=true then this routine will wait for the 
                             checkpoint to complete and the do another checkpoint
                             and wait for it to finish before returning.
+        @param incremental  If true, only write the pages that the page
+                            writer has not written in time, and start redo
+                            at the oldest change to a page left dirty.
 
 		@exception StandardException Derby Standard Error Policy 
 	*/
@@ -1527,7 +1645,8 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
     RawStoreFactory     rsf,
     DataFactory         df,
     TransactionFactory  tf,
-    boolean             wait)
+    boolean             wait,
+    boolean             incremental)
 		 throws StandardException
 	{
 		LogInstant  redoLWM;
@@ -1707,7 +1826,38 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 			/////////////////////////////////////////////////////
 			// clean the buffer cache
 			/////////////////////////////////////////////////////
-			df.checkpoint();
+			LogCounter prevRedoLWM = lastRedoLWM;
+			long       prevUndoLWM = lastUndoLWM;
+
+			lastRedoLWM = (LogCounter) redoLWM;
+			lastUndoLWM = undoLWM_long;
+
+			if (incremental)
+			{
+				// Write the pages that are still dirty from before the
+				// previous checkpoint, all of them if there is none. The page
+				// writer should have written most of them already.
+				LogInstant oldest = df.checkpointIncremental(
+					prevRedoLWM == null ? redoLWM : prevRedoLWM, redoLWM);
+
+				if (oldest != null && oldest.lessThan(redoLWM))
+				{
+					// Some pages are still dirty from before this checkpoint,
+					// redo has to start at the redo LWM of the previous one.
+					// Every transaction with log records after that point was
+					// either active then, and started after its undo LWM, or
+					// started later, so recovery will see all of them begin.
+					redoLWM = prevRedoLWM;
+					redoLWM_long = prevRedoLWM.getValueAsLong();
+
+					if (prevUndoLWM < undoLWM_long)
+						undoLWM_long = prevUndoLWM;
+				}
+			}
+			else
+			{
+				df.checkpoint();
+			}
 
 
 			/////////////////////////////////////////////////////
@@ -1974,18 +2124,239 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 		}
 
 
+		writeLogFileHeader(newlog, number, prevLogRecordEndInstant);
+
+		return true;
+	}
+
+	/**
+		Write the header of a log file and sync it to disk. The file is left
+		positioned just after the header.
+
+		@param newlog the log file to write the header of
+		@param number the log file number
+		@param prevLogRecordEndInstant the end position of the  previous log record
+
+		@exception IOException if the log file cannot be written
+	*/
+	private void writeLogFileHeader(StorageRandomAccessFile newlog, long number,
+									long prevLogRecordEndInstant)
+		 throws IOException, StandardException
+	{
 		newlog.seek(0);
 
 		newlog.writeInt(fid);
-		newlog.writeInt(OBSOLETE_LOG_VERSION_NUMBER); // for silly backwards compatibility reason
+		newlog.writeInt(logMapped ?
+						MAPPED_LOG_VERSION_NUMBER :
+						OBSOLETE_LOG_VERSION_NUMBER); // for silly backwards compatibility reason
 		newlog.writeLong(number);
 		newlog.writeLong(prevLogRecordEndInstant);
 
 		syncFile(newlog);
+	}
+
+	/**
+		Tell whether a log file was written with derby.storage.logMapped,
+		in which case it may be a recycled log file that still holds log
+		records of an older log file after the end of the log.
+
+		@param number the log file number
+
+		@return true if the header of the log file marks it as mapped
+
+		@exception StandardException Standard Derby error policy
+	*/
+	boolean isMappedLogFile(long number) throws StandardException
+	{
+		StorageRandomAccessFile log = null;
+
+		try
+		{
+			log = privRandomAccessFile(getLogFileName(number), "r");
+			log.seek(0);
+			log.readInt();		// fid
+			return log.readInt() == MAPPED_LOG_VERSION_NUMBER;
+		}
+		catch (IOException ioe)
+		{
+			return false;
+		}
+		finally
+		{
+			if (log != null)
+			{
+				try
+				{
+					log.close();
+				}
+				catch (IOException ioe) {}
+			}
+		}
+	}
+
+	/**
+		Keep an obsolete log file so that it can be reused as a new log
+		file, instead of deleting it. The file is renamed so that it is
+		not mistaken for a log file.
+
+		<P>MT - synchronized on this, like the other users of the recycled
+		log files.
+
+		@param logFile the obsolete log file
+		@param number the log file number of the obsolete log file
+
+		@return true if the log file was recycled, false if the caller
+		should delete it
+	*/
+	private synchronized boolean recycleLogFile(StorageFile logFile, long number)
+	{
+		LinkedList<StorageFile> recycled = getRecycledLogFiles();
+
+		if (recycled == null || recycled.size() >= maxRecycledLogFiles)
+			return false;
+
+		StorageFile recycledFile = logStorageFactory.newStorageFile(
+			logFile.getParentDir(), RECYCLED_LOG_FILE_PREFIX + number + ".dat");
+
+		if (!privRenameTo(logFile, recycledFile))
+			return false;
+
+		recycled.addLast(recycledFile);
+
+		if (SanityManager.DEBUG)
+		{
+			if (SanityManager.DEBUG_ON(LogToFile.DBG_FLAG))
+				SanityManager.DEBUG(DBG_FLAG, "recycled log file " + logFile.getPath() +
+									" as " + recycledFile.getPath());
+		}
 
 		return true;
 	}
 
+	/**
+		Turn a recycled log file into the given new log file. The header is
+		written and synced before the file gets its new name, so a crash in
+		between leaves either a recycled file behind or a log file whose
+		header is correct. The old log records in the rest of the file are
+		not overwritten; a log scan stops at the first of them because its
+		log instant does not match its position in the log.
+
+		<P>MT - caller must hold the monitor of this object.
+
+		@param newLogFile the name of the new log file, which does not exist
+		@param number the log file number of the new log file
+		@param prevLogRecordEndInstant the end position of the previous log record
+
+		@return true if a recycled log file was reused, false if the caller
+		should create a new log file
+	*/
+	private boolean reuseRecycledLogFile(StorageFile newLogFile, long number,
+										 long prevLogRecordEndInstant)
+		throws StandardException
+	{
+		LinkedList<StorageFile> recycled = getRecycledLogFiles();
+
+		while (recycled != null && !recycled.isEmpty())
+		{
+			StorageFile recycledFile = recycled.removeFirst();
+			StorageRandomAccessFile log = null;
+
+			try
+			{
+				log = privRandomAccessFile(recycledFile, "rw");
+
+				// a file that is too short to hold a preallocated log file
+				// is of no use, creating a new log file is as cheap
+				if (log.length() < logSwitchInterval)
+				{
+					log.close();
+					log = null;
+					privDelete(recycledFile);
+					continue;
+				}
+
+				writeLogFileHeader(log, number, prevLogRecordEndInstant);
+				log.close();
+				log = null;
+			}
+			catch (IOException ioe)
+			{
+				if (log != null)
+				{
+					try
+					{
+						log.close();
+					}
+					catch (IOException ioe2) {}
+				}
+
+				privDelete(recycledFile);
+				continue;
+			}
+
+			if (privRenameTo(recycledFile, newLogFile))
+				return true;
+
+			privDelete(recycledFile);
+		}
+
+		return false;
+	}
+
+	/**
+		Get the list of recycled log files. The first time this is called,
+		the log directory is searched for recycled log files left by an
+		earlier boot.
+
+		<P>MT - caller must hold the monitor of this object.
+
+		@return the recycled log files, or null if the log directory cannot
+		be accessed
+	*/
+	private LinkedList<StorageFile> getRecycledLogFiles()
+	{
+		if (recycledLogFiles == null)
+		{
+			StorageFile logDir;
+			try
+			{
+				logDir = getLogDirectory();
+			}
+			catch (StandardException se)
+			{
+				return null;
+			}
+
+			LinkedList<StorageFile> recycled = new LinkedList<StorageFile>();
+			String[] logfiles = privList(logDir);
+			if (logfiles != null)
+			{
+				for (int i = 0; i < logfiles.length; i++)
+				{
+					if (logfiles[i].startsWith(RECYCLED_LOG_FILE_PREFIX) &&
+						logfiles[i].endsWith(".dat"))
+					{
+						recycled.addLast(
+							logStorageFactory.newStorageFile(logDir, logfiles[i]));
+					}
+				}
+			}
+			recycledLogFiles = recycled;
+		}
+
+		return recycledLogFiles;
+	}
+
+	/**
+		Return the size of the segments the log files are mapped in, or 0
+		if the log files are not written through memory mapping.
+	*/
+	int getLogMapSegmentSize()
+	{
+		return logMapped ?
+			Math.min(logSwitchInterval, MappedLogFile.MAX_SEGMENT_SIZE) : 0;
+	}
+
 	/**
 		Switch to the next log file if possible.
 
@@ -2062,6 +2433,12 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 					return;
 				}
 
+				// a recycled log file is already preallocated, and gets
+				// its header before it is given the new name
+				boolean reused = logMapped &&
+					reuseRecycledLogFile(newLogFile, logFileNumber+1,
+								LogCounter.makeLogInstantAsLong(logFileNumber, endPosition));
+
 				try
 				{
                     newLog =   privRandomAccessFile(newLogFile, "rw");
@@ -2080,8 +2457,19 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 					return;
 				}
 
-				if (initLogFile(newLog, logFileNumber+1,
-								LogCounter.makeLogInstantAsLong(logFileNumber, endPosition)))
+				boolean initialized;
+				if (reused)
+				{
+					newLog.seek(LOG_FILE_HEADER_SIZE);
+					initialized = true;
+				}
+				else
+				{
+					initialized = initLogFile(newLog, logFileNumber+1,
+								LogCounter.makeLogInstantAsLong(logFileNumber, endPosition));
+				}
+
+				if (initialized)
 				{
 
 					// New log file init ok, close the old one and
@@ -2125,8 +2513,13 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 						newLog = openLogFileInWriteMode(newLogFile);
 						newLog.seek(endPosition);
 					}
+					else if (logMapped && !reused)
+					{
+						preAllocateNewLogFile(newLog);
+						newLog.seek(endPosition);
+					}
 
-					logOut = new LogAccessFile(this, newLog, logBufferSize);
+					logOut = new LogAccessFile(this, newLog, logBufferSize, logBufferCount);
 					newLog = null;
 
 
@@ -2297,7 +2690,8 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 			try
 			{
 				uselessLogFile = getLogFileName(oldFirstLog);
-                if (privDelete(uselessLogFile))
+                if ((logMapped && recycleLogFile(uselessLogFile, oldFirstLog))
+                        || privDelete(uselessLogFile))
 				{
 					if (SanityManager.DEBUG)
 					{
@@ -3213,8 +3607,40 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 												   LOG_BUFFER_SIZE_MIN, 
 												   LOG_BUFFER_SIZE_MAX, 
 												   DEFAULT_LOG_BUFFER_SIZE);
+		logBufferCount = PropertyUtil.getSystemInt(Property.LOG_BUFFER_COUNT,
+												   LOG_BUFFER_COUNT_MIN,
+												   LOG_BUFFER_COUNT_MAX,
+												   LogAccessFile.DEFAULT_LOG_NUMBER_LOG_BUFFERS);
+		concurrentAppend =
+            PropertyUtil.getSystemBoolean(Property.LOG_CONCURRENT_APPEND);
+		logMapped =
+            PropertyUtil.getSystemBoolean(Property.LOG_MAPPED);
+		maxRecycledLogFiles =
+            PropertyUtil.getSystemInt(Property.LOG_MAX_RECYCLED_FILES,
+                                      0,
+                                      MAX_RECYCLED_LOG_FILES_MAX,
+                                      DEFAULT_MAX_RECYCLED_LOG_FILES);
+		recoveryRedoThreads =
+            PropertyUtil.getSystemInt(Property.RECOVERY_REDO_THREADS,
+                                      1,
+                                      RECOVERY_REDO_THREADS_MAX,
+                                      1);
+		incrementalCheckpoint =
+            PropertyUtil.getSystemBoolean(Property.CHECKPOINT_INCREMENTAL);
 		jbmsVersion = getMonitor().getEngineVersion();
 
+		groupCommit =
+            PropertyUtil.getSystemBoolean(Property.LOG_GROUP_COMMIT);
+		groupCommitMaxWait =
+            PropertyUtil.getSystemInt(Property.LOG_GROUP_COMMIT_MAX_WAIT,
+                                      0,
+                                      GROUP_COMMIT_MAX_WAIT_MAX,
+                                      DEFAULT_GROUP_COMMIT_MAX_WAIT);
+		groupCommitMaxBatch =
+            PropertyUtil.getSystemInt(Property.LOG_GROUP_COMMIT_MAX_BATCH,
+                                      1,
+                                      GROUP_COMMIT_MAX_BATCH_MAX,
+                                      DEFAULT_GROUP_COMMIT_MAX_BATCH);
 		
 		String logArchiveMode = 
             startParams.getProperty(Property.LOG_ARCHIVE_MODE);
@@ -3240,6 +3666,11 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 			isWriteSynced = false;
 		}
 
+		// A mapped log is synced by forcing the mapped segments, the file
+		// must not be opened in write sync mode.
+		if (logMapped)
+			isWriteSynced = false;
+
 
         // If derby.system.durability=test is set,then set flag to 
         // disable sync of log records at commit and log file before 
@@ -3439,6 +3870,11 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
                         //postion the log at the current log end postion
                         firstLog.seek(endPosition);
                     }
+                    else if (logMapped)
+                    {
+                        preAllocateNewLogFile(firstLog);
+                        firstLog.seek(endPosition);
+                    }
 
 					if (SanityManager.DEBUG)
 					{
@@ -3526,6 +3962,13 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 			checkpointDaemon.stop();
 		}
 
+		// stop the log flusher, any queued flush requests are served first
+		LogFlusher flusher = logFlusher;
+		if (flusher != null) {
+			logFlusher = null;
+			flusher.stop();
+		}
+
 		synchronized(this)
 		{
 			stopped = true;
@@ -3533,6 +3976,16 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 			if (logOut != null) {
 				try {
 					logOut.flushLogAccessFile();
+
+					// A mapped log file has old log records after the end
+					// of the log. Mark the end, so that the next boot does
+					// not take them for an incomplete log record.
+					if (logMapped && corrupt == null && !ReadOnlyDB)
+					{
+						logOut.writeEndMarker(0);
+						logOut.syncLogAccessFile();
+					}
+
 					logOut.close();
 				}
 				catch (IOException ioe) {}
@@ -3638,6 +4091,14 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 						}
 					}
 				}
+				// recycled log files are of no use if the log is no longer
+				// mapped
+				else if (!logMapped &&
+						 logfiles[i].startsWith(RECYCLED_LOG_FILE_PREFIX) &&
+						 logfiles[i].endsWith(".dat"))
+				{
+					privDelete(logStorageFactory.newStorageFile(logDir, logfiles[i]));
+				}
 			}
 		}
 	}
@@ -3728,7 +4189,16 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 
 			// checkpoint will start its own internal transaction on the current
 			// context.
-			rawStoreFactory.checkpoint();
+			if (incrementalCheckpoint && !inReplicationSlavePreMode)
+			{
+				checkpointWithTran(
+					null, rawStoreFactory, dataFactory,
+					rawStoreFactory.getXactFactory(), false, true);
+			}
+			else
+			{
+				rawStoreFactory.checkpoint();
+			}
 		}
 		catch (StandardException se)
 		{
@@ -3778,6 +4248,8 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 
 		long instant;
 		boolean testIncompleteLogWrite = false;
+		LogAccessFile reservedIn = null;
+		LogAccessFileBuffer reserved = null;
 
 		if (ReadOnlyDB)
         {
@@ -3875,9 +4347,22 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 				instant = 
                     LogCounter.makeLogInstantAsLong(logFileNumber, endPosition);
 
-                logOut.writeLogRecord(
-                    length, instant, data, offset, 
-                    optionalData, optionalDataOffset, optionalDataLength);
+				// in concurrent append mode, just reserve the space for the
+				// log record here and copy it in after leaving the
+				// synchronized block. Records too big for a log buffer are
+				// always written here.
+				if (concurrentAppend)
+				{
+					reservedIn = logOut;
+					reserved = reservedIn.reserveLogRecord(length, instant);
+				}
+
+				if (reserved == null)
+				{
+					logOut.writeLogRecord(
+						length, instant, data, offset, 
+						optionalData, optionalDataOffset, optionalDataLength);
+				}
 
 				if (optionalDataLength != 0) 
                 {
@@ -3899,6 +4384,14 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 
 				setEndPosition( endPosition + (length + LOG_RECORD_OVERHEAD) );
 			}
+
+			if (reserved != null)
+			{
+				// the buffer cannot be written before this copy is done,
+				// see LogAccessFile.switchLogBuffer.
+				reservedIn.copyLogRecord(reserved, length, instant, data, offset,
+                    optionalData, optionalDataOffset, optionalDataLength);
+			}
 		}
 		catch (IOException ioe)
 		{
@@ -3955,6 +4448,12 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 		Flush the log such that the log record written with the instant 
         wherePosition is guaranteed to be on disk.
 
+		<P>If group commit is enabled the request is handed to the log
+		flusher thread, which flushes on behalf of all waiting threads at
+		once. Callers which hold the monitor of this object (such as
+		switchLogFile) always flush the log themselves, since the flusher
+		needs that monitor to do its work.
+
 		<P>MT - only one flush is allowed to be taking place at any given time 
 		(RESOLVE: right now it single thread thru the log factory while the log
 		is frozen) 
@@ -3963,6 +4462,49 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 
 	*/
 	protected void flush(long fileNumber, long wherePosition) throws StandardException
+	{
+		LogFlusher flusher = logFlusher;
+
+		if (flusher != null &&
+			wherePosition != LogCounter.INVALID_LOG_INSTANT &&
+			!Thread.holdsLock(this) &&
+			!isFlushed(fileNumber, wherePosition))
+		{
+			if (flusher.flush(fileNumber, wherePosition))
+				return;
+
+			// the flusher has been stopped, flush the log ourselves
+		}
+
+		flushLogFile(fileNumber, wherePosition);
+	}
+
+	/**
+		Check if the log has been flushed past the given position, so that
+		a request for it need not be handed to the log flusher.
+
+		<P>MT - synchronized on this, like the same check in flushLogFile.
+	*/
+	private synchronized boolean isFlushed(long fileNumber, long wherePosition)
+	{
+		return corrupt == null && !isFrozen &&
+			(fileNumber < logFileNumber || wherePosition < lastFlush);
+	}
+
+	/**
+		Flush the log such that the log record written with the instant 
+        wherePosition is guaranteed to be on disk, by writing out the log
+		buffers and syncing the log file in the calling thread.
+
+		<P>MT - only one flush is allowed to be taking place at any given time 
+		(RESOLVE: right now it single thread thru the log factory while the log
+		is frozen) 
+
+		@exception StandardException cannot sync log file
+
+	*/
+	void flushLogFile(long fileNumber, long wherePosition)
+		throws StandardException
 	{
 
 		long potentialLastFlush = 0;
@@ -5372,7 +5914,7 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
                 logFile = privRandomAccessFile(getLogFileName(logFileNumber),
                                                "rw");
             }
-            logOut = new LogAccessFile(this, logFile, logBufferSize);
+            logOut = new LogAccessFile(this, logFile, logBufferSize, logBufferCount);
 
             lastFlush = endPosition;
             logFile.seek(endPosition); // append log records at the end of
@@ -5676,6 +6218,7 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 	private StorageFile activeFile;
 	private File toFile;
 	private String activePerms;
+	private StorageFile renameTarget;
 
     protected boolean privExists(StorageFile file)
     {
@@ -5805,6 +6348,12 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
 		return runBooleanAction(7, file);
 	}
 
+	private synchronized boolean privRenameTo(StorageFile from, StorageFile to)
+	{
+		renameTarget = to;
+		return runBooleanAction(11, from);
+	}
+
 
 	private synchronized boolean runBooleanAction(int action, StorageFile file) {
 		this.action = action;
@@ -5877,6 +6426,9 @@ public final class LogToFile implements LogFactory, ModuleControl, ModuleSupport
             return FileUtil.copyFile(logStorageFactory, toFile, activeFile);
         case 10:
         	return(new OutputStreamWriter(activeFile.getOutputStream(),"UTF8"));
+        case 11:
+            // SECURITY PERMISSION - OP4
+            return activeFile.renameTo(renameTarget);
 
 		default:
 			return null;
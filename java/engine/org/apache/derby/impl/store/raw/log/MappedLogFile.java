@@ -0,0 +1,174 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.log.MappedLogFile
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Appends to a log file through memory mapping.
+ * <p>
+ * The file is mapped in fixed size segments, which are mapped the first
+ * time they are written to. Mapping a segment past the end of the file
+ * extends the file, but log files are normally preallocated, so this only
+ * happens when a log file grows past the log switch interval.
+ * <p>
+ * A sync forces only the segments that have been written to since the
+ * previous sync. A MappedByteBuffer cannot force part of its range, so
+ * the segments should be kept small compared to the log file.
+ * <p>
+ * The segments are not unmapped explicitly, since there is no portable way
+ * to do so. They are unmapped when they are garbage collected after the
+ * log file has been closed.
+ * <p>
+ * MT - writes must be single threaded, which LogAccessFile takes care of.
+ * A sync may run at the same time as a write. The state is protected by
+ * synchronization on this object, but the segments are forced without
+ * holding the monitor, so that writers are not blocked by a sync.
+ */
+final class MappedLogFile
+{
+    /** The largest size of a mapped segment of the log file. */
+    static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final int segmentSize;
+
+    /** The segments mapped so far, null for segments not yet mapped. */
+    private final ArrayList<MappedByteBuffer> segments =
+        new ArrayList<MappedByteBuffer>();
+
+    /** The position in the file of the next write. */
+    private long position;
+
+    /** Everything before this position has been forced to disk. */
+    private long syncedPosition;
+
+    /**
+     * Create an object that appends to the file of the given channel.
+     *
+     * @param channel the channel of the log file, opened for writing
+     * @param position the position in the file to append at
+     * @param segmentSize the size of each mapped segment
+     */
+    MappedLogFile(FileChannel channel, long position, int segmentSize)
+    {
+        this.channel = channel;
+        this.position = position;
+        this.syncedPosition = position;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Append bytes to the log file.
+     *
+     * @exception IOException if a segment of the file cannot be mapped
+     */
+    void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            ByteBuffer segment;
+            int offset;
+            int n;
+
+            synchronized (this)
+            {
+                int index = (int) (position / segmentSize);
+                offset = (int) (position % segmentSize);
+                n = Math.min(len, segmentSize - offset);
+                segment = getSegment(index).duplicate();
+            }
+
+            segment.position(offset);
+            segment.put(b, off, n);
+
+            synchronized (this)
+            {
+                position += n;
+            }
+
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Force everything that has been written so far to disk.
+     */
+    void sync()
+    {
+        long target;
+        MappedByteBuffer[] dirty;
+
+        synchronized (this)
+        {
+            target = position;
+
+            if (target <= syncedPosition)
+                return;
+
+            int first = (int) (syncedPosition / segmentSize);
+            int last = (int) ((target - 1) / segmentSize);
+
+            dirty = new MappedByteBuffer[last - first + 1];
+            for (int i = first; i <= last; i++)
+                dirty[i - first] = segments.get(i);
+        }
+
+        for (int i = 0; i < dirty.length; i++)
+        {
+            dirty[i].force();
+        }
+
+        synchronized (this)
+        {
+            if (target > syncedPosition)
+                syncedPosition = target;
+        }
+    }
+
+    /**
+     * Get the segment with the given index, mapping it if necessary.
+     * Caller must hold the monitor of this object.
+     */
+    private MappedByteBuffer getSegment(int index) throws IOException
+    {
+        while (segments.size() <= index)
+            segments.add(null);
+
+        MappedByteBuffer segment = segments.get(index);
+
+        if (segment == null)
+        {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE,
+                                  (long) index * segmentSize, segmentSize);
+            segments.set(index, segment);
+        }
+
+        return segment;
+    }
+}
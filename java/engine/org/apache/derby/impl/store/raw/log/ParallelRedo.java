@@ -0,0 +1,408 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.log.ParallelRedo
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.log;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.LinkedList;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.services.context.ContextManager;
+import org.apache.derby.iapi.services.context.ContextService;
+import org.apache.derby.iapi.services.io.ArrayInputStream;
+import org.apache.derby.iapi.services.monitor.ModuleFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.store.raw.Loggable;
+import org.apache.derby.iapi.store.raw.PageKey;
+import org.apache.derby.iapi.store.raw.RawStoreFactory;
+import org.apache.derby.iapi.store.raw.log.LogInstant;
+import org.apache.derby.iapi.store.raw.xact.RawTransaction;
+import org.apache.derby.iapi.store.raw.xact.TransactionFactory;
+import org.apache.derby.iapi.util.InterruptStatus;
+
+/**
+ * Redoes page log operations on a set of worker threads during recovery.
+ * <p>
+ * The redo loop in {@link FileLogger#redo} reads the log and hands every
+ * {@link org.apache.derby.iapi.store.raw.PageRedoable} log operation to
+ * {@link #dispatch}. The operation goes into the queue of the worker that
+ * owns its page, so all the operations on a page are redone by the same
+ * worker in log order, while operations on different pages are redone at
+ * the same time. Any other log operation that changes the database is a
+ * barrier: the redo loop calls {@link #drain} to wait for all the queued
+ * operations to be redone before it redoes that operation itself.
+ * <p>
+ * Each worker has its own context manager and recovery transaction, which
+ * it uses to find and latch the pages.
+ * <p>
+ * MT - the dispatching methods must only be called by the redo loop. The
+ * state of each worker is protected by synchronization on the worker.
+ */
+final class ParallelRedo
+{
+    /** The max number of operations waiting in the queue of a worker. */
+    private static final int MAX_QUEUE_SIZE = 256;
+
+    /** A log operation waiting to be redone. */
+    private static final class RedoItem
+    {
+        final Loggable op;
+        final LogInstant instant;
+        final byte[] data;
+
+        RedoItem(Loggable op, LogInstant instant, byte[] data)
+        {
+            this.op = op;
+            this.instant = instant;
+            this.data = data;
+        }
+    }
+
+    /** A worker thread with its queue of log operations. */
+    private final class Worker implements Runnable
+    {
+        private final LinkedList<RedoItem> queue = new LinkedList<RedoItem>();
+
+        /** True while the worker is redoing an operation it has taken. */
+        private boolean busy;
+
+        private boolean stopped;
+
+        private Thread thread;
+
+        /** Number of operations redone, only updated by the worker. */
+        private volatile long redoCount;
+
+        /** Add an operation to the queue, wait if the queue is full. */
+        synchronized void add(RedoItem item)
+        {
+            while (queue.size() >= MAX_QUEUE_SIZE)
+                waitOnWorker();
+
+            queue.addLast(item);
+
+            if (queue.size() == 1)
+                notifyAll();
+        }
+
+        /** Wait until everything in the queue has been redone. */
+        synchronized void drain()
+        {
+            while (busy || !queue.isEmpty())
+                waitOnWorker();
+        }
+
+        synchronized void stop()
+        {
+            stopped = true;
+            notifyAll();
+        }
+
+        /**
+         * Take the next operation from the queue, waiting for one if the
+         * queue is empty.
+         *
+         * @return the next operation, or null if the worker is stopped and
+         *         the queue is empty
+         */
+        private synchronized RedoItem take()
+        {
+            busy = false;
+            notifyAll();
+
+            while (queue.isEmpty())
+            {
+                if (stopped)
+                    return null;
+                waitOnWorker();
+            }
+
+            busy = true;
+            RedoItem item = queue.removeFirst();
+
+            if (queue.size() == MAX_QUEUE_SIZE - 1)
+                notifyAll();
+
+            return item;
+        }
+
+        private void waitOnWorker()
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                InterruptStatus.setInterrupted();
+            }
+        }
+
+        public void run()
+        {
+            ContextService contextService = getContextService();
+            ContextManager cm = contextService.newContextManager();
+            contextService.setCurrentContextManager(cm);
+
+            RawTransaction xact = null;
+
+            try
+            {
+                try
+                {
+                    xact = transFactory.startInternalTransaction(
+                            rawStoreFactory, cm);
+
+                    // don't queue post commit work while replaying the log
+                    xact.recoveryTransaction();
+                }
+                catch (Throwable t)
+                {
+                    setError(t);
+                }
+
+                RedoItem item;
+                while ((item = take()) != null)
+                {
+                    // after an error, only empty the queue so that the redo
+                    // loop does not wait forever
+                    if (xact == null || error != null)
+                        continue;
+
+                    try
+                    {
+                        redo(xact, item);
+                    }
+                    catch (Throwable t)
+                    {
+                        setError(t);
+                    }
+                }
+
+                if (xact != null)
+                    xact.close();
+            }
+            catch (Throwable t)
+            {
+                setError(t);
+            }
+            finally
+            {
+                cm.cleanupOnError(StandardException.normalClose(), false);
+                contextService.resetCurrentContextManager(cm);
+            }
+        }
+
+        /** Redo one log operation, the same way the serial redo loop does. */
+        private void redo(RawTransaction xact, RedoItem item)
+            throws Exception
+        {
+            Loggable op = item.op;
+
+            try
+            {
+                if (op.needsRedo(xact))
+                {
+                    op.doMe(xact, item.instant,
+                            new ArrayInputStream(item.data));
+                    redoCount++;
+                }
+            }
+            finally
+            {
+                op.releaseResource(xact);
+            }
+        }
+    }
+
+    private final TransactionFactory transFactory;
+
+    private final RawStoreFactory rawStoreFactory;
+
+    private final Worker[] workers;
+
+    /** The first error raised by a worker, if any. */
+    private volatile Throwable error;
+
+    /**
+     * Create the workers for a parallel redo pass.
+     *
+     * @param transFactory the transaction factory
+     * @param rawStoreFactory the raw store, used to start the transactions
+     *                        of the workers
+     * @param threads the number of worker threads
+     */
+    ParallelRedo(TransactionFactory transFactory,
+                 RawStoreFactory rawStoreFactory, int threads)
+    {
+        this.transFactory = transFactory;
+        this.rawStoreFactory = rawStoreFactory;
+
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker();
+    }
+
+    /** Start the worker threads. */
+    void start()
+    {
+        ModuleFactory monitor = getMonitor();
+
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].thread = monitor.getDaemonThread(
+                    workers[i], "recoveryRedo-" + i, false);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Queue a log operation to be redone by the worker that owns its page.
+     *
+     * @param page the page the operation changes
+     * @param op the log operation, with its undo operation set if it is a
+     *           compensation operation
+     * @param instant the instant of the log record
+     * @param data the optional data of the log operation
+     *
+     * @exception StandardException if a worker has failed
+     */
+    void dispatch(PageKey page, Loggable op, LogInstant instant, byte[] data)
+        throws StandardException
+    {
+        checkError();
+
+        int w = (page.hashCode() & 0x7fffffff) % workers.length;
+        workers[w].add(new RedoItem(op, instant, data));
+    }
+
+    /**
+     * Wait until all the queued log operations have been redone.
+     *
+     * @exception StandardException if a worker has failed
+     */
+    void drain() throws StandardException
+    {
+        for (int i = 0; i < workers.length; i++)
+            workers[i].drain();
+
+        checkError();
+    }
+
+    /**
+     * Stop the worker threads after they have emptied their queues, and
+     * wait for them to exit.
+     */
+    void stop()
+    {
+        for (int i = 0; i < workers.length; i++)
+            workers[i].stop();
+
+        for (int i = 0; i < workers.length; i++)
+        {
+            Thread t = workers[i].thread;
+
+            if (t == null)
+                continue;
+
+            for (;;)
+            {
+                try
+                {
+                    t.join();
+                    break;
+                }
+                catch (InterruptedException ie)
+                {
+                    InterruptStatus.setInterrupted();
+                }
+            }
+        }
+    }
+
+    /** Return the number of log operations the workers have redone. */
+    long getRedoCount()
+    {
+        long count = 0;
+        for (int i = 0; i < workers.length; i++)
+            count += workers[i].redoCount;
+        return count;
+    }
+
+    private synchronized void setError(Throwable t)
+    {
+        if (error == null)
+            error = t;
+    }
+
+    private void checkError() throws StandardException
+    {
+        Throwable t = error;
+
+        if (t == null)
+            return;
+        if (t instanceof StandardException)
+            throw (StandardException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+
+        throw StandardException.plainWrapException(t);
+    }
+
+    /**
+     * Privileged lookup of the ContextService. Must be private so that user
+     * code can't call this entry point.
+     */
+    private static ContextService getContextService()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ContextService>()
+             {
+                 public ContextService run()
+                 {
+                     return ContextService.getFactory();
+                 }
+             }
+             );
+    }
+
+    /**
+     * Privileged Monitor lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static ModuleFactory getMonitor()
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<ModuleFactory>()
+             {
+                 public ModuleFactory run()
+                 {
+                     return Monitor.getMonitor();
+                 }
+             }
+             );
+    }
+}
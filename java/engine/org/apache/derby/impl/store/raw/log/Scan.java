@@ -800,19 +800,47 @@ public class Scan implements StreamLogScan {
 				return null;
 			}
 
-			// sanity check it 
-			if (SanityManager.DEBUG)
+			/*check that the instant is the position the record was read
+			 *from. Recycled log files (derby.storage.logMapped) still hold
+			 *the log records of the log file they used to be after the end
+			 *of the log. A left over record, or bytes from the middle of
+			 *one, can not have an instant that matches its position, so in
+			 *a mapped log file a mismatch is the end of the log.
+			 */
+			if (LogCounter.getLogFileNumber(currentInstant) !=
+				currentLogFileNumber ||
+				LogCounter.getLogFilePosition(currentInstant) !=
+				recordStartPosition)
 			{
-				if (LogCounter.getLogFileNumber(currentInstant) !=
-					currentLogFileNumber ||
-					LogCounter.getLogFilePosition(currentInstant) !=
-					recordStartPosition)
+				if (logFactory.isMappedLogFile(currentLogFileNumber))
+				{
+					if (SanityManager.DEBUG)
+					{
+						if (SanityManager.DEBUG_ON(LogToFile.DBG_FLAG))
+						{
+							SanityManager.DEBUG(LogToFile.DBG_FLAG,
+								"Wrong LogInstant on log record " +
+								LogCounter.toDebugString(currentInstant) +
+								" version real position (" +
+								currentLogFileNumber + "," +
+								recordStartPosition + "), fuzzy log end");
+						}
+					}
+
+					currentInstant = LogCounter.INVALID_LOG_INSTANT;
+					fuzzyLogEnd = true ;
+					return null;
+				}
+
+				if (SanityManager.DEBUG)
+				{
 					SanityManager.THROWASSERT(
-							  "Wrong LogInstant on log record " +
+								 "Wrong LogInstant on log record " +
 								LogCounter.toDebugString(currentInstant) + 
 								 " version real position (" +
 								 currentLogFileNumber + "," +
 								 recordStartPosition + ")");
+				}
 			}
 
 
@@ -0,0 +1,356 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.xact.AdaptiveEscalation
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+
+package org.apache.derby.impl.store.raw.xact;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.derby.iapi.error.StandardException;
+import org.apache.derby.iapi.reference.Module;
+import org.apache.derby.iapi.reference.Property;
+import org.apache.derby.iapi.services.jmx.ManagementService;
+import org.apache.derby.iapi.services.locks.LockFactory;
+import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.store.raw.ContainerKey;
+import org.apache.derby.mbeans.LockEscalationMBean;
+
+/**
+ * The shared state of adaptive lock escalation, enabled by the
+ * <code>derby.locks.adaptiveEscalation</code> property.
+ * <p>
+ * Without it, a transaction escalates its row locks on a table to a table
+ * lock when it holds more locks than <code>derby.locks.escalationThreshold</code>
+ * and enough of them are on that table. With it, {@link Xact} asks this
+ * class to adjust that decision:
+ * <UL>
+ * <LI> When the lock table holds more than
+ * <code>derby.locks.escalationLockTableSize</code> locks, the limit of
+ * every transaction and the per table threshold are lowered in proportion,
+ * so that the lock table does not grow without bounds.
+ * <LI> A transaction that got a whole limit worth of locks in less than
+ * a second is probably a bulk operation which will get many more, and
+ * escalates at half the threshold.
+ * <LI> A table that was escalated once leaves a hint, and later statements
+ * escalate it at half the threshold. The hint is dropped as soon as an
+ * escalation of the table is held up by contention.
+ * <LI> A table on which other transactions are waiting for locks is not
+ * escalated, as a table lock would hold them up until the end of the
+ * transaction, unless the lock table is short of memory.
+ * </UL>
+ * The escalation events and their reasons are counted, and exposed through
+ * a {@link LockEscalationMBean}.
+ * <p>
+ * MT - thread safe. The hints and the counters may be used by any number
+ * of transactions at the same time.
+ */
+final class AdaptiveEscalation
+{
+    /** The escalation was made at the normal threshold. */
+    static final int THRESHOLD = 0;
+    /** The threshold was lowered by a hint of an earlier escalation. */
+    static final int HINT = 1;
+    /** The threshold was lowered because locks were got at a high rate. */
+    static final int RATE = 2;
+    /** The threshold was lowered because the lock table is large. */
+    static final int MEMORY = 3;
+
+    private static final String[] REASONS =
+        { "THRESHOLD", "HINT", "RATE", "MEMORY" };
+
+    /** The largest number of escalation hints that are kept. */
+    private static final int MAX_HINTS = 64;
+
+    private final LockFactory lockFactory;
+
+    /** The value of derby.locks.escalationLockTableSize. */
+    private final int lockTableSizeLimit;
+
+    /** The tables that later statements escalate at a lower threshold. */
+    private final Set<ContainerKey> hints =
+        Collections.newSetFromMap(new ConcurrentHashMap<ContainerKey, Boolean>());
+
+    private final AtomicLong[] escalations = new AtomicLong[REASONS.length];
+    private final AtomicLong contentionSkips = new AtomicLong();
+    private final AtomicLong failedEscalations = new AtomicLong();
+
+    /** Description of the last escalation event. */
+    private volatile String lastEvent;
+
+    /** The identifier of the MBean, or null if none is registered. */
+    private Object mbean;
+
+    AdaptiveEscalation(LockFactory lockFactory, int lockTableSizeLimit)
+    {
+        this.lockFactory = lockFactory;
+        this.lockTableSizeLimit = lockTableSizeLimit;
+        for (int i = 0; i < escalations.length; i++)
+            escalations[i] = new AtomicLong();
+    }
+
+    /**
+     * Get the lock limit of a transaction, lowered if the lock table holds
+     * more locks than it should.
+     *
+     * @param limit the value of derby.locks.escalationThreshold
+     * @return the limit to use for the next transaction
+     */
+    int getLimit(int limit)
+    {
+        int lockTableSize = lockFactory.getLockTableSize();
+        if (lockTableSize <= lockTableSizeLimit)
+            return limit;
+
+        return Math.max(Property.MIN_LOCKS_ESCALATION_THRESHOLD,
+                        scale(limit, lockTableSize));
+    }
+
+    /**
+     * Get the reason to lower the escalation threshold of a transaction
+     * that has reached its lock limit.
+     *
+     * @param limit the lock limit of the transaction
+     * @param acquired the number of locks got since the limit was last
+     *        reached, or since the start of the transaction
+     * @param elapsed the time in milliseconds it took to get those locks,
+     *        or -1 if not known
+     * @return MEMORY, RATE or THRESHOLD
+     */
+    int getReason(int limit, int acquired, long elapsed)
+    {
+        if (lockFactory.getLockTableSize() > lockTableSizeLimit)
+            return MEMORY;
+
+        if (elapsed >= 0 && acquired >= limit / 2 &&
+                (long) acquired * 1000 >= (long) limit * Math.max(elapsed, 1))
+            return RATE;
+
+        return THRESHOLD;
+    }
+
+    /**
+     * Get the reason to lower the escalation threshold of one table.
+     *
+     * @param key the table
+     * @param reason the reason for the transaction as a whole
+     * @return HINT if the transaction has no other reason and the table
+     *         has a hint, otherwise the reason of the transaction
+     */
+    int getReason(ContainerKey key, int reason)
+    {
+        if (reason == THRESHOLD && hints.contains(key))
+            return HINT;
+        return reason;
+    }
+
+    /**
+     * Lower an escalation threshold for a reason.
+     *
+     * @param threshold the threshold computed from the lock limit
+     * @param limit the lock limit of the transaction
+     * @param reason the reason returned by getReason()
+     * @return the threshold to use
+     */
+    int getThreshold(int threshold, int limit, int reason)
+    {
+        switch (reason)
+        {
+        case MEMORY:
+            threshold = scale(threshold, lockFactory.getLockTableSize());
+            break;
+        case RATE:
+        case HINT:
+            threshold /= 2;
+            break;
+        default:
+            return threshold;
+        }
+        return Math.max(threshold, Math.max(limit / 8, 1));
+    }
+
+    /**
+     * Scale a number of locks down by the ratio of the lock table size
+     * limit to the size of the lock table.
+     */
+    private int scale(int locks, int lockTableSize)
+    {
+        if (lockTableSize <= lockTableSizeLimit)
+            return locks;
+        return (int) ((long) locks * lockTableSizeLimit / lockTableSize);
+    }
+
+    /**
+     * Record that the row locks on a table were escalated, and leave a hint
+     * for later statements.
+     */
+    void escalated(ContainerKey key, int rowLocks, int reason)
+    {
+        escalations[reason].incrementAndGet();
+        if (!hints.contains(key))
+        {
+            if (hints.size() >= MAX_HINTS)
+                hints.clear();
+            hints.add(key);
+        }
+        event(key, rowLocks, "escalated", reason);
+    }
+
+    /**
+     * Record that the row locks on a table were not escalated because
+     * other transactions were waiting for locks on it, and drop its hint.
+     */
+    void contention(ContainerKey key, int rowLocks, int waiters)
+    {
+        contentionSkips.incrementAndGet();
+        hints.remove(key);
+        lastEvent = key + ": " + rowLocks + " row locks not escalated, " +
+            waiters + " waiters";
+    }
+
+    /**
+     * Record that the table lock could not be granted, and drop the hint
+     * of the table.
+     */
+    void failed(ContainerKey key, int rowLocks, int reason)
+    {
+        failedEscalations.incrementAndGet();
+        hints.remove(key);
+        event(key, rowLocks, "not escalated, table lock not granted", reason);
+    }
+
+    private void event(ContainerKey key, int rowLocks, String what, int reason)
+    {
+        lastEvent = key + ": " + rowLocks + " row locks " + what +
+            " (" + REASONS[reason] + ")";
+    }
+
+    /**
+     * Register the MBean for adaptive lock escalation.
+     *
+     * @param dbName the name of the database, used to name the MBean
+     */
+    void registerMBean(String dbName)
+    {
+        ManagementService managementService =
+            (ManagementService) getSystemModule(Module.JMX);
+
+        if (managementService != null)
+        {
+            try
+            {
+                mbean = managementService.registerMBean(
+                        new LockEscalationMBeanImpl(this),
+                        LockEscalationMBean.class,
+                        "type=LockEscalation,db=" +
+                        managementService.quotePropertyValue(dbName));
+            }
+            catch (StandardException se)
+            {
+                // Monitoring is not essential, run without the MBean.
+                Monitor.logThrowable(se);
+            }
+        }
+    }
+
+    /**
+     * Unregister the MBean, if one is registered.
+     */
+    void unregisterMBean()
+    {
+        if (mbean != null)
+        {
+            ManagementService managementService =
+                (ManagementService) getSystemModule(Module.JMX);
+            if (managementService != null)
+                managementService.unregisterMBean(mbean);
+            mbean = null;
+        }
+    }
+
+    /*
+    ** Methods used by the MBean
+    */
+
+    long getEscalationCount()
+    {
+        long count = 0;
+        for (AtomicLong c : escalations)
+            count += c.get();
+        return count;
+    }
+
+    long getEscalationCount(int reason)
+    {
+        return escalations[reason].get();
+    }
+
+    long getContentionSkipCount()
+    {
+        return contentionSkips.get();
+    }
+
+    long getFailedEscalationCount()
+    {
+        return failedEscalations.get();
+    }
+
+    int getHintCount()
+    {
+        return hints.size();
+    }
+
+    int getLockTableSize()
+    {
+        return lockFactory.getLockTableSize();
+    }
+
+    int getLockTableSizeLimit()
+    {
+        return lockTableSizeLimit;
+    }
+
+    String getLastEvent()
+    {
+        return lastEvent;
+    }
+
+    /**
+     * Privileged module lookup. Must be private so that user code
+     * can't call this entry point.
+     */
+    private static Object getSystemModule(final String factoryInterface)
+    {
+        return AccessController.doPrivileged
+            (
+             new PrivilegedAction<Object>()
+             {
+                 public Object run()
+                 {
+                     return Monitor.getSystemModule(factoryInterface);
+                 }
+             }
+             );
+    }
+}
@@ -0,0 +1,114 @@
+/*
+
+   Derby - Class org.apache.derby.impl.store.raw.xact.LockEscalationMBeanImpl
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.impl.store.raw.xact;
+
+import java.security.AccessControlException;
+import java.security.AccessController;
+import org.apache.derby.mbeans.LockEscalationMBean;
+import org.apache.derby.security.SystemPermission;
+
+/**
+ * This class provides monitoring capabilities for adaptive lock escalation
+ * through Java Management Extension (JMX).
+ */
+final class LockEscalationMBeanImpl implements LockEscalationMBean {
+
+    private final AdaptiveEscalation escalation;
+
+    LockEscalationMBeanImpl(AdaptiveEscalation escalation) {
+        this.escalation = escalation;
+    }
+
+    @Override
+    public long getEscalationCount() {
+        checkPermission();
+        return escalation.getEscalationCount();
+    }
+
+    @Override
+    public long getMemoryEscalationCount() {
+        checkPermission();
+        return escalation.getEscalationCount(AdaptiveEscalation.MEMORY);
+    }
+
+    @Override
+    public long getRateEscalationCount() {
+        checkPermission();
+        return escalation.getEscalationCount(AdaptiveEscalation.RATE);
+    }
+
+    @Override
+    public long getHintEscalationCount() {
+        checkPermission();
+        return escalation.getEscalationCount(AdaptiveEscalation.HINT);
+    }
+
+    @Override
+    public long getContentionSkipCount() {
+        checkPermission();
+        return escalation.getContentionSkipCount();
+    }
+
+    @Override
+    public long getFailedEscalationCount() {
+        checkPermission();
+        return escalation.getFailedEscalationCount();
+    }
+
+    @Override
+    public int getHintCount() {
+        checkPermission();
+        return escalation.getHintCount();
+    }
+
+    @Override
+    public int getLockTableSize() {
+        checkPermission();
+        return escalation.getLockTableSize();
+    }
+
+    @Override
+    public int getLockTableSizeLimit() {
+        checkPermission();
+        return escalation.getLockTableSizeLimit();
+    }
+
+    @Override
+    public String getLastEvent() {
+        checkPermission();
+        return escalation.getLastEvent();
+    }
+
+    private static void checkPermission() {
+        if (System.getSecurityManager() != null) {
+            try {
+                AccessController.checkPermission(
+                        SystemPermission.ENGINE_MONITOR);
+            } catch (AccessControlException ace) {
+                // Need to throw a simplified version as AccessControlException
+                // will have a reference to Derby's SystemPermission class,
+                // which most likely will not be available on the client.
+                throw new SecurityException(ace.getMessage());
+            }
+        }
+    }
+}
@@ -248,6 +248,18 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
     // The transaction is only allowed read operations, no log writes.
     private boolean         readOnly;
 
+    // The lock escalation threshold of the transaction, and the lock limit
+    // it is currently given by adaptive lock escalation. 0 until setup()
+    // has been called.
+    private int escalationThreshold;
+    private int escalationLimit;
+
+    // The time at which the lock limit was last reached, or the transaction
+    // last ended, and the number of locks held then. Used by adaptive lock
+    // escalation to compute the rate at which locks are got.
+    private long limitTime;
+    private int limitLockCount;
+
     // Whether or not to flush log on commit or abort.  
     // Current usage:
     // User transactions default to flush.  Internal and nested top
@@ -543,12 +555,12 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
 	public void setup(PersistentSet set)
 		throws StandardException {
 
-		int escalationThreshold = PropertyUtil.getServiceInt(set,
+		escalationThreshold = PropertyUtil.getServiceInt(set,
 			Property.LOCKS_ESCALATION_THRESHOLD,
 			Property.MIN_LOCKS_ESCALATION_THRESHOLD,
 			Integer.MAX_VALUE,
 			Property.DEFAULT_LOCKS_ESCALATION_THRESHOLD);
-
+		escalationLimit = escalationThreshold;
 
 		getLockFactory().setLimit(
 			compatibilitySpace, this, escalationThreshold, this);
@@ -1936,6 +1948,22 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
 	private final void releaseAllLocks() {
 
 		getLockFactory().unlockGroup(getCompatibilitySpace(), this);
+
+		AdaptiveEscalation adaptive = xactFactory.getAdaptiveEscalation();
+		if (adaptive != null && escalationThreshold != 0)
+		{
+			// give the next transaction a lower lock limit while the lock
+			// table is too large, and the normal one again once it is not
+			int limit = adaptive.getLimit(escalationThreshold);
+			if (limit != escalationLimit)
+			{
+				escalationLimit = limit;
+				getLockFactory().setLimit(
+					compatibilitySpace, this, escalationLimit, this);
+			}
+			limitTime = System.currentTimeMillis();
+			limitLockCount = 0;
+		}
 	}
 
 	void resetDefaultLocking() {
@@ -2512,6 +2540,19 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
 		if (threshold < (limit / 4))
 			threshold = limit / 4;
 
+		// With adaptive lock escalation, the threshold is lowered if the
+		// lock table is too large, or if we got our locks at a high rate.
+		AdaptiveEscalation adaptive = xactFactory.getAdaptiveEscalation();
+		int reason = AdaptiveEscalation.THRESHOLD;
+		if (adaptive != null)
+		{
+			long now = System.currentTimeMillis();
+			reason = adaptive.getReason(limit, lockCount - limitLockCount,
+				(limitTime == 0) ? -1 : (now - limitTime));
+			limitTime = now;
+			limitLockCount = lockCount;
+		}
+
 		// try to table lock all tables that are above
 		// this threshold
 
@@ -2521,10 +2562,34 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
 
 			LockCount lc = containers.get(ckey);
 
-			if (lc.count < threshold) {
+			int tableReason = reason;
+			int tableThreshold = threshold;
+			if (adaptive != null)
+			{
+				tableReason = adaptive.getReason(ckey, reason);
+				tableThreshold =
+					adaptive.getThreshold(threshold, limit, tableReason);
+			}
+
+			if (lc.count < tableThreshold) {
 				continue;
 			}
 
+			if (adaptive != null && tableReason != AdaptiveEscalation.MEMORY)
+			{
+				// A table lock would hold up the transactions that wait
+				// for locks on the table until we commit. Keep the row
+				// locks, unless the lock table is short of memory.
+				int waiters = getLockFactory().countWaiters(
+					compatibilitySpace, new EscalateContainerKey(ckey));
+				if (waiters > 0)
+				{
+					adaptive.contention(ckey, lc.count, waiters);
+					continue;
+				}
+			}
+
+			boolean escalated = false;
             try
             {
                 if (openContainer(ckey,
@@ -2535,6 +2600,7 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
                 {
 
                     didEscalate = true;
+                    escalated = true;
                 }
             }
             catch (StandardException se)
@@ -2546,6 +2612,14 @@ public class Xact extends RawTransaction implements Limit, LockOwner {
                     throw se;
                 }
             }
+
+			if (adaptive != null)
+			{
+				if (escalated)
+					adaptive.escalated(ckey, lc.count, tableReason);
+				else
+					adaptive.failed(ckey, lc.count, tableReason);
+			}
 		}
 
 		// Now notify all open containers that an escalation
@@ -34,6 +34,7 @@ import org.apache.derby.iapi.services.monitor.ModuleControl;
 import org.apache.derby.iapi.services.monitor.ModuleFactory;
 import org.apache.derby.iapi.services.monitor.ModuleSupportable;
 import org.apache.derby.iapi.services.monitor.Monitor;
+import org.apache.derby.iapi.services.property.PropertyUtil;
 import org.apache.derby.shared.common.sanity.SanityManager;
 import org.apache.derby.iapi.services.io.Formatable;
 import org.apache.derby.iapi.services.uuid.UUIDFactory;
@@ -99,6 +100,9 @@ public class XactFactory implements TransactionFactory, ModuleControl, ModuleSup
 
 	private boolean inCreateNoLog = false;	// creating database, no logging
 
+    /** Adaptive lock escalation, null if it is not enabled. */
+    private AdaptiveEscalation adaptiveEscalation;
+
     private /* XAResourceManager */ Object xa_resource;
 
 	private Object   backupSemaphore = new Object();
@@ -203,6 +207,19 @@ public class XactFactory implements TransactionFactory, ModuleControl, ModuleSup
                             new ContainerLocking3(lockFactory);
 
 
+        if (Boolean.valueOf(PropertyUtil.getPropertyFromSet(
+                properties, Property.LOCKS_ADAPTIVE_ESCALATION)).booleanValue())
+        {
+            adaptiveEscalation = new AdaptiveEscalation(
+                lockFactory,
+                PropertyUtil.handleInt(
+                    PropertyUtil.getPropertyFromSet(
+                        properties, Property.LOCKS_ESCALATION_LOCK_TABLE_SIZE),
+                    Property.MIN_LOCKS_ESCALATION_THRESHOLD,
+                    Integer.MAX_VALUE,
+                    Property.DEFAULT_LOCKS_ESCALATION_LOCK_TABLE_SIZE));
+        }
+
 		if (create)
 		{
 			ttab = new TransactionTable();
@@ -220,6 +237,9 @@ public class XactFactory implements TransactionFactory, ModuleControl, ModuleSup
 		if (rawStoreDaemon != null)
 			rawStoreDaemon.stop();
 
+		if (adaptiveEscalation != null)
+			adaptiveEscalation.unregisterMBean();
+
 	}
 
 	/*
@@ -233,6 +253,14 @@ public class XactFactory implements TransactionFactory, ModuleControl, ModuleSup
 		return lockFactory;
 	}
 
+	/**
+		Get the state of adaptive lock escalation, or null if adaptive lock
+		escalation is not enabled.
+	*/
+	AdaptiveEscalation getAdaptiveEscalation() {
+		return adaptiveEscalation;
+	}
+
 
 	/**
 		Database creation finished
@@ -869,6 +897,9 @@ public class XactFactory implements TransactionFactory, ModuleControl, ModuleSup
 
 		// data factory is booted by the raw store implementation
 		dataFactory = (DataFactory) findServiceModule(this, rsf.getDataFactoryModule());
+
+		if (adaptiveEscalation != null)
+			adaptiveEscalation.registerMBean(dataFactory.getRootDirectory());
 	}
 
 	/**
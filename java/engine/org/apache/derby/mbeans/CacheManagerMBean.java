@@ -38,6 +38,11 @@ public interface CacheManagerMBean {
      * @see #getHitCount()
      * @see #getMissCount()
      * @see #getEvictionCount()
+     * @see #getPrefetchCount()
+     * @see #getPrefetchHitCount()
+     * @see #getPrefetchMissCount()
+     * @see #getBatchWriteCount()
+     * @see #getBatchWrittenCount()
      */
     void setCollectAccessCounts(boolean collect);
 
@@ -74,6 +79,50 @@ public interface CacheManagerMBean {
      */
     long getEvictionCount();
 
+    /**
+     * Get the number of objects that have been read into the cache ahead
+     * of their use, for example pages read ahead of a sequential scan.
+     *
+     * @return the number of objects read ahead
+     */
+    long getPrefetchCount();
+
+    /**
+     * Get the number of accesses to objects that were requested to be read
+     * ahead, and had been read into the cache when they were accessed.
+     *
+     * @return the number of prefetch hits
+     */
+    long getPrefetchHitCount();
+
+    /**
+     * Get the number of accesses to objects that were requested to be read
+     * ahead, but had not been read into the cache yet when they were
+     * accessed.
+     *
+     * @return the number of prefetch misses
+     */
+    long getPrefetchMissCount();
+
+    /**
+     * Get the number of writes of runs of cached objects that are adjacent
+     * in their storage, each run written at once. For example, the dirty
+     * pages are written in runs by gathering writes when
+     * {@code derby.storage.pageWriteThreads} is set.
+     *
+     * @return the number of batched writes
+     */
+    long getBatchWriteCount();
+
+    /**
+     * Get the number of cached objects written in runs. More objects than
+     * runs means that some runs had several objects.
+     *
+     * @return the number of objects written by batched writes
+     * @see #getBatchWriteCount()
+     */
+    long getBatchWrittenCount();
+
     /**
      * Get the maximum number of entries that could be held by this cache.
      *
@@ -0,0 +1,111 @@
+/*
+
+   Derby - Class org.apache.derby.mbeans.LockEscalationMBean
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+
+package org.apache.derby.mbeans;
+
+/**
+ * This is an MBean that provides information about the escalation of row
+ * locks to table locks in a database that runs with adaptive lock
+ * escalation enabled (the {@code derby.locks.adaptiveEscalation}
+ * property).
+ */
+public interface LockEscalationMBean {
+    /**
+     * Get the number of times the row locks of a transaction on a table
+     * have been replaced by a table lock.
+     *
+     * @return the number of lock escalations
+     */
+    long getEscalationCount();
+
+    /**
+     * Get the number of lock escalations made at a lower threshold
+     * because the lock table held more locks than
+     * {@code derby.locks.escalationLockTableSize}.
+     *
+     * @return the number of lock escalations caused by the lock table size
+     */
+    long getMemoryEscalationCount();
+
+    /**
+     * Get the number of lock escalations made at a lower threshold
+     * because the transaction got its row locks at a high rate.
+     *
+     * @return the number of lock escalations caused by the lock rate
+     */
+    long getRateEscalationCount();
+
+    /**
+     * Get the number of lock escalations made at a lower threshold
+     * because the table had been escalated before by an earlier statement.
+     *
+     * @return the number of lock escalations caused by a hint
+     */
+    long getHintEscalationCount();
+
+    /**
+     * Get the number of lock escalations that were not attempted because
+     * other transactions were waiting for locks on the table.
+     *
+     * @return the number of lock escalations avoided because of contention
+     */
+    long getContentionSkipCount();
+
+    /**
+     * Get the number of lock escalations that failed because the table
+     * lock could not be granted at once.
+     *
+     * @return the number of failed lock escalations
+     */
+    long getFailedEscalationCount();
+
+    /**
+     * Get the number of tables for which later statements escalate at a
+     * lower threshold because of an earlier escalation.
+     *
+     * @return the number of escalation hints
+     */
+    int getHintCount();
+
+    /**
+     * Get the number of objects currently locked in the lock table.
+     *
+     * @return the size of the lock table
+     */
+    int getLockTableSize();
+
+    /**
+     * Get the number of locked objects in the lock table above which
+     * lock escalation is made more aggressive.
+     *
+     * @return the value of {@code derby.locks.escalationLockTableSize}
+     */
+    int getLockTableSizeLimit();
+
+    /**
+     * Get a description of the last lock escalation event: the table, the
+     * number of row locks of the transaction on it, what happened and why.
+     *
+     * @return the last lock escalation event, or null if there has been
+     *         none
+     */
+    String getLastEvent();
+}
@@ -0,0 +1,94 @@
+/*
+
+   Derby - Class org.apache.derby.mbeans.LogFlusherMBean
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derby.mbeans;
+
+/**
+ * This is an MBean that provides information about the log flusher thread
+ * of a database that runs with group commit of the transaction log enabled
+ * (the {@code derby.storage.logGroupCommit} property).
+ */
+public interface LogFlusherMBean {
+    /**
+     * Get the number of times the log flusher has written and synced the
+     * log on behalf of a batch of flush requests.
+     *
+     * @return the number of group flushes
+     */
+    long getFlushCount();
+
+    /**
+     * Get the number of flush requests that have been satisfied by the
+     * log flusher. Each committing transaction makes one request.
+     *
+     * @return the number of flush requests
+     */
+    long getRequestCount();
+
+    /**
+     * Get the average number of flush requests satisfied by one group
+     * flush.
+     *
+     * @return the average batch size, or 0 if no flush has been done
+     */
+    double getAverageBatchSize();
+
+    /**
+     * Get the largest number of flush requests satisfied by one group
+     * flush.
+     *
+     * @return the largest batch size
+     */
+    long getMaxBatchSize();
+
+    /**
+     * Get the average time, in microseconds, spent writing and syncing
+     * the log for one group flush.
+     *
+     * @return the average flush latency in microseconds, or 0 if no flush
+     *         has been done
+     */
+    long getAverageFlushTime();
+
+    /**
+     * Get the longest time, in microseconds, spent writing and syncing
+     * the log for one group flush.
+     *
+     * @return the largest flush latency in microseconds
+     */
+    long getMaxFlushTime();
+
+    /**
+     * Get the longest time, in microseconds, the log flusher waits for
+     * more requests to join a batch.
+     *
+     * @return the value of {@code derby.storage.logGroupCommitMaxWait}
+     */
+    long getMaxWait();
+
+    /**
+     * Get the number of waiting requests that makes the log flusher sync
+     * the log without waiting any longer for more requests.
+     *
+     * @return the value of {@code derby.storage.logGroupCommitMaxBatch}
+     */
+    int getMaxBatch();
+}
@@ -65,6 +65,8 @@ public interface MessageId {
 
     String LOG_CHANGED_DB_TO_READ_ONLY        = "L022"; // a permissions error on log caused us
     													// to change db to read only.
+    String LOG_RECOVERY_TIMES               = "L023"; // time spent in each pass
+                                                        // of recovery.
     
     /*
      * SQLBinary.java internal translatable strings
@@ -303,6 +303,11 @@ public interface SQLState {
 	String STORE_RTS_SORT										= "XSAJH.U";
 	String STORE_RTS_EXTERNAL									= "XSAJI.U";
 	String STORE_RTS_INTERNAL									= "XSAJJ.U";
+	String STORE_RTS_HASH										= "XSAJK.U";
+	String STORE_RTS_NUM_SPILLED_PARTITIONS						= "XSAJL.U";
+	String STORE_RTS_NUM_SEARCHES_FROM_COPIES					= "XSAJM.U";
+	String STORE_RTS_NUM_SEARCHES_LATCHED						= "XSAJN.U";
+	String STORE_RTS_NUM_SEARCH_RESTARTS						= "XSAJO.U";
 
 	/*
 	** Store - access.protocol.XA statement exceptions
@@ -1034,6 +1039,7 @@ public interface SQLState {
 	String LANG_NO_BEST_PLAN_FOUND                                     = "42Y69";
 	String LANG_ILLEGAL_FORCED_JOIN_ORDER                              = "42Y70";
 	String LANG_CANNOT_DROP_SYSTEM_ALIASES                             = "42Y71";
+	String LANG_INVALID_PARALLEL_SCAN_THREADS                          = "42Y72";
 	String LANG_CANNOT_DROP_TRIGGER_S_P_S                              = "42Y82";
 	String LANG_USER_AGGREGATE_BAD_TYPE_NULL                           = "42Y83";
 	String LANG_INVALID_DEFAULT_DEFINITION                             = "42Y84";
@@ -1170,6 +1176,9 @@ public interface SQLState {
     String LANG_NOT_LEFT_DEEP                                 = "42ZCD";
     String LANG_UNRESOLVED_ROW_SOURCE                    = "42ZCE";
 
+    String LANG_INVALID_INDEX_TYPE                       = "42ZCF";
+    String LANG_INCLUDE_COLUMNS_NOT_SUPPORTED            = "42ZCG";
+
 	//following 3 matches the DB2 sql states
 	String LANG_DECLARED_GLOBAL_TEMP_TABLE_ONLY_IN_SESSION_SCHEMA = "428EK";
 	String LANG_NOT_ALLOWED_FOR_DECLARED_GLOBAL_TEMP_TABLE = "42995";
@@ -1300,6 +1309,14 @@ public interface SQLState {
 	String RTS_RC                                                      = "43X9A.U";
 	String RTS_RC_RS                                                   = "43X9B.U";
 	String RTS_WINDOW_RS                                               = "43X9C.U";
+	String RTS_MERGE_JOIN                                              = "43X9D.U";
+	String RTS_MERGE_JOIN_RS                                           = "43X9E.U";
+	String RTS_MERGE_LEFT_OJ                                           = "43X9F.U";
+	String RTS_MERGE_LEFT_OJ_RS                                        = "43X9G.U";
+	String RTS_HYBRID_HASH_JOIN                                        = "43X9H.U";
+	String RTS_HYBRID_HASH_JOIN_RS                                     = "43X9I.U";
+	String RTS_HYBRID_HASH_LEFT_OJ                                     = "43X9J.U";
+	String RTS_HYBRID_HASH_LEFT_OJ_RS                                  = "43X9K.U";
 
 	String RTS_SCALAR_AGG_RS										   = "43Y00.U";
 	String RTS_INDEX_KEY_OPT										   = "43Y01.U";
@@ -1358,6 +1375,7 @@ public interface SQLState {
 	String LANG_STOP_AFTER_BINDING                                     = "42Z56.U";
 	String LANG_STOP_AFTER_OPTIMIZING                                  = "42Z57.U";
 	String LANG_STOP_AFTER_GENERATING                                  = "42Z58.U";
+	String LANG_MERGE_JOIN_OUTER_NOT_ORDERED                           = "42Z59";
 
 	// PARSER EXCEPTIONS
 	String LANG_UNBINDABLE_REWRITE                                     = "X0A00.S";
@@ -429,4 +429,8 @@ class NoOpTransaction implements TransactionController {
         // Auto-generated method stub
     }
 
+    public void setSnapshotReads(boolean snapshotReads) {
+        // Auto-generated method stub
+    }
+
 }
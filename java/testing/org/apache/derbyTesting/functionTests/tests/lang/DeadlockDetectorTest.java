@@ -0,0 +1,206 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.DeadlockDetectorTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.DatabasePropertyTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the background deadlock detection enabled by the
+ * <code>derby.locks.deadlockDetectionInterval</code> property. The deadlock
+ * timeout is longer than the test expects any wait to last, so the
+ * deadlocks must be found by the background detection.
+ */
+public class DeadlockDetectorTest extends BaseJDBCTestCase {
+
+    /** SQLState for deadlock exceptions. */
+    private final static String DEADLOCK = "40001";
+
+    /** Longest time in milliseconds a deadlock may last in the tests. */
+    private final static long MAX_DEADLOCK_TIME = 10000;
+
+    public DeadlockDetectorTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        // Deadlock detection is engine functionality, so only test embedded.
+        Test test =
+                TestConfiguration.embeddedSuite(DeadlockDetectorTest.class);
+
+        Properties props = new Properties();
+        props.setProperty("derby.locks.deadlockDetectionInterval", "50");
+        props.setProperty("derby.locks.deadlockTimeout", "30");
+        props.setProperty("derby.locks.waitTimeout", "60");
+        test = new DatabasePropertyTestSetup(test, props);
+
+        return new CleanDatabaseTestSetup(test) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate("create table t(id int primary key, n int)");
+                s.executeUpdate("insert into t values (1, 0), (2, 0), (3, 0)");
+            }
+        };
+    }
+
+    protected void setUp() throws SQLException {
+        setAutoCommit(false);
+    }
+
+    /**
+     * Check that a deadlock between two transactions is broken long before
+     * the deadlock timeout, and that only one of them is picked as victim.
+     */
+    public void testTwoTransactions() throws Exception {
+        checkDeadlock(2);
+    }
+
+    /**
+     * Check that a deadlock between three transactions is broken long
+     * before the deadlock timeout.
+     */
+    public void testThreeTransactions() throws Exception {
+        checkDeadlock(3);
+    }
+
+    /**
+     * Check that waiters that do not form a cycle are not picked as
+     * victims, even when they wait for many intervals of the background
+     * deadlock detection.
+     */
+    public void testNoDeadlock() throws Exception {
+        Statement s = createStatement();
+        s.executeUpdate("update t set n = n + 1 where id = 1");
+
+        Connection[] conns = new Connection[2];
+        Thread[] threads = new Thread[conns.length];
+        List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < conns.length; i++) {
+            conns[i] = openDefaultConnection();
+            conns[i].setAutoCommit(false);
+            threads[i] = update(conns[i], 1, errors);
+        }
+
+        Thread.sleep(1000);
+        commit();
+
+        for (int i = 0; i < conns.length; i++) {
+            threads[i].join();
+            conns[i].close();
+        }
+        if (!errors.isEmpty()) {
+            fail("unexpected error", errors.get(0));
+        }
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select n from t where id = 1"), "3");
+        commit();
+        s.close();
+    }
+
+    /**
+     * Set up a cycle of transactions, each one waiting for the row locked
+     * by the next one, and check that exactly one of them is a victim.
+     *
+     * @param size the number of transactions in the cycle
+     */
+    private void checkDeadlock(int size) throws Exception {
+        Connection[] conns = new Connection[size];
+        for (int i = 0; i < size; i++) {
+            conns[i] = openDefaultConnection();
+            conns[i].setAutoCommit(false);
+            Statement s = conns[i].createStatement();
+            s.executeUpdate("update t set n = n + 1 where id = " + (i + 1));
+            s.close();
+        }
+
+        long start = System.currentTimeMillis();
+
+        List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[size];
+        for (int i = 0; i < size; i++) {
+            threads[i] = update(conns[i], (i + 1) % size + 1, errors);
+        }
+        for (int i = 0; i < size; i++) {
+            threads[i].join();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("deadlock lasted " + elapsed + " ms",
+                   elapsed < MAX_DEADLOCK_TIME);
+
+        assertEquals(1, errors.size());
+        Throwable t = errors.get(0);
+        if (!(t instanceof SQLException)) {
+            fail("unexpected error", t);
+        }
+        assertSQLState(DEADLOCK, (SQLException) t);
+
+        for (int i = 0; i < size; i++) {
+            conns[i].close();
+        }
+    }
+
+    /**
+     * Start a thread that updates a row and commits. If the update fails,
+     * the transaction is rolled back at once so that the others can go on.
+     *
+     * @param c the connection to update the row with
+     * @param id the row to update
+     * @param errors the list to add the errors of the thread to
+     * @return the started thread
+     */
+    private static Thread update(final Connection c, final int id,
+                                 final List<Throwable> errors) {
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    Statement s = c.createStatement();
+                    try {
+                        assertEquals(1, s.executeUpdate(
+                            "update t set n = n + 1 where id = " + id));
+                        c.commit();
+                    } catch (SQLException se) {
+                        errors.add(se);
+                        c.rollback();
+                    }
+                    s.close();
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+}
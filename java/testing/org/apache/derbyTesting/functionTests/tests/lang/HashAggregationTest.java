@@ -0,0 +1,337 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.HashAggregationTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derby.vti.StringColumnVTI;
+import org.apache.derby.vti.VTICosting;
+import org.apache.derby.vti.VTIEnvironment;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.RuntimeStatisticsParser;
+import org.apache.derbyTesting.junit.SQLUtilities;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for GROUP BY computed with a hash table instead of a sort.
+ */
+public class HashAggregationTest extends BaseJDBCTestCase {
+
+    /** The row count the optimizer is told {@code GroupRowsVTI} returns. */
+    private static volatile double estimatedRowCount;
+
+    private static final String GROUP_QUERY =
+        "select g, count(*), sum(id), min(s), max(s), count(n)\n" +
+        "from table(group_rows(%d, %d)) t group by g";
+
+    public HashAggregationTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("HashAggregationTest");
+        suite.addTest(decorate(
+            TestConfiguration.embeddedSuite(HashAggregationTest.class)));
+
+        // with little memory the groups are spilled to disk, and the
+        // partitions are split again
+        Properties props = new Properties();
+        props.setProperty("derby.language.maxMemoryPerTable", "1");
+        suite.addTest(new SystemPropertyTestSetup(
+            decorate(new HashAggregationTest("testSpill")), props, true));
+        return suite;
+    }
+
+    private static Test decorate(Test test) {
+        return new CleanDatabaseTestSetup(test) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate(
+                    "create function group_rows(nrows int, ngroups int)\n" +
+                    "returns table(id int, g int, s varchar(20), n int)\n" +
+                    "language java parameter style derby_jdbc_result_set\n" +
+                    "no sql external name '" +
+                    GroupRowsVTI.class.getName() + ".groupRows'");
+            }
+        };
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("HASHAGG");
+        super.tearDown();
+    }
+
+    /**
+     * A table function which returns {@code nrows} rows in
+     * {@code ngroups} groups, and which tells the optimizer it returns
+     * {@code estimatedRowCount} rows.
+     */
+    public static class GroupRowsVTI extends StringColumnVTI
+        implements VTICosting {
+
+        private final int rows;
+        private final int groups;
+        private int current = -1;
+
+        public GroupRowsVTI() {
+            this(0, 1);
+        }
+
+        private GroupRowsVTI(int rows, int groups) {
+            super(new String[] {"ID", "G", "S", "N"});
+            this.rows = rows;
+            this.groups = groups;
+        }
+
+        public static ResultSet groupRows(int rows, int groups) {
+            return new GroupRowsVTI(rows, groups);
+        }
+
+        public boolean next() {
+            return ++current < rows;
+        }
+
+        public void close() {
+        }
+
+        protected String getRawColumn(int columnNumber) {
+            switch (columnNumber) {
+                case 1: return String.valueOf(current);
+                case 2: return String.valueOf(current % groups);
+                case 3: return "s" + current;
+                default: return (current % 3 == 0) ?
+                    null : String.valueOf(current);
+            }
+        }
+
+        public double getEstimatedRowCount(VTIEnvironment env) {
+            return estimatedRowCount;
+        }
+
+        public double getEstimatedCostPerInstantiation(VTIEnvironment env) {
+            return 1.0;
+        }
+
+        public boolean supportsMultipleInstantiations(VTIEnvironment env) {
+            return false;
+        }
+    }
+
+    /** Check the grouped rows returned for group_rows(nrows, ngroups). */
+    private static void assertGroups(ResultSet rs, int nrows, int ngroups)
+        throws SQLException {
+        boolean[] seen = new boolean[ngroups];
+        while (rs.next()) {
+            int g = rs.getInt(1);
+            assertFalse("group " + g + " returned twice", seen[g]);
+            seen[g] = true;
+
+            int count = 0;
+            long sum = 0;
+            int countN = 0;
+            for (int id = g; id < nrows; id += ngroups) {
+                count++;
+                sum += id;
+                if (id % 3 != 0) {
+                    countN++;
+                }
+            }
+            assertEquals(count, rs.getInt(2));
+            assertEquals(sum, rs.getLong(3));
+            assertEquals(countN, rs.getInt(6));
+
+            // the strings compare as strings, so find them the same way
+            String min = null;
+            String max = null;
+            for (int id = g; id < nrows; id += ngroups) {
+                String s = "s" + id;
+                if (min == null || s.compareTo(min) < 0) {
+                    min = s;
+                }
+                if (max == null || s.compareTo(max) > 0) {
+                    max = s;
+                }
+            }
+            assertEquals(min, rs.getString(4));
+            assertEquals(max, rs.getString(5));
+        }
+        rs.close();
+        for (int g = 0; g < Math.min(nrows, ngroups); g++) {
+            assertTrue("group " + g + " missing", seen[g]);
+        }
+    }
+
+    /**
+     * Check whether the last statement grouped its rows with a hash table,
+     * and return the parser of its run time statistics.
+     */
+    private static RuntimeStatisticsParser assertHashAggregation(
+        Statement s, boolean hash) throws SQLException {
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.findString("Grouped Aggregate ResultSet", 1));
+        assertEquals(hash, rtsp.findString("Sort type=hash", 1));
+        return rtsp;
+    }
+
+    /**
+     * Check that the optimizer groups a large input with a hash table and
+     * a small one with a sort, and that both return the same groups.
+     */
+    public void testOptimizerChoice() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        estimatedRowCount = 1.0E8;
+        assertGroups(s.executeQuery(
+            String.format(GROUP_QUERY, 20000, 500)), 20000, 500);
+        assertHashAggregation(s, true);
+
+        estimatedRowCount = 1000;
+        assertGroups(s.executeQuery(
+            String.format(GROUP_QUERY, 20001, 500)), 20001, 500);
+        assertHashAggregation(s, false);
+
+        // ROLLUP and DISTINCT aggregates always sort
+        estimatedRowCount = 1.0E8;
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select g, count(distinct id) from table(group_rows(10, 2)) t " +
+            "group by g order by g"),
+            new String[][] {{"0", "5"}, {"1", "5"}});
+        assertHashAggregation(s, false);
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select g, count(*) from table(group_rows(11, 2)) t " +
+            "group by rollup(g) order by g"),
+            new String[][] {{"0", "6"}, {"1", "5"}, {null, "11"}});
+        assertHashAggregation(s, false);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that ORDER BY and HAVING work on top of hash aggregation,
+     * and that an empty input returns no groups.
+     */
+    public void testOrderByAndHaving() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+        estimatedRowCount = 1.0E8;
+
+        ResultSet rs = s.executeQuery(
+            "select g, count(*) from table(group_rows(1000, 100)) t " +
+            "group by g having g >= 95 order by g desc");
+        for (int g = 99; g >= 95; g--) {
+            assertTrue(rs.next());
+            assertEquals(g, rs.getInt(1));
+            assertEquals(10, rs.getInt(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        assertHashAggregation(s, true);
+
+        JDBC.assertEmpty(s.executeQuery(
+            "select g, count(*) from table(group_rows(0, 100)) t group by g"));
+        assertHashAggregation(s, true);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that NULL grouping values form a single group, and that
+     * character values which only differ in trailing blanks are in the
+     * same group, just as with a sort.
+     */
+    public void testGroupingValues() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table hashagg(k varchar(10), c char(5), v int)");
+        s.executeUpdate("insert into hashagg values " +
+            "(null, 'a', 1), ('x', 'a  ', 2), (null, 'b', 4), " +
+            "('x ', 'a', 8), ('y', null, 16), ('x', null, 32)");
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+        estimatedRowCount = 1.0E8;
+
+        String[][] expected = {
+            {"x", "a", "10"}, {"x", null, "32"}, {"y", null, "16"},
+            {null, "a", "1"}, {null, "b", "4"},
+        };
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            "select rtrim(max(t.k)), rtrim(max(t.c)), sum(t.v + r.id) " +
+            "from table(group_rows(1, 1)) r, hashagg t " +
+            "group by t.k, t.c"),
+            expected, false);
+        assertHashAggregation(s, true);
+
+        // the same query with a sort
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            "select rtrim(max(k)), rtrim(max(c)), sum(v) " +
+            "from hashagg group by k, c"),
+            expected, false);
+        assertHashAggregation(s, false);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that groups which don't fit in memory are spilled to disk and
+     * aggregated correctly. Runs both with the default memory, where
+     * nothing is spilled, and with derby.language.maxMemoryPerTable set
+     * to 1 KB.
+     */
+    public void testSpill() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+        estimatedRowCount = 1.0E8;
+
+        assertGroups(s.executeQuery(
+            String.format(GROUP_QUERY, 30000, 500)), 30000, 500);
+        RuntimeStatisticsParser rtsp = assertHashAggregation(s, true);
+        assertEquals(
+            "1".equals(getSystemProperty("derby.language.maxMemoryPerTable")),
+            rtsp.findString("Number of partitions spilled to disk", 1));
+
+        // a cursor closed before all the groups are read drops the
+        // partitions which are left
+        ResultSet rs = s.executeQuery(
+            String.format(GROUP_QUERY, 5000, 1000));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rs.next());
+        }
+        rs.close();
+
+        // one huge group
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select g, count(*) from table(group_rows(5000, 1)) t group by g"),
+            new String[][] {{"0", "5000"}});
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+}
@@ -0,0 +1,313 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.HybridHashJoinTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.RuntimeStatisticsParser;
+import org.apache.derbyTesting.junit.SQLUtilities;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the hybrid hash join strategy, which partitions the inner
+ * table and the outer rows to disk when the hash table doesn't fit in
+ * memory.
+ */
+public class HybridHashJoinTest extends BaseJDBCTestCase {
+
+    /** Inner join of HH_OUTER and HH_INNER. */
+    private static final String INNER_JOIN =
+        "select o.k, o.v, i.w from --DERBY-PROPERTIES joinOrder=FIXED\n" +
+        "hh_outer o, hh_inner i --DERBY-PROPERTIES joinStrategy=HYBRID\n" +
+        "where o.k = i.k";
+
+    /** Left outer join of HH_OUTER and HH_INNER. */
+    private static final String LEFT_JOIN =
+        "select o.k, o.v, i.w from hh_outer o\n" +
+        "left join hh_inner i --DERBY-PROPERTIES joinStrategy=HYBRID\n" +
+        "on o.k = i.k";
+
+    /**
+     * Join of three tables where the join predicates of the hybrid hash
+     * join refer to both outer tables.
+     */
+    private static final String THREE_WAY_JOIN =
+        "select o.v, m.k + 1, i.w from --DERBY-PROPERTIES joinOrder=FIXED\n" +
+        "hh_outer o, hh_small m, " +
+        "hh_inner i --DERBY-PROPERTIES joinStrategy=HYBRID\n" +
+        "where o.k = m.k and i.k = m.k and i.n > o.v";
+
+    public HybridHashJoinTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("HybridHashJoinTest");
+        suite.addTest(decorate(
+            TestConfiguration.embeddedSuite(HybridHashJoinTest.class)));
+
+        // with little memory the hash table is partitioned to disk, and
+        // the partitions are split again when they are read back
+        Properties props = new Properties();
+        props.setProperty("derby.language.maxMemoryPerTable", "1");
+        BaseTestSuite lowMemory = new BaseTestSuite("lowMemory");
+        lowMemory.addTest(new HybridHashJoinTest("spillToDisk"));
+        lowMemory.addTest(new HybridHashJoinTest("testInnerJoin"));
+        lowMemory.addTest(new HybridHashJoinTest("testLeftOuterJoin"));
+        lowMemory.addTest(new HybridHashJoinTest("testThreeWayJoin"));
+        lowMemory.addTest(new HybridHashJoinTest("lowMemoryOptimizerChoice"));
+        suite.addTest(new SystemPropertyTestSetup(
+            decorate(lowMemory), props, true));
+        return suite;
+    }
+
+    private static Test decorate(Test test) {
+        return new CleanDatabaseTestSetup(test) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate("create table hh_outer(k int, v int)");
+                s.executeUpdate(
+                    "create table hh_inner(k int, n int, w varchar(40))");
+                s.executeUpdate("create table hh_small(k int)");
+                PreparedStatement ps1 = s.getConnection().prepareStatement(
+                    "insert into hh_outer values (?, ?)");
+                PreparedStatement ps2 = s.getConnection().prepareStatement(
+                    "insert into hh_inner values (?, ?, ?)");
+                for (int i = 0; i < 700; i++) {
+                    // keys 0 to 349 twice, with every 50th key NULL
+                    if (i % 50 == 7) {
+                        ps1.setNull(1, java.sql.Types.INTEGER);
+                    } else {
+                        ps1.setInt(1, i % 350);
+                    }
+                    ps1.setInt(2, i);
+                    ps1.executeUpdate();
+                }
+                for (int i = 0; i < 900; i++) {
+                    // keys 0 to 299 three times, with every 100th key NULL
+                    if (i % 100 == 3) {
+                        ps2.setNull(1, java.sql.Types.INTEGER);
+                    } else {
+                        ps2.setInt(1, i / 3);
+                    }
+                    ps2.setInt(2, i);
+                    ps2.setString(3, "w" + i + "-padding-padding-padding");
+                    ps2.executeUpdate();
+                }
+                ps1.close();
+                ps2.close();
+                s.executeUpdate("insert into hh_small values " +
+                    "(1), (2), (3), (5), (8), (13), (21), (34), (55), " +
+                    "(89), (144), (233), (340)");
+            }
+        };
+    }
+
+    /**
+     * Read all the rows of a query as sorted strings, so that the results
+     * of different join strategies can be compared.
+     */
+    private static List<String> getSortedRows(Statement s, String sql)
+        throws SQLException {
+        ResultSet rs = s.executeQuery(sql);
+        int columns = rs.getMetaData().getColumnCount();
+        List<String> rows = new ArrayList<String>();
+        while (rs.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= columns; i++) {
+                row.append(rs.getString(i)).append('|');
+            }
+            rows.add(row.toString());
+        }
+        rs.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Check that a query returns the same rows with a hybrid hash join as
+     * with a nested loop join, and that the hybrid hash join was used.
+     *
+     * @return the parser of the run time statistics of the hybrid hash
+     *         join
+     */
+    private RuntimeStatisticsParser assertSameAsNestedLoop(
+        Statement s, String sql, boolean outer, int expectedRows)
+        throws SQLException {
+        List<String> hybrid = getSortedRows(s, sql);
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.findString(outer ?
+            "Hybrid Hash Left Outer Join ResultSet" :
+            "Hybrid Hash Join ResultSet", 1));
+
+        List<String> nestedLoop =
+            getSortedRows(s, sql.replace("HYBRID", "NESTEDLOOP"));
+        assertEquals(expectedRows, hybrid.size());
+        assertEquals(nestedLoop, hybrid);
+        return rtsp;
+    }
+
+    /**
+     * Check an inner hybrid hash join with duplicate and NULL keys on both
+     * sides.
+     */
+    public void testInnerJoin() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        // the outer keys 0 to 299 appear twice, except the NULL ones, and
+        // match three inner rows each, except those with an inner NULL
+        assertSameAsNestedLoop(s, INNER_JOIN, false, 1746);
+
+        // a join predicate which is not on the hash key
+        assertSameAsNestedLoop(s,
+            INNER_JOIN + " and i.n < o.v", false, 506);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check a left outer hybrid hash join, which returns the outer rows
+     * that have no match with NULLs for the inner columns.
+     */
+    public void testLeftOuterJoin() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        assertSameAsNestedLoop(s, LEFT_JOIN, true, 1858);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check a hybrid hash join whose predicates refer to the outer table
+     * of the join it is the inner table of, so that the current rows of
+     * all the outer tables are set aside with the outer rows.
+     */
+    public void testThreeWayJoin() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        assertSameAsNestedLoop(s, THREE_WAY_JOIN, false, 37);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that a hybrid hash join can be asked for in an optimizer plan
+     * override with the {@code %} operator, here with an index as the
+     * inner table.
+     */
+    public void testPlanOverride() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate("create index hh_small_k on hh_small(k)");
+        s.executeUpdate("create index hh_inner_kn on hh_inner(k, n)");
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            "select m.k, i.n from hh_small m, hh_inner i\n" +
+            "where m.k = i.k and m.k < 4\n" +
+            "--DERBYPLAN ( app.hh_small_k % app.hh_inner_kn )\n"),
+            new String[][] {
+                {"1", "4"}, {"1", "5"},
+                {"2", "6"}, {"2", "7"}, {"2", "8"},
+                {"3", "9"}, {"3", "10"}, {"3", "11"},
+            }, false);
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.findString("Hybrid Hash Join ResultSet", 1));
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+        rollback();
+    }
+
+    /**
+     * Check that the hash table of the inner table and the outer rows
+     * are partitioned to disk when there is little memory, and that a
+     * statement with a spilled join can be executed again. Run with
+     * derby.language.maxMemoryPerTable set to 1 KB.
+     */
+    public void spillToDisk() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        RuntimeStatisticsParser rtsp =
+            assertSameAsNestedLoop(s, INNER_JOIN, false, 1746);
+        assertTrue(rtsp.findString("Number of partitions spilled to disk", 1));
+
+        // the join is the inner table of a nested loop join, so it is
+        // reopened once for each row of HH_SMALL
+        List<String> rows = getSortedRows(s,
+            "select m.k, (select count(*) from --DERBY-PROPERTIES joinOrder=FIXED\n" +
+            "    hh_outer o, hh_inner i --DERBY-PROPERTIES joinStrategy=HYBRID\n" +
+            "    where o.k = i.k and o.v > m.k)\n" +
+            "from hh_small m");
+        assertEquals(13, rows.size());
+        assertTrue(rows.toString(), rows.contains("1|1741|"));
+
+        PreparedStatement ps = prepareStatement(INNER_JOIN);
+        for (int i = 0; i < 2; i++) {
+            JDBC.assertDrainResults(ps.executeQuery(), 1746);
+        }
+        ps.close();
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that the optimizer picks a hybrid hash join for a large inner
+     * table without a useful index when there is not enough memory for a
+     * hash join. Run with derby.language.maxMemoryPerTable set to 1 KB.
+     */
+    public void lowMemoryOptimizerChoice() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        assertEquals(1746, getSortedRows(s,
+            "select o.k, o.v, i.w from hh_outer o, hh_inner i " +
+            "where o.k = i.k").size());
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.findString("Hybrid Hash Join ResultSet", 1));
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+}
@@ -0,0 +1,251 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.IncludeColumnsTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.RuntimeStatisticsParser;
+import org.apache.derbyTesting.junit.SQLUtilities;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for indexes with INCLUDE columns, created with
+ * CREATE INDEX ... INCLUDE (cols).
+ */
+public class IncludeColumnsTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 2000;
+
+    public IncludeColumnsTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(IncludeColumnsTest.class));
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("INCT");
+        super.tearDown();
+    }
+
+    /** Create the table and insert rows with ids from 0 to rows - 1. */
+    private void fill(int rows) throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table inct" +
+            "(id int not null, k int, v varchar(20), w int, filler char(200))");
+        s.close();
+
+        PreparedStatement ps =
+            prepareStatement("insert into inct values (?, ?, ?, ?, 'x')");
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i % 100);
+            ps.setString(3, "v" + i);
+            ps.setInt(4, i * 2);
+            ps.executeUpdate();
+        }
+        ps.close();
+    }
+
+    /**
+     * Check that a query which only needs the key and the INCLUDE columns
+     * of an index is answered from the index alone.
+     */
+    public void testCoveringPlan() throws SQLException {
+        fill(ROWS);
+        Statement s = createStatement();
+        s.executeUpdate("create index inct_k on inct(k) include (v, w)");
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        ResultSet rs = s.executeQuery(
+            "select v, w from inct --DERBY-PROPERTIES index=inct_k\n" +
+            "where k = 7 order by w");
+        for (int i = 7; i < ROWS; i += 100) {
+            assertTrue(rs.next());
+            assertEquals("v" + i, rs.getString(1));
+            assertEquals(i * 2, rs.getInt(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedSpecificIndexForIndexScan("INCT", "INCT_K"));
+        assertFalse(rtsp.usedIndexRowToBaseRow());
+
+        // the optimizer picks the covering index on its own
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select w from inct where k = 42 and v = 'v1042'"), "2084");
+        rtsp = SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedSpecificIndexForIndexScan("INCT", "INCT_K"));
+        assertFalse(rtsp.usedIndexRowToBaseRow());
+
+        // a column which is not in the index needs the base row
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select id from inct --DERBY-PROPERTIES index=inct_k\n" +
+            "where k = 42 and w = 2084"), "1042");
+        rtsp = SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedIndexRowToBaseRow());
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that predicates on INCLUDE columns are only used as qualifiers,
+     * never as start or stop keys, and that the index is not taken to be
+     * ordered on its INCLUDE columns.
+     */
+    public void testIncludeColumnsNotOrdered() throws SQLException {
+        fill(ROWS);
+        Statement s = createStatement();
+        s.executeUpdate("create unique index inct_id on inct(id) include (w)");
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from inct --DERBY-PROPERTIES index=inct_id\n" +
+            "where w between 100 and 199"), "50");
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedSpecificIndexForIndexScan("INCT", "INCT_ID"));
+        assertTrue(rtsp.getStartPosition()[1].indexOf("None") > 0);
+        assertTrue(rtsp.getStopPosition()[1].indexOf("None") > 0);
+        assertTrue(rtsp.hasGreaterThanOrEqualQualifier());
+
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from inct --DERBY-PROPERTIES index=inct_id\n" +
+            "where w in (4, 6, 8, 9)"), "3");
+
+        // the rows come back ordered on the key, so ORDER BY on the INCLUDE
+        // column must still sort them
+        s.executeUpdate("update inct set w = -w");
+        ResultSet rs = s.executeQuery(
+            "select w from inct --DERBY-PROPERTIES index=inct_id\n" +
+            "where id < 10 order by w");
+        for (int i = 9; i >= 0; i--) {
+            assertTrue(rs.next());
+            assertEquals(-2 * i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        rs.close();
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that the INCLUDE columns of a unique index are not part of its
+     * unique key, and that changes to them are kept in the index.
+     */
+    public void testUnique() throws SQLException {
+        fill(500);
+        Statement s = createStatement();
+        s.executeUpdate("create unique index inct_id on inct(id) include (v)");
+        assertStatementError("23505", s,
+            "insert into inct values (10, 0, 'other', 0, 'x')");
+
+        // delete and reinsert the same key with a different INCLUDE value,
+        // in one transaction so that the deleted index row is reused
+        setAutoCommit(false);
+        assertUpdateCount(s, 1, "delete from inct where id = 20");
+        s.executeUpdate(
+            "insert into inct values (20, 0, 'a longer value', 0, 'x')");
+        assertUpdateCount(s, 1, "update inct set v = 'changed' where id = 30");
+        commit();
+        setAutoCommit(true);
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select id, v from inct --DERBY-PROPERTIES index=inct_id\n" +
+            "where id in (20, 30, 40) order by id"),
+            new String[][] {
+                {"20", "a longer value"}, {"30", "changed"}, {"40", "v40"}});
+        assertCheckTable("INCT");
+
+        s.executeUpdate("drop index inct_id");
+        s.executeUpdate("insert into inct values (10, 0, 'other', 0, 'x')");
+        assertStatementError("23505", s,
+            "create unique index inct_id on inct(id) include (v)");
+
+        // a key column and an INCLUDE column can't be the same column
+        assertStatementError("42X66", s,
+            "create index inct_k on inct(k) include (v, k)");
+        s.close();
+    }
+
+    /**
+     * Check that an index with INCLUDE columns survives a compress of the
+     * table, and a dropped column.
+     */
+    public void testCompressAndDropColumn() throws SQLException {
+        fill(ROWS);
+        Statement s = createStatement();
+        s.executeUpdate("create unique index inct_id on inct(id) include (v)");
+        s.executeUpdate("create index inct_k on inct(k) include (w, v)");
+        assertUpdateCount(s, ROWS / 2, "delete from inct where mod(id, 2) = 0");
+
+        s.execute("call syscs_util.syscs_compress_table(" +
+                  "current schema, 'INCT', 1)");
+        assertCheckTable("INCT");
+
+        // dropping an INCLUDE column keeps the indexes, even the unique one
+        s.executeUpdate("alter table inct drop column v restrict");
+        assertCheckTable("INCT");
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select descriptor from sys.sysconglomerates " +
+            "where conglomeratename = 'INCT_K'"),
+            "BTREE (2) INCLUDE (3)");
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select w from inct --DERBY-PROPERTIES index=inct_k\n" +
+            "where k = 3 and w = 206"), "206");
+        assertStatementError("23505", s,
+            "insert into inct values (1, 0, 0, 'x')");
+
+        // dropping the only key column drops the index
+        s.executeUpdate("alter table inct drop column k");
+        JDBC.assertEmpty(s.executeQuery(
+            "select descriptor from sys.sysconglomerates " +
+            "where conglomeratename = 'INCT_K'"));
+        assertCheckTable("INCT");
+        s.close();
+    }
+
+    /**
+     * Check that only B-tree indexes can have INCLUDE columns.
+     */
+    public void testIndexType() throws SQLException {
+        fill(10);
+        Statement s = createStatement();
+        assertStatementError("42ZCG", s,
+            "create index inct_k on inct(k) include (v) using hash");
+        s.executeUpdate("create index inct_k on inct(k) include (v) using btree");
+        assertStatementError("42X14", s,
+            "create index inct_k2 on inct(k) include (nosuchcolumn)");
+        s.close();
+    }
+}
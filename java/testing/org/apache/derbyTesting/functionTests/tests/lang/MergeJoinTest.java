@@ -0,0 +1,334 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.MergeJoinTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.RuntimeStatisticsParser;
+import org.apache.derbyTesting.junit.SQLUtilities;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the merge join strategy, which joins an outer result set
+ * ordered on the join column with an index scan of the inner table.
+ */
+public class MergeJoinTest extends BaseJDBCTestCase {
+
+    /** Inner join of MJ_OUTER and MJ_INNER forced to a merge join. */
+    private static final String INNER_JOIN =
+        "select o.k, o.v, i.w from --DERBY-PROPERTIES joinOrder=FIXED\n" +
+        "mj_outer o --DERBY-PROPERTIES index=mj_outer_k\n" +
+        ", mj_inner i --DERBY-PROPERTIES joinStrategy=MERGE, index=mj_inner_k\n" +
+        "where o.k = i.k";
+
+    /** Left outer join of MJ_OUTER and MJ_INNER forced to a merge join. */
+    private static final String LEFT_JOIN =
+        "select o.k, o.v, i.w from\n" +
+        "mj_outer o --DERBY-PROPERTIES index=mj_outer_k\n" +
+        "left join mj_inner i --DERBY-PROPERTIES joinStrategy=MERGE, index=mj_inner_k\n" +
+        "on o.k = i.k";
+
+    public MergeJoinTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("MergeJoinTest");
+        suite.addTest(decorate(
+            TestConfiguration.embeddedSuite(MergeJoinTest.class)));
+
+        // with little memory a hash join is not possible, so the
+        // optimizer picks a merge join for large sorted inputs
+        Properties props = new Properties();
+        props.setProperty("derby.language.maxMemoryPerTable", "1");
+        suite.addTest(new SystemPropertyTestSetup(
+            decorate(new MergeJoinTest("lowMemoryOptimizerChoice")),
+            props, true));
+        return suite;
+    }
+
+    private static Test decorate(Test test) {
+        return new CleanDatabaseTestSetup(test) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate("create table mj_outer(k int, v int)");
+                s.executeUpdate("create index mj_outer_k on mj_outer(k)");
+                s.executeUpdate("insert into mj_outer values " +
+                    "(1, 10), (2, 20), (2, 21), (3, 30), (5, 50), " +
+                    "(null, 60), (7, 70)");
+                s.executeUpdate("create table mj_inner(k int, w int)");
+                s.executeUpdate("create index mj_inner_k on mj_inner(k)");
+                s.executeUpdate("insert into mj_inner values " +
+                    "(0, 100), (2, 200), (2, 201), (3, 300), (4, 400), " +
+                    "(5, 500), (5, 501), (null, 600), (8, 800)");
+
+                s.executeUpdate("create table mj_big1(k int, v varchar(100))");
+                s.executeUpdate("create table mj_big2(k int, w varchar(100))");
+                PreparedStatement ps1 = s.getConnection().prepareStatement(
+                    "insert into mj_big1 values (?, ?)");
+                PreparedStatement ps2 = s.getConnection().prepareStatement(
+                    "insert into mj_big2 values (?, ?)");
+                for (int i = 0; i < 2000; i++) {
+                    ps1.setInt(1, i);
+                    ps1.setString(2, "v" + i);
+                    ps1.executeUpdate();
+                    ps2.setInt(1, i / 2);
+                    ps2.setString(2, "w" + i);
+                    ps2.executeUpdate();
+                }
+                ps1.close();
+                ps2.close();
+                s.executeUpdate("create index mj_big1_k on mj_big1(k, v)");
+                s.executeUpdate("create index mj_big2_k on mj_big2(k, w)");
+            }
+        };
+    }
+
+    /**
+     * Check that the last statement was executed with a merge join, and
+     * return the parser of its run time statistics.
+     */
+    private static RuntimeStatisticsParser assertMergeJoin(
+        Statement s, boolean outer) throws SQLException {
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.findString(outer ?
+            "Merge Left Outer Join ResultSet" : "Merge Join ResultSet", 1));
+        assertFalse(rtsp.findString("Hash Join ResultSet", 1));
+        return rtsp;
+    }
+
+    /**
+     * Check an inner merge join with duplicate and NULL values on both
+     * sides.
+     */
+    public void testInnerJoin() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        String[][] expected = {
+            {"2", "20", "200"}, {"2", "20", "201"},
+            {"2", "21", "200"}, {"2", "21", "201"},
+            {"3", "30", "300"},
+            {"5", "50", "500"}, {"5", "50", "501"},
+        };
+        JDBC.assertUnorderedResultSet(
+            s.executeQuery(INNER_JOIN), expected, false);
+        assertMergeJoin(s, false);
+
+        // the same join with a nested loop join
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            INNER_JOIN.replace("MERGE", "NESTEDLOOP")), expected, false);
+
+        // a join predicate which is not on the merge column
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            INNER_JOIN + " and i.w > o.v * 10"),
+            new String[][] {
+                {"2", "20", "201"}, {"5", "50", "501"},
+            }, false);
+        assertMergeJoin(s, false);
+
+        // a restriction on the inner table only
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            INNER_JOIN + " and i.k >= 3"),
+            new String[][] {
+                {"3", "30", "300"},
+                {"5", "50", "500"}, {"5", "50", "501"},
+            }, false);
+        assertMergeJoin(s, false);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check a left outer merge join, which returns the outer rows that
+     * have no match with NULLs for the inner columns.
+     */
+    public void testLeftOuterJoin() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        String[][] expected = {
+            {"1", "10", null},
+            {"2", "20", "200"}, {"2", "20", "201"},
+            {"2", "21", "200"}, {"2", "21", "201"},
+            {"3", "30", "300"},
+            {"5", "50", "500"}, {"5", "50", "501"},
+            {"7", "70", null},
+            {null, "60", null},
+        };
+        JDBC.assertUnorderedResultSet(
+            s.executeQuery(LEFT_JOIN), expected, false);
+        assertMergeJoin(s, true);
+
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            LEFT_JOIN + " and i.w > o.v * 10"),
+            new String[][] {
+                {"1", "10", null},
+                {"2", "20", "201"}, {"2", "21", null},
+                {"3", "30", null},
+                {"5", "50", "501"},
+                {"7", "70", null},
+                {null, "60", null},
+            }, false);
+        assertMergeJoin(s, true);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check merge joins with an empty inner table.
+     */
+    public void testEmptyInner() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate("delete from mj_inner");
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        JDBC.assertEmpty(s.executeQuery(INNER_JOIN));
+        assertMergeJoin(s, false);
+
+        ResultSet rs = s.executeQuery(LEFT_JOIN);
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+            assertNull(rs.getString(3));
+        }
+        rs.close();
+        assertEquals(7, rows);
+        assertMergeJoin(s, true);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+        rollback();
+    }
+
+    /**
+     * Check that a merge join can be asked for in an optimizer plan
+     * override with the {@code &} operator, and that it is rejected
+     * when the outer rows are not ordered on the join column.
+     */
+    public void testPlanOverride() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        JDBC.assertUnorderedResultSet(s.executeQuery(
+            "select o.k, i.w from mj_outer o, mj_inner i where o.k = i.k\n" +
+            "--DERBYPLAN ( app.mj_outer_k & app.mj_inner_k )\n"),
+            new String[][] {
+                {"2", "200"}, {"2", "201"}, {"2", "200"}, {"2", "201"},
+                {"3", "300"}, {"5", "500"}, {"5", "501"},
+            }, false);
+        assertMergeJoin(s, false);
+
+        // MJ_OUTER_K is not ordered on the join column
+        assertCompileError("42Y69",
+            "select o.k, i.w from mj_outer o, mj_inner i where o.v = i.k\n" +
+            "--DERBYPLAN ( app.mj_outer_k & app.mj_inner_k )\n");
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that a merge join asked for on a table whose outer rows are
+     * not ordered on the join column is rejected in an outer join too,
+     * instead of leaving the optimizer without a plan to finish with.
+     */
+    public void testInfeasibleOuterJoinOverride() throws SQLException {
+        // MJ_OUTER is read from the heap, which is not ordered on V
+        assertCompileError("42Y69",
+            "select o.k, i.k from mj_outer o left outer join mj_inner i\n" +
+            "--DERBY-PROPERTIES joinStrategy=MERGE, index=mj_inner_k\n" +
+            "on o.v = i.k and i.w = 300");
+
+        // the same joins can be done with a nested loop
+        JDBC.assertUnorderedResultSet(createStatement().executeQuery(
+            "select o.k, i.k from mj_outer o left outer join mj_inner i\n" +
+            "--DERBY-PROPERTIES joinStrategy=NESTEDLOOP, index=mj_inner_k\n" +
+            "on o.v = i.k and i.w = 300"),
+            new String[][] {
+                {"1", null}, {"2", null}, {"2", null}, {"3", null},
+                {"5", null}, {null, null}, {"7", null},
+            }, false);
+    }
+
+    /**
+     * Check that a merge join which is evaluated again for each row of a
+     * correlated subquery starts the merge over each time.
+     */
+    public void testReopenedJoin() throws SQLException {
+        JDBC.assertFullResultSet(createStatement().executeQuery(
+            "select t.v, (select count(*) from " +
+            "--DERBY-PROPERTIES joinOrder=FIXED\n" +
+            "mj_outer o --DERBY-PROPERTIES index=mj_outer_k\n" +
+            ", mj_inner i --DERBY-PROPERTIES joinStrategy=MERGE, " +
+            "index=mj_inner_k\n" +
+            "where o.k = i.k and o.v <= t.v) from mj_outer t order by t.v"),
+            new String[][] {
+                {"10", "0"}, {"20", "2"}, {"21", "4"}, {"30", "5"},
+                {"50", "7"}, {"60", "7"}, {"70", "7"},
+            });
+    }
+
+    /**
+     * Check that the optimizer picks a merge join for two large tables
+     * read through indexes on the join column when there is not enough
+     * memory for a hash join. Run with derby.language.maxMemoryPerTable
+     * set to 1 KB.
+     */
+    public void lowMemoryOptimizerChoice() throws SQLException {
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        // MJ_BIG2 has two rows for each of the keys 0 to 999
+        ResultSet rs = s.executeQuery(
+            "select a.k, a.v, b.w from mj_big1 a, mj_big2 b " +
+            "where a.k = b.k and a.k between 100 and 1899");
+        int rows = 0;
+        while (rs.next()) {
+            int k = rs.getInt(1);
+            assertTrue(String.valueOf(k), k >= 100 && k < 1000);
+            assertEquals("v" + k, rs.getString(2));
+            String w = rs.getString(3);
+            assertTrue(w, w.equals("w" + (2 * k)) ||
+                          w.equals("w" + (2 * k + 1)));
+            rows++;
+        }
+        rs.close();
+        assertEquals(1800, rows);
+        assertMergeJoin(s, false);
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.ParallelScanTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Types;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for scalar aggregates computed by several threads, each scanning
+ * a range of the pages of the table.
+ */
+public class ParallelScanTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 20000;
+
+    public ParallelScanTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(ParallelScanTest.class)) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate(
+                    "create table ps(id int, k int, v varchar(40), n int)");
+                PreparedStatement ps = s.getConnection().prepareStatement(
+                    "insert into ps values (?, ?, ?, ?)");
+                for (int id = 0; id < ROWS; id++) {
+                    ps.setInt(1, id);
+                    ps.setInt(2, k(id));
+                    ps.setString(3, v(id));
+                    if (id % 5 == 0) {
+                        ps.setNull(4, Types.INTEGER);
+                    } else {
+                        ps.setInt(4, id);
+                    }
+                    ps.executeUpdate();
+                }
+                ps.close();
+
+                s.executeUpdate("create table ps_empty(k int)");
+                s.executeUpdate("create table ps_small(x int)");
+                s.executeUpdate(
+                    "insert into ps_small values 0, 5, 17, 36, 40");
+            }
+        };
+    }
+
+    private static int k(int id) {
+        return id % 37;
+    }
+
+    private static String v(int id) {
+        return "value number " + (id % 1009 + 1000);
+    }
+
+    /**
+     * Run a query against ps with the scan divided between threads.
+     */
+    private ResultSet parallelQuery(Statement s, String where)
+            throws SQLException {
+        return s.executeQuery(
+            "select count(*), sum(k), min(v), max(v), count(n), avg(k) " +
+            "from ps --DERBY-PROPERTIES parallelScanThreads=4\n" + where);
+    }
+
+    /**
+     * Aggregates over all the rows of the table.
+     */
+    public void testAllRows() throws SQLException {
+        Statement s = createStatement();
+
+        long sumK = 0;
+        for (int id = 0; id < ROWS; id++) {
+            sumK += k(id);
+        }
+
+        JDBC.assertFullResultSet(parallelQuery(s, ""),
+            new String[][] {{String.valueOf(ROWS), String.valueOf(sumK),
+                             v(0), v(1008),
+                             String.valueOf(ROWS - ROWS / 5),
+                             String.valueOf(sumK / ROWS)}});
+    }
+
+    /**
+     * Aggregates over the rows qualified by the scans of the threads.
+     */
+    public void testQualifiedRows() throws SQLException {
+        Statement s = createStatement();
+
+        int count = 0;
+        long sumK = 0;
+        int countN = 0;
+        String minV = null;
+        String maxV = null;
+        for (int id = 0; id < ROWS; id++) {
+            if (k(id) > 10 && id >= 1234) {
+                count++;
+                sumK += k(id);
+                if (id % 5 != 0) {
+                    countN++;
+                }
+                if (minV == null || v(id).compareTo(minV) < 0) {
+                    minV = v(id);
+                }
+                if (maxV == null || v(id).compareTo(maxV) > 0) {
+                    maxV = v(id);
+                }
+            }
+        }
+
+        JDBC.assertFullResultSet(
+            parallelQuery(s, "where k > 10 and id >= 1234"),
+            new String[][] {{String.valueOf(count), String.valueOf(sumK),
+                             minV, maxV, String.valueOf(countN),
+                             String.valueOf(sumK / count)}});
+
+        // no row qualifies
+        JDBC.assertFullResultSet(parallelQuery(s, "where k > 100"),
+            new String[][] {{"0", null, null, null, "0", null}});
+    }
+
+    /**
+     * A restriction the scans can't evaluate, and an aggregated
+     * expression, are handled by reading the rows in one thread.
+     */
+    public void testRestrictionAndExpression() throws SQLException {
+        Statement s = createStatement();
+
+        int count = 0;
+        long sum = 0;
+        for (int id = 0; id < ROWS; id++) {
+            if (id % 7 != 3) {
+                count++;
+                sum += k(id) * 2 + 1;
+            }
+        }
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select count(*), sum(k * 2 + 1) from ps " +
+            "--DERBY-PROPERTIES parallelScanThreads=4\n" +
+            "where mod(id, 7) <> 3"),
+            new String[][] {{String.valueOf(count), String.valueOf(sum)}});
+    }
+
+    /**
+     * The threads may be enabled by a database property for all the
+     * queries.
+     */
+    public void testDatabaseProperty() throws SQLException {
+        setAutoCommit(false);
+        CallableStatement cs = prepareCall(
+            "call syscs_util.syscs_set_database_property(" +
+            "'derby.language.parallelScanThreads', ?)");
+        cs.setString(1, "3");
+        cs.execute();
+        commit();
+
+        try {
+            PreparedStatement ps = prepareStatement(
+                "select count(*), sum(n) from ps where id < ?");
+            for (int from = 0; from <= ROWS; from += 5000) {
+                long sum = 0;
+                for (int id = 0; id < from; id++) {
+                    if (id % 5 != 0) {
+                        sum += id;
+                    }
+                }
+                ps.setInt(1, from);
+                JDBC.assertFullResultSet(ps.executeQuery(),
+                    new String[][] {{String.valueOf(from),
+                                     from == 0 ? null : String.valueOf(sum)}});
+                commit();
+            }
+        } finally {
+            cs.setString(1, null);
+            cs.execute();
+            commit();
+        }
+    }
+
+    /**
+     * The override value must be between 1 and 64.
+     */
+    public void testInvalidOverride() throws SQLException {
+        Statement s = createStatement();
+        String[] values = {"0", "65", "-1"};
+        for (int i = 0; i < values.length; i++) {
+            assertStatementError("42Y72", s,
+                "select count(*) from ps " +
+                "--DERBY-PROPERTIES parallelScanThreads=" + values[i] + "\n");
+        }
+    }
+
+    /**
+     * The warning about the nulls eliminated by an aggregate is raised
+     * when the threads eliminate them.
+     */
+    public void testNullEliminated() throws SQLException {
+        Statement s = createStatement();
+        ResultSet rs = s.executeQuery(
+            "select count(n) from ps " +
+            "--DERBY-PROPERTIES parallelScanThreads=4\n");
+        assertTrue(rs.next());
+        assertEquals(ROWS - ROWS / 5, rs.getInt(1));
+
+        SQLWarning w = rs.getWarnings();
+        assertNotNull(w);
+        assertSQLState("01003", w);
+    }
+
+    /**
+     * Aggregates over an empty table.
+     */
+    public void testEmptyTable() throws SQLException {
+        JDBC.assertFullResultSet(createStatement().executeQuery(
+            "select count(*), sum(k), max(k) from ps_empty " +
+            "--DERBY-PROPERTIES parallelScanThreads=4\n"),
+            new String[][] {{"0", null, null}});
+    }
+
+    /**
+     * A scalar aggregate in a correlated subquery is evaluated again for
+     * each outer row.
+     */
+    public void testCorrelatedSubquery() throws SQLException {
+        int[] xs = {0, 5, 17, 36, 40};
+        String[][] expected = new String[xs.length][];
+        for (int i = 0; i < xs.length; i++) {
+            int count = 0;
+            for (int id = 0; id < ROWS; id++) {
+                if (k(id) < xs[i]) {
+                    count++;
+                }
+            }
+            expected[i] = new String[] {
+                String.valueOf(xs[i]), String.valueOf(count)};
+        }
+
+        JDBC.assertFullResultSet(createStatement().executeQuery(
+            "select x, (select count(*) from ps " +
+            "--DERBY-PROPERTIES parallelScanThreads=4\n" +
+            "where ps.k < s.x) from ps_small s order by x"), expected);
+    }
+
+    /**
+     * A transaction sees its own changes, which the threads would not see.
+     */
+    public void testUncommittedChanges() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        int count = (ROWS + 36) / 37;
+        assertUpdateCount(s, count, "update ps set k = 100 where k = 0");
+
+        String query =
+            "select count(*), sum(k) from ps " +
+            "--DERBY-PROPERTIES parallelScanThreads=4\n" +
+            "where k = 100";
+        JDBC.assertFullResultSet(s.executeQuery(query),
+            new String[][] {{String.valueOf(count),
+                             String.valueOf(count * 100)}});
+
+        rollback();
+        JDBC.assertFullResultSet(s.executeQuery(query),
+            new String[][] {{"0", null}});
+    }
+}
@@ -0,0 +1,227 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.lang.RowBatchTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.lang;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for scalar aggregates whose input rows are passed up from a bulk
+ * table scan, through restrictions and projections, in batches.
+ */
+public class RowBatchTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 1000;
+
+    public RowBatchTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(RowBatchTest.class)) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate(
+                    "create table rb(id int, k int, v varchar(10), " +
+                    "d decimal(10,2), n int)");
+                PreparedStatement ps = s.getConnection().prepareStatement(
+                    "insert into rb values (?, ?, ?, ?, ?)");
+                for (int id = 0; id < ROWS; id++) {
+                    ps.setInt(1, id);
+                    ps.setInt(2, k(id));
+                    ps.setString(3, v(id));
+                    ps.setBigDecimal(4, new BigDecimal(d(id)));
+                    if (id % 5 == 0) {
+                        ps.setNull(5, Types.INTEGER);
+                    } else {
+                        ps.setInt(5, id);
+                    }
+                    ps.executeUpdate();
+                }
+                ps.close();
+
+                s.executeUpdate("create table rb_small(x int)");
+                s.executeUpdate(
+                    "insert into rb_small values 0, 5, 17, 36, 40");
+            }
+        };
+    }
+
+    private static int k(int id) {
+        return id % 37;
+    }
+
+    private static String v(int id) {
+        return "v" + (id % 101 + 100);
+    }
+
+    private static String d(int id) {
+        return (id % 13) + ".25";
+    }
+
+    /**
+     * Aggregates over all the rows, with and without a restriction.
+     */
+    public void testAggregates() throws SQLException {
+        Statement s = createStatement();
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select count(*), sum(k), min(v), max(v), count(n) from rb"),
+            new String[][] {{"1000", "17982", "v100", "v200", "800"}});
+
+        // count the rows in Java for the restricted aggregates
+        int count = 0;
+        int sumK = 0;
+        int countN = 0;
+        long sumExpr = 0;
+        for (int id = 0; id < ROWS; id++) {
+            if (k(id) > 10 && id % 7 != 3) {
+                count++;
+                sumK += k(id);
+                if (id % 5 != 0) {
+                    countN++;
+                }
+                sumExpr += k(id) * 2 + 1;
+            }
+        }
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select count(*), sum(k), count(n) from rb " +
+            "where k > 10 and mod(id, 7) <> 3"),
+            new String[][] {{String.valueOf(count), String.valueOf(sumK),
+                             String.valueOf(countN)}});
+
+        // the aggregated expression is computed by a generated projection
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select sum(k * 2 + 1), count(*) from rb " +
+            "where k > 10 and mod(id, 7) <> 3"),
+            new String[][] {{String.valueOf(sumExpr),
+                             String.valueOf(count)}});
+    }
+
+    /**
+     * Expressions which are null for some of the rows of a batch.
+     */
+    public void testNullExpressions() throws SQLException {
+        Statement s = createStatement();
+
+        BigDecimal sum = BigDecimal.ZERO;
+        int count = 0;
+        for (int id = 0; id < ROWS; id++) {
+            if (k(id) > 5) {
+                sum = sum.add(new BigDecimal(d(id)));
+                count++;
+            }
+        }
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select sum(case when k > 5 then d else null end), " +
+            "count(case when k > 5 then v else null end) from rb"),
+            new String[][] {{sum.toString(), String.valueOf(count)}});
+    }
+
+    /**
+     * The results don't depend on the number of rows read from the store
+     * at a time.
+     */
+    public void testBulkFetchSizes() throws SQLException {
+        String query =
+            "select count(*), sum(k), max(v), sum(k + id) from rb " +
+            "--DERBY-PROPERTIES bulkFetch=%d\n" +
+            "where mod(id, 3) = 1";
+
+        int count = 0;
+        int sumK = 0;
+        String maxV = null;
+        long sum = 0;
+        for (int id = 0; id < ROWS; id++) {
+            if (id % 3 == 1) {
+                count++;
+                sumK += k(id);
+                if (maxV == null || v(id).compareTo(maxV) > 0) {
+                    maxV = v(id);
+                }
+                sum += k(id) + id;
+            }
+        }
+        String[][] expected = {{String.valueOf(count), String.valueOf(sumK),
+                                maxV, String.valueOf(sum)}};
+
+        Statement s = createStatement();
+        int[] sizes = {1, 2, 7, 64, 100, 2000};
+        for (int i = 0; i < sizes.length; i++) {
+            JDBC.assertFullResultSet(s.executeQuery(
+                String.format(query, sizes[i])), expected);
+        }
+    }
+
+    /**
+     * A scalar aggregate in a correlated subquery is evaluated again for
+     * each outer row, and its restriction refers to the outer row.
+     */
+    public void testCorrelatedSubquery() throws SQLException {
+        Statement s = createStatement();
+
+        int[] xs = {0, 5, 17, 36, 40};
+        String[][] expected = new String[xs.length][];
+        for (int i = 0; i < xs.length; i++) {
+            int count = 0;
+            for (int id = 0; id < ROWS; id++) {
+                if (k(id) < xs[i]) {
+                    count++;
+                }
+            }
+            expected[i] = new String[] {
+                String.valueOf(xs[i]), String.valueOf(count)};
+        }
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select x, (select count(*) from rb where rb.k < s.x) " +
+            "from rb_small s order by x"), expected);
+    }
+
+    /**
+     * Aggregates in a prepared statement which is executed several times.
+     */
+    public void testReexecute() throws SQLException {
+        PreparedStatement ps = prepareStatement(
+            "select count(*), sum(k) from rb where id >= ?");
+        for (int from = 0; from <= ROWS; from += 250) {
+            int sum = 0;
+            for (int id = from; id < ROWS; id++) {
+                sum += k(id);
+            }
+            ps.setInt(1, from);
+            JDBC.assertFullResultSet(ps.executeQuery(),
+                new String[][] {{String.valueOf(ROWS - from),
+                                 from == ROWS ? null : String.valueOf(sum)}});
+        }
+    }
+}
@@ -154,6 +154,7 @@ public class _Suite extends BaseTestCase  {
         suite.addTest(ViewsTest.suite());
         suite.addTest(DeadlockDetectionTest.suite());
         suite.addTest(DeadlockModeTest.suite());
+        suite.addTest(DeadlockDetectorTest.suite());
         suite.addTest(AnsiSignaturesTest.suite());
         suite.addTest(PredicatePushdownTest.suite());
         suite.addTest(UngroupedAggregatesNegativeTest.suite());
@@ -262,6 +263,12 @@ public class _Suite extends BaseTestCase  {
         suite.addTest(Derby5866TriggerOrderTest.suite());
         suite.addTest(NoDBInternalsPermissionTest.suite());
         suite.addTest(ClassLoadingTest.suite());
+        suite.addTest(IncludeColumnsTest.suite());
+        suite.addTest(HashAggregationTest.suite());
+        suite.addTest(MergeJoinTest.suite());
+        suite.addTest(HybridHashJoinTest.suite());
+        suite.addTest(RowBatchTest.suite());
+        suite.addTest(ParallelScanTest.suite());
         return suite;
 	}
 }
@@ -24,6 +24,7 @@ package org.apache.derbyTesting.functionTests.tests.management;
 import java.security.Permission;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Set;
 import javax.management.ObjectName;
@@ -46,6 +47,8 @@ public class CacheManagerMBeanTest extends MBeanTest {
 
     private static String[] ALL_ATTRIBUTES = {
         "CollectAccessCounts", "HitCount", "MissCount", "EvictionCount",
+        "PrefetchCount", "PrefetchHitCount", "PrefetchMissCount",
+        "BatchWriteCount", "BatchWrittenCount",
         "MaxEntries", "AllocatedEntries", "UsedEntries"
     };
 
@@ -167,6 +170,11 @@ public class CacheManagerMBeanTest extends MBeanTest {
         assertLongAttribute(0, name, "HitCount");
         assertLongAttribute(0, name, "MissCount");
         assertLongAttribute(0, name, "EvictionCount");
+        assertLongAttribute(0, name, "PrefetchCount");
+        assertLongAttribute(0, name, "PrefetchHitCount");
+        assertLongAttribute(0, name, "PrefetchMissCount");
+        assertLongAttribute(0, name, "BatchWriteCount");
+        assertLongAttribute(0, name, "BatchWrittenCount");
         assertLongAttribute(DEFAULT_PAGE_CACHE_SIZE, name, "MaxEntries");
         // Cannot reliably tell how many entries to expect.
         // More than 0 for sure.
@@ -200,6 +208,68 @@ public class CacheManagerMBeanTest extends MBeanTest {
         assertBooleanAttribute(false, name, "CollectAccessCounts");
     }
 
+    /**
+     * Test the prefetch counts of the page cache, when pages are read ahead
+     * of sequential scans.
+     */
+    public void testPageCachePrefetch() throws Exception {
+        if (!isPlatformJMXClient()) {
+            // Read ahead is enabled with a system property, which can
+            // only be set in the virtual machine Derby is running in.
+            return;
+        }
+
+        setSystemProperty("derby.storage.readAheadPages", "32");
+        try {
+            setAutoCommit(false);
+            Statement s = createStatement();
+            s.executeUpdate("create table prefetch(id int, v varchar(1000))");
+            PreparedStatement ins =
+                    prepareStatement("insert into prefetch values (?, ?)");
+            char[] chars = new char[1000];
+            Arrays.fill(chars, 'x');
+            for (int i = 0; i < 1000; i++) {
+                ins.setInt(1, i);
+                ins.setString(2, new String(chars));
+                ins.executeUpdate();
+            }
+            commit();
+
+            // Start with an empty page cache. Close the connection first,
+            // so that getConnection() opens a new one, which boots the
+            // database again.
+            getConnection().close();
+            TestConfiguration.getCurrent().shutdownDatabase();
+            getConnection(); // boot the database
+            setAutoCommit(false);
+            s = createStatement();
+
+            Set<ObjectName> names =
+                    queryMBeans(createObjectName("PageCache", null));
+            assertEquals("Should have a single page cache", 1, names.size());
+            ObjectName name = names.iterator().next();
+            setAttribute(name, "CollectAccessCounts", Boolean.TRUE);
+
+            JDBC.assertSingleValueResultSet(
+                s.executeQuery("select count(*) from prefetch " +
+                               "where v like 'x%'"), "1000");
+
+            Long prefetched = (Long) getAttribute(name, "PrefetchCount");
+            Long hits = (Long) getAttribute(name, "PrefetchHitCount");
+            Long misses = (Long) getAttribute(name, "PrefetchMissCount");
+            assertTrue("Prefetched pages: " + prefetched, prefetched > 0);
+            assertTrue("Prefetch hits: " + hits + ", misses: " + misses,
+                       hits + misses > 0);
+
+            setAttribute(name, "CollectAccessCounts", Boolean.FALSE);
+
+            s.executeUpdate("drop table prefetch");
+            commit();
+        } finally {
+            removeSystemProperty("derby.storage.readAheadPages");
+        }
+    }
+
     /**
      * Test the {@code CacheManagerMBean} for the page cache.
      */
@@ -0,0 +1,264 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.AdaptiveLockEscalationTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SecurityManagerSetup;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+
+/**
+ * Tests for adaptive lock escalation, which is enabled with the
+ * {@code derby.locks.adaptiveEscalation} property. Check that row locks
+ * are not escalated while other transactions wait for locks on the table,
+ * that they are escalated early when the lock table is large, and that the
+ * escalation events are counted by the LockEscalation MBean.
+ */
+public class AdaptiveLockEscalationTest extends BaseJDBCTestCase {
+
+    /** Number of rows in table T. */
+    private static final int ROWS = 700;
+
+    /** Number of rows in table T2. */
+    private static final int ROWS2 = 800;
+
+    public AdaptiveLockEscalationTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("AdaptiveLockEscalationTest");
+
+        // A low escalation threshold, and a lock table large enough that
+        // its size never matters.
+        BaseTestSuite contention = new BaseTestSuite("contention");
+        contention.addTest(new AdaptiveLockEscalationTest("testEscalation"));
+        contention.addTest(new AdaptiveLockEscalationTest("testContention"));
+        suite.addTest(decorate(contention, "100", "50000"));
+
+        // A lock table size limit lower than the escalation threshold.
+        suite.addTest(decorate(
+            new AdaptiveLockEscalationTest("testLockTableSize"),
+            "1000", "500"));
+
+        // the tests read the lock manager counters from the platform
+        // MBean server
+        return SecurityManagerSetup.noSecurityManager(suite);
+    }
+
+    private static Test decorate(Test test, String threshold, String size) {
+        Properties props = new Properties();
+        props.setProperty("derby.locks.adaptiveEscalation", "true");
+        props.setProperty("derby.locks.escalationThreshold", threshold);
+        props.setProperty("derby.locks.escalationLockTableSize", size);
+        props.setProperty("derby.system.jmx", "true");
+
+        test = new CleanDatabaseTestSetup(test) {
+            protected void decorateSQL(Statement s) throws SQLException {
+                s.executeUpdate("create table t(id int primary key, n int)");
+                s.executeUpdate("create table t2(id int primary key, n int)");
+                PreparedStatement ps = s.getConnection().prepareStatement(
+                    "insert into t2 values (?, 0)");
+                for (int i = 1; i <= ROWS2; i++) {
+                    ps.setInt(1, i);
+                    ps.executeUpdate();
+                    if (i <= ROWS) {
+                        s.executeUpdate("insert into t values (" + i + ", 0)");
+                    }
+                }
+                ps.close();
+            }
+        };
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void setUp() throws SQLException {
+        setAutoCommit(false);
+    }
+
+    /**
+     * Check that a transaction escalates its row locks on a table when
+     * no one else uses it, and that the escalation is counted and leaves
+     * a hint for later statements.
+     */
+    public void testEscalation() throws Exception {
+        long escalations = getCount("EscalationCount");
+
+        Statement s = createStatement();
+        assertUpdateCount(s, ROWS, "update t set n = n + 1");
+        assertTableLocked("T");
+        commit();
+
+        assertEquals(escalations + 1, getCount("EscalationCount"));
+        assertTrue(((Integer) getAttribute("HintCount")).intValue() > 0);
+        String event = (String) getAttribute("LastEvent");
+        assertTrue(event, event.indexOf("row locks escalated") >= 0);
+        s.close();
+    }
+
+    /**
+     * Check that a transaction keeps its row locks on a table while
+     * another transaction waits for one of them, and that the hint left by
+     * an earlier escalation of the table is dropped.
+     */
+    public void testContention() throws Exception {
+        Statement s = createStatement();
+
+        // leave a hint for the table
+        assertUpdateCount(s, ROWS, "update t set n = n + 1");
+        commit();
+        int hints = ((Integer) getAttribute("HintCount")).intValue();
+        long skips = getCount("ContentionSkipCount");
+
+        assertUpdateCount(s, 50, "update t set n = n + 1 where id <= 50");
+
+        final Connection c2 = openDefaultConnection();
+        c2.setAutoCommit(false);
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread waiter = new Thread() {
+            public void run() {
+                try {
+                    Statement s2 = c2.createStatement();
+                    assertEquals(1, s2.executeUpdate(
+                        "update t set n = n + 1 where id = 1"));
+                    c2.commit();
+                    s2.close();
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        };
+        waiter.start();
+        waitForWaiter();
+
+        // Crosses the lock limit of the transaction while c2 waits.
+        assertUpdateCount(s, 100,
+                          "update t set n = n + 1 where id between 51 and 150");
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from syscs_diag.lock_table " +
+            "where tablename = 'T' and type = 'TABLE' and mode = 'X'"), "0");
+        assertTrue(getCount("ContentionSkipCount") > skips);
+        assertEquals(hints - 1,
+                     ((Integer) getAttribute("HintCount")).intValue());
+        commit();
+
+        waiter.join();
+        c2.close();
+        if (!errors.isEmpty()) {
+            fail("waiting update failed", errors.get(0));
+        }
+        s.close();
+    }
+
+    /**
+     * Check that a transaction escalates its row locks below the escalation
+     * threshold when the lock table holds more locks than the lock table
+     * size limit.
+     */
+    public void testLockTableSize() throws Exception {
+        long escalations = getCount("MemoryEscalationCount");
+
+        // fill the lock table from another transaction, without reaching
+        // the escalation threshold
+        Connection c2 = openDefaultConnection();
+        c2.setAutoCommit(false);
+        Statement s2 = c2.createStatement();
+        assertUpdateCount(s2, ROWS2, "update t2 set n = n + 1");
+
+        // the lock limit of the next transaction is lowered
+        commit();
+        Statement s = createStatement();
+        assertUpdateCount(s, ROWS, "update t set n = n + 1");
+        assertTrue(getCount("MemoryEscalationCount") > escalations);
+        assertTableLocked("T");
+        commit();
+
+        c2.rollback();
+        s2.close();
+        c2.close();
+        s.close();
+    }
+
+    /**
+     * Check that the transaction holds a table lock on a table, and no
+     * row locks.
+     */
+    private void assertTableLocked(String table) throws SQLException {
+        Statement s = createStatement();
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select type, mode from syscs_diag.lock_table " +
+            "where tablename = '" + table + "' and mode <> 'IX' " +
+            "order by type"),
+            new String[][] {{"TABLE", "X"}});
+        s.close();
+    }
+
+    /**
+     * Wait until a lock request waits in the lock table.
+     */
+    private void waitForWaiter() throws Exception {
+        Statement s = createStatement();
+        for (int i = 0; i < 100; i++) {
+            if (JDBC.assertDrainResults(s.executeQuery(
+                    "select * from syscs_diag.lock_table " +
+                    "where state = 'WAIT'")) > 0) {
+                s.close();
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("no waiter in the lock table");
+    }
+
+    private static ObjectName getMBeanName() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(
+            new ObjectName("org.apache.derby:type=LockEscalation,*"), null);
+        assertEquals(1, names.size());
+        return names.iterator().next();
+    }
+
+    private static Object getAttribute(String attribute) throws Exception {
+        return ManagementFactory.getPlatformMBeanServer().getAttribute(
+            getMBeanName(), attribute);
+    }
+
+    private static long getCount(String attribute) throws Exception {
+        return ((Long) getAttribute(attribute)).longValue();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.BulkIndexLoadTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the {@code derby.storage.bulkIndexLoad} property, with which
+ * CREATE INDEX builds the B-tree bottom up from the sorted rows. The tests
+ * run once with full pages, and once with half full pages and suffix
+ * truncation of the branch rows.
+ */
+public class BulkIndexLoadTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 3000;
+
+    public BulkIndexLoadTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("BulkIndexLoadTest");
+
+        Properties props = new Properties();
+        props.setProperty("derby.storage.bulkIndexLoad", "true");
+        suite.addTest(new SystemPropertyTestSetup(
+            new CleanDatabaseTestSetup(
+                TestConfiguration.embeddedSuite(BulkIndexLoadTest.class)),
+            props, true));
+
+        props = new Properties();
+        props.setProperty("derby.storage.bulkIndexLoad", "true");
+        props.setProperty("derby.storage.indexLoadFillFactor", "50");
+        props.setProperty("derby.storage.indexSuffixTruncation", "true");
+        suite.addTest(new SystemPropertyTestSetup(
+            new CleanDatabaseTestSetup(
+                TestConfiguration.embeddedSuite(BulkIndexLoadTest.class)),
+            props, true));
+
+        return suite;
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("BULK");
+        dropTable("BULK2");
+        super.tearDown();
+    }
+
+    /** Make a key of the given length, which sorts in the order of i. */
+    private static String makeKey(int i, int length) {
+        StringBuffer sb = new StringBuffer();
+        String n = String.valueOf(i);
+        for (int j = n.length(); j < 6; j++) {
+            sb.append('0');
+        }
+        sb.append(n);
+        while (sb.length() < length) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    /** Insert rows, in an order which is not the key order. */
+    private void fill(String table, int rows, int length)
+            throws SQLException {
+        PreparedStatement ps =
+            prepareStatement("insert into " + table + " values (?, ?)");
+        for (int i = 0; i < rows; i++) {
+            int id = (i * 7919) % rows;
+            ps.setInt(1, id);
+            ps.setString(2, makeKey(id, length));
+            ps.executeUpdate();
+        }
+        ps.close();
+    }
+
+    /**
+     * Check that every key is found through the index, and that range
+     * scans return the right number of rows.
+     */
+    private void assertIndex(int rows, int length) throws SQLException {
+        PreparedStatement ps = prepareStatement(
+            "select id from bulk --DERBY-PROPERTIES index=bulk_k\n" +
+            "where k = ?");
+        for (int i = 0; i < rows; i++) {
+            ps.setString(1, makeKey(i, length));
+            JDBC.assertSingleValueResultSet(
+                ps.executeQuery(), String.valueOf(i));
+        }
+        ps.setString(1, makeKey(rows, length));
+        JDBC.assertEmpty(ps.executeQuery());
+        ps.close();
+
+        ps = prepareStatement(
+            "select count(*) from bulk --DERBY-PROPERTIES index=bulk_k\n" +
+            "where k >= ? and k < ?");
+        ps.setString(1, makeKey(rows / 3, length));
+        ps.setString(2, makeKey(2 * rows / 3, length));
+        JDBC.assertSingleValueResultSet(ps.executeQuery(),
+            String.valueOf(2 * rows / 3 - rows / 3));
+        ps.close();
+
+        // the keys come back in order from a scan of the whole index
+        ResultSet rs = createStatement().executeQuery(
+            "select id from bulk --DERBY-PROPERTIES index=bulk_k\n" +
+            "order by k");
+        for (int i = 0; i < rows; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        rs.close();
+
+        assertCheckTable("BULK");
+    }
+
+    /**
+     * Check indexes of different sizes, from empty to several levels of
+     * branch pages, and that they can be changed after the load.
+     */
+    public void testCreateIndex() throws SQLException {
+        int[] sizes = { 0, 1, 2, 50, ROWS };
+        int[] lengths = { 10, 10, 10, 300, 1000 };
+
+        Statement s = createStatement();
+        for (int i = 0; i < sizes.length; i++) {
+            s.executeUpdate("create table bulk(id int, k varchar(1000))");
+            fill("BULK", sizes[i], lengths[i]);
+            s.executeUpdate("create index bulk_k on bulk(k)");
+
+            assertIndex(sizes[i], lengths[i]);
+
+            // Split and shrink the loaded tree.
+            fill("BULK", sizes[i], lengths[i]);
+            assertCheckTable("BULK");
+            assertUpdateCount(s, 2 * (sizes[i] - (sizes[i] + 2) / 3),
+                              "delete from bulk where mod(id, 3) <> 0");
+            assertCheckTable("BULK");
+
+            s.executeUpdate("drop table bulk");
+        }
+        s.close();
+    }
+
+    /**
+     * Check that a unique index is not built over duplicate keys, and that
+     * the table is left as it was.
+     */
+    public void testUniqueIndex() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate(
+            "create table bulk(id int, k varchar(1000) not null)");
+        fill("BULK", 500, 300);
+        s.executeUpdate("insert into bulk values (-1, '" +
+                        makeKey(250, 300) + "')");
+
+        assertStatementError("23505", s,
+                             "create unique index bulk_k on bulk(k)");
+        assertStatementError("23505", s,
+                             "alter table bulk add constraint bulk_c " +
+                             "primary key (k)");
+        assertCheckTable("BULK");
+
+        assertUpdateCount(s, 1, "delete from bulk where id = -1");
+        s.executeUpdate("create unique index bulk_k on bulk(k)");
+        assertIndex(500, 300);
+        s.close();
+    }
+
+    /**
+     * Check that the pages of the loaded index are as full as the fill
+     * factor says, compared to an index built by inserting the keys in
+     * order, which fills each leaf page before starting the next one.
+     */
+    public void testFillFactor() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table bulk(id int, k varchar(1000))");
+        fill("BULK", ROWS, 20);
+        s.executeUpdate("create index bulk_k on bulk(k)");
+
+        s.executeUpdate("create table bulk2(id int, k varchar(1000))");
+        s.executeUpdate("create index bulk2_k on bulk2(k)");
+        s.executeUpdate("insert into bulk2 select * from bulk order by k");
+        s.close();
+
+        int loaded = getIndexPages("BULK");
+        int inserted = getIndexPages("BULK2");
+        if ("50".equals(getSystemProperty(
+                "derby.storage.indexLoadFillFactor"))) {
+            assertTrue(loaded + " pages, " + inserted + " when inserted",
+                       loaded > 3 * inserted / 2);
+        } else {
+            assertTrue(loaded + " pages, " + inserted + " when inserted",
+                       loaded <= inserted);
+        }
+    }
+
+    private int getIndexPages(String table) throws SQLException {
+        PreparedStatement ps = prepareStatement(
+            "select numallocatedpages from table(syscs_diag.space_table(" +
+            "current schema, ?)) t where isindex = 1 and conglomeratename = ?");
+        ps.setString(1, table);
+        ps.setString(2, table + "_K");
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        int pages = rs.getInt(1);
+        rs.close();
+        ps.close();
+        return pages;
+    }
+}
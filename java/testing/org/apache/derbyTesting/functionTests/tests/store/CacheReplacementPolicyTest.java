@@ -0,0 +1,232 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.CacheReplacementPolicyTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SecurityManagerSetup;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.cache.replacementPolicy} property with the
+ * value {@code 2q}, where the caches keep objects that are used repeatedly
+ * apart from objects used once, so that a large scan does not evict the
+ * pages of the working set from the page cache.
+ */
+public class CacheReplacementPolicyTest extends BaseJDBCTestCase {
+
+    private static final int HOT_ROWS = 200;
+    private static final int MEDIUM_ROWS = 40;
+    private static final int BIG_ROWS = 2000;
+
+    public CacheReplacementPolicyTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        // use the policy for all the caches
+        props.setProperty("derby.cache.replacementPolicy", "2q");
+        // a page cache that is much smaller than the big table
+        props.setProperty("derby.storage.pageCacheSize", "100");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(CacheReplacementPolicyTest.class));
+        test = new SystemPropertyTestSetup(test, props, true);
+        // the test reads the page cache statistics from the platform
+        // MBean server
+        return SecurityManagerSetup.noSecurityManager(test);
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("CRP_HOT");
+        dropTable("CRP_MEDIUM");
+        dropTable("CRP_BIG");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Look up the rows of a small table while scanning a table which is much
+     * larger than the page cache, and check that the pages of the small table
+     * stay in the page cache during the scans once they have been used
+     * repeatedly.
+     */
+    public void testHotPagesSurviveScans() throws Exception {
+        createTable("crp_hot", HOT_ROWS, 100);
+        createTable("crp_medium", MEDIUM_ROWS, 1000);
+        createTable("crp_big", BIG_ROWS, 1000);
+
+        PreparedStatement lookup =
+            prepareStatement("select v from crp_hot where id = ?");
+
+        // Use the pages of the small table again after other pages have
+        // been read, so that they are not only used by a single scan.
+        for (int round = 0; round < 3; round++) {
+            lookupAll(lookup);
+            scan("crp_medium", MEDIUM_ROWS);
+            lookupAll(lookup);
+            scan("crp_big", BIG_ROWS);
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pageCache = getPageCacheBean(server);
+        server.setAttribute(
+            pageCache, new Attribute("CollectAccessCounts", Boolean.TRUE));
+
+        for (int round = 0; round < 3; round++) {
+            scan("crp_big", BIG_ROWS);
+            long misses = getCount(server, pageCache, "MissCount");
+            long hits = getCount(server, pageCache, "HitCount");
+            lookupAll(lookup);
+            assertEquals("page cache misses in lookups after scan " + round,
+                         misses, getCount(server, pageCache, "MissCount"));
+            assertTrue(getCount(server, pageCache, "HitCount") > hits);
+        }
+
+        lookup.close();
+    }
+
+    /**
+     * Update and delete rows of tables that are larger than the page cache,
+     * and check the rows before and after a reboot.
+     */
+    public void testUpdatesWithSmallCache() throws Exception {
+        createTable("crp_big", BIG_ROWS, 1000);
+        createTable("crp_hot", HOT_ROWS, 100);
+
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate("update crp_big set v = 'u' || v where mod(id, 3) = 0");
+        s.executeUpdate("delete from crp_big where mod(id, 3) = 1");
+        s.executeUpdate("update crp_hot set v = 'u' || v");
+        commit();
+        s.execute("call syscs_util.syscs_checkpoint_database()");
+        checkRows();
+
+        TestConfiguration.getCurrent().shutdownDatabase();
+        checkRows();
+        s.close();
+    }
+
+    private void checkRows() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select count(*) from crp_big"),
+            Integer.toString(BIG_ROWS - (BIG_ROWS + 1) / 3));
+        ResultSet rs = s.executeQuery("select id, v from crp_big order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            assertTrue(id % 3 != 1);
+            assertEquals((id % 3 == 0 ? "u" : "") + makeValue(id, 1000),
+                         rs.getString(2));
+        }
+        rs.close();
+
+        rs = s.executeQuery("select id, v from crp_hot order by id");
+        for (int i = 0; i < HOT_ROWS; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals("u" + makeValue(i, 100), rs.getString(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+
+        s.close();
+        commit();
+    }
+
+    private void createTable(String table, int rows, int width)
+            throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate("create table " + table +
+                        "(id int primary key, v varchar(" + (width + 1) + "))");
+        PreparedStatement ins =
+            prepareStatement("insert into " + table + " values (?, ?)");
+        for (int i = 0; i < rows; i++) {
+            ins.setInt(1, i);
+            ins.setString(2, makeValue(i, width));
+            ins.executeUpdate();
+        }
+        ins.close();
+        s.close();
+        commit();
+        setAutoCommit(true);
+    }
+
+    /**
+     * A value of the given width, so that the tables have the number of
+     * pages the test needs, which tells the row it belongs to.
+     */
+    private static String makeValue(int id, int width) {
+        String key = id + ":";
+        return key + Utilities.repeatChar("v", width - key.length());
+    }
+
+    private void lookupAll(PreparedStatement lookup) throws SQLException {
+        for (int i = 0; i < HOT_ROWS; i++) {
+            lookup.setInt(1, i);
+            JDBC.assertSingleValueResultSet(
+                lookup.executeQuery(), makeValue(i, 100));
+        }
+    }
+
+    private void scan(String table, int rows) throws SQLException {
+        Statement s = createStatement();
+        // no index on v, so this is a scan of the table
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select count(*) from " + table +
+                           " where v <> ''"),
+            Integer.toString(rows));
+        s.close();
+    }
+
+    private static ObjectName getPageCacheBean(MBeanServer server)
+            throws Exception {
+        Set<ObjectName> names = server.queryNames(new ObjectName(
+            "org.apache.derby:type=CacheManager,name=PageCache,*"), null);
+        assertEquals(names.toString(), 1, names.size());
+        return names.iterator().next();
+    }
+
+    private static long getCount(MBeanServer server, ObjectName name,
+                                 String attribute) throws Exception {
+        return ((Long) server.getAttribute(name, attribute)).longValue();
+    }
+}
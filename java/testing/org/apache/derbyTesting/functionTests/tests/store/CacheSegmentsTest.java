@@ -0,0 +1,241 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.CacheSegmentsTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SecurityManagerSetup;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.cache.segments} property, which splits the
+ * clock of the caches into segments with their own clock hands.
+ */
+public class CacheSegmentsTest extends BaseJDBCTestCase {
+
+    private static final int THREADS = 4;
+    private static final int ROWS_PER_THREAD = 500;
+    private static final int WIDTH = 1000;
+    private static final int PAGE_CACHE_SIZE = 100;
+
+    public CacheSegmentsTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.cache.segments", "8");
+        // a page cache that is much smaller than the table, so that every
+        // segment has to evict pages
+        props.setProperty("derby.storage.pageCacheSize",
+                          Integer.toString(PAGE_CACHE_SIZE));
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(CacheSegmentsTest.class));
+        test = new SystemPropertyTestSetup(test, props, true);
+        // the test reads the page cache size from the platform MBean server
+        return SecurityManagerSetup.noSecurityManager(test);
+    }
+
+    protected void setUp() throws SQLException {
+        createStatement().executeUpdate(
+            "create table cs(id int primary key, thr int, v varchar(" +
+            (WIDTH + 1) + "))");
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("CS");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Insert, update and delete rows from several threads while the page
+     * cache evicts pages from all its segments, and check the rows before
+     * and after a reboot.
+     */
+    public void testConcurrentUpdates() throws Exception {
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+            final int thr = i;
+            final Connection c = openDefaultConnection();
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        runWriter(c, thr);
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+        }
+
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+        }
+
+        if (!errors.isEmpty()) {
+            fail("writer failed", errors.get(0));
+        }
+
+        checkRows();
+
+        getTestConfiguration().shutdownDatabase();
+        checkRows();
+    }
+
+    /**
+     * Scan a table which is much larger than the page cache and check that
+     * the segments together don't hold more pages than the page cache is
+     * allowed to hold.
+     */
+    public void testScanStaysWithinMaximumSize() throws Exception {
+        runWriter(getConnection(), 0);
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_checkpoint_database()");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pageCache = getPageCacheBean(server);
+        assertEquals(PAGE_CACHE_SIZE,
+                     getCount(server, pageCache, "MaxEntries"));
+
+        for (int round = 0; round < 3; round++) {
+            // no index on v, so this is a scan of the table
+            JDBC.assertSingleValueResultSet(
+                s.executeQuery("select count(*) from cs where v <> ''"),
+                Integer.toString(ROWS_PER_THREAD - ROWS_PER_THREAD / 5));
+            long allocated = getCount(server, pageCache, "AllocatedEntries");
+            assertTrue("allocated " + allocated + " entries",
+                       allocated <= PAGE_CACHE_SIZE);
+        }
+        s.close();
+    }
+
+    /**
+     * Insert rows into the thread's range of ids, update every second row
+     * and delete every fifth row.
+     */
+    private static void runWriter(Connection c, int thr) throws SQLException {
+        c.setAutoCommit(false);
+        PreparedStatement ins =
+            c.prepareStatement("insert into cs values (?, ?, ?)");
+        for (int i = 0; i < ROWS_PER_THREAD; i++) {
+            int id = thr * ROWS_PER_THREAD + i;
+            ins.setInt(1, id);
+            ins.setInt(2, thr);
+            ins.setString(3, makeValue(id));
+            ins.executeUpdate();
+            if (i % 50 == 49) {
+                c.commit();
+            }
+        }
+        ins.close();
+        c.commit();
+
+        // Update and delete by key, so that the threads don't scan the
+        // rows of each other.
+        PreparedStatement upd =
+            c.prepareStatement("update cs set v = 'u' || v where id = ?");
+        PreparedStatement del =
+            c.prepareStatement("delete from cs where id = ?");
+        for (int i = 0; i < ROWS_PER_THREAD; i++) {
+            int id = thr * ROWS_PER_THREAD + i;
+            if (id % 5 == 0) {
+                del.setInt(1, id);
+                assertEquals(1, del.executeUpdate());
+            } else if (id % 2 == 0) {
+                upd.setInt(1, id);
+                assertEquals(1, upd.executeUpdate());
+            }
+        }
+        upd.close();
+        del.close();
+        c.commit();
+    }
+
+    private void checkRows() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select count(*) from cs"),
+            Integer.toString(
+                THREADS * (ROWS_PER_THREAD - ROWS_PER_THREAD / 5)));
+        ResultSet rs = s.executeQuery("select id, thr, v from cs order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            assertTrue(id % 5 != 0);
+            assertEquals(id / ROWS_PER_THREAD, rs.getInt(2));
+            assertEquals((id % 2 == 0 ? "u" : "") + makeValue(id),
+                         rs.getString(3));
+        }
+        rs.close();
+
+        s.close();
+        commit();
+    }
+
+    /**
+     * A wide value, so that the rows of the threads fill many pages, in a
+     * letter that depends on the id.
+     */
+    private static String makeValue(int id) {
+        return Utilities.repeatChar(
+            String.valueOf((char) ('a' + id % 26)), WIDTH);
+    }
+
+    private static ObjectName getPageCacheBean(MBeanServer server)
+            throws Exception {
+        Set<ObjectName> names = server.queryNames(new ObjectName(
+            "org.apache.derby:type=CacheManager,name=PageCache,*"), null);
+        assertEquals(names.toString(), 1, names.size());
+        return names.iterator().next();
+    }
+
+    private static long getCount(MBeanServer server, ObjectName name,
+                                 String attribute) throws Exception {
+        return ((Long) server.getAttribute(name, attribute)).longValue();
+    }
+}
@@ -0,0 +1,364 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.HashIndexTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.RuntimeStatisticsParser;
+import org.apache.derbyTesting.junit.SQLUtilities;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for hash indexes, created with CREATE INDEX ... USING HASH.
+ */
+public class HashIndexTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 5000;
+
+    public HashIndexTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(HashIndexTest.class));
+    }
+
+    protected void tearDown() throws Exception {
+        // the forked JVM of testRecovery leaves the table to recovery
+        if (!"launchWork".equals(getName())) {
+            dropTable("HASHT");
+        }
+        super.tearDown();
+    }
+
+    /** Make a key which is different for every i. */
+    private static String makeKey(int i) {
+        return "key-" + i + "-" + (i * 31 % 97);
+    }
+
+    /** Create the table and insert rows with ids from 0 to rows - 1. */
+    private void fill(int rows) throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate(
+            "create table hasht(id int, k varchar(100), n int)");
+        s.close();
+
+        PreparedStatement ps =
+            prepareStatement("insert into hasht values (?, ?, ?)");
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, makeKey(i));
+            ps.setInt(3, i % 10);
+            ps.executeUpdate();
+        }
+        ps.close();
+    }
+
+    /** Check that every key is found through the hash index. */
+    private void assertLookups(int rows) throws SQLException {
+        PreparedStatement ps = prepareStatement(
+            "select id from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where k = ?");
+        for (int i = 0; i < rows; i++) {
+            ps.setString(1, makeKey(i));
+            JDBC.assertSingleValueResultSet(
+                ps.executeQuery(), String.valueOf(i));
+        }
+        ps.setString(1, makeKey(rows));
+        JDBC.assertEmpty(ps.executeQuery());
+        ps.close();
+    }
+
+    /**
+     * Check that a hash index built over a full table, and one filled by
+     * inserts which split its buckets, find all the keys.
+     */
+    public void testLookups() throws SQLException {
+        fill(ROWS);
+        Statement s = createStatement();
+        s.executeUpdate("create index hasht_k on hasht(k) using hash");
+        assertLookups(ROWS);
+        assertCheckTable("HASHT");
+
+        // grow the index from empty
+        dropTable("HASHT");
+        fill(0);
+        s.executeUpdate("create index hasht_k on hasht(k) using hash");
+        s.close();
+
+        PreparedStatement ps =
+            prepareStatement("insert into hasht values (?, ?, ?)");
+        for (int i = 0; i < ROWS; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, makeKey(i));
+            ps.setInt(3, i % 10);
+            ps.executeUpdate();
+        }
+        ps.close();
+        assertLookups(ROWS);
+        assertCheckTable("HASHT");
+    }
+
+    /**
+     * Check that predicates which are not equalities on all the columns of
+     * the index scan the whole index, and return the right rows.
+     */
+    public void testScans() throws SQLException {
+        fill(1000);
+        Statement s = createStatement();
+        s.executeUpdate("create index hasht_k on hasht(n, id) using hash");
+
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where n = 3"), "100");
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where n = 3 and id < 500"), "50");
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select k from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where n = 7 and id = 17"), makeKey(17));
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where id in (1, 2, 3, 2000)"), "3");
+
+        // a hash index does not return the rows in order, so ORDER BY
+        // must still sort them
+        ResultSet rs = s.executeQuery(
+            "select n, id from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "order by n, id");
+        for (int n = 0; n < 10; n++) {
+            for (int id = n; id < 1000; id += 10) {
+                assertTrue(rs.next());
+                assertEquals(n, rs.getInt(1));
+                assertEquals(id, rs.getInt(2));
+            }
+        }
+        assertFalse(rs.next());
+        rs.close();
+        s.close();
+    }
+
+    /**
+     * Check that the optimizer picks a hash index for an equality on its
+     * columns, and not for a range.
+     */
+    public void testOptimizerChoice() throws SQLException {
+        fill(ROWS);
+        Statement s = createStatement();
+        s.executeUpdate("create index hasht_k on hasht(k) using hash");
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select id from hasht where k = '" + makeKey(42) + "'"), "42");
+        RuntimeStatisticsParser rtsp =
+            SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedSpecificIndexForIndexScan("HASHT", "HASHT_K"));
+
+        PreparedStatement ps =
+            prepareStatement("select id from hasht where k = ?");
+        ps.setString(1, makeKey(4242));
+        JDBC.assertSingleValueResultSet(ps.executeQuery(), "4242");
+        rtsp = SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedSpecificIndexForIndexScan("HASHT", "HASHT_K"));
+        ps.close();
+
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(id) from hasht where k > 'key-9'"), "111");
+        rtsp = SQLUtilities.getRuntimeStatisticsParser(s);
+        assertTrue(rtsp.usedTableScan("HASHT"));
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        s.close();
+    }
+
+    /**
+     * Check that many rows with the same key, which need overflow pages,
+     * are all found.
+     */
+    public void testDuplicates() throws SQLException {
+        fill(0);
+        Statement s = createStatement();
+        s.executeUpdate("create index hasht_k on hasht(k) using hash");
+        PreparedStatement ps =
+            prepareStatement("insert into hasht values (?, ?, ?)");
+        for (int i = 0; i < 2000; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, (i % 2 == 0) ? "even" : makeKey(i));
+            ps.setInt(3, i % 10);
+            ps.executeUpdate();
+        }
+        ps.close();
+
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where k = 'even'"), "1000");
+        assertUpdateCount(s, 600,
+            "delete from hasht where k = 'even' and n < 5");
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where k = 'even'"), "400");
+        assertCheckTable("HASHT");
+        s.close();
+    }
+
+    /**
+     * Check that a unique hash index rejects duplicate keys, both when it is
+     * created and when rows are inserted.
+     */
+    public void testUnique() throws SQLException {
+        fill(500);
+        Statement s = createStatement();
+        s.executeUpdate("create unique index hasht_k on hasht(k) using hash");
+        assertStatementError("23505", s,
+            "insert into hasht values (-1, '" + makeKey(250) + "', 0)");
+        s.executeUpdate("insert into hasht values (-1, 'new', 0)");
+        s.executeUpdate("drop index hasht_k");
+
+        s.executeUpdate("insert into hasht values (-2, 'new', 0)");
+        assertStatementError("23505", s,
+            "create unique index hasht_k on hasht(k) using hash");
+        assertCheckTable("HASHT");
+        s.close();
+    }
+
+    /**
+     * Check that updates, deletes and rollbacks keep the hash index in step
+     * with the table, and that the index survives a compress of the table.
+     */
+    public void testChanges() throws SQLException {
+        fill(ROWS);
+        Statement s = createStatement();
+        s.executeUpdate("create index hasht_k on hasht(k) using hash");
+
+        setAutoCommit(false);
+        assertUpdateCount(s, ROWS / 2, "delete from hasht where mod(id, 2) = 0");
+        assertUpdateCount(s, ROWS / 2,
+            "update hasht set k = k || '-changed'");
+        rollback();
+        assertLookups(ROWS);
+        assertCheckTable("HASHT");
+
+        assertUpdateCount(s, ROWS / 2, "delete from hasht where mod(id, 2) = 0");
+        commit();
+        setAutoCommit(true);
+
+        s.execute("call syscs_util.syscs_compress_table(" +
+                  "current schema, 'HASHT', 1)");
+        assertCheckTable("HASHT");
+
+        PreparedStatement ps = prepareStatement(
+            "select id from hasht --DERBY-PROPERTIES index=hasht_k\n" +
+            "where k = ?");
+        for (int i = 0; i < ROWS; i++) {
+            ps.setString(1, makeKey(i));
+            ResultSet rs = ps.executeQuery();
+            if (i % 2 == 0) {
+                JDBC.assertEmpty(rs);
+            } else {
+                JDBC.assertSingleValueResultSet(rs, String.valueOf(i));
+            }
+        }
+        ps.close();
+        s.close();
+    }
+
+    /**
+     * Create a unique hash index and one with few distinct keys and shut
+     * down, let a forked JVM fill the table, which splits the buckets of
+     * the first index and makes long overflow chains in the second, and
+     * exit without a checkpoint or a clean shutdown, then check that
+     * recovery leaves both indexes in step with the table.
+     */
+    public void testRecovery() throws Exception {
+        fill(0);
+        Statement s = createStatement();
+        s.executeUpdate("create unique index hasht_k on hasht(k) using hash");
+        s.executeUpdate("create index hasht_n on hasht(n) using hash");
+        // no checkpoint while the forked JVM fills the table
+        s.execute("call syscs_util.syscs_set_database_property(" +
+                  "'derby.storage.checkpointInterval', '134217728')");
+        s.close();
+        TestConfiguration.getCurrent().shutdownDatabase();
+
+        assertLaunchedJUnitTestMethod("org.apache.derbyTesting." +
+            "functionTests.tests.store.HashIndexTest.launchWork");
+
+        assertLookups(ROWS);
+        s = createStatement();
+        JDBC.assertSingleValueResultSet(s.executeQuery(
+            "select count(*) from hasht --DERBY-PROPERTIES index=hasht_n\n" +
+            "where n = 3"), String.valueOf(ROWS / 10));
+        assertStatementError("23505", s,
+            "insert into hasht values (-1, '" + makeKey(ROWS / 2) + "', 0)");
+        s.executeUpdate(
+            "insert into hasht values (-1, '" + makeKey(ROWS) + "', 0)");
+        assertCheckTable("HASHT");
+        s.execute("call syscs_util.syscs_set_database_property(" +
+                  "'derby.storage.checkpointInterval', null)");
+        s.close();
+    }
+
+    /**
+     * Run by the forked JVM. Insert the rows, committing now and then, and
+     * leave a transaction which inserts more rows open. Do not shut down
+     * the database, so that recovery has to redo all of it.
+     */
+    public void launchWork() throws SQLException {
+        Connection c = getConnection();
+        c.setAutoCommit(false);
+
+        PreparedStatement ps =
+            c.prepareStatement("insert into hasht values (?, ?, ?)");
+        for (int i = 0; i < ROWS + 500; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, makeKey(i));
+            ps.setInt(3, i % 10);
+            ps.executeUpdate();
+            // the rows from ROWS on are left uncommitted
+            if (i % 1000 == 999 || i == ROWS - 1) {
+                c.commit();
+            }
+        }
+        ps.close();
+    }
+
+    /**
+     * Check that only the BTREE and HASH index types are accepted.
+     */
+    public void testIndexType() throws SQLException {
+        fill(10);
+        Statement s = createStatement();
+        assertStatementError("42ZCF", s,
+            "create index hasht_k on hasht(k) using bitmap");
+        s.executeUpdate("create index hasht_k on hasht(k) using btree");
+        s.executeUpdate("create index hasht_k2 on hasht(k) using hash");
+        s.close();
+    }
+}
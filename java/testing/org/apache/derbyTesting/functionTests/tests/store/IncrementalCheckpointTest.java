@@ -0,0 +1,177 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.IncrementalCheckpointTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.storage.checkpointIncremental} property, where
+ * the checkpoints taken every {@code derby.storage.checkpointInterval} bytes
+ * of log leave dirty pages in the cache and start redo at the oldest change
+ * to one of them. A forked JVM takes many such checkpoints while it changes
+ * the database, and exits without shutting it down. Recovery must then
+ * redo the changes to the pages that were never written.
+ */
+public class IncrementalCheckpointTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 1500;
+
+    /** Properties of the forked JVM, many checkpoints and a slow writer. */
+    private static final String[] LAUNCH_PROPERTIES = {
+        "-Dderby.storage.checkpointIncremental=true",
+        "-Dderby.storage.checkpointWriteRate=20",
+        "-Dderby.storage.checkpointInterval=100000",
+        "-Dderby.storage.logSwitchInterval=100000",
+    };
+
+    public IncrementalCheckpointTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.checkpointIncremental", "true");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(IncrementalCheckpointTest.class));
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    /**
+     * Create a table and shut down, let a forked JVM change it while it
+     * takes incremental checkpoints and exit without a clean shutdown, then
+     * check that recovery brings back exactly the committed changes.
+     */
+    public void testRecoveryAfterIncrementalCheckpoints() throws Exception {
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate(
+            "create table ic(id int primary key, n int, v varchar(1000))");
+        commit();
+        s.close();
+        TestConfiguration.getCurrent().shutdownDatabase();
+
+        String[] cmd = new String[LAUNCH_PROPERTIES.length + 3];
+        System.arraycopy(
+            LAUNCH_PROPERTIES, 0, cmd, 0, LAUNCH_PROPERTIES.length);
+        cmd[LAUNCH_PROPERTIES.length] = "junit.textui.TestRunner";
+        cmd[LAUNCH_PROPERTIES.length + 1] = "-m";
+        cmd[LAUNCH_PROPERTIES.length + 2] = "org.apache.derbyTesting." +
+            "functionTests.tests.store.IncrementalCheckpointTest.launchWork";
+        assertExecJavaCmdAsExpected(new String[] { "OK (1 test)" }, cmd, 0);
+
+        checkRows();
+
+        // Recovery itself ends with a checkpoint, check that a reboot
+        // still finds the same rows.
+        TestConfiguration.getCurrent().shutdownDatabase();
+        checkRows();
+    }
+
+    /**
+     * Run by the forked JVM. Insert rows and keep updating the first ones,
+     * so that some pages stay dirty over many checkpoints while others are
+     * written by the page writer. Do not shut down the database.
+     */
+    public void launchWork() throws Exception {
+        Connection c = getConnection();
+        c.setAutoCommit(false);
+
+        PreparedStatement ins =
+            c.prepareStatement("insert into ic values (?, 0, ?)");
+        PreparedStatement upd =
+            c.prepareStatement("update ic set n = n + 1 where id < 20");
+        for (int i = 0; i < ROWS; i++) {
+            ins.setInt(1, i);
+            ins.setString(2, makeValue(i));
+            ins.executeUpdate();
+            if (i % 10 == 9) {
+                upd.executeUpdate();
+                c.commit();
+            }
+            if (i % 300 == 299) {
+                // give the background checkpoint a chance to run
+                Thread.sleep(200);
+            }
+        }
+        c.commit();
+
+        Statement s = c.createStatement();
+        s.executeUpdate("update ic set n = -1 where mod(id, 7) = 0");
+        c.commit();
+
+        // Left uncommitted, recovery has to undo this if it is in the log.
+        s.executeUpdate("delete from ic where id > 100");
+    }
+
+    /**
+     * Column v only makes the rows large, so that the table has many pages
+     * for the page writer, the test checks the changes to column n.
+     */
+    private static String makeValue(int id) {
+        return Utilities.repeatChar("v", 500 + id % 400);
+    }
+
+    /** The value of column n that the forked JVM committed for a row. */
+    private static int expectedN(int id) {
+        if (id % 7 == 0) {
+            return -1;
+        }
+        if (id >= 20) {
+            return 0;
+        }
+        // updated once for every ten rows inserted after it
+        return ROWS / 10 - id / 10;
+    }
+
+    private void checkRows() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select count(*) from ic"),
+            Integer.toString(ROWS));
+
+        ResultSet rs = s.executeQuery("select id, n, v from ic order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            assertEquals("n of row " + id, expectedN(id), rs.getInt(2));
+            assertEquals(makeValue(id), rs.getString(3));
+        }
+        rs.close();
+
+        s.close();
+        commit();
+    }
+}
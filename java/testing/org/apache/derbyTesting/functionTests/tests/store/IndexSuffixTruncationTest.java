@@ -0,0 +1,260 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.IndexSuffixTruncationTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Random;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.Decorator;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the {@code derby.storage.indexSuffixTruncation} property, with
+ * which the branch rows added by leaf splits only keep as much of their key
+ * as needed to separate the two leaf pages. The keys are long, so that the
+ * trees have several levels of branch pages.
+ */
+public class IndexSuffixTruncationTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 2000;
+
+    private static final int KEY_LENGTH = 300;
+
+    public IndexSuffixTruncationTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("IndexSuffixTruncationTest");
+        suite.addTest(
+            TestConfiguration.embeddedSuite(IndexSuffixTruncationTest.class));
+
+        // the separators are checked with the collation of the column
+        suite.addTest(Decorator.territoryCollatedDatabase(
+            new IndexSuffixTruncationTest("testLookups"), "no"));
+
+        Properties props = new Properties();
+        props.setProperty("derby.storage.indexSuffixTruncation", "true");
+        return new SystemPropertyTestSetup(
+            new CleanDatabaseTestSetup(suite), props, true);
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("TRUNC");
+        dropTable("TRUNC2");
+        super.tearDown();
+    }
+
+    /** Make a long key, which differs from the others early on. */
+    private static String makeKey(Random random) {
+        StringBuffer sb = new StringBuffer();
+        while (sb.length() < KEY_LENGTH) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /** Make a long key, which only differs from the others at the end. */
+    private static String makeTailKey(int i) {
+        StringBuffer sb = new StringBuffer();
+        String n = String.valueOf(i);
+        while (sb.length() < KEY_LENGTH - n.length()) {
+            sb.append('x');
+        }
+        sb.append(n);
+        return sb.toString();
+    }
+
+    private String[] fill(String table, boolean tail) throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table " + table +
+                        "(id int primary key, k varchar(400))");
+        s.executeUpdate("create index " + table + "_k on " + table + "(k)");
+        s.close();
+
+        String[] keys = new String[ROWS];
+        Random random = new Random(ROWS);
+        PreparedStatement ps = prepareStatement(
+            "insert into " + table + " values (?, ?)");
+        for (int i = 0; i < ROWS; i++) {
+            keys[i] = tail ? makeTailKey(random.nextInt(1000000)) :
+                             makeKey(random);
+            ps.setInt(1, i);
+            ps.setString(2, keys[i]);
+            ps.executeUpdate();
+        }
+        ps.close();
+        return keys;
+    }
+
+    /**
+     * Check that point lookups and range scans find the right rows in an
+     * index with truncated branch rows, also after most rows are deleted.
+     */
+    public void testLookups() throws SQLException {
+        String[] keys = fill("TRUNC", false);
+
+        PreparedStatement ps = prepareStatement(
+            "select id from trunc --DERBY-PROPERTIES index=trunc_k\n" +
+            "where k = ?");
+        for (int i = 0; i < ROWS; i++) {
+            ps.setString(1, keys[i]);
+            JDBC.assertSingleValueResultSet(
+                ps.executeQuery(), String.valueOf(i));
+        }
+
+        // Prefixes of existing keys are not found, and neither are the
+        // keys with one more character.
+        for (int i = 0; i < ROWS; i += 10) {
+            ps.setString(1, keys[i].substring(0, 3));
+            JDBC.assertEmpty(ps.executeQuery());
+            ps.setString(1, keys[i] + "a");
+            JDBC.assertEmpty(ps.executeQuery());
+        }
+        ps.close();
+
+        // Every key is at the position the base table says.
+        ps = prepareStatement(
+            "select count(*) from trunc --DERBY-PROPERTIES index=trunc_k\n" +
+            "where k < ?");
+        PreparedStatement base = prepareStatement(
+            "select count(*) from trunc " +
+            "--DERBY-PROPERTIES index=null\n where k < ?");
+        for (int i = 0; i < ROWS; i += 50) {
+            ps.setString(1, keys[i]);
+            base.setString(1, keys[i]);
+            ResultSet rs = base.executeQuery();
+            rs.next();
+            JDBC.assertSingleValueResultSet(
+                ps.executeQuery(), String.valueOf(rs.getInt(1)));
+            rs.close();
+        }
+        ps.close();
+        base.close();
+
+        assertCheckTable("TRUNC");
+
+        Statement s = createStatement();
+        assertUpdateCount(s, ROWS - ROWS / 10,
+                          "delete from trunc where mod(id, 10) <> 0");
+        s.close();
+
+        ps = prepareStatement(
+            "select id from trunc --DERBY-PROPERTIES index=trunc_k\n" +
+            "where k = ?");
+        for (int i = 0; i < ROWS; i += 10) {
+            ps.setString(1, keys[i]);
+            JDBC.assertSingleValueResultSet(
+                ps.executeQuery(), String.valueOf(i));
+        }
+        ps.close();
+
+        assertCheckTable("TRUNC");
+    }
+
+    /**
+     * Check an index on several columns, where the first one has few
+     * distinct values, and one is descending.
+     */
+    public void testCompositeKeys() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table trunc(a int, b varchar(400), " +
+                        "c char(100), d varchar(300))");
+        s.executeUpdate("create index trunc_abcd on trunc(a, b, c desc, d)");
+
+        Random random = new Random(1);
+        PreparedStatement ps =
+            prepareStatement("insert into trunc values (?, ?, ?, ?)");
+        for (int i = 0; i < ROWS; i++) {
+            ps.setInt(1, i % 3);
+            ps.setString(2, makeKey(random).substring(0, 3 + i % 5) +
+                         makeTailKey(i % 7));
+            ps.setString(3, makeKey(random).substring(0, 2));
+            ps.setString(4, makeKey(random));
+            ps.executeUpdate();
+        }
+        ps.close();
+
+        assertCheckTable("TRUNC");
+
+        // the index and the base table give the same answers
+        String[] queries = {
+            "select count(*) from trunc where a = 1",
+            "select count(*) from trunc where a = 2 and b > 'm'",
+            "select count(*) from trunc where a = 0 and b < 'f'",
+            "select count(*) from trunc where a = 1 and b >= 'g' and b < 'p'",
+        };
+        for (int i = 0; i < queries.length; i++) {
+            String q = queries[i];
+            int where = q.indexOf(" where");
+            ResultSet rs = s.executeQuery(
+                q.substring(0, where) + " --DERBY-PROPERTIES index=null\n" +
+                q.substring(where));
+            rs.next();
+            String expected = rs.getString(1);
+            rs.close();
+            JDBC.assertSingleValueResultSet(s.executeQuery(
+                q.substring(0, where) +
+                " --DERBY-PROPERTIES index=trunc_abcd\n" +
+                q.substring(where)), expected);
+        }
+        s.close();
+    }
+
+    /**
+     * Check that an index with keys which differ early needs fewer pages
+     * than one with keys of the same length which only differ at the end,
+     * as its branch rows are shorter.
+     */
+    public void testFewerBranchPages() throws SQLException {
+        fill("TRUNC", false);
+        fill("TRUNC2", true);
+
+        assertTrue(getIndexPages("TRUNC") < getIndexPages("TRUNC2"));
+
+        assertCheckTable("TRUNC");
+        assertCheckTable("TRUNC2");
+    }
+
+    private int getIndexPages(String table) throws SQLException {
+        PreparedStatement ps = prepareStatement(
+            "select numallocatedpages from table(syscs_diag.space_table(" +
+            "current schema, ?)) t where isindex = 1 and conglomeratename = ?");
+        ps.setString(1, table);
+        ps.setString(2, table + "_K");
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        int pages = rs.getInt(1);
+        rs.close();
+        ps.close();
+        return pages;
+    }
+}
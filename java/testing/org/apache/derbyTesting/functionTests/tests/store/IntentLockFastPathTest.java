@@ -0,0 +1,314 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.IntentLockFastPathTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the fast path of the lock manager, which grants intent locks on
+ * tables without going through the lock table entry of the table as long as
+ * no other table lock is requested. Check that the intent locks granted
+ * through the fast path are seen by table lock requests, by the deadlock
+ * detection and by the lock table view.
+ */
+public class IntentLockFastPathTest extends BaseJDBCTestCase {
+
+    public IntentLockFastPathTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.locks.waitTimeout", "4");
+        props.setProperty("derby.locks.deadlockTimeout", "2");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(IntentLockFastPathTest.class));
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void setUp() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table t1(id int primary key, n int)");
+        s.executeUpdate("create table t2(id int primary key, n int)");
+        s.executeUpdate("insert into t1 values (1, 0), (2, 0)");
+        s.executeUpdate("insert into t2 values (1, 0), (2, 0)");
+        s.close();
+        setAutoCommit(false);
+    }
+
+    protected void tearDown() throws Exception {
+        rollback();
+        dropTable("T1");
+        dropTable("T2");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Check that the intent locks of several transactions are shown in the
+     * lock table, and that an exclusive table lock waits for them.
+     */
+    public void testExclusiveTableLock() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("update t1 set n = 1 where id = 1");
+
+        Connection c2 = openDefaultConnection();
+        c2.setAutoCommit(false);
+        Statement s2 = c2.createStatement();
+        s2.executeUpdate("update t1 set n = 2 where id = 2");
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select count(*) from syscs_diag.lock_table " +
+            "where tablename = 'T1' and type = 'TABLE' and mode = 'IX' " +
+            "and state = 'GRANT'"),
+            new String[][] {{"2"}});
+
+        Connection c3 = openDefaultConnection();
+        c3.setAutoCommit(false);
+        Statement s3 = c3.createStatement();
+        try {
+            s3.executeUpdate("lock table t1 in exclusive mode");
+            fail("expected lock timeout");
+        } catch (SQLException se) {
+            assertSQLState("40XL1", se);
+        }
+
+        // intent locks keep working after the table lock request is gone
+        s2.executeUpdate("update t1 set n = 3 where id = 2");
+        c2.commit();
+        commit();
+
+        s3.executeUpdate("lock table t1 in exclusive mode");
+        try {
+            s2.executeUpdate("update t1 set n = 4 where id = 2");
+            fail("expected lock timeout");
+        } catch (SQLException se) {
+            assertSQLState("40XL1", se);
+        }
+        c3.commit();
+
+        s2.executeUpdate("update t1 set n = 4 where id = 2");
+        c2.commit();
+        JDBC.assertFullResultSet(
+            s.executeQuery("select id, n from t1 order by id"),
+            new String[][] {{"1", "1"}, {"2", "4"}});
+
+        s3.close();
+        c3.close();
+        s2.close();
+        c2.close();
+        s.close();
+    }
+
+    /**
+     * Check that a transaction can lock a table in exclusive mode while it
+     * holds an intent lock on it, and that a shared table lock is compatible
+     * with intent shared locks but not with intent exclusive locks.
+     */
+    public void testTableLockModes() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("update t1 set n = 1 where id = 1");
+        s.executeUpdate("lock table t1 in exclusive mode");
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select mode from syscs_diag.lock_table " +
+            "where tablename = 'T1' and type = 'TABLE' order by mode"),
+            new String[][] {{"IX"}, {"X"}});
+        commit();
+
+        Connection c2 = openDefaultConnection();
+        c2.setAutoCommit(false);
+        c2.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        Statement s2 = c2.createStatement();
+        JDBC.assertDrainResults(
+            s2.executeQuery("select * from t1 where id = 1"), 1);
+
+        s.executeUpdate("lock table t1 in share mode");
+        try {
+            s2.executeUpdate("update t1 set n = 5 where id = 2");
+            fail("expected lock timeout");
+        } catch (SQLException se) {
+            assertSQLState("40XL1", se);
+        }
+        commit();
+
+        s2.executeUpdate("update t1 set n = 5 where id = 2");
+        try {
+            s.executeUpdate("lock table t1 in share mode");
+            fail("expected lock timeout");
+        } catch (SQLException se) {
+            assertSQLState("40XL1", se);
+        }
+        c2.commit();
+        s.executeUpdate("lock table t1 in share mode");
+        commit();
+
+        s2.close();
+        c2.close();
+        s.close();
+    }
+
+    /**
+     * Check that the deadlock detection finds a deadlock between two
+     * transactions which hold intent locks granted through the fast path.
+     */
+    public void testDeadlock() throws Exception {
+        Statement s = createStatement();
+        s.executeUpdate("update t1 set n = 1 where id = 1");
+
+        final Connection c2 = openDefaultConnection();
+        c2.setAutoCommit(false);
+        final Statement s2 = c2.createStatement();
+        s2.executeUpdate("update t2 set n = 1 where id = 1");
+
+        // The victim of the deadlock rolls back its transaction at once, so
+        // that the other transaction gets its lock before it times out.
+        final List<SQLException> errors =
+            Collections.synchronizedList(new ArrayList<SQLException>());
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    s2.executeUpdate("lock table t1 in exclusive mode");
+                } catch (SQLException se) {
+                    errors.add(se);
+                    try {
+                        c2.rollback();
+                    } catch (SQLException e) {
+                        errors.add(e);
+                    }
+                }
+            }
+        };
+        t.start();
+
+        try {
+            s.executeUpdate("lock table t2 in exclusive mode");
+        } catch (SQLException se) {
+            errors.add(se);
+            rollback();
+        }
+        t.join();
+
+        assertEquals(1, errors.size());
+        assertSQLState("40001", errors.get(0));
+
+        rollback();
+        c2.rollback();
+        s2.close();
+        c2.close();
+        s.close();
+    }
+
+    /**
+     * Update a table from several threads while another thread repeatedly
+     * locks it in share mode, and check that all the updates are made and
+     * all the locks are released.
+     */
+    public void testConcurrentRequests() throws Exception {
+        final int threads = 4;
+        final int updates = 200;
+
+        Statement s = createStatement();
+        PreparedStatement ins = prepareStatement("insert into t2 values (?, 0)");
+        for (int i = 0; i < threads; i++) {
+            ins.setInt(1, 10 + i);
+            ins.executeUpdate();
+        }
+        ins.close();
+        commit();
+
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = 10 + i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        Connection c = openDefaultConnection();
+                        PreparedStatement ps = c.prepareStatement(
+                            "update t2 set n = n + 1 where id = ?");
+                        ps.setInt(1, id);
+                        for (int j = 0; j < updates; j++) {
+                            assertEquals(1, ps.executeUpdate());
+                        }
+                        ps.close();
+                        c.close();
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+
+        Thread locker = new Thread() {
+            public void run() {
+                try {
+                    Connection c = openDefaultConnection();
+                    c.setAutoCommit(false);
+                    Statement ls = c.createStatement();
+                    for (int j = 0; j < updates / 4; j++) {
+                        ls.executeUpdate("lock table t2 in share mode");
+                        c.commit();
+                        Thread.yield();
+                    }
+                    ls.close();
+                    c.close();
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        };
+        locker.start();
+
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        locker.join();
+
+        if (!errors.isEmpty()) {
+            fail("concurrent request failed", errors.get(0));
+        }
+
+        JDBC.assertFullResultSet(s.executeQuery(
+            "select count(*), sum(n) from t2 where id >= 10"),
+            new String[][] {{Integer.toString(threads),
+                             Integer.toString(threads * updates)}});
+        JDBC.assertEmpty(s.executeQuery(
+            "select * from syscs_diag.lock_table where tablename = 'T2'"));
+        s.close();
+    }
+}
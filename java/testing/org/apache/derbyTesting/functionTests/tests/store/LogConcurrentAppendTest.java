@@ -0,0 +1,176 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.LogConcurrentAppendTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.storage.logConcurrentAppend} mode, where log
+ * records are copied into the log buffers by many threads at the same
+ * time. Rollback reads the log records back, and a reboot makes recovery
+ * read the log, so both are used to check that the records are intact.
+ */
+public class LogConcurrentAppendTest extends BaseJDBCTestCase {
+
+    private static final int THREADS = 8;
+    private static final int ROWS_PER_THREAD = 40;
+
+    public LogConcurrentAppendTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.logConcurrentAppend", "true");
+        props.setProperty("derby.storage.logBufferCount", "5");
+
+        Test test =
+            TestConfiguration.embeddedSuite(LogConcurrentAppendTest.class);
+        test = TestConfiguration.singleUseDatabaseDecorator(test);
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void setUp() throws SQLException {
+        createStatement().executeUpdate(
+            "create table ca(id int primary key, thr int, v varchar(32000))");
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("CA");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Insert and update rows from many threads, some of which commit and
+     * some of which roll back. Then reboot and check that exactly the
+     * committed changes survived.
+     */
+    public void testConcurrentWritersWithRollback() throws Exception {
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+            final int thr = i;
+            final Connection c = openDefaultConnection();
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        runWriter(c, thr);
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+        }
+
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+        }
+
+        if (!errors.isEmpty()) {
+            fail("writer failed", errors.get(0));
+        }
+
+        checkRows();
+
+        // Boot again and make sure recovery sees the same data.
+        getTestConfiguration().shutdownDatabase();
+        checkRows();
+    }
+
+    /**
+     * Insert rows of varying length, some longer than a log buffer, and
+     * update them. Threads with an odd number roll back.
+     */
+    private static void runWriter(Connection c, int thr) throws SQLException {
+        c.setAutoCommit(false);
+        PreparedStatement ins =
+            c.prepareStatement("insert into ca values (?, ?, ?)");
+        PreparedStatement upd =
+            c.prepareStatement("update ca set v = ? where id = ?");
+
+        for (int j = 0; j < ROWS_PER_THREAD; j++) {
+            int id = thr * ROWS_PER_THREAD + j;
+            ins.setInt(1, id);
+            ins.setInt(2, thr);
+            ins.setString(3, makeValue(id, false));
+            ins.executeUpdate();
+        }
+        for (int j = 0; j < ROWS_PER_THREAD; j++) {
+            int id = thr * ROWS_PER_THREAD + j;
+            upd.setString(1, makeValue(id, true));
+            upd.setInt(2, id);
+            upd.executeUpdate();
+        }
+
+        if (thr % 2 == 0) {
+            c.commit();
+        } else {
+            c.rollback();
+        }
+
+        ins.close();
+        upd.close();
+        c.close();
+    }
+
+    /** Make the value for a row, every fifth one spans many pages. */
+    private static String makeValue(int id, boolean updated) {
+        int len = (id % 5 == 0) ? 31000 : 10 + (id * 37) % 500;
+        char ch = (char) ((updated ? 'a' : 'A') + (id % 26));
+        return Utilities.repeatChar(String.valueOf(ch), len);
+    }
+
+    /** Check that only the rows of the committing threads are there. */
+    private void checkRows() throws SQLException {
+        JDBC.assertSingleValueResultSet(
+            createStatement().executeQuery("select count(*) from ca"),
+            Integer.toString(((THREADS + 1) / 2) * ROWS_PER_THREAD));
+
+        ResultSet rs = createStatement().executeQuery(
+            "select id, thr, v from ca order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            assertEquals(0, rs.getInt(2) % 2);
+            assertEquals(makeValue(id, true), rs.getString(3));
+        }
+        rs.close();
+    }
+}
@@ -0,0 +1,243 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.LogGroupCommitTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.BaseTestSuite;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SecurityManagerSetup;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for group commit of the transaction log, which is enabled with the
+ * {@code derby.storage.logGroupCommit} property. Many threads commit at the
+ * same time, and the log flusher thread syncs the log on their behalf.
+ */
+public class LogGroupCommitTest extends BaseJDBCTestCase {
+
+    private static final int THREADS = 8;
+    private static final int COMMITS_PER_THREAD = 50;
+
+    /** Number of writers in the test that group commit scales past 8. */
+    private static final int MANY_THREADS = 16;
+
+    public LogGroupCommitTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        BaseTestSuite suite = new BaseTestSuite("LogGroupCommitTest");
+        suite.addTest(decorate(
+            TestConfiguration.embeddedSuite(LogGroupCommitTest.class),
+            100, 4));
+
+        // a wait window long enough for all the writers to join a batch
+        suite.addTest(decorate(
+            new LogGroupCommitTest("manyWritersShareFlushes"),
+            10000, MANY_THREADS));
+
+        // the tests read the log flusher counters from the platform
+        // MBean server
+        return SecurityManagerSetup.noSecurityManager(suite);
+    }
+
+    /**
+     * Run the test in a database of its own, booted with group commit
+     * and the given max wait and max batch.
+     */
+    private static Test decorate(Test test, int maxWait, int maxBatch) {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.logGroupCommit", "true");
+        props.setProperty("derby.storage.logGroupCommitMaxWait",
+                          Integer.toString(maxWait));
+        props.setProperty("derby.storage.logGroupCommitMaxBatch",
+                          Integer.toString(maxBatch));
+        props.setProperty("derby.system.jmx", "true");
+
+        test = TestConfiguration.singleUseDatabaseDecorator(test);
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void setUp() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table gc(id int primary key, thr int)");
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("GC");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Commit from many threads at once and check that no commit is lost,
+     * also after the database has been rebooted.
+     */
+    public void testConcurrentCommits() throws Exception {
+        runCommitters(THREADS);
+
+        JDBC.assertSingleValueResultSet(
+            createStatement().executeQuery("select count(*) from gc"),
+            Integer.toString(THREADS * COMMITS_PER_THREAD));
+
+        // Make sure the committed rows are in the log by booting again.
+        getTestConfiguration().shutdownDatabase();
+
+        JDBC.assertSingleValueResultSet(
+            createStatement().executeQuery("select count(distinct thr) from gc"),
+            Integer.toString(THREADS));
+    }
+
+    /**
+     * Check that the log flusher counters are exposed through JMX and
+     * that they count the commits.
+     */
+    public void testFlusherMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = getFlusherName(server);
+
+        long requestsBefore =
+            ((Long) server.getAttribute(name, "RequestCount")).longValue();
+
+        runCommitters(THREADS);
+
+        long flushes =
+            ((Long) server.getAttribute(name, "FlushCount")).longValue();
+        long requests =
+            ((Long) server.getAttribute(name, "RequestCount")).longValue();
+        long maxBatchSize =
+            ((Long) server.getAttribute(name, "MaxBatchSize")).longValue();
+
+        assertTrue(flushes > 0);
+        assertTrue("requests: " + requests,
+                   requests - requestsBefore >= THREADS * COMMITS_PER_THREAD);
+        assertTrue(maxBatchSize >= 1);
+        assertTrue(flushes <= requests);
+        assertEquals(100L, ((Long) server.getAttribute(name, "MaxWait"))
+                     .longValue());
+        assertEquals(4, ((Integer) server.getAttribute(name, "MaxBatch"))
+                     .intValue());
+    }
+
+    /**
+     * Check that group commit keeps scaling past 8 concurrent writers:
+     * with 16 writers, a single sync of the log must have satisfied the
+     * commits of more than 8 of them, and every sync must on average have
+     * been shared by several commits.
+     */
+    public void manyWritersShareFlushes() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = getFlusherName(server);
+
+        runCommitters(MANY_THREADS);
+
+        JDBC.assertSingleValueResultSet(
+            createStatement().executeQuery("select count(*) from gc"),
+            Integer.toString(MANY_THREADS * COMMITS_PER_THREAD));
+
+        long flushes =
+            ((Long) server.getAttribute(name, "FlushCount")).longValue();
+        long requests =
+            ((Long) server.getAttribute(name, "RequestCount")).longValue();
+        long maxBatchSize =
+            ((Long) server.getAttribute(name, "MaxBatchSize")).longValue();
+        double averageBatchSize =
+            ((Double) server.getAttribute(name, "AverageBatchSize"))
+            .doubleValue();
+
+        assertTrue("max batch size: " + maxBatchSize, maxBatchSize > 8);
+        assertTrue("flushes: " + flushes + ", requests: " + requests,
+                   flushes * 2 <= requests);
+        assertTrue("average batch size: " + averageBatchSize,
+                   averageBatchSize >= 2.0);
+    }
+
+    /**
+     * Get the name of the MBean of the log flusher of the test database,
+     * which must be the only one.
+     */
+    private static ObjectName getFlusherName(MBeanServer server)
+            throws Exception {
+        Set<ObjectName> names = server.queryNames(
+            new ObjectName("org.apache.derby:type=LogFlusher,*"), null);
+        assertEquals(1, names.size());
+        return names.iterator().next();
+    }
+
+    /**
+     * Start the given number of threads that each insert and commit
+     * COMMITS_PER_THREAD rows on their own connection, and wait for them
+     * to finish.
+     */
+    private void runCommitters(int threadCount) throws Exception {
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            final int thr = i;
+            final Connection c = openDefaultConnection();
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        PreparedStatement ps = c.prepareStatement(
+                            "insert into gc values (?, ?)");
+                        for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+                            ps.setInt(1, thr * COMMITS_PER_THREAD + j);
+                            ps.setInt(2, thr);
+                            ps.executeUpdate();
+                        }
+                        ps.close();
+                        c.close();
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+        }
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+        }
+
+        if (!errors.isEmpty()) {
+            fail("committer failed", errors.get(0));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.LogMappedFilesTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.functionTests.util.PrivilegedFileOpsForTests;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.storage.logMapped} mode, where log files are
+ * preallocated, written through memory mapping, and recycled instead of
+ * deleted. Recycled log files still contain old log records, so the tests
+ * check that rollback and recovery only see the current ones.
+ */
+public class LogMappedFilesTest extends BaseJDBCTestCase {
+
+    private static final int LOG_SWITCH_INTERVAL = 100000;
+    private static final int ROUNDS = 12;
+    private static final int ROWS_PER_ROUND = 100;
+
+    public LogMappedFilesTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.logMapped", "true");
+        props.setProperty("derby.storage.logMaxRecycledFiles", "3");
+        props.setProperty("derby.storage.logSwitchInterval",
+                          Integer.toString(LOG_SWITCH_INTERVAL));
+
+        Test test = TestConfiguration.embeddedSuite(LogMappedFilesTest.class);
+        test = TestConfiguration.singleUseDatabaseDecorator(test);
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void setUp() throws SQLException {
+        createStatement().executeUpdate(
+            "create table ml(id int primary key, v varchar(2000))");
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("ML");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Write enough log to switch and truncate the log many times, so that
+     * recycled log files are reused. Roll back a transaction that spans
+     * reused log files, and check the data before and after a reboot.
+     */
+    public void testRecycledLogFiles() throws Exception {
+        setAutoCommit(false);
+        PreparedStatement ins =
+            prepareStatement("insert into ml values (?, ?)");
+        Statement s = createStatement();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int j = 0; j < ROWS_PER_ROUND; j++) {
+                int id = round * ROWS_PER_ROUND + j;
+                ins.setInt(1, id);
+                ins.setString(2, makeValue(id));
+                ins.executeUpdate();
+            }
+            commit();
+            s.execute("call syscs_util.syscs_checkpoint_database()");
+        }
+
+        File[] recycled = listLogFiles("recycled");
+        File[] logs = listLogFiles("log");
+        assertTrue("no recycled log files", recycled.length > 0);
+        assertTrue("too many recycled log files: " + recycled.length,
+                   recycled.length <= 3);
+        for (int i = 0; i < logs.length; i++) {
+            assertTrue(logs[i].getName() + " is not preallocated",
+                PrivilegedFileOpsForTests.length(logs[i]) >=
+                    LOG_SWITCH_INTERVAL);
+        }
+
+        // Update every row, which spans several reused log files, and
+        // undo it using the log.
+        s.executeUpdate("update ml set v = 'x'");
+        rollback();
+        checkRows();
+
+        // Reboot twice, recovery has to stop at the end of the current log
+        // even though the log files hold older log records after it.
+        getTestConfiguration().shutdownDatabase();
+        checkRows();
+        getTestConfiguration().shutdownDatabase();
+        checkRows();
+    }
+
+    /** List the files in the log directory whose name has the prefix. */
+    private File[] listLogFiles(String prefix) {
+        TestConfiguration conf = getTestConfiguration();
+        File logDir = new File(conf.getDatabasePath(
+            conf.getPhysicalDatabaseName(conf.getDefaultDatabaseName())),
+            "log");
+        File[] files = PrivilegedFileOpsForTests.listFiles(logDir);
+        int n = 0;
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.startsWith(prefix) && name.endsWith(".dat")) {
+                files[n++] = files[i];
+            }
+        }
+        File[] result = new File[n];
+        System.arraycopy(files, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * A large value, so that each row writes much log, which starts with
+     * the id of the row, so that the undo of the update must bring back
+     * the value of each row.
+     */
+    private static String makeValue(int id) {
+        return id + Utilities.repeatChar("-", 1000 + id % 500);
+    }
+
+    private void checkRows() throws SQLException {
+        setAutoCommit(false);
+        JDBC.assertSingleValueResultSet(
+            createStatement().executeQuery("select count(*) from ml"),
+            Integer.toString(ROUNDS * ROWS_PER_ROUND));
+
+        ResultSet rs = createStatement().executeQuery(
+            "select id, v from ml order by id");
+        while (rs.next()) {
+            assertEquals(makeValue(rs.getInt(1)), rs.getString(2));
+        }
+        rs.close();
+        commit();
+    }
+}
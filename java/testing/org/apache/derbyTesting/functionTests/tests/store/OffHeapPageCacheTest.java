@@ -0,0 +1,203 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.OffHeapPageCacheTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.storage.offHeapPageCacheSize} property, which
+ * keeps the images of clean pages evicted from the page cache in direct
+ * memory. The page cache is much smaller than the tables, so most pages
+ * are read back from the off-heap page cache, and the tests check that
+ * they never come back out of date.
+ */
+public class OffHeapPageCacheTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 2000;
+    private static final int WIDTH = 1000;
+
+    public OffHeapPageCacheTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.pageCacheSize", "40");
+        // large enough for all the pages of the tests
+        props.setProperty("derby.storage.offHeapPageCacheSize", "4");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(OffHeapPageCacheTest.class));
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("OHP");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Update and delete rows of a table that is larger than the page cache,
+     * and check the rows before and after a reboot.
+     */
+    public void testUpdatesWithSmallCache() throws Exception {
+        createTable();
+
+        setAutoCommit(false);
+        Statement s = createStatement();
+        for (int round = 0; round < 3; round++) {
+            s.executeUpdate("update ohp set n = n + 1 where mod(id, 3) = " +
+                            round);
+            checkUpdatedRows(round, false);
+        }
+        s.executeUpdate("delete from ohp where mod(id, 7) = 0");
+        commit();
+        s.execute("call syscs_util.syscs_checkpoint_database()");
+        checkUpdatedRows(2, true);
+
+        TestConfiguration.getCurrent().shutdownDatabase();
+        checkUpdatedRows(2, true);
+        s.close();
+    }
+
+    /**
+     * Check that the pages of a table do not come back out of date after
+     * the table has been compressed, which truncates pages off the end of
+     * the container, and after it has grown again into the same pages.
+     */
+    public void testCompressAndGrow() throws Exception {
+        createTable();
+
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate("delete from ohp where id >= " + ROWS / 4);
+        commit();
+        checkRows(0, ROWS / 4);
+
+        CallableStatement cs = prepareCall(
+            "call syscs_util.syscs_inplace_compress_table(?, ?, 1, 1, 1)");
+        cs.setString(1, getTestConfiguration().getUserName().toUpperCase());
+        cs.setString(2, "OHP");
+        cs.execute();
+        cs.close();
+        commit();
+        checkRows(0, ROWS / 4);
+
+        insertRows(ROWS / 4, ROWS);
+        checkRows(0, ROWS);
+
+        // truncate table gives the table a new container
+        s.executeUpdate("truncate table ohp");
+        commit();
+        JDBC.assertEmpty(s.executeQuery("select * from ohp"));
+        insertRows(0, ROWS);
+        checkRows(0, ROWS);
+        s.close();
+    }
+
+    private void createTable() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table ohp(id int primary key, n int, " +
+                        "v varchar(" + WIDTH + "))");
+        s.close();
+        insertRows(0, ROWS);
+    }
+
+    private void insertRows(int from, int to) throws SQLException {
+        setAutoCommit(false);
+        PreparedStatement ins =
+            prepareStatement("insert into ohp values (?, 0, ?)");
+        for (int i = from; i < to; i++) {
+            ins.setInt(1, i);
+            ins.setString(2, makeValue(i));
+            ins.executeUpdate();
+        }
+        ins.close();
+        commit();
+    }
+
+    /**
+     * Check the rows after a round of updates, which increments the rows
+     * whose id modulo 3 is the number of the round.
+     *
+     * @param round the number of the last round of updates
+     * @param deleted whether the rows with an id that is a multiple of 7
+     *                have been deleted
+     */
+    private void checkUpdatedRows(int round, boolean deleted)
+            throws SQLException {
+        Statement s = createStatement();
+        ResultSet rs = s.executeQuery("select id, n, v from ohp order by id");
+        for (int i = 0; i < ROWS; i++) {
+            if (deleted && i % 7 == 0) {
+                continue;
+            }
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals(i % 3 <= round ? 1 : 0, rs.getInt(2));
+            assertEquals(makeValue(i), rs.getString(3));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        s.close();
+        commit();
+    }
+
+    /** Check that the table holds the rows with the ids in a range. */
+    private void checkRows(int from, int to) throws SQLException {
+        Statement s = createStatement();
+        ResultSet rs = s.executeQuery("select id, n, v from ohp order by id");
+        for (int i = from; i < to; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals(0, rs.getInt(2));
+            assertEquals(makeValue(i), rs.getString(3));
+        }
+        assertFalse(rs.next());
+        rs.close();
+        s.close();
+        commit();
+    }
+
+    /**
+     * A value as wide as the column, so that a page holds few rows and the
+     * table has many more pages than the page cache, which ends with the
+     * id of the row.
+     */
+    private static String makeValue(int id) {
+        String key = ":" + id;
+        return Utilities.repeatChar("o", WIDTH - key.length()) + key;
+    }
+}
@@ -0,0 +1,373 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.OptimisticIndexSearchTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.apache.derby.shared.common.sanity.SanityManager;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SQLUtilities;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the {@code derby.storage.optimisticIndexSearch} property, with
+ * which searches of a B-tree use copies of the branch pages instead of
+ * latching them. The keys are long, so that the trees have several levels
+ * of branch pages, and inserts split them often. The tests run both with
+ * and without the property, and check how the searches went in the run
+ * time statistics of the index scans.
+ */
+public class OptimisticIndexSearchTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 1000;
+
+    /** Number of threads which look up keys while the tree is split. */
+    private static final int READERS = 3;
+
+    private static final String OPTIMISTIC =
+        "derby.storage.optimisticIndexSearch";
+
+    /** The counters of the searches in the run time statistics. */
+    private static final String FROM_COPIES =
+        "Number of searches using copies of branch pages";
+    private static final String LATCHED =
+        "Number of searches latching branch pages";
+    private static final String RESTARTS =
+        "Number of searches restarted after a split";
+
+    /** Debug flag which simulates a split while a search latches a page. */
+    private static final String SPLIT_FLAG =
+        "BranchPageCache.splitWhileLatching";
+
+    public OptimisticIndexSearchTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty(OPTIMISTIC, "true");
+
+        TestSuite suite = new TestSuite("OptimisticIndexSearchTest");
+        suite.addTest(new SystemPropertyTestSetup(
+            new CleanDatabaseTestSetup(TestConfiguration.embeddedSuite(
+                OptimisticIndexSearchTest.class)),
+            props, true));
+        suite.addTest(new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(OptimisticIndexSearchTest.class)));
+        return suite;
+    }
+
+    protected void setUp() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table opt(id int primary key, " +
+                        "k varchar(400) not null)");
+        s.executeUpdate("create index opt_k on opt(k)");
+        s.close();
+    }
+
+    protected void tearDown() throws Exception {
+        if (SanityManager.DEBUG) {
+            SanityManager.DEBUG_CLEAR(SPLIT_FLAG);
+        }
+        dropTable("OPT");
+        super.tearDown();
+    }
+
+    /** Make a long key which sorts in the order of the numbers. */
+    private static String makeKey(int i) {
+        StringBuffer sb = new StringBuffer();
+        String n = String.valueOf(i);
+        for (int j = n.length(); j < 6; j++) {
+            sb.append('0');
+        }
+        sb.append(n);
+        while (sb.length() < 300) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    /** Insert the rows with the given numbers, in random order. */
+    private void insertRows(Connection c, List<Integer> ids)
+            throws SQLException {
+        List<Integer> order = new ArrayList<Integer>(ids);
+        Collections.shuffle(order, new Random(ids.size()));
+        PreparedStatement ps =
+            c.prepareStatement("insert into opt values (?, ?)");
+        for (Integer id : order) {
+            ps.setInt(1, id.intValue());
+            ps.setString(2, makeKey(id.intValue()));
+            ps.executeUpdate();
+        }
+        ps.close();
+    }
+
+    private static List<Integer> range(int first, int last, int step) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = first; i <= last; i += step) {
+            ids.add(Integer.valueOf(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Look up a key through the index, and check that exactly one row with
+     * the right id is found.
+     */
+    private static void assertLookup(PreparedStatement ps, int id)
+            throws SQLException {
+        ps.setString(1, makeKey(id));
+        ResultSet rs = ps.executeQuery();
+        assertTrue("key " + id + " not found", rs.next());
+        assertEquals(id, rs.getInt(1));
+        assertFalse("key " + id + " found twice", rs.next());
+        rs.close();
+    }
+
+    private static PreparedStatement prepareLookup(Connection c)
+            throws SQLException {
+        return c.prepareStatement(
+            "select id from opt --DERBY-PROPERTIES index=opt_k\n" +
+            "where k = ?");
+    }
+
+    /** Do the searches of the B-trees use the copies of the branch pages? */
+    private static boolean isOptimistic() {
+        return "true".equals(getSystemProperty(OPTIMISTIC));
+    }
+
+    /**
+     * Get the run time statistics of the last statement of the connection
+     * of the given statement, which must have run time statistics on.
+     */
+    private static String getStatistics(Statement s) throws SQLException {
+        return SQLUtilities.getRuntimeStatisticsParser(s).toString();
+    }
+
+    /**
+     * Get a counter of the searches from run time statistics. The scans
+     * which don't use the copies of the branch pages don't report the
+     * counters, which counts as zero.
+     */
+    private static int getSearchCount(String rts, String counter) {
+        int start = rts.indexOf(counter + "=");
+        if (start < 0) {
+            return 0;
+        }
+        start += counter.length() + 1;
+        int end = start;
+        while (end < rts.length() && Character.isDigit(rts.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(rts.substring(start, end));
+    }
+
+    /**
+     * Check that a lookup goes down the copies of the branch pages made by
+     * the searches before it if the property is set, and that nothing uses
+     * the copies if it isn't.
+     */
+    public void testSearchCounts() throws SQLException {
+        insertRows(getConnection(), range(1, ROWS, 1));
+
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+        PreparedStatement ps = prepareLookup(getConnection());
+
+        // the first lookup copies any branch pages the inserts didn't
+        assertLookup(ps, 1);
+        assertLookup(ps, ROWS / 2);
+
+        String rts = getStatistics(s);
+        assertEquals(rts,
+                     isOptimistic() ? 1 : 0, getSearchCount(rts, FROM_COPIES));
+        assertEquals(rts, 0, getSearchCount(rts, LATCHED));
+        assertEquals(rts, 0, getSearchCount(rts, RESTARTS));
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        ps.close();
+        s.close();
+    }
+
+    /**
+     * Check that point lookups and range scans find the right rows once
+     * the tree has grown several levels.
+     */
+    public void testLookups() throws SQLException {
+        insertRows(getConnection(), range(1, ROWS, 1));
+
+        PreparedStatement ps = prepareLookup(getConnection());
+        for (int i = 1; i <= ROWS; i++) {
+            assertLookup(ps, i);
+        }
+        ps.setString(1, makeKey(0));
+        JDBC.assertEmpty(ps.executeQuery());
+        ps.setString(1, makeKey(ROWS + 1));
+        JDBC.assertEmpty(ps.executeQuery());
+        ps.close();
+
+        ps = prepareStatement(
+            "select count(*) from opt --DERBY-PROPERTIES index=opt_k\n" +
+            "where k >= ? and k < ?");
+        ps.setString(1, makeKey(100));
+        ps.setString(2, makeKey(200));
+        JDBC.assertSingleValueResultSet(ps.executeQuery(), "100");
+        ps.setString(1, makeKey(ROWS - 9));
+        ps.setString(2, makeKey(ROWS + 1));
+        JDBC.assertSingleValueResultSet(ps.executeQuery(), "10");
+        ps.close();
+
+        assertCheckTable();
+    }
+
+    /**
+     * Check that a search which goes down the copies of the branch pages
+     * starts over if the tree is split before it has latched its page,
+     * and then latches the branch pages, as its copies are out of date.
+     * The split is simulated, so this needs a debug build.
+     */
+    public void testRestartAfterSplit() throws SQLException {
+        if (!SanityManager.DEBUG || !isOptimistic()) {
+            return;
+        }
+
+        insertRows(getConnection(), range(1, ROWS, 1));
+
+        Statement s = createStatement();
+        s.execute("call syscs_util.syscs_set_runtimestatistics(1)");
+        PreparedStatement ps = prepareLookup(getConnection());
+        assertLookup(ps, 1);
+
+        SanityManager.DEBUG_SET(SPLIT_FLAG);
+        assertLookup(ps, 2);
+        String rts = getStatistics(s);
+        assertEquals(rts, 1, getSearchCount(rts, RESTARTS));
+        assertEquals(rts, 1, getSearchCount(rts, LATCHED));
+        assertEquals(rts, 0, getSearchCount(rts, FROM_COPIES));
+
+        // the latched search made the copies on its way valid again
+        assertLookup(ps, 3);
+        rts = getStatistics(s);
+        assertEquals(rts, 0, getSearchCount(rts, RESTARTS));
+        assertEquals(rts, 0, getSearchCount(rts, LATCHED));
+        assertEquals(rts, 1, getSearchCount(rts, FROM_COPIES));
+
+        s.execute("call syscs_util.syscs_set_runtimestatistics(0)");
+        ps.close();
+        s.close();
+    }
+
+    /**
+     * Check that keys are found while another transaction splits the
+     * tree, and after most of the rows are deleted again.
+     */
+    public void testConcurrentSplits() throws Exception {
+        // the even keys are there before the splits start
+        insertRows(getConnection(), range(2, ROWS, 2));
+
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        final Connection writer = openDefaultConnection();
+        Thread writerThread = new Thread() {
+            public void run() {
+                try {
+                    insertRows(writer, range(1, ROWS, 2));
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        };
+
+        List<Thread> readerThreads = new ArrayList<Thread>();
+        final List<Connection> readers = new ArrayList<Connection>();
+        for (int r = 0; r < READERS; r++) {
+            final Connection c = openDefaultConnection();
+            final Random random = new Random(r);
+            readers.add(c);
+            readerThreads.add(new Thread() {
+                public void run() {
+                    try {
+                        PreparedStatement ps = prepareLookup(c);
+                        for (int i = 0; i < 3 * ROWS; i++) {
+                            assertLookup(ps, 2 * (random.nextInt(ROWS / 2) + 1));
+                        }
+                        ps.close();
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            });
+        }
+
+        writerThread.start();
+        for (Thread t : readerThreads) {
+            t.start();
+        }
+        writerThread.join();
+        for (Thread t : readerThreads) {
+            t.join();
+        }
+        writer.close();
+        for (Connection c : readers) {
+            c.close();
+        }
+        if (!errors.isEmpty()) {
+            fail("lookup failed", errors.get(0));
+        }
+
+        PreparedStatement ps = prepareLookup(getConnection());
+        for (int i = 1; i <= ROWS; i++) {
+            assertLookup(ps, i);
+        }
+
+        // Delete most of the rows, so that the tree shrinks in post commit,
+        // then look up the rows left.
+        Statement s = createStatement();
+        assertUpdateCount(s, ROWS - ROWS / 10, "delete from opt where mod(id, 10) <> 0");
+        s.close();
+        for (int i = 10; i <= ROWS; i += 10) {
+            assertLookup(ps, i);
+        }
+        ps.close();
+
+        assertCheckTable();
+    }
+
+    private void assertCheckTable() throws SQLException {
+        JDBC.assertSingleValueResultSet(createStatement().executeQuery(
+            "values syscs_util.syscs_check_table(current schema, 'OPT')"),
+            "1");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.PageWriteBatchTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SecurityManagerSetup;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.storage.pageWriteThreads} property, where the
+ * page cache writes the dirty pages of a checkpoint or of its background
+ * cleaner in sorted batches, with adjacent pages written by one gathering
+ * write and the pages of different tables written by separate I/O threads.
+ * The page cache MBean counts the runs of adjacent pages written.
+ */
+public class PageWriteBatchTest extends BaseJDBCTestCase {
+
+    private static final int TABLES = 3;
+    private static final int ROWS = 600;
+
+    public PageWriteBatchTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.pageWriteThreads", "2");
+        // a small page cache, so that the background cleaner writes pages
+        props.setProperty("derby.storage.pageCacheSize", "100");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(PageWriteBatchTest.class));
+        test = new SystemPropertyTestSetup(test, props, true);
+        // the test reads the page cache statistics from the platform
+        // MBean server
+        return SecurityManagerSetup.noSecurityManager(test);
+    }
+
+    protected void tearDown() throws Exception {
+        for (int t = 0; t < TABLES; t++) {
+            dropTable("PW" + t);
+        }
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Fill several tables, which are much larger than the page cache, update
+     * them and checkpoint, and check the rows before and after a reboot.
+     */
+    public void testBatchedPageWrites() throws Exception {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pageCache = getPageCacheBean(server);
+        server.setAttribute(
+            pageCache, new Attribute("CollectAccessCounts", Boolean.TRUE));
+
+        for (int t = 0; t < TABLES; t++) {
+            s.executeUpdate("create table pw" + t +
+                            "(id int primary key, v varchar(1000))");
+        }
+        commit();
+
+        for (int t = 0; t < TABLES; t++) {
+            PreparedStatement ins =
+                prepareStatement("insert into pw" + t + " values (?, ?)");
+            for (int i = 0; i < ROWS; i++) {
+                ins.setInt(1, i);
+                ins.setString(2, makeValue(t, i, false));
+                ins.executeUpdate();
+            }
+            ins.close();
+        }
+        commit();
+
+        // Dirty pages of every table, and write them in one checkpoint.
+        for (int t = 0; t < TABLES; t++) {
+            s.executeUpdate("update pw" + t + " set v = 'u' || v " +
+                            "where mod(id, 2) = 0");
+        }
+        commit();
+        s.execute("call syscs_util.syscs_checkpoint_database()");
+        checkRows();
+
+        // Undo an update of every row, and write the pages again.
+        for (int t = 0; t < TABLES; t++) {
+            s.executeUpdate("update pw" + t + " set v = 'x'");
+        }
+        rollback();
+        s.execute("call syscs_util.syscs_checkpoint_database()");
+        checkRows();
+
+        // The pages were written in runs, some of them of several pages.
+        long runs = getCount(server, pageCache, "BatchWriteCount");
+        long pages = getCount(server, pageCache, "BatchWrittenCount");
+        assertTrue("Runs written: " + runs, runs > 0);
+        assertTrue("Pages written: " + pages + " in " + runs + " runs",
+                   pages > runs);
+
+        TestConfiguration.getCurrent().shutdownDatabase();
+        checkRows();
+        s.close();
+    }
+
+    /**
+     * The value of a row, which names its table and id, so that a page
+     * written to the wrong container or at the wrong place is seen, and has
+     * a length that varies with the id, so that the pages hold different
+     * numbers of rows.
+     */
+    private static String makeValue(int table, int id, boolean updated) {
+        return (updated ? "u" : "") + "pw" + table + ":" + id +
+            Utilities.repeatChar("p", 200 + id % 700);
+    }
+
+    private void checkRows() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        for (int t = 0; t < TABLES; t++) {
+            JDBC.assertSingleValueResultSet(
+                s.executeQuery("select count(*) from pw" + t),
+                Integer.toString(ROWS));
+
+            ResultSet rs = s.executeQuery(
+                "select id, v from pw" + t + " order by id");
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                assertEquals(makeValue(t, id, id % 2 == 0), rs.getString(2));
+            }
+            rs.close();
+        }
+
+        s.close();
+        commit();
+    }
+
+    private static ObjectName getPageCacheBean(MBeanServer server)
+            throws Exception {
+        Set<ObjectName> names = server.queryNames(new ObjectName(
+            "org.apache.derby:type=CacheManager,name=PageCache,*"), null);
+        assertEquals(names.toString(), 1, names.size());
+        return names.iterator().next();
+    }
+
+    private static long getCount(MBeanServer server, ObjectName name,
+                                 String attribute) throws Exception {
+        return ((Long) server.getAttribute(name, attribute)).longValue();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.ParallelIndexBuildTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the {@code derby.language.indexBuildThreads} property, with
+ * which the rows of a new index are sorted by several threads. The sort
+ * buffers are made small, so that the sorts are external, and the rows are
+ * spread over many merge runs.
+ */
+public class ParallelIndexBuildTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 5000;
+
+    public ParallelIndexBuildTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.language.indexBuildThreads", "4");
+        props.setProperty("derby.storage.sortBufferMax", "100");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(ParallelIndexBuildTest.class));
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void tearDown() throws Exception {
+        dropTable("PAR");
+        dropTable("PAR2");
+        super.tearDown();
+    }
+
+    /** Make a key which sorts in the order of i. */
+    private static String makeKey(int i) {
+        StringBuffer sb = new StringBuffer();
+        String n = String.valueOf(i);
+        for (int j = n.length(); j < 6; j++) {
+            sb.append('0');
+        }
+        sb.append(n);
+        return sb.append("xxxx").toString();
+    }
+
+    /**
+     * Create the table, with the rows in an order which is not the key
+     * order.
+     */
+    private void fill(boolean nullable) throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table par(id int, k varchar(100)" +
+                        (nullable ? ")" : " not null)"));
+        s.close();
+
+        PreparedStatement ps =
+            prepareStatement("insert into par values (?, ?)");
+        for (int i = 0; i < ROWS; i++) {
+            int id = (i * 7919) % ROWS;
+            ps.setInt(1, id);
+            ps.setString(2, makeKey(id));
+            ps.executeUpdate();
+        }
+        ps.close();
+    }
+
+    /**
+     * Check that every key is found through the index, and that a scan of
+     * the whole index returns them in order.
+     */
+    private void assertIndex(String hint, boolean descending)
+            throws SQLException {
+        PreparedStatement ps = prepareStatement(
+            "select id from par --DERBY-PROPERTIES " + hint + "\n" +
+            "where k = ?");
+        for (int i = 0; i < ROWS; i += 7) {
+            ps.setString(1, makeKey(i));
+            JDBC.assertSingleValueResultSet(
+                ps.executeQuery(), String.valueOf(i));
+        }
+        ps.close();
+
+        ResultSet rs = createStatement().executeQuery(
+            "select id from par --DERBY-PROPERTIES " + hint + "\n" +
+            "where k is not null order by k" + (descending ? " desc" : ""));
+        for (int i = 0; i < ROWS; i++) {
+            assertTrue(rs.next());
+            assertEquals(descending ? ROWS - 1 - i : i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        rs.close();
+
+        assertCheckTable("PAR");
+    }
+
+    /**
+     * Check non-unique indexes, ascending and descending, and on more than
+     * one column.
+     */
+    public void testCreateIndex() throws SQLException {
+        fill(false);
+        Statement s = createStatement();
+        s.executeUpdate("create index par_k on par(k)");
+        assertIndex("index=PAR_K", false);
+        s.executeUpdate("drop index par_k");
+
+        s.executeUpdate("create index par_k on par(k desc)");
+        assertIndex("index=PAR_K", true);
+
+        s.executeUpdate("create index par_id on par(id)");
+        s.executeUpdate("create index par_id_k on par(id, k)");
+        assertCheckTable("PAR");
+        s.close();
+    }
+
+    /**
+     * Check that a unique index is not built over a duplicate, whether the
+     * two rows are read close together, so that the same thread sorts
+     * them, or far apart.
+     */
+    public void testUniqueIndex() throws SQLException {
+        fill(false);
+        Statement s = createStatement();
+        s.executeUpdate("create table par2(id int, k varchar(100) not null)");
+
+        // The duplicate is read right after its twin.
+        s.executeUpdate("insert into par2 select * from par where id < 2500");
+        s.executeUpdate("insert into par2 values (-1, '" +
+                        makeKey(2499) + "')");
+        s.executeUpdate("insert into par2 select * from par where id >= 2500");
+        assertStatementError("23505", s,
+                             "create unique index par2_k on par2(k)");
+        s.executeUpdate("drop table par2");
+
+        // The duplicate is read last.
+        s.executeUpdate("insert into par values (-1, '" +
+                        makeKey(10) + "')");
+        assertStatementError("23505", s,
+                             "create unique index par_k on par(k)");
+        assertStatementError("23505", s,
+                             "alter table par add constraint par_c " +
+                             "primary key (k)");
+        assertCheckTable("PAR");
+
+        assertUpdateCount(s, 1, "delete from par where id = -1");
+        s.executeUpdate("create unique index par_k on par(k)");
+        assertIndex("index=PAR_K", false);
+        s.close();
+    }
+
+    /**
+     * Check a unique constraint on a nullable column, which may have any
+     * number of nulls.
+     */
+    public void testUniqueNullable() throws SQLException {
+        fill(true);
+        Statement s = createStatement();
+        assertUpdateCount(s, ROWS / 10,
+                          "insert into par select -id, cast(null as " +
+                          "varchar(100)) from par where mod(id, 10) = 0");
+        s.executeUpdate("alter table par add constraint par_c unique (k)");
+        assertIndex("constraint=PAR_C", false);
+        s.executeUpdate("alter table par drop constraint par_c");
+
+        s.executeUpdate("insert into par values (-1, '" +
+                        makeKey(ROWS - 1) + "')");
+        assertStatementError("23505", s,
+                             "alter table par add constraint par_c unique (k)");
+        assertCheckTable("PAR");
+        s.close();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.ParallelRedoTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.Test;
+import org.apache.derbyTesting.functionTests.util.PrivilegedFileOpsForTests;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+import org.apache.derbyTesting.junit.Utilities;
+
+/**
+ * Tests for the {@code derby.storage.recoveryRedoThreads} property, which
+ * makes crash recovery redo page operations on several threads. A forked
+ * JVM changes the database and exits without shutting it down, and the
+ * database is then recovered with parallel redo, which the recovery
+ * message in derby.log must show.
+ */
+public class ParallelRedoTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 2000;
+
+    public ParallelRedoTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.recoveryRedoThreads", "4");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(ParallelRedoTest.class));
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    /**
+     * Create the tables and shut down, let a forked JVM change them and
+     * exit without a clean shutdown, and check that recovery leaves exactly
+     * the committed changes.
+     */
+    public void testParallelRedo() throws Exception {
+        setAutoCommit(false);
+        Statement s = createStatement();
+        s.executeUpdate("create table pr1(id int primary key, v varchar(500))");
+        s.executeUpdate("create table pr2(id int, v varchar(500))");
+        s.executeUpdate("create index pr2_idx on pr2(id)");
+        commit();
+        s.close();
+        TestConfiguration.getCurrent().shutdownDatabase();
+
+        assertLaunchedJUnitTestMethod("org.apache.derbyTesting." +
+            "functionTests.tests.store.ParallelRedoTest.launchWork");
+
+        checkRows();
+        assertTrue("No log record was redone by the redo threads",
+                   getParallelRedoCount() > 0);
+
+        // The database must still be usable after recovery.
+        setAutoCommit(false);
+        s = createStatement();
+        s.executeUpdate("delete from pr1");
+        s.executeUpdate("delete from pr2");
+        commit();
+        s.close();
+    }
+
+    /**
+     * Run by the forked JVM. Insert, update and delete rows in two tables,
+     * roll back to a savepoint so that the log has compensation records, and
+     * leave a transaction open. Do not shut down the database, so that
+     * recovery has to redo all of it.
+     */
+    public void launchWork() throws SQLException {
+        Connection c = getConnection();
+        c.setAutoCommit(false);
+
+        PreparedStatement ins1 =
+            c.prepareStatement("insert into pr1 values (?, ?)");
+        PreparedStatement ins2 =
+            c.prepareStatement("insert into pr2 values (?, ?)");
+        for (int i = 0; i < ROWS; i++) {
+            ins1.setInt(1, i);
+            ins1.setString(2, makeValue(i, false));
+            ins1.executeUpdate();
+            ins2.setInt(1, i);
+            ins2.setString(2, makeValue(i, false));
+            ins2.executeUpdate();
+            if (i % 500 == 499) {
+                c.commit();
+            }
+        }
+        c.commit();
+
+        Statement s = c.createStatement();
+        s.executeUpdate(
+            "update pr1 set v = 'u' || v where mod(id, 2) = 0");
+        Savepoint sp = c.setSavepoint();
+        s.executeUpdate("update pr2 set v = 'x'");
+        s.executeUpdate("delete from pr1");
+        c.rollback(sp);
+        s.executeUpdate("delete from pr2 where mod(id, 3) = 0");
+        c.commit();
+
+        // Left uncommitted, recovery has to undo this.
+        s.executeUpdate("update pr1 set v = 'y'");
+        s.executeUpdate("delete from pr2");
+    }
+
+    /**
+     * Get the number of log records the parallel redo threads redid in the
+     * recovery of the database, from the recovery message in derby.log.
+     * The forked JVM also logs a recovery message when it boots the
+     * database, but it has nothing to redo after the clean shutdown.
+     */
+    private long getParallelRedoCount() throws IOException {
+        Pattern message = Pattern.compile(
+            "were redone, (\\d+) of them by \\d+ parallel redo thread");
+        File derbyLog = new File(
+            getSystemProperty("derby.system.home"), DERBY_LOG);
+        BufferedReader reader = new BufferedReader(
+            PrivilegedFileOpsForTests.getFileReader(derbyLog));
+        long count = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher m = message.matcher(line);
+                if (m.find()) {
+                    count = Math.max(count, Long.parseLong(m.group(1)));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * The value of a row, which starts with its id, so that a redo to the
+     * wrong row is seen, and has a length that varies with the id, so that
+     * the pages hold different numbers of rows.
+     */
+    private static String makeValue(int id, boolean updated) {
+        return (updated ? "u" : "") + id + ":" +
+            Utilities.repeatChar("r", 20 + id % 300);
+    }
+
+    private void checkRows() throws SQLException {
+        setAutoCommit(false);
+        Statement s = createStatement();
+
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select count(*) from pr1"),
+            Integer.toString(ROWS));
+        ResultSet rs = s.executeQuery("select id, v from pr1 order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            assertEquals(makeValue(id, id % 2 == 0), rs.getString(2));
+        }
+        rs.close();
+
+        int expected = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (i % 3 != 0) {
+                expected++;
+            }
+        }
+        JDBC.assertSingleValueResultSet(
+            s.executeQuery("select count(*) from pr2"),
+            Integer.toString(expected));
+        rs = s.executeQuery(
+            "select id, v from pr2 --DERBY-PROPERTIES index=pr2_idx\n" +
+            "where id >= 0 order by id");
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            assertTrue(id % 3 != 0);
+            assertEquals(makeValue(id, false), rs.getString(2));
+        }
+        rs.close();
+
+        s.close();
+        commit();
+    }
+}
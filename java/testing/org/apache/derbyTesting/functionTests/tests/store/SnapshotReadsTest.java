@@ -0,0 +1,299 @@
+/*
+
+   Derby - Class org.apache.derbyTesting.functionTests.tests.store.SnapshotReadsTest
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to you under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+
+package org.apache.derbyTesting.functionTests.tests.store;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import junit.framework.Test;
+import org.apache.derbyTesting.junit.BaseJDBCTestCase;
+import org.apache.derbyTesting.junit.CleanDatabaseTestSetup;
+import org.apache.derbyTesting.junit.JDBC;
+import org.apache.derbyTesting.junit.SystemPropertyTestSetup;
+import org.apache.derbyTesting.junit.TestConfiguration;
+
+/**
+ * Tests for the {@code derby.storage.snapshotReads} property, which lets
+ * the queries of a read only connection read a snapshot of the committed
+ * rows without waiting for the row locks of the transactions that change
+ * them. The lock wait timeout is short, so a query that waits for a lock
+ * fails the test.
+ */
+public class SnapshotReadsTest extends BaseJDBCTestCase {
+
+    private static final int ROWS = 100;
+
+    /** The read only connection which reads snapshots. */
+    private Connection reader;
+
+    public SnapshotReadsTest(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        Properties props = new Properties();
+        props.setProperty("derby.storage.snapshotReads", "true");
+        props.setProperty("derby.locks.waitTimeout", "2");
+
+        Test test = new CleanDatabaseTestSetup(
+            TestConfiguration.embeddedSuite(SnapshotReadsTest.class));
+        return new SystemPropertyTestSetup(test, props, true);
+    }
+
+    protected void setUp() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("create table snap(id int primary key, n int, " +
+                        "v varchar(20))");
+        s.executeUpdate("create index snap_v on snap(v)");
+        s.close();
+
+        setAutoCommit(false);
+        PreparedStatement ins =
+            prepareStatement("insert into snap values (?, 0, ?)");
+        for (int i = 0; i < ROWS; i++) {
+            ins.setInt(1, i);
+            ins.setString(2, makeValue(i));
+            ins.executeUpdate();
+        }
+        ins.close();
+        commit();
+
+        reader = openDefaultConnection();
+        reader.setReadOnly(true);
+        reader.setAutoCommit(false);
+    }
+
+    protected void tearDown() throws Exception {
+        reader.rollback();
+        reader.close();
+        reader = null;
+        rollback();
+        dropTable("SNAP");
+        commit();
+        super.tearDown();
+    }
+
+    /**
+     * Read the table while another transaction has updated, deleted and
+     * inserted rows without committing, through a scan of the heap, a scan
+     * of the primary key and a scan of a secondary index.
+     */
+    public void testUncommittedChanges() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("update snap set n = n + 1 where id < 50");
+        s.executeUpdate("delete from snap where id >= 90");
+        s.executeUpdate(
+            "insert into snap values (100, 5, 'x'), (101, 5, 'y')");
+
+        checkSnapshot();
+        reader.commit();
+        checkSnapshot();
+
+        rollback();
+        reader.commit();
+        checkSnapshot();
+        s.close();
+    }
+
+    /**
+     * Check that the reader keeps reading the same snapshot until it
+     * commits, even after the changes of another transaction have been
+     * committed.
+     */
+    public void testCommittedChanges() throws SQLException {
+        // take the snapshot
+        checkSnapshot();
+
+        Statement s = createStatement();
+        s.executeUpdate("update snap set n = n + 1 where id < 50");
+        s.executeUpdate("delete from snap where id >= 90");
+        s.executeUpdate(
+            "insert into snap values (100, 5, 'x'), (101, 5, 'y')");
+        commit();
+
+        checkSnapshot();
+        reader.commit();
+
+        Statement rs = reader.createStatement();
+        JDBC.assertFullResultSet(
+            rs.executeQuery("select count(*), sum(n) from snap"),
+            new String[][] {{"92", "60"}});
+        JDBC.assertFullResultSet(
+            rs.executeQuery("select id, n from snap where id >= 88"),
+            new String[][] {{"88", "0"}, {"89", "0"},
+                            {"100", "5"}, {"101", "5"}});
+        rs.close();
+        reader.commit();
+
+        // updates of rows that the committed transaction changed
+        s.executeUpdate("update snap set n = n + 1 where id < 10");
+        JDBC.assertFullResultSet(
+            reader.createStatement().executeQuery(
+                "select sum(n) from snap where id < 10"),
+            new String[][] {{"10"}});
+        commit();
+        s.close();
+    }
+
+    /**
+     * Delete a row and insert a row with the same key, which makes the
+     * deleted row of the primary key valid again with the location of the
+     * new row, and check that the reader still finds the old row by its
+     * key.
+     */
+    public void testReinsertedKey() throws SQLException {
+        // take the snapshot
+        checkSnapshot();
+
+        Statement s = createStatement();
+        s.executeUpdate("delete from snap where id = 5");
+        commit();
+        s.executeUpdate("insert into snap values (5, 99, 'new')");
+
+        PreparedStatement ps = reader.prepareStatement(
+            "select id, n, v from snap where id = ?");
+        ps.setInt(1, 5);
+        JDBC.assertFullResultSet(ps.executeQuery(),
+            new String[][] {{"5", "0", makeValue(5)}});
+
+        commit();
+        JDBC.assertFullResultSet(ps.executeQuery(),
+            new String[][] {{"5", "0", makeValue(5)}});
+        checkSnapshot();
+
+        reader.commit();
+        JDBC.assertFullResultSet(ps.executeQuery(),
+            new String[][] {{"5", "99", "new"}});
+        ps.close();
+        reader.commit();
+        s.close();
+    }
+
+    /**
+     * Check that MAX on an index, which reads the last key of the index
+     * instead of scanning it, neither waits for the locks of another
+     * transaction nor sees keys outside the snapshot, before and after the
+     * other transaction commits.
+     */
+    public void testMax() throws SQLException {
+        // take the snapshot
+        checkSnapshot();
+
+        Statement s = createStatement();
+        s.executeUpdate("delete from snap where id = " + (ROWS - 1));
+        s.executeUpdate(
+            "insert into snap values (" + ROWS + ", 0, 'zk2')");
+
+        PreparedStatement ps = reader.prepareStatement(
+            "select max(v) from snap --DERBY-PROPERTIES index=snap_v\n");
+        String[][] snapshotMax = {{makeValue(ROWS - 1)}};
+
+        JDBC.assertFullResultSet(ps.executeQuery(), snapshotMax);
+
+        commit();
+        JDBC.assertFullResultSet(ps.executeQuery(), snapshotMax);
+        checkSnapshot();
+
+        reader.commit();
+        JDBC.assertFullResultSet(ps.executeQuery(),
+            new String[][] {{"zk2"}});
+        ps.close();
+        reader.commit();
+        s.close();
+    }
+
+    /**
+     * Check that a transaction which is not read only still waits for the
+     * locks of the rows it reads.
+     */
+    public void testReadWriteConnectionLocks() throws SQLException {
+        Statement s = createStatement();
+        s.executeUpdate("update snap set n = n + 1 where id = 1");
+
+        Connection c = openDefaultConnection();
+        c.setAutoCommit(false);
+        Statement cs = c.createStatement();
+        try {
+            JDBC.assertDrainResults(
+                cs.executeQuery("select * from snap where id = 1"));
+            fail("expected lock timeout");
+        } catch (SQLException se) {
+            assertSQLState("40XL1", se);
+        }
+        cs.close();
+        c.rollback();
+        c.close();
+        s.close();
+    }
+
+    /**
+     * Check the rows that the reader sees, which must be the rows as they
+     * were first inserted.
+     */
+    private void checkSnapshot() throws SQLException {
+        Statement s = reader.createStatement();
+
+        JDBC.assertFullResultSet(
+            s.executeQuery("select count(*), sum(n) from snap"),
+            new String[][] {{Integer.toString(ROWS), "0"}});
+
+        ResultSet rs = s.executeQuery(
+            "select id, n, v from snap --DERBY-PROPERTIES index=null\n" +
+            "order by id");
+        checkRows(rs, 0, ROWS);
+
+        rs = s.executeQuery(
+            "select id, n, v from snap " +
+            "--DERBY-PROPERTIES index=snap_v\n" +
+            "where v > '' order by id");
+        checkRows(rs, 0, ROWS);
+
+        rs = s.executeQuery(
+            "select id, n, v from snap where id between 40 and 95");
+        checkRows(rs, 40, 96);
+
+        JDBC.assertFullResultSet(
+            s.executeQuery("select count(*) from snap where v in ('x', 'y')"),
+            new String[][] {{"0"}});
+        s.close();
+    }
+
+    private static void checkRows(ResultSet rs, int from, int to)
+            throws SQLException {
+        for (int i = from; i < to; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals(0, rs.getInt(2));
+            assertEquals(makeValue(i), rs.getString(3));
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    /** A distinct key for the index on v, for each row. */
+    private static String makeValue(int id) {
+        return "v" + id;
+    }
+}
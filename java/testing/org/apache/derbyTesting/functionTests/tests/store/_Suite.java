@@ -86,6 +86,23 @@ public class _Suite extends BaseTestCase  {
         suite.addTest(StoreScriptsTest.suite());
         suite.addTest(Derby4923Test.suite());
         suite.addTest(SpaceTableTest.suite());
+        suite.addTest(LogGroupCommitTest.suite());
+        suite.addTest(LogConcurrentAppendTest.suite());
+        suite.addTest(LogMappedFilesTest.suite());
+        suite.addTest(ParallelRedoTest.suite());
+        suite.addTest(IncrementalCheckpointTest.suite());
+        suite.addTest(PageWriteBatchTest.suite());
+        suite.addTest(CacheReplacementPolicyTest.suite());
+        suite.addTest(CacheSegmentsTest.suite());
+        suite.addTest(OffHeapPageCacheTest.suite());
+        suite.addTest(SnapshotReadsTest.suite());
+        suite.addTest(IntentLockFastPathTest.suite());
+        suite.addTest(AdaptiveLockEscalationTest.suite());
+        suite.addTest(OptimisticIndexSearchTest.suite());
+        suite.addTest(IndexSuffixTruncationTest.suite());
+        suite.addTest(BulkIndexLoadTest.suite());
+        suite.addTest(ParallelIndexBuildTest.suite());
+        suite.addTest(HashIndexTest.suite());
         
         /* Tests that only run in sane builds */
         if (SanityManager.DEBUG) {
@@ -253,6 +253,19 @@ public class Runner {
 "            - identityTest: 1 means do identity column testing, any other number \n" +
 "                    means do sequence generator testing. If no identityTest is specified \n" +
 "                    then sequence generator testing will be done by default \n" +
+"      * scan_lookup - primary key lookups in a table that fits in the\n" +
+"                    page cache, mixed with full scans of a table that\n" +
+"                    does not, and the hit rate of the page cache when the\n" +
+"                    database is embedded. Compare the replacement policies\n" +
+"                    of the page cache with\n" +
+"                    -Dderby.cache.replacementPolicy.PageCache=2q. The\n" +
+"                    following load-specific options are accepted:\n" +
+"            - hotRows=NN: the number of rows in the table with lookups\n" +
+"                          (default: 20000)\n" +
+"            - bigRows=NN: the number of rows in the scanned table\n" +
+"                          (default: 200000)\n" +
+"            - scanFrequency=NN: one in NN transactions is a scan\n" +
+"                                (default: 100)\n" +
 "  -load_opts: comma-separated list of load-specific options\n" +
 "  -gen: load generator, default: b2b, valid types:\n" +
 "      * b2b - clients perform operations back-to-back\n" +
@@ -321,6 +334,10 @@ public class Runner {
                 getLoadOpt("accountsPerBranch", 100000));
         } else if (load.equals("seq_gen")) {
             return new SequenceGeneratorConcurrency.Filler();
+        } else if (load.equals("scan_lookup")) {
+            return new ScanLookupFiller(
+                getLoadOpt("hotRows", 20000),
+                getLoadOpt("bigRows", 200000));
         }
         System.err.println("unknown load: " + load);
         printUsage(System.err);
@@ -359,6 +376,11 @@ public class Runner {
                 getLoadOpt("accountsPerBranch", 100000));
         } else if (load.equals("seq_gen")) {
             return new SequenceGeneratorConcurrency.SGClient();
+        } else if (load.equals("scan_lookup")) {
+            return new ScanLookupClient(
+                getLoadOpt("hotRows", 20000),
+                getLoadOpt("bigRows", 200000),
+                getLoadOpt("scanFrequency", 100));
         }
         System.err.println("unknown load: " + load);
         printUsage(System.err);
@@ -0,0 +1,226 @@
+/*
+
+Derby - Class org.apache.derbyTesting.perf.clients.ScanLookupClient
+
+Licensed to the Apache Software Foundation (ASF) under one or more
+contributor license agreements.  See the NOTICE file distributed with
+this work for additional information regarding copyright ownership.
+The ASF licenses this file to You under the Apache License, Version 2.0
+(the "License"); you may not use this file except in compliance with
+the License.  You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+
+package org.apache.derbyTesting.perf.clients;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Random;
+import java.util.Set;
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Client which mixes primary key lookups in a small table with full scans
+ * of a large table, using the tables generated by
+ * {@code ScanLookupFiller}. The small table is meant to fit in the page
+ * cache and the large table not, so that the client shows how well the
+ * replacement policy of the page cache keeps the pages used by the lookups
+ * while the scans run, for instance with
+ * {@code -Dderby.cache.replacementPolicy.PageCache=2q} compared to the
+ * default clock policy.
+ *
+ * <p>
+ *
+ * When the database is embedded, the first client reports the hit rate of
+ * the page cache, as seen by the {@code CacheManagerMBean} of the page cache,
+ * separately for the lookups and the scans that client performed. The
+ * counts are read before and after each transaction, so they include the
+ * page accesses of the other clients if there are more than one.
+ */
+public class ScanLookupClient implements Client {
+
+    /** Tells whether a client reports the page cache statistics. */
+    private static boolean cacheReporterChosen;
+
+    private final int hotRows;
+    private final int bigRows;
+    private final int scanFrequency;
+    private final Random r = new Random();
+
+    private Connection conn;
+    private PreparedStatement lookup;
+    private PreparedStatement scan;
+
+    /** The number of lookups and scans performed by this client. */
+    private int lookups;
+    private int scans;
+
+    /**
+     * The MBean of the page cache, if this client reports the page cache
+     * statistics and the MBean was found.
+     */
+    private MBeanServer mbeanServer;
+    private ObjectName pageCache;
+
+    /** Page cache hits and misses during lookups and during scans. */
+    private long lookupHits;
+    private long lookupMisses;
+    private long scanHits;
+    private long scanMisses;
+
+    /**
+     * Create a new client.
+     *
+     * @param hotRows the number of rows in the table with lookups
+     * @param bigRows the number of rows in the table that is scanned
+     * @param scanFrequency one out of this many transactions is a scan of
+     * the large table, the others are lookups
+     */
+    public ScanLookupClient(int hotRows, int bigRows, int scanFrequency) {
+        this.hotRows = hotRows;
+        this.bigRows = bigRows;
+        this.scanFrequency = Math.max(1, scanFrequency);
+    }
+
+    public void init(Connection c) throws SQLException {
+        String hotTable = SingleRecordFiller.getTableName(
+                hotRows, 0, Types.VARCHAR, false, false);
+        String bigTable = SingleRecordFiller.getTableName(
+                bigRows, 0, Types.VARCHAR, false, false);
+        lookup = c.prepareStatement(
+                "SELECT ID, TEXT FROM " + hotTable + " WHERE ID = ?");
+        // No index on TEXT, so this is a full scan of the table.
+        scan = c.prepareStatement(
+                "SELECT COUNT(*) FROM " + bigTable + " WHERE TEXT <> ''");
+        c.setAutoCommit(false);
+        conn = c;
+
+        synchronized (ScanLookupClient.class) {
+            if (!cacheReporterChosen) {
+                cacheReporterChosen = true;
+                findPageCache();
+            }
+        }
+    }
+
+    /**
+     * Find the MBean of the page cache in the platform MBean server, and
+     * enable collection of access counts. If the MBean can't be found, for
+     * instance because the database is not embedded, no page cache
+     * statistics are reported.
+     */
+    private void findPageCache() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(new ObjectName(
+                    "org.apache.derby:type=CacheManager,name=PageCache,*"),
+                    null);
+            if (names.size() != 1) {
+                return;
+            }
+            ObjectName name = names.iterator().next();
+            server.setAttribute(
+                    name, new Attribute("CollectAccessCounts", Boolean.TRUE));
+            mbeanServer = server;
+            pageCache = name;
+        } catch (JMException jme) {
+            System.err.println("WARNING: No page cache statistics: " + jme);
+        }
+    }
+
+    private static long getCount(MBeanServer server, ObjectName name,
+                                 String attribute) throws JMException {
+        return ((Long) server.getAttribute(name, attribute)).longValue();
+    }
+
+    public void doWork() throws SQLException {
+        boolean isScan = (r.nextInt(scanFrequency) == 0);
+        long hits = 0;
+        long misses = 0;
+
+        if (pageCache != null) {
+            hits = getCount("HitCount");
+            misses = getCount("MissCount");
+        }
+
+        if (isScan) {
+            ResultSet rs = scan.executeQuery();
+            rs.next();
+            rs.getInt(1);
+            rs.close();
+            scans++;
+        } else {
+            lookup.setInt(1, r.nextInt(hotRows));
+            ResultSet rs = lookup.executeQuery();
+            rs.next();
+            rs.getInt(1);
+            rs.getString(2);
+            rs.close();
+            lookups++;
+        }
+        conn.commit();
+
+        if (pageCache != null) {
+            hits = getCount("HitCount") - hits;
+            misses = getCount("MissCount") - misses;
+            if (isScan) {
+                scanHits += hits;
+                scanMisses += misses;
+            } else {
+                lookupHits += hits;
+                lookupMisses += misses;
+            }
+        }
+    }
+
+    /**
+     * Get one of the access counts of the page cache.
+     *
+     * @param attribute the name of the count
+     * @return the count
+     */
+    private long getCount(String attribute) throws SQLException {
+        try {
+            return getCount(mbeanServer, pageCache, attribute);
+        } catch (JMException jme) {
+            SQLException sqle = new SQLException(
+                    "Could not read " + attribute + " of the page cache");
+            sqle.initCause(jme);
+            throw sqle;
+        }
+    }
+
+    public void printReport(PrintStream out) {
+        out.println("Lookups:\t" + lookups);
+        out.println("Scans:\t" + scans);
+
+        if (pageCache != null) {
+            printHitRate(out, "lookups", lookupHits, lookupMisses);
+            printHitRate(out, "scans", scanHits, scanMisses);
+        }
+    }
+
+    private static void printHitRate(PrintStream out, String operation,
+                                     long hits, long misses) {
+        out.println("Page cache hits/misses in " + operation + ":\t" +
+                    hits + "/" + misses);
+        out.println("Page cache hit rate in " + operation + " (%):\t" +
+                    (100d * hits / Math.max(1, hits + misses)));
+    }
+}
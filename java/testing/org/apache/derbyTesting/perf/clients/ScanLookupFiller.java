@@ -0,0 +1,57 @@
+/*
+
+Derby - Class org.apache.derbyTesting.perf.clients.ScanLookupFiller
+
+Licensed to the Apache Software Foundation (ASF) under one or more
+contributor license agreements.  See the NOTICE file distributed with
+this work for additional information regarding copyright ownership.
+The ASF licenses this file to You under the Apache License, Version 2.0
+(the "License"); you may not use this file except in compliance with
+the License.  You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+*/
+
+package org.apache.derbyTesting.perf.clients;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Class which generates and populates the tables used by
+ * {@code ScanLookupClient}: a small table whose rows are looked up by
+ * primary key, and a large table which is scanned. Both tables are created
+ * by {@code SingleRecordFiller}.
+ */
+public class ScanLookupFiller implements DBFiller {
+
+    private final DBFiller hotFiller;
+    private final DBFiller bigFiller;
+
+    /**
+     * Create a filler for the scan and lookup tables.
+     *
+     * @param hotRows the number of rows in the table with lookups
+     * @param bigRows the number of rows in the table that is scanned
+     */
+    public ScanLookupFiller(int hotRows, int bigRows) {
+        if (hotRows == bigRows) {
+            throw new IllegalArgumentException(
+                "The tables must have different sizes");
+        }
+        hotFiller = new SingleRecordFiller(hotRows, 1);
+        bigFiller = new SingleRecordFiller(bigRows, 1);
+    }
+
+    public void fill(Connection c) throws SQLException {
+        hotFiller.fill(c);
+        bigFiller.fill(c);
+    }
+}
@@ -122,9 +122,22 @@ public class DB_Index {
 		sb.append(ixName);
 		sb.append(" ON ");
 		sb.append(tableName);
+		// The INCLUDE columns, if any, follow the key columns in
+		// the description: "BTREE (1, 2) INCLUDE (3)".
+		int includeStart = ixDescribe.indexOf(" INCLUDE (");
+		String keyDescribe = (includeStart == -1) ? ixDescribe :
+			ixDescribe.substring(0, includeStart);
+
 		sb.append(" (");
-		sb.append(dblook.getColumnListFromDescription(tableId, ixDescribe));
+		sb.append(dblook.getColumnListFromDescription(tableId, keyDescribe));
 		sb.append(")");
+
+		if (includeStart != -1) {
+			sb.append(" INCLUDE (");
+			sb.append(dblook.getColumnListFromDescription(tableId,
+				ixDescribe.substring(includeStart)));
+			sb.append(")");
+		}
 		return sb;
 
 	}